@@ -29,6 +29,7 @@
 package org.opennms.jicmp.jna;
 
 import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 
 /**
@@ -40,6 +41,7 @@ public class NativeDatagramPacket {
 
     private ByteBuffer m_data;
     private InetAddress m_address;
+    private byte[] m_addressBytes;
     private int m_port;
     
     public NativeDatagramPacket(ByteBuffer data, InetAddress address, int port) {
@@ -57,11 +59,43 @@ public class NativeDatagramPacket {
     }
 
     public InetAddress getAddress() {
+        if (m_address == null && m_addressBytes != null) {
+            try {
+                m_address = InetAddress.getByAddress(m_addressBytes);
+            } catch (UnknownHostException e) {
+                // this can't happen because the bytes come from a sockaddr
+                return null;
+            }
+        }
         return m_address;
     }
 
     public void setAddress(InetAddress addr) {
         m_address = addr;
+        m_addressBytes = null;
+    }
+
+    /**
+     * Sets the address from its raw network order bytes, which are copied.
+     * The {@link InetAddress} is only created if {@link #getAddress()} is
+     * called, so a packet that is received over and over again does not
+     * allocate one per packet.
+     */
+    public void setAddress(byte[] addr) {
+        if (m_addressBytes == null || m_addressBytes.length != addr.length) {
+            m_addressBytes = new byte[addr.length];
+        }
+        System.arraycopy(addr, 0, m_addressBytes, 0, addr.length);
+        m_address = null;
+    }
+
+    /**
+     * Returns the raw bytes of an address set by {@link #setAddress(byte[])}
+     * without copying them, or null if the address was set as an
+     * {@link InetAddress}. The array must not be modified.
+     */
+    public byte[] getAddressBytes() {
+        return m_addressBytes;
     }
 
     public int getPort() {
@@ -84,13 +118,22 @@ public class NativeDatagramPacket {
         return m_data.duplicate();
     }
 
+    /**
+     * Returns the buffer itself rather than a duplicate, for reading a
+     * received packet in place. Only absolute gets may be used on it and
+     * its position and limit must be left alone.
+     */
+    public ByteBuffer getBuffer() {
+        return m_data;
+    }
+
     @Override
     public String toString() {
     
         StringBuilder buf = new StringBuilder();
         
         buf.append("Address: ");
-        buf.append(m_address);
+        buf.append(getAddress());
         buf.append(" Port: ");
         buf.append(m_port);
         buf.append("\nData: ");
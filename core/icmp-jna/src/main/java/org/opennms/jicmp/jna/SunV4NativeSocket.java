@@ -63,17 +63,21 @@ public class SunV4NativeSocket extends NativeDatagramSocket {
         return m_sock;
     }
 
+    // receive() is only ever called by the thread reading the socket, so
+    // the source address is read into the same structure every time
+    private final sockaddr_in m_inAddr = new sockaddr_in();
+    private final int[] m_inAddrLen = new int[1];
+
     @Override
     public int receive(NativeDatagramPacket p) {
-        sockaddr_in in_addr = new sockaddr_in();
-        int[] szRef = new int[] { in_addr.size() };
+        m_inAddrLen[0] = m_inAddr.size();
         
-        ByteBuffer buf = p.getContent();
+        ByteBuffer buf = p.getBuffer();
         
-        int n = recvfrom(getSock(), buf, buf.capacity(), 0, in_addr, szRef);
+        int n = recvfrom(getSock(), buf, buf.capacity(), 0, m_inAddr, m_inAddrLen);
         p.setLength(n);
-        p.setAddress(in_addr.getAddress());
-        p.setPort(in_addr.getPort());
+        p.setAddress(m_inAddr.sin_addr);
+        p.setPort(m_inAddr.getPort());
         
         return n;
     }
@@ -61,17 +61,21 @@ public class UnixV6NativeSocket extends NativeDatagramSocket {
 
     public native int close(int socket) throws LastErrorException;
 
+    // receive() is only ever called by the thread reading the socket, so
+    // the source address is read into the same structure every time
+    private final sockaddr_in6 m_inAddr = new sockaddr_in6();
+    private final int[] m_inAddrLen = new int[1];
+
     @Override
     public int receive(NativeDatagramPacket p) throws UnknownHostException {
-        sockaddr_in6 in_addr = new sockaddr_in6();
-        int[] szRef = new int[] { in_addr.size() };
+        m_inAddrLen[0] = m_inAddr.size();
         
-        ByteBuffer buf = p.getContent();
+        ByteBuffer buf = p.getBuffer();
         
-        int n = recvfrom(getSock(), buf, buf.capacity(), 0, in_addr, szRef);
+        int n = recvfrom(getSock(), buf, buf.capacity(), 0, m_inAddr, m_inAddrLen);
         p.setLength(n);
-        p.setAddress(in_addr.getAddress());
-        p.setPort(in_addr.getPort());
+        p.setAddress(m_inAddr.sin6_addr);
+        p.setPort(m_inAddr.getPort());
         
         return n;
     }
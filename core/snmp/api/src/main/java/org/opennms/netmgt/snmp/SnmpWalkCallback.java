@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp;
+
+/**
+ * Notified when an {@link SnmpWalker} finishes, successfully or not, so that
+ * callers don't need to block a thread in {@link SnmpWalker#waitFor()}.
+ */
+public interface SnmpWalkCallback {
+    /**
+     * Called once on the thread that received the last response or detected
+     * the failure. Implementations should hand off any lengthy work, and
+     * must handle their own exceptions: anything thrown back to the walker
+     * is only logged.
+     *
+     * @param walker the finished walker; use {@link SnmpWalker#failed()} to
+     *            check whether it succeeded
+     */
+    void complete(SnmpWalker walker);
+}
@@ -61,6 +61,8 @@ public abstract class SnmpWalker implements Closeable {
     private boolean m_error = false;
     private String m_errorMessage = "";
     private Throwable m_errorThrowable = null;
+    private SnmpWalkCallback m_callback;
+    private boolean m_finished = false;
     
     protected SnmpWalker(InetAddress address, String name, int maxVarsPerPdu, int maxRepetitions, CollectionTracker tracker) {
         m_address = address;
@@ -162,6 +164,40 @@ public abstract class SnmpWalker implements Closeable {
         } catch (IOException e) {
             LOG.error("{}: Unexpected Error occured closing SNMP session for: {}", getName(), m_address, e);
         }
+        notifyCallback();
+    }
+
+    /**
+     * Sets the callback to notify once the walk is finished. If the walk has
+     * already finished the callback is called right away.
+     *
+     * @param callback the callback
+     */
+    public void setCallback(final SnmpWalkCallback callback) {
+        synchronized (this) {
+            if (!m_finished) {
+                m_callback = callback;
+                return;
+            }
+        }
+        callback.complete(this);
+    }
+
+    private void notifyCallback() {
+        final SnmpWalkCallback callback;
+        synchronized (this) {
+            m_finished = true;
+            callback = m_callback;
+            m_callback = null;
+        }
+        if (callback != null) {
+            try {
+                callback.complete(this);
+            } catch (final Throwable t) {
+                // nothing else is listening; callbacks must report their own failures
+                LOG.error("{}: Unexpected error in callback for: {}", getName(), m_address, t);
+            }
+        }
     }
 
     @Override
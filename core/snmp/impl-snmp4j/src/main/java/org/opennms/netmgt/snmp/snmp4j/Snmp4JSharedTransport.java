@@ -0,0 +1,408 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snmp4j.PDU;
+import org.snmp4j.Snmp;
+import org.snmp4j.Target;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.transport.DefaultUdpTransportMapping;
+
+/**
+ * A small, fixed set of SNMP4J sessions (each with its own UDP socket and
+ * listener thread) shared by every SNMPv1/v2c request and walk, instead of
+ * a new socket and thread for each one.  SNMP4J already demultiplexes
+ * responses on a session by request ID, so any number of requests can be
+ * outstanding on each socket.
+ *
+ * To avoid flooding a single agent when many walkers hit it at once, the
+ * number of outstanding PDUs per agent is bounded; requests beyond that are
+ * queued and sent as earlier ones complete.  Nothing ever blocks on the
+ * SNMP4J listener threads.
+ *
+ * Retries are done here rather than by SNMP4J so that they can be counted.
+ *
+ * The shared transport is enabled with the
+ * <code>org.opennms.snmp.snmp4j.sharedTransport</code> system property.
+ * SNMPv3 requests always use their own session, since each needs a USM
+ * holding its own user.
+ */
+public class Snmp4JSharedTransport {
+    private static final transient Logger LOG = LoggerFactory.getLogger(Snmp4JSharedTransport.class);
+
+    public static final String ENABLED_PROPERTY = "org.opennms.snmp.snmp4j.sharedTransport";
+    public static final String SESSIONS_PROPERTY = "org.opennms.snmp.snmp4j.sharedTransport.sessions";
+    public static final String MAX_OUTSTANDING_PROPERTY = "org.opennms.snmp.snmp4j.sharedTransport.maxOutstandingPerAgent";
+
+    public static final int DEFAULT_SESSIONS = 4;
+    public static final int DEFAULT_MAX_OUTSTANDING_PER_AGENT = 8;
+
+    private static Snmp4JSharedTransport s_instance = null;
+
+    private final Snmp[] m_sessions;
+    private final int m_maxOutstandingPerAgent;
+    private final ConcurrentMap<InetSocketAddress, AgentWindow> m_windows = new ConcurrentHashMap<InetSocketAddress, AgentWindow>();
+
+    private final AtomicInteger m_inFlight = new AtomicInteger();
+    private final AtomicInteger m_queued = new AtomicInteger();
+    private final AtomicLong m_sent = new AtomicLong();
+    private final AtomicLong m_responses = new AtomicLong();
+    private final AtomicLong m_timeouts = new AtomicLong();
+    private final AtomicLong m_retries = new AtomicLong();
+    private final AtomicLong m_errors = new AtomicLong();
+
+    /**
+     * Returns the shared transport if it has been enabled with the
+     * <code>org.opennms.snmp.snmp4j.sharedTransport</code> system property,
+     * creating it on first use.
+     *
+     * @return the shared transport, or null if it is disabled or could not be created
+     */
+    public static synchronized Snmp4JSharedTransport getInstance() {
+        if (s_instance == null && Boolean.getBoolean(ENABLED_PROPERTY)) {
+            final int sessions = Integer.getInteger(SESSIONS_PROPERTY, DEFAULT_SESSIONS);
+            final int maxOutstanding = Integer.getInteger(MAX_OUTSTANDING_PROPERTY, DEFAULT_MAX_OUTSTANDING_PER_AGENT);
+            try {
+                s_instance = new Snmp4JSharedTransport(sessions, maxOutstanding);
+                LOG.info("Using a shared SNMP transport with {} sessions and at most {} outstanding requests per agent", sessions, maxOutstanding);
+            } catch (final IOException e) {
+                LOG.error("Unable to create the shared SNMP transport, falling back to a session per request", e);
+            }
+        }
+        return s_instance;
+    }
+
+    public Snmp4JSharedTransport(final int sessionCount, final int maxOutstandingPerAgent) throws IOException {
+        if (sessionCount < 1) throw new IllegalArgumentException("sessionCount must be at least 1");
+        if (maxOutstandingPerAgent < 1) throw new IllegalArgumentException("maxOutstandingPerAgent must be at least 1");
+
+        m_maxOutstandingPerAgent = maxOutstandingPerAgent;
+        m_sessions = new Snmp[sessionCount];
+        try {
+            for (int i = 0; i < sessionCount; i++) {
+                m_sessions[i] = new Snmp(new DefaultUdpTransportMapping());
+                m_sessions[i].listen();
+            }
+        } catch (final IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Send a request PDU to the agent.  The listener is called exactly once,
+     * with the response, a timeout (null response) or an error.  It may be
+     * called on an SNMP4J listener or timer thread and must not block.
+     *
+     * @param agentConfig the agent to send to
+     * @param pdu the request, which must expect a response
+     * @param listener called when the request completes
+     * @return a handle that can be used to cancel the request
+     */
+    public Request send(final Snmp4JAgentConfig agentConfig, final PDU pdu, final ResponseListener listener) {
+        final InetSocketAddress key = new InetSocketAddress(agentConfig.getInetAddress(), agentConfig.getPort());
+        final Target target = agentConfig.getTarget();
+        final int retries = target.getRetries();
+        target.setRetries(0);
+
+        final Request request = new Request(m_sessions[sessionIndex(agentConfig.getInetAddress())], target, pdu, retries, listener);
+        while (true) {
+            AgentWindow window = m_windows.get(key);
+            if (window == null) {
+                final AgentWindow newWindow = new AgentWindow(key);
+                window = m_windows.putIfAbsent(key, newWindow);
+                if (window == null) window = newWindow;
+            }
+            if (window.submit(request)) {
+                return request;
+            }
+            // the window was retired while we were looking it up, try again
+        }
+    }
+
+    /**
+     * Send a request PDU to the agent and wait for it to complete.
+     *
+     * @return the response event; the response is null on a timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public ResponseEvent sendAndWait(final Snmp4JAgentConfig agentConfig, final PDU pdu) throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final ResponseEvent[] result = new ResponseEvent[1];
+        final Request request = send(agentConfig, pdu, new ResponseListener() {
+            @Override
+            public void onResponse(final ResponseEvent event) {
+                result[0] = event;
+                latch.countDown();
+            }
+        });
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            request.cancel();
+            throw e;
+        }
+        return result[0];
+    }
+
+    private int sessionIndex(final InetAddress address) {
+        // keep each agent on one socket
+        return (address.hashCode() & Integer.MAX_VALUE) % m_sessions.length;
+    }
+
+    /**
+     * Close all of the shared sessions.  Outstanding requests complete with
+     * an error.
+     */
+    public void close() {
+        for (final Snmp session : m_sessions) {
+            if (session == null) continue;
+            try {
+                session.close();
+            } catch (final IOException e) {
+                LOG.error("error closing shared SNMP session", e);
+            }
+        }
+    }
+
+    public int getSessionCount() {
+        return m_sessions.length;
+    }
+
+    public int getMaxOutstandingPerAgent() {
+        return m_maxOutstandingPerAgent;
+    }
+
+    /** @return the number of PDUs currently waiting for a response */
+    public int getInFlight() {
+        return m_inFlight.get();
+    }
+
+    /** @return the number of requests waiting for room in their agent's window */
+    public int getQueued() {
+        return m_queued.get();
+    }
+
+    /** @return the number of PDUs sent, including retries */
+    public long getSent() {
+        return m_sent.get();
+    }
+
+    public long getResponses() {
+        return m_responses.get();
+    }
+
+    /** @return the number of requests that timed out after all of their retries */
+    public long getTimeouts() {
+        return m_timeouts.get();
+    }
+
+    public long getRetries() {
+        return m_retries.get();
+    }
+
+    public long getErrors() {
+        return m_errors.get();
+    }
+
+    /**
+     * The outstanding and queued requests for one agent.
+     */
+    private final class AgentWindow {
+        private final InetSocketAddress m_key;
+        private final Queue<Request> m_waiting = new LinkedList<Request>();
+        private int m_outstanding = 0;
+        private boolean m_retired = false;
+
+        AgentWindow(final InetSocketAddress key) {
+            m_key = key;
+        }
+
+        /**
+         * @return false if this window has been retired and the request
+         * must be submitted to a new one
+         */
+        boolean submit(final Request request) {
+            synchronized (this) {
+                if (m_retired) {
+                    return false;
+                }
+                request.m_window = this;
+                if (m_outstanding >= m_maxOutstandingPerAgent) {
+                    m_waiting.add(request);
+                    m_queued.incrementAndGet();
+                    return true;
+                }
+                m_outstanding++;
+            }
+            request.start();
+            return true;
+        }
+
+        void release() {
+            Request next;
+            synchronized (this) {
+                next = m_waiting.poll();
+                if (next == null) {
+                    m_outstanding--;
+                    if (m_outstanding == 0) {
+                        m_retired = true;
+                        m_windows.remove(m_key, this);
+                    }
+                    return;
+                }
+                m_queued.decrementAndGet();
+            }
+            next.start();
+        }
+
+        synchronized boolean remove(final Request request) {
+            if (m_waiting.remove(request)) {
+                m_queued.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A request sent through the shared transport.
+     */
+    public final class Request implements ResponseListener {
+        private final Snmp m_session;
+        private final Target m_target;
+        private final PDU m_pdu;
+        private final int m_maxRetries;
+        private final ResponseListener m_listener;
+        private AgentWindow m_window;
+        private int m_attempt = 0;
+        private boolean m_started = false;
+        private boolean m_done = false;
+
+        private Request(final Snmp session, final Target target, final PDU pdu, final int retries, final ResponseListener listener) {
+            m_session = session;
+            m_target = target;
+            m_pdu = pdu;
+            m_maxRetries = retries;
+            m_listener = listener;
+        }
+
+        private void start() {
+            synchronized (this) {
+                if (m_done) {
+                    // cancelled while it was queued
+                    m_window.release();
+                    return;
+                }
+                m_started = true;
+            }
+            m_inFlight.incrementAndGet();
+            transmit();
+        }
+
+        private void transmit() {
+            try {
+                m_session.send(m_pdu, m_target, null, this);
+                m_sent.incrementAndGet();
+            } catch (final IOException e) {
+                complete(new ResponseEvent(m_session, null, m_pdu, null, null, e), m_errors);
+            }
+        }
+
+        @Override
+        public void onResponse(final ResponseEvent event) {
+            // need to cancel the request here otherwise SNMP4J keeps it around forever
+            m_session.cancel(event.getRequest(), this);
+
+            if (event.getResponse() != null) {
+                complete(event, m_responses);
+            } else if (event.getError() != null) {
+                complete(event, m_errors);
+            } else {
+                final boolean retry;
+                synchronized (this) {
+                    if (m_done) return;
+                    retry = m_attempt < m_maxRetries;
+                    if (retry) m_attempt++;
+                }
+                if (retry) {
+                    LOG.debug("Retrying request to {} (retry {} of {})", m_target.getAddress(), m_attempt, m_maxRetries);
+                    m_retries.incrementAndGet();
+                    transmit();
+                } else {
+                    complete(event, m_timeouts);
+                }
+            }
+        }
+
+        private void complete(final ResponseEvent event, final AtomicLong counter) {
+            synchronized (this) {
+                if (m_done) return;
+                m_done = true;
+            }
+            counter.incrementAndGet();
+            m_inFlight.decrementAndGet();
+            m_window.release();
+            m_listener.onResponse(event);
+        }
+
+        /**
+         * Cancel the request.  The listener will not be called.
+         */
+        public void cancel() {
+            final boolean started;
+            synchronized (this) {
+                if (m_done) return;
+                m_done = true;
+                started = m_started;
+            }
+            if (started) {
+                m_session.cancel(m_pdu, this);
+                m_inFlight.decrementAndGet();
+                m_window.release();
+            } else {
+                m_window.remove(this);
+            }
+        }
+    }
+}
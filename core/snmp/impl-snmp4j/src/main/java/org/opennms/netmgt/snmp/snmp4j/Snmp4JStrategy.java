@@ -128,7 +128,7 @@ public class Snmp4JStrategy implements SnmpStrategy {
      */
         @Override
     public SnmpWalker createWalker(SnmpAgentConfig snmpAgentConfig, String name, CollectionTracker tracker) {
-        return new Snmp4JWalker(new Snmp4JAgentConfig(snmpAgentConfig), name, tracker);
+        return new Snmp4JWalker(new Snmp4JAgentConfig(snmpAgentConfig), name, tracker, Snmp4JSharedTransport.getInstance());
     }
     
     /**
@@ -240,6 +240,11 @@ public class Snmp4JStrategy implements SnmpStrategy {
      * adapted from default SnmpAgentConfig values to those compatible with the SNMP4J library.
      */
     protected SnmpValue[] send(Snmp4JAgentConfig agentConfig, PDU pdu, boolean expectResponse) {
+        final Snmp4JSharedTransport sharedTransport = Snmp4JSharedTransport.getInstance();
+        if (sharedTransport != null && expectResponse && !agentConfig.isSnmpV3()) {
+            return sendShared(sharedTransport, agentConfig, pdu);
+        }
+
         Snmp session;
 
         try {
@@ -280,6 +285,27 @@ public class Snmp4JStrategy implements SnmpStrategy {
     }
     
 
+    private SnmpValue[] sendShared(final Snmp4JSharedTransport sharedTransport, final Snmp4JAgentConfig agentConfig, final PDU pdu) {
+        try {
+            final ResponseEvent responseEvent = sharedTransport.sendAndWait(agentConfig, pdu);
+            if (responseEvent.getResponse() == null && responseEvent.getError() instanceof IOException) {
+                LOG.error("send: error during SNMP operation", responseEvent.getError());
+                return new SnmpValue[] { null };
+            }
+            return processResponse(agentConfig, responseEvent);
+        } catch (final InterruptedException e) {
+            LOG.warn("send: interrupted while waiting for a response from agent {}", agentConfig, e);
+            Thread.currentThread().interrupt();
+            return new SnmpValue[] { null };
+        } catch (final IOException e) {
+            LOG.error("send: error during SNMP operation", e);
+            return new SnmpValue[] { null };
+        } catch (final RuntimeException e) {
+            LOG.error("send: unexpected error during SNMP operation", e);
+            return new SnmpValue[] { null };
+        }
+    }
+
     protected PDU buildPdu(Snmp4JAgentConfig agentConfig, int pduType, SnmpObjId[] oids, SnmpValue[] values) {
         PDU pdu = agentConfig.createPdu(pduType);
         
@@ -164,7 +164,12 @@ public class Snmp4JWalker extends SnmpWalker {
         @Override
         public void onResponse(ResponseEvent responseEvent) {
             // need to cancel the request here otherwise SNMP4J Keeps it around forever... go figure
-            m_session.cancel(responseEvent.getRequest(), this);
+            if (m_session != null) {
+                m_session.cancel(responseEvent.getRequest(), this);
+            } else if (m_closed) {
+                // a late response on the shared transport for a walker that has already been closed
+                return;
+            }
 
             // Check to see if we got an interrupted exception
             if (responseEvent.getError() instanceof InterruptedException) {
@@ -189,11 +194,23 @@ public class Snmp4JWalker extends SnmpWalker {
     private final Target m_tgt;
     private final ResponseListener m_listener;
     private final Snmp4JAgentConfig m_agentConfig;
+    private final Snmp4JSharedTransport m_sharedTransport;
+    private volatile Snmp4JSharedTransport.Request m_pendingRequest;
+    private volatile boolean m_closed = false;
 
     public Snmp4JWalker(Snmp4JAgentConfig agentConfig, String name, CollectionTracker tracker) {
+        this(agentConfig, name, tracker, null);
+    }
+
+    /**
+     * @param sharedTransport if not null, SNMPv1/v2c PDUs are sent through
+     * this shared transport instead of a session owned by the walker
+     */
+    public Snmp4JWalker(Snmp4JAgentConfig agentConfig, String name, CollectionTracker tracker, Snmp4JSharedTransport sharedTransport) {
         super(agentConfig.getInetAddress(), name, agentConfig.getMaxVarsPerPdu(), agentConfig.getMaxRepetitions(), tracker);
         
         m_agentConfig = agentConfig;
+        m_sharedTransport = agentConfig.isSnmpV3() ? null : sharedTransport;
         
         m_tgt = agentConfig.getTarget();
         m_listener = new Snmp4JResponseListener();
@@ -217,6 +234,11 @@ public class Snmp4JWalker extends SnmpWalker {
         @Override
     protected void sendNextPdu(WalkerPduBuilder pduBuilder) throws IOException {
         Snmp4JPduBuilder snmp4JPduBuilder = (Snmp4JPduBuilder)pduBuilder;
+        if (m_sharedTransport != null) {
+            LOG.debug("Sending tracker pdu of size {} using the shared transport", snmp4JPduBuilder.getPdu().size());
+            m_pendingRequest = m_sharedTransport.send(m_agentConfig, snmp4JPduBuilder.getPdu(), m_listener);
+            return;
+        }
         if (m_session == null) {
             m_session = m_agentConfig.createSnmpSession();
             m_session.listen();
@@ -232,6 +254,12 @@ public class Snmp4JWalker extends SnmpWalker {
 
     @Override
     public void close() throws IOException {
+        m_closed = true;
+        final Snmp4JSharedTransport.Request pendingRequest = m_pendingRequest;
+        if (pendingRequest != null) {
+            pendingRequest.cancel();
+            m_pendingRequest = null;
+        }
         if (m_session != null) {
             m_session.close();
             m_session = null;
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j.jmx;
+
+import org.opennms.netmgt.snmp.snmp4j.Snmp4JSharedTransport;
+
+/**
+ * Exposes the counters of the shared SNMP transport, which is used by all
+ * of the daemons in the JVM, through JMX.
+ */
+public class SnmpSharedTransport implements SnmpSharedTransportMBean {
+    private Snmp4JSharedTransport getTransport() {
+        return Snmp4JSharedTransport.getInstance();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isEnabled() {
+        return getTransport() != null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSessions() {
+        final Snmp4JSharedTransport transport = getTransport();
+        return transport == null ? 0 : transport.getSessionCount();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMaxOutstandingPerAgent() {
+        final Snmp4JSharedTransport transport = getTransport();
+        return transport == null ? 0 : transport.getMaxOutstandingPerAgent();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getInFlight() {
+        final Snmp4JSharedTransport transport = getTransport();
+        return transport == null ? 0 : transport.getInFlight();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getQueued() {
+        final Snmp4JSharedTransport transport = getTransport();
+        return transport == null ? 0 : transport.getQueued();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getSent() {
+        final Snmp4JSharedTransport transport = getTransport();
+        return transport == null ? 0 : transport.getSent();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getResponses() {
+        final Snmp4JSharedTransport transport = getTransport();
+        return transport == null ? 0 : transport.getResponses();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTimeouts() {
+        final Snmp4JSharedTransport transport = getTransport();
+        return transport == null ? 0 : transport.getTimeouts();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRetries() {
+        final Snmp4JSharedTransport transport = getTransport();
+        return transport == null ? 0 : transport.getRetries();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getErrors() {
+        final Snmp4JSharedTransport transport = getTransport();
+        return transport == null ? 0 : transport.getErrors();
+    }
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j.jmx;
+
+/**
+ * <p>SnmpSharedTransportMBean interface.</p>
+ *
+ * All values are 0 when the shared SNMP transport is disabled.
+ */
+public interface SnmpSharedTransportMBean {
+    /**
+     * @return true if SNMP requests go through the shared transport
+     */
+    public boolean isEnabled();
+
+    /**
+     * @return The number of SNMP sessions the requests are spread over
+     */
+    public long getSessions();
+
+    /**
+     * @return The maximum number of outstanding requests per agent
+     */
+    public long getMaxOutstandingPerAgent();
+
+    /**
+     * @return The number of PDUs currently waiting for a response
+     */
+    public long getInFlight();
+
+    /**
+     * @return The number of requests waiting for room in their agent's window
+     */
+    public long getQueued();
+
+    /**
+     * @return The cumulative number of PDUs sent, including retries
+     */
+    public long getSent();
+
+    /**
+     * @return The cumulative number of responses received
+     */
+    public long getResponses();
+
+    /**
+     * @return The cumulative number of requests that timed out after all of their retries
+     */
+    public long getTimeouts();
+
+    /**
+     * @return The cumulative number of retries sent
+     */
+    public long getRetries();
+
+    /**
+     * @return The cumulative number of requests that failed with an error
+     */
+    public long getErrors();
+}
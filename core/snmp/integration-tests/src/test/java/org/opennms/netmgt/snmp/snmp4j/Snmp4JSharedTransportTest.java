@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.snmp.snmp4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.opennms.netmgt.snmp.ColumnTracker;
+import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.opennms.netmgt.snmp.SnmpObjId;
+import org.opennms.netmgt.snmp.SnmpResult;
+import org.opennms.netmgt.snmp.SnmpWalker;
+import org.snmp4j.PDU;
+import org.snmp4j.event.ResponseEvent;
+import org.snmp4j.event.ResponseListener;
+import org.snmp4j.smi.OID;
+import org.snmp4j.smi.VariableBinding;
+
+public class Snmp4JSharedTransportTest extends MockSnmpAgentTestCase {
+
+    @Override
+    protected boolean usingMockStrategy() {
+        return false;
+    }
+
+    private PDU createGetPdu(final Snmp4JAgentConfig agentConfig, final String oid) {
+        final PDU pdu = agentConfig.createPdu(PDU.GET);
+        pdu.add(new VariableBinding(new OID(oid)));
+        return pdu;
+    }
+
+    @Test
+    public void testSendAndWait() throws Exception {
+        final Snmp4JSharedTransport transport = new Snmp4JSharedTransport(1, 4);
+        try {
+            final Snmp4JAgentConfig agentConfig = new Snmp4JAgentConfig(getAgentConfig());
+            final ResponseEvent event = transport.sendAndWait(agentConfig, createGetPdu(agentConfig, ".1.3.5.1.1.3.0"));
+
+            assertNotNull("response should not be null", event.getResponse());
+            assertEquals(42, event.getResponse().get(0).getVariable().toInt());
+            assertEquals(1, transport.getSent());
+            assertEquals(1, transport.getResponses());
+            assertEquals(0, transport.getInFlight());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testOutstandingRequestsAreBoundedPerAgent() throws Exception {
+        final int requests = 50;
+        final Snmp4JSharedTransport transport = new Snmp4JSharedTransport(2, 2);
+        try {
+            final Snmp4JAgentConfig agentConfig = new Snmp4JAgentConfig(getAgentConfig());
+            final CountDownLatch latch = new CountDownLatch(requests);
+            final AtomicInteger responses = new AtomicInteger();
+            final AtomicInteger maxInFlight = new AtomicInteger();
+
+            for (int i = 0; i < requests; i++) {
+                transport.send(agentConfig, createGetPdu(agentConfig, ".1.3.5.1.1.3.0"), new ResponseListener() {
+                    @Override
+                    public void onResponse(final ResponseEvent event) {
+                        final int inFlight = transport.getInFlight();
+                        if (inFlight > maxInFlight.get()) maxInFlight.set(inFlight);
+                        if (event.getResponse() != null) responses.incrementAndGet();
+                        latch.countDown();
+                    }
+                });
+                assertTrue("no more than 2 requests may be outstanding", transport.getInFlight() <= 2);
+            }
+
+            assertTrue("all requests should complete", latch.await(30, TimeUnit.SECONDS));
+            assertEquals(requests, responses.get());
+            assertTrue("no more than 2 requests may be outstanding", maxInFlight.get() <= 2);
+            assertEquals(0, transport.getInFlight());
+            assertEquals(0, transport.getQueued());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testTimeoutsAreRetried() throws Exception {
+        final Snmp4JSharedTransport transport = new Snmp4JSharedTransport(1, 4);
+        try {
+            final SnmpAgentConfig config = getAgentConfig();
+            // nothing is listening on this port
+            config.setPort(getAgentPort() + 1);
+            config.setTimeout(100);
+            config.setRetries(2);
+            final Snmp4JAgentConfig agentConfig = new Snmp4JAgentConfig(config);
+
+            final ResponseEvent event = transport.sendAndWait(agentConfig, createGetPdu(agentConfig, ".1.3.5.1.1.3.0"));
+
+            assertEquals(null, event.getResponse());
+            assertEquals(3, transport.getSent());
+            assertEquals(2, transport.getRetries());
+            assertEquals(1, transport.getTimeouts());
+            assertEquals(0, transport.getInFlight());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    public void testWalkerWithSharedTransport() throws Exception {
+        final Snmp4JSharedTransport transport = new Snmp4JSharedTransport(1, 4);
+        try {
+            final CountingColumnTracker tracker = new CountingColumnTracker(SnmpObjId.get(".1.3.5.1.1"));
+            final SnmpWalker walker = new Snmp4JWalker(new Snmp4JAgentConfig(getAgentConfig()), "test", tracker, transport);
+            walker.start();
+            walker.waitFor();
+
+            assertFalse(walker.failed());
+            assertFalse(walker.timedOut());
+            assertTrue("the walk should return the test data", tracker.getCount() > 0);
+            assertEquals(0, transport.getInFlight());
+        } finally {
+            transport.close();
+        }
+    }
+
+    private static class CountingColumnTracker extends ColumnTracker {
+        private int m_count = 0;
+
+        public CountingColumnTracker(final SnmpObjId base) {
+            super(base);
+        }
+
+        public int getCount() {
+            return m_count;
+        }
+
+        @Override
+        protected void storeResult(final SnmpResult res) {
+            m_count++;
+        }
+    }
+}
@@ -22,9 +22,9 @@ import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventIpcManager;
 import org.opennms.netmgt.model.events.annotations.EventHandler;
 import org.opennms.netmgt.model.events.annotations.EventListener;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.SchedulerFactory;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
 import org.slf4j.Logger;
@@ -51,7 +51,7 @@ public class AccessPointMonitord extends AbstractServiceDaemon implements ReadyR
 
     private static AccessPointMonitord m_singleton = new AccessPointMonitord();
     private boolean m_initialized = false;
-    private LegacyScheduler m_scheduler = null;
+    private Scheduler m_scheduler = null;
     private EventIpcManager m_eventMgr = null;
     private AccessPointMonitorConfig m_pollerConfig;
     private AccessPointDao m_accessPointDao;
@@ -165,10 +165,10 @@ public class AccessPointMonitord extends AbstractServiceDaemon implements ReadyR
      * </p>
      * 
      * @param scheduler
-     *            a {@link org.opennms.netmgt.scheduler.LegacyScheduler}
+     *            a {@link org.opennms.netmgt.scheduler.Scheduler}
      *            object.
      */
-    public void setScheduler(LegacyScheduler scheduler) {
+    public void setScheduler(Scheduler scheduler) {
         m_scheduler = scheduler;
     }
 
@@ -358,7 +358,7 @@ public class AccessPointMonitord extends AbstractServiceDaemon implements ReadyR
         try {
             LOG.debug("init: Creating Access Point Monitor scheduler");
 
-            setScheduler(new LegacyScheduler(DAEMON_NAME, getPollerConfig().getThreads()));
+            setScheduler(SchedulerFactory.createScheduler(DAEMON_NAME, getPollerConfig().getThreads()));
         } catch (RuntimeException e) {
             LOG.error("init: Failed to create Access Point Monitor scheduler", e);
             throw e;
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collection.api;
+
+import java.util.Map;
+
+import org.opennms.netmgt.model.events.EventProxy;
+
+/**
+ * A {@link ServiceCollector} that can collect without blocking the calling
+ * thread while it waits for the agent to respond.
+ */
+public interface AsyncServiceCollector extends ServiceCollector {
+    /**
+     * Starts a collection and returns without waiting for it to finish.
+     * The callback is called once the collection has completed, usually on a
+     * thread of the underlying protocol library.
+     *
+     * @param agent a {@link org.opennms.netmgt.collection.api.CollectionAgent} object.
+     * @param eproxy a {@link org.opennms.netmgt.model.events.EventProxy} object.
+     * @param parameters a {@link java.util.Map} object.
+     * @param callback the callback to notify once the collection finished
+     */
+    void collect(CollectionAgent agent, EventProxy eproxy, Map<String, Object> parameters, CollectionCallback callback);
+}
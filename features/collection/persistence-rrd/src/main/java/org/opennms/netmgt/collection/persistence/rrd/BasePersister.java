@@ -171,8 +171,11 @@ public class BasePersister extends AbstractCollectionSetVisitor implements Persi
     @Override
     public void persistNumericAttribute(CollectionAttribute attribute) {
         LOG.debug("Persisting {} {}", attribute, (isIgnorePersist() ? ". Ignoring value because of sysUpTime changed." : ""));
-        String value = isIgnorePersist() ? "U" : attribute.getNumericValue();
-        m_builder.setAttributeValue(attribute.getAttributeType(), value);
+        if (isIgnorePersist()) {
+            m_builder.setAttributeValue(attribute.getAttributeType(), Double.NaN);
+        } else {
+            m_builder.setAttributeValue(attribute.getAttributeType(), attribute.getNumericValue());
+        }
         m_builder.setAttributeMetadata(attribute.getMetricIdentifier(), attribute.getName());
     }
 
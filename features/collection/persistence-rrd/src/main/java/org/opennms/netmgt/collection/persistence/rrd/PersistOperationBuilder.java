@@ -32,11 +32,12 @@ package org.opennms.netmgt.collection.persistence.rrd;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.regex.Pattern;
 
 import org.opennms.core.utils.StringUtils;
 import org.opennms.netmgt.collection.api.ByNameComparator;
@@ -47,6 +48,7 @@ import org.opennms.netmgt.collection.api.TimeKeeper;
 import org.opennms.netmgt.collection.support.DefaultTimeKeeper;
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdException;
+import org.opennms.netmgt.rrd.RrdLastValueCache;
 import org.opennms.netmgt.rrd.RrdRepository;
 import org.opennms.netmgt.rrd.RrdUtils;
 import org.slf4j.Logger;
@@ -64,7 +66,9 @@ public class PersistOperationBuilder {
     private final RrdRepository m_repository;
     private final String m_rrdName;
     private final ResourceIdentifier m_resource;
-    private final Map<CollectionAttributeType, String> m_declarations = new TreeMap<CollectionAttributeType, String>(new ByNameComparator());
+    private final Map<CollectionAttributeType, Double> m_declarations = new TreeMap<CollectionAttributeType, Double>(new ByNameComparator());
+    // whole numbers a double can't hold exactly (e.g. large Counter64 values), kept as collected
+    private final Map<CollectionAttributeType, String> m_exactValues = new HashMap<CollectionAttributeType, String>();
     private final Map<String, String> m_metaData = new LinkedHashMap<String, String>();
     private TimeKeeper m_timeKeeper = new DefaultTimeKeeper();
     
@@ -77,6 +81,11 @@ public class PersistOperationBuilder {
     /** Constant <code>MAX_DS_NAME_LENGTH=19</code> */
     public static final int MAX_DS_NAME_LENGTH = 19;
 
+    private static final Pattern WHOLE_NUMBER = Pattern.compile("-?\\d+");
+
+    /** The largest magnitude up to which every whole number is exactly a double. */
+    private static final long MAX_EXACT_LONG = 1L << 53;
+
     /**
      * <p>Constructor for PersistOperationBuilder.</p>
      *
@@ -109,17 +118,61 @@ public class PersistOperationBuilder {
      * @param attrType a {@link org.opennms.netmgt.collection.api.CollectionAttributeType} object.
      */
     public void declareAttribute(CollectionAttributeType attrType) {
-        m_declarations.put(attrType, "U");
+        m_declarations.put(attrType, Double.NaN);
+        m_exactValues.remove(attrType);
     }
 
     /**
      * <p>setAttributeValue</p>
      *
      * @param attrType a {@link org.opennms.netmgt.collection.api.CollectionAttributeType} object.
-     * @param value a {@link java.lang.String} object.
+     * @param value a {@link java.lang.String} object; "U", null or anything
+     * that is not a number is stored as unknown.  Whole numbers beyond
+     * 2^53 are written to the RRD exactly as given.
      */
     public void setAttributeValue(CollectionAttributeType attrType, String value) {
+        m_declarations.put(attrType, parseValue(value));
+        if (isInexactWholeNumber(value)) {
+            m_exactValues.put(attrType, value);
+        } else {
+            m_exactValues.remove(attrType);
+        }
+    }
+
+    /**
+     * <p>setAttributeValue</p>
+     *
+     * @param attrType a {@link org.opennms.netmgt.collection.api.CollectionAttributeType} object.
+     * @param value the value, or {@link Double#NaN} if it is unknown.
+     */
+    public void setAttributeValue(CollectionAttributeType attrType, double value) {
         m_declarations.put(attrType, value);
+        m_exactValues.remove(attrType);
+    }
+
+    private static double parseValue(String value) {
+        if (value == null || "U".equals(value)) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (final NumberFormatException e) {
+            LOG.debug("Value '{}' is not a number, storing it as unknown", value);
+            return Double.NaN;
+        }
+    }
+
+    private static boolean isInexactWholeNumber(String value) {
+        if (value == null || !WHOLE_NUMBER.matcher(value).matches()) {
+            return false;
+        }
+        try {
+            final long l = Long.parseLong(value);
+            return l > MAX_EXACT_LONG || l < -MAX_EXACT_LONG;
+        } catch (final NumberFormatException e) {
+            // beyond a long, e.g. a Counter64 above 2^63
+            return true;
+        }
     }
     
     public void setAttributeMetadata(String metricIdentifier, String name) {
@@ -173,8 +226,16 @@ public class PersistOperationBuilder {
             final String absolutePath = getResourceDir(m_resource).getAbsolutePath();
             List<RrdDataSource> dataSources = getDataSources();
             if (dataSources != null && dataSources.size() > 0) {
+                final long timestamp = m_timeKeeper.getCurrentTime();
+                final double[] values = getValues(dataSources.size());
                 RrdUtils.createRRD(ownerName, absolutePath, m_rrdName, getRepository().getStep(), dataSources, getRepository().getRraList(), getAttributeMappings());
-                RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, m_timeKeeper.getCurrentTime(), getValues());
+                if (m_exactValues.isEmpty()) {
+                    RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, timestamp, values);
+                } else {
+                    // the typed update would round these through a double, so spell them out
+                    RrdUtils.updateRRD(ownerName, absolutePath, m_rrdName, timestamp, getValueString(values));
+                }
+                RrdLastValueCache.update(absolutePath + File.separator + m_rrdName + RrdUtils.getExtension(), dataSources, timestamp, values);
                 RrdUtils.createMetaDataFile(absolutePath, m_rrdName, m_metaData);
             }
         } catch (FileNotFoundException e) {
@@ -183,20 +244,43 @@ public class PersistOperationBuilder {
         }
     }
 
-    private String getValues() {
-        boolean first = true;
-        StringBuffer values = new StringBuffer();
-        for (Iterator<CollectionAttributeType> iter = m_declarations.keySet().iterator(); iter.hasNext();) {
-        	CollectionAttributeType attrDef = iter.next();
-            String value = m_declarations.get(attrDef);
-            if (!first) {
-                values.append(':');
-            } else {
-                first = false;
+    /**
+     * Returns the values in the same order as {@link #getDataSources()}, so
+     * attributes whose type can't be stored in an RRD are skipped here too.
+     */
+    private double[] getValues(int dataSourceCount) {
+        final double[] values = new double[dataSourceCount];
+        int i = 0;
+        for (Map.Entry<CollectionAttributeType, Double> entry : m_declarations.entrySet()) {
+            if (PersistOperationBuilder.mapType(entry.getKey().getType()) != null) {
+                values[i++] = entry.getValue();
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Formats the values into the colon separated form, using the collected
+     * text for the values in {@link #m_exactValues}.
+     */
+    private String getValueString(double[] values) {
+        final StringBuilder sb = new StringBuilder();
+        int i = 0;
+        for (Map.Entry<CollectionAttributeType, Double> entry : m_declarations.entrySet()) {
+            if (PersistOperationBuilder.mapType(entry.getKey().getType()) != null) {
+                if (i > 0) {
+                    sb.append(':');
+                }
+                final String exact = m_exactValues.get(entry.getKey());
+                if (exact != null) {
+                    sb.append(exact);
+                } else {
+                    sb.append(RrdUtils.formatValue(values[i]));
+                }
+                i++;
             }
-            values.append(value);
         }
-        return values.toString();
+        return sb.toString();
     }
 
     private Map<String, String> getAttributeMappings() {
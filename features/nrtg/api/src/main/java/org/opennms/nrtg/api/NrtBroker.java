@@ -43,5 +43,15 @@ public interface NrtBroker {
     
     public void publishCollectionJob(CollectionJob collectionJob);
     public List<MeasurementSet> receiveMeasurementSets(String destination);
-    
+
+    /**
+     * Receive the measurement sets for a destination, waiting up to
+     * <code>timeout</code> milliseconds for at least one to arrive if none
+     * are available yet. This lets the web UI long-poll instead of polling
+     * in a loop.
+     *
+     * @return the measurement sets, never null (empty if the wait timed out)
+     */
+    public List<MeasurementSet> receiveMeasurementSets(String destination, long timeout);
+
 }
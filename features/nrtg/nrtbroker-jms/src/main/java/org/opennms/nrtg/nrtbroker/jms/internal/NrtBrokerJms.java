@@ -71,11 +71,28 @@ public class NrtBrokerJms implements NrtBroker {
 
     @Override
     public List<MeasurementSet> receiveMeasurementSets(String nrtCollectionTaskId) {
+        return receiveMeasurementSets(nrtCollectionTaskId, 125);
+    }
+
+    /**
+     * The first receive waits up to the timeout, the following ones only
+     * drain what is already on the queue.
+     */
+    @Override
+    public List<MeasurementSet> receiveMeasurementSets(String nrtCollectionTaskId, long timeout) {
         List<MeasurementSet> result = new ArrayList<MeasurementSet>();
 
         m_jmsTemplate.setReceiveTimeout(125);
 
-        Message message = m_jmsTemplate.receive(nrtCollectionTaskId);
+        Message message;
+        if (timeout > 125) {
+            // use a template of its own so the receive timeout of the shared one stays short
+            final JmsTemplate waitingTemplate = new JmsTemplate(m_jmsTemplate.getConnectionFactory());
+            waitingTemplate.setReceiveTimeout(timeout);
+            message = waitingTemplate.receive(nrtCollectionTaskId);
+        } else {
+            message = m_jmsTemplate.receive(nrtCollectionTaskId);
+        }
 
         while (message != null) {
             MeasurementSet measurementSet;
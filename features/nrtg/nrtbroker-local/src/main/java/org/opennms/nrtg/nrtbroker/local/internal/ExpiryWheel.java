@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.nrtg.nrtbroker.local.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timer wheel that finds the destinations nobody has received from
+ * for a while.
+ *
+ * A destination sits in the bucket of the tick its deadline falls into.
+ * Receiving only moves the deadline forward; the destination is put into the
+ * right bucket again when its old bucket comes around. Each tick therefore
+ * only looks at the destinations that may have expired during that tick
+ * instead of at every destination.
+ *
+ * {@link #schedule(MeasurementSetRing)} may be called from any thread,
+ * {@link #advance(long)} only from the one thread that drives the wheel.
+ */
+class ExpiryWheel {
+
+    private final long m_tickMillis;
+    private final Queue<MeasurementSetRing>[] m_buckets;
+
+    private volatile long m_currentTick;
+
+    @SuppressWarnings("unchecked")
+    ExpiryWheel(final long tickMillis, final int ticksPerWheel, final long now) {
+        m_tickMillis = tickMillis;
+        m_buckets = new Queue[ticksPerWheel];
+        for (int i = 0; i < ticksPerWheel; i++) {
+            m_buckets[i] = new ConcurrentLinkedQueue<MeasurementSetRing>();
+        }
+        m_currentTick = now / tickMillis;
+    }
+
+    long getTickMillis() {
+        return m_tickMillis;
+    }
+
+    void schedule(final MeasurementSetRing ring) {
+        // never schedule into the bucket that is being processed right now
+        final long tick = Math.max(ring.getDeadline() / m_tickMillis, m_currentTick + 1);
+        m_buckets[(int) (tick % m_buckets.length)].add(ring);
+    }
+
+    /**
+     * Process all ticks up to <code>now</code>.
+     *
+     * @return the destinations whose deadline has passed
+     */
+    List<MeasurementSetRing> advance(final long now) {
+        final List<MeasurementSetRing> expired = new ArrayList<MeasurementSetRing>();
+        final long lastTick = now / m_tickMillis;
+
+        while (m_currentTick <= lastTick) {
+            final Queue<MeasurementSetRing> bucket = m_buckets[(int) (m_currentTick % m_buckets.length)];
+            final List<MeasurementSetRing> due = new ArrayList<MeasurementSetRing>();
+            MeasurementSetRing ring;
+            while ((ring = bucket.poll()) != null) {
+                due.add(ring);
+            }
+            m_currentTick++;
+
+            for (final MeasurementSetRing candidate : due) {
+                if (candidate.getDeadline() <= now) {
+                    expired.add(candidate);
+                } else {
+                    // it was used since it was scheduled, or it's due on a later lap
+                    schedule(candidate);
+                }
+            }
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.nrtg.nrtbroker.local.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.opennms.nrtg.api.model.MeasurementSet;
+
+/**
+ * Bounded ring buffer of the measurement sets waiting for one destination.
+ *
+ * Publishing never takes a lock: a publisher claims a sequence number and
+ * writes its slot. When the web UI falls behind, the oldest measurement sets
+ * are overwritten, which is what a real-time graph wants anyway. Receiving
+ * is serialized per destination and may wait for the next publish.
+ */
+class MeasurementSetRing {
+
+    private static final class Slot {
+        private final long m_sequence;
+        private final MeasurementSet m_measurementSet;
+
+        private Slot(final long sequence, final MeasurementSet measurementSet) {
+            m_sequence = sequence;
+            m_measurementSet = measurementSet;
+        }
+    }
+
+    private final String m_destination;
+    private final AtomicReferenceArray<Slot> m_slots;
+    private final int m_mask;
+
+    /** next sequence to be claimed by a publisher */
+    private final AtomicLong m_head = new AtomicLong();
+
+    /** next sequence to be read, only touched while holding the receive lock */
+    private long m_tail = 0;
+
+    private final AtomicLong m_dropped = new AtomicLong();
+
+    private volatile Thread m_waiter;
+
+    private volatile long m_deadline;
+
+    /**
+     * @param capacity the number of measurement sets kept, rounded up to
+     *        the next power of two
+     */
+    MeasurementSetRing(final String destination, final int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        m_destination = destination;
+        m_slots = new AtomicReferenceArray<Slot>(size);
+        m_mask = size - 1;
+    }
+
+    String getDestination() {
+        return m_destination;
+    }
+
+    int getCapacity() {
+        return m_mask + 1;
+    }
+
+    long getDropped() {
+        return m_dropped.get();
+    }
+
+    /**
+     * The time (in milliseconds) after which this destination may be
+     * expired if nobody receives from it.
+     */
+    long getDeadline() {
+        return m_deadline;
+    }
+
+    void setDeadline(final long deadline) {
+        m_deadline = deadline;
+    }
+
+    void publish(final MeasurementSet measurementSet) {
+        final long sequence = m_head.getAndIncrement();
+        m_slots.set((int) (sequence & m_mask), new Slot(sequence, measurementSet));
+
+        final Thread waiter = m_waiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Take everything that has been published since the last call, waiting
+     * up to <code>timeout</code> milliseconds for something to be published
+     * if there is nothing yet.
+     */
+    synchronized List<MeasurementSet> receive(final long timeout) {
+        List<MeasurementSet> measurementSets = drain();
+        if (!measurementSets.isEmpty() || timeout <= 0) {
+            return measurementSets;
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        m_waiter = Thread.currentThread();
+        try {
+            long remaining;
+            while (measurementSets.isEmpty() && (remaining = deadline - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+                if (m_head.get() == m_tail) {
+                    LockSupport.parkNanos(this, remaining);
+                }
+                measurementSets = drain();
+            }
+        } finally {
+            m_waiter = null;
+        }
+        return measurementSets;
+    }
+
+    private List<MeasurementSet> drain() {
+        final long head = m_head.get();
+        if (head == m_tail) {
+            return new ArrayList<MeasurementSet>(0);
+        }
+
+        // anything older than one lap has been overwritten already
+        if (head - m_tail > m_slots.length()) {
+            m_dropped.addAndGet(head - m_tail - m_slots.length());
+            m_tail = head - m_slots.length();
+        }
+
+        final List<MeasurementSet> measurementSets = new ArrayList<MeasurementSet>((int) (head - m_tail));
+        long sequence = m_tail;
+        while (sequence < head) {
+            final Slot slot = m_slots.get((int) (sequence & m_mask));
+            if (slot == null || slot.m_sequence < sequence) {
+                // claimed, but the publisher hasn't written it yet
+                break;
+            }
+            if (slot.m_sequence == sequence) {
+                measurementSets.add(slot.m_measurementSet);
+                // don't keep delivered measurement sets reachable
+                m_slots.compareAndSet((int) (sequence & m_mask), slot, null);
+            } else {
+                // overwritten by a publisher that lapped us
+                m_dropped.incrementAndGet();
+            }
+            sequence++;
+        }
+        m_tail = sequence;
+        return measurementSets;
+    }
+}
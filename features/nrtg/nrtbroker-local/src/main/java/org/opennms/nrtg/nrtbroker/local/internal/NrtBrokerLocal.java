@@ -28,11 +28,15 @@
 
 package org.opennms.nrtg.nrtbroker.local.internal;
 
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.opennms.nrtg.api.NrtBroker;
 import org.opennms.nrtg.api.ProtocolCollector;
@@ -42,67 +46,54 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Broker that runs the collection jobs in-process and hands the measurement
+ * sets to the web UI.
+ *
+ * Every destination gets a bounded {@link MeasurementSetRing}, so publishing
+ * doesn't contend with the other destinations or with the UI polling.
+ * Destinations that haven't been received from for
+ * {@link #setExpiryTimeout(long) expiryTimeout} milliseconds are removed by
+ * an {@link ExpiryWheel} that is advanced by a background thread.
+ *
  * @author Markus Neumann
  * @author Christian Pape
  */
 
 public class NrtBrokerLocal implements NrtBroker, NrtBrokerLocalMBean {
 
-    private static class TimedOutMap {
-        private Map<String, List<MeasurementSet>> m_measurementSets = new HashMap<String, List<MeasurementSet>>();
-        private Map<String, Date> m_lastAccess = new HashMap<String, Date>();
-
-        public synchronized List<MeasurementSet> getAndRemove(final String key) {
-            m_lastAccess.put(key, new Date());
-            final List<MeasurementSet> measurementSetList = m_measurementSets.get(key);
-            m_measurementSets.put(key, new ArrayList<MeasurementSet>());
-
-            return measurementSetList;
-        }
+    private static Logger logger = LoggerFactory.getLogger("OpenNMS.WEB." + NrtBrokerLocal.class);
 
-        public synchronized void addMeasurementSets(final Map<String, MeasurementSet> measurementSets) {
-            for (final Map.Entry<String, MeasurementSet> entry : measurementSets.entrySet()) {
-                String[] arr = entry.getKey().split(",");
+    private static final long EXPIRY_TICK_MILLIS = 1000;
 
-                for (String destination : arr) {
-                    addMeasurementSet(destination.trim(), entry.getValue());
-                }
+    private List<ProtocolCollector> m_protocolCollectors;
+    private final ConcurrentMap<String, MeasurementSetRing> m_measurementSets = new ConcurrentHashMap<String, MeasurementSetRing>();
+    private final ExpiryWheel m_expiryWheel;
+    private final ScheduledExecutorService m_housekeeper;
+
+    private int m_ringSize = 256;
+    private long m_expiryTimeout = 120000;
+
+    public NrtBrokerLocal() {
+        m_expiryWheel = new ExpiryWheel(EXPIRY_TICK_MILLIS, 256, System.currentTimeMillis());
+        m_housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "NrtBrokerLocal-Housekeeping");
+                thread.setDaemon(true);
+                return thread;
             }
-
-            doHousekeeping();
-        }
-
-        public synchronized void addMeasurementSet(String key, MeasurementSet measurementSet) {
-            if (!m_measurementSets.containsKey(key)) {
-                m_measurementSets.put(key, new ArrayList<MeasurementSet>());
+        });
+        m_housekeeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                doHousekeeping(System.currentTimeMillis());
             }
-
-            List<MeasurementSet> measurementSetList = m_measurementSets.get(key);
-            measurementSetList.add(measurementSet);
-        }
-
-        private synchronized void doHousekeeping() {
-            for (final String key : m_lastAccess.keySet()) {
-                final Date lastAccess = m_lastAccess.get(key);
-                final Date now = new Date();
-                if (now.getTime() - lastAccess.getTime() > 120000) {
-                    m_lastAccess.remove(key);
-                    m_measurementSets.remove(key);
-
-                    logger.warn("Timed out object removed '{}'", key);
-                }
-            }
-        }
-
-        private synchronized Integer getAmountOfMeasurementSets() {
-            return m_measurementSets.size();
-        }
+        }, EXPIRY_TICK_MILLIS, EXPIRY_TICK_MILLIS, TimeUnit.MILLISECONDS);
     }
 
-    private static Logger logger = LoggerFactory.getLogger("OpenNMS.WEB." + NrtBrokerLocal.class);
-
-    private List<ProtocolCollector> m_protocolCollectors;
-    private TimedOutMap m_measurementSets = new TimedOutMap();
+    public void destroy() {
+        m_housekeeper.shutdownNow();
+    }
 
     @Override
     public void publishCollectionJob(CollectionJob collectionJob) {
@@ -111,15 +102,54 @@ public class NrtBrokerLocal implements NrtBroker, NrtBrokerLocalMBean {
         if (protocolCollector != null) {
             collectionJob = protocolCollector.collect(collectionJob);
             collectionJob.setFinishedTimestamp(new Date());
-            m_measurementSets.addMeasurementSets(collectionJob.getMeasurementSetsByDestination());
+            addMeasurementSets(collectionJob.getMeasurementSetsByDestination());
         } else {
             logger.warn("Cannot find collector for protocol {}", collectionJob.getService());
         }
     }
 
+    protected void addMeasurementSets(final Map<String, MeasurementSet> measurementSets) {
+        for (final Map.Entry<String, MeasurementSet> entry : measurementSets.entrySet()) {
+            String[] arr = entry.getKey().split(",");
+
+            for (String destination : arr) {
+                getRing(destination.trim()).publish(entry.getValue());
+            }
+        }
+    }
+
     @Override
     public List<MeasurementSet> receiveMeasurementSets(String destination) {
-        return m_measurementSets.getAndRemove(destination);
+        return receiveMeasurementSets(destination, 0);
+    }
+
+    @Override
+    public List<MeasurementSet> receiveMeasurementSets(String destination, long timeout) {
+        final MeasurementSetRing ring = getRing(destination);
+        ring.setDeadline(System.currentTimeMillis() + Math.max(timeout, 0) + m_expiryTimeout);
+        return ring.receive(timeout);
+    }
+
+    private MeasurementSetRing getRing(final String destination) {
+        MeasurementSetRing ring = m_measurementSets.get(destination);
+        if (ring == null) {
+            final MeasurementSetRing newRing = new MeasurementSetRing(destination, m_ringSize);
+            newRing.setDeadline(System.currentTimeMillis() + m_expiryTimeout);
+            ring = m_measurementSets.putIfAbsent(destination, newRing);
+            if (ring == null) {
+                ring = newRing;
+                m_expiryWheel.schedule(newRing);
+            }
+        }
+        return ring;
+    }
+
+    protected void doHousekeeping(final long now) {
+        for (final MeasurementSetRing ring : m_expiryWheel.advance(now)) {
+            if (m_measurementSets.remove(ring.getDestination(), ring)) {
+                logger.warn("Timed out object removed '{}'", ring.getDestination());
+            }
+        }
     }
 
     public ProtocolCollector getProtocolCollector(String protocol) {
@@ -140,8 +170,41 @@ public class NrtBrokerLocal implements NrtBroker, NrtBrokerLocalMBean {
         return m_protocolCollectors;
     }
 
+    /**
+     * The number of measurement sets kept per destination. When the UI
+     * falls further behind than this the oldest ones are dropped.
+     */
+    public void setRingSize(final int ringSize) {
+        m_ringSize = ringSize;
+    }
+
+    public int getRingSize() {
+        return m_ringSize;
+    }
+
+    /**
+     * Milliseconds after which a destination that nobody receives from is
+     * removed.
+     */
+    public void setExpiryTimeout(final long expiryTimeout) {
+        m_expiryTimeout = expiryTimeout;
+    }
+
+    public long getExpiryTimeout() {
+        return m_expiryTimeout;
+    }
+
     @Override
     public Integer getMeasurementSetSize() {
-        return m_measurementSets.getAmountOfMeasurementSets();
+        return m_measurementSets.size();
+    }
+
+    @Override
+    public Long getDroppedMeasurementSets() {
+        long dropped = 0;
+        for (final MeasurementSetRing ring : m_measurementSets.values()) {
+            dropped += ring.getDropped();
+        }
+        return dropped;
     }
 }
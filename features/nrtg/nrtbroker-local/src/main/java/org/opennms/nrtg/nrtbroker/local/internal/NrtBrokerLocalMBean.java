@@ -34,4 +34,6 @@ package org.opennms.nrtg.nrtbroker.local.internal;
  */
 public interface NrtBrokerLocalMBean {
     public Integer getMeasurementSetSize();
+
+    public Long getDroppedMeasurementSets();
 }
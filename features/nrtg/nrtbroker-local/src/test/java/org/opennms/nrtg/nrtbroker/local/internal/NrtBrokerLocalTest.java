@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.nrtg.nrtbroker.local.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.nrtg.api.model.LightweightMeasurementSet;
+import org.opennms.nrtg.api.model.MeasurementSet;
+
+public class NrtBrokerLocalTest {
+
+    private NrtBrokerLocal m_broker;
+
+    @Before
+    public void setUp() {
+        m_broker = new NrtBrokerLocal();
+    }
+
+    @After
+    public void tearDown() {
+        m_broker.destroy();
+    }
+
+    @Test
+    public void testPublishToSeveralDestinations() {
+        final MeasurementSet measurementSet = measurementSet(1);
+        m_broker.addMeasurementSets(Collections.singletonMap("task1, task2", measurementSet));
+
+        assertEquals(2, m_broker.getMeasurementSetSize().intValue());
+        assertEquals(Collections.singletonList(measurementSet), m_broker.receiveMeasurementSets("task1"));
+        assertEquals(Collections.singletonList(measurementSet), m_broker.receiveMeasurementSets("task2"));
+        assertTrue(m_broker.receiveMeasurementSets("task1").isEmpty());
+        assertTrue(m_broker.receiveMeasurementSets("unknown").isEmpty());
+    }
+
+    @Test
+    public void testRingDropsOldestWhenFull() {
+        final MeasurementSetRing ring = new MeasurementSetRing("task", 5);
+        assertEquals(8, ring.getCapacity());
+
+        for (int i = 0; i < 20; i++) {
+            ring.publish(measurementSet(i));
+        }
+
+        final List<MeasurementSet> received = ring.receive(0);
+        assertEquals(8, received.size());
+        assertEquals(12, ((LightweightMeasurementSet) received.get(0)).getNodeId());
+        assertEquals(19, ((LightweightMeasurementSet) received.get(7)).getNodeId());
+        assertEquals(12, ring.getDropped());
+
+        ring.publish(measurementSet(20));
+        assertEquals(Collections.singletonList(20), nodeIds(ring.receive(0)));
+    }
+
+    @Test
+    public void testLongPollWakesUpOnPublish() throws Exception {
+        // make sure the destination exists before the poll starts waiting
+        assertTrue(m_broker.receiveMeasurementSets("task").isEmpty());
+
+        final MeasurementSet measurementSet = measurementSet(1);
+        new Thread("publisher") {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (final InterruptedException e) {
+                    return;
+                }
+                m_broker.addMeasurementSets(Collections.singletonMap("task", measurementSet));
+            }
+        }.start();
+
+        final long start = System.currentTimeMillis();
+        final List<MeasurementSet> received = m_broker.receiveMeasurementSets("task", 10000);
+        final long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(Collections.singletonList(measurementSet), received);
+        assertTrue("poll should return as soon as something is published, took " + elapsed + "ms", elapsed < 5000);
+
+        final long timeoutStart = System.currentTimeMillis();
+        assertTrue(m_broker.receiveMeasurementSets("task", 100).isEmpty());
+        assertTrue(System.currentTimeMillis() - timeoutStart >= 90);
+    }
+
+    @Test
+    public void testConcurrentPublishers() throws Exception {
+        m_broker.setRingSize(4096);
+        final int threads = 4;
+        final int perThread = 1000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread("publisher-" + t) {
+                @Override
+                public void run() {
+                    for (int i = 0; i < perThread; i++) {
+                        m_broker.addMeasurementSets(Collections.singletonMap("task", measurementSet(i)));
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+
+        // receive while the publishers are still running
+        final long deadline = System.currentTimeMillis() + 10000;
+        int received = 0;
+        while (received < threads * perThread && System.currentTimeMillis() < deadline) {
+            received += m_broker.receiveMeasurementSets("task", 100).size();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(threads * perThread, received);
+        assertEquals(0, m_broker.getDroppedMeasurementSets().longValue());
+    }
+
+    @Test
+    public void testUnusedDestinationsExpire() {
+        final ExpiryWheel wheel = new ExpiryWheel(1000, 8, 0);
+        final MeasurementSetRing idle = new MeasurementSetRing("idle", 4);
+        final MeasurementSetRing busy = new MeasurementSetRing("busy", 4);
+        final MeasurementSetRing distant = new MeasurementSetRing("distant", 4);
+        idle.setDeadline(3000);
+        busy.setDeadline(3000);
+        // more than one lap of the wheel away
+        distant.setDeadline(20000);
+        wheel.schedule(idle);
+        wheel.schedule(busy);
+        wheel.schedule(distant);
+
+        assertTrue(wheel.advance(2000).isEmpty());
+
+        busy.setDeadline(6000);
+        assertEquals(Collections.singletonList(idle), wheel.advance(3500));
+        assertTrue(wheel.advance(5000).isEmpty());
+        assertEquals(Collections.singletonList(busy), wheel.advance(6000));
+        assertTrue(wheel.advance(19000).isEmpty());
+        assertEquals(Collections.singletonList(distant), wheel.advance(20000));
+    }
+
+    @Test
+    public void testHousekeepingRemovesExpiredDestinations() {
+        m_broker.setExpiryTimeout(0);
+        m_broker.addMeasurementSets(Collections.singletonMap("task", measurementSet(1)));
+        assertEquals(1, m_broker.getMeasurementSetSize().intValue());
+
+        m_broker.doHousekeeping(System.currentTimeMillis() + 2000);
+        assertEquals(0, m_broker.getMeasurementSetSize().intValue());
+    }
+
+    private static MeasurementSet measurementSet(final int nodeId) {
+        return new LightweightMeasurementSet(nodeId, "SNMP", "127.0.0.1", new Date());
+    }
+
+    private static List<Integer> nodeIds(final List<MeasurementSet> measurementSets) {
+        final List<Integer> nodeIds = new ArrayList<Integer>();
+        for (final MeasurementSet measurementSet : measurementSets) {
+            nodeIds.add(((LightweightMeasurementSet) measurementSet).getNodeId());
+        }
+        return nodeIds;
+    }
+}
@@ -171,7 +171,20 @@ public class NrtController {
      * @return Json Representation of MeasurementeSets for the given nrtCollectionTaskId
      */
     public String getMeasurementSetsForDestination(String nrtCollectionTaskId) {
-        List<MeasurementSet> measurementSets = m_nrtBroker.receiveMeasurementSets(nrtCollectionTaskId);
+        return getMeasurementSetsForDestination(nrtCollectionTaskId, 0);
+    }
+
+    /**
+     * Like {@link #getMeasurementSetsForDestination(String)}, but waits up to
+     * <code>timeout</code> milliseconds for measurements to arrive if there
+     * are none yet, so the JS-Graphing-Frontend can long-poll the broker.
+     *
+     * @param nrtCollectionTaskId
+     * @param timeout milliseconds to wait for the first MeasurementSet
+     * @return Json Representation of MeasurementeSets for the given nrtCollectionTaskId
+     */
+    public String getMeasurementSetsForDestination(String nrtCollectionTaskId, long timeout) {
+        List<MeasurementSet> measurementSets = m_nrtBroker.receiveMeasurementSets(nrtCollectionTaskId, timeout);
 
         StringBuffer buffer = new StringBuffer();
 
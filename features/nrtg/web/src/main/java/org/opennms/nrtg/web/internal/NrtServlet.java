@@ -43,6 +43,12 @@ public class NrtServlet extends HttpServlet {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Upper bound for the <code>wait</code> parameter of a poll, in
+     * milliseconds.
+     */
+    private static final long MAX_POLL_WAIT = 30000;
+
     private NrtController m_controller;
 
     public void setController(NrtController controller) {
@@ -59,7 +65,7 @@ public class NrtServlet extends HttpServlet {
             m_controller.nrtCollectionJobTrigger(req.getParameter("nrtCollectionTaskId"), httpSession);
 
             if ("true".equals(req.getParameter("poll"))) {
-                resp.getOutputStream().println(m_controller.getMeasurementSetsForDestination(req.getParameter("nrtCollectionTaskId")));
+                resp.getOutputStream().println(m_controller.getMeasurementSetsForDestination(req.getParameter("nrtCollectionTaskId"), getPollWait(req)));
             }
         } else if (req.getParameter("resourceId") != null && req.getParameter("report") != null) {
             ModelAndView modelAndView = m_controller.nrtStart(req.getParameter("resourceId"), req.getParameter("report"), httpSession);
@@ -76,6 +82,22 @@ public class NrtServlet extends HttpServlet {
         }
     }
 
+    /**
+     * A poll may ask to be held open until measurements arrive by passing
+     * <code>wait</code> (in milliseconds).
+     */
+    private static long getPollWait(HttpServletRequest req) {
+        final String wait = req.getParameter("wait");
+        if (wait == null) {
+            return 0;
+        }
+        try {
+            return Math.min(Math.max(Long.parseLong(wait), 0), MAX_POLL_WAIT);
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
     public String getTemplateAsString(String templateName) throws IOException {
 
         BufferedReader r = null;
@@ -28,6 +28,8 @@
 
 package org.opennms.netmgt.alarmd.api;
 
+import java.io.ObjectStreamException;
+import java.io.Serializable;
 import java.net.InetAddress;
 import java.util.Date;
 import java.util.HashMap;
@@ -47,8 +49,10 @@ import org.opennms.netmgt.model.TroubleTicketState;
  * 
  * @author <a mailto:david@opennms.org>David Hustace</a>
  */
-public class NorthboundAlarm implements Preservable {
+public class NorthboundAlarm implements Preservable, Serializable {
 	
+	private static final long serialVersionUID = 2478358497407582436L;
+
 	public static final NorthboundAlarm SYNC_LOST_ALARM = new NorthboundAlarm(-1, "uei.opennms.org/alarmd/northbounderSyncLost");
 
 	public enum AlarmType {
@@ -539,4 +543,15 @@ public class NorthboundAlarm implements Preservable {
 		return m_nodeId;
 	}
 
+    /**
+     * Keeps the sync lost alarm a singleton when alarms are read back from
+     * an alarm journal.
+     */
+    private Object readResolve() throws ObjectStreamException {
+        if (SYNC_LOST_ALARM.m_id.equals(m_id) && SYNC_LOST_ALARM.m_uei.equals(m_uei)) {
+            return SYNC_LOST_ALARM;
+        }
+        return this;
+    }
+
 }
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.alarmd.api.support;
 
+import java.io.File;
 import java.util.List;
 
 import org.opennms.netmgt.alarmd.api.NorthboundAlarm;
@@ -45,10 +46,16 @@ import org.opennms.netmgt.alarmd.api.NorthbounderException;
  * 
  * preserve, accept and discard are called to add the Alarms to the queue as appropriate.  
  * 
+ * If the org.opennms.alarmd.northbounder.journalDirectory system property is set, each
+ * northbounder keeps its queue in a journal in a subdirectory named after it, which survives
+ * outages of the Southbound Interface as well as restarts.
+ * 
  * @author <a mailto:david@opennms.org>David Hustace</a>
  */
 
 public abstract class AbstractNorthbounder implements Northbounder, Runnable, StatusFactory<NorthboundAlarm> {
+
+    public static final String JOURNAL_DIRECTORY_PROPERTY = "org.opennms.alarmd.northbounder.journalDirectory";
     
     private final String m_name;
     private final AlarmQueue<NorthboundAlarm> m_queue;
@@ -60,6 +67,11 @@ public abstract class AbstractNorthbounder implements Northbounder, Runnable, St
     protected AbstractNorthbounder(String name) {
     	m_name = name;
     	m_queue = new AlarmQueue<NorthboundAlarm>(this);
+
+    	final String journalDirectory = System.getProperty(JOURNAL_DIRECTORY_PROPERTY);
+    	if (journalDirectory != null && journalDirectory.trim().length() > 0) {
+    	    setJournalDirectory(new File(journalDirectory.trim(), name.replaceAll("[^\\w.-]", "_")));
+    	}
     }
 
     @Override
@@ -83,6 +95,51 @@ public abstract class AbstractNorthbounder implements Northbounder, Runnable, St
         m_queue.setMaxPreservedAlarms(maxPreservedAlarms);
     }
 
+    /** Keeps queued alarms in a journal in this directory rather than in memory. **/
+    public void setJournalDirectory(File journalDirectory) {
+        m_queue.setJournalDirectory(journalDirectory);
+    }
+
+    public void setJournalSegmentSize(int journalSegmentSize) {
+        m_queue.setJournalSegmentSize(journalSegmentSize);
+    }
+
+    public void setJournalSyncBatchSize(int journalSyncBatchSize) {
+        m_queue.setJournalSyncBatchSize(journalSyncBatchSize);
+    }
+
+    public void setJournalSyncInterval(long journalSyncInterval) {
+        m_queue.setJournalSyncInterval(journalSyncInterval);
+    }
+
+    public long getAlarmsQueued() {
+        return m_queue.getAlarmsQueued();
+    }
+
+    public long getAlarmsForwarded() {
+        return m_queue.getAlarmsForwarded();
+    }
+
+    public long getForwardFailures() {
+        return m_queue.getForwardFailures();
+    }
+
+    public int getAlarmsPending() {
+        return m_queue.getAlarmsPending();
+    }
+
+    public long getAlarmsReplayed() {
+        return m_queue.getAlarmsReplayed();
+    }
+
+    public long getJournalBytesWritten() {
+        return m_queue.getJournalBytesWritten();
+    }
+
+    public long getJournalSyncs() {
+        return m_queue.getJournalSyncs();
+    }
+
     /** Override this to perform actions before startup. **/
     protected void onPreStart() {}
 
@@ -126,6 +183,7 @@ public abstract class AbstractNorthbounder implements Northbounder, Runnable, St
     public final void stop() throws NorthbounderException {
         this.onStop();
         m_stopped = true;
+        m_queue.close();
     }
     
     @Override
@@ -0,0 +1,593 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd.api.support;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A disk backed queue of alarms for the {@link AlarmQueue}, so that alarms
+ * waiting for a northbound interface neither pile up in the heap nor get
+ * lost on restart.
+ *
+ * Alarms are serialized into append-only, memory-mapped segment files that
+ * roll over at a fixed size. Appends are forced to disk in batches: every
+ * <code>syncBatchSize</code> alarms, once <code>syncInterval</code> has
+ * passed, or when the reader runs out of work. Taking an alarm from the
+ * queue only moves the read position; {@link #commit()} records it in the
+ * checkpoint file and deletes the segments that have been read entirely.
+ * Whatever was not committed is read again when the journal is reopened,
+ * so the queue should only be committed once the alarms taken from it have
+ * been forwarded or queued elsewhere.
+ *
+ * Iterating over the journal reads a snapshot of the alarms that have not
+ * been taken yet, which does not support removal.
+ */
+class AlarmJournal<T> extends AbstractQueue<T> implements BlockingQueue<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(AlarmJournal.class);
+
+    static final String SEGMENT_SUFFIX = ".journal";
+    static final String CHECKPOINT_FILE = "checkpoint";
+
+    // record header: length and CRC32 of the serialized alarm
+    private static final int HEADER_SIZE = 8;
+    // written in place of a header when the rest of a segment is unused
+    private static final int END_OF_SEGMENT = -1;
+
+    private final File m_directory;
+    private final int m_segmentSize;
+    private final int m_syncBatchSize;
+    private final long m_syncInterval;
+
+    private final ReentrantLock m_lock = new ReentrantLock();
+    private final Condition m_notEmpty = m_lock.newCondition();
+    private final CRC32 m_crc = new CRC32();
+
+    private MappedByteBuffer m_checkpoint;
+    private long m_commitSegment;
+
+    private long m_writeSegment;
+    private MappedByteBuffer m_writeBuffer;
+
+    private long m_readSegment;
+    private ByteBuffer m_readBuffer;
+
+    private int m_size;
+    private int m_unsynced;
+    private long m_lastSync;
+    private boolean m_closed;
+
+    private volatile long m_appended;
+    private volatile long m_bytesWritten;
+    private volatile long m_syncs;
+    private volatile long m_replayed;
+
+    AlarmJournal(final File directory, final int segmentSize, final int syncBatchSize, final long syncInterval) {
+        m_directory = directory;
+        m_segmentSize = segmentSize;
+        m_syncBatchSize = syncBatchSize;
+        m_syncInterval = syncInterval;
+    }
+
+    /**
+     * Opens the journal, replaying the alarms that were not committed before
+     * it was last closed.
+     */
+    public void open() throws IOException {
+        if (!m_directory.isDirectory() && !m_directory.mkdirs()) {
+            throw new IOException("Unable to create alarm journal directory " + m_directory);
+        }
+
+        m_lock.lock();
+        try {
+            m_checkpoint = map(new File(m_directory, CHECKPOINT_FILE), 16);
+            m_commitSegment = m_checkpoint.getLong(0);
+            int commitOffset = (int)m_checkpoint.getLong(8);
+
+            final SortedSet<Long> segments = listSegments();
+            for (final Long segment : segments.headSet(m_commitSegment)) {
+                deleteSegment(segment);
+            }
+            if (segments.tailSet(m_commitSegment).isEmpty()) {
+                commitOffset = 0;
+                segments.add(m_commitSegment);
+            }
+
+            m_size = 0;
+            m_readSegment = m_commitSegment;
+            for (final Long segment : segments.tailSet(m_commitSegment)) {
+                final MappedByteBuffer buffer = mapSegment(segment, m_segmentSize);
+                buffer.position(segment == m_commitSegment ? commitOffset : 0);
+                if (segment == m_commitSegment) {
+                    m_readBuffer = buffer.duplicate();
+                }
+                while (readRecord(buffer) != null) {
+                    m_size++;
+                }
+                m_writeSegment = segment;
+                m_writeBuffer = buffer;
+            }
+            if (m_readSegment == m_writeSegment) {
+                m_readBuffer = m_writeBuffer.duplicate();
+                m_readBuffer.position(commitOffset);
+            }
+
+            m_replayed = m_size;
+            m_lastSync = System.currentTimeMillis();
+            m_closed = false;
+        } finally {
+            m_lock.unlock();
+        }
+
+        if (m_replayed > 0) {
+            LOG.info("Replaying {} alarms from journal {}", m_replayed, m_directory);
+        }
+    }
+
+    /**
+     * Records the current read position, so the alarms taken so far are not
+     * replayed when the journal is reopened.
+     */
+    public void commit() {
+        m_lock.lock();
+        try {
+            if (m_closed) {
+                return;
+            }
+            m_checkpoint.putLong(0, m_readSegment);
+            m_checkpoint.putLong(8, m_readBuffer.position());
+            m_checkpoint.force();
+            for (long segment = m_commitSegment; segment < m_readSegment; segment++) {
+                deleteSegment(segment);
+            }
+            m_commitSegment = m_readSegment;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Forces everything to disk and wakes up the threads waiting for alarms,
+     * which get an {@link InterruptedException}.
+     */
+    public void close() {
+        m_lock.lock();
+        try {
+            if (m_closed) {
+                return;
+            }
+            sync();
+            m_checkpoint.force();
+            m_closed = true;
+            m_notEmpty.signalAll();
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(final T alarm) {
+        final byte[] data;
+        try {
+            data = encode(alarm);
+        } catch (final IOException e) {
+            LOG.error("Unable to serialize alarm {} for journal {}", alarm, m_directory, e);
+            return false;
+        }
+
+        m_lock.lock();
+        try {
+            if (m_closed) {
+                LOG.warn("Alarm journal {} is closed, dropping alarm {}", m_directory, alarm);
+                return false;
+            }
+            append(data);
+            m_notEmpty.signal();
+            return true;
+        } catch (final IOException e) {
+            LOG.error("Unable to append alarm {} to journal {}", alarm, m_directory, e);
+            return false;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(final T alarm) {
+        offer(alarm);
+    }
+
+    @Override
+    public boolean offer(final T alarm, final long timeout, final TimeUnit unit) {
+        return offer(alarm);
+    }
+
+    @Override
+    public T poll() {
+        m_lock.lock();
+        try {
+            return next();
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public T take() throws InterruptedException {
+        m_lock.lock();
+        try {
+            T alarm;
+            while ((alarm = next()) == null) {
+                awaitNotEmpty();
+                m_notEmpty.await();
+            }
+            return alarm;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public T poll(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        m_lock.lock();
+        try {
+            T alarm;
+            while ((alarm = next()) == null) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                awaitNotEmpty();
+                nanos = m_notEmpty.awaitNanos(nanos);
+            }
+            return alarm;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public T peek() {
+        final List<T> alarms = read(1);
+        return alarms.isEmpty() ? null : alarms.get(0);
+    }
+
+    @Override
+    public int drainTo(final Collection<? super T> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(final Collection<? super T> c, final int maxElements) {
+        m_lock.lock();
+        try {
+            int drained = 0;
+            T alarm;
+            while (drained < maxElements && (alarm = next()) != null) {
+                c.add(alarm);
+                drained++;
+            }
+            return drained;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    /**
+     * Skips everything that is in the journal; like taking alarms, this is
+     * only made permanent by {@link #commit()}.
+     */
+    @Override
+    public void clear() {
+        m_lock.lock();
+        try {
+            m_readSegment = m_writeSegment;
+            m_readBuffer = m_writeBuffer.duplicate();
+            m_size = 0;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        m_lock.lock();
+        try {
+            return m_size;
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the alarms that have not been
+     * taken yet. The snapshot is read into memory, and the iterator cannot
+     * remove alarms from the journal.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return Collections.unmodifiableList(read(Integer.MAX_VALUE)).iterator();
+    }
+
+    public long getAppended() {
+        return m_appended;
+    }
+
+    public long getBytesWritten() {
+        return m_bytesWritten;
+    }
+
+    public long getSyncs() {
+        return m_syncs;
+    }
+
+    public long getReplayed() {
+        return m_replayed;
+    }
+
+    /**
+     * Reads up to <code>maxElements</code> alarms without taking them.
+     */
+    private List<T> read(final int maxElements) {
+        m_lock.lock();
+        try {
+            final long segment = m_readSegment;
+            final ByteBuffer buffer = m_readBuffer.duplicate();
+            final int size = m_size;
+            try {
+                final List<T> alarms = new ArrayList<T>(Math.min(size, maxElements));
+                T alarm;
+                while (alarms.size() < maxElements && (alarm = next()) != null) {
+                    alarms.add(alarm);
+                }
+                return alarms;
+            } finally {
+                m_readSegment = segment;
+                m_readBuffer = buffer;
+                m_size = size;
+            }
+        } finally {
+            m_lock.unlock();
+        }
+    }
+
+    // the reader is about to wait, so this is a good moment to catch up on syncing
+    private void awaitNotEmpty() throws InterruptedException {
+        if (m_closed) {
+            throw new InterruptedException("alarm journal " + m_directory + " has been closed");
+        }
+        if (m_unsynced > 0) {
+            sync();
+        }
+    }
+
+    private void append(final byte[] data) throws IOException {
+        final int recordSize = HEADER_SIZE + data.length;
+        if (m_writeBuffer.remaining() < recordSize) {
+            roll(recordSize);
+        }
+
+        final int position = m_writeBuffer.position();
+        m_crc.reset();
+        m_crc.update(data, 0, data.length);
+        m_writeBuffer.position(position + HEADER_SIZE);
+        m_writeBuffer.put(data);
+        m_writeBuffer.putInt(position + 4, (int)m_crc.getValue());
+        // the length goes in last, a record is not there until it has one
+        m_writeBuffer.putInt(position, data.length);
+
+        m_size++;
+        m_appended++;
+        m_bytesWritten += recordSize;
+
+        m_unsynced++;
+        if (m_unsynced >= m_syncBatchSize || System.currentTimeMillis() - m_lastSync >= m_syncInterval) {
+            sync();
+        }
+    }
+
+    private void roll(final int recordSize) throws IOException {
+        if (m_writeBuffer.remaining() >= 4) {
+            m_writeBuffer.putInt(m_writeBuffer.position(), END_OF_SEGMENT);
+        }
+        sync();
+
+        final MappedByteBuffer next = mapSegment(m_writeSegment + 1, Math.max(m_segmentSize, recordSize));
+        m_writeSegment++;
+        m_writeBuffer = next;
+        LOG.debug("Rolled alarm journal {} over to segment {}", m_directory, m_writeSegment);
+    }
+
+    private void sync() {
+        if (m_unsynced > 0) {
+            m_writeBuffer.force();
+            m_syncs++;
+        }
+        m_unsynced = 0;
+        m_lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * Reads the next alarm, moving on to the next segment as needed. Alarms
+     * that can no longer be deserialized are logged and skipped.
+     */
+    private T next() {
+        while (m_size > 0) {
+            final byte[] data = readRecord(m_readBuffer);
+            if (data == null) {
+                if (m_readSegment >= m_writeSegment) {
+                    throw new IllegalStateException("alarm journal " + m_directory + " lost track of " + m_size + " alarms");
+                }
+                m_readSegment++;
+                m_readBuffer = m_readSegment == m_writeSegment ? m_writeBuffer.duplicate() : openSegment(m_readSegment);
+                m_readBuffer.position(0);
+                continue;
+            }
+            m_size--;
+            try {
+                return decode(data);
+            } catch (final Exception e) {
+                LOG.error("Skipping alarm in journal {} that cannot be read", m_directory, e);
+            }
+        }
+        return null;
+    }
+
+    private ByteBuffer openSegment(final long segment) {
+        try {
+            return mapSegment(segment, m_segmentSize);
+        } catch (final IOException e) {
+            throw new IllegalStateException("Unable to open segment " + segment + " of alarm journal " + m_directory, e);
+        }
+    }
+
+    /**
+     * Returns the next complete record and moves past it, or returns null
+     * and stays put when the buffer holds no more records.
+     */
+    private byte[] readRecord(final ByteBuffer buffer) {
+        final int position = buffer.position();
+        if (buffer.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        final int length = buffer.getInt(position);
+        if (length <= 0 || length > buffer.remaining() - HEADER_SIZE) {
+            return null;
+        }
+        final byte[] data = new byte[length];
+        buffer.position(position + HEADER_SIZE);
+        buffer.get(data);
+        m_crc.reset();
+        m_crc.update(data, 0, length);
+        if ((int)m_crc.getValue() != buffer.getInt(position + 4)) {
+            // a record torn by a crash; everything after it is suspect too
+            LOG.warn("Alarm journal {} has a damaged record at offset {}, ignoring the rest of the segment", m_directory, position);
+            buffer.position(position);
+            return null;
+        }
+        return data;
+    }
+
+    private SortedSet<Long> listSegments() {
+        final SortedSet<Long> segments = new TreeSet<Long>();
+        final String[] names = m_directory.list(new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+        if (names != null) {
+            for (final String name : names) {
+                try {
+                    segments.add(Long.valueOf(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                } catch (final NumberFormatException e) {
+                    LOG.warn("Ignoring unexpected file {} in alarm journal {}", name, m_directory);
+                }
+            }
+        }
+        return segments;
+    }
+
+    private File segmentFile(final long segment) {
+        return new File(m_directory, String.format("%016d%s", segment, SEGMENT_SUFFIX));
+    }
+
+    private void deleteSegment(final long segment) {
+        final File file = segmentFile(segment);
+        if (file.exists() && !file.delete()) {
+            LOG.warn("Unable to delete alarm journal segment {}", file);
+        }
+    }
+
+    private MappedByteBuffer mapSegment(final long segment, final int size) throws IOException {
+        final File file = segmentFile(segment);
+        return map(file, (int)Math.max(size, file.length()));
+    }
+
+    private static MappedByteBuffer map(final File file, final int size) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            return raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static byte[] encode(final Object alarm) throws IOException {
+        if (!(alarm instanceof Serializable)) {
+            throw new IOException(alarm.getClass().getName() + " is not serializable");
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(alarm);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private T decode(final byte[] data) throws IOException, ClassNotFoundException {
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data));
+        try {
+            return (T)in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -28,12 +28,15 @@
 
 package org.opennms.netmgt.alarmd.api.support;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -46,6 +49,10 @@ import org.opennms.netmgt.alarmd.api.Preservable;
  * FIXME: Need to make sure the are reasonable defaults in the configuration just-in-case
  * the NBI implementations don't set the batch size, etc. 
  * 
+ * When a journal directory is set, both queues are kept in an {@link AlarmJournal}
+ * instead of the heap, and alarms are only dropped from the journal once they have
+ * been forwarded or moved to the preserved queue.
+ * 
  * @auther <a mailto:brozow@opennms.org>Matt Brozowski</a>
  * @author <a mailto:david@opennms.org>David Hustace</a>
  */
@@ -62,15 +69,19 @@ class AlarmQueue<T extends Preservable> {
                 m_nextBatch.clear();
                 m_preservedQueue.clear();
                 m_preservedQueue.offer(m_statusFactory.createSyncLostMessage());
+                commitPreservedQueue();
             }
             m_preservedQueue.offer(a);
         }
         
         protected void discardNonPreservedAlarms() {
-            List<T> alarms = new ArrayList<T>(m_queue.size());
-            m_queue.drainTo(alarms);
-            
-            addPreservedToPreservedQueue(alarms);
+            // a batch at a time, a journal may hold far more than fits in the heap
+            List<T> alarms = new ArrayList<T>(m_maxBatchSize);
+            while (m_queue.drainTo(alarms, m_maxBatchSize) > 0) {
+                addPreservedToPreservedQueue(alarms);
+                alarms.clear();
+            }
+            commitQueue();
         }
 
         protected void addPreservedToPreservedQueue(List<T> alarms) {
@@ -123,13 +134,14 @@ class AlarmQueue<T extends Preservable> {
         
         @Override
         public void forwardSuccessful(List<T> alarms) {
-            // no need to do anything here
+            commitQueue();
         }
 
         @Override
         public void forwardFailed(List<T> alarms) {
             
             addPreservedToPreservedQueue(alarms);
+            commitQueue();
             
             if (!m_preservedQueue.isEmpty()) {
                setState(FAILING);
@@ -162,6 +174,7 @@ class AlarmQueue<T extends Preservable> {
         @Override
         public void forwardSuccessful(List<T> alarms) {
             m_nextBatch.clear();
+            commitPreservedQueue();
             if (m_preservedQueue.isEmpty()) {
                 setState(FORWARDING);
             } else {
@@ -190,6 +203,7 @@ class AlarmQueue<T extends Preservable> {
         @Override
         public void forwardSuccessful(List<T> alarms) {
             m_nextBatch.clear();
+            commitPreservedQueue();
             if (m_preservedQueue.isEmpty()) {
                 setState(FORWARDING);
             }
@@ -207,11 +221,17 @@ class AlarmQueue<T extends Preservable> {
     private int m_maxBatchSize = 100;
     private long m_naglesDelay = 1000;
 
+    // journal parameters, the queues are kept in the heap without a directory
+    private File m_journalDirectory;
+    private int m_journalSegmentSize = 16 * 1024 * 1024;
+    private int m_journalSyncBatchSize = 100;
+    private long m_journalSyncInterval = 1000;
+
     // queue for all alarms to be forwarded
-    private BlockingQueue<T> m_queue = new LinkedBlockingQueue<T>();
+    private volatile BlockingQueue<T> m_queue = new LinkedBlockingQueue<T>();
     
     // queue for preserving alarms that are being saved during a forwarding failure
-    private BlockingQueue<T> m_preservedQueue = new LinkedBlockingQueue<T>();
+    private volatile BlockingQueue<T> m_preservedQueue = new LinkedBlockingQueue<T>();
     
     // a list of alarms that are pending due to a forwarding failure
     private List<T> m_nextBatch;
@@ -222,6 +242,14 @@ class AlarmQueue<T extends Preservable> {
     // creates messages use to indicate that a connection failure has 
     // occurred or queue has overflowed
     private StatusFactory<T> m_statusFactory;
+
+    // the journals behind m_queue and m_preservedQueue, if any
+    private AlarmJournal<T> m_journal;
+    private AlarmJournal<T> m_preservedJournal;
+
+    private final AtomicLong m_alarmsQueued = new AtomicLong();
+    private final AtomicLong m_alarmsForwarded = new AtomicLong();
+    private final AtomicLong m_forwardFailures = new AtomicLong();
     
     
     public AlarmQueue(StatusFactory<T> statusFactory) {
@@ -258,8 +286,127 @@ class AlarmQueue<T extends Preservable> {
         m_maxBatchSize = maxBatchSize;
     }
     
+    public File getJournalDirectory() {
+        return m_journalDirectory;
+    }
+
+    public void setJournalDirectory(File journalDirectory) {
+        m_journalDirectory = journalDirectory;
+    }
+
+    public int getJournalSegmentSize() {
+        return m_journalSegmentSize;
+    }
+
+    public void setJournalSegmentSize(int journalSegmentSize) {
+        m_journalSegmentSize = journalSegmentSize;
+    }
+
+    public int getJournalSyncBatchSize() {
+        return m_journalSyncBatchSize;
+    }
+
+    public void setJournalSyncBatchSize(int journalSyncBatchSize) {
+        m_journalSyncBatchSize = journalSyncBatchSize;
+    }
+
+    public long getJournalSyncInterval() {
+        return m_journalSyncInterval;
+    }
+
+    public void setJournalSyncInterval(long journalSyncInterval) {
+        m_journalSyncInterval = journalSyncInterval;
+    }
+    
     public void init() {
        m_nextBatch = new ArrayList<T>(m_maxBatchSize); 
+
+       if (m_journalDirectory == null) {
+           return;
+       }
+
+       try {
+           final AlarmJournal<T> journal = openJournal("queue");
+           final AlarmJournal<T> preservedJournal = openJournal("preserved");
+           m_journal = journal;
+           m_preservedJournal = preservedJournal;
+           m_queue = journal;
+           m_preservedQueue = preservedJournal;
+       } catch (final IOException e) {
+           LOG.error("Unable to open alarm journal in {}, queueing alarms in memory", m_journalDirectory, e);
+           return;
+       }
+
+       // alarms preserved during an outage before the restart go first
+       if (!m_preservedQueue.isEmpty()) {
+           setState(RECOVERING);
+       }
+    }
+
+    private AlarmJournal<T> openJournal(String name) throws IOException {
+        final AlarmJournal<T> journal = new AlarmJournal<T>(new File(m_journalDirectory, name), m_journalSegmentSize, m_journalSyncBatchSize, m_journalSyncInterval);
+        journal.open();
+        return journal;
+    }
+
+    /**
+     * Closes the journals, if any. A thread waiting for alarms to forward is
+     * woken with an {@link InterruptedException}.
+     */
+    public void close() {
+        if (m_journal != null) {
+            m_journal.close();
+            m_preservedJournal.close();
+            m_journal = null;
+            m_preservedJournal = null;
+            m_queue = new LinkedBlockingQueue<T>();
+            m_preservedQueue = new LinkedBlockingQueue<T>();
+        }
+    }
+
+    private void commitQueue() {
+        final AlarmJournal<T> journal = m_journal;
+        if (journal != null) {
+            journal.commit();
+        }
+    }
+
+    private void commitPreservedQueue() {
+        final AlarmJournal<T> journal = m_preservedJournal;
+        if (journal != null) {
+            journal.commit();
+        }
+    }
+
+    public long getAlarmsQueued() {
+        return m_alarmsQueued.get();
+    }
+
+    public long getAlarmsForwarded() {
+        return m_alarmsForwarded.get();
+    }
+
+    public long getForwardFailures() {
+        return m_forwardFailures.get();
+    }
+
+    public int getAlarmsPending() {
+        return m_queue.size() + m_preservedQueue.size();
+    }
+
+    public long getJournalBytesWritten() {
+        final AlarmJournal<T> journal = m_journal, preservedJournal = m_preservedJournal;
+        return journal == null ? 0 : journal.getBytesWritten() + preservedJournal.getBytesWritten();
+    }
+
+    public long getJournalSyncs() {
+        final AlarmJournal<T> journal = m_journal, preservedJournal = m_preservedJournal;
+        return journal == null ? 0 : journal.getSyncs() + preservedJournal.getSyncs();
+    }
+
+    public long getAlarmsReplayed() {
+        final AlarmJournal<T> journal = m_journal, preservedJournal = m_preservedJournal;
+        return journal == null ? 0 : journal.getReplayed() + preservedJournal.getReplayed();
     }
 
     public void discard(T a) {
@@ -268,12 +415,18 @@ class AlarmQueue<T extends Preservable> {
     
     public void accept(T a) {
         boolean result = m_queue.offer(a);
+        if (result) {
+            m_alarmsQueued.incrementAndGet();
+        }
         LOG.debug("Alarm {} accepted, offered to blocking-queue. Actually queued? {}", a, result);
     }
     
     public void preserve(T a) {
         a.setPreserved(true);
         boolean result = m_queue.offer(a);
+        if (result) {
+            m_alarmsQueued.incrementAndGet();
+        }
         LOG.debug("Alarm {} preserved, offered to blocking-queue. Actually queued? {}", a, result);
     }
     
@@ -282,10 +435,12 @@ class AlarmQueue<T extends Preservable> {
     }
     
     public void forwardSuccessful(List<T> alarms) {
+        m_alarmsForwarded.addAndGet(alarms.size());
         m_state.forwardSuccessful(alarms);
     }
     
     public void forwardFailed(List<T> alarms) {
+        m_forwardFailures.incrementAndGet();
         m_state.forwardFailed(alarms);
     }
 
@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd.api.support;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.alarmd.api.NorthboundAlarm;
+import org.opennms.netmgt.model.OnmsAlarm;
+
+public class AlarmJournalTest implements StatusFactory<NorthboundAlarm> {
+    private File m_directory;
+    private int m_alarmNumber = 0;
+
+    @Before
+    public void setUp() throws IOException {
+        m_directory = File.createTempFile("alarm-journal", "");
+        m_directory.delete();
+    }
+
+    @After
+    public void tearDown() {
+        delete(m_directory);
+    }
+
+    @Test
+    public void testReplaysUncommittedAlarms() throws Exception {
+        AlarmJournal<NorthboundAlarm> journal = open(1024 * 1024);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(journal.offer(createAlarm()));
+        }
+        assertEquals(10, journal.size());
+
+        List<NorthboundAlarm> alarms = new ArrayList<NorthboundAlarm>();
+        journal.drainTo(alarms, 4);
+        journal.commit();
+        journal.drainTo(alarms, 2);
+        assertEquals(4, journal.size());
+        journal.close();
+
+        journal = open(1024 * 1024);
+        assertEquals(6, journal.size());
+        assertEquals(6, journal.getReplayed());
+        assertEquals(Integer.valueOf(5), journal.peek().getId());
+        assertEquals(Integer.valueOf(5), journal.take().getId());
+        journal.close();
+    }
+
+    @Test
+    public void testRollsAndDeletesSegments() throws Exception {
+        final AlarmJournal<NorthboundAlarm> journal = open(4096);
+        for (int i = 0; i < 100; i++) {
+            journal.offer(createAlarm());
+        }
+        assertTrue("the journal should have rolled over", countSegments() > 10);
+
+        for (int i = 1; i <= 100; i++) {
+            assertEquals(Integer.valueOf(i), journal.take().getId());
+        }
+        assertNull(journal.poll(10, TimeUnit.MILLISECONDS));
+        journal.commit();
+        assertEquals(1, countSegments());
+
+        journal.offer(createAlarm());
+        journal.close();
+        assertEquals(1, open(4096).size());
+    }
+
+    @Test
+    public void testIgnoresTornRecord() throws Exception {
+        AlarmJournal<NorthboundAlarm> journal = open(1024 * 1024);
+        journal.offer(createAlarm());
+        journal.offer(createAlarm());
+        journal.offer(createAlarm());
+        journal.close();
+
+        // damage the last record, as a crash in the middle of writing it would
+        final RandomAccessFile segment = new RandomAccessFile(new File(m_directory, String.format("%016d%s", 0, AlarmJournal.SEGMENT_SUFFIX)), "rw");
+        try {
+            long position = 0;
+            for (int i = 0; i < 2; i++) {
+                segment.seek(position);
+                position += 8 + segment.readInt();
+            }
+            segment.seek(position + 20);
+            segment.writeByte(~segment.readByte());
+        } finally {
+            segment.close();
+        }
+
+        journal = open(1024 * 1024);
+        assertEquals(2, journal.size());
+        journal.offer(createAlarm());
+        journal.take();
+        journal.take();
+        assertEquals(Integer.valueOf(4), journal.take().getId());
+        journal.close();
+    }
+
+    @Test
+    public void testCloseWakesWaitingReader() throws Exception {
+        final AlarmJournal<NorthboundAlarm> journal = open(1024 * 1024);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final Thread reader = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    journal.take();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+            }
+        };
+        reader.start();
+        Thread.sleep(100);
+        journal.close();
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testQueueRecoversPreservedAlarmsAfterRestart() throws Exception {
+        AlarmQueue<NorthboundAlarm> queue = createQueue();
+        queue.accept(createAlarm());   // 1
+        queue.preserve(createAlarm()); // 2
+        queue.preserve(createAlarm()); // 3
+
+        List<NorthboundAlarm> alarms = queue.getAlarmsToForward();
+        assertEquals(3, alarms.size());
+        queue.forwardFailed(alarms);
+        queue.accept(createAlarm());   // 4
+        queue.preserve(createAlarm()); // 5
+        queue.close();
+
+        queue = createQueue();
+        assertEquals(4, queue.getAlarmsPending());
+        assertEquals(4, queue.getAlarmsReplayed());
+
+        alarms = queue.getAlarmsToForward();
+        assertEquals(2, alarms.size());
+        assertEquals(Integer.valueOf(2), alarms.get(0).getId());
+        assertEquals(Integer.valueOf(3), alarms.get(1).getId());
+        assertTrue(alarms.get(0).isPreserved());
+        queue.forwardSuccessful(alarms);
+
+        alarms = queue.getAlarmsToForward();
+        assertEquals(2, alarms.size());
+        assertEquals(Integer.valueOf(4), alarms.get(0).getId());
+        queue.forwardSuccessful(alarms);
+        assertEquals(0, queue.getAlarmsPending());
+        queue.close();
+
+        assertEquals(0, createQueue().getAlarmsPending());
+    }
+
+    @Test
+    public void testSyncLostAlarmIsReadBackAsItself() throws Exception {
+        final AlarmJournal<NorthboundAlarm> journal = open(1024 * 1024);
+        journal.offer(NorthboundAlarm.SYNC_LOST_ALARM);
+        assertSame(NorthboundAlarm.SYNC_LOST_ALARM, journal.take());
+        journal.close();
+    }
+
+    @Test
+    public void testIteratesOverSnapshot() throws Exception {
+        final AlarmJournal<NorthboundAlarm> journal = open(4096);
+        for (int i = 0; i < 30; i++) {
+            journal.offer(createAlarm());
+        }
+        journal.take();
+
+        final List<Integer> ids = new ArrayList<Integer>();
+        final Iterator<NorthboundAlarm> it = journal.iterator();
+        while (it.hasNext()) {
+            ids.add(it.next().getId());
+        }
+        assertEquals(29, ids.size());
+        assertEquals(Integer.valueOf(2), ids.get(0));
+        assertEquals(Integer.valueOf(30), ids.get(28));
+        assertEquals(29, journal.toArray().length);
+
+        try {
+            journal.iterator().remove();
+            fail("removing through the iterator should not be supported");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        // iterating does not take anything
+        assertEquals(29, journal.size());
+        assertEquals(Integer.valueOf(2), journal.take().getId());
+        journal.close();
+    }
+
+    @Override
+    public NorthboundAlarm createSyncLostMessage() {
+        return NorthboundAlarm.SYNC_LOST_ALARM;
+    }
+
+    private AlarmQueue<NorthboundAlarm> createQueue() {
+        final AlarmQueue<NorthboundAlarm> queue = new AlarmQueue<NorthboundAlarm>(this);
+        queue.setJournalDirectory(m_directory);
+        queue.setMaxBatchSize(3);
+        queue.setNaglesDelay(0);
+        queue.init();
+        return queue;
+    }
+
+    private AlarmJournal<NorthboundAlarm> open(final int segmentSize) throws IOException {
+        final AlarmJournal<NorthboundAlarm> journal = new AlarmJournal<NorthboundAlarm>(m_directory, segmentSize, 10, 1000);
+        journal.open();
+        return journal;
+    }
+
+    private NorthboundAlarm createAlarm() {
+        final OnmsAlarm alarm = new OnmsAlarm();
+        alarm.setId(++m_alarmNumber);
+        alarm.setUei("uei.opennms.org/test/journal");
+        return new NorthboundAlarm(alarm);
+    }
+
+    private int countSegments() {
+        return m_directory.list(new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.endsWith(AlarmJournal.SEGMENT_SUFFIX);
+            }
+        }).length;
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
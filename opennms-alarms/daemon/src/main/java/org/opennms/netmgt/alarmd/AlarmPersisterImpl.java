@@ -28,6 +28,17 @@
 
 package org.opennms.netmgt.alarmd;
 
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.netmgt.dao.api.AlarmDao;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.opennms.netmgt.model.OnmsAlarm;
@@ -37,19 +48,47 @@ import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.UpdateField;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.Assert;
 
 /**
  * Singleton to persist OnmsAlarms.
  *
+ * <p>When a reduction window is set, the first event for a reduction key is
+ * persisted as usual and further events for the same key are then collected
+ * in memory for the length of the window. They are written to the database
+ * as a single alarm update, with the counter incremented by the number of
+ * collected events, the fields of the last event applied, and all of the
+ * events associated with the alarm in one bulk update. The window defaults
+ * to the <code>org.opennms.alarmd.reductionWindow</code> system property (in
+ * milliseconds) and is disabled when 0.</p>
+ *
  * @author <a href="mailto:david@opennms.org">David Hustace</a>
  * @version $Id: $
  */
-public class AlarmPersisterImpl implements AlarmPersister {
+public class AlarmPersisterImpl implements AlarmPersister, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(AlarmPersisterImpl.class);
 
     private AlarmDao m_alarmDao;
     private EventDao m_eventDao;
+    private TransactionOperations m_transactionOperations;
+
+    private volatile long m_reductionWindow = Long.getLong("org.opennms.alarmd.reductionWindow", 0L);
+    private volatile int m_maxPendingReductions = Integer.getInteger("org.opennms.alarmd.maxPendingReductions", 10000);
+
+    private final ConcurrentMap<String, PendingReduction> m_pendingReductions = new ConcurrentHashMap<String, PendingReduction>();
+    private ScheduledExecutorService m_flusher;
+
+    private final AtomicLong m_eventsProcessed = new AtomicLong();
+    private final AtomicLong m_alarmsCreated = new AtomicLong();
+    private final AtomicLong m_alarmsReduced = new AtomicLong();
+    private final AtomicLong m_reductionsDeferred = new AtomicLong();
+    private final AtomicLong m_deferredUpdatesWritten = new AtomicLong();
 
     /** {@inheritDoc} 
      * @return */
@@ -60,6 +99,7 @@ public class AlarmPersisterImpl implements AlarmPersister {
         }
         LOG.debug("process: {}; nodeid: {}; ipaddr: {}; serviceid: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService());
 
+        m_eventsProcessed.incrementAndGet();
         return addOrReduceEventAsAlarm(event);
     }
 
@@ -74,6 +114,14 @@ public class AlarmPersisterImpl implements AlarmPersister {
         Assert.notNull(e, "Event was deleted before we could retrieve it and create an alarm.");
     
         String reductionKey = event.getAlarmData().getReductionKey();
+
+        if (m_reductionWindow > 0) {
+            final OnmsAlarm pendingAlarm = reduceLater(reductionKey, e, event);
+            if (pendingAlarm != null) {
+                return pendingAlarm;
+            }
+        }
+
         LOG.debug("addOrReduceEventAsAlarm: looking for existing reduction key: {}", reductionKey);
         OnmsAlarm alarm = m_alarmDao.findByReductionKey(reductionKey);
     
@@ -84,6 +132,7 @@ public class AlarmPersisterImpl implements AlarmPersister {
             //FIXME: this should be a cascaded save
             m_alarmDao.save(alarm);
             m_eventDao.saveOrUpdate(e);
+            m_alarmsCreated.incrementAndGet();
         } else {
             LOG.debug("addOrReduceEventAsAlarm: reductionKey:{} found, reducing event to existing alarm: {}", reductionKey, alarm.getIpAddr());
             reduceEvent(e, alarm, event);
@@ -93,17 +142,169 @@ public class AlarmPersisterImpl implements AlarmPersister {
             if (event.getAlarmData().isAutoClean()) {
                 m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), e);
             }
+            m_alarmsReduced.incrementAndGet();
+        }
+
+        if (m_reductionWindow > 0) {
+            deferFurtherReductions(reductionKey, alarm);
         }
         
         return alarm;
     }
 
+    /**
+     * Collect the event for the pending reduction of its key, if there is one.
+     *
+     * @return the in-memory copy of the alarm, or null if the event must be
+     *         persisted right away
+     */
+    private OnmsAlarm reduceLater(final String reductionKey, final OnmsEvent e, final Event event) {
+        final PendingReduction pending = m_pendingReductions.get(reductionKey);
+        if (pending == null) {
+            return null;
+        }
+
+        synchronized (pending) {
+            if (pending.isFlushed()) {
+                return null;
+            }
+            pending.add(e, event);
+
+            final OnmsAlarm alarm = pending.getAlarm();
+            alarm.setCounter(alarm.getCounter() + 1);
+            updateAlarmFromEvent(e, alarm, event);
+        }
+
+        m_reductionsDeferred.incrementAndGet();
+        LOG.debug("addOrReduceEventAsAlarm: reductionKey:{} pending, deferring reduction of event {}", reductionKey, e.getId());
+        return pending.getAlarm();
+    }
+
+    /**
+     * Start collecting events for the alarm once the current transaction has
+     * committed, from then on the alarm object is no longer attached to a
+     * session.
+     */
+    private void deferFurtherReductions(final String reductionKey, final OnmsAlarm alarm) {
+        if (m_pendingReductions.size() >= m_maxPendingReductions) {
+            LOG.debug("deferFurtherReductions: {} reductions are already pending, not deferring reductions for key {}", m_pendingReductions.size(), reductionKey);
+            return;
+        }
+
+        final PendingReduction pending = new PendingReduction(reductionKey, alarm, System.currentTimeMillis() + m_reductionWindow);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    addPendingReduction(pending);
+                }
+            });
+        } else {
+            addPendingReduction(pending);
+        }
+    }
+
+    private void addPendingReduction(final PendingReduction pending) {
+        m_pendingReductions.putIfAbsent(pending.getReductionKey(), pending);
+        startFlusher();
+    }
+
+    private synchronized void startFlusher() {
+        if (m_flusher != null) {
+            return;
+        }
+
+        final long period = Math.max(m_reductionWindow / 4, 10L);
+        m_flusher = Executors.newSingleThreadScheduledExecutor(new LogPreservingThreadFactory("Alarmd-Reductions", 1, false));
+        m_flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushPendingReductions(System.currentTimeMillis());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write all of the pending reductions to the database.
+     */
+    public void flushPendingReductions() {
+        flushPendingReductions(Long.MAX_VALUE);
+    }
+
+    private void flushPendingReductions(final long now) {
+        for (final PendingReduction pending : m_pendingReductions.values()) {
+            if (pending.getDeadline() <= now) {
+                flush(pending);
+            }
+        }
+    }
+
+    private void flush(final PendingReduction pending) {
+        // events for this key are persisted right away once it is flushed;
+        // they wait for the monitor so they see the committed update
+        synchronized (pending) {
+            if (pending.isFlushed()) {
+                return;
+            }
+            pending.setFlushed();
+            m_pendingReductions.remove(pending.getReductionKey(), pending);
+
+            if (pending.getCount() == 0) {
+                return;
+            }
+
+            try {
+                m_transactionOperations.execute(new TransactionCallbackWithoutResult() {
+                    @Override
+                    protected void doInTransactionWithoutResult(final TransactionStatus status) {
+                        writeReduction(pending);
+                    }
+                });
+                m_deferredUpdatesWritten.incrementAndGet();
+            } catch (final RuntimeException e) {
+                LOG.warn("flush: failed to write {} reductions for reduction key {}", pending.getCount(), pending.getReductionKey(), e);
+            }
+        }
+    }
+
+    private void writeReduction(final PendingReduction pending) {
+        final OnmsEvent e = m_eventDao.get(pending.getLastEventId());
+        if (e == null) {
+            LOG.warn("writeReduction: event {} was deleted before reductions for key {} were written", pending.getLastEventId(), pending.getReductionKey());
+            return;
+        }
+
+        OnmsAlarm alarm = m_alarmDao.get(pending.getAlarmId());
+        if (alarm == null) {
+            LOG.debug("writeReduction: alarm {} was deleted, instantiating new alarm for reductionKey:{}", pending.getAlarmId(), pending.getReductionKey());
+            alarm = createNewAlarm(e, pending.getLastEvent());
+            alarm.setCounter(pending.getCount());
+            alarm.setFirstEventTime(pending.getFirstEventTime());
+            m_alarmDao.save(alarm);
+        } else {
+            alarm.setCounter(alarm.getCounter() + pending.getCount());
+            updateAlarmFromEvent(e, alarm, pending.getLastEvent());
+            m_alarmDao.update(alarm);
+        }
+        m_alarmDao.flush();
+
+        m_eventDao.updateAlarmForEvents(alarm, pending.getEventIds());
+        if (pending.getLastEvent().getAlarmData().isAutoClean()) {
+            m_eventDao.deletePreviousEventsForAlarm(alarm.getId(), e);
+        }
+    }
+
     private static void reduceEvent(OnmsEvent e, OnmsAlarm alarm, Event event) {
+        alarm.setCounter(alarm.getCounter() + 1);
+        updateAlarmFromEvent(e, alarm, event);
+        e.setAlarm(alarm);
+    }
+
+    private static void updateAlarmFromEvent(OnmsEvent e, OnmsAlarm alarm, Event event) {
         
         //Always set these
         alarm.setLastEvent(e);
         alarm.setLastEventTime(e.getEventTime());
-        alarm.setCounter(alarm.getCounter() + 1);
         
         if (!event.getAlarmData().hasUpdateFields()) {
             
@@ -163,8 +364,6 @@ public class AlarmPersisterImpl implements AlarmPersister {
             }
             
         }
-        
-        e.setAlarm(alarm);
     }
 
     private static OnmsAlarm createNewAlarm(OnmsEvent e, Event event) {
@@ -251,4 +450,186 @@ public class AlarmPersisterImpl implements AlarmPersister {
         return m_eventDao;
     }
 
+    /**
+     * <p>setTransactionOperations</p>
+     *
+     * @param transactionOperations used to write the pending reductions
+     */
+    public void setTransactionOperations(TransactionOperations transactionOperations) {
+        m_transactionOperations = transactionOperations;
+    }
+
+    /**
+     * <p>getReductionWindow</p>
+     *
+     * @return how long reductions are collected for a key, in milliseconds
+     */
+    public long getReductionWindow() {
+        return m_reductionWindow;
+    }
+
+    /**
+     * <p>setReductionWindow</p>
+     *
+     * @param reductionWindow how long reductions are collected for a key, in
+     *            milliseconds; 0 persists every reduction right away
+     */
+    public void setReductionWindow(long reductionWindow) {
+        m_reductionWindow = reductionWindow;
+    }
+
+    /**
+     * <p>getMaxPendingReductions</p>
+     *
+     * @return the maximum number of reduction keys to collect events for
+     */
+    public int getMaxPendingReductions() {
+        return m_maxPendingReductions;
+    }
+
+    /**
+     * <p>setMaxPendingReductions</p>
+     *
+     * @param maxPendingReductions the maximum number of reduction keys to
+     *            collect events for
+     */
+    public void setMaxPendingReductions(int maxPendingReductions) {
+        m_maxPendingReductions = maxPendingReductions;
+    }
+
+    /**
+     * @return the number of events that were processed
+     */
+    public long getEventsProcessed() {
+        return m_eventsProcessed.get();
+    }
+
+    /**
+     * @return the number of alarms that were created
+     */
+    public long getAlarmsCreated() {
+        return m_alarmsCreated.get();
+    }
+
+    /**
+     * @return the number of events that were reduced right away
+     */
+    public long getAlarmsReduced() {
+        return m_alarmsReduced.get();
+    }
+
+    /**
+     * @return the number of events whose reduction was deferred
+     */
+    public long getReductionsDeferred() {
+        return m_reductionsDeferred.get();
+    }
+
+    /**
+     * @return the number of alarm updates that deferred reductions were
+     *         collapsed into
+     */
+    public long getDeferredUpdatesWritten() {
+        return m_deferredUpdatesWritten.get();
+    }
+
+    /**
+     * @return the number of reduction keys events are being collected for
+     */
+    public int getPendingReductionCount() {
+        return m_pendingReductions.size();
+    }
+
+    /**
+     * Writes the pending reductions and stops the flusher thread.
+     */
+    @Override
+    public void destroy() {
+        synchronized (this) {
+            if (m_flusher != null) {
+                m_flusher.shutdown();
+                m_flusher = null;
+            }
+        }
+        flushPendingReductions();
+        LOG.info("destroy: processed {} events; created {} alarms, reduced {} events right away and {} events in {} deferred updates",
+                 getEventsProcessed(), getAlarmsCreated(), getAlarmsReduced(), getReductionsDeferred(), getDeferredUpdatesWritten());
+    }
+
+    /**
+     * Events collected for a reduction key, waiting to be written to the
+     * alarm. Guarded by its own monitor.
+     */
+    private static class PendingReduction {
+        private final String m_reductionKey;
+        private final OnmsAlarm m_alarm;
+        private final Integer m_alarmId;
+        private final long m_deadline;
+        private final List<Integer> m_eventIds = new ArrayList<Integer>();
+        private Integer m_lastEventId;
+        private Event m_lastEvent;
+        private Date m_firstEventTime;
+        private boolean m_flushed = false;
+
+        public PendingReduction(final String reductionKey, final OnmsAlarm alarm, final long deadline) {
+            m_reductionKey = reductionKey;
+            m_alarm = alarm;
+            m_alarmId = alarm.getId();
+            m_deadline = deadline;
+        }
+
+        public void add(final OnmsEvent e, final Event event) {
+            if (m_firstEventTime == null) {
+                m_firstEventTime = e.getEventTime();
+            }
+            m_eventIds.add(e.getId());
+            m_lastEventId = e.getId();
+            m_lastEvent = event;
+        }
+
+        public String getReductionKey() {
+            return m_reductionKey;
+        }
+
+        public OnmsAlarm getAlarm() {
+            return m_alarm;
+        }
+
+        public Integer getAlarmId() {
+            return m_alarmId;
+        }
+
+        public long getDeadline() {
+            return m_deadline;
+        }
+
+        public int getCount() {
+            return m_eventIds.size();
+        }
+
+        public List<Integer> getEventIds() {
+            return m_eventIds;
+        }
+
+        public Integer getLastEventId() {
+            return m_lastEventId;
+        }
+
+        public Event getLastEvent() {
+            return m_lastEvent;
+        }
+
+        public Date getFirstEventTime() {
+            return m_firstEventTime;
+        }
+
+        public boolean isFlushed() {
+            return m_flushed;
+        }
+
+        public void setFlushed() {
+            m_flushed = true;
+        }
+    }
+
 }
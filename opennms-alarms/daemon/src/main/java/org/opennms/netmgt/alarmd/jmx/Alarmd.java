@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd.jmx;
+
+import org.opennms.netmgt.alarmd.AlarmPersister;
+import org.opennms.netmgt.alarmd.AlarmPersisterImpl;
+import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
+
+/**
+ * <p>Alarmd class.</p>
+ */
+public class Alarmd extends AbstractSpringContextJmxServiceDaemon<org.opennms.netmgt.alarmd.Alarmd> implements AlarmdMBean {
+    /** {@inheritDoc} */
+    @Override
+    protected String getLoggingPrefix() {
+        return "alarmd";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected String getSpringContext() {
+        return "alarmdContext";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEventsProcessed() {
+        final AlarmPersisterImpl persister = getPersister();
+        return persister == null ? 0 : persister.getEventsProcessed();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getAlarmsCreated() {
+        final AlarmPersisterImpl persister = getPersister();
+        return persister == null ? 0 : persister.getAlarmsCreated();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getAlarmsReduced() {
+        final AlarmPersisterImpl persister = getPersister();
+        return persister == null ? 0 : persister.getAlarmsReduced();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getReductionsDeferred() {
+        final AlarmPersisterImpl persister = getPersister();
+        return persister == null ? 0 : persister.getReductionsDeferred();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getDeferredUpdatesWritten() {
+        final AlarmPersisterImpl persister = getPersister();
+        return persister == null ? 0 : persister.getDeferredUpdatesWritten();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getPendingReductionCount() {
+        final AlarmPersisterImpl persister = getPersister();
+        return persister == null ? 0 : persister.getPendingReductionCount();
+    }
+
+    private AlarmPersisterImpl getPersister() {
+        final AlarmPersister persister = getDaemon().getPersister();
+        return persister instanceof AlarmPersisterImpl ? (AlarmPersisterImpl) persister : null;
+    }
+}
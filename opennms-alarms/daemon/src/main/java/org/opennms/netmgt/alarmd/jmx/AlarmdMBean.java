@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.alarmd.jmx;
+
+import org.opennms.netmgt.daemon.BaseOnmsMBean;
+
+/**
+ * <p>AlarmdMBean interface.</p>
+ */
+public interface AlarmdMBean extends BaseOnmsMBean {
+    /** @return The number of events processed since Alarmd was last started */
+    public long getEventsProcessed();
+
+    /** @return The number of alarms created since Alarmd was last started */
+    public long getAlarmsCreated();
+
+    /** @return The number of events reduced into an existing alarm right away */
+    public long getAlarmsReduced();
+
+    /** @return The number of events whose reduction was deferred */
+    public long getReductionsDeferred();
+
+    /** @return The number of alarm updates that deferred reductions were collapsed into */
+    public long getDeferredUpdatesWritten();
+
+    /** @return The number of reduction keys events are currently being collected for */
+    public int getPendingReductionCount();
+}
@@ -28,18 +28,33 @@
 
 package org.opennms.netmgt.alarmd;
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.opennms.core.spring.BeanUtils;
 import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
 import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
 import org.opennms.netmgt.dao.api.AlarmDao;
+import org.opennms.netmgt.dao.api.DistPollerDao;
 import org.opennms.netmgt.dao.api.EventDao;
 import org.opennms.netmgt.dao.mock.MockEventIpcManager;
+import org.opennms.netmgt.model.OnmsAlarm;
+import org.opennms.netmgt.model.OnmsEvent;
+import org.opennms.netmgt.xml.event.AlarmData;
+import org.opennms.netmgt.xml.event.Event;
 import org.opennms.test.JUnitConfigurationEnvironment;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * AlarmPersting tests
@@ -68,6 +83,12 @@ public class AlarmPersisterTest implements InitializingBean {
     @Autowired
     private EventDao m_eventDao;
 
+    @Autowired
+    private DistPollerDao m_distPollerDao;
+
+    @Autowired
+    private TransactionTemplate m_transactionTemplate;
+
     @Override
     public void afterPropertiesSet() throws Exception {
         BeanUtils.assertAutowiring(this);
@@ -78,4 +99,171 @@ public class AlarmPersisterTest implements InitializingBean {
         // Do something?
     }
 
+    @Test
+    public void testDeferredReductions() throws Exception {
+        final AlarmPersisterImpl persister = createPersister(60000);
+
+        persistEvents(persister, "deferred", 10);
+        assertEquals(1, persister.getAlarmsCreated());
+        assertEquals(9, persister.getReductionsDeferred());
+        assertEquals(1, persister.getPendingReductionCount());
+
+        // only the first event has been written to the alarm so far
+        assertEquals(1, getAlarm("deferred").getCounter().intValue());
+
+        persister.flushPendingReductions();
+        assertEquals(0, persister.getPendingReductionCount());
+        assertEquals(1, persister.getDeferredUpdatesWritten());
+        assertEquals(10, getAlarm("deferred").getCounter().intValue());
+        assertEquals(0, countEventsWithoutAlarm());
+
+        // the next event is written right away and starts a new window
+        persistEvents(persister, "deferred", 1);
+        assertEquals(1, persister.getAlarmsReduced());
+        assertEquals(11, getAlarm("deferred").getCounter().intValue());
+
+        persister.destroy();
+    }
+
+    @Test
+    public void testDeferredReductionsExpire() throws Exception {
+        final AlarmPersisterImpl persister = createPersister(100);
+
+        persistEvents(persister, "expire", 5);
+        final long end = System.currentTimeMillis() + 5000;
+        while (persister.getPendingReductionCount() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(50);
+        }
+
+        assertEquals(0, persister.getPendingReductionCount());
+        assertEquals(5, getAlarm("expire").getCounter().intValue());
+
+        persister.destroy();
+    }
+
+    @Test
+    public void testReductionStress() throws Exception {
+        final int eventsPerKey = 500;
+        final String[] keys = { "flap1", "flap2", "flap3", "flap4" };
+
+        final long[] elapsed = new long[2];
+        final long[] windows = { 0, 60000 };
+        for (int i = 0; i < windows.length; i++) {
+            final AlarmPersisterImpl persister = createPersister(windows[i]);
+            final String prefix = "window" + windows[i] + "-";
+            final CountDownLatch done = new CountDownLatch(keys.length);
+            final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+            final long start = System.nanoTime();
+            for (final String key : keys) {
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            persistEvents(persister, prefix + key, eventsPerKey);
+                        } catch (final Throwable t) {
+                            failure.set(t);
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }.start();
+            }
+            done.await(5, TimeUnit.MINUTES);
+            persister.destroy();
+            elapsed[i] = System.nanoTime() - start;
+
+            if (failure.get() != null) {
+                throw new AssertionError(failure.get());
+            }
+            for (final String key : keys) {
+                assertEquals(eventsPerKey, getAlarm(prefix + key).getCounter().intValue());
+            }
+            assertEquals(0, countEventsWithoutAlarm());
+        }
+
+        final int total = eventsPerKey * keys.length;
+        System.err.printf("%d events on %d reduction keys: %.0f events/s without a reduction window, %.0f events/s with a reduction window%n",
+                          total, keys.length, total / (elapsed[0] / 1e9), total / (elapsed[1] / 1e9));
+    }
+
+    private AlarmPersisterImpl createPersister(final long reductionWindow) {
+        final AlarmPersisterImpl persister = new AlarmPersisterImpl();
+        persister.setAlarmDao(m_alarmDao);
+        persister.setEventDao(m_eventDao);
+        persister.setTransactionOperations(m_transactionTemplate);
+        persister.setReductionWindow(reductionWindow);
+        return persister;
+    }
+
+    /**
+     * Store the events and persist them in a transaction of their own, like
+     * the transactional proxy of the persister does.
+     */
+    private void persistEvents(final AlarmPersisterImpl persister, final String reductionKey, final int count) {
+        for (int i = 0; i < count; i++) {
+            final Event event = m_transactionTemplate.execute(new TransactionCallback<Event>() {
+                @Override
+                public Event doInTransaction(final TransactionStatus status) {
+                    return createEvent(reductionKey);
+                }
+            });
+            m_transactionTemplate.execute(new TransactionCallback<OnmsAlarm>() {
+                @Override
+                public OnmsAlarm doInTransaction(final TransactionStatus status) {
+                    return persister.persist(event);
+                }
+            });
+        }
+    }
+
+    private Event createEvent(final String reductionKey) {
+        final OnmsEvent e = new OnmsEvent();
+        e.setDistPoller(m_distPollerDao.load("localhost"));
+        e.setEventUei("uei.opennms.org/test");
+        e.setEventTime(new Date());
+        e.setEventSource("test");
+        e.setEventCreateTime(new Date());
+        e.setEventSeverity(5);
+        e.setEventLog("Y");
+        e.setEventDisplay("Y");
+        e.setEventLogMsg("reduction test");
+        m_eventDao.save(e);
+        m_eventDao.flush();
+
+        final AlarmData alarmData = new AlarmData();
+        alarmData.setReductionKey(reductionKey);
+        alarmData.setAlarmType(1);
+
+        final Event event = new Event();
+        event.setUei(e.getEventUei());
+        event.setDbid(e.getId());
+        event.setAlarmData(alarmData);
+        return event;
+    }
+
+    private OnmsAlarm getAlarm(final String reductionKey) {
+        return m_transactionTemplate.execute(new TransactionCallback<OnmsAlarm>() {
+            @Override
+            public OnmsAlarm doInTransaction(final TransactionStatus status) {
+                return m_alarmDao.findByReductionKey(reductionKey);
+            }
+        });
+    }
+
+    private int countEventsWithoutAlarm() {
+        return m_transactionTemplate.execute(new TransactionCallback<Integer>() {
+            @Override
+            public Integer doInTransaction(final TransactionStatus status) {
+                int count = 0;
+                for (final OnmsEvent e : m_eventDao.findAll()) {
+                    if (e.getAlarm() == null) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+        });
+    }
+
 }
@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.xml.eventconf;
+
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_SNMP_SPECIFIC;
+import static org.opennms.netmgt.xml.eventconf.Maskelement.TAG_UEI;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * An immutable, pre-compiled lookup structure for finding the event
+ * configuration that matches an incoming event.
+ *
+ * The index returns exactly what {@link Events#findFirstMatchingEvent(org.opennms.netmgt.xml.event.Event)}
+ * would return for the same configuration, but only evaluates the matchers of
+ * the configurations that can possibly match:
+ * <ul>
+ * <li>configurations the {@link Partition} places in a group (enterprise ID
+ * by default) are only candidates for events in that group, and within the
+ * group they are further keyed by their exact <code>specific</code> mask
+ * values</li>
+ * <li>configurations without a group are keyed by their exact UEI</li>
+ * <li>configurations that use wildcards or regular expressions for the key
+ * field are always candidates</li>
+ * </ul>
+ * Every configuration is given an ordinal that reflects the order in which
+ * <code>findFirstMatchingEvent</code> visits it, and candidates are checked in
+ * ordinal order so that the first-match-wins semantics are preserved.
+ *
+ * Since nothing in the index is modified after it has been built, any number
+ * of threads can use it without locking.  Changes to the configuration are
+ * made visible by building a new index and replacing the old one.
+ */
+public final class EventMatchIndex {
+
+    private static final Candidate[] NO_CANDIDATES = new Candidate[0];
+
+    private final Partition m_partition;
+
+    private final Map<String, FieldIndex> m_partitioned;
+
+    private final FieldIndex m_unpartitioned;
+
+    private final int m_eventCount;
+
+    private EventMatchIndex(final Partition partition, final Map<String, FieldIndex> partitioned, final FieldIndex unpartitioned, final int eventCount) {
+        m_partition = partition;
+        m_partitioned = partitioned;
+        m_unpartitioned = unpartitioned;
+        m_eventCount = eventCount;
+    }
+
+    /**
+     * Build an index for the given configuration.  The events must already
+     * have been {@link Events#initialize(Partition) initialized}.
+     *
+     * @param events the root event configuration, including any loaded event files
+     * @param partition the partition used to group events
+     * @return the index
+     */
+    public static EventMatchIndex build(final Events events, final Partition partition) {
+        final Builder builder = new Builder(partition);
+        builder.add(events);
+        return builder.build();
+    }
+
+    /**
+     * Find the first event configuration that matches the given event.
+     *
+     * @param matchingEvent the event to match
+     * @return the event configuration, or null if none matches
+     */
+    public Event findFirstMatchingEvent(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+        Candidate found = null;
+
+        final String key = m_partition.group(matchingEvent);
+        if (key != null) {
+            final FieldIndex partitioned = m_partitioned.get(key);
+            if (partitioned != null) {
+                found = partitioned.findFirst(matchingEvent, Integer.MAX_VALUE);
+            }
+        }
+
+        // an unpartitioned configuration wins if it comes earlier in the configuration
+        final Candidate unpartitioned = m_unpartitioned.findFirst(matchingEvent, found == null ? Integer.MAX_VALUE : found.getOrdinal());
+        if (unpartitioned != null) {
+            found = unpartitioned;
+        }
+
+        return found == null ? null : found.getEvent();
+    }
+
+    /**
+     * @return the number of event configurations in the index
+     */
+    public int getEventCount() {
+        return m_eventCount;
+    }
+
+    @Override
+    public String toString() {
+        return "EventMatchIndex[events=" + m_eventCount + ", partitions=" + m_partitioned.size() + "]";
+    }
+
+    private static final class Candidate {
+        private final int m_ordinal;
+        private final Event m_event;
+
+        Candidate(final int ordinal, final Event event) {
+            m_ordinal = ordinal;
+            m_event = event;
+        }
+
+        int getOrdinal() {
+            return m_ordinal;
+        }
+
+        Event getEvent() {
+            return m_event;
+        }
+
+        boolean matches(final org.opennms.netmgt.xml.event.Event matchingEvent) {
+            return m_event.matches(matchingEvent);
+        }
+    }
+
+    /**
+     * Candidates keyed by the exact values a configuration requires for one
+     * field of the event, plus the candidates that do not constrain that
+     * field to exact values.  All arrays are sorted by ordinal.
+     */
+    private static final class FieldIndex {
+        private final Field m_field;
+        private final Map<String, Candidate[]> m_byValue;
+        private final Candidate[] m_unkeyed;
+
+        FieldIndex(final Field field, final Map<String, Candidate[]> byValue, final Candidate[] unkeyed) {
+            m_field = field;
+            m_byValue = byValue;
+            m_unkeyed = unkeyed;
+        }
+
+        /**
+         * Find the matching candidate with the lowest ordinal that is less than <code>limit</code>.
+         */
+        Candidate findFirst(final org.opennms.netmgt.xml.event.Event matchingEvent, final int limit) {
+            final String value = m_field.get(matchingEvent);
+            Candidate[] keyed = value == null ? null : m_byValue.get(value);
+            if (keyed == null) {
+                keyed = NO_CANDIDATES;
+            }
+
+            int i = 0;
+            int j = 0;
+            while (i < keyed.length || j < m_unkeyed.length) {
+                final Candidate next;
+                if (j >= m_unkeyed.length || (i < keyed.length && keyed[i].getOrdinal() < m_unkeyed[j].getOrdinal())) {
+                    next = keyed[i++];
+                } else {
+                    next = m_unkeyed[j++];
+                }
+                if (next.getOrdinal() >= limit) {
+                    return null;
+                }
+                if (next.matches(matchingEvent)) {
+                    return next;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class FieldIndexBuilder {
+        private final String m_fieldName;
+        private final Map<String, List<Candidate>> m_byValue = new HashMap<String, List<Candidate>>();
+        private final List<Candidate> m_unkeyed = new ArrayList<Candidate>();
+
+        FieldIndexBuilder(final String fieldName) {
+            m_fieldName = fieldName;
+        }
+
+        void add(final Candidate candidate) {
+            final Set<String> values = exactValues(candidate.getEvent(), m_fieldName);
+            if (values == null) {
+                m_unkeyed.add(candidate);
+                return;
+            }
+            // an empty set means the configuration can never match
+            for (final String value : values) {
+                List<Candidate> candidates = m_byValue.get(value);
+                if (candidates == null) {
+                    candidates = new ArrayList<Candidate>(1);
+                    m_byValue.put(value, candidates);
+                }
+                candidates.add(candidate);
+            }
+        }
+
+        FieldIndex build() {
+            final Map<String, Candidate[]> byValue = new HashMap<String, Candidate[]>(m_byValue.size() * 2);
+            for (final Entry<String, List<Candidate>> entry : m_byValue.entrySet()) {
+                byValue.put(entry.getKey(), entry.getValue().toArray(NO_CANDIDATES));
+            }
+            return new FieldIndex(EventMatchers.field(m_fieldName), byValue, m_unkeyed.toArray(NO_CANDIDATES));
+        }
+
+        /**
+         * The exact values the configuration requires for the named field, or
+         * null if the configuration does not restrict the field to exact values.
+         */
+        private static Set<String> exactValues(final Event eventConf, final String name) {
+            final Mask mask = eventConf.getMask();
+            if (mask == null) {
+                // without a mask the configuration matches on the UEI alone
+                if (!TAG_UEI.equals(name)) {
+                    return null;
+                }
+                return eventConf.getUei() == null ? Collections.<String>emptySet() : Collections.singleton(eventConf.getUei());
+            }
+
+            final Maskelement element = mask.getMaskElement(name);
+            if (element == null) {
+                return null;
+            }
+
+            final Set<String> values = new LinkedHashSet<String>();
+            for (final String value : element.getMevalueCollection()) {
+                if (value == null) {
+                    continue;
+                }
+                if (value.startsWith("~") || value.endsWith("%")) {
+                    return null;
+                }
+                values.add(value);
+            }
+            return values;
+        }
+    }
+
+    private static final class Builder {
+        private final Partition m_partition;
+        private final Map<String, FieldIndexBuilder> m_partitioned = new LinkedHashMap<String, FieldIndexBuilder>();
+        private final FieldIndexBuilder m_unpartitioned = new FieldIndexBuilder(TAG_UEI);
+        private int m_ordinal = 0;
+        private int m_eventCount = 0;
+
+        Builder(final Partition partition) {
+            m_partition = partition;
+        }
+
+        /**
+         * Assign ordinals in the order used by Events.findFirstMatchingEvent:
+         * the partitioned events of a file, then its unpartitioned events,
+         * then the files it loaded.
+         */
+        void add(final Events events) {
+            final List<Event> unpartitioned = new ArrayList<Event>();
+            for (final Event event : events.getEventCollection()) {
+                m_eventCount++;
+                final List<String> keys = m_partition.group(event);
+                if (keys == null) {
+                    unpartitioned.add(event);
+                    continue;
+                }
+                final Candidate candidate = new Candidate(m_ordinal++, event);
+                for (final String key : keys) {
+                    FieldIndexBuilder builder = m_partitioned.get(key);
+                    if (builder == null) {
+                        builder = new FieldIndexBuilder(TAG_SNMP_SPECIFIC);
+                        m_partitioned.put(key, builder);
+                    }
+                    builder.add(candidate);
+                }
+            }
+            for (final Event event : unpartitioned) {
+                m_unpartitioned.add(new Candidate(m_ordinal++, event));
+            }
+
+            for (final Events loaded : events.getLoadedEvents()) {
+                add(loaded);
+            }
+        }
+
+        EventMatchIndex build() {
+            final Map<String, FieldIndex> partitioned = new HashMap<String, FieldIndex>(m_partitioned.size() * 2);
+            for (final Entry<String, FieldIndexBuilder> entry : m_partitioned.entrySet()) {
+                partitioned.put(entry.getKey(), entry.getValue().build());
+            }
+            return new EventMatchIndex(m_partition, partitioned, m_unpartitioned.build(), m_eventCount);
+        }
+    }
+}
@@ -39,6 +39,7 @@ import java.util.TreeSet;
 import org.opennms.core.xml.JaxbUtils;
 import org.opennms.netmgt.config.api.EventConfDao;
 import org.opennms.netmgt.xml.eventconf.Event;
+import org.opennms.netmgt.xml.eventconf.EventMatchIndex;
 import org.opennms.netmgt.xml.eventconf.Events;
 import org.opennms.netmgt.xml.eventconf.Events.EventCallback;
 import org.opennms.netmgt.xml.eventconf.Events.EventCriteria;
@@ -63,6 +64,13 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 
 	private Partition m_partition;
 
+	/**
+	 * Pre-compiled lookup structure used by {@link #findByEvent(org.opennms.netmgt.xml.event.Event)}.
+	 * It is rebuilt whenever the configuration changes and replaced atomically so
+	 * that lookups never need to lock.
+	 */
+	private volatile EventMatchIndex m_index;
+
     public String getProgrammaticStoreRelativeUrl() {
 		return m_programmaticStoreRelativePath;
 	}
@@ -161,13 +169,14 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 	}
 
 	@Override
-	public void addEvent(Event event) {
+	public synchronized void addEvent(Event event) {
 		m_events.addEvent(event);
 		m_events.initialize(m_partition);
+		m_index = EventMatchIndex.build(m_events, m_partition);
 	}
 
 	@Override
-	public void addEventToProgrammaticStore(Event event) {
+	public synchronized void addEventToProgrammaticStore(Event event) {
 		Events programmaticEvents = m_events.getLoadEventsByFile(m_programmaticStoreRelativePath);
 		if (programmaticEvents == null) {
 			programmaticEvents = new Events();
@@ -176,11 +185,12 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 
 		programmaticEvents.addEvent(event);
 		programmaticEvents.initialize(m_partition);
+		m_index = EventMatchIndex.build(m_events, m_partition);
 
 	}
 
 	@Override
-	public boolean removeEventFromProgrammaticStore(Event event) {
+	public synchronized boolean removeEventFromProgrammaticStore(Event event) {
 		Events programmaticEvents = m_events.getLoadEventsByFile(m_programmaticStoreRelativePath);
 		if (programmaticEvents == null) return false;
 
@@ -190,6 +200,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 		} else {
 			programmaticEvents.initialize(m_partition);
 		}
+		m_index = EventMatchIndex.build(m_events, m_partition);
 		return true;
 
 	}
@@ -212,7 +223,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 
 	@Override
 	public Event findByEvent(final org.opennms.netmgt.xml.event.Event matchingEvent) {
-		return m_events.findFirstMatchingEvent(matchingEvent);
+		return m_index.findFirstMatchingEvent(matchingEvent);
 	}
 
 	@Override
@@ -238,6 +249,7 @@ public class DefaultEventConfDao implements EventConfDao, InitializingBean {
 			events.initialize(m_partition);
 
 			m_events = events;
+			m_index = EventMatchIndex.build(events, m_partition);
 
 		} catch (Exception e) {
 			throw new DataRetrievalFailureException("Unabled to load " + m_configResource, e);
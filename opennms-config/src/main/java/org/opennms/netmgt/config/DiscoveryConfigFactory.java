@@ -581,6 +581,20 @@ public class DiscoveryConfigFactory {
     }
 
 
+    /**
+     * <p>getPacketsPerSecond</p>
+     *
+     * @return a int.
+     */
+    public int getPacketsPerSecond() {
+        getReadLock().lock();
+        try {
+            return getConfiguration().getPacketsPerSecond();
+        } finally {
+            getReadLock().unlock();
+        }
+    }
+
     /**
      * <p>getIntraPacketDelay</p>
      *
@@ -182,6 +182,34 @@ public class EventdConfigManager {
         }
     }
 
+    /**
+     * Return the maximum number of events written in a single JDBC batch.
+     *
+     * @return the maximum batch size, or 0 if events are not batched
+     */
+    public int getBatchSize() {
+        getReadLock().lock();
+        try {
+            return m_config.hasBatchSize() ? m_config.getBatchSize() : 0;
+        } finally {
+            getReadLock().unlock();
+        }
+    }
+
+    /**
+     * Return the maximum time a partially filled batch is held open.
+     *
+     * @return the batch flush interval in milliseconds
+     */
+    public long getBatchFlushInterval() {
+        getReadLock().lock();
+        try {
+            return m_config.hasBatchFlushInterval() ? m_config.getBatchFlushInterval() : 0;
+        } finally {
+            getReadLock().unlock();
+        }
+    }
+
     /**
      * Return string indicating if timeout is to be set on the socket.
      *
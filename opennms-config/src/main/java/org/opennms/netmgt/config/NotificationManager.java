@@ -103,6 +103,9 @@ public abstract class NotificationManager {
     private long m_binaryNoticesInterrupted = 0;
     private long m_javaNoticesInterrupted = 0;
     private long m_unknownNoticesInterrupted = 0;
+    private long m_noticesSent = 0;
+    private long m_totalSendLatency = 0;
+    private long m_maxSendLatency = 0;
     
     /**
      * 
@@ -1341,6 +1344,22 @@ public abstract class NotificationManager {
     public void incrementUnknownInterrupted() {
         m_unknownNoticesInterrupted++;
     }
+
+    /**
+     * Records how long after its scheduled time a notice was handed to the
+     * notification strategies. For a notice that is not escalated the
+     * scheduled time is when its event was processed.
+     *
+     * @param latency the delay in milliseconds
+     */
+    public synchronized void recordSendLatency(long latency) {
+        final long positive = Math.max(0, latency);
+        m_noticesSent++;
+        m_totalSendLatency += positive;
+        if (positive > m_maxSendLatency) {
+            m_maxSendLatency = positive;
+        }
+    }
     
     public long getNotificationTasksQueued() {
         return m_notifTasksQueued;
@@ -1381,4 +1400,16 @@ public abstract class NotificationManager {
     public long getUnknownNoticesInterrupted() {
         return m_unknownNoticesInterrupted;
     }
+
+    public synchronized long getNoticesSent() {
+        return m_noticesSent;
+    }
+
+    public synchronized long getAverageSendLatency() {
+        return m_noticesSent == 0 ? 0 : m_totalSendLatency / m_noticesSent;
+    }
+
+    public synchronized long getMaxSendLatency() {
+        return m_maxSendLatency;
+    }
 }
@@ -311,6 +311,114 @@ public class EventconfFactoryTest {
         assertEquals("uei.opennms.org/traps/eventTrap", eventConf.getUei());
     }
 
+    /**
+     * Builds one event for every configured event (plus a few that match
+     * nothing) and checks that the indexed lookup returns exactly what the
+     * linear search over the configuration returns.
+     */
+    @Test
+    public void testFindByEventMatchesLinearSearch() throws Exception {
+        DefaultEventConfDao eventConfDao = loadConfiguration("eventconf-speedtest/eventconf.xml");
+
+        List<org.opennms.netmgt.xml.event.Event> events = createTrapMix(eventConfDao);
+        assertTrue("expected a reasonable number of test events", events.size() > 100);
+
+        for (org.opennms.netmgt.xml.event.Event event : events) {
+            Event expected = eventConfDao.getRootEvents().findFirstMatchingEvent(event);
+            Event actual = eventConfDao.findByEvent(event);
+            assertTrue("lookup for " + event.getUei() + "/" + (event.getSnmp() == null ? null : event.getSnmp().getId()) + " should return " + (expected == null ? null : expected.getUei()) + " but returned " + (actual == null ? null : actual.getUei()), expected == actual);
+        }
+    }
+
+    @Test
+    public void testFindByTrapMixConcurrently() throws Exception {
+        final DefaultEventConfDao eventConfDao = loadConfiguration("eventconf-speedtest/eventconf.xml");
+        final List<org.opennms.netmgt.xml.event.Event> events = createTrapMix(eventConfDao);
+
+        final int THREADS = 4;
+        final int ATTEMPTS = 100000;
+
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            final int offset = t;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < ATTEMPTS; i++) {
+                        eventConfDao.findByEvent(events.get((i + offset) % events.size()));
+                    }
+                }
+            });
+        }
+
+        long start = System.currentTimeMillis();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        System.err.printf("%d threads, %d Attempts each over %d distinct events: Elapsed: %d ms: events per second %f.%n", THREADS, ATTEMPTS, events.size(), elapsed, THREADS*ATTEMPTS*1000.0/elapsed);
+
+        long linearStart = System.currentTimeMillis();
+        for (int i = 0; i < ATTEMPTS / 10; i++) {
+            eventConfDao.getRootEvents().findFirstMatchingEvent(events.get(i % events.size()));
+        }
+        long linearElapsed = Math.max(1, System.currentTimeMillis() - linearStart);
+        System.err.printf("linear search, 1 thread, %d Attempts: Elapsed: %d ms: events per second %f.%n", ATTEMPTS / 10, linearElapsed, (ATTEMPTS / 10)*1000.0/linearElapsed);
+    }
+
+    /**
+     * Creates an event for each configured event using the exact (or prefix)
+     * values of its mask, approximating the mix of traps and internal events
+     * seen by eventd.
+     */
+    private static List<org.opennms.netmgt.xml.event.Event> createTrapMix(DefaultEventConfDao eventConfDao) {
+        List<org.opennms.netmgt.xml.event.Event> events = new ArrayList<org.opennms.netmgt.xml.event.Event>();
+        for (Event eventConf : eventConfDao.getAllEvents()) {
+            EventBuilder bldr = new EventBuilder(null, "trapd");
+            if (eventConf.getMask() == null) {
+                bldr.setUei(eventConf.getUei());
+            } else {
+                bldr.setSnmpVersion("v2");
+                bldr.setCommunity("public");
+                for (org.opennms.netmgt.xml.eventconf.Maskelement element : eventConf.getMask().getMaskelementCollection()) {
+                    if (element.getMevalueCollection().isEmpty()) continue;
+                    String value = element.getMevalueCollection().get(0);
+                    if (value == null || value.startsWith("~")) continue;
+                    if (value.endsWith("%")) {
+                        value = value.substring(0, value.length() - 1) + "1";
+                    }
+                    try {
+                        if ("uei".equals(element.getMename())) {
+                            bldr.setUei(value);
+                        } else if ("id".equals(element.getMename())) {
+                            bldr.setEnterpriseId(value);
+                        } else if ("generic".equals(element.getMename())) {
+                            bldr.setGeneric(Integer.parseInt(value));
+                        } else if ("specific".equals(element.getMename())) {
+                            bldr.setSpecific(Integer.parseInt(value));
+                        }
+                    } catch (NumberFormatException e) {
+                        // leave the field unset
+                    }
+                }
+            }
+            events.add(bldr.getEvent());
+        }
+
+        events.add(new EventBuilder(unknownUEI1, "trapd").getEvent());
+        EventBuilder unknownTrap = new EventBuilder(null, "trapd");
+        unknownTrap.setSnmpVersion("v2");
+        unknownTrap.setEnterpriseId(".1.3.6.1.4.1.99999.1");
+        unknownTrap.setGeneric(6);
+        unknownTrap.setSpecific(42);
+        events.add(unknownTrap.getEvent());
+
+        return events;
+    }
+
     @Test
     public void testFindByEventUnknown() {
         EventBuilder bldr = new EventBuilder(unknownUEI1, "testFindByEventUnknown");
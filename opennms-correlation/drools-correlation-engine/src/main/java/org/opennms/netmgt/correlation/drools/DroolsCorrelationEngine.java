@@ -25,24 +25,30 @@
  *     http://www.opennms.org/
  *     http://www.opennms.com/
  *******************************************************************************/
-
 package org.opennms.netmgt.correlation.drools;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.IOUtils;
 import org.drools.RuleBase;
 import org.drools.RuleBaseConfiguration;
 import org.drools.RuleBaseConfiguration.AssertBehaviour;
 import org.drools.RuleBaseFactory;
+import org.drools.StatefulSession;
 import org.drools.WorkingMemory;
 import org.drools.compiler.DroolsParserException;
 import org.drools.compiler.PackageBuilder;
@@ -50,42 +56,202 @@ import org.drools.compiler.PackageBuilderConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opennms.netmgt.correlation.AbstractCorrelationEngine;
+import org.opennms.netmgt.correlation.PartitionedCorrelationEngine;
 import org.opennms.netmgt.xml.event.Event;
 import org.springframework.core.io.Resource;
 
 /**
  * <p>DroolsCorrelationEngine class.</p>
  *
+ * <p>By default all events are inserted into a single working memory and the
+ * rules are fired once per event.  When more than one partition is configured
+ * each partition gets its own working memory and thread: events are routed to a
+ * partition by their partition key and inserted in batches of up to
+ * <code>batchSize</code> events with a single <code>fireAllRules()</code> per batch.
+ * Events that should be correlated with each other must share a partition key.</p>
+ *
  * @author <a href="mailto:brozow@opennms.org">Mathew Brozowski</a>
  * @version $Id: $
  */
-public class DroolsCorrelationEngine extends AbstractCorrelationEngine {
+public class DroolsCorrelationEngine extends AbstractCorrelationEngine implements PartitionedCorrelationEngine {
     private static final Logger LOG = LoggerFactory.getLogger(DroolsCorrelationEngine.class);
 
-    private WorkingMemory m_workingMemory;
+    /** Partition events by node ID. */
+    public static final String PARTITION_BY_NODE = "nodeid";
+
+    /** Partition events by the reduction key of their alarm data, or by node ID if they have none. */
+    public static final String PARTITION_BY_REDUCTION_KEY = "reduction-key";
+
+    /** Partition events by UEI. */
+    public static final String PARTITION_BY_UEI = "uei";
+
+    /** Constant <code>DEFAULT_BATCH_SIZE=100</code> */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    /** Constant <code>DEFAULT_QUEUE_SIZE=10000</code> */
+    public static final int DEFAULT_QUEUE_SIZE = 10000;
+
     private List<String> m_interestingEvents;
     private List<Resource> m_rules;
     private Map<String, Object> m_globals = new HashMap<String, Object>();
     private String m_name;
     private String m_assertBehaviour;
-    
+    private int m_partitionCount = 1;
+    private String m_partitionKey = PARTITION_BY_NODE;
+    private int m_batchSize = DEFAULT_BATCH_SIZE;
+    private int m_queueSize = DEFAULT_QUEUE_SIZE;
+
+    private Partition[] m_partitions;
+    private final Map<Integer, Partition> m_timerPartitions = new ConcurrentHashMap<Integer, Partition>();
+    private final ThreadLocal<Partition> m_currentPartition = new ThreadLocal<Partition>();
+
+    /**
+     * A working memory together with its queue of pending facts and its statistics.
+     */
+    private class Partition implements Runnable {
+        private final int m_index;
+        private final StatefulSession m_session;
+        private final BlockingQueue<Object> m_queue;
+        private final AtomicLong m_eventsCorrelated = new AtomicLong();
+        private final AtomicLong m_batchesFired = new AtomicLong();
+        private final AtomicLong m_rulesFired = new AtomicLong();
+        private Thread m_thread;
+        private volatile boolean m_stopped = false;
+
+        public Partition(final int index, final StatefulSession session, final boolean queued) {
+            m_index = index;
+            m_session = session;
+            m_queue = queued ? new ArrayBlockingQueue<Object>(m_queueSize) : null;
+        }
+
+        public void start() {
+            m_thread = new Thread(this, getName() + "-Correlation-" + m_index);
+            m_thread.setDaemon(true);
+            m_thread.start();
+        }
+
+        public void stop() {
+            m_stopped = true;
+            if (m_thread != null) {
+                m_thread.interrupt();
+            }
+        }
+
+        public void enqueue(final Object fact) {
+            if (m_stopped) {
+                // nobody is taking from the queue anymore
+                LOG.debug("Dropping {} for stopped partition {} of engine {}", fact, m_index, getName());
+                return;
+            }
+            try {
+                m_queue.put(fact);
+            } catch (final InterruptedException e) {
+                LOG.warn("Interrupted while queueing {} for partition {} of engine {}", fact, m_index, getName());
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public synchronized void fire(final List<?> facts) {
+            for (final Object fact : facts) {
+                m_session.insert(fact);
+                if (fact instanceof Event) {
+                    m_eventsCorrelated.incrementAndGet();
+                }
+            }
+            m_rulesFired.addAndGet(m_session.fireAllRules());
+            m_batchesFired.incrementAndGet();
+        }
+
+        @Override
+        public void run() {
+            m_currentPartition.set(this);
+            final List<Object> batch = new ArrayList<Object>(m_batchSize);
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    batch.add(m_queue.take());
+                } catch (final InterruptedException e) {
+                    break;
+                }
+                m_queue.drainTo(batch, m_batchSize - 1);
+                LOG.debug("Begin correlation for {} facts in partition {}", batch.size(), m_index);
+                try {
+                    fire(batch);
+                } catch (final Throwable t) {
+                    LOG.error("Correlation of {} facts in partition {} of engine {} failed", batch.size(), m_index, getName(), t);
+                }
+                LOG.debug("End correlation for {} facts in partition {}", batch.size(), m_index);
+                batch.clear();
+            }
+            LOG.info("Stopped partition {} of engine {}", m_index, getName());
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void correlate(final Event e) {
+        if (isPartitioned()) {
+            getPartition(e).enqueue(e);
+        } else {
+	    LOG.debug("Begin correlation for Event {} uei: {}", e.getDbid(), e.getUei());
+            m_partitions[0].fire(Collections.singletonList(e));
+	    LOG.debug("End correlation for Event {} uei: {}", e.getDbid(), e.getUei());
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
-    public synchronized void correlate(final Event e) {
-	LOG.debug("Begin correlation for Event {} uei: {}", e.getDbid(), e.getUei());
-        m_workingMemory.insert(e);
-        m_workingMemory.fireAllRules();
-	LOG.debug("End correlation for Event {} uei: {}", e.getDbid(), e.getUei());
+    protected void timerExpired(final Integer timerId) {
+        final TimerExpired expiration  = new TimerExpired(timerId);
+        final Partition partition = m_timerPartitions.remove(timerId);
+        if (isPartitioned()) {
+            LOG.debug("Queueing Timer {} for partition {}", timerId, partition == null ? 0 : partition.m_index);
+            (partition == null ? m_partitions[0] : partition).enqueue(expiration);
+        } else {
+	    LOG.info("Begin correlation for Timer {}", timerId);
+            m_partitions[0].fire(Collections.singletonList(expiration));
+	    LOG.debug("End correlation for Timer {}", timerId);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void timerCreated(final Integer timerId) {
+        final Partition partition = m_currentPartition.get();
+        if (partition != null) {
+            m_timerPartitions.put(timerId, partition);
+        }
     }
 
     /** {@inheritDoc} */
     @Override
-    protected synchronized void timerExpired(final Integer timerId) {
-	LOG.info("Begin correlation for Timer {}", timerId);
-        TimerExpired expiration  = new TimerExpired(timerId);
-        m_workingMemory.insert(expiration);
-        m_workingMemory.fireAllRules();
-	LOG.debug("Begin correlation for Timer {}", timerId);
+    public void cancelTimer(final Integer timerId) {
+        m_timerPartitions.remove(timerId);
+        super.cancelTimer(timerId);
+    }
+
+    private boolean isPartitioned() {
+        return m_partitions.length > 1;
+    }
+
+    private Partition getPartition(final Event e) {
+        final Object key = getPartitionKey(e);
+        return m_partitions[key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % m_partitions.length];
+    }
+
+    /**
+     * <p>getPartitionKey</p>
+     *
+     * @param e a {@link org.opennms.netmgt.xml.event.Event} object.
+     * @return the value used to pick the partition of the event, may be null.
+     */
+    protected Object getPartitionKey(final Event e) {
+        if (PARTITION_BY_UEI.equals(m_partitionKey)) {
+            return e.getUei();
+        }
+        if (PARTITION_BY_REDUCTION_KEY.equals(m_partitionKey) && e.getAlarmData() != null && e.getAlarmData().getReductionKey() != null) {
+            return e.getAlarmData().getReductionKey();
+        }
+        return e.getNodeid();
     }
 
     /** {@inheritDoc} */
@@ -121,6 +287,42 @@ public class DroolsCorrelationEngine extends AbstractCorrelationEngine {
         m_globals = globals;
     }
 
+    /**
+     * <p>setPartitionCount</p>
+     *
+     * @param partitionCount the number of working memories, 1 to fire the rules for each event as it arrives.
+     */
+    public void setPartitionCount(final int partitionCount) {
+        m_partitionCount = partitionCount;
+    }
+
+    /**
+     * <p>setPartitionKey</p>
+     *
+     * @param partitionKey one of {@link #PARTITION_BY_NODE}, {@link #PARTITION_BY_REDUCTION_KEY} or {@link #PARTITION_BY_UEI}.
+     */
+    public void setPartitionKey(final String partitionKey) {
+        m_partitionKey = partitionKey;
+    }
+
+    /**
+     * <p>setBatchSize</p>
+     *
+     * @param batchSize the maximum number of events inserted into a partition before its rules are fired.
+     */
+    public void setBatchSize(final int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * <p>setQueueSize</p>
+     *
+     * @param queueSize the number of events a partition can hold before {@link #correlate(Event)} blocks.
+     */
+    public void setQueueSize(final int queueSize) {
+        m_queueSize = queueSize;
+    }
+
     /**
      * <p>initialize</p>
      *
@@ -146,15 +348,41 @@ public class DroolsCorrelationEngine extends AbstractCorrelationEngine {
             throw new IllegalStateException("Unable to initialize Drools engine: " + builder.getErrors());
         }
 
+        if (!PARTITION_BY_NODE.equals(m_partitionKey) && !PARTITION_BY_REDUCTION_KEY.equals(m_partitionKey) && !PARTITION_BY_UEI.equals(m_partitionKey)) {
+            throw new IllegalStateException("Unknown partition key " + m_partitionKey + " for Drools engine " + m_name);
+        }
+
         ruleBase.addPackage( builder.getPackage() );
 
-        m_workingMemory = ruleBase.newStatefulSession();
-        m_workingMemory.setGlobal("engine", this);
-        
-        for (final Map.Entry<String, Object> entry : m_globals.entrySet()) {
-            m_workingMemory.setGlobal(entry.getKey(), entry.getValue());
+        final boolean partitioned = m_partitionCount > 1;
+        m_partitions = new Partition[Math.max(1, m_partitionCount)];
+        for (int i = 0; i < m_partitions.length; i++) {
+            final StatefulSession session = ruleBase.newStatefulSession();
+            session.setGlobal("engine", this);
+
+            for (final Map.Entry<String, Object> entry : m_globals.entrySet()) {
+                session.setGlobal(entry.getKey(), entry.getValue());
+            }
+            m_partitions[i] = new Partition(i, session, partitioned);
         }
 
+        if (partitioned) {
+            LOG.info("Starting {} partitions by {} for Drools engine {}", m_partitions.length, m_partitionKey, m_name);
+            for (final Partition partition : m_partitions) {
+                partition.start();
+            }
+        }
+    }
+
+    /**
+     * <p>Stops the partition threads.  Events still queued are not correlated,
+     * and events and timers arriving afterwards are dropped.</p>
+     */
+    @Override
+    public void shutdown() {
+        for (final Partition partition : m_partitions) {
+            partition.stop();
+        }
     }
 
     private void loadRules(final PackageBuilder builder) throws DroolsParserException, IOException {
@@ -178,8 +406,12 @@ public class DroolsCorrelationEngine extends AbstractCorrelationEngine {
      */
     public int getMemorySize() {
         int count = 0;
-        for(final Iterator<?> it = m_workingMemory.iterateObjects(); it.hasNext(); it.next()) {
-            count++;
+        for (final Partition partition : m_partitions) {
+            synchronized (partition) {
+                for(final Iterator<?> it = partition.m_session.iterateObjects(); it.hasNext(); it.next()) {
+                    count++;
+                }
+            }
         }
     	return count;
     }
@@ -191,14 +423,54 @@ public class DroolsCorrelationEngine extends AbstractCorrelationEngine {
      */
     public List<Object> getMemoryObjects() {
     	final List<Object> objects = new LinkedList<Object>();
-        for(Iterator<?> it = m_workingMemory.iterateObjects(); it.hasNext(); ) {
-        	objects.add(it.next());
+        for (final Partition partition : m_partitions) {
+            synchronized (partition) {
+                for(Iterator<?> it = partition.m_session.iterateObjects(); it.hasNext(); ) {
+                	objects.add(it.next());
+                }
+            }
         }
         return objects;
     }
     
+    /**
+     * <p>getWorkingMemory</p>
+     *
+     * @return the working memory, or the one of the first partition when partitioned.
+     */
     public WorkingMemory getWorkingMemory() {
-    	return m_workingMemory;
+    	return m_partitions[0].m_session;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getPartitionCount() {
+        return m_partitions.length;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getQueueDepth(final int partition) {
+        final BlockingQueue<Object> queue = m_partitions[partition].m_queue;
+        return queue == null ? 0 : queue.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEventsCorrelated(final int partition) {
+        return m_partitions[partition].m_eventsCorrelated.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getBatchesFired(final int partition) {
+        return m_partitions[partition].m_batchesFired.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRulesFired(final int partition) {
+        return m_partitions[partition].m_rulesFired.get();
     }
 
     /**
@@ -227,7 +499,9 @@ public class DroolsCorrelationEngine extends AbstractCorrelationEngine {
      * @param value a {@link java.lang.Object} object.
      */
     public void setGlobal(final String name, final Object value) {
-        m_workingMemory.setGlobal(name, value);
+        for (final Partition partition : m_partitions) {
+            partition.m_session.setGlobal(name, value);
+        }
     }
 
 	public void setAssertBehaviour(String assertBehaviour) {
@@ -99,6 +99,18 @@ public class RuleSet implements Serializable {
 
 	@XmlAttribute(name="assert-behaviour")
 	private String _assertBehaviour;
+
+	@XmlAttribute(name="partitions")
+	private Integer _partitions;
+
+	@XmlAttribute(name="partition-key")
+	private String _partitionKey;
+
+	@XmlAttribute(name="batch-size")
+	private Integer _batchSize;
+
+	@XmlAttribute(name="queue-size")
+	private Integer _queueSize;
     /**
      * Field _ruleFileList.
      */
@@ -150,6 +162,46 @@ public class RuleSet implements Serializable {
 	}
 
 
+	public int getPartitions() {
+		return _partitions == null? 1 : _partitions;
+	}
+
+
+	public void setPartitions(Integer partitions) {
+		this._partitions = partitions;
+	}
+
+
+	public String getPartitionKey() {
+		return _partitionKey == null? DroolsCorrelationEngine.PARTITION_BY_NODE : _partitionKey;
+	}
+
+
+	public void setPartitionKey(String partitionKey) {
+		this._partitionKey = partitionKey;
+	}
+
+
+	public int getBatchSize() {
+		return _batchSize == null? DroolsCorrelationEngine.DEFAULT_BATCH_SIZE : _batchSize;
+	}
+
+
+	public void setBatchSize(Integer batchSize) {
+		this._batchSize = batchSize;
+	}
+
+
+	public int getQueueSize() {
+		return _queueSize == null? DroolsCorrelationEngine.DEFAULT_QUEUE_SIZE : _queueSize;
+	}
+
+
+	public void setQueueSize(Integer queueSize) {
+		this._queueSize = queueSize;
+	}
+
+
 	/**
      * 
      * 
@@ -925,6 +977,10 @@ public class RuleSet implements Serializable {
 		final DroolsCorrelationEngine engine = new DroolsCorrelationEngine();
 		engine.setName(getName());
 		engine.setAssertBehaviour(getAssertBehaviour());
+		engine.setPartitionCount(getPartitions());
+		engine.setPartitionKey(getPartitionKey());
+		engine.setBatchSize(getBatchSize());
+		engine.setQueueSize(getQueueSize());
 		engine.setEventIpcManager(eventIpcManager);
 		engine.setScheduler(new Timer(getName()+"-Timer"));
 		engine.setInterestingEvents(getInterestingEvents());
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.correlation.drools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Timer;
+
+import org.junit.After;
+import org.junit.Test;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Event;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+public class DroolsCorrelationEnginePartitionTest {
+
+    private static final String RULES =
+            "package org.opennms.netmgt.correlation.drools;\n" +
+            "\n" +
+            "import org.opennms.netmgt.xml.event.Event;\n" +
+            "\n" +
+            "global org.opennms.netmgt.correlation.drools.DroolsCorrelationEngine engine;\n" +
+            "\n" +
+            "rule \"event received\"\n" +
+            "\twhen\n" +
+            "\t\t$e : Event( uei == \"uei.opennms.org/test\" )\n" +
+            "\tthen\n" +
+            "\t\tretract( $e );\n" +
+            "end\n" +
+            "\n" +
+            "rule \"timer expired\"\n" +
+            "\twhen\n" +
+            "\t\t$t : TimerExpired()\n" +
+            "\tthen\n" +
+            "\t\tretract( $t );\n" +
+            "end\n";
+
+    private static final int EVENTS = 20000;
+    private static final int NODES = 50;
+
+    private DroolsCorrelationEngine m_engine;
+
+    @After
+    public void tearDown() {
+        if (m_engine != null) {
+            m_engine.shutdown();
+        }
+    }
+
+    private DroolsCorrelationEngine createEngine(final int partitions) throws Exception {
+        final DroolsCorrelationEngine engine = new DroolsCorrelationEngine();
+        engine.setName("partitionTest");
+        engine.setScheduler(new Timer("partitionTest-Timer", true));
+        engine.setInterestingEvents(Collections.singletonList("uei.opennms.org/test"));
+        engine.setRulesResources(Collections.<Resource>singletonList(new ByteArrayResource(RULES.getBytes("UTF-8"))));
+        engine.setPartitionCount(partitions);
+        engine.setBatchSize(100);
+        engine.initialize();
+        return engine;
+    }
+
+    private static Event createEvent(final int nodeId) {
+        return new EventBuilder("uei.opennms.org/test", "test").setNodeid(nodeId).getEvent();
+    }
+
+    private static long sum(final DroolsCorrelationEngine engine, final String counter) {
+        long total = 0;
+        for (int i = 0; i < engine.getPartitionCount(); i++) {
+            if ("events".equals(counter)) {
+                total += engine.getEventsCorrelated(i);
+            } else if ("batches".equals(counter)) {
+                total += engine.getBatchesFired(i);
+            } else {
+                total += engine.getRulesFired(i);
+            }
+        }
+        return total;
+    }
+
+    private static void waitForEvents(final DroolsCorrelationEngine engine, final long events) throws InterruptedException {
+        final long end = System.currentTimeMillis() + 30000;
+        while (sum(engine, "events") < events && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(events, sum(engine, "events"));
+    }
+
+    @Test
+    public void testUnpartitioned() throws Exception {
+        m_engine = createEngine(1);
+        for (int i = 0; i < 100; i++) {
+            m_engine.correlate(createEvent(i % NODES));
+        }
+        assertEquals(1, m_engine.getPartitionCount());
+        assertEquals(0, m_engine.getQueueDepth(0));
+        assertEquals(100, m_engine.getEventsCorrelated(0));
+        assertEquals(100, m_engine.getBatchesFired(0));
+        assertEquals(100, m_engine.getRulesFired(0));
+        assertEquals(0, m_engine.getMemorySize());
+    }
+
+    @Test
+    public void testPartitioned() throws Exception {
+        m_engine = createEngine(4);
+        for (int i = 0; i < EVENTS; i++) {
+            m_engine.correlate(createEvent(i % NODES));
+        }
+        waitForEvents(m_engine, EVENTS);
+
+        assertEquals(4, m_engine.getPartitionCount());
+        assertEquals(EVENTS, sum(m_engine, "rules"));
+        assertTrue(sum(m_engine, "batches") <= EVENTS);
+        for (int i = 0; i < m_engine.getPartitionCount(); i++) {
+            assertTrue("partition " + i + " received no events", m_engine.getEventsCorrelated(i) > 0);
+            assertEquals(0, m_engine.getQueueDepth(i));
+        }
+        assertEquals(0, m_engine.getMemorySize());
+    }
+
+    @Test
+    public void testTimerExpires() throws Exception {
+        m_engine = createEngine(4);
+        m_engine.setTimer(1);
+        final long end = System.currentTimeMillis() + 30000;
+        while (sum(m_engine, "rules") < 1 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, sum(m_engine, "rules"));
+        assertEquals(0, m_engine.getMemorySize());
+    }
+
+    @Test
+    public void testSpeed() throws Exception {
+        final DroolsCorrelationEngine unpartitioned = createEngine(1);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < EVENTS; i++) {
+            unpartitioned.correlate(createEvent(i % NODES));
+        }
+        final long unpartitionedTime = System.currentTimeMillis() - start;
+
+        m_engine = createEngine(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        start = System.currentTimeMillis();
+        for (int i = 0; i < EVENTS; i++) {
+            m_engine.correlate(createEvent(i % NODES));
+        }
+        waitForEvents(m_engine, EVENTS);
+        final long partitionedTime = System.currentTimeMillis() - start;
+
+        System.err.println(String.format("%d events: one rule firing per event %d ms, %d partitions with batches of 100 %d ms (%d batches)",
+                EVENTS, unpartitionedTime, m_engine.getPartitionCount(), partitionedTime, sum(m_engine, "batches")));
+    }
+}
@@ -101,8 +101,20 @@ public abstract class AbstractCorrelationEngine implements CorrelationEngine {
     public RuleTimerTask getTimerTask() {
     	final RuleTimerTask timerTask = new RuleTimerTask();
         m_pendingTasks.put(timerTask.getId(), timerTask);
+        timerCreated(timerTask.getId());
         return timerTask;
     }
+
+    /**
+     * <p>timerCreated</p>
+     *
+     * <p>Called before a new timer is scheduled so that subclasses can remember
+     * where it came from.</p>
+     *
+     * @param timerId a {@link java.lang.Integer} object.
+     */
+    protected void timerCreated(final Integer timerId) {
+    }
     
     /**
      * <p>cancelTimer</p>
@@ -99,6 +99,25 @@ public class Correlator extends AbstractServiceDaemon implements CorrelationEngi
 		
 	}
 
+	/**
+	 * Stops feeding events to the engines and shuts down the partitioned ones.
+	 */
+	@Override
+	protected void onStop() {
+		for (final EngineAdapter adapter : m_adapters) {
+			m_eventIpcManager.removeEventListener(adapter);
+		}
+		m_adapters.clear();
+		m_initialized = false;
+
+		for (final CorrelationEngine engine : m_engines) {
+			if (engine instanceof PartitionedCorrelationEngine) {
+				LOG.info("Shutting down correlation engine: {}", engine);
+				((PartitionedCorrelationEngine) engine).shutdown();
+			}
+		}
+	}
+
 	/**
 	 * <p>setCorrelationEngines</p>
 	 *
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.correlation;
+
+/**
+ * <p>A correlation engine that spreads its work over one or more partitions
+ * and can report how busy each of them is.</p>
+ */
+public interface PartitionedCorrelationEngine extends CorrelationEngine {
+
+    /**
+     * <p>getPartitionCount</p>
+     *
+     * @return the number of partitions of this engine.
+     */
+    int getPartitionCount();
+
+    /**
+     * <p>getQueueDepth</p>
+     *
+     * @param partition the index of the partition
+     * @return the number of events and timers waiting to be correlated by the partition.
+     */
+    int getQueueDepth(int partition);
+
+    /**
+     * <p>getEventsCorrelated</p>
+     *
+     * @param partition the index of the partition
+     * @return the number of events correlated by the partition.
+     */
+    long getEventsCorrelated(int partition);
+
+    /**
+     * <p>getBatchesFired</p>
+     *
+     * @param partition the index of the partition
+     * @return the number of times the rules of the partition have been fired.
+     */
+    long getBatchesFired(int partition);
+
+    /**
+     * <p>getRulesFired</p>
+     *
+     * @param partition the index of the partition
+     * @return the number of rule activations fired by the partition.
+     */
+    long getRulesFired(int partition);
+
+    /**
+     * <p>Stops the partitions of the engine.  Called when the correlator
+     * stops.</p>
+     */
+    void shutdown();
+
+}
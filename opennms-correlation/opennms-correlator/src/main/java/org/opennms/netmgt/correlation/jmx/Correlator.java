@@ -28,7 +28,12 @@
 
 package org.opennms.netmgt.correlation.jmx;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.opennms.core.fiber.Fiber;
+import org.opennms.netmgt.correlation.CorrelationEngine;
+import org.opennms.netmgt.correlation.PartitionedCorrelationEngine;
 import org.springframework.beans.factory.access.BeanFactoryLocator;
 import org.springframework.beans.factory.access.BeanFactoryReference;
 import org.springframework.context.access.DefaultLocatorFactory;
@@ -98,4 +103,61 @@ public class Correlator implements CorrelatorMBean {
     public String status() {
         return Fiber.STATUS_NAMES[getStatus()];
     }
+
+    private List<PartitionedCorrelationEngine> getPartitionedEngines() {
+        final List<PartitionedCorrelationEngine> engines = new ArrayList<PartitionedCorrelationEngine>();
+        if (getBean() != null && getBean().getEngines() != null) {
+            for (final CorrelationEngine engine : getBean().getEngines()) {
+                if (engine instanceof PartitionedCorrelationEngine) {
+                    engines.add((PartitionedCorrelationEngine) engine);
+                }
+            }
+        }
+        return engines;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        int depth = 0;
+        for (final PartitionedCorrelationEngine engine : getPartitionedEngines()) {
+            for (int i = 0; i < engine.getPartitionCount(); i++) {
+                depth += engine.getQueueDepth(i);
+            }
+        }
+        return depth;
+    }
+
+    @Override
+    public long getEventsCorrelated() {
+        long events = 0;
+        for (final PartitionedCorrelationEngine engine : getPartitionedEngines()) {
+            for (int i = 0; i < engine.getPartitionCount(); i++) {
+                events += engine.getEventsCorrelated(i);
+            }
+        }
+        return events;
+    }
+
+    @Override
+    public long getRulesFired() {
+        long rules = 0;
+        for (final PartitionedCorrelationEngine engine : getPartitionedEngines()) {
+            for (int i = 0; i < engine.getPartitionCount(); i++) {
+                rules += engine.getRulesFired(i);
+            }
+        }
+        return rules;
+    }
+
+    @Override
+    public String[] getPartitionStatistics() {
+        final List<String> statistics = new ArrayList<String>();
+        for (final PartitionedCorrelationEngine engine : getPartitionedEngines()) {
+            for (int i = 0; i < engine.getPartitionCount(); i++) {
+                statistics.add(String.format("%s[%d]: queueDepth=%d, eventsCorrelated=%d, batchesFired=%d, rulesFired=%d",
+                        engine.getName(), i, engine.getQueueDepth(i), engine.getEventsCorrelated(i), engine.getBatchesFired(i), engine.getRulesFired(i)));
+            }
+        }
+        return statistics.toArray(new String[statistics.size()]);
+    }
 }
@@ -37,4 +37,24 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface CorrelatorMBean extends BaseOnmsMBean {
+
+    /**
+     * @return The number of events waiting to be correlated, summed over all engines.
+     */
+    public int getQueueDepth();
+
+    /**
+     * @return The number of events correlated, summed over all engines.
+     */
+    public long getEventsCorrelated();
+
+    /**
+     * @return The number of rule activations fired, summed over all engines.
+     */
+    public long getRulesFired();
+
+    /**
+     * @return One line of statistics for each partition of each engine.
+     */
+    public String[] getPartitionStatistics();
 }
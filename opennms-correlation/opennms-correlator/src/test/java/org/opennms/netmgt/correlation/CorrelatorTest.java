@@ -84,12 +84,40 @@ public class CorrelatorTest extends TestCase {
 		assertEquals("Expected the correlator to be init'd", Fiber.START_PENDING, m_correlator.getStatus());
 		m_correlator.start();
 		assertEquals("Expected the correlator to be running", Fiber.RUNNING, m_correlator.getStatus());
+
+		// stopping unregisters the engine
+		reset(m_eventIpcManager);
+		m_eventIpcManager.removeEventListener(isA(EventListener.class));
+		replay(m_eventIpcManager);
+
 		m_correlator.stop();
 		assertEquals("Expected the correlator to be stopped", Fiber.STOPPED, m_correlator.getStatus());
 		
 		verifyMocks();
 	}
 	
+	public void testStopShutsDownPartitionedEngines() throws Exception {
+		final PartitionedCorrelationEngine engine = createMock(PartitionedCorrelationEngine.class);
+		expect(engine.getName()).andStubReturn("myPartitionedEngine");
+		m_correlator.setCorrelationEngines(Collections.<CorrelationEngine>singletonList(engine));
+
+		List<String> interestingEvents = Collections.singletonList("uei.opennms.org:/testEvent");
+
+		expect(engine.getInterestingEvents()).andReturn(interestingEvents);
+		m_eventIpcManager.addEventListener(isA(EventListener.class), same(interestingEvents));
+		m_eventIpcManager.removeEventListener(isA(EventListener.class));
+		engine.shutdown();
+
+		replayMocks();
+
+		m_correlator.afterPropertiesSet();
+		m_correlator.start();
+		m_correlator.stop();
+		assertEquals("Expected the correlator to be stopped", Fiber.STOPPED, m_correlator.getStatus());
+
+		verifyMocks();
+	}
+
 	public void testRegisterForEvents() throws Exception {
 		
 		List<String> interestingEvents = Collections.singletonList("uei.opennms.org:/testEvent");
@@ -43,9 +43,21 @@ public interface BridgeMacLinkDao extends OnmsDao<BridgeMacLink, Integer> {
     
     public List<BridgeMacLink> findByNodeId(Integer id);
 
-    public BridgeMacLink getByNodeIdBridgePort(Integer id, Integer port);
+    /**
+     * A bridge port can forward many MAC addresses, so a link is only
+     * unique by node, bridge port and MAC address.
+     */
+    public BridgeMacLink getByNodeIdBridgePortMac(Integer id, Integer port, String mac);
 
     public List<BridgeMacLink> findByMacAddress(String mac);
 
     void deleteByNodeIdOlderThen(Integer nodeiId, Date now);
+
+    /**
+     * Replaces the forwarding table of a node with the given links as JDBC
+     * batches: links known by bridge port and MAC address are updated, new
+     * ones inserted and the ones no longer found deleted. Links without a
+     * bridge port cannot be stored and are skipped.
+     */
+    void replaceByNodeId(Integer nodeId, List<BridgeMacLink> links);
 }
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.dao.api;
 
+import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.model.OnmsEvent;
 
 import java.util.Date;
@@ -37,6 +38,15 @@ public interface EventDao extends LegacyOnmsDao<OnmsEvent, Integer> {
 
     int deletePreviousEventsForAlarm(final Integer id, final OnmsEvent e);
 
+    /**
+     * Associates the given events with an alarm using a single bulk update.
+     *
+     * @param alarm    the alarm the events were reduced to
+     * @param eventIds the ids of the events
+     * @return the number of events that were updated
+     */
+    int updateAlarmForEvents(final OnmsAlarm alarm, final List<Integer> eventIds);
+
     /**
      * Returns a list of events which have been created
      * AFTER date and the uei of each event matches one uei entry of the ueiList.
@@ -48,4 +48,11 @@ public interface IpNetToMediaDao extends OnmsDao<IpNetToMedia, Integer> {
     public IpNetToMedia getByNetAndPhysAddress(InetAddress netAddress, String physAddress);
 
     void deleteBySourceNodeIdOlderThen(Integer nodeiId, Date now);
+
+    /**
+     * Replaces the entries learned from a node with the given ones as JDBC
+     * batches: known entries are updated, new ones inserted and the ones no
+     * longer found deleted.
+     */
+    void replaceBySourceNodeId(Integer nodeId, List<IpNetToMedia> entries);
 }
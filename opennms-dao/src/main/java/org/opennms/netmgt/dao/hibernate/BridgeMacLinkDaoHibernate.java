@@ -28,16 +28,31 @@
 
 package org.opennms.netmgt.dao.hibernate;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
 import org.opennms.netmgt.dao.api.BridgeMacLinkDao;
 import org.opennms.netmgt.model.BridgeMacLink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.orm.hibernate3.HibernateCallback;
 
 
 
 public class BridgeMacLinkDaoHibernate extends AbstractDaoHibernate<BridgeMacLink, Integer> implements BridgeMacLinkDao {
 
+    private static final Logger LOG = LoggerFactory.getLogger(BridgeMacLinkDaoHibernate.class);
+
     /**
      * <p>
      * Constructor for BridgeMacLinkDaoHibernate.
@@ -55,8 +70,11 @@ public class BridgeMacLinkDaoHibernate extends AbstractDaoHibernate<BridgeMacLin
 
 
 	@Override
-	public BridgeMacLink getByNodeIdBridgePort(Integer id, Integer port) {
-		return findUnique("from BridgeMacLink rec where rec.node.id = ?  and rec.bridgePort = ?", id,port);
+	public BridgeMacLink getByNodeIdBridgePortMac(Integer id, Integer port, String mac) {
+		if (port == null) {
+			return findUnique("from BridgeMacLink rec where rec.node.id = ?  and rec.bridgePort is null and rec.macAddress = ?", id,mac);
+		}
+		return findUnique("from BridgeMacLink rec where rec.node.id = ?  and rec.bridgePort = ? and rec.macAddress = ?", id,port,mac);
 	}
 
 
@@ -73,6 +91,84 @@ public class BridgeMacLinkDaoHibernate extends AbstractDaoHibernate<BridgeMacLin
 		}
 	}
 
+	@Override
+	public void replaceByNodeId(final Integer nodeId, final List<BridgeMacLink> links) {
+		getHibernateTemplate().execute(new HibernateCallback<Void>() {
+			@Override
+			public Void doInHibernate(final Session session) throws HibernateException, SQLException {
+				// write out anything pending so the JDBC work below sees it
+				session.flush();
+				session.doWork(new Work() {
+					@Override
+					public void execute(final Connection connection) throws SQLException {
+						replaceByNodeId(connection, nodeId, links);
+					}
+				});
+				return null;
+			}
+		});
+	}
+
+	private static String getKey(final Integer bridgePort, final String macAddress) {
+		return bridgePort + "/" + macAddress;
+	}
+
+	private static void replaceByNodeId(final Connection connection, final Integer nodeId, final List<BridgeMacLink> links) throws SQLException {
+		final Map<String, Integer> dbIds = new HashMap<String, Integer>();
+		final PreparedStatement select = connection.prepareStatement("SELECT id, bridgePort, macAddress FROM bridgeMacLink WHERE nodeId = ?");
+		try {
+			select.setInt(1, nodeId);
+			final ResultSet rs = select.executeQuery();
+			while (rs.next()) {
+				// keyed like the links below, which have a null port when it is unknown
+				Integer bridgePort = rs.getInt(2);
+				if (rs.wasNull()) {
+					bridgePort = null;
+				}
+				dbIds.put(getKey(bridgePort, rs.getString(3)), rs.getInt(1));
+			}
+			rs.close();
+		} finally {
+			select.close();
+		}
+
+		// the same address can be learned on several vlans; the last one wins
+		final Map<String, BridgeMacLink> found = new LinkedHashMap<String, BridgeMacLink>();
+		for (final BridgeMacLink link : links) {
+			if (link.getBridgePort() == null) {
+				// the port is part of the key and may not be null in the table
+				LOG.warn("replaceByNodeId: skipping link without bridge port for node {}: {}", nodeId, link);
+				continue;
+			}
+			found.put(getKey(link.getBridgePort(), link.getMacAddress()), link);
+		}
+
+		final JdbcBatch update = new JdbcBatch(connection, "UPDATE bridgeMacLink SET bridgePortIfIndex = ?, bridgePortIfName = ?, vlan = ?, bridgeMacLinkLastPollTime = ? WHERE id = ?");
+		final JdbcBatch insert = new JdbcBatch(connection, "INSERT INTO bridgeMacLink (id, nodeId, bridgePort, bridgePortIfIndex, bridgePortIfName, vlan, macAddress, bridgeMacLinkCreateTime, bridgeMacLinkLastPollTime) VALUES (nextval('opennmsNxtId'), ?, ?, ?, ?, ?, ?, ?, ?)");
+		final JdbcBatch delete = new JdbcBatch(connection, "DELETE FROM bridgeMacLink WHERE id = ?");
+		try {
+			for (final Map.Entry<String, BridgeMacLink> entry : found.entrySet()) {
+				final BridgeMacLink link = entry.getValue();
+				final Integer id = dbIds.remove(entry.getKey());
+				if (id != null) {
+					update.add(link.getBridgePortIfIndex(), link.getBridgePortIfName(), link.getVlan(), link.getBridgeMacLinkCreateTime(), id);
+				} else {
+					insert.add(nodeId, link.getBridgePort(), link.getBridgePortIfIndex(), link.getBridgePortIfName(), link.getVlan(), link.getMacAddress(), link.getBridgeMacLinkCreateTime(), link.getBridgeMacLinkCreateTime());
+				}
+			}
+			for (final Integer id : dbIds.values()) {
+				delete.add(id);
+			}
+			update.finish();
+			insert.finish();
+			delete.finish();
+		} finally {
+			update.close();
+			insert.close();
+			delete.close();
+		}
+	}
+
 
 
 }
@@ -31,6 +31,7 @@ package org.opennms.netmgt.dao.hibernate;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.opennms.netmgt.dao.api.EventDao;
+import org.opennms.netmgt.model.OnmsAlarm;
 import org.opennms.netmgt.model.OnmsEvent;
 import org.springframework.dao.DataAccessException;
 import org.springframework.orm.hibernate3.HibernateCallback;
@@ -53,6 +54,24 @@ public class EventDaoHibernate extends AbstractDaoHibernate<OnmsEvent, Integer>
         return bulkDelete(hql, values);
     }
 
+    @Override
+    public int updateAlarmForEvents(final OnmsAlarm alarm, final List<Integer> eventIds) {
+        if (eventIds.isEmpty()) {
+            return 0;
+        }
+        final String hql = "update OnmsEvent set alarm = :alarm where id in (:ids)";
+
+        return getHibernateTemplate().execute(new HibernateCallback<Integer>() {
+            @Override
+            public Integer doInHibernate(Session session) throws HibernateException, SQLException {
+                return session.createQuery(hql)
+                        .setEntity("alarm", alarm)
+                        .setParameterList("ids", eventIds)
+                        .executeUpdate();
+            }
+        });
+    }
+
     @Override
     public List<OnmsEvent> getEventsAfterDate(final List<String> ueiList, final Date date) {
         final String hql = "From OnmsEvent e where e.eventUei in (:eventUei) and e.eventTime > :eventTime order by e.eventTime desc";
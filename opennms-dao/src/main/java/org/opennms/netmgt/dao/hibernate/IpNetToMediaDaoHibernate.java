@@ -28,12 +28,26 @@
 
 package org.opennms.netmgt.dao.hibernate;
 
+import static org.opennms.core.utils.InetAddressUtils.str;
+
 import java.net.InetAddress;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.jdbc.Work;
 import org.opennms.netmgt.dao.api.IpNetToMediaDao;
 import org.opennms.netmgt.model.IpNetToMedia;
+import org.springframework.orm.hibernate3.HibernateCallback;
 
 
 public class IpNetToMediaDaoHibernate extends AbstractDaoHibernate<IpNetToMedia, Integer> implements IpNetToMediaDao {
@@ -61,6 +75,88 @@ public class IpNetToMediaDaoHibernate extends AbstractDaoHibernate<IpNetToMedia,
 		}
 	}
 
+	@Override
+	public void replaceBySourceNodeId(final Integer nodeId, final List<IpNetToMedia> entries) {
+		// entries can move between nodes, so keep other discoveries out while we insert
+		lock();
+		getHibernateTemplate().execute(new HibernateCallback<Void>() {
+			@Override
+			public Void doInHibernate(final Session session) throws HibernateException, SQLException {
+				// write out anything pending so the JDBC work below sees it
+				session.flush();
+				session.doWork(new Work() {
+					@Override
+					public void execute(final Connection connection) throws SQLException {
+						replaceBySourceNodeId(connection, nodeId, entries);
+					}
+				});
+				return null;
+			}
+		});
+	}
+
+	private static String getKey(final String netAddress, final String physAddress) {
+		return netAddress + "/" + physAddress;
+	}
+
+	private static void replaceBySourceNodeId(final Connection connection, final Integer nodeId, final List<IpNetToMedia> entries) throws SQLException {
+		final Map<String, Integer> dbIds = new HashMap<String, Integer>();
+		final PreparedStatement select = connection.prepareStatement("SELECT id, netAddress, physAddress FROM ipNetToMedia WHERE sourceNodeId = ?");
+		try {
+			select.setInt(1, nodeId);
+			final ResultSet rs = select.executeQuery();
+			while (rs.next()) {
+				dbIds.put(getKey(rs.getString(2), rs.getString(3)), rs.getInt(1));
+			}
+			rs.close();
+		} finally {
+			select.close();
+		}
+
+		final Map<String, IpNetToMedia> found = new LinkedHashMap<String, IpNetToMedia>();
+		for (final IpNetToMedia entry : entries) {
+			found.put(getKey(str(entry.getNetAddress()), entry.getPhysAddress()), entry);
+		}
+
+		final List<IpNetToMedia> moved = new ArrayList<IpNetToMedia>();
+		final JdbcBatch update = new JdbcBatch(connection, "UPDATE ipNetToMedia SET sourceIfIndex = ?, lastPollTime = ? WHERE id = ?");
+		// an entry learned from another node before moves over to this one
+		final JdbcBatch move = new JdbcBatch(connection, "UPDATE ipNetToMedia SET sourceNodeId = ?, sourceIfIndex = ?, lastPollTime = ? WHERE netAddress = ? AND physAddress = ?");
+		final JdbcBatch delete = new JdbcBatch(connection, "DELETE FROM ipNetToMedia WHERE id = ?");
+		final JdbcBatch insert = new JdbcBatch(connection, "INSERT INTO ipNetToMedia (id, netAddress, physAddress, sourceNodeId, sourceIfIndex, createTime, lastPollTime) VALUES (nextval('opennmsNxtId'), ?, ?, ?, ?, ?, ?)");
+		try {
+			for (final Map.Entry<String, IpNetToMedia> e : found.entrySet()) {
+				final IpNetToMedia entry = e.getValue();
+				final Integer id = dbIds.remove(e.getKey());
+				if (id != null) {
+					update.add(entry.getSourceIfIndex(), entry.getCreateTime(), id);
+				} else {
+					move.add(nodeId, entry.getSourceIfIndex(), entry.getCreateTime(), str(entry.getNetAddress()), entry.getPhysAddress());
+					moved.add(entry);
+				}
+			}
+			for (final Integer id : dbIds.values()) {
+				delete.add(id);
+			}
+			update.finish();
+			final int[] counts = move.finish();
+			delete.finish();
+
+			for (int i = 0; i < counts.length; i++) {
+				if (counts[i] == 0) {
+					final IpNetToMedia entry = moved.get(i);
+					insert.add(str(entry.getNetAddress()), entry.getPhysAddress(), nodeId, entry.getSourceIfIndex(), entry.getCreateTime(), entry.getCreateTime());
+				}
+			}
+			insert.finish();
+		} finally {
+			update.close();
+			move.close();
+			delete.close();
+			insert.close();
+		}
+	}
+
 
 
 }
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.hibernate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+
+/**
+ * Collects the rows of a prepared statement and sends them to the database
+ * as JDBC batches of a fixed size.
+ */
+final class JdbcBatch {
+
+    static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final PreparedStatement m_statement;
+    private final int m_batchSize;
+    private int m_pending = 0;
+    private int[] m_updateCounts = new int[0];
+
+    JdbcBatch(final Connection connection, final String sql) throws SQLException {
+        this(connection, sql, DEFAULT_BATCH_SIZE);
+    }
+
+    JdbcBatch(final Connection connection, final String sql, final int batchSize) throws SQLException {
+        m_statement = connection.prepareStatement(sql);
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * Adds a row to the batch, executing the batch once it is full.
+     */
+    void add(final Object... values) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            final Object value = values[i];
+            if (value == null) {
+                m_statement.setNull(i + 1, Types.NULL);
+            } else if (value instanceof Date && !(value instanceof Timestamp)) {
+                m_statement.setTimestamp(i + 1, new Timestamp(((Date) value).getTime()));
+            } else {
+                m_statement.setObject(i + 1, value);
+            }
+        }
+        m_statement.addBatch();
+        if (++m_pending >= m_batchSize) {
+            executePending();
+        }
+    }
+
+    /**
+     * Executes the rows still pending and closes the statement.
+     *
+     * @return the update count of every row added, in order
+     */
+    int[] finish() throws SQLException {
+        try {
+            executePending();
+            return m_updateCounts;
+        } finally {
+            m_statement.close();
+        }
+    }
+
+    /**
+     * Closes the statement without executing the rows still pending.
+     */
+    void close() throws SQLException {
+        m_statement.close();
+    }
+
+    /**
+     * @return the number of rows added so far
+     */
+    int size() {
+        return m_updateCounts.length + m_pending;
+    }
+
+    private void executePending() throws SQLException {
+        if (m_pending == 0) {
+            return;
+        }
+        final int[] counts = m_statement.executeBatch();
+        final int[] updateCounts = new int[m_updateCounts.length + counts.length];
+        System.arraycopy(m_updateCounts, 0, updateCounts, 0, m_updateCounts.length);
+        System.arraycopy(counts, 0, updateCounts, m_updateCounts.length, counts.length);
+        m_updateCounts = updateCounts;
+        m_pending = 0;
+    }
+}
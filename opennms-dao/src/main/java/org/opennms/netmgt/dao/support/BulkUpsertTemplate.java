@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.support;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.opennms.netmgt.dao.api.OnmsDao;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * The bulk counterpart of {@link UpsertTemplate}: it replaces a whole set of
+ * objects, such as the rows of a table discovered on a node, in a single
+ * transaction.
+ *
+ * The existing objects are loaded with one query and matched to the new ones
+ * in memory by a key.  Matching objects are updated, new ones inserted and
+ * existing objects without a match are deleted.  The table is locked before
+ * the query so that concurrent inserts can't slip in between, and the session
+ * is flushed once at the end.
+ *
+ * final OnmsNode node = ...;
+ * new BulkUpsertTemplate<LldpLink, Integer, LldpLinkDao>(transactionManager, lldpLinkDao) {
+ *    @Override
+ *    protected List<LldpLink> query() {
+ *       return m_dao.findByNodeId(node.getId());
+ *    }
+ *    @Override
+ *    protected Integer key(LldpLink link) {
+ *       return link.getLldpLocalPortNum();
+ *    }
+ *    ...
+ * }.execute(links);
+ */
+public abstract class BulkUpsertTemplate<T, K, D extends OnmsDao<T, ?>> {
+    protected final PlatformTransactionManager m_transactionManager;
+    protected final D m_dao;
+
+    public BulkUpsertTemplate(PlatformTransactionManager transactionManager, D dao) {
+        m_transactionManager = transactionManager;
+        m_dao = dao;
+    }
+
+    /**
+     * After creating the BulkUpsertTemplate call this method to replace the
+     * existing objects with the given ones.
+     */
+    public void execute(final Collection<T> objs) {
+        TransactionTemplate template = new TransactionTemplate(m_transactionManager);
+        template.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRED);
+        template.execute(new TransactionCallbackWithoutResult() {
+
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                doUpsert(objs);
+            }
+        });
+    }
+
+    private void doUpsert(final Collection<T> objs) {
+        m_dao.lock();
+
+        final Map<K, T> dbObjs = new HashMap<K, T>();
+        for (final T dbObj : query()) {
+            dbObjs.put(key(dbObj), dbObj);
+        }
+
+        // objects stored by this call, so repeated keys update instead of inserting twice
+        final Map<K, T> stored = new HashMap<K, T>();
+        for (final T obj : objs) {
+            final K key = key(obj);
+            T dbObj = dbObjs.remove(key);
+            if (dbObj == null) {
+                dbObj = stored.get(key);
+            }
+            if (dbObj != null) {
+                stored.put(key, doUpdate(dbObj, obj));
+            } else {
+                final T inserted = doInsert(obj);
+                if (inserted != null) {
+                    stored.put(key, inserted);
+                }
+            }
+        }
+
+        for (final T dbObj : dbObjs.values()) {
+            m_dao.delete(dbObj);
+        }
+        m_dao.flush();
+    }
+
+    /**
+     * Override this method to load the existing objects that are to be
+     * replaced.
+     */
+    protected abstract Collection<T> query();
+
+    /**
+     * Override this method to return the key that matches a new object to
+     * an existing one.
+     */
+    protected abstract K key(T obj);
+
+    /**
+     * Override this method to update the existing object with the new one.
+     * The session is flushed by the template.
+     */
+    protected abstract T doUpdate(T dbObj, T obj);
+
+    /**
+     * Override this method to insert the new object. The session is flushed
+     * by the template.
+     */
+    protected abstract T doInsert(T obj);
+}
@@ -64,6 +64,7 @@ import org.opennms.netmgt.model.OnmsResource;
 import org.opennms.netmgt.model.OnmsResourceType;
 import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.rrd.RrdFileConstants;
+import org.opennms.netmgt.rrd.RrdFileIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -124,7 +125,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     /** {@inheritDoc} */
     @Override
     public File getRrdDirectory(boolean verify) {
-        if (verify && !getRrdDirectory().isDirectory()) {
+        if (verify && !RrdFileIndex.isDirectory(getRrdDirectory())) {
             throw new ObjectRetrievalFailureException("RRD directory does not exist: " + getRrdDirectory().getAbsolutePath(), getRrdDirectory());
         }
         
@@ -231,6 +232,11 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
         }
 
         initResourceTypes();
+
+        if (RrdFileIndex.isEnabled()) {
+            // load (or build) the index now rather than on the first page view
+            RrdFileIndex.getInstance(m_rrdDirectory);
+        }
     }
     
 
@@ -546,7 +552,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
 
         // Get all of the non-numeric directory names in the RRD directory; these
         // are the names of the domains that have performance data
-        File[] domainDirs = snmp.listFiles(RrdFileConstants.DOMAIN_DIRECTORY_FILTER);
+        File[] domainDirs = RrdFileIndex.listFiles(snmp, RrdFileConstants.DOMAIN_DIRECTORY_FILTER);
 
         if (domainDirs != null && domainDirs.length > 0) {
             for (File domainDir : domainDirs) {
@@ -590,7 +596,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     protected OnmsResource getForeignSourceNodeEntityResource(String resource) {
         
         File idDir = new File(getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY + File.separator + ResourceTypeUtils.getRelativeNodeSourceDirectory(resource).toString());
-        if (idDir.isDirectory() && RrdFileConstants.NODESOURCE_DIRECTORY_FILTER.accept(idDir)) {
+        if (RrdFileIndex.isDirectory(idDir) && RrdFileConstants.NODESOURCE_DIRECTORY_FILTER.accept(idDir)) {
             return m_nodeSourceResourceType.createChildResource(resource);
         } else {
            LOG.debug("resource {} not found by foreign source/foreignId. Trying as a node resource instead...", resource);
@@ -616,7 +622,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
         
         File directory = new File(getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY);
         File domainDir = new File(directory, domain);
-        if (!domainDir.isDirectory()) {
+        if (!RrdFileIndex.isDirectory(domainDir)) {
             throw new ObjectRetrievalFailureException(OnmsResource.class, domain, "Domain not found due to domain RRD directory not existing or not a directory: " + domainDir.getAbsolutePath(), null);
         }
         
@@ -631,7 +637,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
         Set<Integer> nodes = new TreeSet<Integer>();
         
         File directory = new File(getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY);
-        File[] nodeDirs = directory.listFiles(RrdFileConstants.NODE_DIRECTORY_FILTER);
+        File[] nodeDirs = RrdFileIndex.listFiles(directory, RrdFileConstants.NODE_DIRECTORY_FILTER);
 
         if (nodeDirs == null || nodeDirs.length == 0) {
             return nodes;
@@ -658,10 +664,10 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
        Set<String> nodeSourceDirectories = new HashSet<String>();
        File snmpDir = new File(getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY);
        File forSrcDir = new File(snmpDir, ResourceTypeUtils.FOREIGN_SOURCE_DIRECTORY);
-       File[] sourceDirs = forSrcDir.listFiles(); // TODO There is no need to filter by RrdFileConstants.SOURCE_DIRECTORY_FILTER
+       File[] sourceDirs = RrdFileIndex.listFiles(forSrcDir); // TODO There is no need to filter by RrdFileConstants.SOURCE_DIRECTORY_FILTER
        if (sourceDirs != null && sourceDirs.length > 0) {
            for (File sourceDir : sourceDirs) {
-               File [] ids = sourceDir.listFiles(RrdFileConstants.NODESOURCE_DIRECTORY_FILTER);
+               File [] ids = RrdFileIndex.listFiles(sourceDir, RrdFileConstants.NODESOURCE_DIRECTORY_FILTER);
                for (File id : ids) {
                    nodeSourceDirectories.add(sourceDir.getName() + ":" + id.getName());
                }
@@ -675,7 +681,7 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     private static Set<String> findChildrenMatchingFilter(File directory, FileFilter filter) {
         Set<String> children = new HashSet<String>();
         
-        File[] nodeDirs = directory.listFiles(filter);
+        File[] nodeDirs = RrdFileIndex.listFiles(directory, filter);
 
         if (nodeDirs == null || nodeDirs.length == 0) {
             return children;
@@ -699,13 +705,13 @@ public class DefaultResourceDao implements ResourceDao, InitializingBean {
     private static Set<String> findChildrenChildrenMatchingFilter(File directory, FileFilter filter) {
         Set<String> children = new HashSet<String>();
         
-        File[] locationMonitorDirs = directory.listFiles();
+        File[] locationMonitorDirs = RrdFileIndex.listFiles(directory);
         if (locationMonitorDirs == null) {
             return children;
         }
         
         for (File locationMonitorDir : locationMonitorDirs) {
-            File[] intfDirs = locationMonitorDir.listFiles(filter);
+            File[] intfDirs = RrdFileIndex.listFiles(locationMonitorDir, filter);
 
             if (intfDirs == null || intfDirs.length == 0) {
                 continue;
@@ -36,6 +36,7 @@ import org.opennms.netmgt.model.OnmsAttribute;
 import org.opennms.netmgt.model.RrdGraphAttribute;
 import org.opennms.netmgt.rrd.RrdFileConstants;
 import org.opennms.netmgt.rrd.RrdGraphDetails;
+import org.opennms.netmgt.rrd.RrdLastValueCache;
 import org.opennms.netmgt.rrd.RrdStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -265,6 +266,10 @@ public class DefaultRrdDao implements RrdDao, InitializingBean {
 
         File rrdFile = new File(m_rrdBaseDirectory, rrdAttribute.getRrdRelativePath());
         try {
+            final Double cached = RrdLastValueCache.getLastValue(rrdFile.getAbsolutePath(), attribute.getName(), interval);
+            if (cached != null) {
+                return cached;
+            }
             return m_rrdStrategy.fetchLastValue(rrdFile.getAbsolutePath(), attribute.getName(), interval);
         } catch (Throwable e) {
             throw new DataAccessResourceFailureException("Failure to fetch last value from file '" + rrdFile + "' with interval " + interval, e);
@@ -283,6 +288,10 @@ public class DefaultRrdDao implements RrdDao, InitializingBean {
 
         File rrdFile = new File(m_rrdBaseDirectory, rrdAttribute.getRrdRelativePath());
         try {
+            final Double cached = RrdLastValueCache.getLastValueInRange(rrdFile.getAbsolutePath(), attribute.getName(), interval, range);
+            if (cached != null) {
+                return cached;
+            }
             return m_rrdStrategy.fetchLastValueInRange(rrdFile.getAbsolutePath(), attribute.getName(), interval, range);
         } catch (Throwable e) {
             throw new DataAccessResourceFailureException("Failure to fetch last value from file '" + rrdFile + "' with interval " + interval + " and range " + range, e);
@@ -47,6 +47,7 @@ import org.opennms.netmgt.model.OnmsResource;
 import org.opennms.netmgt.model.OnmsResourceType;
 import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.rrd.RrdFileConstants;
+import org.opennms.netmgt.rrd.RrdFileIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataAccessException;
@@ -115,7 +116,7 @@ public class DistributedStatusResourceType implements OnmsResourceType {
             
             File iface = getInterfaceDirectory(id, ipAddr);
             
-            if (iface.isDirectory()) {
+            if (RrdFileIndex.isDirectory(iface)) {
                 resources.add(createResource(definitionName, id, ipAddr));
             }
         }
@@ -146,7 +147,7 @@ public class DistributedStatusResourceType implements OnmsResourceType {
         }
         
         File[] intfDirs =
-            locationMonitorDirectory.listFiles(RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
+            RrdFileIndex.listFiles(locationMonitorDirectory, RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
 
         // XXX is this test even needed?
         if (intfDirs == null) {
@@ -281,7 +282,7 @@ public class DistributedStatusResourceType implements OnmsResourceType {
     private File getLocationMonitorDirectory(String locationMonitorId, boolean verify) throws ObjectRetrievalFailureException {
         File locationMonitorDirectory = new File(m_resourceDao.getRrdDirectory(verify), locationMonitorId);
 
-        if (verify && !locationMonitorDirectory.isDirectory()) {
+        if (verify && !RrdFileIndex.isDirectory(locationMonitorDirectory)) {
             throw new ObjectRetrievalFailureException(File.class, "No node directory exists for node " + locationMonitorId + ": " + locationMonitorDirectory);
         }
         
@@ -50,6 +50,7 @@ import org.opennms.netmgt.model.OnmsResourceType;
 import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.model.StringPropertyAttribute;
 import org.opennms.netmgt.rrd.RrdFileConstants;
+import org.opennms.netmgt.rrd.RrdFileIndex;
 import org.springframework.orm.ObjectRetrievalFailureException;
 
 /**
@@ -116,19 +117,19 @@ public class GenericIndexResourceType implements OnmsResourceType {
     /** {@inheritDoc} */
     @Override
     public boolean isResourceTypeOnNode(int nodeId) {
-      return getResourceTypeDirectory(nodeId, false).isDirectory();
+      return RrdFileIndex.isDirectory(getResourceTypeDirectory(nodeId, false));
     }
     
     private File getResourceTypeDirectory(int nodeId, boolean verify) {
         File snmp = new File(m_resourceDao.getRrdDirectory(verify), ResourceTypeUtils.SNMP_DIRECTORY);
         
         File node = new File(snmp, Integer.toString(nodeId));
-        if (verify && !node.isDirectory()) {
+        if (verify && !RrdFileIndex.isDirectory(node)) {
             throw new ObjectRetrievalFailureException(File.class, "No node directory exists for node " + nodeId + ": " + node);
         }
 
         File generic = new File(node, getName());
-        if (verify && !generic.isDirectory()) {
+        if (verify && !RrdFileIndex.isDirectory(generic)) {
             throw new ObjectRetrievalFailureException(File.class, "No node directory exists for generic index " + getName() + ": " + generic);
         }
 
@@ -139,12 +140,12 @@ public class GenericIndexResourceType implements OnmsResourceType {
         File snmp = new File(m_resourceDao.getRrdDirectory(verify), ResourceTypeUtils.SNMP_DIRECTORY);
 
         File dir = new File(snmp, ResourceTypeUtils.getRelativeNodeSourceDirectory(nodeSource).toString());
-        if (verify && !dir.isDirectory()) {
+        if (verify && !RrdFileIndex.isDirectory(dir)) {
             throw new ObjectRetrievalFailureException(File.class, "No directory exists for nodeSource " + nodeSource);
         }
 
         File generic = new File(dir, getName());
-        if (verify && !generic.isDirectory()) {
+        if (verify && !RrdFileIndex.isDirectory(generic)) {
             throw new ObjectRetrievalFailureException(File.class, "No node directory exists for generic index " + getName() + ": " + generic);
         }
 
@@ -175,7 +176,7 @@ public class GenericIndexResourceType implements OnmsResourceType {
         List<String> indexes = new LinkedList<String>();
         
         File[] indexDirs =
-            nodeDir.listFiles(RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
+            RrdFileIndex.listFiles(nodeDir, RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
 
         if (indexDirs == null) {
             return indexes;
@@ -200,7 +201,7 @@ public class GenericIndexResourceType implements OnmsResourceType {
         List<String> indexes = new LinkedList<String>();
 
         File[] indexDirs =
-            dir.listFiles(RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
+            RrdFileIndex.listFiles(dir, RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
 
         if (indexDirs == null) {
             return indexes;
@@ -482,7 +483,7 @@ public class GenericIndexResourceType implements OnmsResourceType {
 
         File node = new File(forSrc, ResourceTypeUtils.getRelativeNodeSourceDirectory(nodeSource).toString());
         File generic = new File(node, getName());
-        return generic.isDirectory();
+        return RrdFileIndex.isDirectory(generic);
     }
 
     /** {@inheritDoc} */
@@ -53,6 +53,7 @@ import org.opennms.netmgt.model.OnmsResourceType;
 import org.opennms.netmgt.model.OnmsSnmpInterface;
 import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.rrd.RrdFileConstants;
+import org.opennms.netmgt.rrd.RrdFileIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataAccessException;
@@ -108,18 +109,18 @@ public class InterfaceSnmpResourceType implements OnmsResourceType {
     
     private boolean isResourceTypeOnParentResource(String parentResource) {
         File parent = getParentResourceDirectory(parentResource, false);
-        if (!parent.isDirectory()) {
+        if (!RrdFileIndex.isDirectory(parent)) {
             return false;
         }
         
-        return parent.listFiles(RrdFileConstants.INTERFACE_DIRECTORY_FILTER).length > 0; 
+        return RrdFileIndex.listFiles(parent, RrdFileConstants.INTERFACE_DIRECTORY_FILTER).length > 0; 
     }
     
     private File getParentResourceDirectory(String parentResource, boolean verify) {
         File snmp = new File(m_resourceDao.getRrdDirectory(verify), ResourceTypeUtils.SNMP_DIRECTORY);
         
         File parent = new File(snmp, parentResource);
-        if (verify && !parent.isDirectory()) {
+        if (verify && !RrdFileIndex.isDirectory(parent)) {
             throw new ObjectRetrievalFailureException(File.class, "No parent resource directory exists for " + parentResource + ": " + parent);
         }
         
@@ -143,7 +144,7 @@ public class InterfaceSnmpResourceType implements OnmsResourceType {
             
         ArrayList<OnmsResource> resources = new ArrayList<OnmsResource>();
 
-        File[] intfDirs = parent.listFiles(RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
+        File[] intfDirs = RrdFileIndex.listFiles(parent, RrdFileConstants.INTERFACE_DIRECTORY_FILTER);
 
         Set<OnmsSnmpInterface> snmpInterfaces = node.getSnmpInterfaces();
         Map<String, OnmsSnmpInterface> intfMap = new HashMap<String, OnmsSnmpInterface>();
@@ -363,11 +364,11 @@ public class InterfaceSnmpResourceType implements OnmsResourceType {
         File snmp = new File(m_resourceDao.getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY);
         File domainDir = new File(snmp, domain);
 
-        if (!domainDir.exists() || !domainDir.isDirectory()) {
+        if (!RrdFileIndex.exists(domainDir) || !RrdFileIndex.isDirectory(domainDir)) {
             throw new IllegalArgumentException("No such directory: " + domainDir);
         }
 
-        File[] intfDirs = domainDir.listFiles(RrdFileConstants.DOMAIN_INTERFACE_DIRECTORY_FILTER);
+        File[] intfDirs = RrdFileIndex.listFiles(domainDir, RrdFileConstants.DOMAIN_INTERFACE_DIRECTORY_FILTER);
 
         if (intfDirs != null && intfDirs.length > 0) {
             intfs.ensureCapacity(intfDirs.length);
@@ -40,6 +40,7 @@ import org.opennms.netmgt.model.OnmsResource;
 import org.opennms.netmgt.model.OnmsResourceType;
 import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.rrd.RrdFileConstants;
+import org.opennms.netmgt.rrd.RrdFileIndex;
 import org.springframework.orm.ObjectRetrievalFailureException;
 
 public class NodeSnmpResourceType implements OnmsResourceType {
@@ -78,7 +79,7 @@ public class NodeSnmpResourceType implements OnmsResourceType {
     /** {@inheritDoc} */
     @Override
     public boolean isResourceTypeOnNode(int nodeId) {
-        return getResourceDirectory(nodeId, false).isDirectory();
+        return RrdFileIndex.isDirectory(getResourceDirectory(nodeId, false));
     }
     
     /**
@@ -92,7 +93,7 @@ public class NodeSnmpResourceType implements OnmsResourceType {
         File snmp = new File(m_resourceDao.getRrdDirectory(verify), ResourceTypeUtils.SNMP_DIRECTORY);
         
         File node = new File(snmp, Integer.toString(nodeId));
-        if (verify && !node.isDirectory()) {
+        if (verify && !RrdFileIndex.isDirectory(node)) {
             throw new ObjectRetrievalFailureException(File.class, "No node directory exists for node " + nodeId + ": " + node);
         }
         
@@ -143,10 +144,10 @@ public class NodeSnmpResourceType implements OnmsResourceType {
     public boolean isResourceTypeOnNodeSource(String nodeSource, int nodeId) {
         File nodeSnmpDir = new File(m_resourceDao.getRrdDirectory(), ResourceTypeUtils.SNMP_DIRECTORY + File.separator
                        + ResourceTypeUtils.getRelativeNodeSourceDirectory(nodeSource).toString());
-        if (!nodeSnmpDir.isDirectory()) { // A node without performance metrics should not have a directory 
+        if (!RrdFileIndex.isDirectory(nodeSnmpDir)) { // A node without performance metrics should not have a directory 
             return false;
         }
-        return nodeSnmpDir.listFiles(RrdFileConstants.RRD_FILENAME_FILTER).length > 0; 
+        return RrdFileIndex.listFiles(nodeSnmpDir, RrdFileConstants.RRD_FILENAME_FILTER).length > 0; 
     }
     
     /** {@inheritDoc} */
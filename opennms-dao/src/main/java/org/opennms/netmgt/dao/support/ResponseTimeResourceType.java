@@ -44,6 +44,7 @@ import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.OnmsResource;
 import org.opennms.netmgt.model.OnmsResourceType;
 import org.opennms.netmgt.model.ResourceTypeUtils;
+import org.opennms.netmgt.rrd.RrdFileIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.orm.ObjectRetrievalFailureException;
@@ -110,7 +111,7 @@ public class ResponseTimeResourceType implements OnmsResourceType {
 
             final File iface = getInterfaceDirectory(ipAddr, false);
             
-            if (iface.isDirectory()) {
+            if (RrdFileIndex.isDirectory(iface)) {
                 resources.add(createResource(i));
             }
         }
@@ -122,7 +123,7 @@ public class ResponseTimeResourceType implements OnmsResourceType {
     	final File response = new File(m_resourceDao.getRrdDirectory(verify), ResourceTypeUtils.RESPONSE_DIRECTORY);
         
     	final File intfDir = new File(response, ipAddr);
-        if (verify && !intfDir.isDirectory()) {
+        if (verify && !RrdFileIndex.isDirectory(intfDir)) {
             throw new ObjectRetrievalFailureException(File.class, "No interface directory exists for " + ipAddr + ": " + intfDir);
         }
 
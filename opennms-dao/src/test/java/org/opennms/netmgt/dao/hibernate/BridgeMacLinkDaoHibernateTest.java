@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.spring.BeanUtils;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.netmgt.dao.DatabasePopulator;
+import org.opennms.netmgt.dao.api.BridgeMacLinkDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.model.BridgeMacLink;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-databasePopulator.xml",
+        "classpath:/META-INF/opennms/applicationContext-setupIpLike-enabled.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase
+public class BridgeMacLinkDaoHibernateTest implements InitializingBean {
+    @Autowired
+    private NodeDao m_nodeDao;
+
+    @Autowired
+    private BridgeMacLinkDao m_bridgeMacLinkDao;
+
+    @Autowired
+    private DatabasePopulator m_databasePopulator;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        BeanUtils.assertAutowiring(this);
+    }
+
+    @Before
+    public void setUp() {
+        for (final OnmsNode node : m_nodeDao.findAll()) {
+            m_nodeDao.delete(node);
+        }
+        m_nodeDao.flush();
+        m_databasePopulator.populateDatabase();
+    }
+
+    @Test
+    @Transactional
+    public void testReplaceByNodeId() {
+        final Integer nodeId = m_databasePopulator.getNode1().getId();
+        final Integer otherNodeId = m_databasePopulator.getNode2().getId();
+        final Date first = new Date(System.currentTimeMillis() - 60000L);
+        final Date second = new Date();
+
+        final List<BridgeMacLink> links = new ArrayList<BridgeMacLink>();
+        links.add(link(1, "000000000001", "eth1", 1, first));
+        links.add(link(2, "000000000002", "eth2", 1, first));
+        // learned on two vlans; the last one wins
+        links.add(link(2, "000000000003", "eth2", 1, first));
+        links.add(link(2, "000000000003", "eth2", 2, first));
+        // no port, so it cannot be stored
+        links.add(link(null, "000000000004", null, 1, first));
+        m_bridgeMacLinkDao.replaceByNodeId(nodeId, links);
+        m_bridgeMacLinkDao.replaceByNodeId(otherNodeId, links.subList(0, 1));
+
+        Map<String, BridgeMacLink> stored = findByNodeId(nodeId);
+        assertEquals(3, stored.size());
+        assertEquals(Integer.valueOf(2), stored.get("2/000000000003").getVlan());
+        assertNull(stored.get("null/000000000004"));
+        final BridgeMacLink kept = stored.get("1/000000000001");
+        assertEquals(first.getTime(), kept.getBridgeMacLinkCreateTime().getTime());
+
+        links.clear();
+        links.add(link(1, "000000000001", "ge-0/0/1", 3, second));
+        links.add(link(2, "000000000003", "eth2", 2, second));
+        // the same address on another port is another link
+        links.add(link(3, "000000000002", "eth3", 1, second));
+        m_bridgeMacLinkDao.replaceByNodeId(nodeId, links);
+
+        stored = findByNodeId(nodeId);
+        assertEquals(3, stored.size());
+        assertNull(stored.get("2/000000000002"));
+
+        final BridgeMacLink updated = stored.get("1/000000000001");
+        assertEquals(kept.getId(), updated.getId());
+        assertEquals("ge-0/0/1", updated.getBridgePortIfName());
+        assertEquals(Integer.valueOf(3), updated.getVlan());
+        assertEquals(first.getTime(), updated.getBridgeMacLinkCreateTime().getTime());
+        assertEquals(second.getTime(), updated.getBridgeMacLinkLastPollTime().getTime());
+
+        final BridgeMacLink inserted = stored.get("3/000000000002");
+        assertEquals("eth3", inserted.getBridgePortIfName());
+        assertEquals(second.getTime(), inserted.getBridgeMacLinkCreateTime().getTime());
+
+        // the other node keeps its own links
+        m_bridgeMacLinkDao.replaceByNodeId(nodeId, new ArrayList<BridgeMacLink>());
+        assertEquals(0, findByNodeId(nodeId).size());
+        assertEquals(1, findByNodeId(otherNodeId).size());
+    }
+
+    /**
+     * Reads the links of a node back from the database, keyed by port and
+     * MAC address.
+     */
+    private Map<String, BridgeMacLink> findByNodeId(final Integer nodeId) {
+        m_bridgeMacLinkDao.clear();
+        final Map<String, BridgeMacLink> links = new HashMap<String, BridgeMacLink>();
+        for (final BridgeMacLink link : m_bridgeMacLinkDao.findByNodeId(nodeId)) {
+            links.put(link.getBridgePort() + "/" + link.getMacAddress(), link);
+        }
+        return links;
+    }
+
+    private static BridgeMacLink link(final Integer port, final String mac, final String ifName, final Integer vlan, final Date time) {
+        final BridgeMacLink link = new BridgeMacLink();
+        link.setBridgePort(port);
+        link.setBridgePortIfIndex(port == null ? null : port + 100);
+        link.setBridgePortIfName(ifName);
+        link.setVlan(vlan);
+        link.setMacAddress(mac);
+        link.setBridgeMacLinkCreateTime(time);
+        return link;
+    }
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.opennms.core.utils.InetAddressUtils.addr;
+import static org.opennms.core.utils.InetAddressUtils.str;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.spring.BeanUtils;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.netmgt.dao.DatabasePopulator;
+import org.opennms.netmgt.dao.api.IpNetToMediaDao;
+import org.opennms.netmgt.dao.api.NodeDao;
+import org.opennms.netmgt.model.IpNetToMedia;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Transactional;
+
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-databasePopulator.xml",
+        "classpath:/META-INF/opennms/applicationContext-setupIpLike-enabled.xml",
+        "classpath*:/META-INF/opennms/component-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase
+public class IpNetToMediaDaoHibernateTest implements InitializingBean {
+    @Autowired
+    private NodeDao m_nodeDao;
+
+    @Autowired
+    private IpNetToMediaDao m_ipNetToMediaDao;
+
+    @Autowired
+    private DatabasePopulator m_databasePopulator;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        BeanUtils.assertAutowiring(this);
+    }
+
+    @Before
+    public void setUp() {
+        for (final OnmsNode node : m_nodeDao.findAll()) {
+            m_nodeDao.delete(node);
+        }
+        m_nodeDao.flush();
+        m_databasePopulator.populateDatabase();
+    }
+
+    @Test
+    @Transactional
+    public void testReplaceBySourceNodeId() {
+        final Integer node1 = m_databasePopulator.getNode1().getId();
+        final Integer node2 = m_databasePopulator.getNode2().getId();
+        final Date first = new Date(System.currentTimeMillis() - 60000L);
+        final Date second = new Date();
+
+        final List<IpNetToMedia> entries = new ArrayList<IpNetToMedia>();
+        entries.add(entry("192.168.1.1", "aa0000000001", 1, first));
+        entries.add(entry("192.168.1.2", "aa0000000002", 2, first));
+        m_ipNetToMediaDao.replaceBySourceNodeId(node1, entries);
+
+        Map<String, IpNetToMedia> stored = findBySourceNodeId(node1);
+        assertEquals(2, stored.size());
+        final IpNetToMedia kept = stored.get("192.168.1.1/aa0000000001");
+        final IpNetToMedia learned = stored.get("192.168.1.2/aa0000000002");
+        assertEquals(first.getTime(), kept.getCreateTime().getTime());
+
+        // node 2 now sees an entry node 1 had, which moves over, and a new one
+        entries.clear();
+        entries.add(entry("192.168.1.2", "aa0000000002", 5, second));
+        entries.add(entry("192.168.1.3", "aa0000000003", 6, second));
+        m_ipNetToMediaDao.replaceBySourceNodeId(node2, entries);
+
+        stored = findBySourceNodeId(node2);
+        assertEquals(2, stored.size());
+        final IpNetToMedia moved = stored.get("192.168.1.2/aa0000000002");
+        assertEquals(learned.getId(), moved.getId());
+        assertEquals(Integer.valueOf(5), moved.getSourceIfIndex());
+        assertEquals(first.getTime(), moved.getCreateTime().getTime());
+        assertEquals(second.getTime(), moved.getLastPollTime().getTime());
+        final IpNetToMedia inserted = stored.get("192.168.1.3/aa0000000003");
+        assertEquals(Integer.valueOf(6), inserted.getSourceIfIndex());
+        assertEquals(second.getTime(), inserted.getCreateTime().getTime());
+        assertEquals(1, findBySourceNodeId(node1).size());
+
+        // node 1 updates the entry it kept and no longer sees the one that moved
+        entries.clear();
+        entries.add(entry("192.168.1.1", "aa0000000001", 3, second));
+        m_ipNetToMediaDao.replaceBySourceNodeId(node1, entries);
+
+        stored = findBySourceNodeId(node1);
+        assertEquals(1, stored.size());
+        final IpNetToMedia updated = stored.get("192.168.1.1/aa0000000001");
+        assertEquals(kept.getId(), updated.getId());
+        assertEquals(Integer.valueOf(3), updated.getSourceIfIndex());
+        assertEquals(first.getTime(), updated.getCreateTime().getTime());
+        assertEquals(second.getTime(), updated.getLastPollTime().getTime());
+        assertEquals(2, findBySourceNodeId(node2).size());
+
+        // entries no longer found are deleted, and only those of that node
+        m_ipNetToMediaDao.replaceBySourceNodeId(node2, entries.subList(0, 0));
+        assertEquals(0, findBySourceNodeId(node2).size());
+        assertEquals(1, findBySourceNodeId(node1).size());
+        assertNull(m_ipNetToMediaDao.getByNetAndPhysAddress(addr("192.168.1.3"), "aa0000000003"));
+    }
+
+    /**
+     * Reads the entries learned from a node back from the database, keyed by
+     * IP and MAC address.
+     */
+    private Map<String, IpNetToMedia> findBySourceNodeId(final Integer nodeId) {
+        m_ipNetToMediaDao.clear();
+        final Map<String, IpNetToMedia> entries = new HashMap<String, IpNetToMedia>();
+        for (final IpNetToMedia entry : m_ipNetToMediaDao.findBySourceNodeId(nodeId)) {
+            entries.put(str(entry.getNetAddress()) + "/" + entry.getPhysAddress(), entry);
+        }
+        return entries;
+    }
+
+    private static IpNetToMedia entry(final String ip, final String mac, final Integer ifIndex, final Date time) {
+        final IpNetToMedia entry = new IpNetToMedia();
+        entry.setNetAddress(addr(ip));
+        entry.setPhysAddress(mac);
+        entry.setSourceIfIndex(ifIndex);
+        entry.setCreateTime(time);
+        return entry;
+    }
+}
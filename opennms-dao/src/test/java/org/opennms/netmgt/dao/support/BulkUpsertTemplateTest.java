@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.dao.support;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.Test;
+import org.opennms.netmgt.dao.api.OnmsDao;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+public class BulkUpsertTemplateTest {
+
+    private static class Row {
+        private final int m_key;
+        private String m_value;
+
+        public Row(int key, String value) {
+            m_key = key;
+            m_value = value;
+        }
+
+        @Override
+        public String toString() {
+            return m_key + "=" + m_value;
+        }
+    }
+
+    /**
+     * Records the calls made to the DAO.
+     */
+    private final List<String> m_calls = new ArrayList<String>();
+
+    @SuppressWarnings("unchecked")
+    private final OnmsDao<Row, Integer> m_dao = (OnmsDao<Row, Integer>) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { OnmsDao.class }, new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            m_calls.add(args == null ? method.getName() : method.getName() + " " + args[0]);
+            return null;
+        }
+    });
+
+    private final AbstractPlatformTransactionManager m_transactionManager = new AbstractPlatformTransactionManager() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    };
+
+    @Test
+    public void testReplace() {
+        final List<Row> dbRows = Arrays.asList(new Row(1, "a"), new Row(2, "b"), new Row(3, "c"));
+
+        new BulkUpsertTemplate<Row, Integer, OnmsDao<Row, Integer>>(m_transactionManager, m_dao) {
+            @Override
+            protected Collection<Row> query() {
+                m_calls.add("query");
+                return dbRows;
+            }
+
+            @Override
+            protected Integer key(Row row) {
+                return row.m_key;
+            }
+
+            @Override
+            protected Row doUpdate(Row dbRow, Row row) {
+                dbRow.m_value = row.m_value;
+                m_dao.update(dbRow);
+                return dbRow;
+            }
+
+            @Override
+            protected Row doInsert(Row row) {
+                m_dao.save(row);
+                return row;
+            }
+        }.execute(Arrays.asList(new Row(2, "x"), new Row(4, "y"), new Row(4, "z")));
+
+        assertEquals(Arrays.asList(
+            "lock",
+            "query",
+            "update 2=x",
+            "save 4=y",
+            "update 4=z",
+            "delete 1=a",
+            "delete 3=c",
+            "flush"
+        ), m_calls);
+    }
+
+    @Test
+    public void testReplaceWithNothing() {
+        new BulkUpsertTemplate<Row, Integer, OnmsDao<Row, Integer>>(m_transactionManager, m_dao) {
+            @Override
+            protected Collection<Row> query() {
+                return Arrays.asList(new Row(1, "a"));
+            }
+
+            @Override
+            protected Integer key(Row row) {
+                return row.m_key;
+            }
+
+            @Override
+            protected Row doUpdate(Row dbRow, Row row) {
+                throw new IllegalStateException("nothing to update");
+            }
+
+            @Override
+            protected Row doInsert(Row row) {
+                throw new IllegalStateException("nothing to insert");
+            }
+        }.execute(new ArrayList<Row>());
+
+        assertEquals(Arrays.asList("lock", "delete 1=a", "flush"), m_calls);
+    }
+}
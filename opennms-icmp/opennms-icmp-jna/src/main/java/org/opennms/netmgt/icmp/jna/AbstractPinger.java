@@ -29,12 +29,11 @@
 package org.opennms.netmgt.icmp.jna;
 
 import java.net.InetAddress;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.opennms.jicmp.jna.NativeDatagramSocket;
-import org.opennms.netmgt.icmp.EchoPacket;
 
 /**
  * JnaPinger
@@ -45,12 +44,20 @@ public abstract class AbstractPinger<T extends InetAddress> implements Runnable
     
     public static final double NANOS_PER_MILLI = 1000000.0;
 
+    /*
+     * Offsets into an ICMP echo packet; the data after the header is laid
+     * out the same way by V4PingRequest and V6PingRequest
+     */
+    private static final int OFFSET_IDENTIFIER = 4;
+    private static final int OFFSET_SEQUENCE_NUMBER = 6;
+    private static final int OFFSET_DATA = 8;
+
     private int m_pingerId;
     private NativeDatagramSocket m_pingSocket;
     private Thread m_thread;
     private final AtomicReference<Throwable> m_throwable = new AtomicReference<Throwable>(null);
     private volatile boolean m_stopped = false;
-    private final List<PingReplyListener> m_listeners = new ArrayList<PingReplyListener>();
+    private volatile PingReplyListener[] m_listeners = new PingReplyListener[0];
     
     protected AbstractPinger(int pingerId, NativeDatagramSocket pingSocket) {
         m_pingerId = pingerId;
@@ -95,13 +102,37 @@ public abstract class AbstractPinger<T extends InetAddress> implements Runnable
 
     abstract public void ping(T addr, int identifier, int sequenceNumber, long threadId, long count, long interval, int packetSize) throws InterruptedException;
 
-    public void addPingReplyListener(PingReplyListener listener) {
-        m_listeners.add(listener);
+    public synchronized void addPingReplyListener(PingReplyListener listener) {
+        final PingReplyListener[] listeners = Arrays.copyOf(m_listeners, m_listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        m_listeners = listeners;
     }
 
-    protected void notifyPingListeners(InetAddress address, EchoPacket echoReply) {
-        for (PingReplyListener listener : m_listeners) {
-            listener.onPingReply(address, echoReply);
+    /**
+     * Reads an echo reply in place and hands its fields to the listeners if
+     * it answers one of our requests. Nothing is allocated, so the reader
+     * thread can keep up with many thousands of replies per second.
+     *
+     * @param buf the received packet, read with absolute gets only
+     * @param offset where the ICMP message starts in buf
+     * @param length where the ICMP message ends in buf
+     * @param address the raw address the packet came from
+     * @param receivedTimeNanos when the packet was received
+     */
+    protected void processEchoReply(final ByteBuffer buf, final int offset, final int length, final byte[] address, final long receivedTimeNanos) {
+        final int data = offset + OFFSET_DATA;
+        if (length < data + V4PingRequest.DATA_LENGTH) {
+            return;
+        }
+        final int identifier = buf.getShort(offset + OFFSET_IDENTIFIER) & 0xffff;
+        if (identifier != m_pingerId || buf.getLong(data + V4PingRequest.OFFSET_COOKIE) != V4PingRequest.COOKIE) {
+            return;
+        }
+        final int sequenceNumber = buf.getShort(offset + OFFSET_SEQUENCE_NUMBER) & 0xffff;
+        final long sentTimeNanos = buf.getLong(data + V4PingRequest.OFFSET_TIMESTAMP);
+        final long threadId = buf.getLong(data + V4PingRequest.OFFSET_THREAD_ID);
+        for (final PingReplyListener listener : m_listeners) {
+            listener.onPingReply(address, identifier, sequenceNumber, threadId, sentTimeNanos, receivedTimeNanos);
         }
     }
 
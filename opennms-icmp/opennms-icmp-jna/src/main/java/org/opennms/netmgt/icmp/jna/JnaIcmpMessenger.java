@@ -28,12 +28,7 @@
 
 package org.opennms.netmgt.icmp.jna;
 
-import java.net.InetAddress;
-import java.util.Queue;
-
-import org.opennms.netmgt.icmp.EchoPacket;
 import org.opennms.netmgt.icmp.IcmpMessengerIOException;
-import org.opennms.protocols.rt.Messenger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,7 +36,7 @@ import org.slf4j.LoggerFactory;
 /**
  * @author brozow
  */
-public class JnaIcmpMessenger implements Messenger<JnaPingRequest, JnaPingReply>, PingReplyListener {
+public class JnaIcmpMessenger {
 	
 	
 	private static final Logger LOG = LoggerFactory
@@ -49,13 +44,11 @@ public class JnaIcmpMessenger implements Messenger<JnaPingRequest, JnaPingReply>
 	
 	private V4Pinger m_v4;
 	private V6Pinger m_v6;
-    private Queue<JnaPingReply> pendingReplies = null;
 
 	public JnaIcmpMessenger(final int pingerId) throws Exception {
 	    Throwable error = null;
 	    try {
 	        m_v4 = new V4Pinger(pingerId);
-	        m_v4.addPingReplyListener(this);
 	    } catch (final Throwable t) {
 	        LOG.debug("Unable to initialize IPv4 Pinger.", t);
 	        error = t;
@@ -64,7 +57,6 @@ public class JnaIcmpMessenger implements Messenger<JnaPingRequest, JnaPingReply>
 	    
 	    try {
 	        m_v6 = new V6Pinger(pingerId);
-	        m_v6.addPingReplyListener(this);
 	    } catch (final Throwable t) {
 	        LOG.debug("Unable to initialize IPv6 Pinger.", t);
 	        if (error == null) error = t;
@@ -92,21 +84,24 @@ public class JnaIcmpMessenger implements Messenger<JnaPingRequest, JnaPingReply>
         return false;
     }
 
-        @Override
 	public void sendRequest(final JnaPingRequest request) {
 		request.send(m_v4, m_v6);
 	}
 
-        @Override
-	public void start(final Queue<JnaPingReply> replyQueue) {
-        pendingReplies = replyQueue;
-        m_v4.start();
-        m_v6.start();
-	}
-
-        @Override
-	public void onPingReply(final InetAddress address, final EchoPacket packet) {
-		pendingReplies.offer(new JnaPingReply(address, packet));
+    /**
+     * Starts reading replies from the sockets that could be opened.
+     *
+     * @param listener receives the echo replies, on the reader threads
+     */
+	public void start(final PingReplyListener listener) {
+        if (m_v4 != null) {
+            m_v4.addPingReplyListener(listener);
+            m_v4.start();
+        }
+        if (m_v6 != null) {
+            m_v6.addPingReplyListener(listener);
+            m_v6.start();
+        }
 	}
 
 }
@@ -32,7 +32,6 @@ import java.net.InetAddress;
 import java.util.concurrent.TimeUnit;
 
 import org.opennms.netmgt.icmp.EchoPacket;
-import org.opennms.protocols.rt.ResponseWithId;
 
 /**
  * <p>
@@ -50,37 +49,42 @@ import org.opennms.protocols.rt.ResponseWithId;
  * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
  * @author <a href="mailto:sowmya@opennms.org">Sowmya </a>
  */
-public final class JnaPingReply implements ResponseWithId<JnaPingRequestId>, EchoPacket {
+public final class JnaPingReply implements EchoPacket {
     /**
      * The sender's address.
      */
     private final InetAddress m_address;
 
-    /**
-     * The received packet.
+    /*
+     * The fields of the received packet.
      */
-    private final EchoPacket m_packet;
+    private final int m_identifier;
+    private final int m_sequenceNumber;
+    private final long m_threadId;
+    private final long m_sentTimeNanos;
+    private final long m_receivedTimeNanos;
 
     /**
-     * Constructs a new reply with the passed address and packet as the contents
-     * of the reply.
+     * Constructs a new reply from the fields read out of the received
+     * packet.
      *
      * @param addr
      *            The address of the ICMP sender.
-     * @param pkt
-     *            The received packet.
      */
-    public JnaPingReply(InetAddress addr, EchoPacket pkt) {
+    public JnaPingReply(InetAddress addr, int identifier, int sequenceNumber, long threadId, long sentTimeNanos, long receivedTimeNanos) {
         m_address = addr;
-        m_packet = pkt;
+        m_identifier = identifier;
+        m_sequenceNumber = sequenceNumber;
+        m_threadId = threadId;
+        m_sentTimeNanos = sentTimeNanos;
+        m_receivedTimeNanos = receivedTimeNanos;
     }
     
     /**
      * <p>getRequestId</p>
      *
-     * @return a {@link org.opennms.netmgt.icmp.spi.PingRequestId} object.
+     * @return a {@link org.opennms.netmgt.icmp.jna.JnaPingRequestId} object.
      */
-    @Override
     public JnaPingRequestId getRequestId() {
         return new JnaPingRequestId(getAddress(), getIdentifier(), getSequenceNumber(), getThreadId());
     }
@@ -101,37 +105,38 @@ public final class JnaPingReply implements ResponseWithId<JnaPingRequestId>, Ech
      */
     @Override
     public boolean isEchoReply() {
-        return m_packet.isEchoReply();
+        return true;
     }
 
     @Override
     public int getIdentifier() {
-        return m_packet.getIdentifier();
+        return m_identifier;
     }
 
     @Override
     public int getSequenceNumber() {
-        return m_packet.getSequenceNumber();
+        return m_sequenceNumber;
     }
 
     @Override
     public long getThreadId() {
-        return m_packet.getThreadId();
+        return m_threadId;
     }
 
     @Override
     public long getReceivedTimeNanos() {
-        return m_packet.getReceivedTimeNanos();
+        return m_receivedTimeNanos;
     }
 
     @Override
     public long getSentTimeNanos() {
-        return m_packet.getSentTimeNanos();
+        return m_sentTimeNanos;
     }
 
     @Override
     public double elapsedTime(TimeUnit timeUnit) {
-        return m_packet.elapsedTime(timeUnit);
+        double nanosPerUnit = TimeUnit.NANOSECONDS.convert(1, timeUnit);
+        return (m_receivedTimeNanos - m_sentTimeNanos) / nanosPerUnit;
     }
 
     @Override
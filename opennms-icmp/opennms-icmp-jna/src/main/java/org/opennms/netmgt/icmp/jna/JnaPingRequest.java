@@ -38,7 +38,6 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.opennms.netmgt.icmp.EchoPacket;
 import org.opennms.netmgt.icmp.LogPrefixPreservingPingResponseCallback;
 import org.opennms.netmgt.icmp.PingResponseCallback;
-import org.opennms.protocols.rt.Request;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,7 +48,7 @@ import org.slf4j.LoggerFactory;
  * @author <a href="mailto:ranger@opennms.org">Ben Reed</a>
  * @author <a href="mailto:brozow@opennms.org">Mathew Brozowski</a>
  */
-public class JnaPingRequest implements Request<JnaPingRequestId, JnaPingRequest, JnaPingReply>, EchoPacket {
+public class JnaPingRequest implements Delayed, EchoPacket {
 
 	
 	private static final Logger LOG = LoggerFactory
@@ -121,10 +120,11 @@ public class JnaPingRequest implements Request<JnaPingRequestId, JnaPingRequest,
      * @param reply a {@link org.opennms.netmgt.icmp.spi.JnaPingReply.PingReply} object.
      * @return a boolean.
      */
-    @Override
     public boolean processResponse(final JnaPingReply reply) {
         try {
-            LOG.debug("{}: Ping Response Received for request: {}", System.currentTimeMillis(), this);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("{}: Ping Response Received for request: {}", System.currentTimeMillis(), this);
+            }
             m_callback.handleResponse(getAddress(), reply);
         } finally {
             setProcessed(true);
@@ -137,7 +137,6 @@ public class JnaPingRequest implements Request<JnaPingRequestId, JnaPingRequest,
      *
      * @return a {@link org.opennms.netmgt.JnaPingRequest.AbstractPingRequest} object.
      */
-    @Override
     public JnaPingRequest processTimeout() {
         try {
             JnaPingRequest returnval = null;
@@ -191,13 +190,15 @@ public class JnaPingRequest implements Request<JnaPingRequestId, JnaPingRequest,
      *
      * @return a {@link org.opennms.netmgt.icmp.spi.JnaPingRequestId.PingRequestId} object.
      */
-    @Override
     public JnaPingRequestId getId() {
         return m_id;
     }
 
-    /** {@inheritDoc} */
-    @Override
+    /**
+     * <p>processError</p>
+     *
+     * @param t a {@link java.lang.Throwable} object.
+     */
     public void processError(final Throwable t) {
         try {
             m_callback.handleError(getAddress(), this, t);
@@ -215,7 +216,6 @@ public class JnaPingRequest implements Request<JnaPingRequestId, JnaPingRequest,
      *
      * @return a boolean.
      */
-    @Override
     public boolean isProcessed() {
         return m_processed.get();
     }
@@ -237,15 +237,22 @@ public class JnaPingRequest implements Request<JnaPingRequestId, JnaPingRequest,
         return m_id.getAddress();
     }
 
+    /**
+     * Starts counting down the timeout of this request; called as it is sent.
+     */
+    void startTimeout() {
+        m_expiration = System.currentTimeMillis() + m_timeout;
+    }
+
     public void send(final V6Pinger v6, final Inet6Address addr6) {
         try {
             //throw new IllegalStateException("The m_request field should be set here!!!");
             LOG.debug("{}: Sending Ping Request: {}", System.currentTimeMillis(), this);
         
-            m_expiration = System.currentTimeMillis() + m_timeout;
+            startTimeout();
             v6.ping(addr6, m_id.getIdentifier(), m_id.getSequenceNumber(), m_id.getThreadId(), 1, 0, m_packetsize);
         } catch (final Throwable t) {
-            m_callback.handleError(getAddress(), this, t);
+            processError(t);
         }
     }
 
@@ -253,10 +260,10 @@ public class JnaPingRequest implements Request<JnaPingRequestId, JnaPingRequest,
         try {
             //throw new IllegalStateException("The m_request field should be set here!!!");
             LOG.debug("{}: Sending Ping Request: {}", System.currentTimeMillis(), this);
-            m_expiration = System.currentTimeMillis() + m_timeout;
+            startTimeout();
             v4.ping(addr4, m_id.getIdentifier(), m_id.getSequenceNumber(), m_id.getThreadId(), 1, 0, m_packetsize);
         } catch (final Throwable t) {
-            m_callback.handleError(getAddress(), this, t);
+            processError(t);
         }
     }
 
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.icmp.jna;
 
 import java.net.InetAddress;
+import java.util.Arrays;
 
 import org.opennms.core.utils.InetAddressComparator;
 
@@ -40,6 +41,7 @@ import org.opennms.core.utils.InetAddressComparator;
  */
 public class JnaPingRequestId {
     private InetAddress m_addr;
+    private byte[] m_addrBytes;
     private int m_identifier;
     private int m_sequenceNumber;
     private long m_threadId;
@@ -53,6 +55,7 @@ public class JnaPingRequestId {
      */
     public JnaPingRequestId(InetAddress addr, int identifier, int sequenceNumber, long threadId) {
         m_addr = addr;
+        m_addrBytes = addr.getAddress();
         m_identifier = identifier;
         m_sequenceNumber = sequenceNumber;
         m_threadId = threadId;
@@ -76,6 +79,17 @@ public class JnaPingRequestId {
         return m_addr;
     }
 
+    /**
+     * Tells whether a reply from the given raw address can belong to this
+     * request, without creating an {@link InetAddress} for it.
+     *
+     * @param addr the network order bytes of the address
+     * @return a boolean.
+     */
+    public boolean isAddress(byte[] addr) {
+        return Arrays.equals(m_addrBytes, addr);
+    }
+
     /**
      * <p>getTid</p>
      *
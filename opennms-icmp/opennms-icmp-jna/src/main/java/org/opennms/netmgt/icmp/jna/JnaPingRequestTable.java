@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+/**
+ * The outstanding requests of a {@link JnaPingTracker}, keyed by a long.
+ * Open addressing over parallel arrays, so that matching a reply to its
+ * request neither boxes the key nor allocates an entry.
+ */
+final class JnaPingRequestTable {
+
+    private long[] m_keys;
+
+    private JnaPingRequest[] m_values;
+
+    private int m_size;
+
+    JnaPingRequestTable() {
+        this(1024);
+    }
+
+    JnaPingRequestTable(final int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        m_keys = new long[capacity];
+        m_values = new JnaPingRequest[capacity];
+    }
+
+    private static int hash(final long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private int indexOf(final long key) {
+        final int mask = m_keys.length - 1;
+        int i = hash(key) & mask;
+        while (m_values[i] != null) {
+            if (m_keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    synchronized JnaPingRequest get(final long key) {
+        final int i = indexOf(key);
+        return i < 0 ? null : m_values[i];
+    }
+
+    /**
+     * Adds a request, replacing any request with the same key.
+     */
+    synchronized void put(final long key, final JnaPingRequest request) {
+        if ((m_size + 1) * 2 > m_keys.length) {
+            resize();
+        }
+        final int mask = m_keys.length - 1;
+        int i = hash(key) & mask;
+        while (m_values[i] != null) {
+            if (m_keys[i] == key) {
+                m_values[i] = request;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        m_keys[i] = key;
+        m_values[i] = request;
+        m_size++;
+    }
+
+    /**
+     * Removes the request stored under the key, but only if it is the given
+     * one.
+     *
+     * @return true if the request was removed
+     */
+    synchronized boolean remove(final long key, final JnaPingRequest request) {
+        int i = indexOf(key);
+        if (i < 0 || m_values[i] != request) {
+            return false;
+        }
+        m_values[i] = null;
+        m_size--;
+
+        // move later entries of the probe sequence into the hole so lookups
+        // never stop short of them
+        final int mask = m_keys.length - 1;
+        int j = i;
+        for (;;) {
+            j = (j + 1) & mask;
+            if (m_values[j] == null) {
+                return true;
+            }
+            final int home = hash(m_keys[j]) & mask;
+            final boolean reachable = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!reachable) {
+                m_keys[i] = m_keys[j];
+                m_values[i] = m_values[j];
+                m_values[j] = null;
+                i = j;
+            }
+        }
+    }
+
+    synchronized int size() {
+        return m_size;
+    }
+
+    private void resize() {
+        final long[] keys = m_keys;
+        final JnaPingRequest[] values = m_values;
+        m_keys = new long[keys.length * 2];
+        m_values = new JnaPingRequest[values.length * 2];
+        m_size = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                put(keys[i], values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.logging.Logging;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of the ping requests sent through a {@link JnaIcmpMessenger},
+ * matches the echo replies read by its sockets to them and times them out.
+ *
+ * Replies are matched on the socket reader thread: the thread id and
+ * sequence number of the reply are packed into a long and looked up in a
+ * {@link JnaPingRequestTable}, and the request's callback runs right there.
+ * Timeouts and retries are handled by a single thread waiting on a
+ * {@link DelayQueue} of the requests sent.
+ */
+class JnaPingTracker implements PingReplyListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JnaPingTracker.class);
+
+    private final String m_name;
+
+    private final JnaIcmpMessenger m_messenger;
+
+    private final JnaPingRequestTable m_requests = new JnaPingRequestTable();
+
+    private final DelayQueue<JnaPingRequest> m_timeouts = new DelayQueue<JnaPingRequest>();
+
+    private final AtomicLong m_unmatchedReplies = new AtomicLong();
+
+    private Thread m_timeoutThread;
+
+    JnaPingTracker(final String name, final JnaIcmpMessenger messenger) {
+        m_name = name;
+        m_messenger = messenger;
+    }
+
+    static long key(final long threadId, final int sequenceNumber) {
+        return threadId << 16 | (sequenceNumber & 0xffff);
+    }
+
+    private static long key(final JnaPingRequest request) {
+        return key(request.getThreadId(), request.getSequenceNumber());
+    }
+
+    public synchronized void start() {
+        if (m_messenger != null) {
+            m_messenger.start(this);
+        }
+        m_timeoutThread = new Thread(m_name + "-Timeout") {
+            @Override
+            public void run() {
+                Logging.putPrefix("icmp");
+                processTimeouts();
+            }
+        };
+        m_timeoutThread.setDaemon(true);
+        m_timeoutThread.start();
+    }
+
+    public void sendRequest(final JnaPingRequest request) {
+        final long key = key(request);
+        m_requests.put(key, request);
+        send(request);
+        if (request.isProcessed()) {
+            // either sending failed and the callback has been told, or the
+            // reply is in already
+            m_requests.remove(key, request);
+        } else {
+            m_timeouts.add(request);
+        }
+    }
+
+    void send(final JnaPingRequest request) {
+        m_messenger.sendRequest(request);
+    }
+
+    @Override
+    public void onPingReply(final byte[] address, final int identifier, final int sequenceNumber, final long threadId, final long sentTimeNanos, final long receivedTimeNanos) {
+        final long key = key(threadId, sequenceNumber);
+        final JnaPingRequest request = m_requests.get(key);
+        if (request == null || !request.getId().isAddress(address) || !m_requests.remove(key, request)) {
+            // a duplicate, or an answer to a request that timed out already
+            m_unmatchedReplies.incrementAndGet();
+            return;
+        }
+        try {
+            request.processResponse(new JnaPingReply(request.getAddress(), identifier, sequenceNumber, threadId, sentTimeNanos, receivedTimeNanos));
+        } catch (final Throwable t) {
+            LOG.warn("Unexpected error processing reply to {}", request, t);
+        }
+    }
+
+    private void processTimeouts() {
+        while (true) {
+            final JnaPingRequest request;
+            try {
+                request = m_timeouts.take();
+            } catch (final InterruptedException e) {
+                LOG.info("{} timeout thread interrupted, exiting", m_name);
+                return;
+            }
+            if (!m_requests.remove(key(request), request)) {
+                // answered in time
+                continue;
+            }
+            try {
+                final JnaPingRequest retry = request.processTimeout();
+                if (retry != null) {
+                    sendRequest(retry);
+                }
+            } catch (final Throwable t) {
+                LOG.warn("Unexpected error processing timeout of {}", request, t);
+            }
+        }
+    }
+
+    /**
+     * @return the number of requests awaiting a reply
+     */
+    public int getOutstandingRequests() {
+        return m_requests.size();
+    }
+
+    /**
+     * @return the number of replies that did not match an outstanding request
+     */
+    public long getUnmatchedReplies() {
+        return m_unmatchedReplies.get();
+    }
+}
@@ -36,15 +36,11 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.security.SecureRandom;
 import java.util.List;
-import java.util.concurrent.Callable;
 
-import org.opennms.core.logging.Logging;
 import org.opennms.netmgt.icmp.ParallelPingResponseCallback;
 import org.opennms.netmgt.icmp.PingResponseCallback;
 import org.opennms.netmgt.icmp.Pinger;
 import org.opennms.netmgt.icmp.SinglePingResponseCallback;
-import org.opennms.protocols.rt.IDBasedRequestLocator;
-import org.opennms.protocols.rt.RequestTracker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -59,7 +55,7 @@ public class JnaPinger implements Pinger {
 
     private final int m_pingerId = new SecureRandom().nextInt(Short.MAX_VALUE);
 
-    private RequestTracker<JnaPingRequest, JnaPingReply> m_pingTracker;
+    private JnaPingTracker m_pingTracker;
     private JnaIcmpMessenger m_messenger;
 
     /**
@@ -69,11 +65,7 @@ public class JnaPinger implements Pinger {
     private synchronized void initialize() throws Exception {
         if (m_pingTracker != null) return;
         m_messenger = new JnaIcmpMessenger(m_pingerId);
-        m_pingTracker = Logging.withPrefix("icmp", new Callable<RequestTracker<JnaPingRequest,JnaPingReply>>() {
-            @Override public RequestTracker<JnaPingRequest, JnaPingReply> call() throws Exception {
-                return new RequestTracker<JnaPingRequest, JnaPingReply>("JNA-ICMP-"+m_pingerId, m_messenger, new IDBasedRequestLocator<JnaPingRequestId, JnaPingRequest, JnaPingReply>());
-            }
-        });
+        m_pingTracker = new JnaPingTracker("JNA-ICMP-"+m_pingerId, m_messenger);
         m_pingTracker.start();
     }
 
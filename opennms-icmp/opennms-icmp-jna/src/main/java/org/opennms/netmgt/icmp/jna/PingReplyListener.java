@@ -28,10 +28,12 @@
 
 package org.opennms.netmgt.icmp.jna;
 
-import java.net.InetAddress;
-
-import org.opennms.netmgt.icmp.EchoPacket;
-
 public interface PingReplyListener {
-	public void onPingReply(InetAddress inetAddress, EchoPacket packet);
+    /**
+     * Called by the socket reader thread for each echo reply that carries
+     * our identifier and cookie, with the fields read in place from the
+     * received packet. The address array is reused for the next packet and
+     * must not be kept.
+     */
+    public void onPingReply(byte[] address, int identifier, int sequenceNumber, long threadId, long sentTimeNanos, long receivedTimeNanos);
 }
@@ -34,8 +34,6 @@ import java.nio.ByteBuffer;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.jicmp.ip.ICMPEchoPacket;
-import org.opennms.jicmp.ip.ICMPPacket;
-import org.opennms.jicmp.ip.IPPacket;
 import org.opennms.jicmp.ip.ICMPPacket.Type;
 import org.opennms.jicmp.jna.NativeDatagramPacket;
 import org.opennms.jicmp.jna.NativeDatagramSocket;
@@ -51,6 +49,8 @@ import com.sun.jna.Platform;
  */
 public class V4Pinger extends AbstractPinger<Inet4Address> {
     private static final Logger LOG = LoggerFactory.getLogger(V4Pinger.class);
+
+    private static final byte ICMP_ECHO_REPLY = (byte) Type.EchoReply.getCode();
     
 
     public V4Pinger(final int pingerId) throws Exception {
@@ -73,17 +73,16 @@ public class V4Pinger extends AbstractPinger<Inet4Address> {
     public void run() {
         Logging.putPrefix("icmp");
         try {
-            final int pingerId = getPingerId();
-            final NativeDatagramPacket datagram = new NativeDatagramPacket(65535);
+            final NativeDatagramPacket datagram = new NativeDatagramPacket(ByteBuffer.allocateDirect(65535), null, -1);
+            final ByteBuffer buf = datagram.getBuffer();
             while (!isFinished()) {
-                getPingSocket().receive(datagram);
+                final int length = getPingSocket().receive(datagram);
                 final long received = System.nanoTime();
-    
-                final ICMPPacket icmpPacket = new ICMPPacket(getIPPayload(datagram));
-                final V4PingReply echoReply = icmpPacket.getType() == Type.EchoReply ? new V4PingReply(icmpPacket, received) : null;
-            
-                if (echoReply != null && echoReply.getIdentifier() ==  pingerId && echoReply.isValid()) {
-                    notifyPingListeners(datagram.getAddress(), echoReply);
+
+                // the IP header length is the low nibble of the first byte, in 32 bit words
+                final int offset = length > 0 ? (buf.get(0) & 0xf) << 2 : 0;
+                if (length > offset && buf.get(offset) == ICMP_ECHO_REPLY) {
+                    processEchoReply(buf, offset, length, datagram.getAddressBytes(), received);
                 }
             }
         } catch(final Throwable t) {
@@ -92,10 +91,6 @@ public class V4Pinger extends AbstractPinger<Inet4Address> {
         }
     }
 
-    private ByteBuffer getIPPayload(final NativeDatagramPacket datagram) {
-        return new IPPacket(datagram.getContent()).getPayload();
-    }
-    
     @Override
     public void ping(final Inet4Address addr, final int identifier, final int sequenceNumber, final long threadId, final long count, final long interval, final int packetSize) throws InterruptedException {
         final NativeDatagramSocket socket = getPingSocket();
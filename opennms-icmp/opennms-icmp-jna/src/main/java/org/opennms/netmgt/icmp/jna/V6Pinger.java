@@ -34,7 +34,6 @@ import java.nio.ByteBuffer;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.jicmp.ipv6.ICMPv6EchoPacket;
-import org.opennms.jicmp.ipv6.ICMPv6Packet;
 import org.opennms.jicmp.ipv6.ICMPv6Packet.Type;
 import org.opennms.jicmp.jna.NativeDatagramPacket;
 import org.opennms.jicmp.jna.NativeDatagramSocket;
@@ -53,6 +52,8 @@ public class V6Pinger extends AbstractPinger<Inet6Address> {
 
 	private static final Logger LOG = LoggerFactory.getLogger(V6Pinger.class);
 
+    private static final byte ICMPV6_ECHO_REPLY = (byte) Type.EchoReply.getCode();
+
     public V6Pinger(final int pingerId) throws Exception {
         super(pingerId, NativeDatagramSocket.create(NativeDatagramSocket.PF_INET6, Platform.isMac() ? NativeDatagramSocket.SOCK_DGRAM : NativeDatagramSocket.SOCK_RAW, NativeDatagramSocket.IPPROTO_ICMPV6));
         
@@ -82,17 +83,15 @@ public class V6Pinger extends AbstractPinger<Inet6Address> {
     public void run() {
         Logging.putPrefix("icmp");
         try {
-            final int pingerId = getPingerId();
-            final NativeDatagramPacket datagram = new NativeDatagramPacket(65535);
+            final NativeDatagramPacket datagram = new NativeDatagramPacket(ByteBuffer.allocateDirect(65535), null, -1);
+            final ByteBuffer buf = datagram.getBuffer();
             while (!isFinished()) {
-                getPingSocket().receive(datagram);
+                // ICMPv6 sockets do not pass the IP header up
+                final int length = getPingSocket().receive(datagram);
                 final long received = System.nanoTime();
-    
-                final ICMPv6Packet icmpPacket = new ICMPv6Packet(getIPPayload(datagram));
-                final V6PingReply echoReply = icmpPacket.getType() == Type.EchoReply ? new V6PingReply(icmpPacket, received) : null;
-            
-                if (echoReply != null && echoReply.getIdentifier() == pingerId && echoReply.isValid()) {
-                    notifyPingListeners(datagram.getAddress(), echoReply);
+
+                if (length > 0 && buf.get(0) == ICMPV6_ECHO_REPLY) {
+                    processEchoReply(buf, 0, length, datagram.getAddressBytes(), received);
                 }
             }
         } catch(final Throwable t) {
@@ -101,10 +100,6 @@ public class V6Pinger extends AbstractPinger<Inet6Address> {
         }
     }
 
-    private ByteBuffer getIPPayload(final NativeDatagramPacket datagram) {
-        return datagram.getContent();
-    }
-    
     @Override
     public void ping(final Inet6Address addr, final int identifier, final int sequenceNumber, final long threadId, final long count, final long interval, final int packetSize) throws InterruptedException {
         final NativeDatagramSocket socket = getPingSocket();
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.icmp.jna;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+
+public class JnaPingTrackerTest {
+
+    private static final int PINGER_ID = 4242;
+
+    /** where the ICMP message starts in our fake IPv4 packets */
+    private static final int ICMP_OFFSET = 20;
+
+    private static final int PACKET_LENGTH = ICMP_OFFSET + V4PingRequest.PACKET_LENGTH;
+
+    private final List<JnaPingRequest> m_sent = new ArrayList<JnaPingRequest>();
+
+    private JnaPingTracker m_tracker;
+
+    private AbstractPinger<Inet4Address> m_pinger;
+
+    private static class Callback implements PingResponseCallback {
+        private final CountDownLatch m_done;
+        private final AtomicInteger m_responses = new AtomicInteger();
+        private final AtomicInteger m_timeouts = new AtomicInteger();
+        private volatile InetAddress m_address;
+        private volatile EchoPacket m_response;
+
+        Callback(final int expected) {
+            m_done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void handleResponse(final InetAddress address, final EchoPacket response) {
+            m_address = address;
+            m_response = response;
+            m_responses.incrementAndGet();
+            m_done.countDown();
+        }
+
+        @Override
+        public void handleTimeout(final InetAddress address, final EchoPacket request) {
+            m_address = address;
+            m_timeouts.incrementAndGet();
+            m_done.countDown();
+        }
+
+        @Override
+        public void handleError(final InetAddress address, final EchoPacket request, final Throwable t) {
+            m_done.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        m_tracker = new JnaPingTracker("JNA-ICMP-Test", null) {
+            @Override
+            void send(final JnaPingRequest request) {
+                request.startTimeout();
+                synchronized (m_sent) {
+                    m_sent.add(request);
+                }
+            }
+        };
+        m_tracker.start();
+
+        m_pinger = new AbstractPinger<Inet4Address>(PINGER_ID, null) {
+            @Override
+            public void run() {
+            }
+
+            @Override
+            public void ping(final Inet4Address addr, final int identifier, final int sequenceNumber, final long threadId, final long count, final long interval, final int packetSize) {
+            }
+        };
+        m_pinger.addPingReplyListener(m_tracker);
+    }
+
+    private static ByteBuffer newReplyBuffer() {
+        final ByteBuffer buf = ByteBuffer.allocateDirect(PACKET_LENGTH);
+        buf.put(0, (byte) 0x45);
+        buf.put(ICMP_OFFSET, (byte) 0);
+        buf.putLong(ICMP_OFFSET + 8 + V4PingRequest.OFFSET_COOKIE, V4PingRequest.COOKIE);
+        return buf;
+    }
+
+    private static void setReply(final ByteBuffer buf, final int identifier, final int sequenceNumber, final long threadId, final long sentTimeNanos) {
+        buf.putShort(ICMP_OFFSET + 4, (short) identifier);
+        buf.putShort(ICMP_OFFSET + 6, (short) sequenceNumber);
+        buf.putLong(ICMP_OFFSET + 8 + V4PingRequest.OFFSET_TIMESTAMP, sentTimeNanos);
+        buf.putLong(ICMP_OFFSET + 8 + V4PingRequest.OFFSET_THREAD_ID, threadId);
+    }
+
+    private void receive(final ByteBuffer buf, final InetAddress from) {
+        m_pinger.processEchoReply(buf, ICMP_OFFSET, PACKET_LENGTH, from.getAddress(), System.nanoTime());
+    }
+
+    @Test
+    public void testReplyMatchesRequest() throws Exception {
+        final InetAddress host = InetAddress.getByName("192.168.0.1");
+        final Callback cb = new Callback(1);
+        m_tracker.sendRequest(new JnaPingRequest(host, PINGER_ID, 7, 1234L, 60000, 0, 64, cb));
+        assertEquals(1, m_tracker.getOutstandingRequests());
+
+        final ByteBuffer buf = newReplyBuffer();
+        setReply(buf, PINGER_ID, 7, 1234L, System.nanoTime() - 1000000);
+        receive(buf, host);
+
+        assertTrue(cb.m_done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, cb.m_responses.get());
+        assertEquals(host, cb.m_address);
+        assertEquals(7, cb.m_response.getSequenceNumber());
+        assertEquals(1234L, cb.m_response.getThreadId());
+        assertTrue(cb.m_response.elapsedTime(TimeUnit.MILLISECONDS) >= 1.0);
+        assertEquals(0, m_tracker.getOutstandingRequests());
+    }
+
+    @Test
+    public void testStrayRepliesAreDropped() throws Exception {
+        final InetAddress host = InetAddress.getByName("192.168.0.1");
+        final Callback cb = new Callback(1);
+        m_tracker.sendRequest(new JnaPingRequest(host, PINGER_ID, 1, 99L, 60000, 0, 64, cb));
+
+        final ByteBuffer buf = newReplyBuffer();
+
+        // someone else's identifier never reaches the tracker
+        setReply(buf, PINGER_ID + 1, 1, 99L, 0);
+        receive(buf, host);
+        assertEquals(0, m_tracker.getUnmatchedReplies());
+
+        // neither does a packet without our cookie
+        setReply(buf, PINGER_ID, 1, 99L, 0);
+        buf.putLong(ICMP_OFFSET + 8, 0L);
+        receive(buf, host);
+        assertEquals(0, m_tracker.getUnmatchedReplies());
+        buf.putLong(ICMP_OFFSET + 8, V4PingRequest.COOKIE);
+
+        // the right ids from the wrong host
+        receive(buf, InetAddress.getByName("192.168.0.2"));
+        assertEquals(1, m_tracker.getUnmatchedReplies());
+
+        // the real one, then a duplicate
+        receive(buf, host);
+        receive(buf, host);
+        assertEquals(2, m_tracker.getUnmatchedReplies());
+        assertEquals(1, cb.m_responses.get());
+        assertEquals(0, m_tracker.getOutstandingRequests());
+    }
+
+    @Test
+    public void testTimeoutAndRetry() throws Exception {
+        final InetAddress host = InetAddress.getByName("192.168.0.1");
+        final Callback cb = new Callback(1);
+        m_tracker.sendRequest(new JnaPingRequest(host, PINGER_ID, 1, 5L, 50, 1, 64, cb));
+
+        assertTrue(cb.m_done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, cb.m_timeouts.get());
+        assertEquals(0, cb.m_responses.get());
+        assertEquals(host, cb.m_address);
+        assertEquals(2, m_sent.size());
+        assertEquals(0, m_tracker.getOutstandingRequests());
+    }
+
+    /**
+     * Answers many outstanding requests out of a single receive buffer, the
+     * way the socket reader does, and reports how many replies per second
+     * are matched and delivered.
+     */
+    @Test
+    public void testReplyRate() throws Exception {
+        final int count = 100000;
+        final InetAddress[] hosts = new InetAddress[1024];
+        for (int i = 0; i < hosts.length; i++) {
+            hosts[i] = InetAddress.getByAddress(new byte[] { 10, 1, (byte) (i >> 8), (byte) i });
+        }
+        final Callback cb = new Callback(count);
+        for (int i = 0; i < count; i++) {
+            m_tracker.sendRequest(new JnaPingRequest(hosts[i % hosts.length], PINGER_ID, i & 0xffff, 1000L + (i >> 16), 600000, 0, 64, cb));
+        }
+        assertEquals(count, m_tracker.getOutstandingRequests());
+
+        final byte[][] addresses = new byte[hosts.length][];
+        for (int i = 0; i < hosts.length; i++) {
+            addresses[i] = hosts[i].getAddress();
+        }
+        final ByteBuffer buf = newReplyBuffer();
+        final long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            setReply(buf, PINGER_ID, i & 0xffff, 1000L + (i >> 16), start);
+            m_pinger.processEchoReply(buf, ICMP_OFFSET, PACKET_LENGTH, addresses[i % addresses.length], System.nanoTime());
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        assertTrue(cb.m_done.await(5, TimeUnit.SECONDS));
+        assertEquals(count, cb.m_responses.get());
+        assertEquals(0, m_tracker.getUnmatchedReplies());
+        assertEquals(0, m_tracker.getOutstandingRequests());
+        System.err.println(String.format("matched %d replies in %d ms: %.0f replies/sec", count, TimeUnit.NANOSECONDS.toMillis(elapsed), count * 1e9 / elapsed));
+    }
+}
@@ -40,6 +40,7 @@ import java.util.regex.Pattern;
 
 import org.opennms.core.utils.PropertiesCache;
 import org.opennms.netmgt.rrd.RrdFileConstants;
+import org.opennms.netmgt.rrd.RrdFileIndex;
 import org.opennms.netmgt.rrd.RrdUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -129,7 +130,7 @@ public abstract class ResourceTypeUtils {
     private static void loadRrdAttributes(File rrdDirectory, String relativePath, Set<OnmsAttribute> attributes) {
         int suffixLength = RrdFileConstants.getRrdSuffix().length();
         File resourceDir = new File(rrdDirectory, relativePath);
-        File[] files = resourceDir.listFiles(RrdFileConstants.RRD_FILENAME_FILTER);
+        File[] files = RrdFileIndex.listFiles(resourceDir, RrdFileConstants.RRD_FILENAME_FILTER);
         
         if (files == null) {
             return;
@@ -235,7 +236,12 @@ public abstract class ResourceTypeUtils {
 
     private static Properties getStringProperties(File resourceDir) {
         Assert.notNull(resourceDir, "resourceDir argumnet must not be null");
-        return getProperties(new File(resourceDir, STRINGS_PROPERTIES_FILE_NAME));
+        final File file = new File(resourceDir, STRINGS_PROPERTIES_FILE_NAME);
+        // most resources have no string attributes; the index knows that without a stat
+        if (RrdFileIndex.isEnabled() && !RrdFileIndex.exists(file)) {
+            return null;
+        }
+        return getProperties(file);
     }
 
     /**
@@ -264,6 +270,7 @@ public abstract class ResourceTypeUtils {
      */
     public static void saveUpdatedProperties(File propertiesFile, Properties props) throws FileNotFoundException, IOException {
         s_cache.saveProperties(propertiesFile, props);
+        RrdFileIndex.fileWritten(propertiesFile);
     }
 
     /**
@@ -273,8 +280,10 @@ public abstract class ResourceTypeUtils {
      * @param dsNamesToRrdNames a {@link java.util.Map} object.
      */
     public static void updateDsProperties(File resourceDir, Map<String, String> dsNamesToRrdNames) {
+        final File propertiesFile = new File(resourceDir, DS_PROPERTIES_FILE);
         try {
-            s_cache.updateProperties(new File(resourceDir, DS_PROPERTIES_FILE), dsNamesToRrdNames);
+            s_cache.updateProperties(propertiesFile, dsNamesToRrdNames);
+            RrdFileIndex.fileWritten(propertiesFile);
         } catch (IOException e) {
             LOG.error("Unable to save DataSource Properties file", e);
         }
@@ -292,6 +301,7 @@ public abstract class ResourceTypeUtils {
     public static void updateStringProperty(File resourceDir, String attrVal, String attrName) throws FileNotFoundException, IOException {
         File propertiesFile = new File(resourceDir, STRINGS_PROPERTIES_FILE_NAME);
         s_cache.setProperty(propertiesFile, attrName, attrVal);
+        RrdFileIndex.fileWritten(propertiesFile);
     }
 
     /**
@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation;
+
+/**
+ * One independent slice of the {@link QueuingRrdStrategy} work queue.
+ *
+ * Every file is hashed to exactly one shard, so all of the operations for a
+ * file are kept, ordered and reserved by the same shard, and the write threads
+ * only contend with each other when they touch the same shard. Each shard does
+ * its own significant/insignificant prioritization and aging, exactly the way
+ * the single queue used to.
+ *
+ * All of the state is guarded by the shard's own monitor. The counters are
+ * volatile so that statistics can be read without taking the lock.
+ */
+final class QueueShard {
+
+    private final int m_index;
+
+    private final boolean m_prioritizeSignificantUpdates;
+
+    private final long m_maxInsigUpdateSeconds;
+
+    private final LinkedList<String> m_filesWithSignificantWork = new LinkedList<String>();
+
+    private final LinkedList<String> m_filesWithInsignificantWork = new LinkedList<String>();
+
+    private final Map<String, LinkedList<Operation>> m_pendingFileOperations = new HashMap<String, LinkedList<Operation>>();
+
+    private final Set<String> m_reservedFiles = new HashSet<String>();
+
+    private volatile long m_operationsPending = 0;
+
+    private volatile long m_enqueuedOperations = 0;
+
+    private volatile long m_dequeuedOperations = 0;
+
+    private volatile long m_significantOpsEnqueued = 0;
+
+    private volatile long m_significantOpsDequeued = 0;
+
+    private volatile long m_dequeuedItems = 0;
+
+    private volatile long m_promotionCount = 0;
+
+    private long m_startTime = 0;
+
+    QueueShard(final int index, final boolean prioritizeSignificantUpdates, final long maxInsigUpdateSeconds) {
+        m_index = index;
+        m_prioritizeSignificantUpdates = prioritizeSignificantUpdates;
+        m_maxInsigUpdateSeconds = maxInsigUpdateSeconds;
+    }
+
+    int getIndex() {
+        return m_index;
+    }
+
+    /**
+     * Queue an operation, and wake up a write thread that is waiting on this
+     * shard.
+     */
+    synchronized void add(final Operation op) {
+        final String fileName = op.getFileName();
+
+        // look and see if there a pending ops list for this file
+        LinkedList<Operation> pendingOperations = m_pendingFileOperations.get(fileName);
+
+        // if not then we create an ops list for the file and add the file to
+        // the work items list
+        if (pendingOperations == null) {
+            pendingOperations = new LinkedList<Operation>();
+            m_pendingFileOperations.put(fileName, pendingOperations);
+
+            // add the file to the correct list based on what type of work we
+            // are adding.  (if we aren't prioritizing then every file is counted as
+            // signficant
+            if (!m_prioritizeSignificantUpdates || op.isSignificant()) {
+                m_filesWithSignificantWork.addLast(fileName);
+            } else {
+                m_filesWithInsignificantWork.addLast(fileName);
+            }
+        } else if (m_prioritizeSignificantUpdates && op.isSignificant() && hasOnlyInsignificant(pendingOperations)) {
+            // promote the file to the significant list if this is the first
+            // significant update
+            if (m_filesWithInsignificantWork.remove(fileName)) {
+                m_filesWithSignificantWork.addLast(fileName);
+            }
+        }
+
+        promoteAgedFiles();
+
+        op.addToPendingList(pendingOperations);
+
+        m_operationsPending++;
+        m_enqueuedOperations++;
+        if (op.isSignificant()) {
+            m_significantOpsEnqueued++;
+        }
+
+        notify();
+    }
+
+    /**
+     * Reserve the next file that has work and isn't already being worked on
+     * and take all of its pending operations.
+     *
+     * @return the operations for the file, or null if there is nothing that
+     *         can be worked on right now
+     */
+    synchronized LinkedList<Operation> take() {
+        final String fileName = selectNewAssignment();
+        if (fileName == null) {
+            return null;
+        }
+
+        if (m_startTime == 0) {
+            m_startTime = System.currentTimeMillis();
+        }
+
+        m_reservedFiles.add(fileName);
+        final LinkedList<Operation> ops = m_pendingFileOperations.remove(fileName);
+
+        for (final Operation op : ops) {
+            m_operationsPending -= op.getCount();
+            m_dequeuedOperations += op.getCount();
+            if (op.isSignificant()) {
+                m_significantOpsDequeued += op.getCount();
+            }
+        }
+        m_dequeuedItems++;
+
+        return ops;
+    }
+
+    /**
+     * Release the reservation on a file taken with {@link #take()}. If more
+     * work arrived for the file in the meantime another write thread may now
+     * pick it up.
+     */
+    synchronized void complete(final String fileName) {
+        if (m_reservedFiles.remove(fileName) && m_pendingFileOperations.containsKey(fileName)) {
+            notify();
+        }
+    }
+
+    /**
+     * Wait up to the given number of milliseconds for work to be added to
+     * this shard.
+     */
+    synchronized void awaitWork(final long millis) {
+        if (m_pendingFileOperations.size() > m_reservedFiles.size()) {
+            return;
+        }
+        try {
+            wait(Math.max(millis, 1));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Move the given files to the front of the significant list, if they have
+     * any pending work.
+     */
+    synchronized void promote(final Collection<String> fileNames) {
+        final LinkedList<String> promoted = new LinkedList<String>();
+        for (final String fileName : fileNames) {
+            if (m_pendingFileOperations.containsKey(fileName) && !m_reservedFiles.contains(fileName)) {
+                if (m_filesWithInsignificantWork.remove(fileName) || m_filesWithSignificantWork.remove(fileName)) {
+                    promoted.add(fileName);
+                }
+            }
+        }
+        if (!promoted.isEmpty()) {
+            m_filesWithSignificantWork.addAll(0, promoted);
+            notify();
+        }
+    }
+
+    /**
+     * Ensure that files with insignificant changes are getting promoted if
+     * necessary
+     */
+    private void promoteAgedFiles() {
+
+        // no need to do this is we aren't prioritizing
+        if (!m_prioritizeSignificantUpdates) return;
+
+        // the num seconds to update files is 0 then use unfair prioritization
+        if (m_maxInsigUpdateSeconds == 0 || m_filesWithInsignificantWork.isEmpty())
+            return;
+
+        // calculate the elapsed time we first queued updates
+        final long now = System.currentTimeMillis();
+        final long elapsedMillis = Math.max(now - m_startTime, 1);
+
+        // calculate the milliseconds between promotions necessary to age
+        // insignificant files into the significant queue
+        final double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / m_filesWithInsignificantWork.size());
+
+        // calculate the number of millis since start until the next file needs
+        // to be promotoed
+        final long nextPromotionMillis = (long) (millisPerPromotion * m_promotionCount);
+
+        // if more time has elapsed than the next promotion time then promote a
+        // file
+        if (elapsedMillis > nextPromotionMillis) {
+            final String file = m_filesWithInsignificantWork.removeFirst();
+            m_filesWithSignificantWork.addFirst(file);
+            m_promotionCount++;
+        }
+    }
+
+    /**
+     * Return true if and only if all the operations in the list are
+     * insignificant
+     */
+    private static boolean hasOnlyInsignificant(final LinkedList<Operation> pendingOps) {
+        for (final Operation op : pendingOps) {
+            if (op.isSignificant()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the name of the next file with available work
+     */
+    private String selectNewAssignment() {
+        for (final Iterator<String> it = m_filesWithSignificantWork.iterator(); it.hasNext();) {
+            final String fn = it.next();
+            if (!m_reservedFiles.contains(fn)) {
+                it.remove();
+                return fn;
+            }
+        }
+        for (final Iterator<String> it = m_filesWithInsignificantWork.iterator(); it.hasNext();) {
+            final String fn = it.next();
+            if (!m_reservedFiles.contains(fn)) {
+                it.remove();
+                return fn;
+            }
+        }
+        return null;
+    }
+
+    long getOperationsPending() {
+        return m_operationsPending;
+    }
+
+    long getEnqueuedOperations() {
+        return m_enqueuedOperations;
+    }
+
+    long getDequeuedOperations() {
+        return m_dequeuedOperations;
+    }
+
+    long getSignificantOpsEnqueued() {
+        return m_significantOpsEnqueued;
+    }
+
+    long getSignificantOpsDequeued() {
+        return m_significantOpsDequeued;
+    }
+
+    long getDequeuedItems() {
+        return m_dequeuedItems;
+    }
+
+    long getPromotionCount() {
+        return m_promotionCount;
+    }
+
+    synchronized int getFilesWithSignificantWork() {
+        return m_filesWithSignificantWork.size();
+    }
+
+    synchronized int getFilesWithInsignificantWork() {
+        return m_filesWithInsignificantWork.size();
+    }
+
+    @Override
+    public String toString() {
+        return "shard[" + m_index + "]: operationsPending=" + getOperationsPending() +
+            ", filesWithSignificantWork=" + getFilesWithSignificantWork() +
+            ", filesWithInsignificantWork=" + getFilesWithInsignificantWork() +
+            ", enqueuedOperations=" + getEnqueuedOperations() +
+            ", dequeuedOperations=" + getDequeuedOperations() +
+            ", dequeuedItems=" + getDequeuedItems() +
+            ", promotionCount=" + getPromotionCount();
+    }
+}
@@ -31,16 +31,16 @@ package org.opennms.netmgt.rrd;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,6 +93,12 @@ import org.slf4j.LoggerFactory;
  * org.opennms.rrd.queuing.modulus: (default 10000) the number of updates the
  * get enqueued between statistics output
  *
+ * org.opennms.rrd.queuing.shards: (default 0) the number of independent queues
+ * that files are hashed into. Each shard has its own lock and its own
+ * significant/insignificant ordering and aging, so the collectors and the
+ * write threads don't all contend on a single monitor. Zero means one shard
+ * per write thread.
+ *
  * org.opennms.rrd.queuing.category: (default "OpenNMS.Queued") the log category
  * to place the statistics output in
  *
@@ -158,6 +164,8 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
     private long m_writeThreadExitDelay;
 
+    private int m_shards;
+
     /**
      * <p>getWriteThreads</p>
      *
@@ -176,6 +184,24 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         m_writeThreads = writeThreads;
     }
 
+    /**
+     * <p>getShards</p>
+     *
+     * @return the configured number of shards, 0 for one per write thread
+     */
+    public int getShards() {
+        return m_shards;
+    }
+
+    /**
+     * <p>setShards</p>
+     *
+     * @param shards the number of shards, 0 for one per write thread
+     */
+    public void setShards(int shards) {
+        m_shards = shards;
+    }
+
     /**
      * <p>queueCreates</p>
      *
@@ -359,41 +385,21 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         m_writeThreadExitDelay = writeThreadExitDelay;
     }
 
-    LinkedList<String> filesWithSignificantWork = new LinkedList<String>();
-
-    LinkedList<String> filesWithInsignificantWork = new LinkedList<String>();
-
-    Map<String, LinkedList<Operation>> pendingFileOperations = new HashMap<String, LinkedList<Operation>>();
+    private volatile QueueShard[] m_queueShards;
 
-    Map<Thread, String> fileAssignments = new HashMap<Thread, String>();
+    private final AtomicInteger m_nextHomeShard = new AtomicInteger();
 
-    Set<String> reservedFiles = new HashSet<String>();
+    private final AtomicLong m_significantOpsCompleted = new AtomicLong();
 
-    private long m_totalOperationsPending = 0;
+    private final AtomicLong m_createsCompleted = new AtomicLong();
 
-    private long m_enqueuedOperations = 0;
+    private final AtomicLong m_updatesCompleted = new AtomicLong();
 
-    private long m_dequeuedOperations = 0;
+    private final AtomicLong m_errors = new AtomicLong();
 
-    private long m_significantOpsEnqueued = 0;
+    volatile int threadsRunning = 0;
 
-    private long m_significantOpsDequeued = 0;
-
-    private long m_significantOpsCompleted = 0;
-
-    private long m_dequeuedItems = 0;
-
-    private long m_createsCompleted = 0;
-
-    private long m_updatesCompleted = 0;
-
-    private long m_errors = 0;
-
-    int threadsRunning = 0;
-
-    private long m_startTime = 0;
-
-    private long m_promotionCount = 0;
+    private volatile long m_startTime = 0;
 
     long lastLap = System.currentTimeMillis();
 
@@ -488,7 +494,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             m_delegate.createFile(getData(), attributeMappings);
 
             // keep stats
-            setCreatesCompleted(getCreatesCompleted() + 1);
+            m_createsCompleted.incrementAndGet();
 
             // return the file
             return rrd;
@@ -527,8 +533,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
             }
 
             // keep stats
-            setUpdatesCompleted(getUpdatesCompleted() + 1);
-            if (getUpdatesCompleted() % m_modulus == 0) {
+            if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
                 logStats();
             }
             // return the open rrd for further processing
@@ -538,6 +543,50 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
     }
 
+    /**
+     * Represents an update to a rrd file that was handed to us as a timestamp
+     * and an array of values. The values are passed on to the delegate as-is
+     * so they never need to be formatted or parsed.
+     */
+    public class TypedUpdateOperation extends Operation {
+
+        private final long m_timestamp;
+
+        TypedUpdateOperation(String fileName, long timestamp, double[] values) {
+            super(fileName, UPDATE, values, true);
+            m_timestamp = timestamp;
+        }
+
+        public long getTimestamp() {
+            return m_timestamp;
+        }
+
+        @Override
+        Object process(Object rrd) throws Exception {
+            // open the file if we need to
+            if (rrd == null) rrd = m_delegate.openFile(getFileName());
+
+            final double[] values = (double[]) getData();
+
+            try {
+                // process the update
+                m_delegate.updateFile(rrd, "", m_timestamp, values);
+            } catch (final Throwable e) {
+                final String error = String.format("Error processing update for file %s: %s", getFileName(), RrdUtils.formatUpdate(m_timestamp, values));
+                m_log.debug(error, e);
+                throw new Exception(error, e);
+            }
+
+            // keep stats
+            if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
+                logStats();
+            }
+            // return the open rrd for further processing
+            return rrd;
+        }
+
+    }
+
     /**
      * Represents an update whose value is 0. These operations can be merged
      * together and take up less memory
@@ -564,18 +613,16 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 if (rrd == null)
                     rrd = m_delegate.openFile(getFileName());
 
-                String update = ts + ":0";
                 try {
                     // process the update
-                    m_delegate.updateFile(rrd, "", update);
+                    m_delegate.updateFile(rrd, "", ts, new double[] { 0.0 });
                 } catch (Throwable e) {
-                    throw new Exception("Error processing update " + i + " for file " + getFileName() + ": " + update, e);
+                    throw new Exception("Error processing update " + i + " for file " + getFileName() + ": " + ts + ":0", e);
                 }
                 ts += getInterval();
 
                 // keep stats
-                setUpdatesCompleted(getUpdatesCompleted() + 1);
-                if (getUpdatesCompleted() % m_modulus == 0) {
+                if (m_updatesCompleted.incrementAndGet() % m_modulus == 0) {
                     logStats();
                 }
             }
@@ -681,11 +728,29 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         return new UpdateOperation(fileName, update);
     }
 
+    /**
+     * <p>makeUpdateOperation</p>
+     *
+     * @param fileName a {@link java.lang.String} object.
+     * @param owner a {@link java.lang.String} object.
+     * @param timestamp the time of the update, in seconds since the epoch
+     * @param values the values of the update, in datasource order
+     * @return a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
+     */
+    public Operation makeUpdateOperation(String fileName, String owner, long timestamp, double[] values) {
+        if (values.length == 1 && values[0] == 0.0) {
+            if (timestamp == 0)
+                m_log.debug("ZERO ERROR: created a zero update with ts=0 for file: {}", fileName);
+
+            return new ZeroUpdateOperation(fileName, timestamp);
+        }
+        // the operation outlives this call, so don't hold on to the caller's array
+        return new TypedUpdateOperation(fileName, timestamp, values.clone());
+    }
+
     // 
     // Queue management functions.
     //
-    // TODO: Put this all in a class of its own. This is really ugly.
-    //
 
     /**
      * Add an operation to the queue.
@@ -693,34 +758,25 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @param op a {@link org.opennms.netmgt.rrd.QueuingRrdStrategy.Operation} object.
      */
     public void addOperation(Operation op) {
-        synchronized (this) {
-            if (queueIsFull()) {
-                m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
-            }
-            
-            if (op.isSignificant() && sigQueueIsFull()) {
-                m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
-            }
-            
-            if (!op.isSignificant() && inSigQueueIsFull()) {
-                m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
-                return;
-            }
-            
-            storeAssignment(op);
-
-            setTotalOperationsPending(getTotalOperationsPending() + 1);
-            setEnqueuedOperations(getEnqueuedOperations() + 1);
-            if (op.isSignificant())
-                setSignificantOpsEnqueued(getSignificantOpsEnqueued() + 1);
-            notifyAll();
-            ensureThreadsStarted();
+        if (queueIsFull()) {
+            m_log.error("RRD Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
+        }
+
+        if (op.isSignificant() && sigQueueIsFull()) {
+            m_log.error("RRD Data Significant Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
+        }
+
+        if (!op.isSignificant() && inSigQueueIsFull()) {
+            m_log.error("RRD Insignificant Data Queue is Full!! Discarding operation for file {}", op.getFileName());
+            return;
         }
+
+        getShard(op.getFileName()).add(op);
+        ensureThreadsStarted();
     }
 
-    
     private boolean queueIsFull() {
         if (m_queueHighWaterMark <= 0)
             return false;
@@ -743,198 +799,96 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
     }
 
     /**
-     * Ensure that we have threads started to process the queue.
+     * The shards are created the first time they are needed so that all of
+     * the configuration setters have been called by then.
      */
-    public synchronized void ensureThreadsStarted() {
-        if (threadsRunning < m_writeThreads) {
-            threadsRunning++;
-            new Thread(this, this.getClass().getSimpleName() + "-" + threadsRunning).start();
-        }
-    }
-
-    /**
-     * Get the operations for the next file that should be worked on.
-     *
-     * @return a linkedList of operations to be processed all for the same file.
-     */
-    public LinkedList<Operation> getNext() {
-        LinkedList<Operation> ops = null;
-        synchronized (this) {
-
-            // turn in our previous assignment
-            completeAssignment();
-
-            String newAssignment;
-            // wait until there is work to do
-            while ((newAssignment = selectNewAssignment()) == null) {
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                }
-            }
-
-            // initialize start time for stats
-            if (getStartTime() == 0)
-                setStartTime(System.currentTimeMillis());
-
-            // reserve the assignment and take work items
-            ops = takeAssignment(newAssignment);
-
-            // keep stats
-            if (ops != null) {
-                for(Operation op : ops) {
-                    setTotalOperationsPending(getTotalOperationsPending()-op.getCount());
-                    setDequeuedOperations(getDequeuedOperations() + op.getCount());
-                    if (op.isSignificant()) {
-                    	setSignificantOpsDequeued(getSignificantOpsDequeued() + op.getCount());
+    QueueShard[] getQueueShards() {
+        QueueShard[] shards = m_queueShards;
+        if (shards == null) {
+            synchronized (this) {
+                shards = m_queueShards;
+                if (shards == null) {
+                    final int count = m_shards > 0 ? m_shards : Math.max(m_writeThreads, 1);
+                    shards = new QueueShard[count];
+                    for (int i = 0; i < count; i++) {
+                        shards[i] = new QueueShard(i, m_prioritizeSignificantUpdates, m_maxInsigUpdateSeconds);
                     }
+                    m_queueShards = shards;
                 }
-                setDequeuedItems(getDequeuedItems() + 1);
             }
         }
-
-        return ops;
-
+        return shards;
     }
 
-    /**
-     * We need to track which files are being processed by which threads so that
-     * we don't try to process updates for the same file on more than one
-     * thread.
-     */
-    private synchronized void storeAssignment(Operation op) {
-        // look and see if there a pending ops list for this file
-        LinkedList<Operation> pendingOperations = pendingFileOperations.get(op.getFileName());
-
-        // if not then we create an ops list for the file and add the file to
-        // the work items list
-        if (pendingOperations == null) {
-            pendingOperations = new LinkedList<Operation>();
-            pendingFileOperations.put(op.getFileName(), pendingOperations);
-
-            // add the file to the correct list based on what type of work we
-            // are adding.  (if we aren't prioritizing then every file is counted as
-            // signficant
-            if (!m_prioritizeSignificantUpdates || op.isSignificant())
-                filesWithSignificantWork.addLast(op.getFileName());
-            else
-                filesWithInsignificantWork.addLast(op.getFileName());
-        } else if (m_prioritizeSignificantUpdates && op.isSignificant() && hasOnlyInsignificant(pendingOperations)) {
-            // only do this when we are prioritizing as this bumps files from inSig
-            // up to insig
-            // promote the file to the significant list if this is the first
-            // significant
-            filesWithSignificantWork.addLast(op.getFileName());
-        }
-
-        promoteAgedFiles();
-
-        op.addToPendingList(pendingOperations);
+    private QueueShard getShard(final String fileName) {
+        final QueueShard[] shards = getQueueShards();
+        // spread the hash bits since file names in the same directory share long prefixes
+        int hash = fileName.hashCode();
+        hash ^= (hash >>> 16);
+        return shards[(hash & 0x7fffffff) % shards.length];
     }
 
     /**
-     * Ensure that files with insignificant changes are getting promoted if
-     * necessary
-     * 
+     * Ensure that we have threads started to process the queue.
      */
-    private synchronized void promoteAgedFiles() {
-        
-        // no need to do this is we aren't prioritizing
-        if (!m_prioritizeSignificantUpdates) return;
-
-        // the num seconds to update files is 0 then use unfair prioritization
-        if (m_maxInsigUpdateSeconds == 0 || filesWithInsignificantWork.isEmpty())
+    public void ensureThreadsStarted() {
+        if (threadsRunning >= m_writeThreads) {
             return;
-
-        // calculate the elapsed time we first queued updates
-        long now = System.currentTimeMillis();
-        long elapsedMillis = Math.max(now - getStartTime(), 1);
-
-        // calculate the milliseconds between promotions necessary to age
-        // insignificant files into
-        // the significant queue
-        double millisPerPromotion = ((m_maxInsigUpdateSeconds * 1000.0) / filesWithInsignificantWork.size());
-
-        // calculate the number of millis since start until the next file needs
-        // to be promotoed
-        long nextPromotionMillis = (long) (millisPerPromotion * getPromotionCount());
-
-        // if more time has elapsed than the next promotion time then promote a
-        // file
-        if (elapsedMillis > nextPromotionMillis) {
-            String file = filesWithInsignificantWork.removeFirst();
-            filesWithSignificantWork.addFirst(file);
-            setPromotionCount(getPromotionCount() + 1);
         }
-
-    }
-    
-    /** {@inheritDoc} */
-    @Override
-    public synchronized void promoteEnqueuedFiles(Collection<String> rrdFiles) {
-        filesWithSignificantWork.addAll(0, rrdFiles);
-        m_delegate.promoteEnqueuedFiles(rrdFiles);
-    }
-
-    /**
-     * Return true if and only if all the operations in the list are
-     * insignificant
-     */
-    private boolean hasOnlyInsignificant(LinkedList<Operation> pendingOps) {
-        for(Operation op : pendingOps) {
-            if (op.isSignificant()) {
-                return false;
+        synchronized (this) {
+            if (threadsRunning < m_writeThreads) {
+                threadsRunning++;
+                new Thread(this, this.getClass().getSimpleName() + "-" + threadsRunning).start();
             }
         }
-        return true;
     }
 
     /**
-     * register the file that the currentThread is be working on. This enables
-     * us to ensure that another thread doesn't try to work on operations for
-     * that file.  Note: this is not synchronized as it is called from getNext which
-     * is thread safe
-     */
-    private LinkedList<Operation> takeAssignment(String newAssignment) {
-
-        // make the file as reserved by the current thread
-        fileAssignments.put(Thread.currentThread(), newAssignment);
-        reservedFiles.add(newAssignment);
-
-        // get the assignments work list and return it
-        return pendingFileOperations.remove(newAssignment);
-    }
-
-    /**
-     * Return the name of the next file with available work
+     * Get the operations for the next file that should be worked on. The
+     * thread's home shard is tried first, then the others so that no shard is
+     * left waiting while a thread is idle. The file is reserved until
+     * {@link QueueShard#complete(String)} is called.
+     *
+     * @return a linkedList of operations to be processed all for the same
+     *         file, or null if no file can be worked on right now.
      */
-    private String selectNewAssignment() {
-        for (Iterator<String> it = filesWithSignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
-            }
-        }
-        for (Iterator<String> it = filesWithInsignificantWork.iterator(); it.hasNext();) {
-            String fn = it.next();
-            if (!reservedFiles.contains(fn)) {
-                it.remove();
-                return fn;
+    LinkedList<Operation> getNext(final int homeShard) {
+        final QueueShard[] shards = getQueueShards();
+        for (int i = 0; i < shards.length; i++) {
+            final LinkedList<Operation> ops = shards[(homeShard + i) % shards.length].take();
+            if (ops != null) {
+                // initialize start time for stats
+                if (m_startTime == 0) {
+                    m_startTime = System.currentTimeMillis();
+                }
+                return ops;
             }
         }
         return null;
     }
 
-    /**
-     * Record that fact that the current thread has finished process operations
-     * for its current assignment
-     */
-    private synchronized void completeAssignment() {
-        // remove any existing reservation of the current thread
-        String previousAssignment = fileAssignments.remove(Thread.currentThread());
-        if (previousAssignment != null)
-            reservedFiles.remove(previousAssignment);
+    /** {@inheritDoc} */
+    @Override
+    public void promoteEnqueuedFiles(Collection<String> rrdFiles) {
+        final QueueShard[] shards = getQueueShards();
+        if (shards.length == 1) {
+            shards[0].promote(rrdFiles);
+        } else {
+            final Map<QueueShard, List<String>> filesByShard = new HashMap<QueueShard, List<String>>();
+            for (final String rrdFile : rrdFiles) {
+                final QueueShard shard = getShard(rrdFile);
+                List<String> files = filesByShard.get(shard);
+                if (files == null) {
+                    files = new ArrayList<String>();
+                    filesByShard.put(shard, files);
+                }
+                files.add(rrdFile);
+            }
+            for (final Map.Entry<QueueShard, List<String>> entry : filesByShard.entrySet()) {
+                entry.getKey().promote(entry.getValue());
+            }
+        }
+        m_delegate.promoteEnqueuedFiles(rrdFiles);
     }
 
     /**
@@ -1052,6 +1006,12 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         addOperation(makeUpdateOperation((String) rrdFile, owner, data));
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void updateFile(String rrdFile, String owner, long timestamp, double[] values) throws Exception {
+        addOperation(makeUpdateOperation(rrdFile, owner, timestamp, values));
+    }
+
     /** {@inheritDoc} */
     @Override
     public Double fetchLastValue(String rrdFile, String ds, int interval) throws NumberFormatException, RrdException {
@@ -1094,6 +1054,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      */
     @Override
     public void run() {
+        final int homeShard = m_nextHomeShard.getAndIncrement() % getQueueShards().length;
         try {
 
             long waitStart = -1L;
@@ -1102,7 +1063,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 if (getTotalOperationsPending() > 0) {
                     delayed = 0;
                     waitStart = -1L;
-                    processPendingOperations();
+                    processPendingOperations(homeShard);
                 } else {
                     if (waitStart < 0) {
                         waitStart = System.currentTimeMillis();
@@ -1119,7 +1080,6 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         } finally {
             synchronized (this) {
                 threadsRunning--;
-                completeAssignment();
             }
         }
     }
@@ -1128,19 +1088,23 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * Actually process the operations be calling the underlying delegate
      * strategy
      */
-    private void processPendingOperations() {
+    private void processPendingOperations(final int homeShard) {
+        final LinkedList<Operation> ops = getNext(homeShard);
+        if (ops == null) {
+            // everything that is pending is reserved by other threads
+            getQueueShards()[homeShard].awaitWork(m_writeThreadSleepTime);
+            return;
+        }
+
         Object rrd = null;
-        String fileName = null;
+        String fileName = ops.getFirst().getFileName();
 
         try {
-            LinkedList<Operation> ops = getNext();
-            if (ops == null)
-                return;
             // update stats correctly we update them even if an exception occurs
             // while we are processing
             for(Operation op : ops) {
                 if (op.isSignificant()) {
-                	setSignificantOpsCompleted(getSignificantOpsCompleted() + 1);
+                    m_significantOpsCompleted.incrementAndGet();
                 }
 
             }
@@ -1150,11 +1114,12 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
                 rrd = op.process(rrd);
             }
         } catch (Throwable e) {
-            setErrors(getErrors() + 1);
+            m_errors.incrementAndGet();
             logLapTime("Error updating file " + fileName + ": " + e.getMessage());
             m_log.debug("Error updating file {}: {}", fileName, e.getMessage(), e);
         } finally {
             processClose(rrd);
+            getShard(fileName).complete(fileName);
         }
     }
 
@@ -1177,7 +1142,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
      * @return a {@link java.lang.String} object.
      */
     @Override
-    public String getStats() {
+    public synchronized String getStats() {
         long now = System.currentTimeMillis();
 
         long currentElapsedMillis = Math.max(now - lastStatsTime, 1);
@@ -1210,8 +1175,8 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 
         String stats = "\nQS:\t" + "totalOperationsPending=" + getTotalOperationsPending() + 
         ", significantOpsPending=" + (getSignificantOpsEnqueued() - getSignificantOpsCompleted()) + 
-        ", filesWithSignificantWork=" + filesWithSignificantWork.size() + 
-        ", filesWithInsignificantWork=" + filesWithInsignificantWork.size()
+        ", filesWithSignificantWork=" + getFilesWithSignificantWork() + 
+        ", filesWithInsignificantWork=" + getFilesWithInsignificantWork()
 
         + "\nQS:\t" + ", createsCompleted=" + getCreatesCompleted() + 
         ", updatesCompleted=" + getUpdatesCompleted() + 
@@ -1241,7 +1206,19 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
         lastSignificantCompleted = getSignificantOpsCompleted();
         lastOpsPending = getTotalOperationsPending();
 
-        return stats;
+        final StringBuilder shardStats = new StringBuilder(stats);
+        for (final QueueShard shard : getQueueShards()) {
+            shardStats.append("\nQS:\t").append(shard);
+        }
+        final String delegateStats = m_delegate.getStats();
+        if (delegateStats != null && delegateStats.length() > 0) {
+            shardStats.append("\nQS:\t").append(delegateStats);
+        }
+        final RrdLastValueCache lastValueCache = RrdLastValueCache.getInstance();
+        if (lastValueCache != null) {
+            shardStats.append("\nQS:\t").append(lastValueCache);
+        }
+        return shardStats.toString();
     }
 
     /**
@@ -1325,16 +1302,74 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getTotalOperationsPending() {
-		return m_totalOperationsPending;
+		long total = 0;
+		for (final QueueShard shard : getQueueShards()) {
+			total += shard.getOperationsPending();
+		}
+		return total;
 	}
 
 	/**
-	 * <p>setTotalOperationsPending</p>
+	 * <p>getFilesWithSignificantWork</p>
 	 *
-	 * @param totalOperationsPending a long.
+	 * @return a long.
 	 */
-	public void setTotalOperationsPending(long totalOperationsPending) {
-		m_totalOperationsPending = totalOperationsPending;
+	public long getFilesWithSignificantWork() {
+		long total = 0;
+		for (final QueueShard shard : getQueueShards()) {
+			total += shard.getFilesWithSignificantWork();
+		}
+		return total;
+	}
+
+	/**
+	 * <p>getFilesWithInsignificantWork</p>
+	 *
+	 * @return a long.
+	 */
+	public long getFilesWithInsignificantWork() {
+		long total = 0;
+		for (final QueueShard shard : getQueueShards()) {
+			total += shard.getFilesWithInsignificantWork();
+		}
+		return total;
+	}
+
+	/**
+	 * <p>getShardCount</p>
+	 *
+	 * @return the number of shards the queue is split into.
+	 */
+	public int getShardCount() {
+		return getQueueShards().length;
+	}
+
+	/**
+	 * <p>getShardOperationsPending</p>
+	 *
+	 * @return the number of operations pending in each shard.
+	 */
+	public long[] getShardOperationsPending() {
+		final QueueShard[] shards = getQueueShards();
+		final long[] pending = new long[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			pending[i] = shards[i].getOperationsPending();
+		}
+		return pending;
+	}
+
+	/**
+	 * <p>getShardDequeuedOperations</p>
+	 *
+	 * @return the number of operations dequeued from each shard.
+	 */
+	public long[] getShardDequeuedOperations() {
+		final QueueShard[] shards = getQueueShards();
+		final long[] dequeued = new long[shards.length];
+		for (int i = 0; i < shards.length; i++) {
+			dequeued[i] = shards[i].getDequeuedOperations();
+		}
+		return dequeued;
 	}
 
 	/**
@@ -1343,7 +1378,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getCreatesCompleted() {
-		return m_createsCompleted;
+		return m_createsCompleted.get();
 	}
 
 	/**
@@ -1352,7 +1387,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param createsCompleted a long.
 	 */
 	public void setCreatesCompleted(long createsCompleted) {
-		m_createsCompleted = createsCompleted;
+		m_createsCompleted.set(createsCompleted);
 	}
 
 	/**
@@ -1361,7 +1396,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getUpdatesCompleted() {
-		return m_updatesCompleted;
+		return m_updatesCompleted.get();
 	}
 
 	/**
@@ -1370,7 +1405,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param updatesCompleted a long.
 	 */
 	public void setUpdatesCompleted(long updatesCompleted) {
-		m_updatesCompleted = updatesCompleted;
+		m_updatesCompleted.set(updatesCompleted);
 	}
 
 	/**
@@ -1379,7 +1414,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getErrors() {
-		return m_errors;
+		return m_errors.get();
 	}
 
 	/**
@@ -1388,7 +1423,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param errors a long.
 	 */
 	public void setErrors(long errors) {
-		m_errors = errors;
+		m_errors.set(errors);
 	}
 
 	/**
@@ -1397,16 +1432,11 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getPromotionCount() {
-		return m_promotionCount;
-	}
-
-	/**
-	 * <p>setPromotionCount</p>
-	 *
-	 * @param promotionCount a long.
-	 */
-	public void setPromotionCount(long promotionCount) {
-		m_promotionCount = promotionCount;
+		long total = 0;
+		for (final QueueShard shard : getQueueShards()) {
+			total += shard.getPromotionCount();
+		}
+		return total;
 	}
 
 	/**
@@ -1415,16 +1445,11 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsEnqueued() {
-		return m_significantOpsEnqueued;
-	}
-
-	/**
-	 * <p>setSignificantOpsEnqueued</p>
-	 *
-	 * @param significantOpsEnqueued a long.
-	 */
-	public void setSignificantOpsEnqueued(long significantOpsEnqueued) {
-		m_significantOpsEnqueued = significantOpsEnqueued;
+		long total = 0;
+		for (final QueueShard shard : getQueueShards()) {
+			total += shard.getSignificantOpsEnqueued();
+		}
+		return total;
 	}
 
 	/**
@@ -1433,16 +1458,11 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsDequeued() {
-		return m_significantOpsDequeued;
-	}
-
-	/**
-	 * <p>setSignificantOpsDequeued</p>
-	 *
-	 * @param significantOpsDequeued a long.
-	 */
-	public void setSignificantOpsDequeued(long significantOpsDequeued) {
-		m_significantOpsDequeued = significantOpsDequeued;
+		long total = 0;
+		for (final QueueShard shard : getQueueShards()) {
+			total += shard.getSignificantOpsDequeued();
+		}
+		return total;
 	}
 
 	/**
@@ -1451,16 +1471,11 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getEnqueuedOperations() {
-		return m_enqueuedOperations;
-	}
-
-	/**
-	 * <p>setEnqueuedOperations</p>
-	 *
-	 * @param enqueuedOperations a long.
-	 */
-	public void setEnqueuedOperations(long enqueuedOperations) {
-		m_enqueuedOperations = enqueuedOperations;
+		long total = 0;
+		for (final QueueShard shard : getQueueShards()) {
+			total += shard.getEnqueuedOperations();
+		}
+		return total;
 	}
 
 	/**
@@ -1469,16 +1484,11 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getDequeuedOperations() {
-		return m_dequeuedOperations;
-	}
-
-	/**
-	 * <p>setDequeuedOperations</p>
-	 *
-	 * @param dequeuedOperations a long.
-	 */
-	public void setDequeuedOperations(long dequeuedOperations) {
-		m_dequeuedOperations = dequeuedOperations;
+		long total = 0;
+		for (final QueueShard shard : getQueueShards()) {
+			total += shard.getDequeuedOperations();
+		}
+		return total;
 	}
 
 	/**
@@ -1487,16 +1497,11 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getDequeuedItems() {
-		return m_dequeuedItems;
-	}
-
-	/**
-	 * <p>setDequeuedItems</p>
-	 *
-	 * @param dequeuedItems a long.
-	 */
-	public void setDequeuedItems(long dequeuedItems) {
-		m_dequeuedItems = dequeuedItems;
+		long total = 0;
+		for (final QueueShard shard : getQueueShards()) {
+			total += shard.getDequeuedItems();
+		}
+		return total;
 	}
 
 	/**
@@ -1505,7 +1510,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @return a long.
 	 */
 	public long getSignificantOpsCompleted() {
-		return m_significantOpsCompleted;
+		return m_significantOpsCompleted.get();
 	}
 
 	/**
@@ -1514,7 +1519,7 @@ public class QueuingRrdStrategy implements RrdStrategy<QueuingRrdStrategy.Create
 	 * @param significantOpsCompleted a long.
 	 */
 	public void setSignificantOpsCompleted(long significantOpsCompleted) {
-		m_significantOpsCompleted = significantOpsCompleted;
+		m_significantOpsCompleted.set(significantOpsCompleted);
 	}
 
 	/**
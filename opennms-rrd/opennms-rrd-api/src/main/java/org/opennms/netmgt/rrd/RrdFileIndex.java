@@ -0,0 +1,726 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An index of the files below an RRD directory, so that finding resources
+ * and their attributes does not take a directory listing for every node,
+ * interface and resource in the tree.
+ *
+ * <p>The index is held in memory and persisted as a journal in the RRD
+ * directory itself: one line per file created (<code>+path</code>) or
+ * directory deleted (<code>-path</code>), relative to the RRD directory. The
+ * persisters append to it through {@link #fileCreated(File)} as they create
+ * files, whoever deletes resource directories at runtime does so through
+ * {@link #directoryDeleted(File)}, and every process using the index picks
+ * up the lines the others have appended. {@link #rebuild()}, also available
+ * by running this class, replaces the journal with a fresh walk of the
+ * directory, which drops entries for files that were removed by other
+ * means.</p>
+ *
+ * <p>The index is used when the <code>org.opennms.rrd.index</code> system
+ * property is true. The static helpers fall back to the filesystem when it
+ * is not, while the index is still being loaded, or when a file lies
+ * outside of every indexed directory.</p>
+ */
+public class RrdFileIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(RrdFileIndex.class);
+
+    /** System property that enables the index. */
+    public static final String INDEX_PROPERTY = "org.opennms.rrd.index";
+
+    /** Name of the journal file kept in the root of the indexed directory. */
+    public static final String JOURNAL_FILE_NAME = ".rrd-index";
+
+    private static final String HEADER_PREFIX = "#rrd-index ";
+    private static final long REFRESH_INTERVAL = 1000L;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final Map<File, RrdFileIndex> s_indexes = new HashMap<File, RrdFileIndex>();
+    private static volatile RrdFileIndex[] s_active = new RrdFileIndex[0];
+
+    private static final class Dir {
+        private final Map<String, Dir> m_dirs = new HashMap<String, Dir>(4);
+        private final Set<String> m_files = new HashSet<String>(8);
+    }
+
+    private final File m_root;
+    private final String m_rootPath;
+    private final File m_journal;
+    private final File m_lockFile;
+    private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+    private final Map<String, String> m_names = new HashMap<String, String>();
+    private final CountDownLatch m_loaded = new CountDownLatch(1);
+    private final Set<String> m_pending = new LinkedHashSet<String>();
+
+    private Dir m_tree = new Dir();
+    private String m_generation;
+    private long m_offset;
+    private long m_journalLength = -1;
+    private long m_journalModified = -1;
+    private volatile long m_lastRefresh;
+    private volatile boolean m_ready;
+
+    RrdFileIndex(final File root) {
+        m_root = root.getAbsoluteFile();
+        final String path = m_root.getPath();
+        m_rootPath = path.endsWith(File.separator) ? path : path + File.separator;
+        m_journal = new File(m_root, JOURNAL_FILE_NAME);
+        m_lockFile = new File(m_root, JOURNAL_FILE_NAME + ".lock");
+    }
+
+    /**
+     * <p>isEnabled</p>
+     *
+     * @return true if resources should be looked up in the index
+     */
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(INDEX_PROPERTY);
+    }
+
+    /**
+     * Returns the index of the given directory. The first call for a
+     * directory starts reading its journal, or building it if there is none
+     * yet, in the background; until that is done the static helpers answer
+     * from the filesystem.
+     *
+     * @param root the RRD directory
+     * @return the index of that directory
+     */
+    public static RrdFileIndex getInstance(final File root) {
+        final File key = root.getAbsoluteFile();
+        final RrdFileIndex index;
+        synchronized (s_indexes) {
+            final RrdFileIndex existing = s_indexes.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            index = new RrdFileIndex(key);
+            s_indexes.put(key, index);
+            s_active = s_indexes.values().toArray(new RrdFileIndex[s_indexes.size()]);
+        }
+
+        final Thread loader = new Thread(RrdFileIndex.class.getSimpleName() + "-" + key.getName()) {
+            @Override
+            public void run() {
+                index.load();
+            }
+        };
+        loader.setDaemon(true);
+        loader.start();
+        return index;
+    }
+
+    /**
+     * Returns the index covering the file if it is ready to answer lookups.
+     */
+    private static RrdFileIndex findLoaded(final File file) {
+        final RrdFileIndex index = find(file);
+        return index == null || !index.m_ready ? null : index;
+    }
+
+    private static RrdFileIndex find(final File file) {
+        if (!isEnabled()) {
+            return null;
+        }
+        RrdFileIndex[] active = s_active;
+        if (active.length == 0) {
+            final String base = System.getProperty("rrd.base.dir");
+            if (base == null) {
+                return null;
+            }
+            active = new RrdFileIndex[] { getInstance(new File(base)) };
+        }
+        final String path = file.getAbsolutePath();
+        for (final RrdFileIndex index : active) {
+            if (index.covers(path)) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Equivalent of {@link File#isDirectory()}, answered from the index when
+     * the file is indexed. Directories count as existing as long as a file
+     * has been recorded below them.
+     *
+     * @param file a {@link java.io.File} object.
+     * @return true if the file is a directory
+     */
+    public static boolean isDirectory(final File file) {
+        final RrdFileIndex index = findLoaded(file);
+        return index == null ? file.isDirectory() : index.lookup(file, true);
+    }
+
+    /**
+     * Equivalent of {@link File#exists()}, answered from the index when the
+     * file is indexed.
+     *
+     * @param file a {@link java.io.File} object.
+     * @return true if the file or directory exists
+     */
+    public static boolean exists(final File file) {
+        final RrdFileIndex index = findLoaded(file);
+        return index == null ? file.exists() : index.lookup(file, false);
+    }
+
+    /**
+     * Equivalent of {@link File#listFiles()}, answered from the index when
+     * the directory is indexed.
+     *
+     * @param dir a {@link java.io.File} object.
+     * @return the files in the directory, or null if it does not exist
+     */
+    public static File[] listFiles(final File dir) {
+        final RrdFileIndex index = findLoaded(dir);
+        return index == null ? dir.listFiles() : index.list(dir, null, null);
+    }
+
+    /**
+     * Equivalent of {@link File#listFiles(FileFilter)}, answered from the
+     * index when the directory is indexed.
+     *
+     * @param dir a {@link java.io.File} object.
+     * @param filter a {@link java.io.FileFilter} object.
+     * @return the matching files in the directory, or null if it does not exist
+     */
+    public static File[] listFiles(final File dir, final FileFilter filter) {
+        final RrdFileIndex index = findLoaded(dir);
+        return index == null ? dir.listFiles(filter) : index.list(dir, filter, null);
+    }
+
+    /**
+     * Equivalent of {@link File#listFiles(FilenameFilter)}, answered from the
+     * index when the directory is indexed.
+     *
+     * @param dir a {@link java.io.File} object.
+     * @param filter a {@link java.io.FilenameFilter} object.
+     * @return the matching files in the directory, or null if it does not exist
+     */
+    public static File[] listFiles(final File dir, final FilenameFilter filter) {
+        final RrdFileIndex index = findLoaded(dir);
+        return index == null ? dir.listFiles(filter) : index.list(dir, null, filter);
+    }
+
+    /**
+     * Records a file that has just been created. Does nothing when the file
+     * is not in an indexed directory.
+     *
+     * @param file a {@link java.io.File} object.
+     */
+    public static void fileCreated(final File file) {
+        final RrdFileIndex index = find(file);
+        if (index != null) {
+            index.record('+', file);
+        }
+    }
+
+    /**
+     * Records a directory that has just been deleted, removing it and
+     * everything below it from the index. Does nothing when the directory
+     * is not in an indexed directory.
+     *
+     * @param dir a {@link java.io.File} object.
+     */
+    public static void directoryDeleted(final File dir) {
+        final RrdFileIndex index = find(dir);
+        if (index != null) {
+            index.record('-', dir);
+        }
+    }
+
+    /**
+     * Records a file that has just been written, which may or may not have
+     * existed before. Only files the index does not know yet are appended
+     * to the journal, so this is cheap to call on every update.
+     *
+     * @param file a {@link java.io.File} object.
+     */
+    public static void fileWritten(final File file) {
+        final RrdFileIndex index = find(file);
+        if (index != null && !(index.m_ready && index.lookup(file, false))) {
+            index.record('+', file);
+        }
+    }
+
+    /**
+     * Waits for the index to be loaded.
+     *
+     * @return true if the index is ready, false if loading it failed or
+     *         did not finish in time
+     */
+    boolean awaitLoaded(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return m_loaded.await(timeout, unit) && m_ready;
+    }
+
+    boolean covers(final String absolutePath) {
+        return absolutePath.startsWith(m_rootPath) || absolutePath.equals(m_root.getPath());
+    }
+
+    /**
+     * Returns the path of the file relative to the index root, with '/' as
+     * separator, or null if the file is the root itself.
+     */
+    private String relativePath(final File file) {
+        final String path = file.getAbsolutePath();
+        if (path.length() <= m_rootPath.length()) {
+            return null;
+        }
+        final String relative = path.substring(m_rootPath.length());
+        return File.separatorChar == '/' ? relative : relative.replace(File.separatorChar, '/');
+    }
+
+    private Dir findDir(final String relativePath) {
+        Dir dir = m_tree;
+        if (relativePath == null) {
+            return dir;
+        }
+        int start = 0;
+        while (dir != null && start < relativePath.length()) {
+            int end = relativePath.indexOf('/', start);
+            if (end < 0) {
+                end = relativePath.length();
+            }
+            dir = dir.m_dirs.get(relativePath.substring(start, end));
+            start = end + 1;
+        }
+        return dir;
+    }
+
+    boolean lookup(final File file, final boolean directoryOnly) {
+        refresh();
+        final String relative = relativePath(file);
+        m_lock.readLock().lock();
+        try {
+            if (relative == null) {
+                return true;
+            }
+            final int slash = relative.lastIndexOf('/');
+            final Dir parent = slash < 0 ? m_tree : findDir(relative.substring(0, slash));
+            if (parent == null) {
+                return false;
+            }
+            final String name = relative.substring(slash + 1);
+            return parent.m_dirs.containsKey(name) || (!directoryOnly && parent.m_files.contains(name));
+        } finally {
+            m_lock.readLock().unlock();
+        }
+    }
+
+    File[] list(final File dir, final FileFilter fileFilter, final FilenameFilter nameFilter) {
+        refresh();
+        final String[] names;
+        m_lock.readLock().lock();
+        try {
+            final Dir node = findDir(relativePath(dir));
+            if (node == null) {
+                return null;
+            }
+            names = new String[node.m_dirs.size() + node.m_files.size()];
+            int i = 0;
+            for (final String name : node.m_dirs.keySet()) {
+                names[i++] = name;
+            }
+            for (final String name : node.m_files) {
+                names[i++] = name;
+            }
+        } finally {
+            m_lock.readLock().unlock();
+        }
+
+        // the filters may well come back to the index, so run them unlocked
+        final List<File> files = new ArrayList<File>(names.length);
+        for (final String name : names) {
+            if (nameFilter != null && !nameFilter.accept(dir, name)) {
+                continue;
+            }
+            final File file = new File(dir, name);
+            if (fileFilter != null && !fileFilter.accept(file)) {
+                continue;
+            }
+            files.add(file);
+        }
+        return files.toArray(new File[files.size()]);
+    }
+
+    /**
+     * Applies a journal line to the in-memory tree. Applying a line twice
+     * does no harm, so lines we wrote ourselves may safely be read back.
+     */
+    private void apply(final String line) {
+        if (line.length() < 2) {
+            return;
+        }
+        final String path = line.substring(1);
+        final int slash = path.lastIndexOf('/');
+        if (line.charAt(0) == '-') {
+            final Dir parent = slash < 0 ? m_tree : findDir(path.substring(0, slash));
+            if (parent != null) {
+                final String name = path.substring(slash + 1);
+                parent.m_dirs.remove(name);
+                parent.m_files.remove(name);
+            }
+            return;
+        } else if (line.charAt(0) != '+') {
+            return;
+        }
+        Dir dir = m_tree;
+        int start = 0;
+        while (start <= slash) {
+            final int end = path.indexOf('/', start);
+            final String segment = intern(path.substring(start, end));
+            Dir child = dir.m_dirs.get(segment);
+            if (child == null) {
+                child = new Dir();
+                dir.m_dirs.put(segment, child);
+            }
+            dir = child;
+            start = end + 1;
+        }
+        dir.m_files.add(intern(path.substring(slash + 1)));
+    }
+
+    private String intern(final String name) {
+        final String existing = m_names.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        m_names.put(name, name);
+        return name;
+    }
+
+    /**
+     * Records a created file ('+') or a deleted directory ('-'). While the
+     * index is loading the line is kept back and written once the journal is
+     * in place, so that changes made during the initial walk are not lost.
+     */
+    void record(final char op, final File file) {
+        final String relative = relativePath(file);
+        if (relative == null) {
+            return;
+        }
+        final String line = op + relative;
+        synchronized (m_pending) {
+            if (!m_ready) {
+                if (m_loaded.getCount() > 0) {
+                    // keep the lines in the order they happened in
+                    m_pending.remove(line);
+                    m_pending.add(line);
+                }
+                return;
+            }
+        }
+        write(line);
+    }
+
+    private void write(final String line) {
+        try {
+            append(line);
+        } catch (final IOException e) {
+            LOG.warn("Failed to record {} in RRD index {}; run rrd-index to rebuild it", line.substring(1), m_journal, e);
+        }
+        m_lock.writeLock().lock();
+        try {
+            apply(line);
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    private synchronized void append(final String line) throws IOException {
+        final RandomAccessFile lockFile = new RandomAccessFile(m_lockFile, "rw");
+        try {
+            final FileLock lock = lockFile.getChannel().lock();
+            try {
+                if (!m_journal.exists()) {
+                    throw new IOException("journal " + m_journal + " does not exist");
+                }
+                final FileOutputStream out = new FileOutputStream(m_journal, true);
+                try {
+                    out.write((line + '\n').getBytes(UTF8));
+                } finally {
+                    out.close();
+                }
+            } finally {
+                lock.release();
+            }
+        } finally {
+            lockFile.close();
+        }
+    }
+
+    /**
+     * Reads the journal, building it first if there is none yet, then writes
+     * the files recorded meanwhile. When this fails the index stays unready
+     * and lookups keep going to the filesystem.
+     */
+    void load() {
+        boolean loaded = false;
+        try {
+            if (!m_journal.exists()) {
+                LOG.info("No RRD index in {}, building it", m_root);
+                final long start = System.currentTimeMillis();
+                final int count = rebuild();
+                LOG.info("Indexed {} files in {} in {}ms", count, m_root, System.currentTimeMillis() - start);
+            }
+            read();
+            loaded = true;
+        } catch (final IOException e) {
+            LOG.error("Failed to load RRD index {}, using the filesystem instead", m_journal, e);
+        }
+        m_lastRefresh = System.currentTimeMillis();
+        synchronized (m_pending) {
+            if (loaded) {
+                for (final String line : m_pending) {
+                    write(line);
+                }
+            }
+            m_pending.clear();
+            m_ready = loaded;
+        }
+        m_loaded.countDown();
+    }
+
+    /**
+     * Picks up what other processes have written to the journal, checking
+     * at most once a second.
+     */
+    void refresh() {
+        final long now = System.currentTimeMillis();
+        if (now - m_lastRefresh < REFRESH_INTERVAL) {
+            return;
+        }
+        m_lastRefresh = now;
+        if (m_journal.length() == m_journalLength && m_journal.lastModified() == m_journalModified) {
+            return;
+        }
+        try {
+            read();
+        } catch (final IOException e) {
+            LOG.warn("Failed to refresh RRD index {}", m_journal, e);
+        }
+    }
+
+    /**
+     * Reads the journal from where we left off, or from the start when it
+     * has been rebuilt since. A trailing partial line is left for the next
+     * read.
+     */
+    void read() throws IOException {
+        m_lock.writeLock().lock();
+        try {
+            final long length = m_journal.length();
+            final long modified = m_journal.lastModified();
+            final InputStream in = new BufferedInputStream(new FileInputStream(m_journal), 65536);
+            try {
+                final String header = readLine(in);
+                if (header == null || !header.startsWith(HEADER_PREFIX)) {
+                    throw new IOException("journal " + m_journal + " has no header");
+                }
+                long offset = header.getBytes(UTF8).length + 1;
+                if (!header.equals(m_generation)) {
+                    m_tree = new Dir();
+                    m_names.clear();
+                    m_generation = header;
+                    m_offset = offset;
+                } else {
+                    long skip = m_offset - offset;
+                    while (skip > 0) {
+                        final long skipped = in.skip(skip);
+                        if (skipped <= 0) {
+                            return;
+                        }
+                        skip -= skipped;
+                    }
+                }
+                offset = m_offset;
+
+                final byte[] buf = new byte[1024];
+                byte[] line = buf;
+                int len = 0;
+                int b;
+                while ((b = in.read()) >= 0) {
+                    if (b == '\n') {
+                        apply(new String(line, 0, len, UTF8));
+                        offset += len + 1;
+                        len = 0;
+                    } else {
+                        if (len == line.length) {
+                            final byte[] bigger = new byte[line.length * 2];
+                            System.arraycopy(line, 0, bigger, 0, len);
+                            line = bigger;
+                        }
+                        line[len++] = (byte)b;
+                    }
+                }
+                m_offset = offset;
+                m_journalLength = length;
+                m_journalModified = modified;
+            } finally {
+                in.close();
+            }
+        } finally {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    private static String readLine(final InputStream in) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) >= 0 && b != '\n') {
+            line.append((char)b);
+        }
+        return b < 0 ? null : line.toString();
+    }
+
+    /**
+     * Replaces the journal with the result of a walk of the whole directory.
+     * Lines appended by other processes while the walk was running are
+     * carried over, so nothing that is created meanwhile gets lost. Indexes
+     * already loaded reload the new journal on their next refresh.
+     *
+     * @return the number of files indexed
+     * @throws java.io.IOException if any.
+     */
+    public int rebuild() throws IOException {
+        final long startLength = m_journal.exists() ? m_journal.length() : -1;
+        final File tmp = new File(m_root, JOURNAL_FILE_NAME + ".tmp");
+        final FileOutputStream stream = new FileOutputStream(tmp);
+        final Writer out = new BufferedWriter(new OutputStreamWriter(stream, UTF8), 65536);
+        boolean renamed = false;
+        try {
+            out.write(HEADER_PREFIX + System.currentTimeMillis() + '\n');
+            final int count = walk(m_root, "", out);
+            out.flush();
+
+            final RandomAccessFile lockFile = new RandomAccessFile(m_lockFile, "rw");
+            try {
+                final FileLock lock = lockFile.getChannel().lock();
+                try {
+                    if (startLength >= 0 && m_journal.exists()) {
+                        final FileChannel from = new FileInputStream(m_journal).getChannel();
+                        try {
+                            final long tail = from.size() - startLength;
+                            if (tail > 0) {
+                                from.transferTo(startLength, tail, stream.getChannel());
+                            }
+                        } finally {
+                            from.close();
+                        }
+                    }
+                    out.close();
+                    renamed = tmp.renameTo(m_journal) || (m_journal.delete() && tmp.renameTo(m_journal));
+                    if (!renamed) {
+                        throw new IOException("failed to rename " + tmp + " to " + m_journal);
+                    }
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockFile.close();
+            }
+            return count;
+        } finally {
+            if (!renamed) {
+                out.close();
+                tmp.delete();
+            }
+        }
+    }
+
+    private int walk(final File dir, final String prefix, final Writer out) throws IOException {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int count = 0;
+        for (final File file : files) {
+            final String name = file.getName();
+            if (file.isDirectory()) {
+                count += walk(file, prefix + name + '/', out);
+            } else if (prefix.length() > 0 || !name.startsWith(JOURNAL_FILE_NAME)) {
+                out.write('+');
+                out.write(prefix);
+                out.write(name);
+                out.write('\n');
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Rebuilds the index of the RRD directory given as argument, or of
+     * <code>rrd.base.dir</code> when there is none.
+     *
+     * @param args the command line
+     * @throws java.io.IOException if any.
+     */
+    public static void main(final String[] args) throws IOException {
+        final String dir = args.length > 0 ? args[0] : System.getProperty("rrd.base.dir");
+        if (dir == null) {
+            System.err.println("usage: rrd-index <rrd directory>");
+            System.exit(1);
+        }
+        final long start = System.currentTimeMillis();
+        final int count = new RrdFileIndex(new File(dir)).rebuild();
+        System.out.println("Indexed " + count + " files in " + dir + " in " + (System.currentTimeMillis() - start) + "ms");
+    }
+}
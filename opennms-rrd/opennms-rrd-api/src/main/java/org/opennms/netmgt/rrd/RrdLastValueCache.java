@@ -0,0 +1,409 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the latest sample written to each RRD file in memory so that
+ * last-value fetches do not have to read the file.
+ *
+ * Writers publish each update with {@link #update(String, List, long, double[])}
+ * and readers call {@link #getLastValue(String, String, long)} or
+ * {@link #getLastValueInRange(String, String, long, long)} before going to
+ * disk; a null result means the value has to be fetched from the file.  The
+ * values are those the RRD stores for the sample: COUNTER data sources are
+ * turned into rates against the previous sample, and values outside of the
+ * data source's bounds or after a missed heartbeat are unknown.  Unknown
+ * values are never answered from the cache, since the first sample of a
+ * COUNTER after a restart is unknown here while the file may still hold a
+ * rate.  Unlike a fetch from the file the value is not consolidated over
+ * the step.
+ *
+ * The cache holds up to <code>org.opennms.rrd.lastValueCache.size</code> files,
+ * dropping the least recently used ones, in a few independently locked
+ * segments.  It is disabled when the size is 0, which is the default.
+ */
+public class RrdLastValueCache {
+    private static final Logger LOG = LoggerFactory.getLogger(RrdLastValueCache.class);
+
+    /** Constant <code>SIZE_PROPERTY="org.opennms.rrd.lastValueCache.size"</code> */
+    public static final String SIZE_PROPERTY = "org.opennms.rrd.lastValueCache.size";
+
+    private static final int SEGMENTS = 16;
+    private static final double COUNTER32_WRAP = 4294967296.0;
+    private static final double COUNTER64_WRAP = 18446744073709551616.0;
+
+    private static volatile RrdLastValueCache s_instance;
+
+    /**
+     * The samples of one RRD file, kept in arrays indexed like its data sources.
+     */
+    private static final class Entry {
+        private final String[] m_names;
+        private final boolean[] m_counter;
+        private final long[] m_heartBeat;
+        private final double[] m_min;
+        private final double[] m_max;
+        private final double[] m_raw;
+        private final double[] m_values;
+        private long m_timestamp = -1;
+
+        public Entry(final List<RrdDataSource> dataSources) {
+            final int count = dataSources.size();
+            m_names = new String[count];
+            m_counter = new boolean[count];
+            m_heartBeat = new long[count];
+            m_min = new double[count];
+            m_max = new double[count];
+            m_raw = new double[count];
+            m_values = new double[count];
+            for (int i = 0; i < count; i++) {
+                final RrdDataSource dataSource = dataSources.get(i);
+                m_names[i] = dataSource.getName();
+                m_counter[i] = "COUNTER".equals(dataSource.getType());
+                m_heartBeat[i] = dataSource.getHeartBeat();
+                m_min[i] = parseBound(dataSource.getMin());
+                m_max[i] = parseBound(dataSource.getMax());
+            }
+        }
+
+        public boolean matches(final List<RrdDataSource> dataSources) {
+            if (dataSources.size() != m_names.length) {
+                return false;
+            }
+            for (int i = 0; i < m_names.length; i++) {
+                if (!m_names[i].equals(dataSources.get(i).getName())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public int indexOf(final String ds) {
+            for (int i = 0; i < m_names.length; i++) {
+                if (m_names[i].equals(ds)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        public void update(final long timestamp, final double[] values) {
+            if (timestamp <= m_timestamp) {
+                // the RRD rejects these too
+                return;
+            }
+            final long elapsed = m_timestamp < 0 ? -1 : timestamp - m_timestamp;
+            for (int i = 0; i < m_names.length; i++) {
+                final double raw = i < values.length ? values[i] : Double.NaN;
+                double value;
+                if (m_counter[i]) {
+                    value = elapsed <= 0 ? Double.NaN : getRate(m_raw[i], raw, elapsed);
+                } else {
+                    value = raw;
+                }
+                if (elapsed > m_heartBeat[i] && m_heartBeat[i] > 0) {
+                    value = Double.NaN;
+                }
+                if (value < m_min[i] || value > m_max[i]) {
+                    value = Double.NaN;
+                }
+                m_raw[i] = raw;
+                m_values[i] = value;
+            }
+            m_timestamp = timestamp;
+        }
+
+        private static double getRate(final double previous, final double current, final long elapsed) {
+            if (Double.isNaN(previous) || Double.isNaN(current)) {
+                return Double.NaN;
+            }
+            double delta = current - previous;
+            if (delta < 0) {
+                delta += COUNTER32_WRAP;
+                if (delta < 0) {
+                    delta += COUNTER64_WRAP - COUNTER32_WRAP;
+                }
+            }
+            return delta / elapsed;
+        }
+
+        private static double parseBound(final String bound) {
+            if (bound == null || "U".equals(bound)) {
+                return Double.NaN;
+            }
+            try {
+                return Double.parseDouble(bound);
+            } catch (final NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+    }
+
+    /**
+     * A part of the cache with its own lock, in least recently used order.
+     */
+    private static final class Segment extends LinkedHashMap<String, Entry> {
+        private static final long serialVersionUID = 1L;
+
+        public Segment() {
+            super(16, 0.75f, true);
+        }
+    }
+
+    private final int m_capacity;
+    private final Segment[] m_segments;
+    private final AtomicInteger m_size = new AtomicInteger();
+    private final AtomicLong m_updates = new AtomicLong();
+    private final AtomicLong m_requests = new AtomicLong();
+    private final AtomicLong m_hits = new AtomicLong();
+
+    /**
+     * <p>Constructor for RrdLastValueCache.</p>
+     *
+     * @param capacity the number of RRD files to keep the latest sample of.
+     */
+    public RrdLastValueCache(final int capacity) {
+        m_capacity = capacity;
+        m_segments = new Segment[Math.max(1, Math.min(SEGMENTS, capacity))];
+        for (int i = 0; i < m_segments.length; i++) {
+            m_segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * <p>getInstance</p>
+     *
+     * @return the cache, or null if <code>org.opennms.rrd.lastValueCache.size</code> is not set.
+     */
+    public static RrdLastValueCache getInstance() {
+        RrdLastValueCache instance = s_instance;
+        if (instance == null) {
+            synchronized (RrdLastValueCache.class) {
+                instance = s_instance;
+                if (instance == null) {
+                    final int size = Integer.getInteger(SIZE_PROPERTY, 0);
+                    if (size <= 0) {
+                        return null;
+                    }
+                    LOG.info("Caching the last values of up to {} RRD files", size);
+                    instance = s_instance = new RrdLastValueCache(size);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the cache returned by {@link #getInstance()}; for tests.
+     *
+     * @param instance the cache, or null to read the size property again.
+     */
+    public static void setInstance(final RrdLastValueCache instance) {
+        s_instance = instance;
+    }
+
+    /**
+     * Publishes an update to the cache, if it is enabled.
+     *
+     * @param rrdFile the absolute path of the RRD file
+     * @param dataSources the data sources of the file
+     * @param timestamp the time of the update in milliseconds
+     * @param values the values in data source order, {@link Double#NaN} if unknown
+     */
+    public static void update(final String rrdFile, final List<RrdDataSource> dataSources, final long timestamp, final double[] values) {
+        final RrdLastValueCache cache = getInstance();
+        if (cache != null) {
+            cache.put(rrdFile, dataSources, timestamp, values);
+        }
+    }
+
+    /**
+     * Returns the latest value of a data source if it is known and was
+     * written within the last <code>interval</code>.
+     *
+     * @param rrdFile the absolute path of the RRD file
+     * @param ds the name of the data source
+     * @param interval the collection interval in milliseconds
+     * @return the value, or null if it has to be fetched from the file
+     */
+    public static Double getLastValue(final String rrdFile, final String ds, final long interval) {
+        final RrdLastValueCache cache = getInstance();
+        if (cache == null) {
+            return null;
+        }
+        return cache.get(rrdFile, ds, System.currentTimeMillis() - interval);
+    }
+
+    /**
+     * Returns the latest value of a data source if it is known and was
+     * written within the range fetched by {@link RrdStrategy#fetchLastValueInRange(String, String, int, int)}.
+     *
+     * @param rrdFile the absolute path of the RRD file
+     * @param ds the name of the data source
+     * @param interval the collection interval in milliseconds
+     * @param range how far back to look in milliseconds
+     * @return the value, or null if it has to be fetched from the file
+     */
+    public static Double getLastValueInRange(final String rrdFile, final String ds, final long interval, final long range) {
+        final RrdLastValueCache cache = getInstance();
+        if (cache == null) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        return cache.get(rrdFile, ds, now - (now % interval) - range);
+    }
+
+    private Segment getSegment(final String rrdFile) {
+        return m_segments[(rrdFile.hashCode() & Integer.MAX_VALUE) % m_segments.length];
+    }
+
+    /**
+     * <p>put</p>
+     *
+     * @param rrdFile the absolute path of the RRD file
+     * @param dataSources the data sources of the file
+     * @param timestamp the time of the update in milliseconds
+     * @param values the values in data source order, {@link Double#NaN} if unknown
+     */
+    public void put(final String rrdFile, final List<RrdDataSource> dataSources, final long timestamp, final double[] values) {
+        m_updates.incrementAndGet();
+        final long time = (timestamp + 500L) / 1000L;
+        final Segment segment = getSegment(rrdFile);
+        synchronized (segment) {
+            Entry entry = segment.get(rrdFile);
+            if (entry == null || !entry.matches(dataSources)) {
+                entry = new Entry(dataSources);
+                if (segment.put(rrdFile, entry) == null) {
+                    m_size.incrementAndGet();
+                }
+            }
+            entry.update(time, values);
+        }
+        if (m_size.get() > m_capacity) {
+            evict(segment);
+        }
+    }
+
+    /**
+     * Drops least recently used files until the cache is back to its
+     * capacity, locking one segment at a time.  The segment just written to
+     * is visited last so that its new file is only dropped if it is the last
+     * one left.
+     */
+    private void evict(final Segment last) {
+        int index = (Arrays.asList(m_segments).indexOf(last) + 1) % m_segments.length;
+        while (m_size.get() > m_capacity) {
+            final Segment segment = m_segments[index];
+            synchronized (segment) {
+                final Iterator<String> eldest = segment.keySet().iterator();
+                if (eldest.hasNext() && m_size.get() > m_capacity) {
+                    eldest.next();
+                    eldest.remove();
+                    m_size.decrementAndGet();
+                    continue;
+                }
+            }
+            index = (index + 1) % m_segments.length;
+        }
+    }
+
+    /**
+     * <p>get</p>
+     *
+     * @param rrdFile the absolute path of the RRD file
+     * @param ds the name of the data source
+     * @param since the oldest sample to return, in milliseconds
+     * @return the value, or null if there is no such sample or its value is unknown
+     */
+    public Double get(final String rrdFile, final String ds, final long since) {
+        m_requests.incrementAndGet();
+        final Segment segment = getSegment(rrdFile);
+        synchronized (segment) {
+            final Entry entry = segment.get(rrdFile);
+            if (entry == null || entry.m_timestamp * 1000L < since) {
+                return null;
+            }
+            final int index = entry.indexOf(ds);
+            if (index < 0 || Double.isNaN(entry.m_values[index])) {
+                return null;
+            }
+            m_hits.incrementAndGet();
+            return entry.m_values[index];
+        }
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return the number of RRD files in the cache.
+     */
+    public int size() {
+        return m_size.get();
+    }
+
+    /**
+     * <p>getRequests</p>
+     *
+     * @return the number of lookups.
+     */
+    public long getRequests() {
+        return m_requests.get();
+    }
+
+    /**
+     * <p>getHits</p>
+     *
+     * @return the number of lookups answered from the cache.
+     */
+    public long getHits() {
+        return m_hits.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        final long requests = m_requests.get();
+        final long hits = m_hits.get();
+        return "RRD last value cache: files=" + size()
+                + ", updates=" + m_updates.get()
+                + ", requests=" + requests
+                + ", hits=" + hits
+                + ", hitRate=" + (hits * 100.0 / Math.max(requests, 1)) + "%";
+    }
+}
@@ -130,6 +130,28 @@ public interface RrdStrategy<D extends Object,F extends Object> {
      */
     public void updateFile(F rrd, String owner, String data) throws Exception;
 
+    /**
+     * Updates the supplied round robin database with the given values without
+     * going through the "timestamp:value:value" string form. The values are
+     * given in data source order; {@link Double#NaN} stands for an unknown
+     * value. Strategies whose backend only speaks the string form should
+     * format the update with {@link RrdUtils#formatUpdate(long, double[])}.
+     * Whole numbers above 2^53 can't be held exactly by a double, so callers
+     * that have such values exactly should use the string form instead.
+     *
+     * @param rrd
+     *            an rrd object created using openFile
+     * @param owner
+     *            the owner of the rrd
+     * @param timestamp
+     *            the time of the update, in seconds since the epoch
+     * @param values
+     *            one value per data source, in data source order
+     * @throws java.lang.Exception
+     *             if an error occurs updating the file
+     */
+    public void updateFile(F rrd, String owner, long timestamp, double[] values) throws Exception;
+
     /**
      * This closes the supplied round robin database
      *
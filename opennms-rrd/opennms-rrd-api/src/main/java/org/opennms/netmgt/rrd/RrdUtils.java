@@ -31,6 +31,7 @@ package org.opennms.netmgt.rrd;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigDecimal;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -117,6 +118,7 @@ public abstract class RrdUtils {
                 s_cache.updateProperties(metaFile, attributeMappings);
             } else {
                 s_cache.saveProperties(metaFile, attributeMappings);
+                RrdFileIndex.fileCreated(metaFile);
             }
         } catch (final IOException e) {
             LOG.error("Failed to save metadata file {}", metaFile, e);
@@ -287,6 +289,9 @@ public abstract class RrdUtils {
             def = getStrategy().createDefinition(creator, directory, rrdName, step, dataSources, rraList);
             // def can be null if the rrd-db exists already, but doesn't have to be (see MultiOutput/QueuingRrdStrategy
             getStrategy().createFile(def, attributeMappings);
+            if (def != null) {
+                RrdFileIndex.fileCreated(new File(directory, rrdName + getStrategy().getDefaultFileExtension()));
+            }
 
             return true;
         } catch (Throwable e) {
@@ -353,6 +358,90 @@ public abstract class RrdUtils {
         LOG.debug("updateRRD: RRD update command completed.");
     }
 
+    /**
+     * Add datapoints to a round robin database without formatting them into
+     * an update string first.
+     *
+     * @param owner the owner of the file. This is used in log messages
+     * @param repositoryDir the directory the file resides in
+     * @param rrdName the name for the rrd file.
+     * @param timestamp the timestamp in millis to use for the rrd update (this
+     * gets rounded to the nearest second)
+     * @param values the values for the datasources of this rrd, in datasource
+     * order; {@link Double#NaN} marks an unknown value
+     * @throws org.opennms.netmgt.rrd.RrdException if any.
+     */
+    public static void updateRRD(String owner, String repositoryDir, String rrdName, long timestamp, double[] values) throws RrdException {
+        String rrdFile = repositoryDir + File.separator + rrdName + getExtension();
+        long time = (timestamp + 500L) / 1000L;
+
+        LOG.info("updateRRD: updating RRD file {} at {} with values {}", rrdFile, time, values);
+
+        Object rrd = null;
+        try {
+            rrd = getStrategy().openFile(rrdFile);
+            getStrategy().updateFile(rrd, owner, time, values);
+        } catch (Throwable e) {
+            final String updateVal = formatUpdate(time, values);
+            LOG.error("updateRRD: Error updating RRD file {} with values '{}'", rrdFile, updateVal, e);
+            throw new org.opennms.netmgt.rrd.RrdException("Error updating RRD file " + rrdFile + " with values '" + updateVal + "': " + e, e);
+        } finally {
+            try {
+                if (rrd != null) {
+                    getStrategy().closeFile(rrd);
+                }
+            } catch (Throwable e) {
+                LOG.error("updateRRD: Exception closing RRD file {}", rrdFile, e);
+                throw new org.opennms.netmgt.rrd.RrdException("Exception closing RRD file " + rrdFile + ": " + e, e);
+            }
+        }
+
+        LOG.debug("updateRRD: RRD update command completed.");
+    }
+
+    /**
+     * Formats a typed update into the "timestamp:value:value" form understood
+     * by {@link RrdStrategy#updateFile(Object, String, String)}. The values
+     * are formatted with {@link #formatValue(double)}.
+     *
+     * @param timestamp the time of the update, in seconds since the epoch
+     * @param values the values, in datasource order
+     * @return the update string
+     */
+    public static String formatUpdate(long timestamp, double[] values) {
+        final StringBuilder sb = new StringBuilder(16 + values.length * 12);
+        sb.append(timestamp);
+        for (final double value : values) {
+            sb.append(':').append(formatValue(value));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Formats a single value for an update string. NaN is written as "U",
+     * and whole numbers are written without a fraction since rrdtool insists
+     * on integers for COUNTER data sources.
+     *
+     * Note that a double only holds whole numbers exactly up to 2^53, so
+     * larger values (e.g. Counter64 octet counts) are already rounded by the
+     * time they get here. Callers that have the exact value should pass it
+     * through the string update instead, as the collection persister does.
+     *
+     * @param value the value
+     * @return the value as rrdtool expects it
+     */
+    public static String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "U";
+        } else if (value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+            return Long.toString((long) value);
+        } else if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            return new BigDecimal(value).toPlainString();
+        } else {
+            return Double.toString(value);
+        }
+    }
+
     /**
      * This method issues an round robin fetch command to retrieve the last
      * value of the datasource stored in the specified RRD file. The retrieved
@@ -370,6 +459,10 @@ public abstract class RrdUtils {
      * @throws org.opennms.netmgt.rrd.RrdException if any.
      */
     public static Double fetchLastValue(String rrdFile, String ds, int interval) throws NumberFormatException, RrdException {
+        final Double cached = RrdLastValueCache.getLastValue(rrdFile, ds, interval);
+        if (cached != null) {
+            return cached;
+        }
         return getStrategy().fetchLastValue(rrdFile, ds, interval);
     }
 
@@ -391,6 +484,10 @@ public abstract class RrdUtils {
      * @throws org.opennms.netmgt.rrd.RrdException if any.
      */
     public static Double fetchLastValueInRange(String rrdFile, String ds, int interval, int range) throws NumberFormatException, RrdException {
+        final Double cached = RrdLastValueCache.getLastValueInRange(rrdFile, ds, interval, range);
+        if (cached != null) {
+            return cached;
+        }
         return getStrategy().fetchLastValueInRange(rrdFile, ds, interval, range);
     }
 
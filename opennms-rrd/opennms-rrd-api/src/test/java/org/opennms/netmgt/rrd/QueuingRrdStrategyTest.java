@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class QueuingRrdStrategyTest {
+
+    @Test
+    public void testUpdatesForAFileStayInOrder() throws Exception {
+        final CountingRrdStrategy delegate = new CountingRrdStrategy();
+        final QueuingRrdStrategy strategy = createStrategy(delegate, 4, 4);
+
+        final int files = 1000;
+        final int updatesPerFile = 10;
+        enqueue(strategy, 4, files, updatesPerFile);
+        waitForUpdates(delegate, files * updatesPerFile);
+
+        assertEquals(0, delegate.getOutOfOrder());
+        assertEquals(0, delegate.getConcurrentOpens());
+        assertEquals(files * updatesPerFile, strategy.getEnqueuedOperations());
+        assertEquals(files * updatesPerFile, strategy.getDequeuedOperations());
+        assertEquals(0, strategy.getTotalOperationsPending());
+        assertEquals(4, strategy.getShardCount());
+
+        long dequeued = 0;
+        for (final long shardDequeued : strategy.getShardDequeuedOperations()) {
+            assertTrue("every shard should have seen some of the files", shardDequeued > 0);
+            dequeued += shardDequeued;
+        }
+        assertEquals(strategy.getDequeuedOperations(), dequeued);
+        assertTrue(strategy.getStats().contains("shard[3]"));
+    }
+
+    @Test
+    public void testShardPrioritizesSignificantAndPromotedFiles() throws Exception {
+        final QueuingRrdStrategy strategy = createStrategy(new CountingRrdStrategy(), 1, 1);
+        final QueueShard shard = new QueueShard(0, true, 0);
+
+        shard.add(strategy.new ZeroUpdateOperation("a", 300));
+        shard.add(strategy.new ZeroUpdateOperation("b", 300));
+        shard.add(strategy.new ZeroUpdateOperation("c", 300));
+        shard.add(strategy.new TypedUpdateOperation("d", 300, new double[] { 1.0 }));
+        assertEquals(1, shard.getFilesWithSignificantWork());
+        assertEquals(3, shard.getFilesWithInsignificantWork());
+
+        shard.promote(Collections.singletonList("c"));
+        assertEquals(2, shard.getFilesWithSignificantWork());
+        assertEquals(2, shard.getFilesWithInsignificantWork());
+
+        assertEquals("c", shard.take().getFirst().getFileName());
+        assertEquals("d", shard.take().getFirst().getFileName());
+        assertEquals("a", shard.take().getFirst().getFileName());
+
+        // a file that is being worked on can't be taken again until it is completed
+        shard.add(strategy.new TypedUpdateOperation("a", 600, new double[] { 1.0 }));
+        assertEquals("b", shard.take().getFirst().getFileName());
+        assertNull(shard.take());
+        shard.complete("a");
+        assertEquals("a", shard.take().getFirst().getFileName());
+
+        assertEquals(5, shard.getEnqueuedOperations());
+        assertEquals(5, shard.getDequeuedOperations());
+        assertEquals(0, shard.getOperationsPending());
+    }
+
+    /**
+     * Load test harness: enqueues one update for each of 500k files from
+     * several collector threads and waits for the write threads to drain the
+     * queue, once with a single shard and once with one shard per write
+     * thread.
+     */
+    @Test
+    public void testLoadWith500kFiles() throws Exception {
+        final int files = 500000;
+        final int writeThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+        for (final int shards : new int[] { 1, writeThreads }) {
+            final CountingRrdStrategy delegate = new CountingRrdStrategy();
+            final QueuingRrdStrategy strategy = createStrategy(delegate, writeThreads, shards);
+
+            final long start = System.nanoTime();
+            enqueue(strategy, writeThreads, files, 1);
+            final long enqueued = System.nanoTime();
+            waitForUpdates(delegate, files);
+            final long drained = System.nanoTime();
+
+            System.err.printf("QueuingRrdStrategy: %d files, %d write threads, %d shard(s): enqueued in %d ms, drained in %d ms%n",
+                              files, writeThreads, shards,
+                              TimeUnit.NANOSECONDS.toMillis(enqueued - start),
+                              TimeUnit.NANOSECONDS.toMillis(drained - start));
+
+            assertEquals(files, strategy.getDequeuedItems());
+            assertEquals(0, strategy.getTotalOperationsPending());
+        }
+    }
+
+    private static QueuingRrdStrategy createStrategy(final RrdStrategy<Object, Object> delegate, final int writeThreads, final int shards) {
+        final QueuingRrdStrategy strategy = new QueuingRrdStrategy(delegate);
+        strategy.setWriteThreads(writeThreads);
+        strategy.setShards(shards);
+        strategy.setModulus(Long.MAX_VALUE);
+        strategy.setCategory(QueuingRrdStrategyTest.class.getName());
+        strategy.setWriteThreadSleepTime(1);
+        strategy.setWriteThreadExitDelay(1000);
+        return strategy;
+    }
+
+    private static void enqueue(final QueuingRrdStrategy strategy, final int threads, final int files, final int updatesPerFile) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            new Thread("enqueue-" + t) {
+                @Override
+                public void run() {
+                    try {
+                        for (int u = 1; u <= updatesPerFile; u++) {
+                            for (int f = offset; f < files; f += threads) {
+                                strategy.updateFile("/var/opennms/rrd/snmp/" + f + "/ifInOctets.jrb", "test", u * 300L, new double[] { u });
+                            }
+                        }
+                    } catch (final Exception e) {
+                        throw new IllegalStateException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        assertTrue("enqueueing should finish", done.await(120, TimeUnit.SECONDS));
+    }
+
+    private static void waitForUpdates(final CountingRrdStrategy delegate, final long expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 120000;
+        while (delegate.getUpdates() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, delegate.getUpdates());
+    }
+
+    /**
+     * Counts updates and checks that a file is never open on two threads at
+     * once and that its updates arrive in timestamp order.
+     */
+    private static class CountingRrdStrategy implements RrdStrategy<Object, Object> {
+        private final ConcurrentMap<String, Long> m_lastTimestamp = new ConcurrentHashMap<String, Long>();
+        private final ConcurrentMap<String, Boolean> m_open = new ConcurrentHashMap<String, Boolean>();
+        private final AtomicLong m_updates = new AtomicLong();
+        private final AtomicLong m_outOfOrder = new AtomicLong();
+        private final AtomicLong m_concurrentOpens = new AtomicLong();
+
+        public long getUpdates() {
+            return m_updates.get();
+        }
+
+        public long getOutOfOrder() {
+            return m_outOfOrder.get();
+        }
+
+        public long getConcurrentOpens() {
+            return m_concurrentOpens.get();
+        }
+
+        @Override
+        public Object openFile(final String fileName) {
+            if (m_open.putIfAbsent(fileName, Boolean.TRUE) != null) {
+                m_concurrentOpens.incrementAndGet();
+            }
+            return fileName;
+        }
+
+        @Override
+        public void updateFile(final Object rrd, final String owner, final long timestamp, final double[] values) {
+            final Long last = m_lastTimestamp.put((String) rrd, timestamp);
+            if (last != null && last >= timestamp) {
+                m_outOfOrder.incrementAndGet();
+            }
+            m_updates.incrementAndGet();
+        }
+
+        @Override
+        public void updateFile(final Object rrd, final String owner, final String data) {
+            final int colon = data.indexOf(':');
+            updateFile(rrd, owner, Long.parseLong(data.substring(0, colon)), new double[] { Double.parseDouble(data.substring(colon + 1)) });
+        }
+
+        @Override
+        public void closeFile(final Object rrd) {
+            m_open.remove(rrd);
+        }
+
+        @Override
+        public void setConfigurationProperties(final Properties props) {
+        }
+
+        @Override
+        public String getDefaultFileExtension() {
+            return ".jrb";
+        }
+
+        @Override
+        public Object createDefinition(final String creator, final String directory, final String rrdName, final int step, final List<RrdDataSource> dataSources, final List<String> rraList) {
+            return null;
+        }
+
+        @Override
+        public void createFile(final Object rrdDef, final Map<String, String> attributeMappings) {
+        }
+
+        @Override
+        public Double fetchLastValue(final String rrdFile, final String ds, final int interval) {
+            return null;
+        }
+
+        @Override
+        public Double fetchLastValue(final String rrdFile, final String ds, final String consolidationFunction, final int interval) {
+            return null;
+        }
+
+        @Override
+        public Double fetchLastValueInRange(final String rrdFile, final String ds, final int interval, final int range) {
+            return null;
+        }
+
+        @Override
+        public InputStream createGraph(final String command, final File workDir) {
+            return null;
+        }
+
+        @Override
+        public RrdGraphDetails createGraphReturnDetails(final String command, final File workDir) {
+            return null;
+        }
+
+        @Override
+        public int getGraphLeftOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getGraphRightOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getGraphTopOffsetWithText() {
+            return 0;
+        }
+
+        @Override
+        public String getStats() {
+            return "";
+        }
+
+        @Override
+        public void promoteEnqueuedFiles(final Collection<String> rrdFiles) {
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RrdFileIndexTest {
+    private File m_root;
+
+    @Before
+    public void setUp() throws IOException {
+        m_root = File.createTempFile("rrd-index", "");
+        m_root.delete();
+        m_root.mkdirs();
+        touch("snmp/1/ifInErrors.jrb");
+        touch("snmp/1/strings.properties");
+        touch("snmp/1/eth0-000000000001/ifInOctets.jrb");
+        touch("response/192.168.1.1/icmp.jrb");
+        System.setProperty(RrdFileIndex.INDEX_PROPERTY, "true");
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(RrdFileIndex.INDEX_PROPERTY);
+        delete(m_root);
+    }
+
+    @Test
+    public void testBuildsIndexOfExistingFiles() throws InterruptedException {
+        load();
+        assertTrue(new File(m_root, RrdFileIndex.JOURNAL_FILE_NAME).exists());
+
+        final File node = new File(m_root, "snmp/1");
+        assertEquals(names("ifInErrors.jrb"), names(RrdFileIndex.listFiles(node, new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.endsWith(".jrb");
+            }
+        })));
+        assertEquals(names("eth0-000000000001", "ifInErrors.jrb", "strings.properties"), names(RrdFileIndex.listFiles(node)));
+        assertEquals(names(node.listFiles()), names(RrdFileIndex.listFiles(node)));
+        assertEquals(names("1"), names(RrdFileIndex.listFiles(new File(m_root, "snmp"), new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return RrdFileIndex.isDirectory(file);
+            }
+        })));
+        assertTrue(RrdFileIndex.isDirectory(new File(node, "eth0-000000000001")));
+        assertFalse(RrdFileIndex.isDirectory(new File(node, "strings.properties")));
+        assertTrue(RrdFileIndex.exists(new File(node, "strings.properties")));
+        assertFalse(RrdFileIndex.exists(new File(m_root, "snmp/2")));
+        assertNull(RrdFileIndex.listFiles(new File(m_root, "snmp/2")));
+
+        // the journal itself is not something to list
+        assertEquals(names("response", "snmp"), names(RrdFileIndex.listFiles(m_root)));
+    }
+
+    @Test
+    public void testCreatedFilesAreSeenByOtherReaders() throws IOException, InterruptedException {
+        load();
+        final RrdFileIndex other = new RrdFileIndex(m_root);
+        other.load();
+
+        final File created = touch("snmp/2/ifInErrors.jrb");
+        RrdFileIndex.fileCreated(created);
+        assertTrue(RrdFileIndex.exists(created));
+        assertFalse(other.lookup(created, false));
+
+        other.read();
+        assertTrue(other.lookup(created, false));
+        assertTrue(other.lookup(created.getParentFile(), true));
+    }
+
+    @Test
+    public void testFilesCreatedWhileLoadingAreRecorded() throws IOException, InterruptedException {
+        final RrdFileIndex index = new RrdFileIndex(m_root);
+        final File created = touch("snmp/2/ifInErrors.jrb");
+        index.record('+', created);
+        assertFalse(new File(m_root, RrdFileIndex.JOURNAL_FILE_NAME).exists());
+
+        index.load();
+        assertTrue(index.awaitLoaded(0, TimeUnit.SECONDS));
+        assertTrue(index.lookup(created, false));
+
+        final RrdFileIndex other = new RrdFileIndex(m_root);
+        other.load();
+        assertTrue(other.lookup(created, false));
+    }
+
+    @Test
+    public void testDeletedDirectoriesStayDeletedAfterReload() throws IOException, InterruptedException {
+        load();
+        final File node = new File(m_root, "snmp/1");
+        delete(node);
+        RrdFileIndex.directoryDeleted(node);
+        assertFalse(RrdFileIndex.exists(node));
+        assertFalse(RrdFileIndex.exists(new File(node, "eth0-000000000001/ifInOctets.jrb")));
+        assertEquals(names(), names(RrdFileIndex.listFiles(new File(m_root, "snmp"))));
+        assertTrue(RrdFileIndex.exists(new File(m_root, "response/192.168.1.1/icmp.jrb")));
+
+        // the node comes back with a single file
+        final File created = touch("snmp/1/ifInErrors.jrb");
+        RrdFileIndex.fileCreated(created);
+
+        final RrdFileIndex other = new RrdFileIndex(m_root);
+        other.load();
+        assertTrue(other.lookup(created, false));
+        assertFalse(other.lookup(new File(node, "strings.properties"), false));
+        assertFalse(other.lookup(new File(node, "eth0-000000000001"), true));
+    }
+
+    @Test
+    public void testDeletesWhileLoadingAreRecordedInOrder() throws IOException, InterruptedException {
+        final RrdFileIndex index = new RrdFileIndex(m_root);
+        final File created = touch("snmp/2/ifInErrors.jrb");
+        index.record('+', created);
+        index.record('-', created.getParentFile());
+        index.record('+', created);
+        final File response = new File(m_root, "response/192.168.1.1");
+        delete(response);
+        index.record('-', response);
+
+        index.load();
+        assertTrue(index.lookup(created, false));
+        assertFalse(index.lookup(response, false));
+
+        final RrdFileIndex other = new RrdFileIndex(m_root);
+        other.load();
+        assertTrue(other.lookup(created, false));
+        assertFalse(other.lookup(response, false));
+    }
+
+    @Test
+    public void testFileWrittenOnlyAppendsNewFiles() throws IOException, InterruptedException {
+        load();
+        final File journal = new File(m_root, RrdFileIndex.JOURNAL_FILE_NAME);
+        final long length = journal.length();
+
+        RrdFileIndex.fileWritten(new File(m_root, "snmp/1/strings.properties"));
+        assertEquals(length, journal.length());
+
+        final File ds = touch("snmp/1/ds.properties");
+        RrdFileIndex.fileWritten(ds);
+        RrdFileIndex.fileWritten(ds);
+        assertTrue(RrdFileIndex.exists(ds));
+        assertEquals(length + "+snmp/1/ds.properties\n".length(), journal.length());
+    }
+
+    @Test
+    public void testRebuildDropsFilesRemovedBehindItsBack() throws IOException, InterruptedException {
+        final RrdFileIndex index = load();
+        final File removed = new File(m_root, "response/192.168.1.1/icmp.jrb");
+        assertTrue(removed.delete());
+        assertTrue(RrdFileIndex.exists(removed));
+
+        assertEquals(3, new RrdFileIndex(m_root).rebuild());
+        index.read();
+        assertFalse(RrdFileIndex.exists(removed));
+        assertTrue(RrdFileIndex.exists(new File(m_root, "snmp/1/strings.properties")));
+
+        // and the rebuilt journal can still be appended to
+        final File created = touch("snmp/3/ifInErrors.jrb");
+        RrdFileIndex.fileCreated(created);
+        final RrdFileIndex other = new RrdFileIndex(m_root);
+        other.load();
+        assertTrue(other.lookup(created, false));
+    }
+
+    @Test
+    public void testFallsBackToFileSystem() throws IOException, InterruptedException {
+        System.clearProperty(RrdFileIndex.INDEX_PROPERTY);
+        final File node = new File(m_root, "snmp/1");
+        assertEquals(names(node.listFiles()), names(RrdFileIndex.listFiles(node)));
+        assertTrue(RrdFileIndex.isDirectory(node));
+        assertFalse(new File(m_root, RrdFileIndex.JOURNAL_FILE_NAME).exists());
+
+        System.setProperty(RrdFileIndex.INDEX_PROPERTY, "true");
+        load();
+        final File outside = File.createTempFile("not-indexed", ".jrb");
+        try {
+            assertTrue(RrdFileIndex.exists(outside));
+        } finally {
+            outside.delete();
+        }
+    }
+
+    private RrdFileIndex load() throws InterruptedException {
+        final RrdFileIndex index = RrdFileIndex.getInstance(m_root);
+        assertTrue(index.awaitLoaded(10, TimeUnit.SECONDS));
+        return index;
+    }
+
+    private File touch(final String path) throws IOException {
+        final File file = new File(m_root, path);
+        file.getParentFile().mkdirs();
+        file.createNewFile();
+        return file;
+    }
+
+    private static Set<String> names(final String... names) {
+        return new TreeSet<String>(Arrays.asList(names));
+    }
+
+    private static Set<String> names(final File[] files) {
+        final Set<String> names = new TreeSet<String>();
+        for (final File file : files) {
+            names.add(file.getName());
+        }
+        return names;
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
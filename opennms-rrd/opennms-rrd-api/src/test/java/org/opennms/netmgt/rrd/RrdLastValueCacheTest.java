@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RrdLastValueCacheTest {
+    private static final String FILE = "/opt/opennms/share/rrd/snmp/1/mib2-interfaces.jrb";
+    private static final long STEP = 300000L;
+
+    private List<RrdDataSource> m_dataSources;
+
+    @Before
+    public void setUp() {
+        m_dataSources = Arrays.asList(
+            new RrdDataSource("ifInOctets", "COUNTER", 600, "0", "U"),
+            new RrdDataSource("ifSpeed", "GAUGE", 600, "U", "U"),
+            new RrdDataSource("ifInErrors", "GAUGE", 600, "0", "100")
+        );
+    }
+
+    @After
+    public void tearDown() {
+        RrdLastValueCache.setInstance(null);
+        System.clearProperty(RrdLastValueCache.SIZE_PROPERTY);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertNull(RrdLastValueCache.getInstance());
+        RrdLastValueCache.update(FILE, m_dataSources, System.currentTimeMillis(), new double[] { 1, 2, 3 });
+        assertNull(RrdLastValueCache.getLastValue(FILE, "ifSpeed", STEP));
+
+        System.setProperty(RrdLastValueCache.SIZE_PROPERTY, "10");
+        assertNotNull(RrdLastValueCache.getInstance());
+    }
+
+    @Test
+    public void testGauge() {
+        final RrdLastValueCache cache = new RrdLastValueCache(10);
+        RrdLastValueCache.setInstance(cache);
+        final long now = System.currentTimeMillis();
+
+        RrdLastValueCache.update(FILE, m_dataSources, now, new double[] { 1000, 100000000, 5 });
+        assertEquals(100000000, RrdLastValueCache.getLastValue(FILE, "ifSpeed", STEP), 0);
+        assertEquals(5, RrdLastValueCache.getLastValue(FILE, "ifInErrors", STEP), 0);
+        assertNull(RrdLastValueCache.getLastValue(FILE, "ifOutOctets", STEP));
+        assertNull(RrdLastValueCache.getLastValue("/tmp/other.jrb", "ifSpeed", STEP));
+
+        // out of bounds values are unknown, as they are in the RRD
+        RrdLastValueCache.update(FILE, m_dataSources, now + 1000, new double[] { 1000, 100000000, 500 });
+        assertNull(RrdLastValueCache.getLastValue(FILE, "ifInErrors", STEP));
+        assertNull(RrdLastValueCache.getLastValueInRange(FILE, "ifInErrors", STEP, STEP));
+        assertEquals(100000000, RrdLastValueCache.getLastValueInRange(FILE, "ifSpeed", STEP, STEP), 0);
+
+        // older updates are ignored
+        RrdLastValueCache.update(FILE, m_dataSources, now, new double[] { 1000, 1, 5 });
+        assertEquals(100000000, RrdLastValueCache.getLastValue(FILE, "ifSpeed", STEP), 0);
+    }
+
+    @Test
+    public void testCounter() {
+        final RrdLastValueCache cache = new RrdLastValueCache(10);
+        final long start = System.currentTimeMillis() - 3 * STEP / 2;
+
+        cache.put(FILE, m_dataSources, start, new double[] { 1000, 0, 0 });
+        // unknown until there is a rate, so it is read from the file, which
+        // may still hold one from before a restart
+        assertNull(cache.get(FILE, "ifInOctets", 0));
+
+        cache.put(FILE, m_dataSources, start + STEP / 2, new double[] { 16000, 0, 0 });
+        assertEquals(100, cache.get(FILE, "ifInOctets", 0), 0);
+
+        // a 32 bit counter wrapped
+        cache.put(FILE, m_dataSources, start + STEP, new double[] { 14000, 0, 0 });
+        assertEquals((4294967296.0 - 2000) / 150, cache.get(FILE, "ifInOctets", 0), 0.001);
+
+        // the heartbeat was missed
+        cache.put(FILE, m_dataSources, start + STEP + 601000, new double[] { 15000, 0, 0 });
+        assertNull(cache.get(FILE, "ifInOctets", 0));
+        assertNull(cache.get(FILE, "ifSpeed", 0));
+    }
+
+    @Test
+    public void testStale() {
+        final RrdLastValueCache cache = new RrdLastValueCache(10);
+        RrdLastValueCache.setInstance(cache);
+
+        RrdLastValueCache.update(FILE, m_dataSources, System.currentTimeMillis() - 2 * STEP, new double[] { 1000, 10, 5 });
+        assertNull(RrdLastValueCache.getLastValue(FILE, "ifSpeed", STEP));
+        assertNull(RrdLastValueCache.getLastValueInRange(FILE, "ifSpeed", STEP, STEP));
+        assertEquals(10, RrdLastValueCache.getLastValueInRange(FILE, "ifSpeed", STEP, 3 * STEP), 0);
+    }
+
+    @Test
+    public void testDataSourcesChanged() {
+        final RrdLastValueCache cache = new RrdLastValueCache(10);
+        final long now = System.currentTimeMillis();
+
+        cache.put(FILE, m_dataSources, now, new double[] { 1000, 10, 5 });
+        cache.put(FILE, m_dataSources.subList(1, 2), now + 1000, new double[] { 20 });
+        assertEquals(20, cache.get(FILE, "ifSpeed", 0), 0);
+        assertNull(cache.get(FILE, "ifInErrors", 0));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedFilesAreDropped() {
+        final RrdLastValueCache cache = new RrdLastValueCache(16);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            cache.put("/tmp/" + i + ".jrb", m_dataSources, now, new double[] { 1, 2, 3 });
+        }
+        assertTrue(cache.size() <= 16);
+        assertEquals(2, cache.get("/tmp/999.jrb", "ifSpeed", 0), 0);
+        assertNull(cache.get("/tmp/0.jrb", "ifSpeed", 0));
+
+        assertEquals(2, cache.getRequests());
+        assertEquals(1, cache.getHits());
+        assertTrue(cache.toString(), cache.toString().contains("hitRate=50.0%"));
+    }
+
+    @Test
+    public void testSpeed() throws Exception {
+        final int files = 10000;
+        final int lookups = 1000000;
+        final RrdLastValueCache cache = new RrdLastValueCache(files);
+        final String[] paths = new String[files];
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < files; i++) {
+            paths[i] = "/opt/opennms/share/rrd/snmp/" + i + "/mib2-interfaces.jrb";
+            cache.put(paths[i], m_dataSources, now, new double[] { i, i, 1 });
+        }
+
+        final AtomicLong misses = new AtomicLong();
+        final List<Thread> threads = new ArrayList<Thread>();
+        final long start = System.currentTimeMillis();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < lookups / 4; i++) {
+                        final int file = (i * 7 + offset) % files;
+                        if (i % 100 == 0) {
+                            cache.put(paths[file], m_dataSources, now + 1000L * (i / 100 + 1), new double[] { i, file, 1 });
+                        } else if (cache.get(paths[file], "ifSpeed", 0) == null) {
+                            misses.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final long elapsed = System.currentTimeMillis() - start;
+
+        System.err.println(String.format("%d lookups of %d files in %d ms (%s)", lookups, files, elapsed, cache));
+        assertEquals(0, misses.get());
+        assertEquals(files, cache.size());
+    }
+}
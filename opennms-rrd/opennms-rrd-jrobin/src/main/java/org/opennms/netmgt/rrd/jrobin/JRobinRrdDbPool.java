@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of open JRobin RrdDb handles, keyed by path.
+ *
+ * Handles are shared between threads and stay open after they are released
+ * until the pool holds more than its capacity, at which point the least
+ * recently used handles that are not in use are closed.  If every handle is
+ * in use the pool grows past its capacity until some are released.
+ *
+ * JRobin synchronizes updates and fetches on the RrdDb, so sharing one
+ * handle between a writer and a reader is safe.
+ */
+class JRobinRrdDbPool {
+    private static final Logger LOG = LoggerFactory.getLogger(JRobinRrdDbPool.class);
+
+    private static class Entry {
+        private final RrdDb m_db;
+        private int m_users = 0;
+        private boolean m_retired = false;
+
+        public Entry(final RrdDb db) {
+            m_db = db;
+        }
+    }
+
+    private final int m_capacity;
+
+    // access ordered, so the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry> m_entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    // every open handle, including the ones removed from the pool while they were in use
+    private final Map<RrdDb, Entry> m_handles = new IdentityHashMap<RrdDb, Entry>();
+
+    private long m_requests = 0;
+    private long m_hits = 0;
+    private long m_opens = 0;
+    private long m_evictions = 0;
+
+    /**
+     * <p>Constructor for JRobinRrdDbPool.</p>
+     *
+     * @param capacity the number of idle handles to keep open.
+     */
+    public JRobinRrdDbPool(final int capacity) {
+        m_capacity = capacity;
+    }
+
+    /**
+     * Returns an open handle for the given path, opening the file if it is
+     * not in the pool.  Every handle must be given back with {@link #release(RrdDb)}.
+     *
+     * @param path the RRD file
+     * @return the open RrdDb
+     * @throws java.io.IOException if any.
+     * @throws org.jrobin.core.RrdException if any.
+     */
+    public RrdDb acquire(final String path) throws IOException, RrdException {
+        synchronized (this) {
+            m_requests++;
+            final Entry entry = m_entries.get(path);
+            if (entry != null) {
+                m_hits++;
+                entry.m_users++;
+                return entry.m_db;
+            }
+        }
+
+        // open outside of the lock so that slow disks only hold up the callers of this file
+        final RrdDb db = open(path);
+        final List<RrdDb> toClose = new ArrayList<RrdDb>();
+        final RrdDb result;
+        synchronized (this) {
+            m_opens++;
+            final Entry entry = m_entries.get(path);
+            if (entry == null) {
+                final Entry opened = new Entry(db);
+                opened.m_users++;
+                m_entries.put(path, opened);
+                m_handles.put(db, opened);
+                evict(toClose);
+                result = db;
+            } else {
+                // another thread opened the file in the meantime, use its handle
+                entry.m_users++;
+                toClose.add(db);
+                result = entry.m_db;
+            }
+        }
+        close(toClose);
+        return result;
+    }
+
+    /**
+     * Gives back a handle returned by {@link #acquire(String)}.  Handles that
+     * were removed from the pool while they were in use are closed.
+     *
+     * @param db the RrdDb
+     * @throws java.io.IOException if any.
+     */
+    public void release(final RrdDb db) throws IOException {
+        final List<RrdDb> toClose = new ArrayList<RrdDb>();
+        synchronized (this) {
+            final Entry entry = m_handles.get(db);
+            if (entry == null) {
+                toClose.add(db);
+            } else if (entry.m_retired) {
+                if (--entry.m_users == 0) {
+                    m_handles.remove(db);
+                    toClose.add(db);
+                }
+            } else {
+                entry.m_users--;
+                evict(toClose);
+            }
+        }
+        close(toClose);
+    }
+
+    /**
+     * Removes the handle for the given path from the pool, closing it once
+     * it is no longer in use.  Must be called before a file is replaced.
+     *
+     * @param path the RRD file
+     * @throws java.io.IOException if any.
+     */
+    public void invalidate(final String path) throws IOException {
+        final List<RrdDb> toClose = new ArrayList<RrdDb>();
+        synchronized (this) {
+            final Entry entry = m_entries.remove(path);
+            if (entry != null) {
+                if (entry.m_users == 0) {
+                    m_handles.remove(entry.m_db);
+                    toClose.add(entry.m_db);
+                } else {
+                    entry.m_retired = true;
+                }
+            }
+        }
+        close(toClose);
+    }
+
+    /**
+     * Closes all of the handles that are not in use.
+     *
+     * @throws java.io.IOException if any.
+     */
+    public void closeAll() throws IOException {
+        final List<RrdDb> toClose = new ArrayList<RrdDb>();
+        synchronized (this) {
+            for (final Iterator<Entry> it = m_entries.values().iterator(); it.hasNext();) {
+                final Entry entry = it.next();
+                if (entry.m_users == 0) {
+                    m_handles.remove(entry.m_db);
+                    toClose.add(entry.m_db);
+                    it.remove();
+                }
+            }
+        }
+        close(toClose);
+    }
+
+    /**
+     * <p>open</p>
+     *
+     * @param path the RRD file
+     * @return a new RrdDb for the file
+     * @throws java.io.IOException if any.
+     * @throws org.jrobin.core.RrdException if any.
+     */
+    protected RrdDb open(final String path) throws IOException, RrdException {
+        return new RrdDb(path);
+    }
+
+    private void evict(final List<RrdDb> toClose) {
+        if (m_entries.size() <= m_capacity) {
+            return;
+        }
+        for (final Iterator<Entry> it = m_entries.values().iterator(); it.hasNext() && m_entries.size() > m_capacity;) {
+            final Entry entry = it.next();
+            if (entry.m_users == 0) {
+                m_handles.remove(entry.m_db);
+                toClose.add(entry.m_db);
+                it.remove();
+                m_evictions++;
+            }
+        }
+    }
+
+    private void close(final List<RrdDb> toClose) throws IOException {
+        IOException exception = null;
+        for (final RrdDb db : toClose) {
+            try {
+                db.close();
+            } catch (final IOException e) {
+                LOG.warn("Failed to close RRD file {}", db.getPath(), e);
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * <p>getCapacity</p>
+     *
+     * @return the number of idle handles kept open.
+     */
+    public int getCapacity() {
+        return m_capacity;
+    }
+
+    /**
+     * <p>getOpenFiles</p>
+     *
+     * @return the number of handles in the pool.
+     */
+    public synchronized int getOpenFiles() {
+        return m_entries.size();
+    }
+
+    /**
+     * <p>getRequests</p>
+     *
+     * @return the number of calls to {@link #acquire(String)}.
+     */
+    public synchronized long getRequests() {
+        return m_requests;
+    }
+
+    /**
+     * <p>getHits</p>
+     *
+     * @return the number of requests served by an open handle.
+     */
+    public synchronized long getHits() {
+        return m_hits;
+    }
+
+    /**
+     * <p>getOpens</p>
+     *
+     * @return the number of files opened.
+     */
+    public synchronized long getOpens() {
+        return m_opens;
+    }
+
+    /**
+     * <p>getEvictions</p>
+     *
+     * @return the number of handles closed to keep the pool within its capacity.
+     */
+    public synchronized long getEvictions() {
+        return m_evictions;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized String toString() {
+        return "JRobin RrdDb pool: capacity=" + m_capacity
+                + ", openFiles=" + m_entries.size()
+                + ", requests=" + m_requests
+                + ", hits=" + m_hits
+                + ", hitRate=" + (m_hits * 100.0 / Math.max(m_requests, 1)) + "%"
+                + ", opens=" + m_opens
+                + ", evictions=" + m_evictions;
+    }
+}
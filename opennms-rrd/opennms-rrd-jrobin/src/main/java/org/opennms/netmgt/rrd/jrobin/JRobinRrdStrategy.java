@@ -47,6 +47,7 @@ import org.jrobin.core.FetchData;
 import org.jrobin.core.RrdDb;
 import org.jrobin.core.RrdDef;
 import org.jrobin.core.RrdException;
+import org.jrobin.core.RrdNioBackendFactory;
 import org.jrobin.core.Sample;
 import org.jrobin.data.DataProcessor;
 import org.jrobin.data.Plottable;
@@ -63,8 +64,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Provides a JRobin based implementation of RrdStrategy. It uses JRobin 1.4 in
- * FILE mode (NIO is too memory consuming for the large number of files that we
- * open)
+ * FILE mode by default (NIO is too memory consuming for the large number of files that we
+ * open).  When <code>org.opennms.rrd.jrobin.openFiles</code> is set, open RrdDb
+ * handles are kept in a bounded pool shared by updates and fetches, which also
+ * bounds the memory used by the NIO backend.
  *
  * @author ranger
  * @version $Id: $
@@ -73,6 +76,8 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     private static final Logger LOG = LoggerFactory.getLogger(JRobinRrdStrategy.class);
     private static final String BACKEND_FACTORY_PROPERTY = "org.jrobin.core.RrdBackendFactory";
     private static final String DEFAULT_BACKEND_FACTORY = "FILE";
+    private static final String OPEN_FILES_PROPERTY = "org.opennms.rrd.jrobin.openFiles";
+    private static final String NIO_SYNC_PERIOD_PROPERTY = "org.opennms.rrd.jrobin.nioSyncPeriod";
 
     /*
      * Ensure that we only initialize certain things *once* per
@@ -82,6 +87,8 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
 
     private Properties m_configurationProperties;
 
+    private JRobinRrdDbPool m_pool;
+
     /**
      * An extremely simple Plottable for holding static datasources that
      * can't be represented with an SDEF -- currently used only for PERCENT
@@ -137,18 +144,42 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
             } catch (RrdException e) {
                 LOG.error("Could not set default JRobin RRD factory", e);
             }
+            final String syncPeriod = getConfigurationProperty(NIO_SYNC_PERIOD_PROPERTY);
+            if ("NIO".equals(factory) && syncPeriod != null) {
+                LOG.info("Syncing JRobin NIO backends every {} seconds", syncPeriod);
+                RrdNioBackendFactory.setSyncPeriod(Integer.parseInt(syncPeriod));
+            }
+        }
+        final String openFiles = getConfigurationProperty(OPEN_FILES_PROPERTY);
+        if (openFiles != null && Integer.parseInt(openFiles) > 0) {
+            LOG.info("Keeping up to {} JRobin RRD files open", openFiles);
+            m_pool = new JRobinRrdDbPool(Integer.parseInt(openFiles));
+        } else {
+            m_pool = null;
+        }
+    }
+
+    private String getConfigurationProperty(final String name) {
+        if (m_configurationProperties == null) {
+            return null;
         }
+        final String value = m_configurationProperties.getProperty(name);
+        return value == null || value.trim().length() == 0 ? null : value.trim();
     }
 
     /**
-     * Closes the JRobin RrdDb.
+     * Closes the JRobin RrdDb, or gives it back to the pool.
      *
      * @param rrdFile a {@link org.jrobin.core.RrdDb} object.
      * @throws java.lang.Exception if any.
      */
     @Override
     public void closeFile(final RrdDb rrdFile) throws Exception {
-        rrdFile.close();
+        if (m_pool == null) {
+            rrdFile.close();
+        } else {
+            m_pool.release(rrdFile);
+        }
     }
 
     /** {@inheritDoc} */
@@ -203,6 +234,9 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         }
         LOG.info("createRRD: creating RRD file {}", rrdDef.getPath());
 
+        if (m_pool != null) {
+            m_pool.invalidate(rrdDef.getPath());
+        }
         RrdDb rrd = new RrdDb(rrdDef);
         rrd.close();
 
@@ -219,11 +253,27 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     /**
      * {@inheritDoc}
      *
-     * Opens the JRobin RrdDb by name and returns it.
+     * Opens the JRobin RrdDb by name and returns it, or takes it from the pool.
      */
     @Override
     public RrdDb openFile(final String fileName) throws Exception {
-        return new RrdDb(fileName);
+        return m_pool == null ? new RrdDb(fileName) : m_pool.acquire(fileName);
+    }
+
+    private RrdDb openForFetch(final String fileName) throws IOException, RrdException {
+        return m_pool == null ? new RrdDb(fileName, true) : m_pool.acquire(fileName);
+    }
+
+    private void closeAfterFetch(final RrdDb rrd, final String fileName) {
+        try {
+            if (m_pool == null) {
+                rrd.close();
+            } else {
+                m_pool.release(rrd);
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to close rrd file: {}", fileName, e);
+        }
     }
 
     /**
@@ -237,6 +287,19 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         sample.setAndUpdate(data);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Creates a sample from the JRobin RrdDb and sets the values on it
+     * directly, skipping the string parsing done by setAndUpdate().
+     */
+    @Override
+    public void updateFile(final RrdDb rrdFile, final String owner, final long timestamp, final double[] values) throws Exception {
+        Sample sample = rrdFile.createSample(timestamp);
+        sample.setValues(values);
+        sample.update();
+    }
+
     /**
      * Initialized the RrdDb to use the FILE factory because the NIO factory
      * uses too much memory for our implementation.
@@ -266,7 +329,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
         try {
             long now = System.currentTimeMillis();
             long collectTime = (now - (now % interval)) / 1000L;
-            rrd = new RrdDb(fileName, true);
+            rrd = openForFetch(fileName);
             FetchData data = rrd.createFetchRequest(consolidationFunction, collectTime, collectTime).fetchData();
             LOG.debug(data.toString());
             double[] vals = data.getValues(ds);
@@ -280,11 +343,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
             throw new org.opennms.netmgt.rrd.RrdException("Exception occurred fetching data from " + fileName, e);
         } finally {
             if (rrd != null) {
-                try {
-                    rrd.close();
-                } catch (IOException e) {
-                    LOG.error("Failed to close rrd file: {}", fileName, e);
-                }
+                closeAfterFetch(rrd, fileName);
             }
         }
     }
@@ -294,7 +353,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     public Double fetchLastValueInRange(final String fileName, final String ds, final int interval, final int range) throws NumberFormatException, org.opennms.netmgt.rrd.RrdException {
         RrdDb rrd = null;
         try {
-        	rrd = new RrdDb(fileName, true);
+        	rrd = openForFetch(fileName);
          	long now = System.currentTimeMillis();
             long latestUpdateTime = (now - (now % interval)) / 1000L;
             long earliestUpdateTime = ((now - (now % interval)) - range) / 1000L;
@@ -322,11 +381,7 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
             throw new org.opennms.netmgt.rrd.RrdException("Exception occurred fetching data from " + fileName, e);
         } finally {
             if (rrd != null) {
-                try {
-                    rrd.close();
-                } catch (IOException e) {
-                    LOG.error("Failed to close rrd file: {}", fileName, e);
-                }
+                closeAfterFetch(rrd, fileName);
             }
         }
     }
@@ -870,13 +925,13 @@ public class JRobinRrdStrategy implements RrdStrategy<RrdDef,RrdDb> {
     }
 
     /**
-     * This implementation does not track any stats.
+     * Reports the open, hit and eviction counts of the RrdDb pool, if there is one.
      *
      * @return a {@link java.lang.String} object.
      */
     @Override
     public String getStats() {
-        return "";
+        return m_pool == null ? "" : m_pool.toString();
     }
 
     /*
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rrd.jrobin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.jrobin.core.RrdDb;
+import org.jrobin.core.RrdDef;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.test.FileAnticipator;
+
+public class JRobinRrdDbPoolTest {
+
+    private FileAnticipator m_fileAnticipator;
+
+    @Before
+    public void setUp() throws Exception {
+        m_fileAnticipator = new FileAnticipator();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_fileAnticipator.deleteExpected(true);
+        m_fileAnticipator.tearDown();
+    }
+
+    private String createRrdFile(final String name) throws Exception {
+        final File file = m_fileAnticipator.expecting(name + ".jrb");
+        final RrdDef def = new RrdDef(file.getAbsolutePath());
+        def.setStartTime(1000);
+        def.setStep(300);
+        def.addDatasource("bar", "GAUGE", 3000, Double.NaN, Double.NaN);
+        def.addArchive("RRA:AVERAGE:0.5:1:2016");
+        new RrdDb(def).close();
+        return file.getAbsolutePath();
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        final String path = createRrdFile("a");
+        final JRobinRrdDbPool pool = new JRobinRrdDbPool(2);
+
+        final RrdDb first = pool.acquire(path);
+        pool.release(first);
+        final RrdDb second = pool.acquire(path);
+        pool.release(second);
+
+        assertSame(first, second);
+        assertFalse(first.isClosed());
+        assertEquals(2, pool.getRequests());
+        assertEquals(1, pool.getHits());
+        assertEquals(1, pool.getOpens());
+        assertEquals(1, pool.getOpenFiles());
+
+        pool.closeAll();
+        assertTrue(first.isClosed());
+        assertEquals(0, pool.getOpenFiles());
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws Exception {
+        final String a = createRrdFile("a");
+        final String b = createRrdFile("b");
+        final String c = createRrdFile("c");
+        final JRobinRrdDbPool pool = new JRobinRrdDbPool(2);
+
+        final RrdDb dbA = pool.acquire(a);
+        pool.release(dbA);
+        final RrdDb dbB = pool.acquire(b);
+        pool.release(dbB);
+        // a is now more recently used than b
+        pool.release(pool.acquire(a));
+        final RrdDb dbC = pool.acquire(c);
+        pool.release(dbC);
+
+        assertEquals(2, pool.getOpenFiles());
+        assertEquals(1, pool.getEvictions());
+        assertFalse(dbA.isClosed());
+        assertTrue(dbB.isClosed());
+        assertFalse(dbC.isClosed());
+        pool.closeAll();
+    }
+
+    @Test
+    public void testHandlesInUseAreNotEvicted() throws Exception {
+        final JRobinRrdDbPool pool = new JRobinRrdDbPool(1);
+        final RrdDb dbA = pool.acquire(createRrdFile("a"));
+        final RrdDb dbB = pool.acquire(createRrdFile("b"));
+
+        assertEquals(2, pool.getOpenFiles());
+        assertFalse(dbA.isClosed());
+        assertFalse(dbB.isClosed());
+
+        pool.release(dbA);
+        assertEquals(1, pool.getOpenFiles());
+        assertTrue(dbA.isClosed());
+
+        pool.release(dbB);
+        assertEquals(1, pool.getOpenFiles());
+        assertFalse(dbB.isClosed());
+        pool.closeAll();
+    }
+
+    @Test
+    public void testInvalidateWhileInUse() throws Exception {
+        final String path = createRrdFile("a");
+        final JRobinRrdDbPool pool = new JRobinRrdDbPool(2);
+        final RrdDb first = pool.acquire(path);
+        final RrdDb second = pool.acquire(path);
+        assertSame(first, second);
+
+        pool.invalidate(path);
+        assertEquals(0, pool.getOpenFiles());
+
+        pool.release(first);
+        assertFalse(second.isClosed());
+        pool.release(second);
+        assertTrue(second.isClosed());
+
+        final RrdDb third = pool.acquire(path);
+        assertFalse(third == first);
+        pool.release(third);
+        pool.closeAll();
+    }
+
+    @Test
+    public void testSpeed() throws Exception {
+        final int files = 100;
+        final int updates = 20;
+        final String[] paths = new String[files];
+        for (int i = 0; i < files; i++) {
+            paths[i] = createRrdFile("speed" + i);
+        }
+
+        long start = System.currentTimeMillis();
+        for (int u = 0; u < updates; u++) {
+            for (final String path : paths) {
+                final RrdDb db = new RrdDb(path);
+                db.createSample(1000 + (u + 1) * 300).setValue("bar", u).update();
+                db.close();
+            }
+        }
+        final long unpooled = System.currentTimeMillis() - start;
+
+        final JRobinRrdDbPool pool = new JRobinRrdDbPool(files);
+        start = System.currentTimeMillis();
+        for (int u = updates; u < 2 * updates; u++) {
+            for (final String path : paths) {
+                final RrdDb db = pool.acquire(path);
+                db.createSample(1000 + (u + 1) * 300).setValue("bar", u).update();
+                pool.release(db);
+            }
+        }
+        final long pooled = System.currentTimeMillis() - start;
+        pool.closeAll();
+
+        System.err.println(String.format("%d updates: open and close per update %d ms, pooled %d ms (%s)", files * updates, unpooled, pooled, pool));
+        assertEquals(files, pool.getOpens());
+    }
+}
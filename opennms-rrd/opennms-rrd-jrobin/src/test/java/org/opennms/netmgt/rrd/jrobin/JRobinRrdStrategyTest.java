@@ -173,6 +173,37 @@ public class JRobinRrdStrategyTest {
         m_strategy.closeFile(openedFile);
     }
 
+    @Test
+    public void testTypedUpdate() throws Exception {
+        File rrdFile = createRrdFile();
+        long now = System.currentTimeMillis() / 1000;
+
+        RrdDb openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+        m_strategy.updateFile(openedFile, "huh?", now + 300, new double[] { 1.234234 });
+        m_strategy.updateFile(openedFile, "huh?", now + 600, new double[] { 6.022E23 });
+        m_strategy.closeFile(openedFile);
+
+        openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+        assertEquals("last update time", now + 600, openedFile.getLastUpdateTime());
+        assertEquals("last value", 6.022E23, openedFile.getDatasource(0).getLastValue(), 0.0);
+
+        m_strategy.updateFile(openedFile, "huh?", now + 900, new double[] { Double.NaN });
+        m_strategy.closeFile(openedFile);
+
+        openedFile = m_strategy.openFile(rrdFile.getAbsolutePath());
+        assertTrue("unknown value should be stored as NaN", Double.isNaN(openedFile.getDatasource(0).getLastValue()));
+        m_strategy.closeFile(openedFile);
+    }
+
+    @Test
+    public void testFormatUpdate() throws Exception {
+        assertEquals("1234:U", RrdUtils.formatUpdate(1234, new double[] { Double.NaN }));
+        assertEquals("1234:769:1.5:-2", RrdUtils.formatUpdate(1234, new double[] { 769, 1.5, -2 }));
+        assertEquals("1234:9223372036854774784", RrdUtils.formatUpdate(1234, new double[] { 9223372036854775000.0 }));
+        assertEquals("1234:18446744073709551616", RrdUtils.formatUpdate(1234, new double[] { 18446744073709551615.0 }));
+        assertEquals("1234:1.0E-5", RrdUtils.formatUpdate(1234, new double[] { 0.00001 }));
+    }
+
     @Test
     public void testSampleSetFloatingPointValueGood() throws Exception {
         File rrdFile = createRrdFile();
@@ -215,6 +215,20 @@ public class JniRrdStrategy implements RrdStrategy<JniRrdStrategy.CreateCommand
         rrd.append(data);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * rrdtool only understands the string form, so the values are formatted
+     * straight into the pending update command. Counters above 2^53 arrive
+     * here already rounded; the collection persister sends those through
+     * the string form to keep them exact.
+     */
+    @Override
+    public void updateFile(StringBuffer rrd, String owner, long timestamp, double[] values) throws Exception {
+        rrd.append(' ');
+        rrd.append(RrdUtils.formatUpdate(timestamp, values));
+    }
+
     /**
      * Initialized the JNI Interface
      *
@@ -69,19 +69,25 @@ public class QueuingTcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefi
         private String m_filename;
         private String m_owner;
         private String m_data;
+        private long m_timestamp;
+        private double[] m_values;
         public PerformanceDataReading(String filename, String owner, String data) {
             m_filename = filename;
             m_owner = owner;
             m_data = data;
         }
-        public String getFilename() {
-            return m_filename;
-        }
-        public String getOwner() {
-            return m_owner;
+        public PerformanceDataReading(String filename, String owner, long timestamp, double[] values) {
+            m_filename = filename;
+            m_owner = owner;
+            m_timestamp = timestamp;
+            m_values = values;
         }
-        public String getData() {
-            return m_data;
+        public void addTo(RrdOutputSocket socket) {
+            if (m_values == null) {
+                socket.addData(m_filename, m_owner, m_data);
+            } else {
+                socket.addData(m_filename, m_owner, m_timestamp, m_values);
+            }
         }
     }
 
@@ -102,7 +108,7 @@ public class QueuingTcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefi
                     if (m_myQueue.drainTo(sendMe) > 0) {
                         RrdOutputSocket socket = new RrdOutputSocket(m_strategy.getHost(), m_strategy.getPort());
                         for (PerformanceDataReading reading : sendMe) {
-                            socket.addData(reading.getFilename(), reading.getOwner(), reading.getData());
+                            reading.addTo(socket);
                         }
                         socket.writeData();
                     } else {
@@ -171,7 +177,18 @@ public class QueuingTcpRrdStrategy implements RrdStrategy<TcpRrdStrategy.RrdDefi
     /** {@inheritDoc} */
     @Override
     public void updateFile(String fileName, String owner, String data) throws Exception {
-        if (m_queue.offer(new PerformanceDataReading(fileName, owner, data), 500, TimeUnit.MILLISECONDS)) {
+        enqueue(new PerformanceDataReading(fileName, owner, data));
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void updateFile(String fileName, String owner, long timestamp, double[] values) throws Exception {
+        // the reading is sent later, so don't hold on to the caller's array
+        enqueue(new PerformanceDataReading(fileName, owner, timestamp, values.clone()));
+    }
+
+    private void enqueue(PerformanceDataReading reading) throws InterruptedException {
+        if (m_queue.offer(reading, 500, TimeUnit.MILLISECONDS)) {
             if (m_skippedReadings > 0) {
                 LOG.warn("Skipped {} performance data message(s) because of queue overflow", m_skippedReadings);
                 m_skippedReadings = 0;
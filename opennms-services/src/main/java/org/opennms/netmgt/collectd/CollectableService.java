@@ -29,12 +29,14 @@
 package org.opennms.netmgt.collectd;
 
 import java.io.File;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.opennms.core.logging.Logging;
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.EventConstants;
 import org.opennms.netmgt.collectd.Collectd.SchedulingCompletedFlag;
 import org.opennms.netmgt.collection.api.CollectionAgent;
+import org.opennms.netmgt.collection.api.CollectionCallback;
 import org.opennms.netmgt.collection.api.CollectionException;
 import org.opennms.netmgt.collection.api.CollectionInitializationException;
 import org.opennms.netmgt.collection.api.CollectionSet;
@@ -86,6 +88,12 @@ final class CollectableService implements ReadyRunnable {
      */
     private volatile long m_lastScheduledCollectionTime;
 
+    /**
+     * When the next collection is due, on the scheduler's clock, or 0 if it
+     * has not been rescheduled yet.
+     */
+    private volatile long m_dueTime;
+
     /**
      * The scheduler for collectd
      */
@@ -119,6 +127,8 @@ final class CollectableService implements ReadyRunnable {
     
     private final RrdRepository m_repository;
 
+    private final CollectdStatistics m_statistics;
+
     /**
      * Constructs a new instance of a CollectableService object.
      *
@@ -129,10 +139,12 @@ final class CollectableService implements ReadyRunnable {
      * @param scheduler a {@link org.opennms.netmgt.scheduler.Scheduler} object.
      * @param schedulingCompletedFlag a {@link org.opennms.netmgt.collectd.Collectd.SchedulingCompletedFlag} object.
      * @param transMgr a {@link org.springframework.transaction.PlatformTransactionManager} object.
+     * @param statistics a {@link org.opennms.netmgt.collectd.CollectdStatistics} object.
      */
-    protected CollectableService(OnmsIpInterface iface, IpInterfaceDao ifaceDao, CollectionSpecification spec, Scheduler scheduler, SchedulingCompletedFlag schedulingCompletedFlag, PlatformTransactionManager transMgr) throws CollectionInitializationException {
+    protected CollectableService(OnmsIpInterface iface, IpInterfaceDao ifaceDao, CollectionSpecification spec, Scheduler scheduler, SchedulingCompletedFlag schedulingCompletedFlag, PlatformTransactionManager transMgr, CollectdStatistics statistics) throws CollectionInitializationException {
         m_agent = DefaultCollectionAgent.create(iface.getId(), ifaceDao, transMgr);
         m_spec = spec;
+        m_statistics = statistics;
         m_scheduler = scheduler;
         m_schedulingCompletedFlag = schedulingCompletedFlag;
         m_ifaceDao = ifaceDao;
@@ -311,6 +323,8 @@ final class CollectableService implements ReadyRunnable {
         }
 
         // Update last scheduled poll time
+        // measured from when the service was rescheduled, so the time spent collecting does not count
+        m_statistics.collectionStarted(m_dueTime > 0L ? m_scheduler.getCurrentTime() - m_dueTime : 0L, m_spec.getInterval());
         m_lastScheduledCollectionTime = System.currentTimeMillis();
 
         /*
@@ -318,28 +332,119 @@ final class CollectableService implements ReadyRunnable {
          * that the collection should be skipped.
          */
         if (!m_spec.scheduledOutage(m_agent)) {
+            if (m_spec.isAsync()) {
+                // the service is rescheduled once the collection completes
+                startAsyncCollection();
+                return;
+            }
+
             try {
                 doCollection();
                 updateStatus(ServiceCollector.COLLECTION_SUCCEEDED, null);
-            } catch (CollectionTimedOut e) {
-                LOG.info(e.getMessage());
-                updateStatus(ServiceCollector.COLLECTION_FAILED, e);
-            } catch (CollectionWarning e) {
-                LOG.warn(e.getMessage(), e);
-                updateStatus(ServiceCollector.COLLECTION_FAILED, e);
-            } catch (CollectionException e) {
-                LOG.error(e.getMessage(), e);
-                updateStatus(ServiceCollector.COLLECTION_FAILED, e);
             } catch (Throwable e) {
-                LOG.error(e.getMessage(), e);
-                updateStatus(ServiceCollector.COLLECTION_FAILED, new CollectionException("Collection failed unexpectedly: " + e.getClass().getSimpleName() + ": " + e.getMessage(), e));
+                handleCollectionFailure(e);
             }
         }
         
     	// Reschedule the service
+        reschedule();
+    }
+
+    private void reschedule() {
+        m_dueTime = m_scheduler.getCurrentTime() + m_spec.getInterval();
         m_scheduler.schedule(m_spec.getInterval(), getReadyRunnable());
     }
 
+    private void handleCollectionFailure(Throwable t) {
+        if (t instanceof CollectionTimedOut) {
+            LOG.info(t.getMessage());
+            updateStatus(ServiceCollector.COLLECTION_FAILED, (CollectionException)t);
+        } else if (t instanceof CollectionWarning) {
+            LOG.warn(t.getMessage(), t);
+            updateStatus(ServiceCollector.COLLECTION_FAILED, (CollectionException)t);
+        } else if (t instanceof CollectionException) {
+            LOG.error(t.getMessage(), t);
+            updateStatus(ServiceCollector.COLLECTION_FAILED, (CollectionException)t);
+        } else {
+            LOG.error(t.getMessage(), t);
+            updateStatus(ServiceCollector.COLLECTION_FAILED, new CollectionException("Collection failed unexpectedly: " + t.getClass().getSimpleName() + ": " + t.getMessage(), t));
+        }
+    }
+
+    /**
+     * Starts a collection without waiting for the agent to respond. Once the
+     * collector calls back, persisting, thresholding and rescheduling are
+     * queued on the scheduler so that they never run on the collector's
+     * threads. Only the first outcome counts, so that a collector which both
+     * calls back and throws does not get the service scheduled twice.
+     */
+    private void startAsyncCollection() {
+        LOG.info("run: starting new asynchronous collection for {}/{}/{}", getHostAddress(), m_spec.getServiceName(), m_spec.getPackageName());
+        m_statistics.asyncCollectionStarted();
+        final AtomicBoolean completed = new AtomicBoolean(false);
+        try {
+            m_spec.collect(m_agent, new CollectionCallback() {
+                @Override
+                public void collectionSucceeded(CollectionSet collectionSet) {
+                    scheduleCompletion(completed, collectionSet, null);
+                }
+
+                @Override
+                public void collectionFailed(CollectionException e) {
+                    scheduleCompletion(completed, null, e);
+                }
+            });
+        } catch (Throwable t) {
+            scheduleCompletion(completed, null, new CollectionException("An undeclared throwable was caught during data collection for interface " + getHostAddress() +"/"+ m_spec.getServiceName(), t));
+        }
+    }
+
+    private void scheduleCompletion(final AtomicBoolean completed, final CollectionSet result, final CollectionException failure) {
+        if (!completed.compareAndSet(false, true)) {
+            LOG.warn("run: ignoring another outcome of the collection for {}/{}/{}", getHostAddress(), m_spec.getServiceName(), m_spec.getPackageName(), failure);
+            return;
+        }
+        m_scheduler.schedule(0, new ReadyRunnable() {
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void run() {
+                Logging.withPrefix(Collectd.LOG4J_CATEGORY, new Runnable() {
+                    @Override
+                    public void run() {
+                        completeAsyncCollection(result, failure);
+                    }
+                });
+            }
+
+            @Override
+            public String toString() {
+                return "completion of " + CollectableService.this;
+            }
+        });
+    }
+
+    private void completeAsyncCollection(CollectionSet result, CollectionException failure) {
+        m_statistics.asyncCollectionCompleted();
+        try {
+            if (failure != null) {
+                LOG.warn("run: failed collection for {}/{}/{}", getHostAddress(), m_spec.getServiceName(), m_spec.getPackageName());
+                throw failure;
+            }
+            processCollectionSet(result);
+            LOG.info("run: finished collection for {}/{}/{}", getHostAddress(), m_spec.getServiceName(), m_spec.getPackageName());
+            updateStatus(ServiceCollector.COLLECTION_SUCCEEDED, null);
+        } catch (Throwable e) {
+            handleCollectionFailure(e);
+        } finally {
+            // Reschedule the service
+            reschedule();
+        }
+    }
+
     private void updateStatus(int status, CollectionException e) {
         // Any change in status?
         if (status != m_status) {
@@ -383,35 +488,8 @@ final class CollectableService implements ReadyRunnable {
          */
 	private void doCollection() throws CollectionException {
 		LOG.info("run: starting new collection for {}/{}/{}", getHostAddress(), m_spec.getServiceName(), m_spec.getPackageName());
-		CollectionSet result = null;
 		try {
-		    result = m_spec.collect(m_agent);
-		    if (result != null) {
-                        Collectd.instrumentation().beginPersistingServiceData(m_spec.getPackageName(), m_nodeId, getHostAddress(), m_spec.getServiceName());
-                        try {
-                            BasePersister persister = createPersister(m_params, m_repository);
-                            persister.setIgnorePersist(result.ignorePersist());
-                            result.visit(persister);
-                        } finally {
-                            Collectd.instrumentation().endPersistingServiceData(m_spec.getPackageName(), m_nodeId, getHostAddress(), m_spec.getServiceName());
-                        }
-                        
-                        /*
-                         * Do the thresholding; this could be made more generic (listeners being passed the collectionset), but frankly, why bother?
-                         * The first person who actually needs to configure that sort of thing on the fly can code it up.
-                         */
-                        if (m_thresholdVisitor != null) {
-                            if (m_thresholdVisitor.isNodeInOutage()) {
-                                LOG.info("run: the threshold processing will be skipped because the node {} is on a scheduled outage.", m_nodeId);
-                            } else if (m_thresholdVisitor.hasThresholds()) {
-                                result.visit(m_thresholdVisitor);
-                            }
-                        }
-                       
-                        if (result.getStatus() != ServiceCollector.COLLECTION_SUCCEEDED) {
-                            throw new CollectionFailed(result.getStatus());
-                        }
-                    }
+		    processCollectionSet(m_spec.collect(m_agent));
                 } catch (CollectionException e) {
                     LOG.warn("run: failed collection for {}/{}/{}", getHostAddress(), m_spec.getServiceName(), m_spec.getPackageName());
                     throw e;
@@ -422,6 +500,40 @@ final class CollectableService implements ReadyRunnable {
 		LOG.info("run: finished collection for {}/{}/{}", getHostAddress(), m_spec.getServiceName(), m_spec.getPackageName());
 	}
 
+    /**
+     * Persists and thresholds the result of a collection.
+     */
+    private void processCollectionSet(CollectionSet result) throws CollectionException {
+        if (result == null) {
+            return;
+        }
+
+        Collectd.instrumentation().beginPersistingServiceData(m_spec.getPackageName(), m_nodeId, getHostAddress(), m_spec.getServiceName());
+        try {
+            BasePersister persister = createPersister(m_params, m_repository);
+            persister.setIgnorePersist(result.ignorePersist());
+            result.visit(persister);
+        } finally {
+            Collectd.instrumentation().endPersistingServiceData(m_spec.getPackageName(), m_nodeId, getHostAddress(), m_spec.getServiceName());
+        }
+
+        /*
+         * Do the thresholding; this could be made more generic (listeners being passed the collectionset), but frankly, why bother?
+         * The first person who actually needs to configure that sort of thing on the fly can code it up.
+         */
+        if (m_thresholdVisitor != null) {
+            if (m_thresholdVisitor.isNodeInOutage()) {
+                LOG.info("run: the threshold processing will be skipped because the node {} is on a scheduled outage.", m_nodeId);
+            } else if (m_thresholdVisitor.hasThresholds()) {
+                result.visit(m_thresholdVisitor);
+            }
+        }
+
+        if (result.getStatus() != ServiceCollector.COLLECTION_SUCCEEDED) {
+            throw new CollectionFailed(result.getStatus());
+        }
+    }
+
 	/**
      * Process any outstanding updates.
      * 
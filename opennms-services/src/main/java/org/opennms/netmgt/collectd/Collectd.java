@@ -71,9 +71,9 @@ import org.opennms.netmgt.model.OnmsNode;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventIpcManager;
 import org.opennms.netmgt.model.events.EventListener;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.SchedulerFactory;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
 import org.opennms.netmgt.xml.event.Value;
@@ -165,6 +165,8 @@ public class Collectd extends AbstractServiceDaemon implements
 
     private final SchedulingCompletedFlag m_schedulingCompletedFlag = new SchedulingCompletedFlag();
 
+    private final CollectdStatistics m_statistics = new CollectdStatistics();
+
     private volatile EventIpcManager m_eventIpcManager;
 
     @Autowired
@@ -309,7 +311,7 @@ public class Collectd extends AbstractServiceDaemon implements
                 // Create a scheduler
                 try {
                     LOG.debug("init: Creating collectd scheduler");
-                    setScheduler(new LegacyScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
+                    setScheduler(SchedulerFactory.createScheduler("Collectd", m_collectdConfigFactory.getCollectdConfig().getThreads()));
                 } catch (final RuntimeException e) {
                     LOG.error("init: Failed to create collectd scheduler", e);
                     throw e;
@@ -510,7 +512,8 @@ public class Collectd extends AbstractServiceDaemon implements
 
                 cSvc = new CollectableService(iface, m_ifaceDao, spec, getScheduler(),
                                               m_schedulingCompletedFlag,
-                                              m_transTemplate.getTransactionManager());
+                                              m_transTemplate.getTransactionManager(),
+                                              m_statistics);
 
                 // Add new collectable service to the collectable service list.
                 m_collectableServices.add(cSvc);
@@ -1381,6 +1384,15 @@ public class Collectd extends AbstractServiceDaemon implements
         m_scheduler = scheduler;
     }
 
+    /**
+     * <p>getStatistics</p>
+     *
+     * @return a {@link org.opennms.netmgt.collectd.CollectdStatistics} object.
+     */
+    public CollectdStatistics getStatistics() {
+        return m_statistics;
+    }
+
     /**
      * <p>getScheduler</p>
      *
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.collectd;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks how far behind their schedule collections start and how many
+ * asynchronous collections are waiting for their agents.
+ */
+public class CollectdStatistics {
+    private final AtomicLong m_collectionsStarted = new AtomicLong();
+    private final AtomicLong m_collectionsLate = new AtomicLong();
+    private final AtomicLong m_intervalsMissed = new AtomicLong();
+    private final AtomicLong m_totalLateness = new AtomicLong();
+    private final AtomicLong m_maxLateness = new AtomicLong();
+    private final AtomicInteger m_pendingCollections = new AtomicInteger();
+
+    /**
+     * Records the start of a collection.
+     *
+     * @param lateness the number of milliseconds the collection started
+     *            after it was due
+     * @param interval the collection interval in milliseconds
+     */
+    public void collectionStarted(final long lateness, final long interval) {
+        m_collectionsStarted.incrementAndGet();
+        if (lateness <= 0 || interval <= 0) {
+            return;
+        }
+
+        m_totalLateness.addAndGet(lateness);
+        // starting later than a tenth of the interval will skew the rates we store
+        if (lateness * 10 > interval) {
+            m_collectionsLate.incrementAndGet();
+        }
+        if (lateness >= interval) {
+            m_intervalsMissed.addAndGet(lateness / interval);
+        }
+
+        long max = m_maxLateness.get();
+        while (lateness > max && !m_maxLateness.compareAndSet(max, lateness)) {
+            max = m_maxLateness.get();
+        }
+    }
+
+    public void asyncCollectionStarted() {
+        m_pendingCollections.incrementAndGet();
+    }
+
+    public void asyncCollectionCompleted() {
+        m_pendingCollections.decrementAndGet();
+    }
+
+    public long getCollectionsStarted() {
+        return m_collectionsStarted.get();
+    }
+
+    /**
+     * @return the number of collections that started later than a tenth of
+     *         their interval
+     */
+    public long getCollectionsLate() {
+        return m_collectionsLate.get();
+    }
+
+    /**
+     * @return the number of whole intervals that passed without a collection
+     */
+    public long getIntervalsMissed() {
+        return m_intervalsMissed.get();
+    }
+
+    /**
+     * @return the mean lateness in milliseconds of all collections
+     */
+    public double getAverageLateness() {
+        final long started = m_collectionsStarted.get();
+        return started == 0 ? 0.0 : (double) m_totalLateness.get() / started;
+    }
+
+    public long getMaxLateness() {
+        return m_maxLateness.get();
+    }
+
+    /**
+     * @return the number of asynchronous collections waiting for a response
+     *         or for a thread to persist their results
+     */
+    public int getPendingCollections() {
+        return m_pendingCollections.get();
+    }
+}
@@ -33,7 +33,9 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 
+import org.opennms.netmgt.collection.api.AsyncServiceCollector;
 import org.opennms.netmgt.collection.api.CollectionAgent;
+import org.opennms.netmgt.collection.api.CollectionCallback;
 import org.opennms.netmgt.collection.api.CollectionException;
 import org.opennms.netmgt.collection.api.CollectionInitializationException;
 import org.opennms.netmgt.collection.api.CollectionSet;
@@ -281,6 +283,51 @@ public class CollectionSpecification {
         }
     }
 
+    /**
+     * Whether collections are started with
+     * {@link #collect(CollectionAgent, CollectionCallback)}. That is the case
+     * if the collector supports it and the
+     * <code>org.opennms.netmgt.collectd.async</code> system property is true.
+     *
+     * @return a boolean.
+     */
+    public boolean isAsync() {
+        return Boolean.getBoolean("org.opennms.netmgt.collectd.async") && getCollector() instanceof AsyncServiceCollector;
+    }
+
+    /**
+     * Starts a collection without waiting for it to finish.
+     *
+     * @param agent a {@link org.opennms.netmgt.collection.api.CollectionAgent} object.
+     * @param callback notified once the collection finished
+     */
+    public void collect(final CollectionAgent agent, final CollectionCallback callback) {
+        Collectd.instrumentation().beginCollectorCollect(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName);
+        ((AsyncServiceCollector)getCollector()).collect(agent, EventIpcManagerFactory.getIpcManager(), getPropertyMap(), new CollectionCallback() {
+            @Override
+            public void collectionSucceeded(CollectionSet set) {
+                try {
+                    Collectd.instrumentation().endCollectorCollect(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName);
+                    if (set.getStatus() == ServiceCollector.COLLECTION_FAILED) {
+                        Collectd.instrumentation().reportCollectionException(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName, new CollectionFailed(ServiceCollector.COLLECTION_FAILED));
+                    }
+                } finally {
+                    callback.collectionSucceeded(set);
+                }
+            }
+
+            @Override
+            public void collectionFailed(CollectionException e) {
+                try {
+                    Collectd.instrumentation().endCollectorCollect(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName);
+                    Collectd.instrumentation().reportCollectionException(m_package.getName(), agent.getNodeId(), agent.getHostAddress(), m_svcName, e);
+                } finally {
+                    callback.collectionFailed(e);
+                }
+            }
+        });
+    }
+
     /**
      * <p>scheduledOutage</p>
      *
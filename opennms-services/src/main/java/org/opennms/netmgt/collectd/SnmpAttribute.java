@@ -126,6 +126,9 @@ public class SnmpAttribute extends AbstractCollectionAttribute {
         if (getValue() == null) {
             LOG.debug("No data collected for attribute {}. Skipping", this);
             return null;
+        } else if (getValue().getType() == SnmpValue.SNMP_COUNTER64) {
+            // a long would wrap Counter64 values above 2^63
+            return getValue().toBigInteger().toString();
         } else if (getValue().isNumeric()) {
             return Long.toString(getValue().toLong());
         } else {
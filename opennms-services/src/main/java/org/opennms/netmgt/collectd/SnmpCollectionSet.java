@@ -38,6 +38,7 @@ import java.util.Map;
 import org.opennms.core.utils.ParameterMap;
 import org.opennms.netmgt.collection.api.CollectionAgent;
 import org.opennms.netmgt.collection.api.CollectionAttributeType;
+import org.opennms.netmgt.collection.api.CollectionCallback;
 import org.opennms.netmgt.collection.api.CollectionException;
 import org.opennms.netmgt.collection.api.CollectionResource;
 import org.opennms.netmgt.collection.api.CollectionSet;
@@ -49,6 +50,7 @@ import org.opennms.netmgt.snmp.CollectionTracker;
 import org.opennms.netmgt.snmp.SnmpAgentConfig;
 import org.opennms.netmgt.snmp.SnmpResult;
 import org.opennms.netmgt.snmp.SnmpUtils;
+import org.opennms.netmgt.snmp.SnmpWalkCallback;
 import org.opennms.netmgt.snmp.SnmpWalker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -400,6 +402,38 @@ public class SnmpCollectionSet implements Collectable, CollectionSet {
         }
     }
 
+    /**
+     * Starts walking the agent and returns right away; the callback is
+     * notified on the SNMP library's thread once the walk has finished.
+     *
+     * @param callback notified with this collection set or the failure
+     */
+    void collect(final CollectionCallback callback) {
+        final SnmpWalker walker = createWalker();
+        walker.setCallback(new SnmpWalkCallback() {
+            @Override
+            public void complete(SnmpWalker finishedWalker) {
+                try {
+                    logFinishedWalker();
+                    // Was the collection successful?
+                    verifySuccessfulWalk(finishedWalker);
+                } catch (CollectionException e) {
+                    callback.collectionFailed(e);
+                    return;
+                } catch (Throwable t) {
+                    // the walker would only log it, and the service would never be rescheduled
+                    callback.collectionFailed(new CollectionException("Unexpected error during node SNMP collection for: " + getCollectionAgent().getHostAddress(), t));
+                    return;
+                }
+                m_status = ServiceCollector.COLLECTION_SUCCEEDED;
+                callback.collectionSucceeded(SnmpCollectionSet.this);
+            }
+        });
+        walker.start();
+
+        logStartedWalker();
+    }
+
     boolean checkDisableForceRescan(final String disabledString) {
         final Map<String, Object> parameters = m_snmpCollection.getServiceParameters().getParameters();
         final String src = ParameterMap.getKeyedString(parameters, "disableForceRescan", null);
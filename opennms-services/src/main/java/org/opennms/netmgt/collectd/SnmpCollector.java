@@ -34,7 +34,9 @@ import java.util.Date;
 import java.util.Map;
 
 import org.opennms.netmgt.EventConstants;
+import org.opennms.netmgt.collection.api.AsyncServiceCollector;
 import org.opennms.netmgt.collection.api.CollectionAgent;
+import org.opennms.netmgt.collection.api.CollectionCallback;
 import org.opennms.netmgt.collection.api.CollectionException;
 import org.opennms.netmgt.collection.api.CollectionInitializationException;
 import org.opennms.netmgt.collection.api.CollectionSet;
@@ -54,7 +56,7 @@ import org.slf4j.LoggerFactory;
  *
  * @author <A HREF="mailto:brozow@opennms.org">Matt Brozowski</A>
  */
-public class SnmpCollector implements ServiceCollector {
+public class SnmpCollector implements AsyncServiceCollector {
     
     private static final Logger LOG = LoggerFactory.getLogger(SnmpCollector.class);
     
@@ -304,39 +306,11 @@ public class SnmpCollector implements ServiceCollector {
     @Override
     public CollectionSet collect(CollectionAgent agent, EventProxy eventProxy, Map<String, Object> parameters) throws CollectionException {
         try {
-            // XXX: Experimental code that reuses the OnmsSnmpCollection
-            // OnmsSnmpCollection snmpCollection = (OnmsSnmpCollection)agent.getAttribute("SNMP_COLLECTION");
-            // ServiceParameters params = snmpCollection.getServiceParameters();
-            
-            // XXX: This code would be commented out in light if the experimental code above was enabled
-            final ServiceParameters params = new ServiceParameters(parameters);
-            params.logIfAliasConfig();
-            OnmsSnmpCollection snmpCollection = new OnmsSnmpCollection((SnmpCollectionAgent)agent, params);
-
-            final ForceRescanState forceRescanState = new ForceRescanState(agent, eventProxy);
-
-            SnmpCollectionSet collectionSet = snmpCollection.createCollectionSet((SnmpCollectionAgent)agent);
-            collectionSet.setCollectionTimestamp(new Date());
-            if (!collectionSet.hasDataToCollect()) {
-                logNoDataToCollect(agent);
-                // should we return here?
-            }
-            
+            final SnmpCollectionSet collectionSet = createCollectionSet(agent, parameters);
+
             collectionSet.collect();
 
-            /*
-             * FIXME: Should we even be doing this? I say we get rid of this force rescan thingie
-             * {@see http://issues.opennms.org/browse/NMS-1057}
-             */
-            if (System.getProperty("org.opennms.netmgt.collectd.SnmpCollector.forceRescan", "false").equalsIgnoreCase("true")
-                    && collectionSet.rescanNeeded()) {
-                /*
-                 * TODO: the behavior of this object may have been re-factored away.
-                 * Verify that this is correct and remove this unused object if it
-                 * is no longer needed.  My gut thinks this should be investigated.
-                 */
-                forceRescanState.rescanIndicated();
-            }
+            checkForceRescan(agent, eventProxy, collectionSet);
             return collectionSet;
         } catch (CollectionException e) {
             throw e;
@@ -345,6 +319,76 @@ public class SnmpCollector implements ServiceCollector {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * Start a data collection that completes once the agent answered the
+     * last request, without blocking the calling thread.
+     */
+    @Override
+    public void collect(final CollectionAgent agent, final EventProxy eventProxy, final Map<String, Object> parameters, final CollectionCallback callback) {
+        final SnmpCollectionSet collectionSet;
+        try {
+            collectionSet = createCollectionSet(agent, parameters);
+        } catch (Throwable t) {
+            callback.collectionFailed(new CollectionException("Unexpected error during node SNMP collection for: " + agent.getHostAddress(), t));
+            return;
+        }
+
+        collectionSet.collect(new CollectionCallback() {
+            @Override
+            public void collectionSucceeded(CollectionSet set) {
+                try {
+                    checkForceRescan(agent, eventProxy, collectionSet);
+                } catch (Throwable t) {
+                    callback.collectionFailed(new CollectionException("Unexpected error during node SNMP collection for: " + agent.getHostAddress(), t));
+                    return;
+                }
+                callback.collectionSucceeded(set);
+            }
+
+            @Override
+            public void collectionFailed(CollectionException e) {
+                callback.collectionFailed(e);
+            }
+        });
+    }
+
+    private SnmpCollectionSet createCollectionSet(CollectionAgent agent, Map<String, Object> parameters) {
+        // XXX: Experimental code that reuses the OnmsSnmpCollection
+        // OnmsSnmpCollection snmpCollection = (OnmsSnmpCollection)agent.getAttribute("SNMP_COLLECTION");
+        // ServiceParameters params = snmpCollection.getServiceParameters();
+
+        // XXX: This code would be commented out in light if the experimental code above was enabled
+        final ServiceParameters params = new ServiceParameters(parameters);
+        params.logIfAliasConfig();
+        OnmsSnmpCollection snmpCollection = new OnmsSnmpCollection((SnmpCollectionAgent)agent, params);
+
+        SnmpCollectionSet collectionSet = snmpCollection.createCollectionSet((SnmpCollectionAgent)agent);
+        collectionSet.setCollectionTimestamp(new Date());
+        if (!collectionSet.hasDataToCollect()) {
+            logNoDataToCollect(agent);
+            // should we return here?
+        }
+        return collectionSet;
+    }
+
+    private void checkForceRescan(CollectionAgent agent, EventProxy eventProxy, SnmpCollectionSet collectionSet) {
+        /*
+         * FIXME: Should we even be doing this? I say we get rid of this force rescan thingie
+         * {@see http://issues.opennms.org/browse/NMS-1057}
+         */
+        if (System.getProperty("org.opennms.netmgt.collectd.SnmpCollector.forceRescan", "false").equalsIgnoreCase("true")
+                && collectionSet.rescanNeeded()) {
+            /*
+             * TODO: the behavior of this object may have been re-factored away.
+             * Verify that this is correct and remove this unused object if it
+             * is no longer needed.  My gut thinks this should be investigated.
+             */
+            new ForceRescanState(agent, eventProxy).rescanIndicated();
+        }
+    }
+
     /*private void persistData(ServiceParameters params, SnmpCollectionSet collectionSet) {
         Collectd.instrumentation().beginPersistingServiceData(collectionSet.getCollectionAgent().getNodeId(), collectionSet.getCollectionAgent().getHostAddress(), serviceName());
         try {
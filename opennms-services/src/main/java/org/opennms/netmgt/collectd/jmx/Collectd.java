@@ -29,7 +29,7 @@
 package org.opennms.netmgt.collectd.jmx;
 
 import java.util.concurrent.ThreadPoolExecutor;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.PooledScheduler;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
 
@@ -120,11 +120,42 @@ public class Collectd extends AbstractSpringContextJmxServiceDaemon<org.opennms.
             return 0L;
         }
     }
+
+    @Override
+    public long getCollectionsStarted() {
+        return getDaemon().getStatistics().getCollectionsStarted();
+    }
+
+    @Override
+    public long getCollectionsLate() {
+        return getDaemon().getStatistics().getCollectionsLate();
+    }
+
+    @Override
+    public long getIntervalsMissed() {
+        return getDaemon().getStatistics().getIntervalsMissed();
+    }
+
+    @Override
+    public double getAverageLateness() {
+        return getDaemon().getStatistics().getAverageLateness();
+    }
+
+    @Override
+    public long getMaxLateness() {
+        return getDaemon().getStatistics().getMaxLateness();
+    }
+
+    @Override
+    public long getPendingCollections() {
+        return getDaemon().getStatistics().getPendingCollections();
+    }
+
     private ThreadPoolExecutor getExecutor() {
-        return (ThreadPoolExecutor) ((LegacyScheduler) getDaemon().getScheduler()).getRunner();
+        return (ThreadPoolExecutor) ((PooledScheduler) getDaemon().getScheduler()).getRunner();
     }
 
     private boolean getThreadPoolStatsStatus() {
-        return (getDaemon().getScheduler() instanceof LegacyScheduler);
+        return (getDaemon().getScheduler() instanceof PooledScheduler);
     }
 }
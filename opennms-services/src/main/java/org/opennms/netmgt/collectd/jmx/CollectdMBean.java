@@ -71,4 +71,34 @@ public interface CollectdMBean extends BaseOnmsMBean {
      * @return The ratio of completed to scheduled collection tasks since collector startup
      */
     public double getTaskCompletionRatio();
+
+    /**
+     * @return The number of collections started since Collectd was last started
+     */
+    public long getCollectionsStarted();
+
+    /**
+     * @return The number of collections that started later than a tenth of their interval
+     */
+    public long getCollectionsLate();
+
+    /**
+     * @return The number of collection intervals that passed without a collection
+     */
+    public long getIntervalsMissed();
+
+    /**
+     * @return The mean time in milliseconds collections started after they were due
+     */
+    public double getAverageLateness();
+
+    /**
+     * @return The longest time in milliseconds a collection started after it was due
+     */
+    public long getMaxLateness();
+
+    /**
+     * @return The number of asynchronous collections that have not completed yet
+     */
+    public long getPendingCollections();
 }
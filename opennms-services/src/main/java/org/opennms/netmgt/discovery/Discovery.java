@@ -29,17 +29,16 @@
 package org.opennms.netmgt.discovery;
 
 import java.io.IOException;
+import java.math.BigInteger;
 import java.net.InetAddress;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 
 import org.exolab.castor.xml.MarshalException;
@@ -51,7 +50,7 @@ import org.opennms.netmgt.EventConstants;
 import org.opennms.netmgt.config.DiscoveryConfigFactory;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.icmp.Pinger;
-import org.opennms.netmgt.model.discovery.IPPollAddress;
+import org.opennms.netmgt.model.discovery.IPPollRange;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventForwarder;
 import org.opennms.netmgt.model.events.EventIpcManagerFactory;
@@ -85,25 +84,30 @@ public class Discovery extends AbstractServiceDaemon {
     private static final String LOG4J_CATEGORY = "discover";
 
 
-    private static final int PING_IDLE = 0;
-    private static final int PING_RUNNING = 1;
-    private static final int PING_FINISHING = 2;
-    
+    /**
+     * The system property that caps how many echo requests a sweep may have
+     * awaiting an answer at once.
+     */
+    public static final String MAX_OUTSTANDING_PROPERTY = "org.opennms.netmgt.discovery.maxOutstanding";
+
+    private static final int DEFAULT_MAX_OUTSTANDING = 1024;
+
     /**
      * The SQL query used to get the list of managed IP addresses from the database
      */
     private static final String ALL_IP_ADDRS_SQL = "SELECT DISTINCT ipAddr FROM ipInterface WHERE isManaged <> 'D'";
     
     /**
-     * a set of devices to skip discovery on
+     * a set of devices to skip discovery on, replaced as a whole by
+     * {@link #syncAlreadyDiscovered()}
      */
-    private Set<String> m_alreadyDiscovered = Collections.synchronizedSet(new HashSet<String>());
+    private final AtomicReference<InetAddressBitmap> m_alreadyDiscovered = new AtomicReference<InetAddressBitmap>(new InetAddressBitmap());
 
     private DiscoveryConfigFactory m_discoveryFactory;
 
     private Timer m_timer;
 
-    private int m_xstatus = PING_IDLE;
+    private volatile PingSweep m_sweep;
     
     private volatile EventForwarder m_eventForwarder;
 
@@ -202,58 +206,36 @@ public class Discovery extends AbstractServiceDaemon {
         }
 
 
-        m_xstatus = PING_RUNNING;
-
-        getDiscoveryFactory().getReadLock().lock();
-        try {
-            for (IPPollAddress pollAddress : getDiscoveryFactory().getConfiguredAddresses()) {
-                if (m_xstatus == PING_FINISHING || m_timer == null) {
-                    m_xstatus = PING_IDLE;
-                    return;
-                }
-                LOG.debug("Pinging: {} of foreign source {}", pollAddress.getAddress().toString(), m_discoveryFactory.getForeignSource(pollAddress.getAddress()));
-                ping(pollAddress);
-                try {
-                    Thread.sleep(getDiscoveryFactory().getIntraPacketDelay());
-                } catch (InterruptedException e) {
-                    LOG.info("interrupting discovery sweep");
-                    break;
-                }
-            }
-        } finally {
-            getDiscoveryFactory().getReadLock().unlock();
+        if (m_timer == null) {
+            return;
         }
 
-        LOG.info("finished discovery sweep");
-        m_xstatus = PING_IDLE;
-    }
-
-    private void ping(IPPollAddress pollAddress) {
-        InetAddress address = pollAddress.getAddress();
-        if (address != null) {
-            if (!isAlreadyDiscovered(address)) {
-                try {
-                    m_pinger.ping(address, pollAddress.getTimeout(), pollAddress.getRetries(), (short) 1, cb);
-                } catch (Throwable e) {
-                    LOG.debug("error pinging {}", address.getAddress(), e);
-                }
-            } else {
-            	LOG.debug("{} already discovered.", address.toString());
-            }
-        }
+        final DiscoveryConfigFactory factory = getDiscoveryFactory();
+        final PingSweep sweep = new PingSweep(m_pinger, cb, m_alreadyDiscovered, factory.getPacketsPerSecond(), Integer.getInteger(MAX_OUTSTANDING_PROPERTY, DEFAULT_MAX_OUTSTANDING), countConfiguredAddresses(factory));
+        m_sweep = sweep;
+
+        // getConfiguredAddresses() takes the read lock for itself, so a
+        // long sweep does not hold off configuration changes
+        sweep.run(factory.getConfiguredAddresses());
+
+        LOG.info("finished discovery sweep: {} addresses, {} skipped, {} pinged at {} per second", sweep.getAddressesSwept(), sweep.getAddressesSkipped(), sweep.getPingsSent(), Math.round(sweep.getRate()));
     }
 
-    private boolean isAlreadyDiscovered(InetAddress address) {
-        if (m_alreadyDiscovered.contains(InetAddressUtils.str(address))) {
-            return true;
+    /**
+     * Counts the addresses a sweep will visit, before excludes are applied.
+     */
+    private static long countConfiguredAddresses(final DiscoveryConfigFactory factory) {
+        BigInteger count = BigInteger.valueOf(factory.getSpecifics().size() + factory.getURLSpecifics().size());
+        for (final IPPollRange range : factory.getRanges()) {
+            count = count.add(range.getAddressRange().size());
         }
-        return false;
+        return count.bitLength() < Long.SIZE ? count.longValue() : Long.MAX_VALUE;
     }
 
     private void startTimer() {
         if (m_timer != null) {
             LOG.debug("startTimer() called, but a previous timer exists; making sure it's cleaned up");
-            m_xstatus = PING_FINISHING;
+            cancelSweep();
             m_timer.cancel();
         }
         
@@ -280,7 +262,7 @@ public class Discovery extends AbstractServiceDaemon {
     private void stopTimer() {
         if (m_timer != null) {
             LOG.debug("stopping existing timer");
-            m_xstatus = PING_FINISHING;
+            cancelSweep();
             m_timer.cancel();
             m_timer = null;
         } else {
@@ -288,6 +270,13 @@ public class Discovery extends AbstractServiceDaemon {
         }
     }
 
+    private void cancelSweep() {
+        final PingSweep sweep = m_sweep;
+        if (sweep != null) {
+            sweep.cancel();
+        }
+    }
+
     /**
      * <p>onStart</p>
      */
@@ -330,7 +319,7 @@ public class Discovery extends AbstractServiceDaemon {
     	 * if something goes wrong with the DB we won't lose whatever was already
     	 * in there
     	 */
-    	Set<String> newAlreadyDiscovered = Collections.synchronizedSet(new HashSet<String>());
+    	InetAddressBitmap newAlreadyDiscovered = new InetAddressBitmap();
     	Connection conn = null;
         final DBUtils d = new DBUtils(getClass());
 
@@ -343,18 +332,34 @@ public class Discovery extends AbstractServiceDaemon {
     		d.watch(rs);
     		if (rs != null) {
     			while (rs.next()) {
-    				newAlreadyDiscovered.add(rs.getString(1));
+    				newAlreadyDiscovered.add(parseAddress(rs.getString(1)));
     			}
     		} else {
     			LOG.warn("Got null ResultSet from query for all IP addresses");
     		}
-    		m_alreadyDiscovered = newAlreadyDiscovered;
+    		m_alreadyDiscovered.set(newAlreadyDiscovered);
     	} catch (SQLException sqle) {
 		LOG.warn("Caught SQLException while trying to query for all IP addresses: {}", sqle.getMessage());
     	} finally {
     	    d.cleanUp();
     	}
-	LOG.info("syncAlreadyDiscovered initialized list of managed IP addresses with {} members", m_alreadyDiscovered.size());
+	LOG.info("syncAlreadyDiscovered initialized list of managed IP addresses with {} members", m_alreadyDiscovered.get().size());
+    }
+
+    /**
+     * Parses an interface address, or returns null if it is not one.
+     */
+    private static InetAddress parseAddress(final String iface) {
+        try {
+            final InetAddress address = InetAddressUtils.addr(iface);
+            if (address != null) {
+                return address;
+            }
+        } catch (final IllegalArgumentException e) {
+            // logged below
+        }
+        LOG.warn("Ignoring invalid interface address {}", iface);
+        return null;
     }
 
     /**
@@ -435,7 +440,11 @@ public class Discovery extends AbstractServiceDaemon {
         if(event.getInterface() != null) {
             // remove from known nodes
             final String iface = event.getInterface();
-			m_alreadyDiscovered.remove(iface);
+            final InetAddress address = parseAddress(iface);
+            if (address == null) {
+                return;
+            }
+            m_alreadyDiscovered.get().remove(address);
 
             LOG.debug("Removed {} from known node list", iface);
         }
@@ -474,11 +483,85 @@ public class Discovery extends AbstractServiceDaemon {
      */
     @EventHandler(uei=EventConstants.NODE_GAINED_INTERFACE_EVENT_UEI)
     public void handleNodeGainedInterface(Event event) {
-        // add to known nodes
-        final String iface = event.getInterface();
-		m_alreadyDiscovered.add(iface);
+        if (event.getInterface() != null) {
+            // add to known nodes
+            final String iface = event.getInterface();
+            final InetAddress address = parseAddress(iface);
+            if (address == null) {
+                return;
+            }
+            m_alreadyDiscovered.get().add(address);
+
+            LOG.debug("Added {} as discovered", iface);
+        }
+    }
 
-        LOG.debug("Added {} as discovered", iface);
+    /**
+     * @return the number of addresses the current or last sweep has visited
+     */
+    public long getAddressesSwept() {
+        final PingSweep sweep = m_sweep;
+        return sweep == null ? 0 : sweep.getAddressesSwept();
+    }
+
+    /**
+     * @return the number of addresses the current or last sweep skipped
+     *         because they are managed already
+     */
+    public long getAddressesSkipped() {
+        final PingSweep sweep = m_sweep;
+        return sweep == null ? 0 : sweep.getAddressesSkipped();
+    }
+
+    /**
+     * @return the number of echo requests the current or last sweep has sent
+     */
+    public long getPingsSent() {
+        final PingSweep sweep = m_sweep;
+        return sweep == null ? 0 : sweep.getPingsSent();
+    }
+
+    /**
+     * @return the number of echo replies the current or last sweep received
+     */
+    public long getPingResponses() {
+        final PingSweep sweep = m_sweep;
+        return sweep == null ? 0 : sweep.getResponses();
+    }
+
+    /**
+     * @return the number of echo requests of the current or last sweep that
+     *         timed out
+     */
+    public long getPingTimeouts() {
+        final PingSweep sweep = m_sweep;
+        return sweep == null ? 0 : sweep.getTimeouts();
+    }
+
+    /**
+     * @return the number of echo requests awaiting an answer
+     */
+    public int getPingsOutstanding() {
+        final PingSweep sweep = m_sweep;
+        return sweep == null ? 0 : sweep.getOutstanding();
+    }
+
+    /**
+     * @return the percentage of the configured addresses the current or
+     *         last sweep has visited, or -1 if there was no sweep yet
+     */
+    public int getSweepProgress() {
+        final PingSweep sweep = m_sweep;
+        return sweep == null ? -1 : sweep.getProgress();
+    }
+
+    /**
+     * @return the average number of echo requests per second of the
+     *         current or last sweep
+     */
+    public double getSweepRate() {
+        final PingSweep sweep = m_sweep;
+        return sweep == null ? 0 : sweep.getRate();
     }
 
     public static String getLoggingCategory() {
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.discovery;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.opennms.core.utils.InetAddressUtils;
+
+/**
+ * A thread safe set of IP addresses. IPv4 addresses are kept as one bit
+ * each, in 8 KB pages that cover a /16 and are only allocated once an
+ * address of that /16 is added, so a few hundred thousand managed
+ * interfaces take a few megabytes at most. The rare IPv6 addresses are
+ * kept as strings. A null address is never in the set.
+ */
+final class InetAddressBitmap {
+
+    private static final int PAGE_BITS = 16;
+
+    private static final int LONGS_PER_PAGE = (1 << PAGE_BITS) / Long.SIZE;
+
+    private final AtomicReferenceArray<AtomicLongArray> m_pages = new AtomicReferenceArray<AtomicLongArray>(1 << (Integer.SIZE - PAGE_BITS));
+
+    private final Set<String> m_others = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final AtomicInteger m_size = new AtomicInteger();
+
+    /**
+     * @return true if the address was not in the set already
+     */
+    boolean add(final InetAddress address) {
+        if (address == null) {
+            return false;
+        } else if (!(address instanceof Inet4Address)) {
+            return m_others.add(InetAddressUtils.str(address));
+        }
+        final int ip = toInt(address);
+        final int page = ip >>> PAGE_BITS;
+        AtomicLongArray bits = m_pages.get(page);
+        if (bits == null) {
+            m_pages.compareAndSet(page, null, new AtomicLongArray(LONGS_PER_PAGE));
+            bits = m_pages.get(page);
+        }
+        final int index = (ip & 0xffff) >>> 6;
+        final long mask = 1L << (ip & 63);
+        for (;;) {
+            final long current = bits.get(index);
+            if ((current & mask) != 0) {
+                return false;
+            }
+            if (bits.compareAndSet(index, current, current | mask)) {
+                m_size.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true if the address was in the set
+     */
+    boolean remove(final InetAddress address) {
+        if (address == null) {
+            return false;
+        } else if (!(address instanceof Inet4Address)) {
+            return m_others.remove(InetAddressUtils.str(address));
+        }
+        final int ip = toInt(address);
+        final AtomicLongArray bits = m_pages.get(ip >>> PAGE_BITS);
+        if (bits == null) {
+            return false;
+        }
+        final int index = (ip & 0xffff) >>> 6;
+        final long mask = 1L << (ip & 63);
+        for (;;) {
+            final long current = bits.get(index);
+            if ((current & mask) == 0) {
+                return false;
+            }
+            if (bits.compareAndSet(index, current, current & ~mask)) {
+                m_size.decrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    boolean contains(final InetAddress address) {
+        if (address == null) {
+            return false;
+        } else if (!(address instanceof Inet4Address)) {
+            return m_others.contains(InetAddressUtils.str(address));
+        }
+        final int ip = toInt(address);
+        final AtomicLongArray bits = m_pages.get(ip >>> PAGE_BITS);
+        return bits != null && (bits.get((ip & 0xffff) >>> 6) & (1L << (ip & 63))) != 0;
+    }
+
+    int size() {
+        return m_size.get() + m_others.size();
+    }
+
+    private static int toInt(final InetAddress address) {
+        final byte[] bytes = address.getAddress();
+        return (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | (bytes[3] & 0xff);
+    }
+}
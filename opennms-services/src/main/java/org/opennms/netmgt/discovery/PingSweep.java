@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.discovery;
+
+import java.net.InetAddress;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+import org.opennms.netmgt.icmp.Pinger;
+import org.opennms.netmgt.model.discovery.IPPollAddress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single pass over the configured discovery addresses. Echo requests are
+ * paced by a {@link TokenBucket} at the configured packets per second
+ * rather than by sleeping between pings, at most a fixed number of requests
+ * are outstanding at once, and addresses already managed are skipped
+ * without being pinged.
+ */
+class PingSweep {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PingSweep.class);
+
+    private final Pinger m_pinger;
+
+    private final PingResponseCallback m_callback;
+
+    private final AtomicReference<InetAddressBitmap> m_alreadyDiscovered;
+
+    private final TokenBucket m_bucket;
+
+    private final Semaphore m_window;
+
+    private final int m_maxOutstanding;
+
+    private final long m_expected;
+
+    private final AtomicLong m_swept = new AtomicLong();
+
+    private final AtomicLong m_skipped = new AtomicLong();
+
+    private final AtomicLong m_sent = new AtomicLong();
+
+    private final AtomicLong m_responses = new AtomicLong();
+
+    private final AtomicLong m_timeouts = new AtomicLong();
+
+    private volatile long m_started;
+
+    private volatile long m_finished;
+
+    private volatile boolean m_cancelled;
+
+    /**
+     * @param pinger the pinger to send echo requests with
+     * @param callback where replies, timeouts and errors are handed on to
+     * @param alreadyDiscovered the addresses that are not pinged, looked up
+     *        anew for every address since the owner may replace them
+     * @param packetsPerSecond the rate at which echo requests are sent
+     * @param maxOutstanding how many echo requests may await an answer
+     * @param expected how many addresses the sweep will visit, or 0 if unknown
+     */
+    PingSweep(final Pinger pinger, final PingResponseCallback callback, final AtomicReference<InetAddressBitmap> alreadyDiscovered, final double packetsPerSecond, final int maxOutstanding, final long expected) {
+        m_pinger = pinger;
+        m_callback = callback;
+        m_alreadyDiscovered = alreadyDiscovered;
+        m_bucket = new TokenBucket(packetsPerSecond, (int) Math.max(1, packetsPerSecond / 10));
+        m_maxOutstanding = Math.max(1, maxOutstanding);
+        m_window = new Semaphore(m_maxOutstanding);
+        m_expected = expected;
+    }
+
+    /**
+     * Pings each address in turn and returns once every request was sent,
+     * the sweep was cancelled or the thread was interrupted.
+     */
+    void run(final Iterable<IPPollAddress> addresses) {
+        m_started = System.nanoTime();
+        try {
+            for (final IPPollAddress pollAddress : addresses) {
+                if (m_cancelled) {
+                    LOG.info("discovery sweep cancelled after {} addresses", m_swept.get());
+                    return;
+                }
+                m_swept.incrementAndGet();
+                final InetAddress address = pollAddress.getAddress();
+                if (address == null) {
+                    continue;
+                }
+                if (m_alreadyDiscovered.get().contains(address)) {
+                    m_skipped.incrementAndGet();
+                    LOG.debug("{} already discovered.", address);
+                    continue;
+                }
+                if (!acquireWindow()) {
+                    return;
+                }
+                m_bucket.acquire();
+                ping(pollAddress);
+            }
+        } catch (final InterruptedException e) {
+            LOG.info("interrupting discovery sweep");
+            Thread.currentThread().interrupt();
+        } finally {
+            m_finished = System.nanoTime();
+        }
+    }
+
+    private boolean acquireWindow() throws InterruptedException {
+        while (!m_window.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+            if (m_cancelled) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void ping(final IPPollAddress pollAddress) {
+        final InetAddress address = pollAddress.getAddress();
+        LOG.debug("Pinging: {}", address);
+        try {
+            m_pinger.ping(address, pollAddress.getTimeout(), pollAddress.getRetries(), (short) 1, new WindowCallback());
+            m_sent.incrementAndGet();
+        } catch (final Throwable e) {
+            m_window.release();
+            LOG.debug("error pinging {}", address, e);
+        }
+    }
+
+    /**
+     * Stops the sweep before the next address.
+     */
+    void cancel() {
+        m_cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return m_cancelled;
+    }
+
+    long getAddressesSwept() {
+        return m_swept.get();
+    }
+
+    long getAddressesSkipped() {
+        return m_skipped.get();
+    }
+
+    long getPingsSent() {
+        return m_sent.get();
+    }
+
+    long getResponses() {
+        return m_responses.get();
+    }
+
+    long getTimeouts() {
+        return m_timeouts.get();
+    }
+
+    int getOutstanding() {
+        return m_maxOutstanding - m_window.availablePermits();
+    }
+
+    /**
+     * @return the percentage of the expected addresses visited so far, or -1
+     *         if the number of addresses is not known
+     */
+    int getProgress() {
+        if (m_expected <= 0) {
+            return -1;
+        }
+        return (int) Math.min(100, m_swept.get() * 100 / m_expected);
+    }
+
+    /**
+     * @return the average number of echo requests sent per second
+     */
+    double getRate() {
+        final long started = m_started;
+        if (started == 0) {
+            return 0;
+        }
+        final long end = m_finished == 0 ? System.nanoTime() : m_finished;
+        final long elapsed = end - started;
+        return elapsed <= 0 ? 0 : m_sent.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    private class WindowCallback implements PingResponseCallback {
+
+        @Override
+        public void handleResponse(final InetAddress address, final EchoPacket response) {
+            m_window.release();
+            m_responses.incrementAndGet();
+            m_callback.handleResponse(address, response);
+        }
+
+        @Override
+        public void handleTimeout(final InetAddress address, final EchoPacket request) {
+            m_window.release();
+            m_timeouts.incrementAndGet();
+            m_callback.handleTimeout(address, request);
+        }
+
+        @Override
+        public void handleError(final InetAddress address, final EchoPacket request, final Throwable t) {
+            m_window.release();
+            m_callback.handleError(address, request, t);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.discovery;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces an activity to a number of permits per second. Permits that are not
+ * used pile up to a small burst, and a caller that finds the bucket empty
+ * reserves its permit and sleeps until it is due, so the average rate holds
+ * even when individual sleeps overshoot.
+ */
+final class TokenBucket {
+
+    private final double m_permitsPerNano;
+
+    private final double m_capacity;
+
+    private double m_tokens;
+
+    private long m_last;
+
+    /**
+     * @param permitsPerSecond the sustained rate
+     * @param burst how many permits may be handed out at once after the
+     *        bucket has been idle
+     */
+    TokenBucket(final double permitsPerSecond, final int burst) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive: " + permitsPerSecond);
+        }
+        m_permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        m_capacity = Math.max(1, burst);
+        m_tokens = m_capacity;
+        m_last = System.nanoTime();
+    }
+
+    /**
+     * Takes a permit, waiting until it is due.
+     *
+     * @throws java.lang.InterruptedException if interrupted while waiting
+     */
+    void acquire() throws InterruptedException {
+        final long wait = reserve(System.nanoTime());
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Takes a permit.
+     *
+     * @return how many nanoseconds from now the permit is due
+     */
+    synchronized long reserve(final long now) {
+        if (now > m_last) {
+            m_tokens = Math.min(m_capacity, m_tokens + (now - m_last) * m_permitsPerNano);
+            m_last = now;
+        }
+        m_tokens -= 1;
+        return m_tokens >= 0 ? 0 : (long) Math.ceil(-m_tokens / m_permitsPerNano);
+    }
+}
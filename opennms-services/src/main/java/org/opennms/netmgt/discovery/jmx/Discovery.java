@@ -49,5 +49,53 @@ public class Discovery extends AbstractSpringContextJmxServiceDaemon<org.opennms
     protected String getSpringContext() {
         return "discoveryContext";
     }
-    
+
+    /** {@inheritDoc} */
+    @Override
+    public long getAddressesSwept() {
+        return getDaemon().getAddressesSwept();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getAddressesSkipped() {
+        return getDaemon().getAddressesSkipped();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPingsSent() {
+        return getDaemon().getPingsSent();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPingResponses() {
+        return getDaemon().getPingResponses();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getPingTimeouts() {
+        return getDaemon().getPingTimeouts();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getPingsOutstanding() {
+        return getDaemon().getPingsOutstanding();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getSweepProgress() {
+        return getDaemon().getSweepProgress();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getSweepRate() {
+        return getDaemon().getSweepRate();
+    }
+
 }
@@ -38,4 +38,28 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  */
 public interface DiscoveryMBean extends BaseOnmsMBean {
 
+    /** @return The number of addresses the current or last sweep has visited */
+    public long getAddressesSwept();
+
+    /** @return The number of addresses the current or last sweep skipped as already managed */
+    public long getAddressesSkipped();
+
+    /** @return The number of echo requests the current or last sweep has sent */
+    public long getPingsSent();
+
+    /** @return The number of echo replies the current or last sweep received */
+    public long getPingResponses();
+
+    /** @return The number of echo requests of the current or last sweep that timed out */
+    public long getPingTimeouts();
+
+    /** @return The number of echo requests awaiting an answer */
+    public int getPingsOutstanding();
+
+    /** @return The percentage of the configured addresses visited by the current or last sweep, -1 before the first sweep */
+    public int getSweepProgress();
+
+    /** @return The average number of echo requests per second of the current or last sweep */
+    public double getSweepRate();
+
 }
@@ -34,6 +34,8 @@ import org.opennms.netmgt.linkd.scheduler.ReadyRunnable;
 import org.opennms.netmgt.linkd.scheduler.Scheduler;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.snmp.SnmpAgentConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * This class is designed to collect the necessary SNMP information from the
@@ -43,6 +45,7 @@ import org.opennms.netmgt.snmp.SnmpAgentConfig;
  * allows the collection to occur in a thread if necessary.
  */
 public abstract class AbstractLinkdNodeDiscovery implements ReadyRunnable {
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractLinkdNodeDiscovery.class);
 
 	/**
      * The node ID of the system used to collect the SNMP information
@@ -117,7 +120,9 @@ public abstract class AbstractLinkdNodeDiscovery implements ReadyRunnable {
             builder.addParam("runnable", getName());
             m_linkd.getEventForwarder().sendNow(builder.getEvent());
             
+            final long start = System.currentTimeMillis();
             runCollection();
+            LOG.info("run: {} for node {} took {}ms", getName(), getNodeId(), System.currentTimeMillis() - start);
             
             builder = new EventBuilder(
                     "uei.opennms.org/internal/linkd/nodeLinkDiscoveryCompleted",
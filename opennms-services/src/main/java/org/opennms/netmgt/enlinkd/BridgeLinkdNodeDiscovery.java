@@ -33,8 +33,10 @@ import static org.opennms.core.utils.InetAddressUtils.isValidBridgeAddress;
 import static org.opennms.core.utils.InetAddressUtils.isValidStpBridgeId;
 import static org.opennms.core.utils.InetAddressUtils.getBridgeAddressFromStpBridgeId;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -61,6 +63,13 @@ public final class BridgeLinkdNodeDiscovery extends AbstractLinkdNodeDiscovery {
 
 	public final static String CISCO_ENTERPRISE_OID = ".1.3.6.1.4.1.9";
 
+	/**
+	 * The links found on all vlans, stored at once when the scan is done.
+	 */
+	private final List<BridgeMacLink> m_macLinks = new ArrayList<BridgeMacLink>();
+
+	private final List<BridgeStpLink> m_stpLinks = new ArrayList<BridgeStpLink>();
+
 	/**
 	 * Constructs a new SNMP collector for Bridge Node Discovery. The collection
 	 * does not occur until the <code>run</code> method is invoked.
@@ -78,6 +87,8 @@ public final class BridgeLinkdNodeDiscovery extends AbstractLinkdNodeDiscovery {
 	protected void runCollection() {
 
 		final Date now = new Date();
+		m_macLinks.clear();
+		m_stpLinks.clear();
 
 		LOG.debug("run: collecting: {}", getPeer());
 	
@@ -156,6 +167,8 @@ public final class BridgeLinkdNodeDiscovery extends AbstractLinkdNodeDiscovery {
 			}
 		}
 
+		m_linkd.getQueryManager().storeBridgeStpLinks(getNodeId(), m_stpLinks);
+		m_linkd.getQueryManager().storeBridgeMacLinks(getNodeId(), m_macLinks);
 		m_linkd.getQueryManager().reconcileBridge(getNodeId(), now);
 
 	}
@@ -243,7 +256,7 @@ public final class BridgeLinkdNodeDiscovery extends AbstractLinkdNodeDiscovery {
 				link.setVlan(vlan);
 				if (isValidBridgeAddress(link.getMacAddress())
 						&& link.getBridgeDot1qTpFdbStatus() == BridgeMacLink.BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED)
-					m_linkd.getQueryManager().store(getNodeId(), link);
+					m_macLinks.add(link);
 			}
 		};
 		SnmpWalker walker = SnmpUtils.createWalker(getPeer(), trackerName,
@@ -279,7 +292,7 @@ public final class BridgeLinkdNodeDiscovery extends AbstractLinkdNodeDiscovery {
 				BridgeMacLink link = row.getLink();
 				if (isValidBridgeAddress(link.getMacAddress())
 						&& link.getBridgeDot1qTpFdbStatus() == BridgeMacLink.BridgeDot1qTpFdbStatus.DOT1D_TP_FDB_STATUS_LEARNED)
-					m_linkd.getQueryManager().store(getNodeId(), link);
+					m_macLinks.add(link);
 			}
 
 		};
@@ -312,7 +325,7 @@ public final class BridgeLinkdNodeDiscovery extends AbstractLinkdNodeDiscovery {
 				BridgeStpLink link = row.getLink();
 				link.setVlan(vlan);
 				if (!baseBridgeAddress.equals(link.getDesignatedBridgeAddress())) {
-					m_linkd.getQueryManager().store(getNodeId(),link);
+					m_stpLinks.add(link);
 				}
 			}
 		};
@@ -114,4 +114,21 @@ public interface EnhancedLinkdService {
 
 	void store(int nodeId, BridgeMacLink link);
 
+	/*
+	 * The bulk stores below replace everything stored for the node by a
+	 * discovery with the table it found, in a single transaction.
+	 */
+
+	void storeLldpLinks(int nodeId, List<LldpLink> links);
+
+	void storeOspfLinks(int nodeId, List<OspfLink> links);
+
+	void storeIsisLinks(int nodeId, List<IsIsLink> links);
+
+	void storeIpNetToMedia(int nodeId, List<IpNetToMedia> entries);
+
+	void storeBridgeStpLinks(int nodeId, List<BridgeStpLink> links);
+
+	void storeBridgeMacLinks(int nodeId, List<BridgeMacLink> links);
+
 }
@@ -2,6 +2,7 @@ package org.opennms.netmgt.enlinkd;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -21,6 +22,7 @@ import org.opennms.netmgt.dao.api.LldpLinkDao;
 import org.opennms.netmgt.dao.api.NodeDao;
 import org.opennms.netmgt.dao.api.OspfElementDao;
 import org.opennms.netmgt.dao.api.OspfLinkDao;
+import org.opennms.netmgt.dao.support.BulkUpsertTemplate;
 import org.opennms.netmgt.dao.support.UpsertTemplate;
 import org.opennms.netmgt.model.BridgeBridgeLink;
 import org.opennms.netmgt.model.BridgeElement;
@@ -36,12 +38,14 @@ import org.opennms.netmgt.model.OnmsNode.NodeType;
 import org.opennms.netmgt.model.OspfElement;
 import org.opennms.netmgt.model.OspfLink;
 import org.opennms.netmgt.model.PrimaryType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		
-//	private final static Logger LOG = LoggerFactory.getLogger(EnhancedLinkdServiceImpl.class);
+	private final static Logger LOG = LoggerFactory.getLogger(EnhancedLinkdServiceImpl.class);
 
     @Autowired
     private PlatformTransactionManager m_transactionManager;
@@ -454,7 +458,7 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 
 			@Override
 			protected BridgeMacLink query() {
-				return m_dao.getByNodeIdBridgePort(nodeId,saveMe.getBridgePort());
+				return m_dao.getByNodeIdBridgePortMac(nodeId,saveMe.getBridgePort(),saveMe.getMacAddress());
 			}
 
 			@Override
@@ -479,6 +483,178 @@ public class EnhancedLinkdServiceImpl implements EnhancedLinkdService {
 		}.execute();
 	}
 
+	@Override
+	@Transactional
+	public void storeLldpLinks(final int nodeId, final List<LldpLink> links) {
+		final OnmsNode node = m_nodeDao.get(nodeId);
+		if (node == null)
+			return;
+		final long start = System.currentTimeMillis();
+		new BulkUpsertTemplate<LldpLink, Integer, LldpLinkDao>(m_transactionManager, m_lldpLinkDao) {
+
+			@Override
+			protected Collection<LldpLink> query() {
+				return m_dao.findByNodeId(nodeId);
+			}
+
+			@Override
+			protected Integer key(LldpLink link) {
+				return link.getLldpLocalPortNum();
+			}
+
+			@Override
+			protected LldpLink doUpdate(LldpLink dbLldpLink, LldpLink link) {
+				dbLldpLink.merge(link);
+				m_dao.update(dbLldpLink);
+				return dbLldpLink;
+			}
+
+			@Override
+			protected LldpLink doInsert(LldpLink link) {
+				link.setNode(node);
+				link.setLldpLinkLastPollTime(link.getLldpLinkCreateTime());
+				m_dao.saveOrUpdate(link);
+				return link;
+			}
+
+		}.execute(links);
+		LOG.debug("storeLldpLinks: stored {} links for node {} in {}ms", links.size(), nodeId, System.currentTimeMillis() - start);
+	}
+
+	@Override
+	@Transactional
+	public void storeOspfLinks(final int nodeId, final List<OspfLink> links) {
+		final OnmsNode node = m_nodeDao.get(nodeId);
+		if (node == null)
+			return;
+		final long start = System.currentTimeMillis();
+		new BulkUpsertTemplate<OspfLink, List<Object>, OspfLinkDao>(m_transactionManager, m_ospfLinkDao) {
+
+			@Override
+			protected Collection<OspfLink> query() {
+				return m_dao.findByNodeId(nodeId);
+			}
+
+			@Override
+			protected List<Object> key(OspfLink link) {
+				return Arrays.<Object>asList(link.getOspfRemRouterId(), link.getOspfRemIpAddr(), link.getOspfRemAddressLessIndex());
+			}
+
+			@Override
+			protected OspfLink doUpdate(OspfLink dbOspfLink, OspfLink link) {
+				dbOspfLink.merge(link);
+				m_dao.update(dbOspfLink);
+				return dbOspfLink;
+			}
+
+			@Override
+			protected OspfLink doInsert(OspfLink link) {
+				link.setNode(node);
+				link.setOspfLinkLastPollTime(link.getOspfLinkCreateTime());
+				m_dao.saveOrUpdate(link);
+				return link;
+			}
+
+		}.execute(links);
+		LOG.debug("storeOspfLinks: stored {} links for node {} in {}ms", links.size(), nodeId, System.currentTimeMillis() - start);
+	}
+
+	@Override
+	@Transactional
+	public void storeIsisLinks(final int nodeId, final List<IsIsLink> links) {
+		final OnmsNode node = m_nodeDao.get(nodeId);
+		if (node == null)
+			return;
+		final long start = System.currentTimeMillis();
+		new BulkUpsertTemplate<IsIsLink, List<Integer>, IsIsLinkDao>(m_transactionManager, m_isisLinkDao) {
+
+			@Override
+			protected Collection<IsIsLink> query() {
+				return m_dao.findByNodeId(nodeId);
+			}
+
+			@Override
+			protected List<Integer> key(IsIsLink link) {
+				return Arrays.asList(link.getIsisCircIndex(), link.getIsisISAdjIndex());
+			}
+
+			@Override
+			protected IsIsLink doUpdate(IsIsLink dbIsIsLink, IsIsLink link) {
+				dbIsIsLink.merge(link);
+				m_dao.update(dbIsIsLink);
+				return dbIsIsLink;
+			}
+
+			@Override
+			protected IsIsLink doInsert(IsIsLink link) {
+				link.setNode(node);
+				link.setIsisLinkLastPollTime(link.getIsisLinkCreateTime());
+				m_dao.saveOrUpdate(link);
+				return link;
+			}
+
+		}.execute(links);
+		LOG.debug("storeIsisLinks: stored {} links for node {} in {}ms", links.size(), nodeId, System.currentTimeMillis() - start);
+	}
+
+	@Override
+	@Transactional
+	public void storeBridgeStpLinks(final int nodeId, final List<BridgeStpLink> links) {
+		final OnmsNode node = m_nodeDao.get(nodeId);
+		if (node == null)
+			return;
+		final long start = System.currentTimeMillis();
+		new BulkUpsertTemplate<BridgeStpLink, Integer, BridgeStpLinkDao>(m_transactionManager, m_bridgeStpLinkDao) {
+
+			@Override
+			protected Collection<BridgeStpLink> query() {
+				return m_dao.findByNodeId(nodeId);
+			}
+
+			@Override
+			protected Integer key(BridgeStpLink link) {
+				return link.getStpPort();
+			}
+
+			@Override
+			protected BridgeStpLink doUpdate(BridgeStpLink dbLink, BridgeStpLink link) {
+				dbLink.merge(link);
+				m_dao.update(dbLink);
+				return dbLink;
+			}
+
+			@Override
+			protected BridgeStpLink doInsert(BridgeStpLink link) {
+				link.setNode(node);
+				link.setBridgeStpLinkLastPollTime(link.getBridgeStpLinkCreateTime());
+				m_dao.saveOrUpdate(link);
+				return link;
+			}
+
+		}.execute(links);
+		LOG.debug("storeBridgeStpLinks: stored {} links for node {} in {}ms", links.size(), nodeId, System.currentTimeMillis() - start);
+	}
+
+	@Override
+	@Transactional
+	public void storeBridgeMacLinks(final int nodeId, final List<BridgeMacLink> links) {
+		if (m_nodeDao.get(nodeId) == null)
+			return;
+		final long start = System.currentTimeMillis();
+		m_bridgeMacLinkDao.replaceByNodeId(nodeId, links);
+		LOG.debug("storeBridgeMacLinks: stored {} links for node {} in {}ms", links.size(), nodeId, System.currentTimeMillis() - start);
+	}
+
+	@Override
+	@Transactional
+	public void storeIpNetToMedia(final int nodeId, final List<IpNetToMedia> entries) {
+		if (m_nodeDao.get(nodeId) == null)
+			return;
+		final long start = System.currentTimeMillis();
+		m_ipNetToMediaDao.replaceBySourceNodeId(nodeId, entries);
+		LOG.debug("storeIpNetToMedia: stored {} entries for node {} in {}ms", entries.size(), nodeId, System.currentTimeMillis() - start);
+	}
+
 	@Transactional
     protected void saveBridgeBridgeLink(final int nodeId, final BridgeBridgeLink saveMe) {
 		new UpsertTemplate<BridgeBridgeLink, BridgeBridgeLinkDao>(m_transactionManager,m_bridgeBridgeLinkDao) {
@@ -30,7 +30,9 @@ package org.opennms.netmgt.enlinkd;
 
 import static org.opennms.core.utils.InetAddressUtils.str;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 
 
@@ -72,11 +74,12 @@ public final class IpNetToMediaLinkdNodeDiscovery extends AbstractLinkdNodeDisco
 		LOG.debug( "run: collecting : {}", getPeer());
 
 
+		final List<IpNetToMedia> entries = new ArrayList<IpNetToMedia>();
 		IpNetToMediaTableTracker ipNetToMediaTableTracker = new IpNetToMediaTableTracker() {
 		    public void processIpNetToMediaRow(final IpNetToMediaRow row) {
 		    	IpNetToMedia macep = row.getIpNetToMedia();
 		    	if (macep.getIpNetToMediaType() == IpNetToMediaType.IPNETTOMEDIA_TYPE_DYNAMIC || macep.getIpNetToMediaType() == IpNetToMediaType.IPNETTOMEDIA_TYPE_STATIC)
-		    		m_linkd.getQueryManager().store(getNodeId(),macep);
+		    		entries.add(macep);
 		    }
 		};
 		
@@ -100,6 +103,7 @@ public final class IpNetToMediaLinkdNodeDiscovery extends AbstractLinkdNodeDisco
             return;
         }
 
+        m_linkd.getQueryManager().storeIpNetToMedia(getNodeId(), entries);
         m_linkd.getQueryManager().reconcileIpNetToMedia(getNodeId(), now);
     }
 
@@ -159,8 +159,7 @@ private final static Logger LOG = LoggerFactory.getLogger(IsisLinkdNodeDiscovery
             return;
         }
         
-        for (IsIsLink link:links) 
-        	m_linkd.getQueryManager().store(getNodeId(), link);
+        m_linkd.getQueryManager().storeIsisLinks(getNodeId(), links);
 
         m_linkd.getQueryManager().reconcileIsis(getNodeId(), now);
     }
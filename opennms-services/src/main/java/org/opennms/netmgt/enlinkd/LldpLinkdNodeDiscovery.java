@@ -30,8 +30,11 @@ package org.opennms.netmgt.enlinkd;
 
 import static org.opennms.core.utils.InetAddressUtils.str;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
+import org.opennms.netmgt.model.LldpLink;
 import org.opennms.netmgt.snmp.SnmpUtils;
 import org.opennms.netmgt.snmp.SnmpWalker;
 import org.slf4j.Logger;
@@ -95,10 +98,11 @@ private final static Logger LOG = LoggerFactory.getLogger(LldpLinkdNodeDiscovery
 
         final LldpLocPortGetter lldpLocPort = new LldpLocPortGetter(getPeer());
         trackerName = "lldpRemTable";
+        final List<LldpLink> links = new ArrayList<LldpLink>();
         LldpRemTableTracker lldpRemTable = new LldpRemTableTracker() {
 
         	public void processLldpRemRow(final LldpRemRow row) {
-        		m_linkd.getQueryManager().store(getNodeId(),row.getLldpLink(lldpLocPort));
+        		links.add(row.getLldpLink(lldpLocPort));
         	}
         };
 
@@ -119,6 +123,7 @@ private final static Logger LOG = LoggerFactory.getLogger(LldpLinkdNodeDiscovery
             LOG.error("run: collection interrupted, exiting",e);
             return;
         }
+        m_linkd.getQueryManager().storeLldpLinks(getNodeId(), links);
         m_linkd.getQueryManager().reconcileLldp(getNodeId(),now);
     }
 
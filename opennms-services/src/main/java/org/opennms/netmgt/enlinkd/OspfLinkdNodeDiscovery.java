@@ -179,8 +179,7 @@ public final class OspfLinkdNodeDiscovery extends AbstractLinkdNodeDiscovery {
             return;
         }
 
-        for (OspfLink link: links)
-    		m_linkd.getQueryManager().store(getNodeId(),link);
+        m_linkd.getQueryManager().storeOspfLinks(getNodeId(), links);
 
         m_linkd.getQueryManager().reconcileOspf(getNodeId(),now);
     }
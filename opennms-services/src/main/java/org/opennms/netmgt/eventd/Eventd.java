@@ -34,6 +34,8 @@ import java.util.Collection;
 import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.dao.api.EventdServiceManager;
 import org.opennms.netmgt.eventd.adaptors.EventReceiver;
+import org.opennms.netmgt.eventd.processor.JdbcEventBatcher;
+import org.opennms.netmgt.eventd.processor.JdbcEventWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
@@ -95,6 +97,8 @@ public final class Eventd extends AbstractServiceDaemon {
      */
     private Collection<EventReceiver> m_eventReceivers;
 
+    private JdbcEventWriter m_eventWriter;
+
     /**
      * Constuctor creates the localhost address(to be used eventually when
      * eventd originates events during correlation) and the broadcast queue
@@ -201,4 +205,31 @@ public final class Eventd extends AbstractServiceDaemon {
     public void setEventReceivers(Collection<EventReceiver> eventReceivers) {
         m_eventReceivers = eventReceivers;
     }
+
+    /**
+     * <p>getEventWriter</p>
+     *
+     * @return a {@link org.opennms.netmgt.eventd.processor.JdbcEventWriter} object.
+     */
+    public JdbcEventWriter getEventWriter() {
+        return m_eventWriter;
+    }
+
+    /**
+     * <p>setEventWriter</p>
+     *
+     * @param eventWriter a {@link org.opennms.netmgt.eventd.processor.JdbcEventWriter} object.
+     */
+    public void setEventWriter(JdbcEventWriter eventWriter) {
+        m_eventWriter = eventWriter;
+    }
+
+    /**
+     * <p>getBatchStatistics</p>
+     *
+     * @return the statistics of the event batch writer, or null if events are not written in batches
+     */
+    public JdbcEventBatcher.Statistics getBatchStatistics() {
+        return m_eventWriter == null ? null : m_eventWriter.getBatchStatistics();
+    }
 }
@@ -29,6 +29,7 @@
 package org.opennms.netmgt.eventd.jmx;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
+import org.opennms.netmgt.eventd.processor.JdbcEventBatcher;
 
 /**
  * <p>Eventd class.</p>
@@ -48,4 +49,46 @@ public class Eventd extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
     protected String getSpringContext() {
         return "eventDaemonContext";       
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEventBatchesWritten() {
+        final JdbcEventBatcher.Statistics stats = getDaemon().getBatchStatistics();
+        return stats == null ? 0 : stats.getBatchesWritten();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEventBatchesFailed() {
+        final JdbcEventBatcher.Statistics stats = getDaemon().getBatchStatistics();
+        return stats == null ? 0 : stats.getBatchesFailed();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEventsWrittenInBatches() {
+        final JdbcEventBatcher.Statistics stats = getDaemon().getBatchStatistics();
+        return stats == null ? 0 : stats.getEventsWritten();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getLargestEventBatchSize() {
+        final JdbcEventBatcher.Statistics stats = getDaemon().getBatchStatistics();
+        return stats == null ? 0 : stats.getLargestBatchSize();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getAverageEventBatchSize() {
+        final JdbcEventBatcher.Statistics stats = getDaemon().getBatchStatistics();
+        return stats == null ? 0.0 : stats.getAverageBatchSize();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getAverageEventBatchWriteTime() {
+        final JdbcEventBatcher.Statistics stats = getDaemon().getBatchStatistics();
+        return stats == null ? 0.0 : stats.getAverageWriteTime();
+    }
 }
@@ -37,4 +37,21 @@ import org.opennms.netmgt.daemon.BaseOnmsMBean;
  * @version $Id: $
  */
 public interface EventdMBean extends BaseOnmsMBean {
+    /** @return The number of event batches written to the database since Eventd was last started */
+    public long getEventBatchesWritten();
+
+    /** @return The number of event batches that failed and were retried one event at a time */
+    public long getEventBatchesFailed();
+
+    /** @return The number of events written in batches since Eventd was last started */
+    public long getEventsWrittenInBatches();
+
+    /** @return The size of the largest event batch written */
+    public int getLargestEventBatchSize();
+
+    /** @return The average number of events per batch */
+    public double getAverageEventBatchSize();
+
+    /** @return The average time, in milliseconds, spent writing a batch */
+    public double getAverageEventBatchWriteTime();
 }
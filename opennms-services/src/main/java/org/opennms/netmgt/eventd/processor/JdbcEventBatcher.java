@@ -0,0 +1,350 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.eventd.processor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.netmgt.model.events.EventProcessorException;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Header;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces the events written by all of the eventd handler threads into
+ * JDBC batch inserts (group commit).
+ *
+ * Each caller of {@link #write(Header, Event)} queues its event and blocks
+ * until the batch containing it has been committed, so the contract of
+ * {@link JdbcEventWriter#process(Header, Event)} is unchanged: once it
+ * returns, the event has a database ID and is visible to the processors
+ * that run after it (e.g. the broadcast to alarmd).  A single writer thread
+ * drains the queue; while one batch is being written the next one fills up,
+ * so the batch size grows with the load instead of requiring a fixed delay.
+ * A partially filled batch is only held open, for at most the configured
+ * flush interval, while more events keep arriving; an event that finds the
+ * queue otherwise empty is written at once, so quiet periods see no added
+ * latency.
+ *
+ * If a batch fails, the events in it are retried one at a time so a single
+ * bad event does not cause the whole batch to be lost.
+ *
+ * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
+ */
+public final class JdbcEventBatcher implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(JdbcEventBatcher.class);
+
+    private static final long POLL_INTERVAL = 500;
+
+    private final JdbcEventWriter m_writer;
+
+    private final int m_batchSize;
+
+    private final long m_flushInterval;
+
+    private final BlockingQueue<PendingEvent> m_queue = new LinkedBlockingQueue<PendingEvent>();
+
+    private final Statistics m_statistics = new Statistics();
+
+    private volatile boolean m_running = false;
+
+    private Thread m_thread;
+
+    /**
+     * <p>Constructor for JdbcEventBatcher.</p>
+     *
+     * @param writer the writer used to insert the batches
+     * @param batchSize the maximum number of events per batch
+     * @param flushInterval the maximum time in milliseconds a partial batch
+     *        that is still growing is held open
+     */
+    JdbcEventBatcher(final JdbcEventWriter writer, final int batchSize, final long flushInterval) {
+        m_writer = writer;
+        m_batchSize = batchSize;
+        m_flushInterval = flushInterval;
+    }
+
+    /**
+     * Start the writer thread.
+     */
+    synchronized void start() {
+        if (m_running) {
+            return;
+        }
+        m_running = true;
+        m_thread = new Thread(this, "EventBatchWriter");
+        m_thread.setDaemon(true);
+        m_thread.start();
+    }
+
+    /**
+     * Stop accepting events, write out everything that is still queued and
+     * wait for the writer thread to exit.
+     */
+    void stop() {
+        final Thread thread;
+        synchronized (this) {
+            m_running = false;
+            thread = m_thread;
+            m_thread = null;
+        }
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (final InterruptedException e) {
+            LOG.warn("Interrupted while waiting for the event batch writer to finish.", e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    boolean isRunning() {
+        return m_running;
+    }
+
+    Statistics getStatistics() {
+        return m_statistics;
+    }
+
+    /**
+     * Queue an event and wait until it has been written to the database.
+     *
+     * @throws EventProcessorException if the event could not be written
+     */
+    void write(final Header eventHeader, final Event event) throws EventProcessorException {
+        final PendingEvent pending = new PendingEvent(eventHeader, event);
+        m_queue.add(pending);
+
+        if (!m_running && m_queue.remove(pending)) {
+            // stopped while we were queueing and the writer thread will not pick this up
+            m_writer.writeEvent(eventHeader, event);
+            return;
+        }
+
+        try {
+            pending.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EventProcessorException("Interrupted while waiting for event " + event.getUei() + " to be written.");
+        }
+
+        if (pending.getFailure() != null) {
+            throw new EventProcessorException(pending.getFailure());
+        }
+    }
+
+    /**
+     * Drain the queue into batches until stopped.  Events queued before
+     * {@link #stop()} was called are always written.
+     */
+    @Override
+    public void run() {
+        final List<PendingEvent> batch = new ArrayList<PendingEvent>(m_batchSize);
+
+        while (m_running || !m_queue.isEmpty()) {
+            try {
+                final PendingEvent first = m_queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                m_queue.drainTo(batch, m_batchSize - batch.size());
+
+                // a lone event means the load is low, so do not wait for company
+                if (m_flushInterval > 0 && batch.size() > 1) {
+                    final long deadline = System.currentTimeMillis() + m_flushInterval;
+                    while (batch.size() < m_batchSize) {
+                        final long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        final PendingEvent next = m_queue.poll(remaining, TimeUnit.MILLISECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        m_queue.drainTo(batch, m_batchSize - batch.size());
+                    }
+                }
+
+                flush(batch);
+            } catch (final InterruptedException e) {
+                LOG.warn("Event batch writer interrupted; writing queued events individually.", e);
+                m_running = false;
+                m_queue.drainTo(batch);
+                writeIndividually(batch);
+                break;
+            } catch (final Throwable t) {
+                LOG.error("Unexpected error in the event batch writer.", t);
+                for (final PendingEvent pending : batch) {
+                    pending.complete(t);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(final List<PendingEvent> batch) {
+        final long start = System.currentTimeMillis();
+        try {
+            m_writer.writeEvents(batch);
+            for (final PendingEvent pending : batch) {
+                pending.complete(null);
+            }
+            m_statistics.batchWritten(batch.size(), System.currentTimeMillis() - start);
+        } catch (final Throwable t) {
+            LOG.warn("Error inserting a batch of {} events into the datastore; retrying them one at a time.", batch.size(), t);
+            m_statistics.batchFailed();
+            writeIndividually(batch);
+        }
+    }
+
+    private void writeIndividually(final List<PendingEvent> batch) {
+        for (final PendingEvent pending : batch) {
+            try {
+                m_writer.writeEvent(pending.getHeader(), pending.getEvent());
+                pending.complete(null);
+            } catch (final Throwable t) {
+                pending.complete(t);
+            }
+        }
+    }
+
+    /**
+     * An event waiting to be written by the batch writer.
+     */
+    static final class PendingEvent {
+        private final Header m_header;
+        private final Event m_event;
+        private final CountDownLatch m_done = new CountDownLatch(1);
+        private volatile Throwable m_failure;
+
+        PendingEvent(final Header header, final Event event) {
+            m_header = header;
+            m_event = event;
+        }
+
+        Header getHeader() {
+            return m_header;
+        }
+
+        Event getEvent() {
+            return m_event;
+        }
+
+        Throwable getFailure() {
+            return m_failure;
+        }
+
+        void complete(final Throwable failure) {
+            m_failure = failure;
+            m_done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            m_done.await();
+        }
+    }
+
+    /**
+     * Running totals for the batches written since eventd was started.
+     */
+    public static final class Statistics {
+        private final AtomicLong m_batchesWritten = new AtomicLong();
+        private final AtomicLong m_batchesFailed = new AtomicLong();
+        private final AtomicLong m_eventsWritten = new AtomicLong();
+        private final AtomicLong m_writeTime = new AtomicLong();
+        private volatile int m_lastBatchSize = 0;
+        private volatile int m_largestBatchSize = 0;
+
+        void batchWritten(final int size, final long elapsed) {
+            m_batchesWritten.incrementAndGet();
+            m_eventsWritten.addAndGet(size);
+            m_writeTime.addAndGet(elapsed);
+            m_lastBatchSize = size;
+            if (size > m_largestBatchSize) {
+                m_largestBatchSize = size;
+            }
+        }
+
+        void batchFailed() {
+            m_batchesFailed.incrementAndGet();
+        }
+
+        /** @return the number of batches successfully written */
+        public long getBatchesWritten() {
+            return m_batchesWritten.get();
+        }
+
+        /** @return the number of batches that failed and were retried one event at a time */
+        public long getBatchesFailed() {
+            return m_batchesFailed.get();
+        }
+
+        /** @return the number of events written in successful batches */
+        public long getEventsWritten() {
+            return m_eventsWritten.get();
+        }
+
+        /** @return the total time in milliseconds spent writing successful batches */
+        public long getWriteTime() {
+            return m_writeTime.get();
+        }
+
+        /** @return the size of the most recently written batch */
+        public int getLastBatchSize() {
+            return m_lastBatchSize;
+        }
+
+        /** @return the size of the largest batch written */
+        public int getLargestBatchSize() {
+            return m_largestBatchSize;
+        }
+
+        /** @return the average number of events per batch */
+        public double getAverageBatchSize() {
+            final long batches = getBatchesWritten();
+            return batches == 0 ? 0.0 : (double) getEventsWritten() / batches;
+        }
+
+        /** @return the average time in milliseconds spent writing a batch */
+        public double getAverageWriteTime() {
+            final long batches = getBatchesWritten();
+            return batches == 0 ? 0.0 : (double) getWriteTime() / batches;
+        }
+    }
+}
@@ -51,6 +51,7 @@ import org.opennms.netmgt.xml.event.Header;
 import org.opennms.netmgt.xml.event.Operaction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
@@ -82,8 +83,15 @@ import org.springframework.jdbc.core.JdbcTemplate;
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
-public final class JdbcEventWriter extends AbstractJdbcPersister implements EventProcessor, InitializingBean {
+public final class JdbcEventWriter extends AbstractJdbcPersister implements EventProcessor, InitializingBean, DisposableBean {
     private static final Logger LOG = LoggerFactory.getLogger(JdbcEventWriter.class);
+
+    private int m_batchSize = 0;
+
+    private long m_batchFlushInterval = 0;
+
+    private JdbcEventBatcher m_batcher;
+
     /**
      * {@inheritDoc}
      *
@@ -97,6 +105,20 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
 
         LOG.debug("JdbcEventWriter: processing {} nodeid: {} ipaddr: {} serviceid: {} time: {}", event.getUei(), event.getNodeid(), event.getInterface(), event.getService(), event.getTime());
 
+        final JdbcEventBatcher batcher = m_batcher;
+        if (batcher != null && batcher.isRunning()) {
+            batcher.write(eventHeader, event);
+        } else {
+            writeEvent(eventHeader, event);
+        }
+
+        LOG.debug("EventWriter finished for : {}", event.getUei());
+    }
+
+    /**
+     * Insert a single event into the database in its own transaction.
+     */
+    void writeEvent(final Header eventHeader, final Event event) throws EventProcessorException {
         Connection connection;
         try {
             connection = getDataSource().getConnection();
@@ -113,21 +135,11 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
                 connection.commit();
             } catch (final SQLException e) {
                 LOG.warn("Error inserting event into the datastore.", e);
-                try {
-                    connection.rollback();
-                } catch (final Throwable e2) {
-                    LOG.warn("Rollback of transaction failed.", e2);
-                }
-
+                rollback(connection);
                 throw e;
             } catch (final DataAccessException e) {
                 LOG.warn("Error inserting event into the datastore.", e);
-                try {
-                    connection.rollback();
-                } catch (final Throwable e2) {
-                    LOG.warn("Rollback of transaction failed.", e2);
-                }
-
+                rollback(connection);
                 throw e;
             }
         } catch (final DataAccessException e) {
@@ -135,14 +147,67 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
         } catch (SQLException e) {
             throw new EventProcessorException(e);
         } finally {
+            close(connection);
+        }
+    }
+
+    /**
+     * Insert a batch of events into the database using a single JDBC batch
+     * statement and a single transaction.  Event IDs for the whole batch are
+     * allocated with one query before the insert.
+     *
+     * @exception java.sql.SQLException
+     *                Thrown if there is an error adding the events to the
+     *                database; in that case none of the events were stored.
+     */
+    void writeEvents(final List<JdbcEventBatcher.PendingEvent> batch) throws SQLException {
+        assignEventIds(batch);
+
+        final Connection connection = getDataSource().getConnection();
+        final DBUtils d = new DBUtils(getClass());
+        try {
+            connection.setAutoCommit(false);
+
             try {
-                connection.close();
+                final PreparedStatement insStmt = connection.prepareStatement(EventdConstants.SQL_DB_INS_EVENT);
+                d.watch(insStmt);
+
+                for (final JdbcEventBatcher.PendingEvent pending : batch) {
+                    setEventParameters(insStmt, pending.getHeader(), pending.getEvent(), pending.getEvent().getDbid());
+                    insStmt.addBatch();
+                }
+                insStmt.executeBatch();
+
+                connection.commit();
             } catch (final SQLException e) {
-                LOG.warn("SQLException while closing database connection.", e);
+                rollback(connection);
+                throw e;
+            } catch (final DataAccessException e) {
+                rollback(connection);
+                throw e;
             }
+        } finally {
+            d.cleanUp();
+            close(connection);
         }
 
-        LOG.debug("EventWriter finished for : {}", event.getUei());
+        LOG.debug("SUCCESSFULLY added {} events into the EVENTS table.", batch.size());
+    }
+
+    private void rollback(final Connection connection) {
+        try {
+            connection.rollback();
+        } catch (final Throwable e) {
+            LOG.warn("Rollback of transaction failed.", e);
+        }
+    }
+
+    private void close(final Connection connection) {
+        try {
+            connection.close();
+        } catch (final SQLException e) {
+            LOG.warn("SQLException while closing database connection.", e);
+        }
     }
 
     /**
@@ -170,186 +235,293 @@ public final class JdbcEventWriter extends AbstractJdbcPersister implements Even
             final PreparedStatement insStmt = connection.prepareStatement(EventdConstants.SQL_DB_INS_EVENT);
             d.watch(insStmt);
 
-            // eventID
-            insStmt.setInt(1, eventID);
+            setEventParameters(insStmt, eventHeader, event, eventID);
 
-            // eventUEI
-            insStmt.setString(2, Constants.format(event.getUei(), EVENT_UEI_FIELD_SIZE));
+            // execute
+            insStmt.executeUpdate();
+        } finally {
+            d.cleanUp();
+        }
 
-            // nodeID
-            final Long nodeid = event.getNodeid();
-            set(insStmt, 3, event.hasNodeid() ? nodeid.intValue() : -1);
+        LOG.debug("SUCCESSFULLY added {} related  data into the EVENTS table.", event.getUei());
+    }
 
-            // eventTime
-            insStmt.setTimestamp(4, getEventTime(event));
+    /**
+     * Allocate database IDs for every event in the batch.  The stock
+     * getNextEventID query (a single <code>SELECT nextval(...)</code>) is
+     * extended with <code>generate_series</code> so the whole block is
+     * fetched in one round-trip; any other query falls back to fetching one
+     * ID per event.
+     */
+    private void assignEventIds(final List<JdbcEventBatcher.PendingEvent> batch) throws SQLException {
+        List<Integer> ids = null;
+        final String nextIdString = getGetNextIdString();
+        if (!nextIdString.toLowerCase().contains(" from ")) {
+            try {
+                ids = new JdbcTemplate(getDataSource()).queryForList(nextIdString + " FROM generate_series(1, ?)", Integer.class, batch.size());
+            } catch (final DataAccessException e) {
+                LOG.debug("Unable to allocate a block of event IDs, falling back to one query per event.", e);
+            }
+        }
 
-            // Resolve the event host to a hostname using the ipInterface table
-            String hostname = getEventHost(event);
+        for (int i = 0; i < batch.size(); i++) {
+            final Event event = batch.get(i).getEvent();
+            final int eventID = (ids != null && ids.size() == batch.size()) ? ids.get(i) : getNextId();
+            synchronized (event) {
+                event.setDbid(eventID);
+            }
+        }
+    }
 
-            // eventHost
-            set(insStmt, 5, Constants.format(hostname, EVENT_HOST_FIELD_SIZE));
+    /**
+     * Bind the columns of {@link EventdConstants#SQL_DB_INS_EVENT} for the given event.
+     */
+    private void setEventParameters(final PreparedStatement insStmt, final Header eventHeader, final Event event, final int eventID) throws SQLException {
+        // eventID
+        insStmt.setInt(1, eventID);
 
-            // ipAddr
-            set(insStmt, 6, Constants.format(event.getInterface(), EVENT_INTERFACE_FIELD_SIZE));
+        // eventUEI
+        insStmt.setString(2, Constants.format(event.getUei(), EVENT_UEI_FIELD_SIZE));
 
-            // eventDpName
-            String dpName = "localhost";
-            if (eventHeader != null && eventHeader.getDpName() != null) {
-                dpName = Constants.format(eventHeader.getDpName(), EVENT_DPNAME_FIELD_SIZE);
-            } else if (event.getDistPoller() != null) {
-                dpName = Constants.format(event.getDistPoller(), EVENT_DPNAME_FIELD_SIZE);
-            }
-            insStmt.setString(7, dpName);
+        // nodeID
+        final Long nodeid = event.getNodeid();
+        set(insStmt, 3, event.hasNodeid() ? nodeid.intValue() : -1);
 
-            // eventSnmpHost
-            set(insStmt, 8, Constants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
+        // eventTime
+        insStmt.setTimestamp(4, getEventTime(event));
 
-            // service identifier - convert the service name to a service id
-            set(insStmt, 9, getEventServiceId(event));
+        // Resolve the event host to a hostname using the ipInterface table
+        String hostname = getEventHost(event);
 
-            // eventSnmp
-            if (event.getSnmp() != null) {
-                insStmt.setString(10, SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
-            } else {
-                insStmt.setNull(10, Types.VARCHAR);
-            }
+        // eventHost
+        set(insStmt, 5, Constants.format(hostname, EVENT_HOST_FIELD_SIZE));
 
-            // eventParms
-
-            // Replace any null bytes with a space, otherwise postgres will complain about encoding in UNICODE 
-            final String parametersString=Parameter.format(event);
-            set(insStmt, 11, Constants.format(parametersString, 0));
-
-            // eventCreateTime
-            final Timestamp eventCreateTime = new Timestamp(System.currentTimeMillis());
-            insStmt.setTimestamp(12, eventCreateTime);
-
-            // eventDescr
-            set(insStmt, 13, Constants.format(event.getDescr(), 0));
-
-            // eventLoggroup
-            set(insStmt, 14, (event.getLoggroupCount() > 0) ? Constants.format(event.getLoggroup(), EVENT_LOGGRP_FIELD_SIZE) : null);
-
-            // eventLogMsg
-            // eventLog
-            // eventDisplay
-            if (event.getLogmsg() != null) {
-                // set log message
-                set(insStmt, 15, Constants.format(event.getLogmsg().getContent(), 0));
-                String logdest = event.getLogmsg().getDest();
-                if (logdest.equals("logndisplay")) {
-                    // if 'logndisplay' set both log and display column to yes
-                    set(insStmt, 16, MSG_YES);
-                    set(insStmt, 17, MSG_YES);
-                } else if (logdest.equals("logonly")) {
-                    // if 'logonly' set log column to true
-                    set(insStmt, 16, MSG_YES);
-                    set(insStmt, 17, MSG_NO);
-                } else if (logdest.equals("displayonly")) {
-                    // if 'displayonly' set display column to true
-                    set(insStmt, 16, MSG_NO);
-                    set(insStmt, 17, MSG_YES);
-                } else if (logdest.equals("suppress")) {
-                    // if 'suppress' set both log and display to false
-                    set(insStmt, 16, MSG_NO);
-                    set(insStmt, 17, MSG_NO);
-                }
-            } else {
-                insStmt.setNull(15, Types.VARCHAR);
-
-                /*
-                 * If this is an event that had no match in the event conf
-                 * mark it as to be logged and displayed so that there
-                 * are no events that slip through the system
-                 * without the user knowing about them
-                 */
-                set(insStmt, 17, MSG_YES);
-            }
+        // ipAddr
+        set(insStmt, 6, Constants.format(event.getInterface(), EVENT_INTERFACE_FIELD_SIZE));
 
-            // eventSeverity
-            set(insStmt, 18, OnmsSeverity.get(event.getSeverity()).getId());
+        // eventDpName
+        String dpName = "localhost";
+        if (eventHeader != null && eventHeader.getDpName() != null) {
+            dpName = Constants.format(eventHeader.getDpName(), EVENT_DPNAME_FIELD_SIZE);
+        } else if (event.getDistPoller() != null) {
+            dpName = Constants.format(event.getDistPoller(), EVENT_DPNAME_FIELD_SIZE);
+        }
+        insStmt.setString(7, dpName);
 
-            // eventPathOutage
-            set(insStmt, 19, (event.getPathoutage() != null) ? Constants.format(event.getPathoutage(), EVENT_PATHOUTAGE_FIELD_SIZE) : null);
+        // eventSnmpHost
+        set(insStmt, 8, Constants.format(event.getSnmphost(), EVENT_SNMPHOST_FIELD_SIZE));
 
-            // eventCorrelation
-            set(insStmt, 20, (event.getCorrelation() != null) ? org.opennms.netmgt.dao.util.Correlation.format(event.getCorrelation(), EVENT_CORRELATION_FIELD_SIZE) : null);
+        // service identifier - convert the service name to a service id
+        set(insStmt, 9, getEventServiceId(event));
 
-            // eventSuppressedCount
-            insStmt.setNull(21, Types.INTEGER);
+        // eventSnmp
+        if (event.getSnmp() != null) {
+            insStmt.setString(10, SnmpInfo.format(event.getSnmp(), EVENT_SNMP_FIELD_SIZE));
+        } else {
+            insStmt.setNull(10, Types.VARCHAR);
+        }
 
-            // eventOperInstruct
-            set(insStmt, 22, Constants.format(event.getOperinstruct(), EVENT_OPERINSTRUCT_FIELD_SIZE));
+        // eventParms
 
-            // eventAutoAction
-            set(insStmt, 23, (event.getAutoactionCount() > 0) ? AutoAction.format(event.getAutoaction(), EVENT_AUTOACTION_FIELD_SIZE) : null);
+        // Replace any null bytes with a space, otherwise postgres will complain about encoding in UNICODE 
+        final String parametersString=Parameter.format(event);
+        set(insStmt, 11, Constants.format(parametersString, 0));
 
-            // eventOperAction / eventOperActionMenuText
-            if (event.getOperactionCount() > 0) {
-                final List<Operaction> a = new ArrayList<Operaction>();
-                final List<String> b = new ArrayList<String>();
+        // eventCreateTime
+        final Timestamp eventCreateTime = new Timestamp(System.currentTimeMillis());
+        insStmt.setTimestamp(12, eventCreateTime);
 
-                for (final Operaction eoa : event.getOperactionCollection()) {
-                    a.add(eoa);
-                    b.add(eoa.getMenutext());
-                }
+        // eventDescr
+        set(insStmt, 13, Constants.format(event.getDescr(), 0));
 
-                set(insStmt, 24, OperatorAction.format(a, EVENT_OPERACTION_FIELD_SIZE));
-                set(insStmt, 25, Constants.format(b, EVENT_OPERACTION_MENU_FIELD_SIZE));
-            } else {
-                insStmt.setNull(24, Types.VARCHAR);
-                insStmt.setNull(25, Types.VARCHAR);
+        // eventLoggroup
+        set(insStmt, 14, (event.getLoggroupCount() > 0) ? Constants.format(event.getLoggroup(), EVENT_LOGGRP_FIELD_SIZE) : null);
+
+        // eventLogMsg
+        // eventLog
+        // eventDisplay
+        if (event.getLogmsg() != null) {
+            // set log message
+            set(insStmt, 15, Constants.format(event.getLogmsg().getContent(), 0));
+            String logdest = event.getLogmsg().getDest();
+            if (logdest.equals("logndisplay")) {
+                // if 'logndisplay' set both log and display column to yes
+                set(insStmt, 16, MSG_YES);
+                set(insStmt, 17, MSG_YES);
+            } else if (logdest.equals("logonly")) {
+                // if 'logonly' set log column to true
+                set(insStmt, 16, MSG_YES);
+                set(insStmt, 17, MSG_NO);
+            } else if (logdest.equals("displayonly")) {
+                // if 'displayonly' set display column to true
+                set(insStmt, 16, MSG_NO);
+                set(insStmt, 17, MSG_YES);
+            } else if (logdest.equals("suppress")) {
+                // if 'suppress' set both log and display to false
+                set(insStmt, 16, MSG_NO);
+                set(insStmt, 17, MSG_NO);
             }
+        } else {
+            insStmt.setNull(15, Types.VARCHAR);
+
+            /*
+             * If this is an event that had no match in the event conf
+             * mark it as to be logged and displayed so that there
+             * are no events that slip through the system
+             * without the user knowing about them
+             */
+            set(insStmt, 17, MSG_YES);
+        }
 
-            // eventNotification, this column no longer needed
-            insStmt.setNull(26, Types.VARCHAR);
+        // eventSeverity
+        set(insStmt, 18, OnmsSeverity.get(event.getSeverity()).getId());
 
-            // eventTroubleTicket / eventTroubleTicket state
-            if (event.getTticket() != null) {
-                set(insStmt, 27, Constants.format(event.getTticket().getContent(), EVENT_TTICKET_FIELD_SIZE));
-                set(insStmt, 28, event.getTticket().getState().equals("on") ? 1 : 0);
-            } else {
-                insStmt.setNull(27, Types.VARCHAR);
-                insStmt.setNull(28, Types.INTEGER);
-            }
+        // eventPathOutage
+        set(insStmt, 19, (event.getPathoutage() != null) ? Constants.format(event.getPathoutage(), EVENT_PATHOUTAGE_FIELD_SIZE) : null);
 
-            // eventForward
-            set(insStmt, 29, (event.getForwardCount() > 0) ? org.opennms.netmgt.dao.util.Forward.format(event.getForward(), EVENT_FORWARD_FIELD_SIZE) : null);
+        // eventCorrelation
+        set(insStmt, 20, (event.getCorrelation() != null) ? org.opennms.netmgt.dao.util.Correlation.format(event.getCorrelation(), EVENT_CORRELATION_FIELD_SIZE) : null);
 
-            // event mouseOverText
-            set(insStmt, 30, Constants.format(event.getMouseovertext(), EVENT_MOUSEOVERTEXT_FIELD_SIZE));
+        // eventSuppressedCount
+        insStmt.setNull(21, Types.INTEGER);
 
-            // eventAckUser
-            if (event.getAutoacknowledge() != null && event.getAutoacknowledge().getState().equals("on")) {
-                set(insStmt, 31, Constants.format(event.getAutoacknowledge().getContent(), EVENT_ACKUSER_FIELD_SIZE));
+        // eventOperInstruct
+        set(insStmt, 22, Constants.format(event.getOperinstruct(), EVENT_OPERINSTRUCT_FIELD_SIZE));
 
-                // eventAckTime - if autoacknowledge is present,
-                // set time to event create time
-                set(insStmt, 32, eventCreateTime);
-            } else {
-                insStmt.setNull(31, Types.INTEGER);
-                insStmt.setNull(32, Types.TIMESTAMP);
-            }
+        // eventAutoAction
+        set(insStmt, 23, (event.getAutoactionCount() > 0) ? AutoAction.format(event.getAutoaction(), EVENT_AUTOACTION_FIELD_SIZE) : null);
 
-            // eventSource
-            set(insStmt, 33, Constants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
+        // eventOperAction / eventOperActionMenuText
+        if (event.getOperactionCount() > 0) {
+            final List<Operaction> a = new ArrayList<Operaction>();
+            final List<String> b = new ArrayList<String>();
 
-            // ifindex
-            if (event.hasIfIndex()) {
-                set(insStmt, 34, event.getIfIndex());
-            } else {
-                insStmt.setNull(34, Types.INTEGER);
+            for (final Operaction eoa : event.getOperactionCollection()) {
+                a.add(eoa);
+                b.add(eoa.getMenutext());
             }
-            
-            // execute
-            insStmt.executeUpdate();
-        } finally {
-            d.cleanUp();
+
+            set(insStmt, 24, OperatorAction.format(a, EVENT_OPERACTION_FIELD_SIZE));
+            set(insStmt, 25, Constants.format(b, EVENT_OPERACTION_MENU_FIELD_SIZE));
+        } else {
+            insStmt.setNull(24, Types.VARCHAR);
+            insStmt.setNull(25, Types.VARCHAR);
         }
 
-        LOG.debug("SUCCESSFULLY added {} related  data into the EVENTS table.", event.getUei());
+        // eventNotification, this column no longer needed
+        insStmt.setNull(26, Types.VARCHAR);
+
+        // eventTroubleTicket / eventTroubleTicket state
+        if (event.getTticket() != null) {
+            set(insStmt, 27, Constants.format(event.getTticket().getContent(), EVENT_TTICKET_FIELD_SIZE));
+            set(insStmt, 28, event.getTticket().getState().equals("on") ? 1 : 0);
+        } else {
+            insStmt.setNull(27, Types.VARCHAR);
+            insStmt.setNull(28, Types.INTEGER);
+        }
+
+        // eventForward
+        set(insStmt, 29, (event.getForwardCount() > 0) ? org.opennms.netmgt.dao.util.Forward.format(event.getForward(), EVENT_FORWARD_FIELD_SIZE) : null);
+
+        // event mouseOverText
+        set(insStmt, 30, Constants.format(event.getMouseovertext(), EVENT_MOUSEOVERTEXT_FIELD_SIZE));
+
+        // eventAckUser
+        if (event.getAutoacknowledge() != null && event.getAutoacknowledge().getState().equals("on")) {
+            set(insStmt, 31, Constants.format(event.getAutoacknowledge().getContent(), EVENT_ACKUSER_FIELD_SIZE));
+
+            // eventAckTime - if autoacknowledge is present,
+            // set time to event create time
+            set(insStmt, 32, eventCreateTime);
+        } else {
+            insStmt.setNull(31, Types.INTEGER);
+            insStmt.setNull(32, Types.TIMESTAMP);
+        }
+
+        // eventSource
+        set(insStmt, 33, Constants.format(event.getSource(), EVENT_SOURCE_FIELD_SIZE));
+
+        // ifindex
+        if (event.hasIfIndex()) {
+            set(insStmt, 34, event.getIfIndex());
+        } else {
+            insStmt.setNull(34, Types.INTEGER);
+        }
+        
     }
 
+    /**
+     * <p>afterPropertiesSet</p>
+     *
+     * @throws java.sql.SQLException if any.
+     */
+    @Override
+    public void afterPropertiesSet() throws SQLException {
+        super.afterPropertiesSet();
+
+        if (m_batchSize > 1) {
+            LOG.info("Writing events in batches of up to {} events (flush interval: {}ms)", m_batchSize, m_batchFlushInterval);
+            m_batcher = new JdbcEventBatcher(this, m_batchSize, m_batchFlushInterval);
+            m_batcher.start();
+        }
+    }
+
+    /**
+     * <p>destroy</p>
+     *
+     * Flushes any queued events and stops the batch writer thread.
+     */
+    @Override
+    public void destroy() {
+        if (m_batcher != null) {
+            m_batcher.stop();
+        }
+    }
+
+    /**
+     * <p>getBatchSize</p>
+     *
+     * @return the maximum number of events per batch, or 0 if batching is disabled
+     */
+    public int getBatchSize() {
+        return m_batchSize;
+    }
+
+    /**
+     * <p>setBatchSize</p>
+     *
+     * @param batchSize the maximum number of events per batch; values of 1 or less disable batching
+     */
+    public void setBatchSize(final int batchSize) {
+        m_batchSize = batchSize;
+    }
+
+    /**
+     * <p>getBatchFlushInterval</p>
+     *
+     * @return the maximum time in milliseconds a partial batch is held open
+     */
+    public long getBatchFlushInterval() {
+        return m_batchFlushInterval;
+    }
+
+    /**
+     * <p>setBatchFlushInterval</p>
+     *
+     * @param batchFlushInterval the maximum time in milliseconds a partial batch is held open
+     */
+    public void setBatchFlushInterval(final long batchFlushInterval) {
+        m_batchFlushInterval = batchFlushInterval;
+    }
+
+    /**
+     * <p>getBatchStatistics</p>
+     *
+     * @return the statistics of the batch writer, or null if batching is disabled
+     */
+    public JdbcEventBatcher.Statistics getBatchStatistics() {
+        return m_batcher == null ? null : m_batcher.getStatistics();
+    }
 
     /**
      * This method is used to convert the event host into a hostname id by
@@ -18,17 +18,27 @@ package org.opennms.netmgt.linkd;
 
 import static org.opennms.core.utils.InetAddressUtils.str;
 
+import java.lang.reflect.UndeclaredThrowableException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.opennms.netmgt.linkd.scheduler.ReadyRunnable;
 import org.opennms.netmgt.linkd.scheduler.Scheduler;
 import org.opennms.netmgt.model.DataLinkInterface.DiscoveryProtocol;
@@ -49,51 +59,34 @@ public final class DiscoveryLink implements ReadyRunnable {
     private class BridgeTopologyLinkCandidate {
 
         private final BridgeTopologyPort bridgeTopologyPort;
-        private Set<String> macs = new HashSet<String>();
+        private MacSet macs = MacSet.EMPTY;
         private Set<Integer> targets = new HashSet<Integer>();
         
         public BridgeTopologyLinkCandidate(BridgeTopologyPort btp) {
             bridgeTopologyPort = btp;
         }
 
-        public void removeMacs(Set<String> otherMacs, Integer targettomerge) {
+        public void removeMacs(MacSet otherMacs, Integer targettomerge) {
         	targets.add(targettomerge);
-        	Set<String> curmacs = new HashSet<String>();
-    		for (String mac: getMacs()) {
-    			if (otherMacs.contains(mac)) 
-    				continue;
-    			curmacs.add(mac);
-    		}
-    		macs = curmacs;
+    		macs = getMacs().minus(otherMacs);
         }
         
-        public Set<String> getMacs() {
+        public MacSet getMacs() {
         	if (macs.isEmpty())
         		return bridgeTopologyPort.getMacs();
         	return macs;
         }
         
         public boolean intersectionNull(BridgeTopologyLinkCandidate portcandidate) {
-        	for (String mac: getMacs()) {
-        		if (portcandidate.getMacs().contains(mac))
-        			return false;
-        	}
-        	return true;
+        	return !getMacs().intersects(portcandidate.getMacs());
         }
         
         public void merge(BridgeTopologyLinkCandidate other) {
-        	for (String mac: other.macs) {
-        		if (bridgeTopologyPort.getMacs().contains(mac))
-        				macs.add(mac);
-        	}
+        	macs = macs.union(other.macs.intersect(bridgeTopologyPort.getMacs()));
         }
         
         public boolean strictContained(BridgeTopologyLinkCandidate portcandidate) {
-        	for (String mac: getMacs()) {
-        		if (!portcandidate.getMacs().contains(mac))
-        			return false;
-        	}
-        	return true;
+        	return getMacs().containedIn(portcandidate.getMacs());
         }
 
 		public BridgeTopologyPort getBridgeTopologyPort() {
@@ -169,17 +162,17 @@ public final class DiscoveryLink implements ReadyRunnable {
     private class BridgeTopologyPort {
         private final Integer nodeid;
         private final Integer bridgePort;
-        private final Set<String> macs;
+        private final MacSet macs;
 
         public BridgeTopologyPort(Integer nodeid, Integer bridgePort,
-                Set<String> macs) {
+                MacSet macs) {
             super();
             this.nodeid = nodeid;
             this.bridgePort = bridgePort;
             this.macs = macs;
         }
 
-        public Set<String> getMacs() {
+        public MacSet getMacs() {
             return macs;
         }
 
@@ -246,9 +239,9 @@ public final class DiscoveryLink implements ReadyRunnable {
         private BridgeTopologyPort designatebridgePort;
         private SwitchPort linkedSwitchPort;
 
-        private Set<String> macs = new HashSet<String>();
+        private final MacSet macs;
 
-        public Set<String> getMacs() {
+        public MacSet getMacs() {
             return macs;
         }
 
@@ -271,10 +264,7 @@ public final class DiscoveryLink implements ReadyRunnable {
             super();
             this.bridgePort = bridgeport;
             this.designatebridgePort = designatedbridgePort;
-            for (String mac : bridgeport.getMacs()) {
-                if (designatedbridgePort.getMacs().contains(mac))
-                    macs.add(mac);
-            }
+            macs = bridgeport.getMacs().intersect(designatedbridgePort.getMacs());
         }
 
         public boolean contains(BridgeTopologyPort bridgeport) {
@@ -288,23 +278,25 @@ public final class DiscoveryLink implements ReadyRunnable {
 
     }
 
+    /**
+     * The topology of one broadcast domain: bridges that share no MAC
+     * address and no spanning tree link cannot affect each other's links, so
+     * each domain is worked out on its own.
+     */
     private class BridgeTopology {
 
-    	
+        private final LongObjectHashMap<SwitchPort> bridgeAssociatedMacAddressMap;
         private List<BridgeTopologyLink> bridgelinks = new ArrayList<BridgeTopologyLink>();
-        private Map<String,SwitchPort> bridgeAssociatedMacAddressMap = new HashMap<String, SwitchPort>();
+        private Set<BridgeTopologyPort> bridgelinkPorts = new HashSet<BridgeTopologyPort>();
         private List<BridgeTopologyLinkCandidate> bridgeTopologyPortCandidates = new ArrayList<DiscoveryLink.BridgeTopologyLinkCandidate>();
-        
-        public void addBridgeAssociatedMac(Integer nodeid, Integer ifindex, String mac) {
-            LOG.info("addBridgeAssociatedMac: adding nodeid {}, ifindex {}, mac {}", nodeid, ifindex,mac);
-        	SwitchPort swPort = new SwitchPort(nodeid, ifindex);
-        	bridgeAssociatedMacAddressMap.put(mac, swPort);
+        private Map<Integer, List<Integer>> bridgeTopologyPortCandidatesByNode = new HashMap<Integer, List<Integer>>();
+
+        public BridgeTopology(LongObjectHashMap<SwitchPort> bridgeAssociatedMacAddressMap) {
+            this.bridgeAssociatedMacAddressMap = bridgeAssociatedMacAddressMap;
         }
 
-        public void addNodeToTopology(LinkableNode bridgeNode) {
-        	Integer nodeid = bridgeNode.getNodeId();
-	    	 
-	    	 for (final Entry<Integer,Set<String>> curEntry : bridgeNode.getBridgeForwardingTable().entrySet()) {
+        public void addNodeToTopology(Integer nodeid, Map<Integer, MacSet> bridgeForwardingTable) {
+	    	 for (final Entry<Integer,MacSet> curEntry : bridgeForwardingTable.entrySet()) {
 	             LOG.info("addNodeToTopology: parsing node {}, port {}, macs {}",
 	                     nodeid, curEntry.getKey(),
                          curEntry.getValue());
@@ -313,43 +305,80 @@ public final class DiscoveryLink implements ReadyRunnable {
                          curEntry.getKey(),
                          curEntry.getValue());
 
-	             if (parsed(bridgetopologyport)) {
+	             if (bridgelinkPorts.contains(bridgetopologyport)) {
 	            	 LOG.info("addNodeToTopology: node {}, port {} has been previuosly parsed. Skipping.",nodeid, curEntry.getKey());
 	            	 continue;
 	             }
 
 	             BridgeTopologyLinkCandidate topologycandidate = new BridgeTopologyLinkCandidate(bridgetopologyport);
-	             for (String mac : curEntry.getValue()) {
-	                 if (bridgeAssociatedMacAddressMap.containsKey(mac)) {
-	                	 SwitchPort swPort = bridgeAssociatedMacAddressMap.get(mac);
+	             final MacSet macs = curEntry.getValue();
+	             for (int i = 0; i < macs.size(); i++) {
+	                 SwitchPort swPort = bridgeAssociatedMacAddressMap.get(macs.get(i));
+	                 if (swPort != null) {
 	    	             LOG.info("addNodeToTopology: parsing node {}, port {}, mac {} found on bridge adding target: targetnodeid {}, targetifindex {}",
 	    	                     nodeid, curEntry.getKey(),
-	                             curEntry.getValue(),swPort.getNodeid(),swPort.getIfindex());
-	                     topologycandidate.addTarget(bridgeAssociatedMacAddressMap.get(mac).getNodeid());
+	                             MacPacker.toString(macs.get(i)),swPort.getNodeid(),swPort.getIfindex());
+	                     topologycandidate.addTarget(swPort.getNodeid());
 	                 }
 	             }
-	             bridgeTopologyPortCandidates.add(parseBFTEntry(topologycandidate));
+	             addCandidate(parseBFTEntry(topologycandidate));
 	    	 }
 	    	 mergeTopology();
         }
-        
+
+        private void addCandidate(BridgeTopologyLinkCandidate candidate) {
+            final Integer nodeid = candidate.getBridgeTopologyPort().getNodeid();
+            List<Integer> indexes = bridgeTopologyPortCandidatesByNode.get(nodeid);
+            if (indexes == null) {
+                indexes = new ArrayList<Integer>();
+                bridgeTopologyPortCandidatesByNode.put(nodeid, indexes);
+            }
+            indexes.add(bridgeTopologyPortCandidates.size());
+            bridgeTopologyPortCandidates.add(candidate);
+        }
+
+        /**
+         * Only the candidates that come after candidateA and sit on one of
+         * its targets can pair with it, so there is no need to look at the
+         * others.
+         */
+        private List<Integer> getPairCandidates(int candidateA) {
+            final List<Integer> indexes = new ArrayList<Integer>();
+            for (Integer target : bridgeTopologyPortCandidates.get(candidateA).getTargets()) {
+                final List<Integer> onTarget = bridgeTopologyPortCandidatesByNode.get(target);
+                if (onTarget == null)
+                    continue;
+                for (Integer index : onTarget) {
+                    if (index > candidateA)
+                        indexes.add(index);
+                }
+            }
+            Collections.sort(indexes);
+            return indexes;
+        }
+
+        private boolean pairs(BridgeTopologyLinkCandidate candidateA, BridgeTopologyLinkCandidate candidateB) {
+            if (candidateA.getBridgeTopologyPort().getNodeid().intValue() == candidateB.getBridgeTopologyPort().getNodeid().intValue())
+                return false;
+            return candidateA.getTargets().contains(candidateB.getBridgeTopologyPort().getNodeid())
+                    && candidateB.getTargets().contains(candidateA.getBridgeTopologyPort().getNodeid());
+        }
+
         public void mergeTopology() {
         	Set<BridgeTopologyPort> parsedNode = new HashSet<BridgeTopologyPort>(); 
-        	for (BridgeTopologyLinkCandidate candidateA: bridgeTopologyPortCandidates) {
-        		if (parsedNode.contains(candidateA.getBridgeTopologyPort()))
+        	for (int a = 0; a < bridgeTopologyPortCandidates.size(); a++) {
+        		BridgeTopologyLinkCandidate candidateA = bridgeTopologyPortCandidates.get(a);
+        		if (!parsedNode.add(candidateA.getBridgeTopologyPort()))
         				continue;
-        	    parsedNode.add(candidateA.getBridgeTopologyPort());
         		if (candidateA.getTargets().isEmpty()) 
         			continue;
-    			for (BridgeTopologyLinkCandidate candidateB: bridgeTopologyPortCandidates) {
+    			for (Integer b : getPairCandidates(a)) {
+    				BridgeTopologyLinkCandidate candidateB = bridgeTopologyPortCandidates.get(b);
     				if (parsedNode.contains(candidateB.getBridgeTopologyPort()))
     					continue;
     				if (candidateB.getTargets().isEmpty())
     					continue;
-    				if (candidateA.getBridgeTopologyPort().getNodeid().intValue() == candidateB.getBridgeTopologyPort().getNodeid().intValue())
-    					continue;
-    				if (candidateA.getTargets().contains(candidateB.getBridgeTopologyPort().getNodeid()) 
-    						&& candidateB.getTargets().contains(candidateA.getBridgeTopologyPort().getNodeid())) {
+    				if (pairs(candidateA, candidateB)) {
     					candidateA.getTargets().clear();
     					candidateB.getTargets().clear();
     					candidateA.getTargets().add(candidateB.getBridgeTopologyPort().getNodeid());
@@ -380,18 +409,10 @@ public final class DiscoveryLink implements ReadyRunnable {
             }
             return topologyLinkCandidate;
     	}
-    	
-        private boolean parsed(BridgeTopologyPort bridgePort) {
-            for (BridgeTopologyLink link : bridgelinks) {
-                if (link.contains(bridgePort))
-                    return true;
-            }
-            return false;
-        }
 
         public void parseSTPEntry(Integer nodeid, Integer bridgePort,
-                Set<String> macs, Integer designatednodeid,
-                Integer designatedport, Set<String> designatedmacs) {
+                MacSet macs, Integer designatednodeid,
+                Integer designatedport, MacSet designatedmacs) {
 
         	BridgeTopologyPort source = new BridgeTopologyPort(
                     nodeid,
@@ -412,18 +433,21 @@ public final class DiscoveryLink implements ReadyRunnable {
                      link.getMacs());
         	if (sourceLink.intersectionNull(designatedLink)) {
 	            bridgelinks.add(link);
+	            bridgelinkPorts.add(source);
+	            bridgelinkPorts.add(designated);
         	} else {
             	sourceLink.addTarget(designatednodeid);
             	designatedLink.addTarget(nodeid);
-        		bridgeTopologyPortCandidates.add(parseBFTEntry(sourceLink));        	
-    		    bridgeTopologyPortCandidates.add(parseBFTEntry(designatedLink));
+        		addCandidate(parseBFTEntry(sourceLink));
+    		    addCandidate(parseBFTEntry(designatedLink));
     		    mergeTopology();
     	    }
         }
 
         public List<BridgeTopologyLink> getTopology() {
         	Set<BridgeTopologyPort> parsedNode = new HashSet<BridgeTopologyPort>(); 
-        	for (BridgeTopologyLinkCandidate candidateA: bridgeTopologyPortCandidates) {
+        	for (int a = 0; a < bridgeTopologyPortCandidates.size(); a++) {
+        		BridgeTopologyLinkCandidate candidateA = bridgeTopologyPortCandidates.get(a);
         		if (parsedNode.contains(candidateA.getBridgeTopologyPort()))
     				continue;
         		if (candidateA.getTargets().isEmpty()) {
@@ -432,7 +456,8 @@ public final class DiscoveryLink implements ReadyRunnable {
                 LOG.info("getTopology: bridgetobridge discovery: parsing nodeidA {}, portA {}, macsA {}, targetsA {}.",
                         candidateA.getBridgeTopologyPort().getNodeid(), candidateA.getBridgeTopologyPort().getBridgePort(), 
                         candidateA.getMacs(), candidateA.getTargets());
-    			for (BridgeTopologyLinkCandidate candidateB: bridgeTopologyPortCandidates) {
+    			for (Integer b : getPairCandidates(a)) {
+    				BridgeTopologyLinkCandidate candidateB = bridgeTopologyPortCandidates.get(b);
     				if (parsedNode.contains(candidateB.getBridgeTopologyPort()))
     					continue;
     				if (candidateB.getTargets().isEmpty()) {
@@ -441,10 +466,7 @@ public final class DiscoveryLink implements ReadyRunnable {
                     LOG.info("getTopology: bridgetobridge discovery: parsing nodeidB {}, portB {}, macsB {}, targetsB {}.",
                             candidateB.getBridgeTopologyPort().getNodeid(), candidateB.getBridgeTopologyPort().getBridgePort(), 
                             candidateB.getMacs(), candidateB.getTargets());
-    				if (candidateA.getBridgeTopologyPort().getNodeid().intValue() == candidateB.getBridgeTopologyPort().getNodeid().intValue())
-    					continue;
-    				if (candidateA.getTargets().contains(candidateB.getBridgeTopologyPort().getNodeid()) 
-    						&& candidateB.getTargets().contains(candidateA.getBridgeTopologyPort().getNodeid())) {
+    				if (pairs(candidateA, candidateB)) {
     	        		parsedNode.add(candidateA.getBridgeTopologyPort());
     					parsedNode.add(candidateB.getBridgeTopologyPort());
     					BridgeTopologyLink link = new BridgeTopologyLink(candidateA.getBridgeTopologyPort(), candidateB.getBridgeTopologyPort());
@@ -461,19 +483,21 @@ public final class DiscoveryLink implements ReadyRunnable {
                         candidate.getMacs(), candidate.getTargets());
         		BridgeTopologyLink link = new BridgeTopologyLink(new BridgeTopologyPort(candidate.getBridgeTopologyPort().getNodeid(), candidate.getBridgeTopologyPort().getBridgePort(), candidate.getMacs()));
 				SwitchPort swPort = null;
-        		for (String mac: candidate.getMacs()) {
-        			if (!bridgeAssociatedMacAddressMap.containsKey(mac)) {
+				final MacSet macs = candidate.getMacs();
+        		for (int i = 0; i < macs.size(); i++) {
+        			SwitchPort associated = bridgeAssociatedMacAddressMap.get(macs.get(i));
+        			if (associated == null) {
         				swPort = null;
         				break;
         			}
-        			if (swPort != null && !swPort.equals(bridgeAssociatedMacAddressMap.get(mac))) {
+        			if (swPort != null && !swPort.equals(associated)) {
         				swPort = null;
         				break;
         			} else {
-                        swPort = bridgeAssociatedMacAddressMap.get(mac);
+                        swPort = associated;
                         LOG.info("getTopology: parsing nodeid {}, port {}: mac {} is associated to switch Node {}, Port {}",
                                 candidate.getBridgeTopologyPort().getNodeid(), candidate.getBridgeTopologyPort().getBridgePort(), 
-                                mac, swPort.getNodeid(),swPort.getIfindex());        				
+                                MacPacker.toString(macs.get(i)), swPort.getNodeid(),swPort.getIfindex());        				
         			}
         		}
         		if (swPort != null)
@@ -491,6 +515,8 @@ public final class DiscoveryLink implements ReadyRunnable {
 
     private List<NodeToNodeLink> m_links = new ArrayList<NodeToNodeLink>();
 
+    private Set<NodeToNodeLink> m_linkSet = new HashSet<NodeToNodeLink>();
+
     private boolean discoveryUsingRoutes = true;
 
     private boolean discoveryUsingCdp = true;
@@ -651,6 +677,7 @@ public final class DiscoveryLink implements ReadyRunnable {
         m_linkd.updateDiscoveryLinkCollection(this);
 
         m_links.clear();
+        m_linkSet.clear();
         runned = true;
     }
 
@@ -675,23 +702,173 @@ public final class DiscoveryLink implements ReadyRunnable {
 
     private void getLinksFromBridge(Collection<LinkableNode> linkableNodes) {
         LOG.info("getLinksFromBridge: finding links using Bridge Discovery");
-        BridgeTopology topology = new BridgeTopology();
-        List<LinkableNode> bridgeNodes = new ArrayList<LinkableNode>();
+        final MacPacker packer = new MacPacker();
+        final LongObjectHashMap<SwitchPort> bridgeAssociatedMacAddressMap = new LongObjectHashMap<SwitchPort>();
+        final List<LinkableNode> bridgeNodes = new ArrayList<LinkableNode>();
+        final Map<Integer, LinkableNode> nodesById = new HashMap<Integer, LinkableNode>();
+        final Map<String, LinkableNode> nodesByBridgeIdentifier = new HashMap<String, LinkableNode>();
         for (final LinkableNode curNode : linkableNodes) {
+            if (!nodesById.containsKey(curNode.getNodeId()))
+                nodesById.put(curNode.getNodeId(), curNode);
             if (curNode.isBridgeNode()) {
                 LOG.debug("getLinksFromBridge: found LinkableNode nodeid/sysoid/ipaddress {}/{}/{}",
                           curNode.getNodeId(), curNode.getSysoid(),
                           str(curNode.getSnmpPrimaryIpAddr()));
                 bridgeNodes.add(curNode);
+                for (String bridgeIdentifier : curNode.getBridgeIdentifiers()) {
+                    if (!nodesByBridgeIdentifier.containsKey(bridgeIdentifier))
+                        nodesByBridgeIdentifier.put(bridgeIdentifier, curNode);
+                }
                 for (Entry<Integer, String> entry: curNode.getMacIdentifiers().entrySet()) {
                 	if (entry.getValue() == null || entry.getValue().equals(""))
                 		continue;
-                    topology.addBridgeAssociatedMac(curNode.getNodeId(), entry.getKey(),
-                                                    entry.getValue());
+                    LOG.info("getLinksFromBridge: adding bridge associated mac: nodeid {}, ifindex {}, mac {}",
+                             curNode.getNodeId(), entry.getKey(), entry.getValue());
+                    bridgeAssociatedMacAddressMap.put(packer.pack(entry.getValue()),
+                                                      new SwitchPort(curNode.getNodeId(), entry.getKey()));
+                }
+            }
+        }
+
+        final Map<Integer, Map<Integer, MacSet>> bridgeForwardingTables = new HashMap<Integer, Map<Integer, MacSet>>();
+        for (final LinkableNode curNode : bridgeNodes) {
+            final Map<Integer, MacSet> bft = new LinkedHashMap<Integer, MacSet>();
+            for (final Entry<Integer, Set<String>> curEntry : curNode.getBridgeForwardingTable().entrySet()) {
+                bft.put(curEntry.getKey(), packer.pack(curEntry.getValue()));
+            }
+            bridgeForwardingTables.put(curNode.getNodeId(), bft);
+        }
+
+        final List<List<LinkableNode>> domains = getBroadcastDomains(packer, bridgeNodes, nodesByBridgeIdentifier);
+        LOG.info("getLinksFromBridge: found {} broadcast domains on {} bridges", domains.size(), bridgeNodes.size());
+
+        final List<Future<List<BridgeTopologyLink>>> topologies = new ArrayList<Future<List<BridgeTopologyLink>>>(domains.size());
+        final int threads = Math.min(domains.size(), Runtime.getRuntime().availableProcessors());
+        final ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads, new LogPreservingThreadFactory("DiscoveryLink-" + getPackageName(), threads, false)) : null;
+        try {
+            for (final List<LinkableNode> domain : domains) {
+                final Callable<List<BridgeTopologyLink>> task = new Callable<List<BridgeTopologyLink>>() {
+                    @Override
+                    public List<BridgeTopologyLink> call() {
+                        return getBridgeTopology(domain, bridgeAssociatedMacAddressMap, bridgeForwardingTables, nodesByBridgeIdentifier);
+                    }
+                };
+                if (executor == null) {
+                    final FutureTask<List<BridgeTopologyLink>> future = new FutureTask<List<BridgeTopologyLink>>(task);
+                    future.run();
+                    topologies.add(future);
+                } else {
+                    topologies.add(executor.submit(task));
+                }
+            }
+
+            final LongHashSet macParsed = new LongHashSet();
+            for (final Future<List<BridgeTopologyLink>> topology : topologies) {
+                for (BridgeTopologyLink link : topology.get()) {
+                    addBridgeLink(nodesById, packer, macParsed, link);
+                }
+            }
+        } catch (final InterruptedException e) {
+            LOG.warn("getLinksFromBridge: interrupted while finding links using Bridge Discovery");
+            Thread.currentThread().interrupt();
+            return;
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            throw new UndeclaredThrowableException(e.getCause());
+        } finally {
+            if (executor != null)
+                executor.shutdownNow();
+        }
+        LOG.info("getLinksFromBridge: done finding links using Bridge Discovery");
+
+    }
+
+    /**
+     * Splits the bridges into broadcast domains: two bridges are in the same
+     * domain when a MAC address is learned by, or belongs to, both of them or
+     * when one is the spanning tree designated bridge of the other.
+     */
+    private List<List<LinkableNode>> getBroadcastDomains(MacPacker packer,
+            List<LinkableNode> bridgeNodes,
+            Map<String, LinkableNode> nodesByBridgeIdentifier) {
+        final Map<LinkableNode, Integer> indexes = new HashMap<LinkableNode, Integer>();
+        final int[] parents = new int[bridgeNodes.size()];
+        final LongObjectHashMap<Integer> macOwners = new LongObjectHashMap<Integer>();
+        for (int i = 0; i < parents.length; i++) {
+            final LinkableNode curNode = bridgeNodes.get(i);
+            final Integer index = i;
+            parents[i] = i;
+            indexes.put(curNode, index);
+            for (String mac : curNode.getMacIdentifiers().values()) {
+                if (mac == null || mac.equals(""))
+                    continue;
+                union(parents, i, macOwners, packer.pack(mac), index);
+            }
+            for (Set<String> macs : curNode.getBridgeForwardingTable().values()) {
+                for (String mac : macs) {
+                    union(parents, i, macOwners, packer.pack(mac), index);
+                }
+            }
+        }
+        for (int i = 0; i < parents.length; i++) {
+            for (List<OnmsStpInterface> stpIfaces : bridgeNodes.get(i).getStpInterfaces().values()) {
+                for (OnmsStpInterface stpIface : stpIfaces) {
+                    final String designatedBridge = stpIface.getStpPortDesignatedBridge();
+                    if (designatedBridge == null || designatedBridge.length() <= 4)
+                        continue;
+                    final LinkableNode designatedNode = nodesByBridgeIdentifier.get(designatedBridge.substring(4));
+                    if (designatedNode != null)
+                        union(parents, i, indexes.get(designatedNode));
                 }
             }
         }
 
+        final Map<Integer, List<LinkableNode>> domains = new LinkedHashMap<Integer, List<LinkableNode>>();
+        for (int i = 0; i < parents.length; i++) {
+            final Integer root = find(parents, i);
+            List<LinkableNode> domain = domains.get(root);
+            if (domain == null) {
+                domain = new ArrayList<LinkableNode>();
+                domains.put(root, domain);
+            }
+            domain.add(bridgeNodes.get(i));
+        }
+        return new ArrayList<List<LinkableNode>>(domains.values());
+    }
+
+    private static void union(int[] parents, int node, LongObjectHashMap<Integer> macOwners, long mac, Integer index) {
+        final Integer owner = macOwners.get(mac);
+        if (owner == null)
+            macOwners.put(mac, index);
+        else
+            union(parents, node, owner);
+    }
+
+    private static void union(int[] parents, int a, int b) {
+        final int rootA = find(parents, a);
+        final int rootB = find(parents, b);
+        if (rootA != rootB)
+            parents[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+    }
+
+    private static int find(int[] parents, int node) {
+        int root = node;
+        while (parents[root] != root)
+            root = parents[root];
+        while (parents[node] != root) {
+            final int next = parents[node];
+            parents[node] = root;
+            node = next;
+        }
+        return root;
+    }
+
+    private List<BridgeTopologyLink> getBridgeTopology(List<LinkableNode> bridgeNodes,
+            LongObjectHashMap<SwitchPort> bridgeAssociatedMacAddressMap,
+            Map<Integer, Map<Integer, MacSet>> bridgeForwardingTables,
+            Map<String, LinkableNode> nodesByBridgeIdentifier) {
+        BridgeTopology topology = new BridgeTopology(bridgeAssociatedMacAddressMap);
         for (final LinkableNode curNode : bridgeNodes) {
             final InetAddress curIpAddr = curNode.getSnmpPrimaryIpAddr();
             final Integer curNodeId = curNode.getNodeId();
@@ -754,8 +931,7 @@ public final class DiscoveryLink implements ReadyRunnable {
                     }
                     int designatedbridgeport = 8191 & Integer.parseInt(stpPortDesignatedPort,
                                                                        16);
-                    final LinkableNode designatedNode = getNodeFromMacIdentifierOfBridgeNode(linkableNodes,
-                                                                                             stpPortDesignatedBridge.substring(4));
+                    final LinkableNode designatedNode = nodesByBridgeIdentifier.get(stpPortDesignatedBridge.substring(4));
                     if (designatedNode == null) {
                         LOG.debug("getLinksFromBridge: bridge identifier {}, VLAN {}: no nodeid found for stp designated bridge address {}. Nothing to save.",
                                   curBaseBridgeAddress, vlan,
@@ -764,41 +940,49 @@ public final class DiscoveryLink implements ReadyRunnable {
                     }
                     topology.parseSTPEntry(curNodeId,
                                            stpbridgeport,
-                                           curNode.getBridgeForwadingTableOnBridgePort(stpbridgeport),
+                                           getMacs(bridgeForwardingTables, curNodeId, stpbridgeport),
                                            designatedNode.getNodeId(),
                                            designatedbridgeport,
-                                           designatedNode.getBridgeForwadingTableOnBridgePort(designatedbridgeport));
+                                           getMacs(bridgeForwardingTables, designatedNode.getNodeId(), designatedbridgeport));
                 }
             }
-
         }
 
         for (final LinkableNode bridgeNode : bridgeNodes) {
-        	topology.addNodeToTopology(bridgeNode);
+        	topology.addNodeToTopology(bridgeNode.getNodeId(), bridgeForwardingTables.get(bridgeNode.getNodeId()));
         }
+        return topology.getTopology();
+    }
 
-        List<String> macParsed = new ArrayList<String>();
-        for (BridgeTopologyLink link : topology.getTopology()) {
-            Integer curNodeId = link.getBridgeTopologyPort().getNodeid();
-            Integer curIfIndex = getIfIndexFromNodeidBridgePort(linkableNodes,
-                                                                curNodeId,
-                                                                link.getBridgeTopologyPort().getBridgePort());
-            if (link.getLinkedSwitchPort() != null ) {
-            	final NodeToNodeLink lk = new NodeToNodeLink(
-                        curNodeId,
-                        curIfIndex,
-                        DiscoveryProtocol.bridge);
-            	lk.setNodeparentid(link.getLinkedSwitchPort().getNodeid());
-            	lk.setParentifindex(link.getLinkedSwitchPort().getIfindex());
-            	addNodetoNodeLink(lk);
-            	LOG.info("getLinksFromBridge: saving bridge link: {}",
-                        lk.toString());
-            } else {
-            	macParsed = addLinks(macParsed, link.getMacs(), curNodeId,
-                                 curIfIndex, DiscoveryProtocol.bridge);
+    private MacSet getMacs(Map<Integer, Map<Integer, MacSet>> bridgeForwardingTables,
+            Integer nodeid, Integer bridgeport) {
+        final Map<Integer, MacSet> bft = bridgeForwardingTables.get(nodeid);
+        final MacSet macs = bft == null ? null : bft.get(bridgeport);
+        return macs == null ? MacSet.EMPTY : macs;
+    }
+
+    private void addBridgeLink(Map<Integer, LinkableNode> nodesById,
+            MacPacker packer, LongHashSet macParsed, BridgeTopologyLink link) {
+        Integer curNodeId = link.getBridgeTopologyPort().getNodeid();
+        Integer curIfIndex = getIfIndexFromNodeidBridgePort(nodesById,
+                                                            curNodeId,
+                                                            link.getBridgeTopologyPort().getBridgePort());
+        if (link.getLinkedSwitchPort() != null ) {
+        	final NodeToNodeLink lk = new NodeToNodeLink(
+                    curNodeId,
+                    curIfIndex,
+                    DiscoveryProtocol.bridge);
+        	lk.setNodeparentid(link.getLinkedSwitchPort().getNodeid());
+        	lk.setParentifindex(link.getLinkedSwitchPort().getIfindex());
+        	addNodetoNodeLink(lk);
+        	LOG.info("getLinksFromBridge: saving bridge link: {}",
+                    lk.toString());
+        } else {
+        	addLinks(packer, macParsed, link.getMacs(), curNodeId,
+                     curIfIndex, DiscoveryProtocol.bridge);
 	            if (link.getDesignatebridgePort() != null) {
 	                Integer endNodeId = link.getDesignatebridgePort().getNodeid();
-	                Integer endIfIndex = getIfIndexFromNodeidBridgePort(linkableNodes,
+	                Integer endIfIndex = getIfIndexFromNodeidBridgePort(nodesById,
 	                                                                    endNodeId,
 	                                                                    link.getDesignatebridgePort().getBridgePort());
 	                final NodeToNodeLink lk = new NodeToNodeLink(
@@ -811,19 +995,15 @@ public final class DiscoveryLink implements ReadyRunnable {
 	                LOG.info("getLinksFromBridge: saving bridge link: {}",
 	                         lk.toString());
 	            }
-            }
         }
-        LOG.info("getLinksFromBridge: done finding links using Bridge Discovery");
-
     }
 
     private Integer getIfIndexFromNodeidBridgePort(
-            Collection<LinkableNode> linkableNodes, Integer nodeid,
+            Map<Integer, LinkableNode> nodesById, Integer nodeid,
             Integer bridgeport) {
-        for (LinkableNode node : linkableNodes) {
-            if (node.getNodeId() == nodeid.intValue()) {
-                return node.getIfindexFromBridgePort(bridgeport);
-            }
+        final LinkableNode node = nodesById.get(nodeid);
+        if (node != null) {
+            return node.getIfindexFromBridgePort(bridgeport);
         }
         return -1;
     }
@@ -1116,16 +1296,6 @@ public final class DiscoveryLink implements ReadyRunnable {
 
     }
 
-    private LinkableNode getNodeFromMacIdentifierOfBridgeNode(
-            Collection<LinkableNode> linkableNodes, final String macAddress) {
-        for (final LinkableNode curNode : linkableNodes) {
-            if (curNode.isBridgeNode()
-                    && curNode.isBridgeIdentifier(macAddress))
-                return curNode;
-        }
-        return null;
-    }
-
     /**
      * Return the Scheduler
      * 
@@ -1309,12 +1479,10 @@ public final class DiscoveryLink implements ReadyRunnable {
             LOG.warn("addNodetoNodeLink: node link is null.");
             return;
         }
-        for (NodeToNodeLink curNnLink : m_links) {
-            if (curNnLink.equals(nnlink)) {
-                LOG.info("addNodetoNodeLink: link {} exists, not adding",
-                         nnlink.toString());
-                return;
-            }
+        if (m_linkSet.contains(nnlink)) {
+            LOG.info("addNodetoNodeLink: link {} exists, not adding",
+                     nnlink.toString());
+            return;
         }
         if (nnlink.getNodeId() == nnlink.getNodeparentid()) {
             LOG.warn("addNodetoNodeLink: link {} is on the same node, not adding",
@@ -1323,6 +1491,7 @@ public final class DiscoveryLink implements ReadyRunnable {
         }
         LOG.info("addNodetoNodeLink: adding link {}", nnlink.toString());
         m_links.add(nnlink);
+        m_linkSet.add(nnlink);
     }
 
     private List<String> addLinks(List<String> macParsed, Set<String> macs,
@@ -1337,31 +1506,61 @@ public final class DiscoveryLink implements ReadyRunnable {
                     continue;
                 }
 
-                if ((curMacAddress.indexOf("00000c07ac") == 0)
-                        || (curMacAddress.indexOf("00000c9ff") == 0)) {
-                    LOG.warn("addLinks: MAC address {} is excluded from discovery package! Skipping...",
-                             curMacAddress);
+                if (isExcluded(curMacAddress))
                     continue;
-                }
-                final List<AtInterface> ats = m_linkd.getAtInterfaces(getPackageName(),
-                                                                      curMacAddress);
-                if (!ats.isEmpty()) {
-                    for (final AtInterface at : ats) {
-                        final NodeToNodeLink lNode = new NodeToNodeLink(
-                                                                        at.getNodeid(),
-                                                                        at.getIfIndex(),
-                                                                        proto);
-                        lNode.setNodeparentid(nodeid);
-                        lNode.setParentifindex(ifindex);
-                        addNodetoNodeLink(lNode);
-                    }
-                }
+                addLinks(curMacAddress, nodeid, ifindex, proto);
                 macParsed.add(curMacAddress);
             }
         }
         return macParsed;
     }
 
+    private void addLinks(MacPacker packer, LongHashSet macParsed,
+            MacSet macs, int nodeid, int ifindex, DiscoveryProtocol proto) {
+        if (macs.isEmpty()) {
+            LOG.debug("addLinks: MAC address list on link is empty.");
+            return;
+        }
+        for (int i = 0; i < macs.size(); i++) {
+            final long mac = macs.get(i);
+            final String curMacAddress = packer.unpack(mac);
+            if (macParsed.contains(mac)) {
+                LOG.warn("addLinks: MAC address {} just found on other bridge port! Skipping...",
+                         curMacAddress);
+                continue;
+            }
+            if (isExcluded(curMacAddress))
+                continue;
+            addLinks(curMacAddress, nodeid, ifindex, proto);
+            macParsed.add(mac);
+        }
+    }
+
+    private boolean isExcluded(String curMacAddress) {
+        if ((curMacAddress.indexOf("00000c07ac") == 0)
+                || (curMacAddress.indexOf("00000c9ff") == 0)) {
+            LOG.warn("addLinks: MAC address {} is excluded from discovery package! Skipping...",
+                     curMacAddress);
+            return true;
+        }
+        return false;
+    }
+
+    private void addLinks(String curMacAddress, int nodeid, int ifindex,
+            DiscoveryProtocol proto) {
+        final List<AtInterface> ats = m_linkd.getAtInterfaces(getPackageName(),
+                                                              curMacAddress);
+        for (final AtInterface at : ats) {
+            final NodeToNodeLink lNode = new NodeToNodeLink(
+                                                            at.getNodeid(),
+                                                            at.getIfIndex(),
+                                                            proto);
+            lNode.setNodeparentid(nodeid);
+            lNode.setParentifindex(ifindex);
+            addNodetoNodeLink(lNode);
+        }
+    }
+
     /** {@inheritDoc} */
     @Override
     public boolean equals(Object r) {
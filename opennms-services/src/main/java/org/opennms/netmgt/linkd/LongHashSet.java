@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.linkd;
+
+import java.util.Arrays;
+
+/**
+ * A set of longs using open addressing with linear probing, for the packed
+ * MAC addresses of a discovery run. Nothing is ever removed.
+ */
+final class LongHashSet {
+
+    private static final long FREE = -1L;
+
+    private long[] m_keys;
+
+    private int m_size;
+
+    LongHashSet() {
+        this(16);
+    }
+
+    LongHashSet(final int expectedSize) {
+        m_keys = newTable(LongObjectHashMap.tableSize(expectedSize));
+    }
+
+    private static long[] newTable(final int capacity) {
+        final long[] keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        return keys;
+    }
+
+    int size() {
+        return m_size;
+    }
+
+    boolean contains(final long key) {
+        final int mask = m_keys.length - 1;
+        for (int i = LongObjectHashMap.hash(key) & mask; ; i = (i + 1) & mask) {
+            if (m_keys[i] == FREE) {
+                return false;
+            }
+            if (m_keys[i] == key) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true if the key was not already in the set
+     */
+    boolean add(final long key) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("key " + key + " is reserved");
+        }
+        final int mask = m_keys.length - 1;
+        int i = LongObjectHashMap.hash(key) & mask;
+        while (m_keys[i] != FREE) {
+            if (m_keys[i] == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        m_keys[i] = key;
+        if (++m_size * 2 > m_keys.length) {
+            rehash();
+        }
+        return true;
+    }
+
+    private void rehash() {
+        final long[] old = m_keys;
+        m_keys = newTable(old.length * 2);
+        final int mask = m_keys.length - 1;
+        for (final long key : old) {
+            if (key == FREE) {
+                continue;
+            }
+            int i = LongObjectHashMap.hash(key) & mask;
+            while (m_keys[i] != FREE) {
+                i = (i + 1) & mask;
+            }
+            m_keys[i] = key;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.linkd;
+
+/**
+ * A map from longs to objects using open addressing with linear probing,
+ * for looking up the packed MAC addresses of a discovery run without
+ * boxing them. Nothing is ever removed and null values are not allowed.
+ *
+ * @param <V> the type of the values
+ */
+final class LongObjectHashMap<V> {
+
+    private long[] m_keys;
+
+    private Object[] m_values;
+
+    private int m_size;
+
+    LongObjectHashMap() {
+        this(16);
+    }
+
+    LongObjectHashMap(final int expectedSize) {
+        final int capacity = tableSize(expectedSize);
+        m_keys = new long[capacity];
+        m_values = new Object[capacity];
+    }
+
+    /**
+     * @return a power of two big enough to keep the table at most half full
+     */
+    static int tableSize(final int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spreads the bits of the key, since consecutive MAC addresses of the
+     * same vendor only differ in their lowest bits.
+     */
+    static int hash(final long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) (h ^ (h >>> 16));
+    }
+
+    int size() {
+        return m_size;
+    }
+
+    boolean containsKey(final long key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(final long key) {
+        final int mask = m_keys.length - 1;
+        for (int i = hash(key) & mask; m_values[i] != null; i = (i + 1) & mask) {
+            if (m_keys[i] == key) {
+                return (V) m_values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the value previously mapped to the key, or null
+     */
+    @SuppressWarnings("unchecked")
+    V put(final long key, final V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("null values are not allowed");
+        }
+        final int mask = m_keys.length - 1;
+        int i = hash(key) & mask;
+        for (; m_values[i] != null; i = (i + 1) & mask) {
+            if (m_keys[i] == key) {
+                final V previous = (V) m_values[i];
+                m_values[i] = value;
+                return previous;
+            }
+        }
+        m_keys[i] = key;
+        m_values[i] = value;
+        if (++m_size * 2 > m_keys.length) {
+            rehash();
+        }
+        return null;
+    }
+
+    private void rehash() {
+        final long[] oldKeys = m_keys;
+        final Object[] oldValues = m_values;
+        m_keys = new long[oldKeys.length * 2];
+        m_values = new Object[oldValues.length * 2];
+        final int mask = m_keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] == null) {
+                continue;
+            }
+            int i = hash(oldKeys[j]) & mask;
+            while (m_values[i] != null) {
+                i = (i + 1) & mask;
+            }
+            m_keys[i] = oldKeys[j];
+            m_values[i] = oldValues[j];
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.linkd;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs the MAC address strings collected from the bridge forwarding tables
+ * into longs. A MAC address in the usual 12 lowercase hex digit form is
+ * stored as its 48 bit value; any other string (upper case digits, a
+ * different length) gets an id above 2^48 so that the exact string can
+ * still be handed back, for instance to look up the ARP table.
+ * <p>
+ * A packer is meant for a single discovery run and is not thread safe.
+ * </p>
+ */
+final class MacPacker {
+
+    private static final long OTHER = 1L << 48;
+
+    private final Map<String, Long> m_otherIds = new HashMap<String, Long>();
+
+    private final List<String> m_others = new ArrayList<String>();
+
+    private long[] m_buffer = new long[64];
+
+    long pack(final String mac) {
+        final long value = parse(mac);
+        if (value >= 0) {
+            return value;
+        }
+        Long id = m_otherIds.get(mac);
+        if (id == null) {
+            id = OTHER + m_others.size();
+            m_otherIds.put(mac, id);
+            m_others.add(mac);
+        }
+        return id;
+    }
+
+    MacSet pack(final Collection<String> macs) {
+        if (macs == null || macs.isEmpty()) {
+            return MacSet.EMPTY;
+        }
+        if (m_buffer.length < macs.size()) {
+            m_buffer = new long[Math.max(macs.size(), m_buffer.length * 2)];
+        }
+        int i = 0;
+        for (final String mac : macs) {
+            m_buffer[i++] = pack(mac);
+        }
+        return MacSet.valueOf(m_buffer, i);
+    }
+
+    String unpack(final long mac) {
+        if (mac < OTHER) {
+            return toString(mac);
+        }
+        return m_others.get((int) (mac - OTHER));
+    }
+
+    /**
+     * @return the 12 hex digit form of a packed MAC address, or a
+     *         placeholder for the strings that have no such form
+     */
+    static String toString(final long mac) {
+        if (mac >= OTHER) {
+            return "#" + (mac - OTHER);
+        }
+        final char[] digits = new char[12];
+        long value = mac;
+        for (int i = 11; i >= 0; i--) {
+            digits[i] = Character.forDigit((int) (value & 0xf), 16);
+            value >>>= 4;
+        }
+        return new String(digits);
+    }
+
+    /**
+     * @return the 48 bit value of a canonical MAC address string, or -1
+     */
+    private static long parse(final String mac) {
+        if (mac == null || mac.length() != 12) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < 12; i++) {
+            final char c = mac.charAt(i);
+            final int digit;
+            if (c >= '0' && c <= '9') {
+                digit = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                digit = c - 'a' + 10;
+            } else {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,257 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.linkd;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of packed MAC addresses (see {@link MacPacker}) kept as a
+ * sorted array of longs. Membership is a binary search and the set
+ * operations are merges of the two sorted arrays, so comparing the
+ * forwarding tables of two bridge ports costs no more than walking them once.
+ */
+final class MacSet {
+
+    static final MacSet EMPTY = new MacSet(new long[0]);
+
+    private final long[] m_macs;
+
+    private MacSet(final long[] sortedMacs) {
+        m_macs = sortedMacs;
+    }
+
+    /**
+     * Builds a set from the first <code>length</code> entries of an array
+     * in any order, possibly with repetitions. The array is sorted in place.
+     */
+    static MacSet valueOf(final long[] macs, final int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+        Arrays.sort(macs, 0, length);
+        int size = 1;
+        for (int i = 1; i < length; i++) {
+            if (macs[i] != macs[size - 1]) {
+                macs[size++] = macs[i];
+            }
+        }
+        return new MacSet(Arrays.copyOf(macs, size));
+    }
+
+    int size() {
+        return m_macs.length;
+    }
+
+    boolean isEmpty() {
+        return m_macs.length == 0;
+    }
+
+    /**
+     * @return the i-th smallest packed MAC address of the set
+     */
+    long get(final int i) {
+        return m_macs[i];
+    }
+
+    boolean contains(final long mac) {
+        return Arrays.binarySearch(m_macs, mac) >= 0;
+    }
+
+    /**
+     * @return true if the two sets have at least one MAC address in common
+     */
+    boolean intersects(final MacSet other) {
+        final long[] a = m_macs;
+        final long[] b = other.m_macs;
+        if (a.length == 0 || b.length == 0 || a[a.length - 1] < b[0] || b[b.length - 1] < a[0]) {
+            return false;
+        }
+        if (a.length > b.length) {
+            return other.intersects(this);
+        }
+        if (a.length * 8 < b.length) {
+            for (final long mac : a) {
+                if (Arrays.binarySearch(b, mac) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if every MAC address of this set is in the other one
+     */
+    boolean containedIn(final MacSet other) {
+        final long[] a = m_macs;
+        final long[] b = other.m_macs;
+        if (a.length > b.length) {
+            return false;
+        }
+        if (a.length == 0) {
+            return true;
+        }
+        if (a[0] < b[0] || a[a.length - 1] > b[b.length - 1]) {
+            return false;
+        }
+        if (a.length * 8 < b.length) {
+            for (final long mac : a) {
+                if (Arrays.binarySearch(b, mac) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        int j = 0;
+        for (final long mac : a) {
+            while (j < b.length && b[j] < mac) {
+                j++;
+            }
+            if (j == b.length || b[j] != mac) {
+                return false;
+            }
+            j++;
+        }
+        return true;
+    }
+
+    /**
+     * @return the MAC addresses of this set that are not in the other one
+     */
+    MacSet minus(final MacSet other) {
+        if (!intersects(other)) {
+            return this;
+        }
+        final long[] a = m_macs;
+        final long[] b = other.m_macs;
+        final long[] result = new long[a.length];
+        int size = 0;
+        int j = 0;
+        for (final long mac : a) {
+            while (j < b.length && b[j] < mac) {
+                j++;
+            }
+            if (j == b.length || b[j] != mac) {
+                result[size++] = mac;
+            }
+        }
+        return size == 0 ? EMPTY : new MacSet(Arrays.copyOf(result, size));
+    }
+
+    /**
+     * @return the MAC addresses found in both sets
+     */
+    MacSet intersect(final MacSet other) {
+        if (!intersects(other)) {
+            return EMPTY;
+        }
+        final long[] a = m_macs;
+        final long[] b = other.m_macs;
+        final long[] result = new long[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return new MacSet(Arrays.copyOf(result, size));
+    }
+
+    /**
+     * @return the MAC addresses found in either set
+     */
+    MacSet union(final MacSet other) {
+        if (other.isEmpty()) {
+            return this;
+        }
+        if (isEmpty()) {
+            return other;
+        }
+        final long[] a = m_macs;
+        final long[] b = other.m_macs;
+        final long[] result = new long[a.length + b.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[size++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[size++] = b[j++];
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return size == a.length ? this : new MacSet(Arrays.copyOf(result, size));
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof MacSet && Arrays.equals(m_macs, ((MacSet) obj).m_macs);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(m_macs);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buf = new StringBuilder("[");
+        for (int i = 0; i < m_macs.length; i++) {
+            if (i > 0) {
+                buf.append(", ");
+            }
+            buf.append(MacPacker.toString(m_macs[i]));
+        }
+        return buf.append(']').toString();
+    }
+}
@@ -122,15 +122,25 @@ public class NodeToNodeLink {
 		return m_nodeId;
 	}
 
-	/** {@inheritDoc} */
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The two ends are combined in an order independent way, since a link
+	 * equals the same link seen from the other end.
+	 */
 	@Override
 	public int hashCode() {
-	    return new HashCodeBuilder(17, 57)
+	    final int end = new HashCodeBuilder(17, 57)
 	        .append(m_nodeId)
 	        .append(m_ifIndex)
+	        .toHashCode();
+	    final int parentEnd = new HashCodeBuilder(17, 57)
 	        .append(m_nodeParentId)
 	        .append(m_parentIfIndex)
-                .append(m_protocol)
+	        .toHashCode();
+	    return new HashCodeBuilder(17, 57)
+	        .append(end + parentEnd)
+	        .append(m_protocol)
 	        .toHashCode();
 	}
 
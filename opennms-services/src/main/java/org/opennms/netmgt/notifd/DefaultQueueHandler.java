@@ -28,26 +28,55 @@
 
 package org.opennms.netmgt.notifd;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.opennms.core.utils.TimeConverter;
 
 /**
  * This class is used as a thread for executing notices for events that are
- * discovered by the notice daemon. The notices are read from an scheduler queue
- * and the processes are created by the fiber. Each created process is added to
- * garbage collection list that is periodically polled and culled based upon the
- * status of the process or how long the process is run. If the process has run
- * long than allocated it is terminated during collection.
+ * discovered by the notice daemon. The thread sleeps on the notice queue until
+ * the earliest notice is due, or until a new notice is queued, and hands the
+ * due notices to a bounded pool of sender threads. How many notices may be
+ * sent at once through the same notification strategy can be limited with
+ * the <code>org.opennms.netmgt.notifd.strategyLimits</code> system property,
+ * for example
+ * <code>org.opennms.netmgt.notifd.JavaMailNotificationStrategy=4</code>.
+ * Notices for a strategy that is at its limit are held back by the handler
+ * until a permit is released, so they never tie up a sender thread that
+ * notices for other strategies could use.
  *
  * @author <a href="mailto:jason@opennms.org">Jason Johns</a>
  * @author <a href="http://www.opennms.org/>OpenNMS</a>
  */
 public class DefaultQueueHandler implements NotifdQueueHandler {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultQueueHandler.class);
+
+    /**
+     * The system property holding the number of sender threads per queue.
+     */
+    public static final String THREADS_PROPERTY = "org.opennms.netmgt.notifd.threads";
+
+    /**
+     * The system property holding the per strategy limits, see
+     * {@link StrategyLimiter#parse(String)}.
+     */
+    public static final String STRATEGY_LIMITS_PROPERTY = "org.opennms.netmgt.notifd.strategyLimits";
+
+    private static final int DEFAULT_THREADS = 10;
+
     /**
      * The input queue of runnable commands.
      */
@@ -59,7 +88,8 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
     private String m_queueID;
 
     /**
-     * How long to sleep between processing more notices
+     * The longest time to sleep when no notice is due. The handler is woken
+     * up as soon as a notice is queued, this only bounds the wait.
      */
     private long m_interval;
 
@@ -68,6 +98,28 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
      */
     private int m_status;
 
+    /**
+     * The threads sending the notices.
+     */
+    private ThreadPoolExecutor m_executor;
+
+    /**
+     * The per strategy limits shared by all queues, null if unlimited.
+     */
+    private volatile StrategyLimiter m_strategyLimiter;
+
+    /**
+     * Due notices whose strategies are at their limit, in the order they
+     * were due.
+     */
+    private final Queue<NotificationTask> m_heldNotices = new ConcurrentLinkedQueue<NotificationTask>();
+
+    /**
+     * Set when permits have been released since the queue was last
+     * processed. Guarded by the notice queue.
+     */
+    private boolean m_permitsReleased;
+
     /**
      * <p>Constructor for DefaultQueueHandler.</p>
      */
@@ -87,12 +139,42 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
         m_noticeQueue = noticeQueue;
     }
 
+    private synchronized NoticeQueue getNoticeQueue() {
+        return m_noticeQueue;
+    }
+
     /** {@inheritDoc} */
     @Override
     public synchronized void setInterval(final String interval) {
         m_interval = TimeConverter.convertToMillis(interval);
     }
 
+    private synchronized long getInterval() {
+        return m_interval;
+    }
+
+    /**
+     * Sets the limits on concurrent sends per notification strategy. Notifd
+     * gives the same limiter to all of its queues.
+     *
+     * @param strategyLimiter a {@link org.opennms.netmgt.notifd.StrategyLimiter} object.
+     */
+    void setStrategyLimiter(final StrategyLimiter strategyLimiter) {
+        m_strategyLimiter = strategyLimiter;
+        strategyLimiter.addReleaseListener(new Runnable() {
+            @Override
+            public void run() {
+                final NoticeQueue noticeQueue = getNoticeQueue();
+                if (noticeQueue != null) {
+                    synchronized (noticeQueue) {
+                        m_permitsReleased = true;
+                        noticeQueue.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
     /**
      * The main worker of the fiber. This method is executed by the encapsulated
      * thread to read commands from the execution queue and to execute those
@@ -106,70 +188,103 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
             m_status = RUNNING;
         }
 
-        for (;;) {
-            synchronized (this) {
-                // if stopped or stop pending then break out
-                if (m_status == STOP_PENDING || m_status == STOPPED) {
-                    break;
-                }
+        final NoticeQueue noticeQueue = getNoticeQueue();
+        try {
+            for (;;) {
+                synchronized (this) {
+                    // if stopped or stop pending then break out
+                    if (m_status == STOP_PENDING || m_status == STOPPED) {
+                        break;
+                    }
 
-                // if paused or pause pending then block
-                while (m_status == PAUSE_PENDING || m_status == PAUSED) {
-                    m_status = PAUSED;
-                    try {
+                    // if paused or pause pending then block
+                    while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                        m_status = PAUSED;
                         wait();
-                    } catch (final InterruptedException ex) {
-                        // exit
-                        break;
                     }
-                }
 
-                // if resume pending then change to running
-                if (m_status == RESUME_PENDING) {
-                    m_status = RUNNING;
+                    // if resume pending then change to running
+                    if (m_status == RESUME_PENDING) {
+                        m_status = RUNNING;
+                    }
                 }
-            }
 
-            processQueue();
+                processQueue();
 
+                if (noticeQueue == null) {
+                    synchronized (this) {
+                        wait(getInterval());
+                    }
+                    continue;
+                }
+
+                // sleep until the next notice is due, queueing a notice wakes us up
+                synchronized (noticeQueue) {
+                    if (getStatus() != RUNNING || (m_permitsReleased && !m_heldNotices.isEmpty())) {
+                        continue;
+                    }
+                    final long delay = getDelay(noticeQueue);
+                    if (delay > 0) {
+                        noticeQueue.wait(delay);
+                    }
+                }
+            }
+        } catch (final InterruptedException ex) {
+            // exit
+        } finally {
             synchronized (this) {
-                // wait for the next iteration
-                try {
-                    wait(m_interval);
-                } catch (final InterruptedException ex) {
-                    // exit
-                    break;
+                m_status = STOPPED;
+                if (m_executor != null) {
+                    m_executor.shutdown();
                 }
             }
-
-        } // end infinite loop
-
-        synchronized (this) {
-            m_status = STOPPED;
         }
 
     } // end run
 
+    /**
+     * @return how long to wait for the first notice of the queue to be due,
+     *         at most the configured interval
+     */
+    private long getDelay(final NoticeQueue noticeQueue) {
+        final long interval = getInterval();
+        if (noticeQueue.isEmpty()) {
+            return interval > 0 ? interval : Long.MAX_VALUE;
+        }
+        final long delay = noticeQueue.firstKey() - System.currentTimeMillis();
+        return interval > 0 ? Math.min(delay, interval) : delay;
+    }
+
     /**
      * <p>processQueue</p>
      */
     @Override
     public void processQueue() {
-        if (m_noticeQueue != null) {
-            synchronized(m_noticeQueue) {
+        final NoticeQueue noticeQueue = getNoticeQueue();
+        if (noticeQueue != null) {
+            synchronized(noticeQueue) {
                 try {
+                    m_permitsReleased = false;
+                    for (final Iterator<NotificationTask> it = m_heldNotices.iterator(); it.hasNext();) {
+                        if (startTask(it.next())) {
+                            it.remove();
+                        }
+                    }
+
                 	final Long now = System.currentTimeMillis();
-                	final SortedMap<Long, List<NotificationTask>> readyNotices = m_noticeQueue.headMap(now);
+                	final SortedMap<Long, List<NotificationTask>> readyNotices = noticeQueue.headMap(now + 1);
         
                     for (final List<NotificationTask> list : readyNotices.values()) {
                         for (final NotificationTask task : list) {
-                            startTask(task);
+                            if (!startTask(task)) {
+                                m_heldNotices.add(task);
+                            }
                         }
                     }
                     readyNotices.clear();
         
-                    if (m_noticeQueue != null && m_noticeQueue.size() > 0) {
-			LOG.debug("current state of tree: {}", m_noticeQueue);
+                    if (noticeQueue.size() > 0) {
+			LOG.debug("current state of tree: {}", noticeQueue);
                     }
                 } catch (final Throwable e) {
                     LOG.error("failed to start notification task", e);
@@ -179,10 +294,78 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
         }
     }
 
-	private void startTask(final NotificationTask task) {
-		if (!task.isStarted())
-			task.start();
-	}
+    /**
+     * Hands the task to a sender thread if its strategies are below their
+     * limits.
+     *
+     * @return false if the task has to be held back
+     */
+    private boolean startTask(final NotificationTask task) {
+        final StrategyLimiter limiter = m_strategyLimiter;
+        final Set<String> strategies = limiter == null ? Collections.<String>emptySet() : task.getStrategies();
+        if (limiter != null && !limiter.tryAcquire(strategies)) {
+            LOG.debug("holding back {}, its notification strategies are busy", task);
+            return false;
+        }
+        if (!task.markStarted()) {
+            if (limiter != null) {
+                limiter.release(strategies);
+            }
+            return true;
+        }
+        if (limiter == null) {
+            getExecutor().execute(task);
+            return true;
+        }
+
+        try {
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        limiter.release(strategies);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            limiter.release(strategies);
+            throw e;
+        }
+        return true;
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (m_executor == null) {
+            final int threads = Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREADS);
+            m_executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new LogPreservingThreadFactory(getClass().getSimpleName() + "-" + m_queueID, threads, false)
+            );
+            m_executor.allowCoreThreadTimeOut(true);
+        }
+        return m_executor;
+    }
+
+    /**
+     * Returns the number of due notices waiting for a sender thread or for
+     * their notification strategies.
+     *
+     * @return a int.
+     */
+    public synchronized int getBacklog() {
+        return m_heldNotices.size() + (m_executor == null ? 0 : m_executor.getQueue().size());
+    }
+
+    private void wakeUp() {
+        final NoticeQueue noticeQueue = getNoticeQueue();
+        if (noticeQueue != null) {
+            synchronized (noticeQueue) {
+                noticeQueue.notifyAll();
+            }
+        }
+    }
 
     /**
      * Starts the fiber. If the fiber has already been run or is currently
@@ -212,11 +395,14 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
      *             Thrown if the fiber was never started.
      */
     @Override
-    public synchronized void stop() {
-        if (m_status != STOPPED)
-            m_status = STOP_PENDING;
+    public void stop() {
+        synchronized (this) {
+            if (m_status != STOPPED)
+                m_status = STOP_PENDING;
 
-        notifyAll();
+            notifyAll();
+        }
+        wakeUp();
     }
 
     /**
@@ -228,11 +414,14 @@ public class DefaultQueueHandler implements NotifdQueueHandler {
      *             Thrown if the fiber is stopped or has never run.
      */
     @Override
-    public synchronized void pause() {
-        if (m_status == RUNNING || m_status == RESUME_PENDING) {
-            m_status = PAUSE_PENDING;
-            notifyAll();
+    public void pause() {
+        synchronized (this) {
+            if (m_status == RUNNING || m_status == RESUME_PENDING) {
+                m_status = PAUSE_PENDING;
+                notifyAll();
+            }
         }
+        wakeUp();
     }
 
     /**
@@ -49,10 +49,16 @@ public class NoticeQueue extends DuplicateTreeMap<Long, NotificationTask> {
      */
     private static final long serialVersionUID = 7463770974135218140L;
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * Wakes up the queue handler waiting on this queue, so that a notice due
+     * before the ones already queued is not held back.
+     */
     @Override
-    public NotificationTask putItem(Long key, NotificationTask value) {
+    public synchronized NotificationTask putItem(Long key, NotificationTask value) {
         NotificationTask ret = super.putItem(key, value);
+        notifyAll();
 
         
         if (LOG.isDebugEnabled()) {
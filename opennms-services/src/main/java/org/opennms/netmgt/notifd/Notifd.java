@@ -124,6 +124,9 @@ public final class Notifd extends AbstractServiceDaemon {
         try {
             LOG.info("Notification status = {}", getConfigManager().getNotificationStatus());
 
+            // one limiter for all queues, so that the limits apply to the whole daemon
+            final StrategyLimiter strategyLimiter = StrategyLimiter.parse(System.getProperty(DefaultQueueHandler.STRATEGY_LIMITS_PROPERTY));
+
             Queue[] queues = getConfigManager().getConfiguration().getQueue();
             for (Queue queue : queues) {
                 NoticeQueue curQueue = new NoticeQueue();
@@ -134,6 +137,9 @@ public final class Notifd extends AbstractServiceDaemon {
                 handlerQueue.setQueueID(queue.getQueueId());
                 handlerQueue.setNoticeQueue(curQueue);
                 handlerQueue.setInterval(queue.getInterval());
+                if (handlerQueue instanceof DefaultQueueHandler) {
+                    ((DefaultQueueHandler) handlerQueue).setStrategyLimiter(strategyLimiter);
+                }
 
                 m_noticeQueues.put(queue.getQueueId(), curQueue);
                 m_queueHandlers.put(queue.getQueueId(), handlerQueue);
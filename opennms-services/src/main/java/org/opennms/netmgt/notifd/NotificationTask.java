@@ -33,10 +33,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.exolab.castor.xml.MarshalException;
 import org.exolab.castor.xml.ValidationException;
@@ -238,6 +241,7 @@ public class NotificationTask extends Thread {
         if (outstanding) {
             try {
                 if (getUserManager().isUserOnDuty(m_user.getUserId(), Calendar.getInstance())) {
+                    getNotificationManager().recordSendLatency(System.currentTimeMillis() - m_sendTime);
 
                     // send the notice
                     ExecutorStrategy strategy = null;
@@ -408,6 +412,38 @@ public class NotificationTask extends Thread {
         super.start();
     }
 
+    /**
+     * Marks the task as started without giving it a thread of its own, for
+     * queue handlers that run it on a shared executor.
+     *
+     * @return false if the task had already been started
+     */
+    synchronized boolean markStarted() {
+        if (m_started) {
+            return false;
+        }
+        m_started = true;
+        return true;
+    }
+
+    /**
+     * Returns the notification strategies this task sends through, that is
+     * the <code>execute</code> attributes of its commands.
+     *
+     * @return a {@link java.util.Set} object.
+     */
+    Set<String> getStrategies() {
+        final Command[] commands = m_commands;
+        if (commands == null) {
+            return Collections.emptySet();
+        }
+        final Set<String> strategies = new LinkedHashSet<String>();
+        for (final Command command : commands) {
+            strategies.add(command.getExecute());
+        }
+        return strategies;
+    }
+
     /**
      * <p>isStarted</p>
      *
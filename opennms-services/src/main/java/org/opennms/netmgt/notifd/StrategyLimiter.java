@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.notifd;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caps how many notices may be handed to the same notification strategy at
+ * once. Strategies are identified by the <code>execute</code> attribute of
+ * their command, that is the strategy class name for Java commands or the
+ * path of the binary. Strategies without a limit are not restricted.
+ *
+ * Notifd shares one limiter between all of its queues, so a limit applies to
+ * the whole daemon. Permits are never waited for: queue handlers hold back
+ * the notices they cannot send yet and are told when permits are released.
+ */
+class StrategyLimiter {
+    private static final Logger LOG = LoggerFactory.getLogger(StrategyLimiter.class);
+
+    private final Map<String, Semaphore> m_permits;
+
+    private final List<Runnable> m_releaseListeners = new CopyOnWriteArrayList<Runnable>();
+
+    /**
+     * @param limits the maximum number of concurrent sends per strategy
+     */
+    StrategyLimiter(final Map<String, Integer> limits) {
+        final Map<String, Semaphore> permits = new HashMap<String, Semaphore>();
+        for (final Map.Entry<String, Integer> limit : limits.entrySet()) {
+            permits.put(limit.getKey(), new Semaphore(limit.getValue()));
+        }
+        m_permits = Collections.unmodifiableMap(permits);
+    }
+
+    /**
+     * Parses a list of limits such as
+     * <code>org.opennms.netmgt.notifd.JavaMailNotificationStrategy=4, /usr/bin/qpage=1</code>.
+     * Malformed entries are logged and ignored.
+     *
+     * @param spec the comma separated limits, may be null
+     * @return a {@link org.opennms.netmgt.notifd.StrategyLimiter} object.
+     */
+    static StrategyLimiter parse(final String spec) {
+        final Map<String, Integer> limits = new HashMap<String, Integer>();
+        if (spec != null) {
+            for (final String entry : spec.split(",")) {
+                if (entry.trim().length() == 0) {
+                    continue;
+                }
+                final int eq = entry.lastIndexOf('=');
+                try {
+                    final int limit = Integer.parseInt(entry.substring(eq + 1).trim());
+                    if (eq <= 0 || limit < 1) {
+                        throw new NumberFormatException(entry);
+                    }
+                    limits.put(entry.substring(0, eq).trim(), limit);
+                } catch (final NumberFormatException e) {
+                    LOG.warn("Ignoring invalid notification strategy limit '{}'", entry.trim());
+                }
+            }
+        }
+        return new StrategyLimiter(limits);
+    }
+
+    /**
+     * Takes a permit for each of the strategies if all of them may take one
+     * more notice right now, and none of them otherwise.
+     *
+     * @param strategies the <code>execute</code> attributes of the commands
+     * @return true if the notice may be sent
+     */
+    boolean tryAcquire(final Collection<String> strategies) {
+        final List<Semaphore> acquired = new ArrayList<Semaphore>(strategies.size());
+        for (final String strategy : strategies) {
+            final Semaphore permits = m_permits.get(strategy);
+            if (permits == null) {
+                continue;
+            }
+            if (!permits.tryAcquire()) {
+                for (final Semaphore taken : acquired) {
+                    taken.release();
+                }
+                return false;
+            }
+            acquired.add(permits);
+        }
+        return true;
+    }
+
+    /**
+     * Gives back the permits taken by {@link #tryAcquire(Collection)} and
+     * tells the listeners about it.
+     *
+     * @param strategies the <code>execute</code> attributes of the commands
+     */
+    void release(final Collection<String> strategies) {
+        boolean released = false;
+        for (final String strategy : strategies) {
+            final Semaphore permits = m_permits.get(strategy);
+            if (permits != null) {
+                permits.release();
+                released = true;
+            }
+        }
+        if (released) {
+            for (final Runnable listener : m_releaseListeners) {
+                listener.run();
+            }
+        }
+    }
+
+    /**
+     * Registers a callback that is run whenever permits are released.
+     *
+     * @param listener a {@link java.lang.Runnable} object.
+     */
+    void addReleaseListener(final Runnable listener) {
+        m_releaseListeners.add(listener);
+    }
+
+    /**
+     * @return the number of notices the strategy may still take right now,
+     *         or -1 if it is not limited
+     */
+    int getAvailable(final String strategy) {
+        final Semaphore permits = m_permits.get(strategy);
+        return permits == null ? -1 : permits.availablePermits();
+    }
+}
@@ -226,6 +226,24 @@ public class Notifd extends AbstractServiceDaemon implements NotifdMBean {
     public long getUnknownNoticesInterrupted() {
         return getNotifd().getNotificationManager().getUnknownNoticesInterrupted();
     }
+
+    @Override
+    /** {@inheritDoc} */
+    public long getNoticesSent() {
+        return getNotifd().getNotificationManager().getNoticesSent();
+    }
+
+    @Override
+    /** {@inheritDoc} */
+    public long getAverageSendLatency() {
+        return getNotifd().getNotificationManager().getAverageSendLatency();
+    }
+
+    @Override
+    /** {@inheritDoc} */
+    public long getMaxSendLatency() {
+        return getNotifd().getNotificationManager().getMaxSendLatency();
+    }
     
     
 }
@@ -97,4 +97,22 @@ public interface NotifdMBean extends BaseOnmsMBean {
      *         (threw an exception) since Notifd was last started.
      */
     public long getUnknownNoticesInterrupted();
+
+    /**
+     * @return The number of notices handed to the notification strategies
+     *         since Notifd was last started
+     */
+    public long getNoticesSent();
+
+    /**
+     * @return The average number of milliseconds between the time a notice
+     *         was due and the time it was handed to the notification strategies
+     */
+    public long getAverageSendLatency();
+
+    /**
+     * @return The largest number of milliseconds between the time a notice
+     *         was due and the time it was handed to the notification strategies
+     */
+    public long getMaxSendLatency();
 }
@@ -54,9 +54,9 @@ import org.opennms.netmgt.poller.pollables.PollableService;
 import org.opennms.netmgt.poller.pollables.PollableServiceConfig;
 import org.opennms.netmgt.poller.pollables.PollableVisitor;
 import org.opennms.netmgt.poller.pollables.PollableVisitorAdaptor;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.SchedulerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -75,7 +75,7 @@ public class Poller extends AbstractServiceDaemon {
 
     private boolean m_initialized = false;
 
-    private LegacyScheduler m_scheduler = null;
+    private Scheduler m_scheduler = null;
 
     private PollerEventProcessor m_eventProcessor;
 
@@ -231,9 +231,9 @@ public class Poller extends AbstractServiceDaemon {
     /**
      * <p>setScheduler</p>
      *
-     * @param scheduler a {@link org.opennms.netmgt.scheduler.LegacyScheduler} object.
+     * @param scheduler a {@link org.opennms.netmgt.scheduler.Scheduler} object.
      */
-    public void setScheduler(LegacyScheduler scheduler) {
+    public void setScheduler(Scheduler scheduler) {
         m_scheduler = scheduler;
     }
 
@@ -292,7 +292,7 @@ public class Poller extends AbstractServiceDaemon {
         try {
             LOG.debug("init: Creating poller scheduler");
 
-            setScheduler(new LegacyScheduler("Poller", getPollerConfig().getThreads()));
+            setScheduler(SchedulerFactory.createScheduler("Poller", getPollerConfig().getThreads()));
         } catch (RuntimeException e) {
             LOG.error("init: Failed to create poller scheduler", e);
             throw e;
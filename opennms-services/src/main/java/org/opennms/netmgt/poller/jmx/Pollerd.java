@@ -31,7 +31,7 @@ package org.opennms.netmgt.poller.jmx;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import org.opennms.netmgt.daemon.AbstractSpringContextJmxServiceDaemon;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.PooledScheduler;
 
 /**
  * <p>Pollerd class.</p>
@@ -123,10 +123,10 @@ public class Pollerd extends AbstractSpringContextJmxServiceDaemon<org.opennms.n
 
     
     private ThreadPoolExecutor getExecutor() {
-        return (ThreadPoolExecutor) ((LegacyScheduler) getDaemon().getScheduler()).getRunner();
+        return (ThreadPoolExecutor) ((PooledScheduler) getDaemon().getScheduler()).getRunner();
     }
     
     private boolean getThreadPoolStatsStatus() {
-        return (getDaemon().getScheduler() instanceof LegacyScheduler);
+        return (getDaemon().getScheduler() instanceof PooledScheduler);
     }
 }
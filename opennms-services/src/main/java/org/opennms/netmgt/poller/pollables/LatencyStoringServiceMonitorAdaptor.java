@@ -48,6 +48,7 @@ import org.opennms.netmgt.poller.PollStatus;
 import org.opennms.netmgt.poller.ServiceMonitor;
 import org.opennms.netmgt.rrd.RrdDataSource;
 import org.opennms.netmgt.rrd.RrdException;
+import org.opennms.netmgt.rrd.RrdLastValueCache;
 import org.opennms.netmgt.rrd.RrdRepository;
 import org.opennms.netmgt.rrd.RrdUtils;
 import org.opennms.netmgt.threshd.LatencyThresholdingSet;
@@ -244,6 +245,13 @@ public class LatencyStoringServiceMonitorAdaptor implements ServiceMonitor {
             }
             RrdUtils.updateRRD(hostAddress, path, rrdBaseName, value.toString());
 
+            final double[] values = new double[entries.size()];
+            int index = 0;
+            for (Number num : entries.values()) {
+                values[index++] = num == null ? Double.NaN : num.doubleValue();
+            }
+            RrdLastValueCache.update(new File(path, rrdBaseName + RrdUtils.getExtension()).getAbsolutePath(), dsList, System.currentTimeMillis(), values);
+
         } catch (RrdException e) {
             String msg = e.getMessage();
             LOG.error(msg);
@@ -247,5 +247,47 @@ public class Queued extends AbstractSpringContextJmxServiceDaemon<org.opennms.ne
         }
     }
 
+    /**
+     * <p>getShardCount</p>
+     *
+     * @return a int.
+     */
+    @Override
+    public int getShardCount() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getShardCount();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * <p>getShardOperationsPending</p>
+     *
+     * @return an array of long.
+     */
+    @Override
+    public long[] getShardOperationsPending() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getShardOperationsPending();
+        } else {
+            return new long[0];
+        }
+    }
+
+    /**
+     * <p>getShardDequeuedOperations</p>
+     *
+     * @return an array of long.
+     */
+    @Override
+    public long[] getShardDequeuedOperations() {
+        if (getStatsStatus()) {
+            return getRrdStrategy().getShardDequeuedOperations();
+        } else {
+            return new long[0];
+        }
+    }
+
 
 }
@@ -115,5 +115,23 @@ public interface QueuedMBean extends BaseOnmsMBean {
 	 * @return a long.
 	 */
 	public long getStartTime();
+	/**
+	 * <p>getShardCount</p>
+	 *
+	 * @return the number of shards the queue is split into.
+	 */
+	public int getShardCount();
+	/**
+	 * <p>getShardOperationsPending</p>
+	 *
+	 * @return the number of operations pending in each shard.
+	 */
+	public long[] getShardOperationsPending();
+	/**
+	 * <p>getShardDequeuedOperations</p>
+	 *
+	 * @return the number of operations dequeued from each shard.
+	 */
+	public long[] getShardDequeuedOperations();
 
 }
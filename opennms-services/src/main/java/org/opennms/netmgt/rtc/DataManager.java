@@ -44,6 +44,9 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.sql.DataSource;
 
@@ -82,6 +85,15 @@ import org.xml.sax.SAXException;
  * 'nodeGainedService' event would result in the 'nodeGainedService()' method
  * being called by the DataUpdater(s).
  *
+ * Outage events (lost/regained service, interface and node down/up) only
+ * change the outage times of existing 'RTCNode's, so they are processed
+ * concurrently under the read lock: every 'RTCNode' guards its own outages
+ * and the categories keep track of which of their services had outages.
+ * Everything that changes which 'RTCNode's exist or which categories they
+ * belong to (gained/deleted services, rescans, reparenting) takes the write
+ * lock. The data sender builds the category XML under the read lock, so
+ * publishing and outage processing don't hold each other up.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -188,6 +200,12 @@ public class DataManager {
      */
     private RTCHashMap m_map;
 
+    /**
+     * Read lock for outage events and reads, write lock for changes to the
+     * map or the category memberships
+     */
+    private final ReadWriteLock m_lock = new ReentrantReadWriteLock();
+
     /**
      * Get the 'ismanaged' status for the node ID, IP address combination
      * 
@@ -222,6 +240,31 @@ public class DataManager {
 		LOG.debug("regained time for nodeid/ip/svc: {}/{}/{}: {}/{}", rtcN.getNodeID(), rtcN.getIP(), rtcN.getSvcName(), regainedTimeTS, regainedTime);
 
 		rtcN.addSvcTime(lostTime, regainedTime);
+		outageRecorded(rtcN);
+	}
+
+	/**
+	 * Let the categories of the node know that it has an outage.
+	 */
+	private void outageRecorded(RTCNode rtcN) {
+	    for (String catlabel : rtcN.getCategories()) {
+	        RTCCategory cat = m_categories.get(catlabel);
+	        if (cat != null) {
+	            cat.outageRecorded(rtcN);
+	        }
+	    }
+	}
+
+	/**
+	 * Remove the node from all of the categories' service lists.
+	 */
+	private void removeFromCategories(RTCNode rtcN) {
+	    for (String catlabel : rtcN.getCategories()) {
+	        RTCCategory cat = m_categories.get(catlabel);
+	        if (cat != null) {
+	            cat.removeService(rtcN);
+	        }
+	    }
 	}
 
 	private void addRTCNode(RTCNode rtcN) {
@@ -235,6 +278,7 @@ public class DataManager {
 
 		// Add node to category
 		cat.addNode(rtcN);
+		cat.addService(rtcN);
 
 		LOG.debug("rtcN : {}/{}/{} added to cat: {}", rtcN.getNodeID(), rtcN.getIP(), rtcN.getSvcName(), cat.getLabel());
 	}
@@ -397,7 +441,7 @@ public class DataManager {
      * @param svcName
      *            the service name
      */
-    public synchronized void nodeGainedService(long nodeid, InetAddress ip, String svcName) {
+    public void nodeGainedService(long nodeid, InetAddress ip, String svcName) {
         //
         // check the 'status' flag for the service
         //
@@ -458,18 +502,24 @@ public class DataManager {
      * @param t
      *            the time at which service was lost
      */
-    public synchronized void nodeLostService(long nodeid, InetAddress ip, String svcName, long t) {
+    public void nodeLostService(long nodeid, InetAddress ip, String svcName, long t) {
         RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            // oops! got a lost/regained service for a node that is not known?
-            LOG.info("Received a nodeLostService event for an unknown/irrelevant node: {}", key.toString());
-            return;
-        }
 
-        // inform node
-        rtcN.nodeLostService(t);
+        m_lock.readLock().lock();
+        try {
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                // oops! got a lost/regained service for a node that is not known?
+                LOG.info("Received a nodeLostService event for an unknown/irrelevant node: {}", key.toString());
+                return;
+            }
 
+            // inform node
+            rtcN.nodeLostService(t);
+            outageRecorded(rtcN);
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -482,9 +532,15 @@ public class DataManager {
      * @param t
      *            the time at which service was lost
      */
-    public synchronized void interfaceDown(long nodeid, InetAddress ip, long t) {
-        for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid, ip)) {
-            rtcN.nodeLostService(t);
+    public void interfaceDown(long nodeid, InetAddress ip, long t) {
+        m_lock.readLock().lock();
+        try {
+            for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid, ip)) {
+                rtcN.nodeLostService(t);
+                outageRecorded(rtcN);
+            }
+        } finally {
+            m_lock.readLock().unlock();
         }
     }
 
@@ -496,9 +552,15 @@ public class DataManager {
      * @param t
      *            the time at which service was lost
      */
-    public synchronized void nodeDown(long nodeid, long t) {
-    	for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid)) {
-            rtcN.nodeLostService(t);
+    public void nodeDown(long nodeid, long t) {
+        m_lock.readLock().lock();
+        try {
+            for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid)) {
+                rtcN.nodeLostService(t);
+                outageRecorded(rtcN);
+            }
+        } finally {
+            m_lock.readLock().unlock();
         }
     }
 
@@ -510,9 +572,14 @@ public class DataManager {
      * @param t
      *            the time at which service was regained
      */
-    public synchronized void nodeUp(long nodeid, long t) {
-    	for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid)) {
-            rtcN.nodeRegainedService(t);
+    public void nodeUp(long nodeid, long t) {
+        m_lock.readLock().lock();
+        try {
+            for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid)) {
+                rtcN.nodeRegainedService(t);
+            }
+        } finally {
+            m_lock.readLock().unlock();
         }
     }
 
@@ -526,9 +593,14 @@ public class DataManager {
      * @param t
      *            the time at which service was regained
      */
-    public synchronized void interfaceUp(long nodeid, InetAddress ip, long t) {
-        for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid, ip)) {
-            rtcN.nodeRegainedService(t);
+    public void interfaceUp(long nodeid, InetAddress ip, long t) {
+        m_lock.readLock().lock();
+        try {
+            for (RTCNode rtcN : (List<RTCNode>) m_map.getRTCNodes(nodeid, ip)) {
+                rtcN.nodeRegainedService(t);
+            }
+        } finally {
+            m_lock.readLock().unlock();
         }
     }
 
@@ -544,17 +616,23 @@ public class DataManager {
      * @param t
      *            the time at which service was regained
      */
-    public synchronized void nodeRegainedService(long nodeid, InetAddress ip, String svcName, long t) {
+    public void nodeRegainedService(long nodeid, InetAddress ip, String svcName, long t) {
         RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            // oops! got a lost/regained service for a node that is not known?
-            LOG.info("Received a nodeRegainedService event for an unknown/irrelevant node: {}", key.toString());
-            return;
-        }
 
-        // inform node
-        rtcN.nodeRegainedService(t);
+        m_lock.readLock().lock();
+        try {
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                // oops! got a lost/regained service for a node that is not known?
+                LOG.info("Received a nodeRegainedService event for an unknown/irrelevant node: {}", key.toString());
+                return;
+            }
+
+            // inform node
+            rtcN.nodeRegainedService(t);
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -567,51 +645,58 @@ public class DataManager {
      * @param svcName
      *            the service that was deleted
      */
-    public synchronized void serviceDeleted(long nodeid, InetAddress ip, String svcName) {
-        // create lookup key
-        RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
+    public void serviceDeleted(long nodeid, InetAddress ip, String svcName) {
+        m_lock.writeLock().lock();
+        try {
+            // create lookup key
+            RTCNodeKey key = new RTCNodeKey(nodeid, ip, svcName);
 
-        // lookup the node
-        RTCNode rtcN = m_map.getRTCNode(key);
-        if (rtcN == null) {
-            LOG.warn("Received a {} event for an unknown node: {}", EventConstants.SERVICE_DELETED_EVENT_UEI, key.toString());
+            // lookup the node
+            RTCNode rtcN = m_map.getRTCNode(key);
+            if (rtcN == null) {
+                LOG.warn("Received a {} event for an unknown node: {}", EventConstants.SERVICE_DELETED_EVENT_UEI, key.toString());
 
-            return;
-        }
+                return;
+            }
 
-        //
-        // Go through from all the categories this node belongs to
-        // and delete the service
-        //
-        List<String> categories = rtcN.getCategories();
-        ListIterator<String> catIter = categories.listIterator();
-        while (catIter.hasNext()) {
-            String catlabel = (String) catIter.next();
-
-            RTCCategory cat = (RTCCategory) m_categories.get(catlabel);
-
-            // get nodes in this category
-            List<Long> catNodes = cat.getNodes();
-
-            // check if the category contains this node
-            Long tmpNodeid = Long.valueOf(rtcN.getNodeID());
-            int nIndex = catNodes.indexOf(tmpNodeid);
-            if (nIndex != -1) {
-                // remove from the category if it is the only service left.
-                if (m_map.getServiceCount(nodeid, catlabel) == 1) {
-                    catNodes.remove(nIndex);
-                    LOG.info("Removing node from category: {}", catlabel);
-                }
+            // the service is gone from all of its categories' availability
+            removeFromCategories(rtcN);
+
+            //
+            // Go through from all the categories this node belongs to
+            // and delete the service
+            //
+            List<String> categories = rtcN.getCategories();
+            ListIterator<String> catIter = categories.listIterator();
+            while (catIter.hasNext()) {
+                String catlabel = (String) catIter.next();
+
+                RTCCategory cat = (RTCCategory) m_categories.get(catlabel);
 
-                // let the node know that this category is out
-                catIter.remove();
+                // get nodes in this category
+                List<Long> catNodes = cat.getNodes();
+
+                // check if the category contains this node
+                Long tmpNodeid = Long.valueOf(rtcN.getNodeID());
+                int nIndex = catNodes.indexOf(tmpNodeid);
+                if (nIndex != -1) {
+                    // remove from the category if it is the only service left.
+                    if (m_map.getServiceCount(nodeid, catlabel) == 1) {
+                        catNodes.remove(nIndex);
+                        LOG.info("Removing node from category: {}", catlabel);
+                    }
+
+                    // let the node know that this category is out
+                    catIter.remove();
+                }
             }
-        }
 
-        // finally remove from map
+            // finally remove from map
         
-        m_map.delete(rtcN);
-
+            m_map.delete(rtcN);
+        } finally {
+            m_lock.writeLock().unlock();
+        }
     }
     
     /**
@@ -619,7 +704,7 @@ public class DataManager {
      *
      * @param nodeid a long.
      */
-    public synchronized void assetInfoChanged(long nodeid) {
+    public void assetInfoChanged(long nodeid) {
         try {
         	rtcNodeRescan(nodeid);
         } catch (FilterParseException ex) {
@@ -641,7 +726,7 @@ public class DataManager {
      *
      * @param nodeid a long.
      */
-    public synchronized void nodeCategoryMembershipChanged(long nodeid) {
+    public void nodeCategoryMembershipChanged(long nodeid) {
         try {
         	rtcNodeRescan(nodeid);
         } catch (FilterParseException ex) {
@@ -671,17 +756,23 @@ public class DataManager {
      *             if the database read or filtering the data against the
      *             category rule fails for some reason
      */
-    public synchronized void rtcNodeRescan(long nodeid) throws SQLException, FilterParseException, RTCException {
-    	
-    	for (Iterator<RTCCategory> it = m_categories.values().iterator(); it.hasNext();) {
-			RTCCategory cat = it.next();
-			cat.deleteNode(nodeid);
-		}
-    	
-    	m_map.deleteNode(nodeid);
-    	
-    	populateNodesFromDB("ifsvc.nodeid = ?", new Object[] { Long.valueOf(nodeid) });
-    	
+    public void rtcNodeRescan(long nodeid) throws SQLException, FilterParseException, RTCException {
+        m_lock.writeLock().lock();
+        try {
+            for (Iterator<RTCCategory> it = m_categories.values().iterator(); it.hasNext();) {
+                RTCCategory cat = it.next();
+                cat.deleteNode(nodeid);
+            }
+
+            for (RTCNode rtcN : m_map.getRTCNodes(nodeid)) {
+                removeFromCategories(rtcN);
+            }
+            m_map.deleteNode(nodeid);
+
+            populateNodesFromDB("ifsvc.nodeid = ?", new Object[] { Long.valueOf(nodeid) });
+        } finally {
+            m_lock.writeLock().unlock();
+        }
     }
 
     /**
@@ -704,33 +795,38 @@ public class DataManager {
      * @param newNodeId
      *            the node that the IP now belongs to
      */
-    public synchronized void interfaceReparented(InetAddress ip, long oldNodeId, long newNodeId) {
-        // get all RTCNodes with the IP/old node ID
-    	List<RTCNode> nodesList = m_map.getRTCNodes(oldNodeId, ip);
-        ListIterator<RTCNode> listIter = new LinkedList<RTCNode>(nodesList).listIterator();
-        while (listIter.hasNext()) {
-            RTCNode rtcN = listIter.next();
-
-            // remove the node with the old node id from the map
-            m_map.delete(rtcN);
-
-            // change the node ID on the RTCNode
-            rtcN.setNodeID(newNodeId);
-
-            // now add the node with the new node ID
-            m_map.add(rtcN);
-
-            // remove old node ID from the categories it belonged to
-            // and the new node ID
-            Iterator<String> catIter = rtcN.getCategories().listIterator();
-            while (catIter.hasNext()) {
-                String catlabel = catIter.next();
+    public void interfaceReparented(InetAddress ip, long oldNodeId, long newNodeId) {
+        m_lock.writeLock().lock();
+        try {
+            // get all RTCNodes with the IP/old node ID
+        	List<RTCNode> nodesList = m_map.getRTCNodes(oldNodeId, ip);
+            ListIterator<RTCNode> listIter = new LinkedList<RTCNode>(nodesList).listIterator();
+            while (listIter.hasNext()) {
+                RTCNode rtcN = listIter.next();
+
+                // remove the node with the old node id from the map
+                m_map.delete(rtcN);
+
+                // change the node ID on the RTCNode
+                rtcN.setNodeID(newNodeId);
+
+                // now add the node with the new node ID
+                m_map.add(rtcN);
+
+                // remove old node ID from the categories it belonged to
+                // and the new node ID
+                Iterator<String> catIter = rtcN.getCategories().listIterator();
+                while (catIter.hasNext()) {
+                    String catlabel = catIter.next();
+
+                    RTCCategory rtcCat = m_categories.get(catlabel);
+                    rtcCat.deleteNode(oldNodeId);
+                    rtcCat.addNode(newNodeId);
+                }
 
-                RTCCategory rtcCat = m_categories.get(catlabel);
-                rtcCat.deleteNode(oldNodeId);
-                rtcCat.addNode(newNodeId);
             }
-
+        } finally {
+            m_lock.writeLock().unlock();
         }
     }
 
@@ -747,8 +843,18 @@ public class DataManager {
      * @return the value(uptime) for the category in the last 'rollingWindow'
      *         starting at current time
      */
-    public synchronized double getValue(String catLabel, long curTime, long rollingWindow) {
-        return m_map.getValue(catLabel, curTime, rollingWindow);
+    public double getValue(String catLabel, long curTime, long rollingWindow) {
+        RTCCategory cat = m_categories.get(catLabel);
+        if (cat == null) {
+            return 100.0;
+        }
+
+        m_lock.readLock().lock();
+        try {
+            return cat.getValue(curTime, rollingWindow);
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -766,8 +872,13 @@ public class DataManager {
      * @return the value(uptime) for the node in the last 'rollingWindow'
      *         starting at current time in the context of the passed category
      */
-    public synchronized double getValue(long nodeid, String catLabel, long curTime, long rollingWindow) {
-        return m_map.getValue(nodeid, catLabel, curTime, rollingWindow);
+    public double getValue(long nodeid, String catLabel, long curTime, long rollingWindow) {
+        m_lock.readLock().lock();
+        try {
+            return m_map.getValue(nodeid, catLabel, curTime, rollingWindow);
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -781,8 +892,13 @@ public class DataManager {
      * @return the service count for the nodeid in the context of the passed
      *         category
      */
-    public synchronized int getServiceCount(long nodeid, String catLabel) {
-        return m_map.getServiceCount(nodeid, catLabel);
+    public int getServiceCount(long nodeid, String catLabel) {
+        m_lock.readLock().lock();
+        try {
+            return m_map.getServiceCount(nodeid, catLabel);
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -796,8 +912,13 @@ public class DataManager {
      * @return the service down count for the nodeid in the context of the
      *         passed category
      */
-    public synchronized int getServiceDownCount(long nodeid, String catLabel) {
-        return m_map.getServiceDownCount(nodeid, catLabel);
+    public int getServiceDownCount(long nodeid, String catLabel) {
+        m_lock.readLock().lock();
+        try {
+            return m_map.getServiceDownCount(nodeid, catLabel);
+        } finally {
+            m_lock.readLock().unlock();
+        }
     }
 
     /**
@@ -805,8 +926,19 @@ public class DataManager {
      *
      * @return the categories
      */
-    public synchronized Map<String, RTCCategory> getCategories() {
+    public Map<String, RTCCategory> getCategories() {
         return m_categories;
     }
 
+    /**
+     * The read lock that has to be held while reading more than one value
+     * that should be consistent with each other, for example while building
+     * the data for a category.
+     *
+     * @return the read lock
+     */
+    public Lock getReadLock() {
+        return m_lock.readLock();
+    }
+
 }
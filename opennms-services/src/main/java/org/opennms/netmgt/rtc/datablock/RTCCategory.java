@@ -31,13 +31,22 @@ package org.opennms.netmgt.rtc.datablock;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.opennms.netmgt.config.categories.Category;
 
 /**
  * This class is used to encapsulate a category in the categories XML file.
  *
+ * Besides the node IDs the category keeps the services ('RTCNode's) that
+ * belong to it, and separately the ones that have outages, so that the
+ * availability of the category only has to look at the services that were
+ * actually down instead of at every service that is known to RTC. Both are
+ * concurrent maps so outages can be recorded while the value is calculated.
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Nataraj </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  */
@@ -55,6 +64,16 @@ public class RTCCategory extends Category {
      */
     private List<Long> m_nodes;
 
+    /**
+     * The services in this category, keyed by {@link RTCNode#getSerial()}
+     */
+    private transient ConcurrentMap<Long, RTCNode> m_services;
+
+    /**
+     * The services in this category that have outages in the rolling window
+     */
+    private transient ConcurrentMap<Long, RTCNode> m_servicesWithOutages;
+
     /**
      * The default constructor - initializes the values
      *
@@ -72,6 +91,8 @@ public class RTCCategory extends Category {
         m_effectiveRule = "(" + commonRule + ") & (" + cat.getRule() + ")";
 
         m_nodes = Collections.synchronizedList(new ArrayList<Long>());
+        m_services = new ConcurrentHashMap<Long, RTCNode>();
+        m_servicesWithOutages = new ConcurrentHashMap<Long, RTCNode>();
     }
 
     /**
@@ -157,4 +178,91 @@ public class RTCCategory extends Category {
     public List<Long> getNodes() {
         return m_nodes;
     }
+
+    /**
+     * Add a service to the category.
+     *
+     * @param node the service
+     */
+    public void addService(RTCNode node) {
+        m_services.put(node.getSerial(), node);
+        if (node.hasOutages()) {
+            m_servicesWithOutages.put(node.getSerial(), node);
+        }
+    }
+
+    /**
+     * Remove a service from the category.
+     *
+     * @param node the service
+     */
+    public void removeService(RTCNode node) {
+        m_services.remove(node.getSerial());
+        m_servicesWithOutages.remove(node.getSerial());
+    }
+
+    /**
+     * Let the category know that an outage was recorded for one of its
+     * services.
+     *
+     * @param node the service
+     */
+    public void outageRecorded(RTCNode node) {
+        if (m_services.containsKey(node.getSerial())) {
+            m_servicesWithOutages.put(node.getSerial(), node);
+        }
+    }
+
+    /**
+     * <p>getRTCNodeCount</p>
+     *
+     * @return the number of services in this category
+     */
+    public int getRTCNodeCount() {
+        return m_services.size();
+    }
+
+    /**
+     * <p>getRTCNodesWithOutagesCount</p>
+     *
+     * @return the number of services in this category that had an outage in
+     *         the rolling window when the value was last calculated
+     */
+    public int getRTCNodesWithOutagesCount() {
+        return m_servicesWithOutages.size();
+    }
+
+    /**
+     * Get the value(uptime) for the category in the last 'rollingWindow'
+     * starting at current time. Services without outages don't add any down
+     * time, so only the services with outages are looked at. Services whose
+     * outages have all left the rolling window are dropped from that set.
+     *
+     * @param curTime
+     *            the current time
+     * @param rollingWindow
+     *            the window for which value is to be calculated
+     * @return the value(uptime) for the category
+     */
+    public double getValue(long curTime, long rollingWindow) {
+        final int count = m_services.size();
+        if (count == 0) {
+            return 100.0;
+        }
+
+        long outageTime = 0;
+        for (final Iterator<RTCNode> it = m_servicesWithOutages.values().iterator(); it.hasNext();) {
+            final RTCNode node = it.next();
+            outageTime += node.getDownTime(curTime, rollingWindow);
+            if (!node.hasOutages()) {
+                it.remove();
+                // an outage may have been recorded since we looked
+                if (node.hasOutages() && m_services.containsKey(node.getSerial())) {
+                    m_servicesWithOutages.putIfAbsent(node.getSerial(), node);
+                }
+            }
+        }
+
+        return 100 * (1 - (outageTime * 1.0 / (rollingWindow * 1.0 * count)));
+    }
 }
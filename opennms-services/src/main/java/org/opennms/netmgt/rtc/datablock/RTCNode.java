@@ -31,6 +31,7 @@ package org.opennms.netmgt.rtc.datablock;
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.opennms.netmgt.rtc.RTCConstants;
@@ -49,12 +50,25 @@ import org.opennms.netmgt.rtc.RTCConstants;
  * belongs to
  * </p>
  *
+ * <p>
+ * The outage times are guarded by the node's own monitor, so outage events
+ * for different nodes can be processed concurrently.
+ * </p>
+ *
  * @author <A HREF="mailto:sowmya@opennms.org">Sowmya Kumaraswamy </A>
  * @author <A HREF="http://www.opennms.org">OpenNMS.org </A>
  * @see org.opennms.netmgt.rtc.datablock.RTCNodeSvcTime
  * @see org.opennms.netmgt.rtc.datablock.RTCNodeSvcTimesList
  */
 public class RTCNode {
+    private static final AtomicLong s_nextSerial = new AtomicLong();
+
+    /**
+     * Identifies this instance for its whole life, unlike the node ID, IP
+     * address and service name which may change.
+     */
+    private final long m_serial = s_nextSerial.incrementAndGet();
+
     /**
      * The node ID.
      */
@@ -148,7 +162,7 @@ public class RTCNode {
      * @param regainedtime
      *            time at which service was regained
      */
-    public void addSvcTime(long losttime, long regainedtime) {
+    public synchronized void addSvcTime(long losttime, long regainedtime) {
         m_svcTimesList.addSvcTime(losttime, regainedtime);
     }
 
@@ -303,7 +317,7 @@ public class RTCNode {
      *            the window for which downtime is required
      * @return the total outage time for this node
      */
-    public long getDownTime(String cat, long curTime, long rollingWindow) {
+    public synchronized long getDownTime(String cat, long curTime, long rollingWindow) {
         // get the down time for this node in the context of the
         // category
         // if the service is not in 'context', return a negative value
@@ -313,6 +327,41 @@ public class RTCNode {
         return m_svcTimesList.getDownTime(curTime, rollingWindow);
     }
 
+    /**
+     * Get the down time for this node in the last 'rollingWindow'
+     * milliseconds since 'curTime', regardless of category.
+     *
+     * @param curTime
+     *            the start time (or current time) from which we go back
+     *            rollinWindow interval
+     * @param rollingWindow
+     *            the window for which downtime is required
+     * @return the total outage time for this node
+     */
+    public synchronized long getDownTime(long curTime, long rollingWindow) {
+        return m_svcTimesList.getDownTime(curTime, rollingWindow);
+    }
+
+    /**
+     * Return whether any outages are being kept for this node. Outages that
+     * have left the rolling window are only dropped when the down time is
+     * calculated.
+     *
+     * @return true if there are outages for this node
+     */
+    public synchronized boolean hasOutages() {
+        return !m_svcTimesList.isEmpty();
+    }
+
+    /**
+     * <p>getSerial</p>
+     *
+     * @return a number that identifies this instance
+     */
+    public long getSerial() {
+        return m_serial;
+    }
+
     /**
      * Get the avaialability. Return the total availability for this node in the
      * last 'rollingWindow' milliseconds since 'curTime' for the category
@@ -349,7 +398,7 @@ public class RTCNode {
      *
      * @return if the service is currently up/down
      */
-    public boolean isServiceCurrentlyDown() {
+    public synchronized boolean isServiceCurrentlyDown() {
         int size = m_svcTimesList.size();
         if (size == 0) {
             return false;
@@ -99,7 +99,10 @@ public class EuiLevelMapper extends Object {
 
         // get a handle to data
         DataManager rtcDataMgr = RTCManager.getDataManager();
-        synchronized (rtcDataMgr) {
+        // outage events are still processed while the data is read, only
+        // changes to the services and categories have to wait
+        rtcDataMgr.getReadLock().lock();
+        try {
             // category label
             levelCat.setCatlabel(rtcCat.getLabel());
 
@@ -126,7 +129,8 @@ public class EuiLevelMapper extends Object {
                 // add the node
                 levelCat.addNode(levelNode);
             }
-
+        } finally {
+            rtcDataMgr.getReadLock().unlock();
         }
 
         // add category
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the {@link PooledScheduler} used by the daemons.
+ *
+ * <p>The implementation is chosen with the
+ * <code>org.opennms.netmgt.scheduler.implementation</code> system property:
+ * <code>legacy</code> (the default) for {@link LegacyScheduler} or
+ * <code>wheel</code> for {@link TimingWheelScheduler}. The tick of the
+ * timing wheel in milliseconds and the window over which it spreads the
+ * runnables scheduled at start-up can be set with
+ * <code>org.opennms.netmgt.scheduler.tick</code> and
+ * <code>org.opennms.netmgt.scheduler.startSpread</code>.</p>
+ */
+public abstract class SchedulerFactory {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SchedulerFactory.class);
+
+    public static final String IMPLEMENTATION_PROPERTY = "org.opennms.netmgt.scheduler.implementation";
+    public static final String TICK_PROPERTY = "org.opennms.netmgt.scheduler.tick";
+    public static final String START_SPREAD_PROPERTY = "org.opennms.netmgt.scheduler.startSpread";
+
+    /**
+     * <p>createScheduler</p>
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @return a {@link org.opennms.netmgt.scheduler.PooledScheduler} object.
+     */
+    public static PooledScheduler createScheduler(final String parent, final int maxSize) {
+        final String implementation = System.getProperty(IMPLEMENTATION_PROPERTY, "legacy");
+        if ("wheel".equalsIgnoreCase(implementation)) {
+            final TimingWheelScheduler scheduler = new TimingWheelScheduler(parent, maxSize, Long.getLong(TICK_PROPERTY, 50L));
+            scheduler.setStartSpread(Long.getLong(START_SPREAD_PROPERTY, 0L));
+            LOG.info("createScheduler: using a timing wheel scheduler for {}", parent);
+            return scheduler;
+        } else if (!"legacy".equalsIgnoreCase(implementation)) {
+            LOG.warn("createScheduler: unknown scheduler implementation {}, using the legacy scheduler for {}", implementation, parent);
+        }
+        return new LegacyScheduler(parent, maxSize);
+    }
+}
@@ -0,0 +1,622 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.opennms.core.concurrent.LogPreservingThreadFactory;
+import org.opennms.core.fiber.PausableFiber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link Scheduler} built on a hierarchical timing wheel. Scheduling and
+ * cancelling are constant time no matter how many runnables are waiting, and
+ * the worker thread only looks at the runnables that are due instead of
+ * scanning every interval queue like {@link LegacyScheduler}.
+ *
+ * <p>Time is divided into ticks. The first wheel has a slot per tick, and
+ * each further wheel has a slot per full turn of the wheel below it; when a
+ * wheel wraps around, the next slot of the wheel above is cascaded down.
+ * Runnables that are due but not {@link ReadyRunnable#isReady() ready} are
+ * checked again shortly after, as with {@link LegacyScheduler}.</p>
+ *
+ * <p>Runnables scheduled without a delay before the scheduler starts or while
+ * it is in its start-up window can be spread randomly across that window, so
+ * that daemons
+ * which schedule everything at start-up don't run all of it at once and then
+ * stay in lock-step every interval.</p>
+ */
+public class TimingWheelScheduler implements Runnable, PausableFiber, PooledScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheelScheduler.class);
+
+    private static final int WHEEL_BITS = 8;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int WHEELS = 4;
+
+    /**
+     * How long to wait before checking a runnable that was not ready again.
+     */
+    private static final long NOT_READY_DELAY = 100L;
+
+    /**
+     * A runnable waiting in the wheel. Cancelling only marks it so that it
+     * is skipped once its slot comes up.
+     */
+    public static final class ScheduledTask {
+        private final ReadyRunnable m_runnable;
+        private volatile long m_deadline;
+        private long m_due;
+        private boolean m_spreadAtStart;
+        private final AtomicBoolean m_cancelled = new AtomicBoolean(false);
+        private volatile long m_lateness = -1L;
+        private ScheduledTask m_next;
+
+        private ScheduledTask(final ReadyRunnable runnable, final long deadline) {
+            m_runnable = runnable;
+            m_deadline = deadline;
+            m_due = deadline;
+        }
+
+        /**
+         * Prevents the runnable from running if it has not started yet.
+         *
+         * @return false if the task had already been cancelled
+         */
+        public boolean cancel() {
+            return m_cancelled.compareAndSet(false, true);
+        }
+
+        public boolean isCancelled() {
+            return m_cancelled.get();
+        }
+
+        public ReadyRunnable getRunnable() {
+            return m_runnable;
+        }
+
+        /**
+         * @return the {@link System#nanoTime()} at which the runnable is due
+         */
+        public long getDeadline() {
+            return m_deadline;
+        }
+
+        /**
+         * @return how many milliseconds after its deadline the runnable
+         *         started, or -1 if it has not started yet
+         */
+        public long getLateness() {
+            return m_lateness;
+        }
+
+        @Override
+        public String toString() {
+            return m_runnable + " (ready in " + Math.max(0L, TimeUnit.NANOSECONDS.toMillis(m_deadline - System.nanoTime())) + "ms)";
+        }
+    }
+
+    private static final class Slot {
+        private ScheduledTask m_head;
+
+        private void add(final ScheduledTask task) {
+            task.m_next = m_head;
+            m_head = task;
+        }
+
+        private ScheduledTask clear() {
+            final ScheduledTask head = m_head;
+            m_head = null;
+            return head;
+        }
+    }
+
+    private final String m_name;
+
+    private final ExecutorService m_runner;
+
+    private final long m_tickNanos;
+
+    private final Slot[][] m_wheels = new Slot[WHEELS][WHEEL_SIZE];
+
+    /**
+     * Runnables scheduled since the worker last looked; the wheels
+     * themselves are only ever touched by the worker thread.
+     */
+    private final Queue<ScheduledTask> m_pending = new ConcurrentLinkedQueue<ScheduledTask>();
+
+    private final AtomicInteger m_scheduled = new AtomicInteger();
+
+    private final Random m_random = new Random();
+
+    private volatile long m_startSpread = 0L;
+
+    private volatile long m_startNanos;
+
+    /**
+     * The next tick to expire; only used by the worker thread.
+     */
+    private long m_currentTick = 0L;
+
+    private volatile int m_status;
+
+    private volatile Thread m_worker;
+
+    private final AtomicLong m_numTasksExecuted = new AtomicLong();
+    private final AtomicLong m_lateTasks = new AtomicLong();
+    private final AtomicLong m_totalLateness = new AtomicLong();
+    private final AtomicLong m_maxLateness = new AtomicLong();
+
+    /**
+     * Constructs a new scheduler with a tick of 50 milliseconds.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize) {
+        this(parent, maxSize, 50L);
+    }
+
+    /**
+     * Constructs a new scheduler.
+     *
+     * @param parent
+     *            String prepended to "Scheduler" to create fiber name
+     * @param maxSize
+     *            The maximum size of the thread pool.
+     * @param tickDuration
+     *            The resolution of the scheduler in milliseconds.
+     */
+    public TimingWheelScheduler(final String parent, final int maxSize, final long tickDuration) {
+        Assert.isTrue(tickDuration > 0, "tickDuration must be positive");
+        m_name = parent + "Scheduler";
+        m_status = START_PENDING;
+        m_runner = Executors.newFixedThreadPool(maxSize, new LogPreservingThreadFactory(parent, maxSize, false));
+        m_tickNanos = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+        for (int i = 0; i < WHEELS; i++) {
+            for (int j = 0; j < WHEEL_SIZE; j++) {
+                m_wheels[i][j] = new Slot();
+            }
+        }
+        m_startNanos = System.nanoTime();
+    }
+
+    /**
+     * Spreads runnables scheduled without a delay before {@link #start()} or
+     * during the first <code>startSpread</code> milliseconds after it
+     * randomly across the rest of that window.
+     *
+     * @param startSpread the length of the start-up window; 0 disables it
+     */
+    public void setStartSpread(final long startSpread) {
+        m_startSpread = startSpread;
+    }
+
+    public long getStartSpread() {
+        return m_startSpread;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void schedule(final long interval, final ReadyRunnable runnable) {
+        scheduleTask(interval, runnable);
+    }
+
+    /**
+     * Schedules a runnable and returns a handle that can cancel it.
+     *
+     * @param interval the delay in milliseconds
+     * @param runnable the runnable to run once it is due and ready
+     * @return a {@link org.opennms.netmgt.scheduler.TimingWheelScheduler.ScheduledTask} object.
+     */
+    public ScheduledTask scheduleTask(final long interval, final ReadyRunnable runnable) {
+        final long now = System.nanoTime();
+        long delay = Math.max(interval, 0L);
+        boolean spreadAtStart = false;
+        if (delay == 0L && m_startSpread > 0L) {
+            if (m_status == START_PENDING) {
+                // the window only opens once we start
+                spreadAtStart = true;
+            } else {
+                delay = spreadDelay(now);
+            }
+        }
+
+        final ScheduledTask task = new ScheduledTask(runnable, now + TimeUnit.MILLISECONDS.toNanos(delay));
+        task.m_spreadAtStart = spreadAtStart;
+        m_pending.add(task);
+        m_scheduled.incrementAndGet();
+        LOG.debug("schedule: Adding ready runnable {} at interval {}", runnable, interval);
+        return task;
+    }
+
+    /**
+     * Returns a random delay within what is left of the start-up window.
+     */
+    private long spreadDelay(final long now) {
+        final long remaining = m_startSpread - TimeUnit.NANOSECONDS.toMillis(now - m_startNanos);
+        if (remaining <= 0L) {
+            return 0L;
+        }
+        synchronized (m_random) {
+            return (long) (m_random.nextDouble() * remaining);
+        }
+    }
+
+    /**
+     * <p>getCurrentTime</p>
+     *
+     * @return a long.
+     */
+    @Override
+    public long getCurrentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * <p>start</p>
+     */
+    @Override
+    public synchronized void start() {
+        Assert.state(m_worker == null, "The fiber has already run or is running");
+
+        m_startNanos = System.nanoTime();
+        // spread what was scheduled before we started; the worker is not
+        // running yet, so the wheels are still ours
+        transferPending();
+        m_worker = new Thread(this, getName());
+        m_worker.start();
+        m_status = STARTING;
+
+        LOG.info("start: scheduler started");
+    }
+
+    /**
+     * <p>stop</p>
+     */
+    @Override
+    public synchronized void stop() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+
+        m_status = STOP_PENDING;
+        m_worker.interrupt();
+        m_runner.shutdown();
+
+        LOG.info("stop: scheduler stopped");
+    }
+
+    /**
+     * <p>pause</p>
+     */
+    @Override
+    public synchronized void pause() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == PAUSED) {
+            return;
+        }
+
+        m_status = PAUSE_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>resume</p>
+     */
+    @Override
+    public synchronized void resume() {
+        Assert.state(m_worker != null, "The fiber has never been started");
+        Assert.state(m_status != STOPPED && m_status != STOP_PENDING, "The fiber is not running or a stop is pending");
+
+        if (m_status == RUNNING) {
+            return;
+        }
+
+        m_status = RESUME_PENDING;
+        notifyAll();
+    }
+
+    /**
+     * <p>getStatus</p>
+     *
+     * @return a int.
+     */
+    @Override
+    public synchronized int getStatus() {
+        if (m_worker != null && m_worker.isAlive() == false) {
+            m_status = STOPPED;
+        }
+        return m_status;
+    }
+
+    /**
+     * Returns the name of this fiber.
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    @Override
+    public String getName() {
+        return m_name;
+    }
+
+    /**
+     * Returns total number of runnables currently scheduled.
+     *
+     * @return the number of runnables waiting for their deadline
+     */
+    @Override
+    public int getScheduled() {
+        return m_scheduled.get();
+    }
+
+    /**
+     * Returns the pool of threads that are used to executed the runnable
+     * instances scheduled by the class' instance.
+     *
+     * @return thread pool
+     */
+    @Override
+    public ExecutorService getRunner() {
+        return m_runner;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getNumTasksExecuted() {
+        return m_numTasksExecuted.get();
+    }
+
+    /**
+     * @return the number of runnables that started more than two ticks
+     *         after their deadline
+     */
+    public long getLateTasks() {
+        return m_lateTasks.get();
+    }
+
+    /**
+     * @return the mean time in milliseconds runnables started after their
+     *         deadline
+     */
+    public double getAverageLateness() {
+        final long executed = m_numTasksExecuted.get();
+        return executed == 0 ? 0.0 : (double) m_totalLateness.get() / executed;
+    }
+
+    /**
+     * @return the longest time in milliseconds a runnable started after its
+     *         deadline
+     */
+    public long getMaxLateness() {
+        return m_maxLateness.get();
+    }
+
+    /**
+     * The main method of the scheduler. It advances the wheels tick by tick
+     * and hands the runnables that are due to the thread pool.
+     */
+    @Override
+    public void run() {
+        synchronized (this) {
+            m_status = RUNNING;
+        }
+
+        LOG.debug("run: scheduler running");
+
+        for (;;) {
+            synchronized (this) {
+                if (m_status != RUNNING && m_status != PAUSED && m_status != PAUSE_PENDING && m_status != RESUME_PENDING) {
+                    LOG.debug("run: status = {}, time to exit", m_status);
+                    break;
+                }
+
+                // if paused or pause pending then block
+                while (m_status == PAUSE_PENDING || m_status == PAUSED) {
+                    if (m_status == PAUSE_PENDING) {
+                        LOG.debug("run: pausing.");
+                    }
+                    m_status = PAUSED;
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        break;
+                    }
+                }
+
+                if (m_status == RESUME_PENDING) {
+                    LOG.debug("run: resuming.");
+                    m_status = RUNNING;
+                }
+            }
+
+            try {
+                advance(System.nanoTime());
+            } catch (RejectedExecutionException e) {
+                if (m_status == STOP_PENDING) {
+                    break;
+                }
+                LOG.error("run: failed to hand a runnable to the thread pool", e);
+            }
+
+            try {
+                Thread.sleep(TimeUnit.NANOSECONDS.toMillis(m_tickNanos));
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+
+        LOG.debug("run: scheduler exiting, state = STOPPED");
+        synchronized (this) {
+            m_status = STOPPED;
+        }
+    }
+
+    /**
+     * Expires every tick up to the given time. Only called by the worker
+     * thread, or by tests in place of it.
+     *
+     * @param now a {@link System#nanoTime()} value
+     */
+    void advance(final long now) {
+        final long lastTick = (now - m_startNanos) / m_tickNanos;
+
+        transferPending();
+
+        while (m_currentTick <= lastTick) {
+            final long tick = m_currentTick;
+            if ((tick & WHEEL_MASK) == 0 && tick > 0) {
+                cascade(tick);
+            }
+            m_currentTick = tick + 1;
+
+            ScheduledTask task = m_wheels[0][(int) (tick & WHEEL_MASK)].clear();
+            while (task != null) {
+                final ScheduledTask next = task.m_next;
+                task.m_next = null;
+                expire(task, now);
+                task = next;
+            }
+        }
+    }
+
+    private void transferPending() {
+        ScheduledTask task;
+        while ((task = m_pending.poll()) != null) {
+            if (task.m_spreadAtStart) {
+                task.m_spreadAtStart = false;
+                final long now = System.nanoTime();
+                task.m_due = now + TimeUnit.MILLISECONDS.toNanos(spreadDelay(now));
+                task.m_deadline = task.m_due;
+            }
+            place(task);
+        }
+    }
+
+    /**
+     * Moves the runnables of the slots that the tick has reached in the
+     * upper wheels into the lower ones, highest wheel first.
+     */
+    private void cascade(final long tick) {
+        int level = 1;
+        while (level < WHEELS - 1 && ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK) == 0) {
+            level++;
+        }
+        for (; level > 0; level--) {
+            ScheduledTask task = m_wheels[level][(int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK)].clear();
+            while (task != null) {
+                final ScheduledTask next = task.m_next;
+                task.m_next = null;
+                place(task);
+                task = next;
+            }
+        }
+    }
+
+    private void place(final ScheduledTask task) {
+        if (task.isCancelled()) {
+            m_scheduled.decrementAndGet();
+            return;
+        }
+
+        long deadlineTick = (task.m_due - m_startNanos + m_tickNanos - 1) / m_tickNanos;
+        if (deadlineTick < m_currentTick) {
+            deadlineTick = m_currentTick;
+        }
+
+        final long ticks = deadlineTick - m_currentTick;
+        for (int level = 0; level < WHEELS; level++) {
+            if (ticks < (1L << (WHEEL_BITS * (level + 1))) || level == WHEELS - 1) {
+                if (ticks >= (1L << (WHEEL_BITS * WHEELS))) {
+                    // beyond the last wheel; park it where it will be looked at again
+                    deadlineTick = m_currentTick + (1L << (WHEEL_BITS * WHEELS)) - 1;
+                }
+                m_wheels[level][(int) ((deadlineTick >>> (WHEEL_BITS * level)) & WHEEL_MASK)].add(task);
+                return;
+            }
+        }
+    }
+
+    private void expire(final ScheduledTask task, final long now) {
+        if (task.isCancelled()) {
+            m_scheduled.decrementAndGet();
+            return;
+        }
+
+        if (!task.m_runnable.isReady()) {
+            // look again shortly, keeping the original deadline for the lateness
+            task.m_due = now + TimeUnit.MILLISECONDS.toNanos(NOT_READY_DELAY);
+            place(task);
+            return;
+        }
+
+        m_scheduled.decrementAndGet();
+        m_runner.execute(new Runnable() {
+            @Override
+            public void run() {
+                recordLateness(task);
+                task.m_runnable.run();
+            }
+
+            @Override
+            public String toString() {
+                return task.m_runnable.toString();
+            }
+        });
+        m_numTasksExecuted.incrementAndGet();
+    }
+
+    private void recordLateness(final ScheduledTask task) {
+        final long lateness = Math.max(0L, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - task.m_deadline));
+        task.m_lateness = lateness;
+        m_totalLateness.addAndGet(lateness);
+        if (lateness > 2 * TimeUnit.NANOSECONDS.toMillis(m_tickNanos)) {
+            m_lateTasks.incrementAndGet();
+        }
+
+        long max = m_maxLateness.get();
+        while (lateness > max && !m_maxLateness.compareAndSet(max, lateness)) {
+            max = m_maxLateness.get();
+        }
+    }
+}
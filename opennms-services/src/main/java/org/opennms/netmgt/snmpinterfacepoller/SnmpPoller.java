@@ -39,8 +39,8 @@ import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.model.OnmsIpInterface;
 import org.opennms.netmgt.model.events.annotations.EventHandler;
 import org.opennms.netmgt.model.events.annotations.EventListener;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.SchedulerFactory;
 import org.opennms.netmgt.snmpinterfacepoller.pollable.PollableInterface;
 import org.opennms.netmgt.snmpinterfacepoller.pollable.PollableNetwork;
 import org.opennms.netmgt.snmpinterfacepoller.pollable.PollableSnmpInterface;
@@ -65,7 +65,7 @@ public class SnmpPoller extends AbstractServiceDaemon {
 
     private boolean m_initialized = false;
 
-    private LegacyScheduler m_scheduler = null;
+    private Scheduler m_scheduler = null;
 
     private SnmpInterfacePollerConfig m_pollerConfig;
     
@@ -111,9 +111,9 @@ public class SnmpPoller extends AbstractServiceDaemon {
     /**
      * <p>setScheduler</p>
      *
-     * @param scheduler a {@link org.opennms.netmgt.scheduler.LegacyScheduler} object.
+     * @param scheduler a {@link org.opennms.netmgt.scheduler.Scheduler} object.
      */
-    public void setScheduler(LegacyScheduler scheduler) {
+    public void setScheduler(Scheduler scheduler) {
         m_scheduler = scheduler;
     }
 
@@ -322,7 +322,7 @@ public class SnmpPoller extends AbstractServiceDaemon {
         try {
             LOG.debug("init: Creating SNMP Interface Poller scheduler");
 
-            setScheduler(new LegacyScheduler("Snmpinterfacepoller", getPollerConfig().getThreads()));
+            setScheduler(SchedulerFactory.createScheduler("Snmpinterfacepoller", getPollerConfig().getThreads()));
         } catch (RuntimeException e) {
             LOG.error("init: Failed to create SNMP interface poller scheduler", e);
             throw e;
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * An Aho-Corasick automaton that finds which of a fixed set of literal
+ * strings occur in a piece of text in a single pass over the text,
+ * regardless of how many literals there are.
+ *
+ * Instances are immutable once constructed and can be shared between
+ * threads.
+ */
+final class MultiSubstringMatcher {
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private static final int ASCII = 128;
+
+    /** Alphabet index for ASCII characters, 0 means "not in any pattern" */
+    private final int[] m_asciiAlphabet = new int[ASCII];
+
+    /** Alphabet index for the non-ASCII characters used by the patterns */
+    private final Map<Character, Integer> m_otherAlphabet = new HashMap<Character, Integer>();
+
+    /** The full transition table, indexed by state then alphabet index */
+    private final int[][] m_transitions;
+
+    /** For each state, the ids of the patterns that end there */
+    private final int[][] m_output;
+
+    private final int m_patternCount;
+
+    /**
+     * Build an automaton for the given literals.  The id reported for a
+     * literal is its index in the list; empty or null literals are ignored.
+     *
+     * @param patterns the literals to search for
+     */
+    MultiSubstringMatcher(final List<String> patterns) {
+        m_patternCount = patterns.size();
+
+        // assign alphabet indexes to every character used in a pattern
+        int alphabetSize = 1;
+        for (final String pattern : patterns) {
+            if (pattern == null) continue;
+            for (int i = 0; i < pattern.length(); i++) {
+                final char c = pattern.charAt(i);
+                if (alphabetIndex(c) == 0) {
+                    if (c < ASCII) {
+                        m_asciiAlphabet[c] = alphabetSize++;
+                    } else {
+                        m_otherAlphabet.put(c, alphabetSize++);
+                    }
+                }
+            }
+        }
+
+        // build the trie
+        final List<int[]> gotoTable = new ArrayList<int[]>();
+        final List<List<Integer>> outputs = new ArrayList<List<Integer>>();
+        gotoTable.add(newRow(alphabetSize));
+        outputs.add(new ArrayList<Integer>());
+
+        for (int id = 0; id < patterns.size(); id++) {
+            final String pattern = patterns.get(id);
+            if (pattern == null || pattern.length() == 0) continue;
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                final int a = alphabetIndex(pattern.charAt(i));
+                int next = gotoTable.get(state)[a];
+                if (next < 0) {
+                    next = gotoTable.size();
+                    gotoTable.add(newRow(alphabetSize));
+                    outputs.add(new ArrayList<Integer>());
+                    gotoTable.get(state)[a] = next;
+                }
+                state = next;
+            }
+            outputs.get(state).add(id);
+        }
+
+        // breadth-first pass to compute failure links and turn the trie into a DFA
+        final int[] failure = new int[gotoTable.size()];
+        final Queue<Integer> queue = new LinkedList<Integer>();
+        final int[] root = gotoTable.get(0);
+        for (int a = 0; a < alphabetSize; a++) {
+            if (root[a] < 0) {
+                root[a] = 0;
+            } else {
+                failure[root[a]] = 0;
+                queue.add(root[a]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.remove();
+            final int[] row = gotoTable.get(state);
+            outputs.get(state).addAll(outputs.get(failure[state]));
+            for (int a = 0; a < alphabetSize; a++) {
+                final int next = row[a];
+                if (next < 0) {
+                    row[a] = gotoTable.get(failure[state])[a];
+                } else {
+                    failure[next] = gotoTable.get(failure[state])[a];
+                    queue.add(next);
+                }
+            }
+        }
+
+        m_transitions = gotoTable.toArray(new int[gotoTable.size()][]);
+        m_output = new int[outputs.size()][];
+        for (int state = 0; state < outputs.size(); state++) {
+            final List<Integer> ids = outputs.get(state);
+            if (ids.isEmpty()) {
+                m_output[state] = NO_OUTPUT;
+            } else {
+                m_output[state] = new int[ids.size()];
+                for (int i = 0; i < ids.size(); i++) {
+                    m_output[state][i] = ids.get(i);
+                }
+            }
+        }
+    }
+
+    private static int[] newRow(final int alphabetSize) {
+        final int[] row = new int[alphabetSize];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private int alphabetIndex(final char c) {
+        if (c < ASCII) {
+            return m_asciiAlphabet[c];
+        }
+        final Integer index = m_otherAlphabet.get(c);
+        return index == null ? 0 : index;
+    }
+
+    /**
+     * @return the number of literals the automaton was built for
+     */
+    int getPatternCount() {
+        return m_patternCount;
+    }
+
+    /**
+     * Find the literals that occur in the text.
+     *
+     * @param text the text to search
+     * @return an array indexed by literal id that is true for each literal found
+     */
+    boolean[] findAll(final CharSequence text) {
+        final boolean[] found = new boolean[m_patternCount];
+        if (text == null || m_patternCount == 0) {
+            return found;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = m_transitions[state][alphabetIndex(text.charAt(i))];
+            for (final int id : m_output[state]) {
+                found[id] = true;
+            }
+        }
+        return found;
+    }
+}
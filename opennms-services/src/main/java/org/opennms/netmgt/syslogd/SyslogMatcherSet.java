@@ -0,0 +1,539 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.HideMessage;
+import org.opennms.netmgt.config.syslogd.ParameterAssignment;
+import org.opennms.netmgt.config.syslogd.UeiList;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The syslogd <code>ueiList</code> and <code>hideMessage</code> configuration,
+ * compiled once so that each message can be matched without walking and
+ * re-compiling every rule.
+ *
+ * <ul>
+ * <li>facility and severity guards become bitmasks over the enum ordinals</li>
+ * <li>process, hostname and hostaddr guards are compiled up front</li>
+ * <li>substring rules, and the literals every match of a regex rule must
+ * contain, go into a single {@link MultiSubstringMatcher} so one pass over
+ * the message tells us which rules can possibly match</li>
+ * <li>regexes are compiled once and only run for those candidate rules</li>
+ * </ul>
+ *
+ * Rules are still tried in configuration order and the first match wins,
+ * so the result is the same as the old rule-by-rule loop.  Instances are
+ * immutable and shared by all syslog connection threads.
+ */
+final class SyslogMatcherSet {
+    private static final Logger LOG = LoggerFactory.getLogger(SyslogMatcherSet.class);
+
+    /** Shorter literals are not worth the automaton states they cost */
+    private static final int MIN_LITERAL_LENGTH = 2;
+
+    private static final int[] NO_LITERALS = new int[0];
+
+    private final UeiList m_ueiList;
+    private final HideMessage m_hideMessage;
+    private final int m_ueiCount;
+    private final int m_hideCount;
+
+    private final List<UeiRule> m_ueiRules;
+    private final MultiSubstringMatcher m_ueiLiterals;
+
+    private final List<HideRule> m_hideRules;
+    private final MultiSubstringMatcher m_hideLiterals;
+
+    private SyslogMatcherSet(final UeiList ueiList, final HideMessage hideMessage) {
+        m_ueiList = ueiList;
+        m_hideMessage = hideMessage;
+
+        final List<UeiMatch> ueiMatches = ueiList == null ? null : ueiList.getUeiMatchCollection();
+        final List<HideMatch> hideMatches = hideMessage == null ? null : hideMessage.getHideMatchCollection();
+        m_ueiCount = ueiMatches == null ? -1 : ueiMatches.size();
+        m_hideCount = hideMatches == null ? -1 : hideMatches.size();
+
+        final List<String> ueiLiterals = new ArrayList<String>();
+        final List<UeiRule> ueiRules = new ArrayList<UeiRule>();
+        if (ueiMatches != null) {
+            for (final UeiMatch ueiMatch : ueiMatches) {
+                final UeiRule rule = UeiRule.compile(ueiMatch, ueiLiterals);
+                if (rule != null) {
+                    ueiRules.add(rule);
+                }
+            }
+        }
+        m_ueiRules = Collections.unmodifiableList(ueiRules);
+        m_ueiLiterals = new MultiSubstringMatcher(ueiLiterals);
+
+        final List<String> hideLiterals = new ArrayList<String>();
+        final List<HideRule> hideRules = new ArrayList<HideRule>();
+        if (hideMatches != null) {
+            for (final HideMatch hideMatch : hideMatches) {
+                final HideRule rule = HideRule.compile(hideMatch, hideLiterals);
+                if (rule != null) {
+                    hideRules.add(rule);
+                }
+            }
+        }
+        m_hideRules = Collections.unmodifiableList(hideRules);
+        m_hideLiterals = new MultiSubstringMatcher(hideLiterals);
+
+        LOG.debug("Compiled {} UEI match rules ({} literals) and {} hide rules ({} literals)", m_ueiRules.size(), ueiLiterals.size(), m_hideRules.size(), hideLiterals.size());
+    }
+
+    /**
+     * Compile the given syslogd configuration.
+     *
+     * @param ueiList the configured UEI matches, may be null
+     * @param hideMessage the configured hide matches, may be null
+     * @return the compiled matcher set
+     */
+    static SyslogMatcherSet compile(final UeiList ueiList, final HideMessage hideMessage) {
+        return new SyslogMatcherSet(ueiList, hideMessage);
+    }
+
+    /**
+     * Whether this matcher set was compiled from (and is still current for)
+     * the given configuration objects.
+     */
+    boolean isCompiledFrom(final UeiList ueiList, final HideMessage hideMessage) {
+        if (m_ueiList != ueiList || m_hideMessage != hideMessage) {
+            return false;
+        }
+        final int ueiCount = ueiList == null || ueiList.getUeiMatchCollection() == null ? -1 : ueiList.getUeiMatchCollection().size();
+        final int hideCount = hideMessage == null || hideMessage.getHideMatchCollection() == null ? -1 : hideMessage.getHideMatchCollection().size();
+        return ueiCount == m_ueiCount && hideCount == m_hideCount;
+    }
+
+    boolean hasUeiList() {
+        return m_ueiCount >= 0;
+    }
+
+    boolean hasHideMessage() {
+        return m_hideCount >= 0;
+    }
+
+    /**
+     * Apply the first UEI match rule that matches the message to the event
+     * builder.
+     *
+     * @param message the parsed syslog message
+     * @param bldr the event being built
+     * @param discardUei the UEI that means "drop the message"
+     * @return true if a rule matched
+     * @throws MessageDiscardedException if the matching rule's UEI is the discard UEI
+     */
+    boolean applyUeiMatch(final SyslogMessage message, final EventBuilder bldr, final String discardUei) throws MessageDiscardedException {
+        if (m_ueiRules.isEmpty()) {
+            return false;
+        }
+
+        final String matchedText = message.getMatchedMessage();
+        final String regexText = matchedText != null ? matchedText : message.getFullText();
+        final boolean[] found = m_ueiLiterals.findAll(regexText);
+
+        final int facility = 1 << message.getFacility().ordinal();
+        final int severity = 1 << message.getSeverity().ordinal();
+
+        for (final UeiRule rule : m_ueiRules) {
+            if ((rule.m_facilities & facility) == 0 || (rule.m_severities & severity) == 0) {
+                continue;
+            }
+            if (rule.m_substring) {
+                // substring rules only ever look at the matched message
+                if (matchedText == null || !rule.literalsFound(found)) continue;
+                if (!rule.guardsMatch(message)) continue;
+                if (discardUei.equals(rule.m_uei)) {
+                    LOG.trace("Specified UEI '{}' is same as discard-uei, discarding this message.", rule.m_uei);
+                    throw new MessageDiscardedException();
+                }
+                LOG.trace("Changed the UEI of a Syslogd event, based on substring match, to : {}", rule.m_uei);
+                bldr.setUei(rule.m_uei);
+                return true;
+            } else {
+                if (!rule.literalsFound(found)) continue;
+                if (!rule.guardsMatch(message)) continue;
+                final Matcher msgMat = rule.m_pattern.matcher(regexText);
+                if (!msgMat.find()) continue;
+                if (discardUei.equals(rule.m_uei)) {
+                    LOG.debug("Specified UEI '{}' is same as discard-uei, discarding this message.", rule.m_uei);
+                    throw new MessageDiscardedException();
+                }
+                bldr.setUei(rule.m_uei);
+                rule.addParameters(msgMat, bldr);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param fullText the full text of the syslog message
+     * @return true if any hide rule matches the message
+     */
+    boolean shouldHide(final String fullText) {
+        if (m_hideRules.isEmpty() || fullText == null) {
+            return false;
+        }
+        final boolean[] found = m_hideLiterals.findAll(fullText);
+        for (final HideRule rule : m_hideRules) {
+            if (rule.m_pattern == null) {
+                if (rule.m_literal < 0 || found[rule.m_literal]) {
+                    return true;
+                }
+            } else if (rule.m_literals.length == 0 || allFound(rule.m_literals, found)) {
+                if (rule.m_pattern.matcher(fullText).find()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean allFound(final int[] ids, final boolean[] found) {
+        for (final int id : ids) {
+            if (!found[id]) return false;
+        }
+        return true;
+    }
+
+    private static int[] addLiterals(final List<String> literals, final List<String> required) {
+        if (required.isEmpty()) {
+            return NO_LITERALS;
+        }
+        final int[] ids = new int[required.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = literals.size();
+            literals.add(required.get(i));
+        }
+        return ids;
+    }
+
+    private static Pattern compilePattern(final String expression, final String context) {
+        try {
+            return Pattern.compile(expression, Pattern.MULTILINE);
+        } catch (final PatternSyntaxException pse) {
+            LOG.warn("Failed to compile regex pattern '{}' in {} context, it will never match", expression, context, pse);
+            return null;
+        }
+    }
+
+    private static final class UeiRule {
+        private static final int ALL = -1;
+
+        private String m_uei;
+        private boolean m_substring;
+        private Pattern m_pattern;
+        private boolean m_defaultParameterMapping;
+        private List<ParameterAssignment> m_assignments;
+        private int[] m_literals = NO_LITERALS;
+        private int m_facilities = ALL;
+        private int m_severities = ALL;
+        private Pattern m_process;
+        private Pattern m_hostname;
+        private Pattern m_hostaddr;
+
+        /**
+         * @return the compiled rule, or null if the rule can never match
+         */
+        static UeiRule compile(final UeiMatch ueiMatch, final List<String> literals) {
+            final String type = ueiMatch.getMatch().getType();
+            final String expression = ueiMatch.getMatch().getExpression();
+            final UeiRule rule = new UeiRule();
+            rule.m_uei = ueiMatch.getUei();
+
+            if ("substr".equals(type)) {
+                rule.m_substring = true;
+                if (expression.length() > 0) {
+                    rule.m_literals = addLiterals(literals, Collections.singletonList(expression));
+                }
+            } else if (type.startsWith("regex")) {
+                rule.m_pattern = compilePattern(expression, "ueiMatch");
+                if (rule.m_pattern == null) {
+                    return null;
+                }
+                rule.m_defaultParameterMapping = ueiMatch.getMatch().isDefaultParameterMapping();
+                rule.m_assignments = ueiMatch.getParameterAssignmentCollection();
+                rule.m_literals = addLiterals(literals, requiredLiterals(expression));
+            } else {
+                return null;
+            }
+
+            rule.m_facilities = facilityMask(ueiMatch.getFacilityCollection());
+            rule.m_severities = severityMask(ueiMatch.getSeverityCollection());
+            if (rule.m_facilities == 0 || rule.m_severities == 0) {
+                return null;
+            }
+
+            if (ueiMatch.getProcessMatch() != null) {
+                rule.m_process = compilePattern(ueiMatch.getProcessMatch().getExpression(), "process-match");
+                if (rule.m_process == null) return null;
+            }
+            if (ueiMatch.getHostnameMatch() != null) {
+                rule.m_hostname = compilePattern(ueiMatch.getHostnameMatch().getExpression(), "hostname-match");
+                if (rule.m_hostname == null) return null;
+            }
+            if (ueiMatch.getHostaddrMatch() != null) {
+                rule.m_hostaddr = compilePattern(ueiMatch.getHostaddrMatch().getExpression(), "hostaddr-match");
+                if (rule.m_hostaddr == null) return null;
+            }
+            return rule;
+        }
+
+        boolean literalsFound(final boolean[] found) {
+            return allFound(m_literals, found);
+        }
+
+        boolean guardsMatch(final SyslogMessage message) {
+            return find(m_process, message.getProcessName())
+                && find(m_hostname, message.getHostName())
+                && find(m_hostaddr, message.getHostAddress());
+        }
+
+        private static boolean find(final Pattern pattern, final String input) {
+            if (pattern == null) return true;
+            if (input == null) return false;
+            return pattern.matcher(input).find();
+        }
+
+        void addParameters(final Matcher msgMat, final EventBuilder bldr) {
+            if (msgMat.groupCount() == 0) {
+                return;
+            }
+            if (m_defaultParameterMapping) {
+                LOG.trace("Doing default parameter mappings for this regex match.");
+                for (int groupNum = 1; groupNum <= msgMat.groupCount(); groupNum++) {
+                    bldr.addParam("group" + groupNum, msgMat.group(groupNum));
+                }
+            }
+            for (final ParameterAssignment assignment : m_assignments) {
+                final String parmValue = msgMat.group(assignment.getMatchingGroup());
+                bldr.addParam(assignment.getParameterName(), parmValue == null ? "" : parmValue);
+            }
+        }
+
+        private static int facilityMask(final List<String> facilities) {
+            if (facilities.size() == 0) return ALL;
+            int mask = 0;
+            for (final SyslogFacility facility : SyslogFacility.values()) {
+                for (final String name : facilities) {
+                    if (name.equalsIgnoreCase(facility.toString())) {
+                        mask |= 1 << facility.ordinal();
+                    }
+                }
+            }
+            return mask;
+        }
+
+        private static int severityMask(final List<String> severities) {
+            if (severities.size() == 0) return ALL;
+            int mask = 0;
+            for (final SyslogSeverity severity : SyslogSeverity.values()) {
+                for (final String name : severities) {
+                    if (name.equalsIgnoreCase(severity.toString())) {
+                        mask |= 1 << severity.ordinal();
+                    }
+                }
+            }
+            return mask;
+        }
+    }
+
+    private static final class HideRule {
+        /** null for a substring rule */
+        private Pattern m_pattern;
+        /** the substring literal id, or -1 for an empty substring */
+        private int m_literal = -1;
+        /** the literals a regex rule requires */
+        private int[] m_literals = NO_LITERALS;
+
+        /**
+         * @return the compiled rule, or null if the rule can never match
+         */
+        static HideRule compile(final HideMatch hideMatch, final List<String> literals) {
+            final String type = hideMatch.getMatch().getType();
+            final String expression = hideMatch.getMatch().getExpression();
+            final HideRule rule = new HideRule();
+            if ("substr".equals(type)) {
+                if (expression.length() > 0) {
+                    rule.m_literal = addLiterals(literals, Collections.singletonList(expression))[0];
+                }
+            } else if ("regex".equals(type)) {
+                rule.m_pattern = compilePattern(expression, "hideMatch");
+                if (rule.m_pattern == null) {
+                    return null;
+                }
+                rule.m_literals = addLiterals(literals, requiredLiterals(expression));
+            } else {
+                return null;
+            }
+            return rule;
+        }
+    }
+
+    /**
+     * Find literal strings that any match of the regular expression must
+     * contain.  This is deliberately conservative: only literals at the top
+     * level of the expression are considered, and anything we don't fully
+     * understand (alternation, inline flags, escapes like <code>\p{..}</code>)
+     * results in no literals at all, which just means the regex is always
+     * run.
+     *
+     * @param regex a regular expression, compiled with no flags besides MULTILINE
+     * @return the required literals, possibly empty
+     */
+    static List<String> requiredLiterals(final String regex) {
+        final List<String> literals = new ArrayList<String>();
+        final StringBuilder current = new StringBuilder();
+        int depth = 0;
+        int i = 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i++);
+            switch (c) {
+            case '\\':
+                if (i >= regex.length()) return Collections.emptyList();
+                final char escaped = regex.charAt(i++);
+                if (escaped == 'Q') {
+                    int end = regex.indexOf("\\E", i);
+                    if (end < 0) end = regex.length();
+                    if (depth == 0) current.append(regex, i, end);
+                    i = Math.min(end + 2, regex.length());
+                } else if ("pPxuc0kN".indexOf(escaped) >= 0) {
+                    // escapes with arguments
+                    return Collections.emptyList();
+                } else if (Character.isLetterOrDigit(escaped)) {
+                    // character classes, anchors, back references and control characters
+                    endLiteral(literals, current);
+                } else if (depth == 0) {
+                    current.append(escaped);
+                }
+                break;
+            case '|':
+                if (depth == 0) return Collections.emptyList();
+                break;
+            case '(':
+                if (i < regex.length() && regex.charAt(i) == '?') {
+                    final char kind = i + 1 < regex.length() ? regex.charAt(i + 1) : ')';
+                    if (":=!<>".indexOf(kind) < 0) {
+                        // inline flags may change how the following literals match
+                        return Collections.emptyList();
+                    }
+                }
+                endLiteral(literals, current);
+                depth++;
+                break;
+            case ')':
+                endLiteral(literals, current);
+                depth--;
+                break;
+            case '[':
+                endLiteral(literals, current);
+                i = skipCharacterClass(regex, i);
+                if (i < 0) return Collections.emptyList();
+                break;
+            case '.':
+            case '^':
+            case '$':
+                endLiteral(literals, current);
+                break;
+            case '*':
+            case '?':
+            case '{':
+                // the previous character is optional
+                if (current.length() > 0) current.setLength(current.length() - 1);
+                if (current.length() > 0 && Character.isHighSurrogate(current.charAt(current.length() - 1))) current.setLength(current.length() - 1);
+                endLiteral(literals, current);
+                if (c == '{') {
+                    i = regex.indexOf('}', i);
+                    if (i < 0) return Collections.emptyList();
+                    i++;
+                }
+                i = skipQuantifierModifier(regex, i);
+                break;
+            case '+':
+                // the previous character is required, but may repeat
+                endLiteral(literals, current);
+                i = skipQuantifierModifier(regex, i);
+                break;
+            default:
+                if (depth == 0) current.append(c);
+                break;
+            }
+        }
+        endLiteral(literals, current);
+        return literals;
+    }
+
+    private static void endLiteral(final List<String> literals, final StringBuilder current) {
+        if (current.length() >= MIN_LITERAL_LENGTH) {
+            literals.add(current.toString());
+        }
+        current.setLength(0);
+    }
+
+    private static int skipQuantifierModifier(final String regex, final int i) {
+        if (i < regex.length() && (regex.charAt(i) == '?' || regex.charAt(i) == '+')) {
+            return i + 1;
+        }
+        return i;
+    }
+
+    /**
+     * @return the index just after the end of the character class starting
+     * before <code>i</code>, or -1 if it can't be parsed simply
+     */
+    private static int skipCharacterClass(final String regex, int i) {
+        if (i < regex.length() && regex.charAt(i) == '^') i++;
+        if (i < regex.length() && regex.charAt(i) == ']') i++;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i++);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                // nested classes and intersections
+                return -1;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -167,6 +167,8 @@ import org.slf4j.LoggerFactory;
 
         m_udpEventReceiver.stop();
         LOG.debug("Stopped the Syslog UDP Receiver");
+
+        SyslogdIPMgr.release();
     }
 
     /**
@@ -28,17 +28,21 @@
 
 package org.opennms.netmgt.syslogd;
 
+import java.net.InetAddress;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.opennms.core.db.DataSourceFactory;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.utils.IpNodeIndex;
 
 /**
  * This class represents a singular instance that is used to map trap IP
- * addresses to known nodes.
+ * addresses to known nodes. The addresses are kept in the
+ * {@link IpNodeIndex} shared with trapd, lookups don't lock.
  *
  * @author <a href="mailto:joed@opennms.org">Johan Edstrom</a>
  * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
@@ -50,12 +54,12 @@ final class SyslogdIPMgr {
      * The SQL statement used to extract the list of currently known IP
      * addresses and their node IDs from the IP Interface table.
      */
-    private static final String IP_LOAD_SQL = "SELECT ipAddr, nodeid FROM ipInterface";
+    private static final String IP_LOAD_SQL = "SELECT ipAddr, nodeid, isSnmpPrimary FROM ipInterface";
 
     /**
-     * A Map of IP addresses and node IDs
+     * The index of IP addresses and node IDs
      */
-    private static Map<String,Long> m_knownips = new ConcurrentHashMap<String,Long>();
+    private static final IpNodeIndex m_knownips = IpNodeIndex.getInstance();
 
     /**
      * Clears and synchronizes the internal known IP address cache with the
@@ -82,11 +86,12 @@ final class SyslogdIPMgr {
             final ResultSet rs = s.executeQuery(IP_LOAD_SQL);
 
             if (rs != null) {
-                m_knownips.clear();
+                final Map<InetAddress,Integer> knownips = new HashMap<InetAddress,Integer>();
                 while (rs.next()) {
-                    m_knownips.put(rs.getString(1), rs.getLong(2));
+                    IpNodeIndex.addInterface(knownips, InetAddressUtils.addr(rs.getString(1)), rs.getInt(2), "P".equals(rs.getString(3)));
                 }
                 rs.close();
+                m_knownips.load(SyslogdIPMgr.class, knownips);
             }
 
         } finally {
@@ -105,17 +110,22 @@ final class SyslogdIPMgr {
         }
     }
 
+    /**
+     * Releases syslogd's claim on the shared index, which is cleared if no
+     * other daemon uses it.
+     */
+    static void release() {
+        m_knownips.release(SyslogdIPMgr.class);
+    }
+
     /**
      * Returns the nodeid for the IP Address
      *
      * @param addr The IP Address to query.
      * @return The node ID of the IP Address if known.
      */
-    static synchronized long getNodeId(final String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.get(addr));
+    static long getNodeId(final String addr) {
+        return m_knownips.getNodeId(addr);
     }
 
     /**
@@ -129,7 +139,7 @@ final class SyslogdIPMgr {
         if (addr == null || nodeid == -1)
             return -1;
 
-        return longValue(m_knownips.put(addr, nodeid));
+        return m_knownips.setNodeId(InetAddressUtils.addr(addr), (int) nodeid);
     }
 
     /**
@@ -141,11 +151,7 @@ final class SyslogdIPMgr {
     static long removeNodeId(final String addr) {
         if (addr == null)
             return -1;
-        return longValue(m_knownips.remove(addr));
-    }
-
-    private static long longValue(final Long result) {
-        return (result == null ? -1 : result);
+        return m_knownips.removeNodeId(InetAddressUtils.addr(addr));
     }
 
 } // end SyslodIPMgr
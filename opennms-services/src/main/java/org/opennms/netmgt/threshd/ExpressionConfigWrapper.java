@@ -35,14 +35,22 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.jexl2.ExpressionImpl;
+import org.apache.commons.jexl2.JexlContext;
 import org.apache.commons.jexl2.JexlEngine;
-import org.apache.commons.jexl2.MapContext;
 import org.opennms.netmgt.config.threshd.Expression;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * 
+ * Threshold definition based on a JEXL expression.
+ *
+ * The expression is parsed once, when the wrapper is built from the
+ * configuration, by a JEXL engine that is shared by every expression
+ * threshold. Parsed JEXL expressions are immutable and thread-safe, so the
+ * same instance is evaluated concurrently by all of the threshd and collectd
+ * threads; each evaluation only gets its own light-weight context that reads
+ * the variables straight out of the collected values.
+ *
  * @author <a href="mailto:agalue@opennms.org">Alejandro Galue</a>
  * @author <a href="mailto:jeffg@opennms.org">Jeff Gehlbach</a>
  * @author <a href="mailto:cmiskell@opennms.org">Craig Miskell</a>
@@ -50,16 +58,32 @@ import org.slf4j.LoggerFactory;
 public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
     private static final Logger LOG = LoggerFactory.getLogger(ExpressionConfigWrapper.class);
 
+    /**
+     * Size of the parse cache of the shared JEXL engine. The same expression
+     * is usually configured in several threshold groups, so the groups share
+     * one parse of it.
+     */
+    private static final int EXPRESSION_CACHE_SIZE = 512;
+
+    private static final JexlEngine s_engine = new JexlEngine();
+    static {
+        s_engine.setCache(EXPRESSION_CACHE_SIZE);
+    }
+
+    private static final MathBinding s_mathBinding = new MathBinding();
+
     private final Expression m_expression;
+    private final org.apache.commons.jexl2.Expression m_parsedExpression;
     private final Collection<String> m_datasources;
+
     public ExpressionConfigWrapper(Expression expression) throws ThresholdExpressionException {
         super(expression);
         m_expression = expression;
 
-        JexlEngine expressionParser = new JexlEngine();
         m_datasources = new ArrayList<String>();
         try {
-            ExpressionImpl e = (ExpressionImpl) expressionParser.createExpression(m_expression.getExpression());
+            ExpressionImpl e = (ExpressionImpl) s_engine.createExpression(m_expression.getExpression());
+            m_parsedExpression = e;
             LOG.trace("List of Variables on the Expression: {}", e.getVariables());
             for (List<String> list : e.getVariables()) { // Requires JEXL 2.1.x
                 if (list.get(0).equalsIgnoreCase("math")) {
@@ -140,21 +164,62 @@ public class ExpressionConfigWrapper extends BaseThresholdDefConfigWrapper {
         public float ulp(float a) { return Math.ulp(a); }
     }
 
+    /**
+     * The variables of a single evaluation. Variables are looked up directly
+     * in the collected values instead of being copied into a new map for
+     * every evaluation.
+     */
+    private static final class ThresholdContext implements JexlContext {
+        private final Map<String, Double> m_values;
+        private Map<String, Object> m_locals;
+        private Map<String, Double> m_datasources;
+
+        public ThresholdContext(final Map<String, Double> values) {
+            m_values = values;
+        }
+
+        @Override
+        public Object get(final String name) {
+            if (m_locals != null && m_locals.containsKey(name)) {
+                return m_locals.get(name);
+            } else if ("math".equals(name)) {
+                return s_mathBinding;
+            } else if ("datasources".equals(name)) {
+                // To workaround NMS-5019; a copy, made only when an expression
+                // asks for it, so the collected values cannot be changed through it
+                if (m_datasources == null) {
+                    m_datasources = new HashMap<String, Double>(m_values);
+                }
+                return m_datasources;
+            }
+            return m_values.get(name);
+        }
+
+        @Override
+        public void set(final String name, final Object value) {
+            // assignments inside an expression must never leak into the collected values
+            if (m_locals == null) {
+                m_locals = new HashMap<String, Object>();
+            }
+            m_locals.put(name, value);
+        }
+
+        @Override
+        public boolean has(final String name) {
+            return "math".equals(name) || "datasources".equals(name) || m_values.containsKey(name) || (m_locals != null && m_locals.containsKey(name));
+        }
+    }
+
     @Override
     public double evaluate(Map<String, Double> values) throws ThresholdExpressionException {
-        // Add all of the variable values to the script context
-        Map<String,Object> context = new HashMap<String,Object>();
-        context.putAll(values);
-        context.put("datasources", new HashMap<String, Double>(values)); // To workaround NMS-5019
-        context.put("math", new MathBinding());
-        double result = Double.NaN;
         try {
-            // Fetch an instance of the JEXL script engine to evaluate the script expression
-            Object resultObject = new JexlEngine().createExpression(m_expression.getExpression()).evaluate(new MapContext(context));
-            result = Double.parseDouble(resultObject.toString());
+            final Object resultObject = m_parsedExpression.evaluate(new ThresholdContext(values));
+            if (resultObject instanceof Number) {
+                return ((Number) resultObject).doubleValue();
+            }
+            return Double.parseDouble(resultObject.toString());
         } catch (Throwable e) {
             throw new ThresholdExpressionException("Error while evaluating expression " + m_expression.getExpression() + ": " + e.getMessage(), e);
         }
-        return result;
     }
 }
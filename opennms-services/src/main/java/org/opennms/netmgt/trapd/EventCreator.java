@@ -56,6 +56,7 @@ public class EventCreator implements TrapProcessor {
     
     private EventBuilder m_eventBuilder;
     private TrapdIpMgr m_trapdIpMgr;
+    private final long m_creationTime = System.nanoTime();
 
     
     public EventCreator(TrapdIpMgr trapdIpMgr) {
@@ -134,4 +135,12 @@ public class EventCreator implements TrapProcessor {
         return m_eventBuilder.getEvent();
     }
 
+
+    /**
+     * @return the {@link System#nanoTime()} at which decoding of the trap
+     *         started
+     */
+    public long getCreationTime() {
+        return m_creationTime;
+    }
 }
@@ -28,13 +28,10 @@
 
 package org.opennms.netmgt.trapd;
 
-import java.net.InetAddress;
-import java.util.HashMap;
-import java.util.Map;
-
 import org.opennms.core.utils.InetAddressUtils;
 import org.opennms.netmgt.dao.api.IpInterfaceDao;
 import org.opennms.netmgt.model.OnmsIpInterface;
+import org.opennms.netmgt.utils.IpNodeIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -44,7 +41,8 @@ import org.springframework.util.Assert;
 
 /**
  * This class represents a singular instance that is used to map trap IP
- * addresses to known nodes.
+ * addresses to known nodes. The addresses are kept in the
+ * {@link IpNodeIndex} shared with syslogd, lookups don't lock.
  *
  * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
  * @author <a href="mailto:tarus@opennms.org">Tarus Balog </a>
@@ -58,9 +56,9 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
     private IpInterfaceDao m_ipInterfaceDao;
     
     /**
-     * A Map of IP addresses and node IDs
+     * The index of IP addresses and node IDs
      */
-    private Map<InetAddress, Integer> m_knownips = new HashMap<InetAddress, Integer>();
+    private final IpNodeIndex m_knownips = IpNodeIndex.getInstance();
 
     /**
      * Default construct for the instance.
@@ -76,8 +74,8 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     @Transactional(readOnly = true)
     @Override
-    public synchronized void dataSourceSync() {
-        m_knownips = m_ipInterfaceDao.getInterfacesForNodes();
+    public void dataSourceSync() {
+        m_knownips.load(this, m_ipInterfaceDao.getInterfacesForNodes());
     }
 
     /* (non-Javadoc)
@@ -85,11 +83,8 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     /** {@inheritDoc} */
     @Override
-    public synchronized long getNodeId(String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.get(InetAddressUtils.getInetAddress(addr)));
+    public long getNodeId(String addr) {
+        return m_knownips.getNodeId(addr);
     }
 
     /* (non-Javadoc)
@@ -103,12 +98,12 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
         }
         // Only add the address if it doesn't exist on the map. If it exists, only replace the current one if the new address is primary.
         boolean add = true;
-        if (m_knownips.containsKey(InetAddressUtils.getInetAddress(addr))) {
+        if (m_knownips.getNodeId(addr) != -1) {
             OnmsIpInterface intf = m_ipInterfaceDao.findByNodeIdAndIpAddress(Integer.valueOf((int) nodeid), addr);
             add = intf != null && intf.isPrimary();
             LOG.info("setNodeId: address found {}. Should be added? {}", intf, add);
         }
-        return add ? longValue(m_knownips.put(InetAddressUtils.getInetAddress(addr), Integer.valueOf((int) nodeid))) : -1;
+        return add ? m_knownips.setNodeId(InetAddressUtils.getInetAddress(addr), (int) nodeid) : -1;
     }
 
     /* (non-Javadoc)
@@ -116,11 +111,11 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     /** {@inheritDoc} */
     @Override
-    public synchronized long removeNodeId(String addr) {
+    public long removeNodeId(String addr) {
         if (addr == null) {
             return -1;
         }
-        return longValue(m_knownips.remove(InetAddressUtils.getInetAddress(addr)));
+        return m_knownips.removeNodeId(InetAddressUtils.getInetAddress(addr));
     }
 
     /* (non-Javadoc)
@@ -130,12 +125,8 @@ public class HibernateTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      * <p>clearKnownIpsMap</p>
      */
     @Override
-    public synchronized void clearKnownIpsMap() {
-        m_knownips.clear();
-    }
-
-    private static long longValue(Integer result) {
-        return (result == null ? -1 : result.longValue());
+    public void clearKnownIpsMap() {
+        m_knownips.release(this);
     }
 
     /**
@@ -28,6 +28,7 @@
 
 package org.opennms.netmgt.trapd;
 
+import java.net.InetAddress;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
@@ -35,6 +36,8 @@ import java.util.Map;
 
 import javax.sql.DataSource;
 
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.utils.IpNodeIndex;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowCallbackHandler;
@@ -42,7 +45,8 @@ import org.springframework.util.Assert;
 
 /**
  * This class represents a singular instance that is used to map trap IP
- * addresses to known nodes.
+ * addresses to known nodes. The addresses are kept in the
+ * {@link IpNodeIndex} shared with syslogd, lookups don't lock.
  *
  * @author <a href="mailto:weave@oculan.com">Brian Weaver </a>
  * @author <a href="mailto:tarus@opennms.org">Tarus Balog </a>
@@ -54,12 +58,12 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      * The SQL statement used to extract the list of currently known IP
      * addresses and their node IDs from the IP Interface table.
      */
-    private static final String IP_LOAD_SQL = "SELECT ipAddr, nodeid FROM ipInterface";
+    private static final String IP_LOAD_SQL = "SELECT ipAddr, nodeid, isSnmpPrimary FROM ipInterface";
 
     /**
-     * A Map of IP addresses and node IDs
+     * The index of IP addresses and node IDs
      */
-    private Map<String, Long> m_knownips = new HashMap<String, Long>();
+    private final IpNodeIndex m_knownips = IpNodeIndex.getInstance();
 
     /**
      * Default construct for the instance.
@@ -74,15 +78,17 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      * <p>dataSourceSync</p>
      */
     @Override
-    public synchronized void dataSourceSync() {
-        m_knownips.clear();
+    public void dataSourceSync() {
+        final Map<InetAddress, Integer> knownips = new HashMap<InetAddress, Integer>();
 
         new JdbcTemplate(m_dataSource).query(IP_LOAD_SQL, new RowCallbackHandler() {
             @Override
             public void processRow(ResultSet rs) throws SQLException {
-                m_knownips.put(rs.getString(1), rs.getLong(2));
+                IpNodeIndex.addInterface(knownips, InetAddressUtils.addr(rs.getString(1)), rs.getInt(2), "P".equals(rs.getString(3)));
             }
         });
+
+        m_knownips.load(this, knownips);
     }
 
     /* (non-Javadoc)
@@ -90,11 +96,8 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     /** {@inheritDoc} */
     @Override
-    public synchronized long getNodeId(String addr) {
-        if (addr == null) {
-            return -1;
-        }
-        return longValue(m_knownips.get(addr));
+    public long getNodeId(String addr) {
+        return m_knownips.getNodeId(addr);
     }
 
     /* (non-Javadoc)
@@ -102,12 +105,12 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     /** {@inheritDoc} */
     @Override
-    public synchronized long setNodeId(String addr, long nodeid) {
+    public long setNodeId(String addr, long nodeid) {
         if (addr == null || nodeid == -1) {
             return -1;
         }
         
-        return longValue(m_knownips.put(addr, Long.valueOf(nodeid)));
+        return m_knownips.setNodeId(InetAddressUtils.getInetAddress(addr), (int) nodeid);
     }
 
     /* (non-Javadoc)
@@ -115,11 +118,11 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      */
     /** {@inheritDoc} */
     @Override
-    public synchronized long removeNodeId(String addr) {
+    public long removeNodeId(String addr) {
         if (addr == null) {
             return -1;
         }
-        return longValue(m_knownips.remove(addr));
+        return m_knownips.removeNodeId(InetAddressUtils.getInetAddress(addr));
     }
 
     /* (non-Javadoc)
@@ -129,12 +132,8 @@ public class JdbcTrapdIpMgr implements TrapdIpMgr, InitializingBean {
      * <p>clearKnownIpsMap</p>
      */
     @Override
-    public synchronized void clearKnownIpsMap() {
-        m_knownips.clear();
-    }
-
-    private static long longValue(Long result) {
-        return (result == null ? -1 : result.longValue());
+    public void clearKnownIpsMap() {
+        m_knownips.release(this);
     }
 
     /**
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with power-of-two buckets of microseconds.
+ * Percentiles are reported as the upper bound of the bucket they fall in, so
+ * they are accurate to within a factor of two, which is enough to tell where
+ * time is being spent.
+ */
+public final class LatencyHistogram {
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray m_buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong m_count = new AtomicLong();
+    private final AtomicLong m_totalNanos = new AtomicLong();
+    private final AtomicLong m_maxNanos = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(nanos, 0L);
+        final int bucket = Math.min(64 - Long.numberOfLeadingZeros(value / 1000L), BUCKETS - 1);
+        m_buckets.incrementAndGet(bucket);
+        m_count.incrementAndGet();
+        m_totalNanos.addAndGet(value);
+
+        long max = m_maxNanos.get();
+        while (value > max && !m_maxNanos.compareAndSet(max, value)) {
+            max = m_maxNanos.get();
+        }
+    }
+
+    /**
+     * Records the time since a start time.
+     *
+     * @param startNanos a value of {@link System#nanoTime()}
+     */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return m_count.get();
+    }
+
+    /**
+     * @return the mean latency in milliseconds
+     */
+    public double getMean() {
+        final long count = m_count.get();
+        return count == 0 ? 0.0 : m_totalNanos.get() / 1e6 / count;
+    }
+
+    /**
+     * @return the highest latency in milliseconds
+     */
+    public double getMax() {
+        return m_maxNanos.get() / 1e6;
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 100
+     * @return the latency in milliseconds that the given percentage of the
+     *         recorded latencies did not exceed
+     */
+    public double getPercentile(final double percentile) {
+        long total = 0;
+        final long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = m_buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0.0;
+        }
+
+        final double threshold = total * percentile / 100.0;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= threshold && counts[i] > 0) {
+                // bucket i holds latencies below 2^i microseconds
+                return Math.min((1L << i) / 1000.0, getMax());
+            }
+        }
+        return getMax();
+    }
+}
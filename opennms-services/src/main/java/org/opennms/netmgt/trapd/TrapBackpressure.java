@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Applies the {@link BackpressurePolicy} once more traps are waiting to be
+ * processed than the maximum queue depth. The settings default to the
+ * <code>org.opennms.netmgt.trapd.backpressure.*</code> system properties;
+ * without a maximum queue depth nothing is dropped.
+ */
+public class TrapBackpressure implements InitializingBean {
+    private static final Logger LOG = LoggerFactory.getLogger(TrapBackpressure.class);
+
+    private static final String PROPERTY_PREFIX = "org.opennms.netmgt.trapd.backpressure.";
+
+    private TrapdStatistics m_statistics;
+
+    private BackpressurePolicy m_policy = BackpressurePolicy.valueOf(System.getProperty(PROPERTY_PREFIX + "policy", BackpressurePolicy.NONE.name()));
+
+    private int m_maxQueueDepth = Integer.getInteger(PROPERTY_PREFIX + "maxQueueDepth", 0);
+
+    private int m_sampleRate = Integer.getInteger(PROPERTY_PREFIX + "sampleRate", 10);
+
+    private Set<String> m_dropUeis = StringUtils.commaDelimitedListToSet(System.getProperty(PROPERTY_PREFIX + "dropUeis", ""));
+
+    private final AtomicLong m_sampled = new AtomicLong();
+
+    /**
+     * @return whether more traps are waiting than the maximum queue depth
+     */
+    public boolean isOverloaded() {
+        return m_policy != BackpressurePolicy.NONE && m_maxQueueDepth > 0 && m_statistics.getQueueDepth() >= m_maxQueueDepth;
+    }
+
+    /**
+     * Called before a trap is queued. With the {@link BackpressurePolicy#DROP_OLDEST}
+     * policy the trap that has been waiting the longest is removed from the
+     * queue of the executor if it is overloaded.
+     *
+     * @param backlogQ the executor traps are queued on
+     */
+    public void beforeQueued(final ExecutorService backlogQ) {
+        if (m_policy != BackpressurePolicy.DROP_OLDEST || !isOverloaded() || !(backlogQ instanceof ThreadPoolExecutor)) {
+            return;
+        }
+        if (((ThreadPoolExecutor) backlogQ).getQueue().poll() != null) {
+            m_statistics.trapDequeued();
+            m_statistics.trapDropped();
+            LOG.debug("beforeQueued: {} traps queued, dropped the oldest", m_statistics.getQueueDepth());
+        }
+    }
+
+    /**
+     * Called once the UEI of a trap is known, before it is sent to eventd.
+     *
+     * @param uei the UEI of the trap
+     * @return true if the trap should be dropped
+     */
+    public boolean shouldDrop(final String uei) {
+        if (!isOverloaded()) {
+            return false;
+        }
+        switch (m_policy) {
+        case DROP_BY_UEI:
+            return m_dropUeis.contains(uei);
+        case SAMPLE:
+            return m_sampled.getAndIncrement() % m_sampleRate != 0;
+        default:
+            return false;
+        }
+    }
+
+    public TrapdStatistics getStatistics() {
+        return m_statistics;
+    }
+
+    public void setStatistics(final TrapdStatistics statistics) {
+        m_statistics = statistics;
+    }
+
+    public BackpressurePolicy getPolicy() {
+        return m_policy;
+    }
+
+    public void setPolicy(final BackpressurePolicy policy) {
+        m_policy = policy;
+    }
+
+    public int getMaxQueueDepth() {
+        return m_maxQueueDepth;
+    }
+
+    /**
+     * @param maxQueueDepth the number of waiting traps at which the policy
+     *            applies; 0 disables it
+     */
+    public void setMaxQueueDepth(final int maxQueueDepth) {
+        m_maxQueueDepth = maxQueueDepth;
+    }
+
+    public int getSampleRate() {
+        return m_sampleRate;
+    }
+
+    /**
+     * @param sampleRate forward one in this many traps with the
+     *            {@link BackpressurePolicy#SAMPLE} policy
+     */
+    public void setSampleRate(final int sampleRate) {
+        m_sampleRate = sampleRate;
+    }
+
+    public Set<String> getDropUeis() {
+        return Collections.unmodifiableSet(m_dropUeis);
+    }
+
+    public void setDropUeis(final Set<String> dropUeis) {
+        m_dropUeis = new HashSet<String>(dropUeis);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        Assert.state(m_statistics != null, "statistics must be set");
+        Assert.state(m_policy != null, "policy must be set");
+        Assert.state(m_sampleRate > 0, "sampleRate must be positive");
+        if (m_policy != BackpressurePolicy.NONE) {
+            LOG.info("Applying backpressure policy {} above {} queued traps", m_policy, m_maxQueueDepth);
+        }
+    }
+}
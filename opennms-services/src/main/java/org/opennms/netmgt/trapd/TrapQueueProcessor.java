@@ -85,16 +85,15 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
     private EventConfDao m_eventConfDao;
 
     private TrapNotification m_trapNotification;
-    
-    private static long s_v1TrapsReceived = 0;
-    
-    private static long s_v2cTrapsReceived = 0;
-    
-    private static long s_v3TrapsReceived = 0;
-    
-    private static long s_trapsDiscarded = 0;
-    
-    private static long s_trapsErrored = 0;
+
+    private TrapdStatistics m_statistics;
+
+    private TrapBackpressure m_backpressure;
+
+    /**
+     * When the trap was queued, as a {@link System#nanoTime()} value.
+     */
+    private final long m_queueTime = System.nanoTime();
 
     /**
      * Process a V2 trap and convert it to an event for transmission.
@@ -165,13 +164,16 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
      */
     @Override
     public Callable<Void> call() {
+        m_statistics.getQueueLatency().recordSince(m_queueTime);
         try {
             processTrapEvent(((EventCreator)m_trapNotification.getTrapProcessor()).getEvent());
         } catch (IllegalArgumentException e) {
             LOG.info(e.getMessage());
         } catch (Throwable e) {
             LOG.error("Unexpected error processing trap: {}", e, e);
-            s_trapsErrored++;
+            m_statistics.trapErrored();
+        } finally {
+            m_statistics.trapDequeued();
         }
         return null;
     }
@@ -184,7 +186,9 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
     private void processTrapEvent(final Event event) {
     	final InetAddress trapInterface = event.getInterfaceAddress();
 
+    	final long matchStart = System.nanoTime();
     	final org.opennms.netmgt.xml.eventconf.Event econf = m_eventConfDao.findByEvent(event);
+    	m_statistics.getMatchLatency().recordSince(matchStart);
         if (econf == null || econf.getUei() == null) {
             event.setUei("uei.opennms.org/default/trap");
         } else {
@@ -195,11 +199,11 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
             final Snmp snmp = econf.getSnmp();
             if (snmp != null) {
                 if ("v1".equals(snmp.getVersion())) {
-                    s_v1TrapsReceived++;
+                    m_statistics.v1TrapReceived();
                 } else if ("v2c".equals(snmp.getVersion())) {
-                    s_v2cTrapsReceived++;
+                    m_statistics.v2cTrapReceived();
                 } else if ("v3".equals(snmp.getVersion())) {
-                    s_v3TrapsReceived++;
+                    m_statistics.v3TrapReceived();
                 }
             }
             final Logmsg logmsg = econf.getLogmsg();
@@ -207,14 +211,22 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
                 final String dest = logmsg.getDest();
                 if ("discardtraps".equals(dest)) {
                     LOG.debug("Trap discarded due to matching event having logmsg dest == discardtraps");
-                    s_trapsDiscarded++;
+                    m_statistics.trapDiscarded();
                     return;
                 }
             }
         }
 
+        if (m_backpressure.shouldDrop(event.getUei())) {
+            LOG.debug("Trap with UEI {} dropped, {} traps are queued", event.getUei(), m_statistics.getQueueDepth());
+            m_statistics.trapDropped();
+            return;
+        }
+
         // send the event to eventd
+        final long broadcastStart = System.nanoTime();
         m_eventMgr.sendNow(event);
+        m_statistics.getBroadcastLatency().recordSince(broadcastStart);
 
         LOG.debug("Trap successfully converted and sent to eventd with UEI {}", event.getUei());
 
@@ -311,31 +323,29 @@ class TrapQueueProcessor implements WaterfallCallable, InitializingBean {
         m_trapNotification = info;
     }
 
+    public TrapdStatistics getStatistics() {
+        return m_statistics;
+    }
+
+    public void setStatistics(TrapdStatistics statistics) {
+        m_statistics = statistics;
+    }
+
+    public TrapBackpressure getBackpressure() {
+        return m_backpressure;
+    }
+
+    public void setBackpressure(TrapBackpressure backpressure) {
+        m_backpressure = backpressure;
+    }
+
     @Override
     public void afterPropertiesSet() throws IllegalStateException {
         Assert.state(m_eventConfDao != null, "property eventConfDao must be set");
         Assert.state(m_eventMgr != null, "property eventMgr must be set");
         Assert.state(m_newSuspect != null, "property newSuspect must be set");
         Assert.state(m_trapNotification != null, "property trapNotification must be set");
-    }
-    
-    public static long getV1TrapsReceived() {
-        return s_v1TrapsReceived;
-    }
-    
-    public static long getV2cTrapsReceived() {
-        return s_v2cTrapsReceived;
-    }
-    
-    public static long getV3TrapsReceived() {
-        return s_v3TrapsReceived;
-    }
-    
-    public static long getTrapsDiscarded() {
-        return s_trapsDiscarded;
-    }
-    
-    public static long getTrapsErrored() {
-        return s_trapsErrored;
+        Assert.state(m_statistics != null, "property statistics must be set");
+        Assert.state(m_backpressure != null, "property backpressure must be set");
     }
 }
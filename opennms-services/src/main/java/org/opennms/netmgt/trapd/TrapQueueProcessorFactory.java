@@ -89,6 +89,12 @@ public class TrapQueueProcessorFactory implements InitializingBean {
     @Autowired
     private EventConfDao m_eventConfDao;
 
+    @Autowired
+    private TrapdStatistics m_statistics;
+
+    @Autowired
+    private TrapBackpressure m_backpressure;
+
     /**
      * The constructor
      */
@@ -101,6 +107,8 @@ public class TrapQueueProcessorFactory implements InitializingBean {
         retval.setEventManager(m_eventManager);
         retval.setNewSuspect(m_newSuspectOnTrap);
         retval.setTrapNotification(info);
+        retval.setStatistics(m_statistics);
+        retval.setBackpressure(m_backpressure);
         retval.afterPropertiesSet();
         return retval;
     }
@@ -34,6 +34,7 @@ import java.net.InetAddress;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.annotation.Resource;
 
@@ -110,6 +111,18 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     @Autowired
     private TrapdIpMgr m_trapdIpMgr;
 
+    /**
+     * Counters and latencies of the trap pipeline.
+     */
+    @Autowired
+    private TrapdStatistics m_statistics;
+
+    /**
+     * Decides which traps to drop when the backlog grows too deep.
+     */
+    @Autowired
+    private TrapBackpressure m_backpressure;
+
     @Resource(name="snmpTrapAddress")
     private String m_snmpTrapAddress;
 
@@ -148,7 +161,19 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     /** {@inheritDoc} */
     @Override
     public void trapReceived(TrapNotification trapNotification) {
-        m_backlogQ.submit(m_processorFactory.getInstance(trapNotification));
+        if (trapNotification.getTrapProcessor() instanceof EventCreator) {
+            m_statistics.getDecodeLatency().recordSince(((EventCreator)trapNotification.getTrapProcessor()).getCreationTime());
+        }
+
+        m_backpressure.beforeQueued(m_backlogQ);
+        final TrapQueueProcessor processor = m_processorFactory.getInstance(trapNotification);
+        m_statistics.trapQueued();
+        try {
+            m_backlogQ.submit(processor);
+        } catch (final RejectedExecutionException e) {
+            m_statistics.trapDequeued();
+            throw e;
+        }
     }
 
     /**
@@ -292,6 +317,8 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
 
         m_eventReader.close();
 
+        m_trapdIpMgr.clearKnownIpsMap();
+
         m_status = STOPPED;
 
         LOG.debug("stop: Trapd stopped");
@@ -354,22 +381,34 @@ public class Trapd extends AbstractServiceDaemon implements TrapProcessorFactory
     }
 
     public long getV1TrapsReceived() {
-        return TrapQueueProcessor.getV1TrapsReceived();
+        return m_statistics.getV1TrapsReceived();
     }
 
     public long getV2cTrapsReceived() {
-        return TrapQueueProcessor.getV2cTrapsReceived();
+        return m_statistics.getV2cTrapsReceived();
     }
 
     public long getV3TrapsReceived() {
-        return TrapQueueProcessor.getV3TrapsReceived();
+        return m_statistics.getV3TrapsReceived();
     }
 
     public long getTrapsDiscarded() {
-        return TrapQueueProcessor.getTrapsDiscarded();
+        return m_statistics.getTrapsDiscarded();
     }
 
     public long getTrapsErrored() {
-        return TrapQueueProcessor.getTrapsErrored();
+        return m_statistics.getTrapsErrored();
+    }
+
+    public long getTrapsDropped() {
+        return m_statistics.getTrapsDropped();
+    }
+
+    public int getQueueDepth() {
+        return m_statistics.getQueueDepth();
+    }
+
+    public TrapdStatistics getStatistics() {
+        return m_statistics;
     }
 }
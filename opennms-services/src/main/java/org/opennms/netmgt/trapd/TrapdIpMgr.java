@@ -80,7 +80,8 @@ public interface TrapdIpMgr {
     public abstract long removeNodeId(String addr);
 
     /**
-     * <p>clearKnownIpsMap</p>
+     * Clears the known IP addresses, unless the index holding them is still
+     * in use by another daemon.
      */
     public abstract void clearKnownIpsMap();
 
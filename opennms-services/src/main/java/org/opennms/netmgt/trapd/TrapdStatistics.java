@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters, gauges and per-stage latencies of the trap pipeline: traps are
+ * decoded by the SNMP library, wait in the backlog queue, are matched
+ * against the event configuration and are then broadcast to eventd.
+ */
+public class TrapdStatistics {
+    private final AtomicLong m_v1TrapsReceived = new AtomicLong();
+    private final AtomicLong m_v2cTrapsReceived = new AtomicLong();
+    private final AtomicLong m_v3TrapsReceived = new AtomicLong();
+    private final AtomicLong m_trapsDiscarded = new AtomicLong();
+    private final AtomicLong m_trapsErrored = new AtomicLong();
+    private final AtomicLong m_trapsDropped = new AtomicLong();
+    private final AtomicInteger m_queueDepth = new AtomicInteger();
+
+    private final LatencyHistogram m_decodeLatency = new LatencyHistogram();
+    private final LatencyHistogram m_queueLatency = new LatencyHistogram();
+    private final LatencyHistogram m_matchLatency = new LatencyHistogram();
+    private final LatencyHistogram m_broadcastLatency = new LatencyHistogram();
+
+    public void v1TrapReceived() {
+        m_v1TrapsReceived.incrementAndGet();
+    }
+
+    public void v2cTrapReceived() {
+        m_v2cTrapsReceived.incrementAndGet();
+    }
+
+    public void v3TrapReceived() {
+        m_v3TrapsReceived.incrementAndGet();
+    }
+
+    public void trapDiscarded() {
+        m_trapsDiscarded.incrementAndGet();
+    }
+
+    public void trapErrored() {
+        m_trapsErrored.incrementAndGet();
+    }
+
+    public void trapDropped() {
+        m_trapsDropped.incrementAndGet();
+    }
+
+    public void trapQueued() {
+        m_queueDepth.incrementAndGet();
+    }
+
+    public void trapDequeued() {
+        m_queueDepth.decrementAndGet();
+    }
+
+    public long getV1TrapsReceived() {
+        return m_v1TrapsReceived.get();
+    }
+
+    public long getV2cTrapsReceived() {
+        return m_v2cTrapsReceived.get();
+    }
+
+    public long getV3TrapsReceived() {
+        return m_v3TrapsReceived.get();
+    }
+
+    public long getTrapsDiscarded() {
+        return m_trapsDiscarded.get();
+    }
+
+    public long getTrapsErrored() {
+        return m_trapsErrored.get();
+    }
+
+    public long getTrapsDropped() {
+        return m_trapsDropped.get();
+    }
+
+    /**
+     * @return the number of traps that were queued but not processed yet
+     */
+    public int getQueueDepth() {
+        return m_queueDepth.get();
+    }
+
+    /**
+     * @return the time from the start of decoding a trap until it was queued
+     */
+    public LatencyHistogram getDecodeLatency() {
+        return m_decodeLatency;
+    }
+
+    /**
+     * @return the time traps waited in the queue
+     */
+    public LatencyHistogram getQueueLatency() {
+        return m_queueLatency;
+    }
+
+    /**
+     * @return the time it took to match traps to the event configuration
+     */
+    public LatencyHistogram getMatchLatency() {
+        return m_matchLatency;
+    }
+
+    /**
+     * @return the time it took to hand events to eventd
+     */
+    public LatencyHistogram getBroadcastLatency() {
+        return m_broadcastLatency;
+    }
+}
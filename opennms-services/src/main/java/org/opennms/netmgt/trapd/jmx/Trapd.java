@@ -78,4 +78,64 @@ public class Trapd extends AbstractSpringContextJmxServiceDaemon<org.opennms.net
     public long getTrapsErrored() {
         return getDaemon().getTrapsErrored();
     }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTrapsDropped() {
+        return getDaemon().getTrapsDropped();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getQueueDepth() {
+        return getDaemon().getQueueDepth();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getDecodeLatencyMean() {
+        return getDaemon().getStatistics().getDecodeLatency().getMean();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getDecodeLatency99th() {
+        return getDaemon().getStatistics().getDecodeLatency().getPercentile(99);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getQueueLatencyMean() {
+        return getDaemon().getStatistics().getQueueLatency().getMean();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getQueueLatency99th() {
+        return getDaemon().getStatistics().getQueueLatency().getPercentile(99);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getMatchLatencyMean() {
+        return getDaemon().getStatistics().getMatchLatency().getMean();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getMatchLatency99th() {
+        return getDaemon().getStatistics().getMatchLatency().getPercentile(99);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getBroadcastLatencyMean() {
+        return getDaemon().getStatistics().getBroadcastLatency().getMean();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getBroadcastLatency99th() {
+        return getDaemon().getStatistics().getBroadcastLatency().getPercentile(99);
+    }
 }
@@ -51,4 +51,34 @@ public interface TrapdMBean extends BaseOnmsMBean {
     
     /** @return The number of traps not processed due to errors since Trapd was last started */
     public long getTrapsErrored();
+
+    /** @return The number of traps dropped by the backpressure policy since Trapd was last started */
+    public long getTrapsDropped();
+
+    /** @return The number of traps waiting to be processed */
+    public int getQueueDepth();
+
+    /** @return The mean time in milliseconds spent decoding a trap */
+    public double getDecodeLatencyMean();
+
+    /** @return The 99th percentile of the time in milliseconds spent decoding a trap */
+    public double getDecodeLatency99th();
+
+    /** @return The mean time in milliseconds a trap waited to be processed */
+    public double getQueueLatencyMean();
+
+    /** @return The 99th percentile of the time in milliseconds a trap waited to be processed */
+    public double getQueueLatency99th();
+
+    /** @return The mean time in milliseconds spent matching a trap against the event configuration */
+    public double getMatchLatencyMean();
+
+    /** @return The 99th percentile of the time in milliseconds spent matching a trap against the event configuration */
+    public double getMatchLatency99th();
+
+    /** @return The mean time in milliseconds spent sending an event to eventd */
+    public double getBroadcastLatencyMean();
+
+    /** @return The 99th percentile of the time in milliseconds spent sending an event to eventd */
+    public double getBroadcastLatency99th();
 }
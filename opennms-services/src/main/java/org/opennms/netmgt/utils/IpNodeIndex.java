@@ -0,0 +1,447 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.utils;
+
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.opennms.core.utils.InetAddressUtils;
+
+/**
+ * Maps IP addresses to node IDs for the daemons that need to tie incoming
+ * messages to nodes, such as trapd and syslogd. They share the index
+ * returned by {@link #getInstance()}, so the interface table is held once
+ * per JVM. Each daemon loads it as an owner and releases it when it is
+ * done; the index is only emptied once the last owner has released it, so
+ * one daemon stopping does not leave the others without their nodes.
+ *
+ * <p>Lookups read an immutable snapshot and never lock. Addresses are packed
+ * into two longs (IPv4 addresses as IPv4-mapped IPv6 addresses) and kept in
+ * open-addressed tables, so looking up a dotted-quad string doesn't allocate
+ * or chase pointers. Updates copy a small overlay table that sits on top of
+ * the base table; once the overlay grows past a fraction of the base they
+ * are merged into a new base table.</p>
+ */
+public final class IpNodeIndex {
+    /**
+     * The overlay is merged into the base once it has more entries than
+     * this, or than an eighth of the base, whichever is larger.
+     */
+    private static final int MIN_OVERLAY_SIZE = 1024;
+
+    /**
+     * Marks an address in the overlay that was removed from the base.
+     */
+    private static final int REMOVED = -1;
+
+    private static final long IPV4_MAPPED_PREFIX = 0xffff00000000L;
+
+    private static final IpNodeIndex s_instance = new IpNodeIndex();
+
+    private volatile Snapshot m_snapshot = new Snapshot(Table.EMPTY, Table.EMPTY, 0);
+
+    private final Set<Object> m_owners = new HashSet<Object>();
+
+    /**
+     * <p>Constructor for IpNodeIndex.</p>
+     */
+    public IpNodeIndex() {
+    }
+
+    /**
+     * Returns the index shared by the daemons of this JVM.
+     *
+     * @return the shared index
+     */
+    public static IpNodeIndex getInstance() {
+        return s_instance;
+    }
+
+    /**
+     * Adds an interface loaded from the database to a map for
+     * {@link #load(Map)}. An address on several nodes goes to the node on
+     * which it is the SNMP primary interface, or else to the first node it
+     * was found on.
+     *
+     * @param nodeIds the map being loaded
+     * @param addr the IP address of the interface
+     * @param nodeId the node ID of the interface
+     * @param primary whether the interface is the SNMP primary of its node
+     */
+    public static void addInterface(final Map<InetAddress, Integer> nodeIds, final InetAddress addr, final int nodeId, final boolean primary) {
+        if (primary || !nodeIds.containsKey(addr)) {
+            nodeIds.put(addr, nodeId);
+        }
+    }
+
+    /**
+     * Returns the node ID for the IP address.
+     *
+     * @param addr the IP address to look up, in its textual form
+     * @return the node ID, or -1 if the address is not known or not valid
+     */
+    public long getNodeId(final String addr) {
+        if (addr == null) {
+            return -1;
+        }
+        final long ipv4 = parseIpv4(addr);
+        if (ipv4 != -1) {
+            return m_snapshot.get(0L, IPV4_MAPPED_PREFIX | ipv4);
+        }
+
+        final byte[] bytes;
+        try {
+            bytes = InetAddressUtils.toIpAddrBytes(addr);
+        } catch (final IllegalArgumentException e) {
+            return -1;
+        }
+        return bytes == null ? -1 : m_snapshot.get(high(bytes), low(bytes));
+    }
+
+    /**
+     * Returns the node ID for the IP address.
+     *
+     * @param addr the IP address to look up
+     * @return the node ID, or -1 if the address is not known
+     */
+    public long getNodeId(final InetAddress addr) {
+        if (addr == null) {
+            return -1;
+        }
+        final byte[] bytes = addr.getAddress();
+        return m_snapshot.get(high(bytes), low(bytes));
+    }
+
+    /**
+     * Sets the node ID for the IP address.
+     *
+     * @param addr the IP address
+     * @param nodeId the node ID
+     * @return the node ID the address had before, or -1
+     */
+    public synchronized long setNodeId(final InetAddress addr, final int nodeId) {
+        if (addr == null || nodeId <= 0) {
+            return -1;
+        }
+        final byte[] bytes = addr.getAddress();
+        return update(high(bytes), low(bytes), nodeId);
+    }
+
+    /**
+     * Removes the IP address from the index.
+     *
+     * @param addr the IP address
+     * @return the node ID the address had, or -1
+     */
+    public synchronized long removeNodeId(final InetAddress addr) {
+        if (addr == null) {
+            return -1;
+        }
+        final byte[] bytes = addr.getAddress();
+        return update(high(bytes), low(bytes), REMOVED);
+    }
+
+    /**
+     * Replaces the contents of the index.
+     *
+     * @param nodeIds the node ID of each IP address
+     */
+    public synchronized void load(final Map<InetAddress, Integer> nodeIds) {
+        final Table base = new Table(nodeIds.size());
+        for (final Entry<InetAddress, Integer> entry : nodeIds.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null && entry.getValue() > 0) {
+                final byte[] bytes = entry.getKey().getAddress();
+                base.put(high(bytes), low(bytes), entry.getValue());
+            }
+        }
+        m_snapshot = new Snapshot(base, Table.EMPTY, base.getCount());
+    }
+
+    /**
+     * Replaces the contents of the index on behalf of a daemon, which keeps
+     * them from being cleared until it calls {@link #release(Object)}.
+     *
+     * @param owner the daemon's handle on the index
+     * @param nodeIds the node ID of each IP address
+     */
+    public synchronized void load(final Object owner, final Map<InetAddress, Integer> nodeIds) {
+        m_owners.add(owner);
+        load(nodeIds);
+    }
+
+    /**
+     * Gives up a daemon's claim on the contents of the index, and removes
+     * all of the IP addresses once no other daemon holds a claim.
+     *
+     * @param owner the handle passed to {@link #load(Object, Map)}
+     */
+    public synchronized void release(final Object owner) {
+        m_owners.remove(owner);
+        if (m_owners.isEmpty()) {
+            clear();
+        }
+    }
+
+    /**
+     * Removes all of the IP addresses from the index.
+     */
+    public synchronized void clear() {
+        m_snapshot = new Snapshot(Table.EMPTY, Table.EMPTY, 0);
+    }
+
+    /**
+     * <p>size</p>
+     *
+     * @return the number of IP addresses in the index
+     */
+    public int size() {
+        return m_snapshot.getSize();
+    }
+
+    private long update(final long high, final long low, final int value) {
+        final Snapshot snapshot = m_snapshot;
+        final long previous = snapshot.get(high, low);
+        if (value == REMOVED && previous == -1) {
+            return -1;
+        }
+
+        int size = snapshot.getSize();
+        if (previous == -1) {
+            size++;
+        } else if (value == REMOVED) {
+            size--;
+        }
+
+        final Table overlay = snapshot.getOverlay().with(high, low, value);
+        if (overlay.getCount() > Math.max(MIN_OVERLAY_SIZE, snapshot.getBase().getCount() / 8)) {
+            m_snapshot = new Snapshot(merge(snapshot.getBase(), overlay, size), Table.EMPTY, size);
+        } else {
+            m_snapshot = new Snapshot(snapshot.getBase(), overlay, size);
+        }
+        return previous;
+    }
+
+    private static Table merge(final Table base, final Table overlay, final int size) {
+        final Table merged = new Table(size);
+        for (int i = 0; i < base.getCapacity(); i++) {
+            if (base.getValue(i) > 0 && overlay.get(base.getHigh(i), base.getLow(i)) == 0) {
+                merged.put(base.getHigh(i), base.getLow(i), base.getValue(i));
+            }
+        }
+        for (int i = 0; i < overlay.getCapacity(); i++) {
+            if (overlay.getValue(i) > 0) {
+                merged.put(overlay.getHigh(i), overlay.getLow(i), overlay.getValue(i));
+            }
+        }
+        return merged;
+    }
+
+    private static long high(final byte[] bytes) {
+        return bytes.length == 4 ? 0L : pack(bytes, 0);
+    }
+
+    private static long low(final byte[] bytes) {
+        if (bytes.length == 4) {
+            return IPV4_MAPPED_PREFIX | (pack(bytes, 0) >>> 32);
+        }
+        return pack(bytes, 8);
+    }
+
+    private static long pack(final byte[] bytes, final int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value <<= 8;
+            if (offset + i < bytes.length) {
+                value |= bytes[offset + i] & 0xff;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Parses a dotted-quad IPv4 address.
+     *
+     * @return the address as an unsigned 32-bit value, or -1 if the string
+     *         is not a dotted-quad IPv4 address
+     */
+    static long parseIpv4(final String addr) {
+        final int length = addr.length();
+        if (length < 7 || length > 15) {
+            return -1;
+        }
+
+        long value = 0;
+        int octet = -1;
+        int dots = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = addr.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = (octet == -1 ? 0 : octet * 10) + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && octet != -1 && dots < 3) {
+                value = (value << 8) | octet;
+                octet = -1;
+                dots++;
+            } else {
+                return -1;
+            }
+        }
+        if (dots != 3 || octet == -1) {
+            return -1;
+        }
+        return (value << 8) | octet;
+    }
+
+    private static final class Snapshot {
+        private final Table m_base;
+        private final Table m_overlay;
+        private final int m_size;
+
+        public Snapshot(final Table base, final Table overlay, final int size) {
+            m_base = base;
+            m_overlay = overlay;
+            m_size = size;
+        }
+
+        public long get(final long high, final long low) {
+            int value = m_overlay.get(high, low);
+            if (value == 0) {
+                value = m_base.get(high, low);
+            }
+            return value > 0 ? value : -1;
+        }
+
+        public Table getBase() {
+            return m_base;
+        }
+
+        public Table getOverlay() {
+            return m_overlay;
+        }
+
+        public int getSize() {
+            return m_size;
+        }
+    }
+
+    /**
+     * Open-addressed table with linear probing. Each slot takes three longs
+     * (the two halves of the address and the value) so a probe usually
+     * touches a single cache line. A value of 0 marks an empty slot. Tables
+     * are only modified while they are being built.
+     */
+    private static final class Table {
+        static final Table EMPTY = new Table(0);
+
+        private final long[] m_slots;
+        private final int m_mask;
+        private int m_count = 0;
+
+        public Table(final int expected) {
+            int capacity = 4;
+            while (capacity < expected * 2) {
+                capacity <<= 1;
+            }
+            m_slots = new long[capacity * 3];
+            m_mask = capacity - 1;
+        }
+
+        public int getCount() {
+            return m_count;
+        }
+
+        public int getCapacity() {
+            return m_mask + 1;
+        }
+
+        public long getHigh(final int slot) {
+            return m_slots[slot * 3];
+        }
+
+        public long getLow(final int slot) {
+            return m_slots[slot * 3 + 1];
+        }
+
+        public int getValue(final int slot) {
+            return (int) m_slots[slot * 3 + 2];
+        }
+
+        public int get(final long high, final long low) {
+            int i = hash(high, low) & m_mask;
+            int value;
+            while ((value = (int) m_slots[i * 3 + 2]) != 0) {
+                if (m_slots[i * 3 + 1] == low && m_slots[i * 3] == high) {
+                    return value;
+                }
+                i = (i + 1) & m_mask;
+            }
+            return 0;
+        }
+
+        public void put(final long high, final long low, final int value) {
+            int i = hash(high, low) & m_mask;
+            while (m_slots[i * 3 + 2] != 0) {
+                if (m_slots[i * 3 + 1] == low && m_slots[i * 3] == high) {
+                    m_slots[i * 3 + 2] = value;
+                    return;
+                }
+                i = (i + 1) & m_mask;
+            }
+            m_slots[i * 3] = high;
+            m_slots[i * 3 + 1] = low;
+            m_slots[i * 3 + 2] = value;
+            m_count++;
+        }
+
+        /**
+         * @return a copy of this table with the value set
+         */
+        public Table with(final long high, final long low, final int value) {
+            final Table copy = new Table(m_count + 1);
+            for (int i = 0; i < getCapacity(); i++) {
+                if (getValue(i) != 0) {
+                    copy.put(getHigh(i), getLow(i), getValue(i));
+                }
+            }
+            copy.put(high, low, value);
+            return copy;
+        }
+
+        private static int hash(final long high, final long low) {
+            long h = (high * 0x9e3779b97f4a7c15L) ^ low;
+            h *= 0xc2b2ae3d27d4eb4fL;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -52,9 +52,10 @@ import org.opennms.netmgt.daemon.AbstractServiceDaemon;
 import org.opennms.netmgt.model.events.EventBuilder;
 import org.opennms.netmgt.model.events.EventIpcManager;
 import org.opennms.netmgt.model.events.EventListener;
-import org.opennms.netmgt.scheduler.LegacyScheduler;
+import org.opennms.netmgt.scheduler.PooledScheduler;
 import org.opennms.netmgt.scheduler.Schedule;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.scheduler.SchedulerFactory;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.netmgt.xml.event.Parm;
 import org.slf4j.Logger;
@@ -80,7 +81,7 @@ public class Vacuumd extends AbstractServiceDaemon implements Runnable, EventLis
 
     private volatile boolean m_stopped = false;
 
-    private volatile LegacyScheduler m_scheduler;
+    private volatile PooledScheduler m_scheduler;
 
     private volatile EventIpcManager m_eventMgr;
 
@@ -296,7 +297,7 @@ public class Vacuumd extends AbstractServiceDaemon implements Runnable, EventLis
     private void createScheduler() {
         try {
             LOG.debug("init: Creating Vacuumd scheduler");
-            m_scheduler = new LegacyScheduler("Vacuumd", 2);
+            m_scheduler = SchedulerFactory.createScheduler("Vacuumd", 2);
         } catch (RuntimeException e) {
             LOG.error("init: Failed to create Vacuumd scheduler", e);
             throw e;
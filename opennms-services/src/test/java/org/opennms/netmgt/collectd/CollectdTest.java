@@ -49,7 +49,9 @@ import junit.framework.TestCase;
 import org.easymock.EasyMock;
 import org.opennms.core.test.ConfigurationTestUtils;
 import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.collection.api.AsyncServiceCollector;
 import org.opennms.netmgt.collection.api.CollectionAgent;
+import org.opennms.netmgt.collection.api.CollectionCallback;
 import org.opennms.netmgt.collection.api.CollectionException;
 import org.opennms.netmgt.collection.api.CollectionInitializationException;
 import org.opennms.netmgt.collection.api.CollectionSet;
@@ -78,9 +80,11 @@ import org.opennms.netmgt.model.events.EventIpcManagerFactory;
 import org.opennms.netmgt.model.events.EventListener;
 import org.opennms.netmgt.model.events.EventProxy;
 import org.opennms.netmgt.poller.mock.MockScheduler;
+import org.opennms.netmgt.poller.mock.MockTimer;
 import org.opennms.netmgt.rrd.RrdRepository;
 import org.opennms.netmgt.scheduler.ReadyRunnable;
 import org.opennms.netmgt.scheduler.Scheduler;
+import org.opennms.netmgt.xml.event.Event;
 import org.opennms.test.mock.EasyMockUtils;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
@@ -97,6 +101,7 @@ public class CollectdTest extends TestCase {
     private IpInterfaceDao m_ipIfDao;
     private FilterDao m_filterDao;
     private Collectd m_collectd;
+    private MockTimer m_timer;
     private MockScheduler m_scheduler;
     private CollectdConfiguration m_collectdConfig;
     private CollectdConfigFactory m_collectdConfigFactory;
@@ -117,7 +122,8 @@ public class CollectdTest extends TestCase {
         EventIpcManagerFactory.setIpcManager(m_eventIpcManager);
         m_nodeDao = m_easyMockUtils.createMock(NodeDao.class);
         m_ipIfDao = m_easyMockUtils.createMock(IpInterfaceDao.class);
-        m_scheduler = new MockScheduler();
+        m_timer = new MockTimer();
+        m_scheduler = new MockScheduler(m_timer);
 
         m_eventIpcManager.addEventListener(isA(EventListener.class));
         expectLastCall().anyTimes();
@@ -345,6 +351,157 @@ public class CollectdTest extends TestCase {
         m_easyMockUtils.verifyAll();
     }
 
+    public void testAsyncCollection() throws Exception {
+        OnmsIpInterface iface = getInterface();
+
+        setupCollector("SNMP", true);
+        setupInterface(iface);
+        setupTransactionManager();
+
+        expect(m_collectdConfig.getPackages()).andReturn(Collections.singletonList(getCollectionPackageThatMatchesSNMP()));
+        expect(m_collectdConfigFactory.interfaceInPackage(iface, getCollectionPackageThatMatchesSNMP())).andReturn(true);
+
+        m_easyMockUtils.replayAll();
+
+        System.setProperty("org.opennms.netmgt.collectd.async", "true");
+        try {
+            m_collectd.afterPropertiesSet();
+            m_collectd.start();
+
+            // schedule the interface, then start collecting
+            m_scheduler.next();
+            m_scheduler.next();
+
+            // nothing is rescheduled while waiting for the agent
+            assertEquals("scheduler entry count", 0, m_scheduler.getEntryCount());
+            assertEquals("pending collections", 1, m_collectd.getStatistics().getPendingCollections());
+            assertNotNull(MockServiceCollector.getCallback());
+
+            // the completion is queued on the scheduler...
+            MockServiceCollector.getCallback().collectionSucceeded(MockServiceCollector.createCollectionSet());
+            assertEquals("scheduler entry count", 1, m_scheduler.getEntryCount());
+
+            // ...which persists the results and reschedules the service
+            m_scheduler.next();
+            assertEquals("scheduler entry count", 1, m_scheduler.getEntryCount());
+            assertEquals("pending collections", 0, m_collectd.getStatistics().getPendingCollections());
+            assertEquals("collections started", 1, m_collectd.getStatistics().getCollectionsStarted());
+
+            m_collectd.stop();
+        } finally {
+            System.clearProperty("org.opennms.netmgt.collectd.async");
+        }
+
+        m_easyMockUtils.verifyAll();
+    }
+
+    public void testAsyncCollectionIsRescheduledOnce() throws Exception {
+        OnmsIpInterface iface = getInterface();
+
+        setupCollector("SNMP", true);
+        setupInterface(iface);
+        setupTransactionManager();
+
+        expect(m_collectdConfig.getPackages()).andReturn(Collections.singletonList(getCollectionPackageThatMatchesSNMP()));
+        expect(m_collectdConfigFactory.interfaceInPackage(iface, getCollectionPackageThatMatchesSNMP())).andReturn(true);
+        // the broken collection set below fails the service
+        EventIpcManagerFactory.getIpcManager().sendNow(isA(Event.class));
+        expectLastCall().anyTimes();
+
+        m_easyMockUtils.replayAll();
+
+        System.setProperty("org.opennms.netmgt.collectd.async", "true");
+        try {
+            m_collectd.afterPropertiesSet();
+            m_collectd.start();
+
+            // schedule the interface, then start collecting
+            m_scheduler.next();
+            m_scheduler.next();
+
+            // a collector that reports a failure after succeeding only completes once
+            MockServiceCollector.getCallback().collectionSucceeded(MockServiceCollector.createCollectionSet());
+            MockServiceCollector.getCallback().collectionFailed(new CollectionException("too late"));
+            assertEquals("scheduler entry count", 1, m_scheduler.getEntryCount());
+            m_scheduler.next();
+            assertEquals("scheduler entry count", 1, m_scheduler.getEntryCount());
+
+            // results that blow up while being processed still get the service rescheduled
+            m_scheduler.next();
+            MockServiceCollector.getCallback().collectionSucceeded(new AbstractCollectionSet() {
+                @Override
+                public int getStatus() {
+                    return ServiceCollector.COLLECTION_SUCCEEDED;
+                }
+
+                @Override
+                public void visit(CollectionSetVisitor visitor) {
+                    throw new IllegalStateException("broken collection set");
+                }
+
+                @Override
+                public Date getCollectionTimestamp() {
+                    return new Date();
+                }
+            });
+            m_scheduler.next();
+            assertEquals("scheduler entry count", 1, m_scheduler.getEntryCount());
+            assertEquals("pending collections", 0, m_collectd.getStatistics().getPendingCollections());
+            assertEquals("collections started", 2, m_collectd.getStatistics().getCollectionsStarted());
+
+            m_collectd.stop();
+        } finally {
+            System.clearProperty("org.opennms.netmgt.collectd.async");
+        }
+
+        m_easyMockUtils.verifyAll();
+    }
+
+    public void testSlowCollectionIsNotLate() throws Exception {
+        OnmsIpInterface iface = getInterface();
+        Package pkg = getCollectionPackageThatMatchesSNMP();
+        pkg.getService("SNMP").setInterval(300000L);
+
+        setupCollector("SNMP", true);
+        setupInterface(iface);
+        setupTransactionManager();
+
+        expect(m_collectdConfig.getPackages()).andReturn(Collections.singletonList(pkg));
+        expect(m_collectdConfigFactory.interfaceInPackage(iface, pkg)).andReturn(true);
+
+        m_easyMockUtils.replayAll();
+
+        System.setProperty("org.opennms.netmgt.collectd.async", "true");
+        try {
+            m_collectd.afterPropertiesSet();
+            m_collectd.start();
+
+            // schedule the interface, then start collecting
+            m_scheduler.next();
+            m_scheduler.next();
+
+            // the agent takes most of the interval to respond
+            m_timer.setCurrentTime(m_timer.getCurrentTime() + 240000L);
+            MockServiceCollector.getCallback().collectionSucceeded(MockServiceCollector.createCollectionSet());
+            m_scheduler.next();
+
+            // the next collection starts a full interval after the last one completed
+            assertEquals(540000L, m_scheduler.getNextTime());
+            m_scheduler.next();
+
+            assertEquals("collections started", 2, m_collectd.getStatistics().getCollectionsStarted());
+            assertEquals("collections late", 0, m_collectd.getStatistics().getCollectionsLate());
+            assertEquals("intervals missed", 0, m_collectd.getStatistics().getIntervalsMissed());
+            assertEquals("max lateness", 0, m_collectd.getStatistics().getMaxLateness());
+
+            m_collectd.stop();
+        } finally {
+            System.clearProperty("org.opennms.netmgt.collectd.async");
+        }
+
+        m_easyMockUtils.verifyAll();
+    }
+
     @SuppressWarnings("unchecked")
     private static <K> Collection<K> isACollection(Class<K> innerClass) {
         return isA(Collection.class);
@@ -398,8 +555,9 @@ public class CollectdTest extends TestCase {
     }
 
     
-    public static class MockServiceCollector implements ServiceCollector {
+    public static class MockServiceCollector implements AsyncServiceCollector {
         private static ServiceCollector s_delegate;
+        private static CollectionCallback s_callback;
 
         public MockServiceCollector() {
             
@@ -409,8 +567,21 @@ public class CollectdTest extends TestCase {
             s_delegate = delegate;
         }
         
+        public static CollectionCallback getCallback() {
+            return s_callback;
+        }
+
         @Override
         public CollectionSet collect(CollectionAgent agent, EventProxy eproxy, Map<String, Object> parameters) throws CollectionException {
+            return createCollectionSet();
+        }
+
+        @Override
+        public void collect(CollectionAgent agent, EventProxy eproxy, Map<String, Object> parameters, CollectionCallback callback) {
+            s_callback = callback;
+        }
+
+        public static CollectionSet createCollectionSet() {
             return new AbstractCollectionSet() {
                 private Date m_timestamp = new Date();
                 @Override
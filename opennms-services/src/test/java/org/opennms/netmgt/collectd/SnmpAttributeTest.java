@@ -29,11 +29,14 @@
 package org.opennms.netmgt.collectd;
 
 import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.aryEq;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.isA;
 import static org.easymock.EasyMock.isNull;
 import static org.easymock.EasyMock.matches;
 
+import java.math.BigInteger;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -110,7 +113,16 @@ public class SnmpAttributeTest extends TestCase {
     }
 
     public void testHexStringProtoCounter64ValueNear2_63() throws Exception {
-        testPersisting("9223372036854775000", new Snmp4JValueFactory().getOctetString(new byte[]{ 0x7f, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xfc, (byte)0xd8 }));
+        testPersisting("9223372036854775000", new Snmp4JValueFactory().getOctetString(new byte[]{ 0x7f, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xfc, (byte)0xd8 }), true);
+    }
+
+    public void testCounter64ValueAbove2_53() throws Exception {
+        // 2^53 + 1 is the first whole number a double can't hold
+        testPersisting("9007199254740993", new Snmp4JValueFactory().getCounter64(new BigInteger("9007199254740993")), true);
+    }
+
+    public void testCounter64ValueAbove2_63() throws Exception {
+        testPersisting("18446744073709551615", new Snmp4JValueFactory().getCounter64(new BigInteger("18446744073709551615")), true);
     }
 
     public void testNumericAttributeHexStringValueInString() throws Exception {
@@ -119,8 +131,16 @@ public class SnmpAttributeTest extends TestCase {
         testPersisting(stringValue, new Snmp4JValueFactory().getOctetString(bytes));
     }
 
-    @SuppressWarnings("unchecked")
     private void testPersisting(String matchValue, SnmpValue snmpValue) throws Exception {
+        testPersisting(matchValue, snmpValue, false);
+    }
+
+    /**
+     * @param exact whether the value must reach the strategy digit for digit,
+     * which only the string update can do for whole numbers beyond 2^53
+     */
+    @SuppressWarnings("unchecked")
+    private void testPersisting(String matchValue, SnmpValue snmpValue, boolean exact) throws Exception {
         OnmsNode node = new OnmsNode();
         node.setId(3);
 
@@ -137,7 +157,11 @@ public class SnmpAttributeTest extends TestCase {
         m_rrdStrategy.createFile(isA(Object.class), (Map<String, String>) isNull());
 
         expect(m_rrdStrategy.openFile(isA(String.class))).andReturn(new Object());
-        m_rrdStrategy.updateFile(isA(Object.class), isA(String.class), matches(".*:" + matchValue));
+        if (exact) {
+            m_rrdStrategy.updateFile(isA(Object.class), isA(String.class), matches("\\d+:" + matchValue));
+        } else {
+            m_rrdStrategy.updateFile(isA(Object.class), isA(String.class), anyLong(), aryEq(new double[] { Double.parseDouble(matchValue) }));
+        }
         m_rrdStrategy.closeFile(isA(Object.class));
 
         m_mocks.replayAll();
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.discovery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.icmp.EchoPacket;
+import org.opennms.netmgt.icmp.PingResponseCallback;
+import org.opennms.netmgt.icmp.Pinger;
+import org.opennms.netmgt.model.discovery.IPPollAddress;
+
+public class PingSweepTest {
+
+    /**
+     * Remembers each request and answers it with a timeout once
+     * {@link #answer(int)} is called.
+     */
+    private static class FakePinger implements Pinger {
+        private final BlockingQueue<InetAddress> m_pinged = new LinkedBlockingQueue<InetAddress>();
+        private final BlockingQueue<PingResponseCallback> m_pending = new LinkedBlockingQueue<PingResponseCallback>();
+        private final boolean m_answerAtOnce;
+
+        FakePinger(final boolean answerAtOnce) {
+            m_answerAtOnce = answerAtOnce;
+        }
+
+        @Override
+        public void ping(final InetAddress host, final long timeout, final int retries, final int sequenceId, final PingResponseCallback cb) {
+            m_pinged.add(host);
+            if (m_answerAtOnce) {
+                cb.handleTimeout(host, null);
+            } else {
+                m_pending.add(cb);
+            }
+        }
+
+        void answer(final int count) {
+            for (int i = 0; i < count; i++) {
+                m_pending.remove().handleTimeout(null, null);
+            }
+        }
+
+        @Override
+        public void ping(final InetAddress host, final long timeout, final int retries, final int packetsize, final int sequenceId, final PingResponseCallback cb) {
+            ping(host, timeout, retries, sequenceId, cb);
+        }
+
+        @Override
+        public Number ping(final InetAddress host, final long timeout, final int retries, final int packetsize) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Number ping(final InetAddress host, final long timeout, final int retries) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Number ping(final InetAddress host) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Number> parallelPing(final InetAddress host, final int count, final long timeout, final long pingInterval) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void initialize4() {
+        }
+
+        @Override
+        public void initialize6() {
+        }
+
+        @Override
+        public boolean isV4Available() {
+            return true;
+        }
+
+        @Override
+        public boolean isV6Available() {
+            return false;
+        }
+    }
+
+    private static final PingResponseCallback NOOP = new PingResponseCallback() {
+        @Override
+        public void handleResponse(final InetAddress address, final EchoPacket response) {
+        }
+
+        @Override
+        public void handleTimeout(final InetAddress address, final EchoPacket request) {
+        }
+
+        @Override
+        public void handleError(final InetAddress address, final EchoPacket request, final Throwable t) {
+        }
+    };
+
+    private static List<IPPollAddress> addresses(final String prefix, final int count) {
+        final List<IPPollAddress> addresses = new ArrayList<IPPollAddress>();
+        for (int i = 1; i <= count; i++) {
+            addresses.add(new IPPollAddress(InetAddressUtils.addr(prefix + i), 800, 0));
+        }
+        return addresses;
+    }
+
+    @Test
+    public void testSkipsManagedAddresses() {
+        final InetAddressBitmap managed = new InetAddressBitmap();
+        managed.add(InetAddressUtils.addr("10.0.0.5"));
+        managed.add(InetAddressUtils.addr("10.0.0.7"));
+
+        final FakePinger pinger = new FakePinger(true);
+        final PingSweep sweep = new PingSweep(pinger, NOOP, new AtomicReference<InetAddressBitmap>(managed), 10000, 16, 10);
+        sweep.run(addresses("10.0.0.", 10));
+
+        assertEquals(10, sweep.getAddressesSwept());
+        assertEquals(2, sweep.getAddressesSkipped());
+        assertEquals(8, sweep.getPingsSent());
+        assertEquals(8, sweep.getTimeouts());
+        assertEquals(0, sweep.getOutstanding());
+        assertEquals(100, sweep.getProgress());
+        assertFalse(pinger.m_pinged.contains(InetAddressUtils.addr("10.0.0.5")));
+        assertFalse(pinger.m_pinged.contains(InetAddressUtils.addr("10.0.0.7")));
+    }
+
+    @Test
+    public void testSeesReplacedManagedAddresses() {
+        final InetAddressBitmap synced = new InetAddressBitmap();
+        for (int i = 5; i <= 10; i++) {
+            synced.add(InetAddressUtils.addr("10.0.3." + i));
+        }
+        final AtomicReference<InetAddressBitmap> managed = new AtomicReference<InetAddressBitmap>(new InetAddressBitmap());
+
+        // the managed addresses are synced while the fourth address is pinged
+        final FakePinger pinger = new FakePinger(true);
+        final PingSweep sweep = new PingSweep(pinger, new PingResponseCallback() {
+            @Override
+            public void handleResponse(final InetAddress address, final EchoPacket response) {
+            }
+
+            @Override
+            public void handleTimeout(final InetAddress address, final EchoPacket request) {
+                if (InetAddressUtils.addr("10.0.3.4").equals(address)) {
+                    managed.set(synced);
+                }
+            }
+
+            @Override
+            public void handleError(final InetAddress address, final EchoPacket request, final Throwable t) {
+            }
+        }, managed, 10000, 16, 10);
+        sweep.run(addresses("10.0.3.", 10));
+
+        assertEquals(4, sweep.getPingsSent());
+        assertEquals(6, sweep.getAddressesSkipped());
+    }
+
+    @Test(timeout=10000)
+    public void testWindowIsBounded() throws Exception {
+        final FakePinger pinger = new FakePinger(false);
+        final PingSweep sweep = new PingSweep(pinger, NOOP, new AtomicReference<InetAddressBitmap>(new InetAddressBitmap()), 10000, 4, 20);
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                sweep.run(addresses("10.0.1.", 20));
+            }
+        };
+        thread.start();
+
+        for (int i = 0; i < 4; i++) {
+            pinger.m_pinged.take();
+        }
+        assertEquals(null, pinger.m_pinged.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(4, sweep.getOutstanding());
+
+        pinger.answer(2);
+        pinger.m_pinged.take();
+        pinger.m_pinged.take();
+        assertEquals(null, pinger.m_pinged.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(6, sweep.getPingsSent());
+        // the seventh address waits for a free slot
+        assertEquals(35, sweep.getProgress());
+
+        sweep.cancel();
+        thread.join();
+        assertEquals(6, sweep.getPingsSent());
+    }
+
+    @Test
+    public void testRate() {
+        final FakePinger pinger = new FakePinger(true);
+        // a burst of 20 then 80 more at 200 per second
+        final PingSweep sweep = new PingSweep(pinger, NOOP, new AtomicReference<InetAddressBitmap>(new InetAddressBitmap()), 200, 16, 100);
+        final long start = System.nanoTime();
+        sweep.run(addresses("10.0.2.", 100));
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(100, sweep.getPingsSent());
+        assertTrue("sweep took " + elapsed + "ms", elapsed >= 380);
+        assertTrue("rate was " + sweep.getRate(), sweep.getRate() <= 260);
+    }
+
+    @Test
+    public void testBitmap() {
+        final InetAddressBitmap bitmap = new InetAddressBitmap();
+        assertTrue(bitmap.add(InetAddressUtils.addr("192.168.1.1")));
+        assertFalse(bitmap.add(InetAddressUtils.addr("192.168.1.1")));
+        assertTrue(bitmap.add(InetAddressUtils.addr("255.255.255.255")));
+        assertTrue(bitmap.add(InetAddressUtils.addr("0.0.0.0")));
+        assertTrue(bitmap.add(InetAddressUtils.addr("fe80::1")));
+        assertEquals(4, bitmap.size());
+        assertFalse(bitmap.add(null));
+        assertFalse(bitmap.contains(null));
+        assertFalse(bitmap.remove(null));
+
+        assertTrue(bitmap.contains(InetAddressUtils.addr("192.168.1.1")));
+        assertFalse(bitmap.contains(InetAddressUtils.addr("192.168.1.2")));
+        assertFalse(bitmap.contains(InetAddressUtils.addr("192.169.1.1")));
+        assertTrue(bitmap.contains(InetAddressUtils.addr("255.255.255.255")));
+        assertTrue(bitmap.contains(InetAddressUtils.addr("fe80::1")));
+
+        assertTrue(bitmap.remove(InetAddressUtils.addr("192.168.1.1")));
+        assertFalse(bitmap.remove(InetAddressUtils.addr("192.168.1.1")));
+        assertFalse(bitmap.remove(InetAddressUtils.addr("10.1.1.1")));
+        assertTrue(bitmap.remove(InetAddressUtils.addr("fe80::1")));
+        assertFalse(bitmap.contains(InetAddressUtils.addr("192.168.1.1")));
+        assertEquals(2, bitmap.size());
+    }
+}
@@ -29,6 +29,14 @@
 package org.opennms.netmgt.eventd.processor;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.opennms.core.test.db.PopulatedTemporaryDatabaseTestCase;
 import org.opennms.netmgt.EventConstants;
@@ -46,20 +54,38 @@ import org.opennms.netmgt.xml.event.Event;
 @SuppressWarnings("deprecation")
 public class JdbcEventWriterTest extends PopulatedTemporaryDatabaseTestCase {
     private JdbcEventWriter m_jdbcEventWriter;
+    private JdbcEventdServiceManager m_eventdServiceManager;
 
     @Override
     protected void setUp() throws Exception {
         super.setUp();
         
-        JdbcEventdServiceManager eventdServiceManager = new JdbcEventdServiceManager();
-        eventdServiceManager.setDataSource(getDataSource());
-        eventdServiceManager.afterPropertiesSet();
+        m_eventdServiceManager = new JdbcEventdServiceManager();
+        m_eventdServiceManager.setDataSource(getDataSource());
+        m_eventdServiceManager.afterPropertiesSet();
         
-        m_jdbcEventWriter = new JdbcEventWriter();
-        m_jdbcEventWriter.setEventdServiceManager(eventdServiceManager);
-        m_jdbcEventWriter.setDataSource(getDataSource());
-        m_jdbcEventWriter.setGetNextIdString("SELECT nextval('eventsNxtId')");
-        m_jdbcEventWriter.afterPropertiesSet();
+        m_jdbcEventWriter = createEventWriter(0);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        m_jdbcEventWriter.destroy();
+        super.tearDown();
+    }
+
+    private JdbcEventWriter createEventWriter(final int batchSize) throws SQLException {
+        return createEventWriter(batchSize, 0);
+    }
+
+    private JdbcEventWriter createEventWriter(final int batchSize, final long flushInterval) throws SQLException {
+        final JdbcEventWriter writer = new JdbcEventWriter();
+        writer.setEventdServiceManager(m_eventdServiceManager);
+        writer.setDataSource(getDataSource());
+        writer.setGetNextIdString("SELECT nextval('eventsNxtId')");
+        writer.setBatchSize(batchSize);
+        writer.setBatchFlushInterval(flushInterval);
+        writer.afterPropertiesSet();
+        return writer;
     }
 
     /**
@@ -215,4 +241,109 @@ public class JdbcEventWriterTest extends PopulatedTemporaryDatabaseTestCase {
         assertEquals("event count", 1, getJdbcTemplate().queryForInt("select count(*) from events"));
         assertEquals("event service ID", serviceId, getJdbcTemplate().queryForInt("select serviceID from events"));
     }
+
+    public void testBatchedWritesFromManyThreads() throws Exception {
+        m_jdbcEventWriter.destroy();
+        m_jdbcEventWriter = createEventWriter(50);
+
+        final List<Event> events = writeEvents(m_jdbcEventWriter, 8, 100);
+
+        final Set<Integer> dbids = new HashSet<Integer>();
+        for (final Event event : events) {
+            assertNotNull("every event should have been assigned a database ID", event.getDbid());
+            dbids.add(event.getDbid());
+        }
+        assertEquals("database IDs should be unique", events.size(), dbids.size());
+        assertEquals("event count", events.size(), getJdbcTemplate().queryForInt("select count(*) from events"));
+
+        final JdbcEventBatcher.Statistics stats = m_jdbcEventWriter.getBatchStatistics();
+        assertEquals("events written in batches", events.size(), stats.getEventsWritten());
+        assertTrue("events should have been coalesced into fewer batches", stats.getBatchesWritten() < events.size());
+        assertTrue("largest batch must not exceed the batch size", stats.getLargestBatchSize() <= 50);
+    }
+
+    public void testBatchedWriteSingleEvent() throws Exception {
+        m_jdbcEventWriter.destroy();
+        m_jdbcEventWriter = createEventWriter(50);
+
+        EventBuilder bldr = new EventBuilder("testUei", "testSource");
+        bldr.setLogDest("logndisplay");
+        m_jdbcEventWriter.process(null, bldr.getEvent());
+
+        assertEquals("event count", 1, getJdbcTemplate().queryForInt("select count(*) from events"));
+        assertEquals("batches written", 1, m_jdbcEventWriter.getBatchStatistics().getBatchesWritten());
+    }
+
+    public void testBatchedWriteSingleEventIsNotHeldOpen() throws Exception {
+        m_jdbcEventWriter.destroy();
+        m_jdbcEventWriter = createEventWriter(50, 10000);
+
+        EventBuilder bldr = new EventBuilder("testUei", "testSource");
+        bldr.setLogDest("logndisplay");
+        final long start = System.currentTimeMillis();
+        m_jdbcEventWriter.process(null, bldr.getEvent());
+        final long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals("event count", 1, getJdbcTemplate().queryForInt("select count(*) from events"));
+        assertTrue("a lone event should not wait for the flush interval, but took " + elapsed + "ms", elapsed < 5000);
+    }
+
+    /**
+     * Compares the sustained write rate of the single-event writer with the
+     * batching writer using the same number of handler threads.
+     */
+    public void testBatchedWriterThroughput() throws Exception {
+        final int threads = 10;
+        final int eventsPerThread = 200;
+
+        long start = System.currentTimeMillis();
+        writeEvents(m_jdbcEventWriter, threads, eventsPerThread);
+        final long singleElapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        m_jdbcEventWriter.destroy();
+        m_jdbcEventWriter = createEventWriter(100);
+
+        start = System.currentTimeMillis();
+        writeEvents(m_jdbcEventWriter, threads, eventsPerThread);
+        final long batchElapsed = Math.max(1, System.currentTimeMillis() - start);
+
+        final int total = threads * eventsPerThread;
+        System.err.printf("single-event writer: %d events/sec, batching writer: %d events/sec (average batch size %.1f)%n",
+                          total * 1000L / singleElapsed, total * 1000L / batchElapsed,
+                          m_jdbcEventWriter.getBatchStatistics().getAverageBatchSize());
+
+        assertEquals("event count", 2 * total, getJdbcTemplate().queryForInt("select count(*) from events"));
+    }
+
+    private List<Event> writeEvents(final JdbcEventWriter writer, final int threads, final int eventsPerThread) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<List<Event>>> futures = new ArrayList<Future<List<Event>>>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(new Callable<List<Event>>() {
+                    @Override
+                    public List<Event> call() throws Exception {
+                        final List<Event> written = new ArrayList<Event>();
+                        for (int j = 0; j < eventsPerThread; j++) {
+                            final EventBuilder bldr = new EventBuilder("testUei", "testSource");
+                            bldr.setLogDest("logndisplay");
+                            bldr.addParam("sequence", j);
+                            final Event event = bldr.getEvent();
+                            writer.process(null, event);
+                            written.add(event);
+                        }
+                        return written;
+                    }
+                }));
+            }
+
+            final List<Event> events = new ArrayList<Event>();
+            for (final Future<List<Event>> future : futures) {
+                events.addAll(future.get());
+            }
+            return events;
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
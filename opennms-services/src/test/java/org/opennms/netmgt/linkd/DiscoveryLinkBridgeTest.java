@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.linkd;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.model.events.EventForwarder;
+import org.opennms.netmgt.xml.event.Event;
+import org.opennms.netmgt.xml.event.Log;
+
+/**
+ * Runs bridge discovery on synthetic layer 2 networks: trees of switches,
+ * each with hosts on its access ports, in one or more broadcast domains.
+ */
+public class DiscoveryLinkBridgeTest {
+
+    private static final String PACKAGE = "synthetic";
+
+    /**
+     * A Linkd that serves the synthetic nodes and keeps the links found.
+     */
+    private static class SyntheticLinkd extends Linkd {
+        private final List<LinkableNode> m_syntheticNodes = new ArrayList<LinkableNode>();
+        private final Map<String, List<AtInterface>> m_atInterfaces = new HashMap<String, List<AtInterface>>();
+        private NodeToNodeLink[] m_links;
+
+        @Override
+        public Collection<LinkableNode> getLinkableNodesOnPackage(String pkg) {
+            return m_syntheticNodes;
+        }
+
+        @Override
+        public List<AtInterface> getAtInterfaces(String packageName, String macAddress) {
+            final List<AtInterface> ats = m_atInterfaces.get(macAddress);
+            return ats == null ? Collections.<AtInterface>emptyList() : ats;
+        }
+
+        @Override
+        public EventForwarder getEventForwarder() {
+            return new EventForwarder() {
+                @Override
+                public void sendNow(Event event) {
+                }
+
+                @Override
+                public void sendNow(Log eventLog) {
+                }
+            };
+        }
+
+        @Override
+        void updateDiscoveryLinkCollection(DiscoveryLink discover) {
+            m_links = discover.getLinks();
+        }
+    }
+
+    private SyntheticLinkd m_linkd;
+
+    private int m_nextNodeId = 1;
+
+    private long m_nextMac = 0x001122000000L;
+
+    @Before
+    public void setUp() {
+        MockLogAppender.setupLogging(true, "WARN");
+        m_linkd = new SyntheticLinkd();
+    }
+
+    private String nextMac() {
+        return String.format("%012x", m_nextMac++);
+    }
+
+    /**
+     * Builds a tree of switches with the given depth and fan-out. Port 1
+     * of every switch but the root is its uplink, ports 2 to fanOut + 1
+     * lead to its child switches and the following ports have one host each.
+     *
+     * @return the links expected from bridge discovery, as strings
+     */
+    private Set<String> buildDomain(int depth, int fanOut, int hostsPerSwitch) throws Exception {
+        final Set<String> expected = new HashSet<String>();
+        buildSwitch(null, 0, depth, fanOut, hostsPerSwitch, expected);
+        return expected;
+    }
+
+    /**
+     * @return every MAC address found below the switch, its own included
+     */
+    private Set<String> buildSwitch(LinkableNode parent, int parentPort, int depth, int fanOut, int hostsPerSwitch, Set<String> expected) throws Exception {
+        final int nodeId = m_nextNodeId++;
+        final LinkableNode node = new LinkableNode(new LinkableSnmpNode(nodeId, InetAddress.getByName("10.0.0.1"), ".1.3.6.1.4.1.9", "switch" + nodeId), PACKAGE);
+        final String bridgeMac = nextMac();
+        node.addBridgeIdentifier(bridgeMac, 1);
+        node.setMacIdentifiers(new HashMap<Integer, String>());
+        node.getMacIdentifiers().put(1, bridgeMac);
+        m_linkd.m_syntheticNodes.add(node);
+
+        final Set<String> below = new HashSet<String>();
+        below.add(bridgeMac);
+        for (int i = 0; i < fanOut && depth > 0; i++) {
+            final int port = 2 + i;
+            node.setIfIndexBridgePort(port, port);
+            final Set<String> child = buildSwitch(node, port, depth - 1, fanOut, hostsPerSwitch, expected);
+            for (final String mac : child) {
+                node.addBridgeForwardingTableEntry(port, mac, 1);
+            }
+            below.addAll(child);
+        }
+        for (int i = 0; i < hostsPerSwitch; i++) {
+            final int port = 2 + fanOut + i;
+            final String hostMac = nextMac();
+            final int hostId = m_nextNodeId++;
+            final AtInterface at = new AtInterface(hostId, hostMac, InetAddress.getByName("10.1.0.1"));
+            at.setIfIndex(1);
+            m_linkd.m_atInterfaces.put(hostMac, Arrays.asList(at));
+            node.setIfIndexBridgePort(port, port);
+            node.addBridgeForwardingTableEntry(port, hostMac, 1);
+            below.add(hostMac);
+            expected.add(link(hostId, 1, nodeId, port));
+        }
+
+        if (parent != null) {
+            node.setIfIndexBridgePort(1, 1);
+            expected.add(link(nodeId, 1, parent.getNodeId(), parentPort));
+        }
+        return below;
+    }
+
+    /**
+     * Fills the uplink ports with everything that is not below them.
+     */
+    private void fillUplinks(Set<String> domainMacs, int firstNodeId) {
+        for (final LinkableNode node : m_linkd.m_syntheticNodes) {
+            if (node.getNodeId() < firstNodeId || node.getIfindexFromBridgePort(1) == -1) {
+                continue;
+            }
+            final Set<String> below = new HashSet<String>(node.getMacIdentifiers().values());
+            for (final Set<String> macs : node.getBridgeForwardingTable().values()) {
+                below.addAll(macs);
+            }
+            for (final String mac : domainMacs) {
+                if (!below.contains(mac)) {
+                    node.addBridgeForwardingTableEntry(1, mac, 1);
+                }
+            }
+        }
+    }
+
+    private Set<String> buildNetwork(int domains, int depth, int fanOut, int hostsPerSwitch) throws Exception {
+        final Set<String> expected = new HashSet<String>();
+        for (int d = 0; d < domains; d++) {
+            final int firstNodeId = m_nextNodeId;
+            final long firstMac = m_nextMac;
+            expected.addAll(buildDomain(depth, fanOut, hostsPerSwitch));
+            final Set<String> domainMacs = new HashSet<String>();
+            for (long mac = firstMac; mac < m_nextMac; mac++) {
+                domainMacs.add(String.format("%012x", mac));
+            }
+            fillUplinks(domainMacs, firstNodeId);
+        }
+        return expected;
+    }
+
+    /**
+     * Switch to switch links may be found in either direction.
+     */
+    private static String link(int nodeId, int ifIndex, int parentId, int parentIfIndex) {
+        if (nodeId < parentId) {
+            return nodeId + "/" + ifIndex + " - " + parentId + "/" + parentIfIndex;
+        }
+        return parentId + "/" + parentIfIndex + " - " + nodeId + "/" + ifIndex;
+    }
+
+    private Set<String> discover() {
+        final DiscoveryLink discovery = new DiscoveryLink();
+        discovery.setLinkd(m_linkd);
+        discovery.setPackageName(PACKAGE);
+        discovery.setDiscoveryUsingRoutes(false);
+        discovery.setDiscoveryUsingOspf(false);
+        discovery.setDiscoveryUsingIsIs(false);
+        discovery.setDiscoveryUsingWifi(false);
+        discovery.setDiscoveryUsingLldp(false);
+        discovery.setDiscoveryUsingCdp(false);
+        discovery.setDiscoveryUsingBridge(true);
+        discovery.run();
+
+        final Set<String> links = new HashSet<String>();
+        for (final NodeToNodeLink link : m_linkd.m_links) {
+            links.add(link(link.getNodeId(), link.getIfindex(), link.getNodeparentid(), link.getParentifindex()));
+        }
+        return links;
+    }
+
+    @Test
+    public void testSingleDomain() throws Exception {
+        final Set<String> expected = buildNetwork(1, 2, 2, 3);
+        final Set<String> links = discover();
+        assertEquals(expected, links);
+    }
+
+    @Test
+    public void testSeveralDomains() throws Exception {
+        final Set<String> expected = buildNetwork(4, 2, 3, 4);
+        assertEquals(expected, discover());
+    }
+
+    @Test
+    public void testSpeed() throws Exception {
+        buildNetwork(4, 3, 3, 40);
+        final long start = System.nanoTime();
+        final Set<String> links = discover();
+        System.err.printf("DiscoveryLink: found %d bridge links among %d switches in %dms%n", links.size(), m_linkd.m_syntheticNodes.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        assertEquals(4 * (40 + 3 * 40 + 9 * 40 + 27 * 40) + 4 * (3 + 9 + 27), links.size());
+    }
+}
@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.notifd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.fiber.Fiber;
+
+public class DefaultQueueHandlerTest {
+
+    private NoticeQueue m_noticeQueue;
+
+    private DefaultQueueHandler m_handler;
+
+    /**
+     * A task that only records when it ran.
+     */
+    private static class RecordingTask extends NotificationTask {
+        private final CountDownLatch m_ran = new CountDownLatch(1);
+        private volatile long m_runTime;
+
+        public RecordingTask(long sendTime) {
+            super(null, null, sendTime, new HashMap<String, String>(), null, null);
+        }
+
+        @Override
+        public void run() {
+            m_runTime = System.currentTimeMillis();
+            m_ran.countDown();
+        }
+
+        public long awaitRun() throws InterruptedException {
+            assertTrue("task did not run", m_ran.await(5, TimeUnit.SECONDS));
+            return m_runTime;
+        }
+
+        @Override
+        public String toString() {
+            return "task due at " + getSendTime();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        m_noticeQueue = new NoticeQueue();
+        m_handler = new DefaultQueueHandler();
+        m_handler.setQueueID("test");
+        m_handler.setNoticeQueue(m_noticeQueue);
+        // polling this rarely would never send anything during the test
+        m_handler.setInterval("1h");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        m_handler.stop();
+        for (int i = 0; i < 50 && m_handler.getStatus() != Fiber.STOPPED; i++) {
+            Thread.sleep(10);
+        }
+        System.clearProperty(DefaultQueueHandler.THREADS_PROPERTY);
+    }
+
+    private RecordingTask queue(long sendTime) {
+        final RecordingTask task = new RecordingTask(sendTime);
+        m_noticeQueue.putItem(sendTime, task);
+        return task;
+    }
+
+    @Test
+    public void testSendsWhenDue() throws Exception {
+        m_handler.start();
+        final long due = System.currentTimeMillis() + 300;
+        final RecordingTask task = queue(due);
+
+        final long ran = task.awaitRun();
+        assertTrue("sent " + (due - ran) + "ms early", ran >= due);
+        assertTrue("sent " + (ran - due) + "ms late", ran - due < 200);
+        assertTrue(m_noticeQueue.isEmpty());
+    }
+
+    @Test
+    public void testEarlierNoticeWakesHandler() throws Exception {
+        m_handler.start();
+        final RecordingTask later = queue(System.currentTimeMillis() + 60000);
+        Thread.sleep(100);
+
+        final long due = System.currentTimeMillis() + 100;
+        final RecordingTask earlier = queue(due);
+
+        final long ran = earlier.awaitRun();
+        assertTrue("sent " + (ran - due) + "ms late", ran - due < 200);
+        assertEquals(1, m_noticeQueue.size());
+        assertEquals(Collections.singletonList(later), m_noticeQueue.get(later.getSendTime()));
+    }
+
+    @Test
+    public void testSenderThreadsAreBounded() throws Exception {
+        System.setProperty(DefaultQueueHandler.THREADS_PROPERTY, "2");
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(6);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 6; i++) {
+            m_noticeQueue.putItem(now, new RecordingTask(now) {
+                @Override
+                public void run() {
+                    final int current = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), current));
+                    }
+                    try {
+                        Thread.sleep(50);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        m_handler.start();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void testPausedHandlerHoldsNotices() throws Exception {
+        m_handler.start();
+        Thread.sleep(100);
+        m_handler.pause();
+        final RecordingTask task = queue(System.currentTimeMillis());
+        Thread.sleep(200);
+        assertEquals(1, m_noticeQueue.size());
+
+        m_handler.resume();
+        task.awaitRun();
+    }
+
+    @Test
+    public void testStrategyLimits() throws Exception {
+        final StrategyLimiter limiter = StrategyLimiter.parse("org.opennms.netmgt.notifd.JavaMailNotificationStrategy=2, /usr/bin/qpage = 1, bogus, other=0");
+        assertEquals(2, limiter.getAvailable("org.opennms.netmgt.notifd.JavaMailNotificationStrategy"));
+        assertEquals(1, limiter.getAvailable("/usr/bin/qpage"));
+        assertEquals(-1, limiter.getAvailable("bogus"));
+        assertEquals(-1, limiter.getAvailable("other"));
+
+        final AtomicInteger releases = new AtomicInteger();
+        limiter.addReleaseListener(new Runnable() {
+            @Override
+            public void run() {
+                releases.incrementAndGet();
+            }
+        });
+
+        assertTrue(limiter.tryAcquire(Arrays.asList("/usr/bin/qpage", "unlimited")));
+        assertEquals(0, limiter.getAvailable("/usr/bin/qpage"));
+
+        // all or nothing
+        assertFalse(limiter.tryAcquire(Arrays.asList("org.opennms.netmgt.notifd.JavaMailNotificationStrategy", "/usr/bin/qpage")));
+        assertEquals(2, limiter.getAvailable("org.opennms.netmgt.notifd.JavaMailNotificationStrategy"));
+
+        limiter.release(Collections.singleton("unlimited"));
+        assertEquals(0, releases.get());
+        limiter.release(Collections.singleton("/usr/bin/qpage"));
+        assertEquals(1, releases.get());
+        assertEquals(1, limiter.getAvailable("/usr/bin/qpage"));
+    }
+
+    @Test
+    public void testBusyStrategyDoesNotBlockOthers() throws Exception {
+        System.setProperty(DefaultQueueHandler.THREADS_PROPERTY, "2");
+        final StrategyLimiter limiter = StrategyLimiter.parse("/usr/bin/qpage=1");
+        m_handler.setStrategyLimiter(limiter);
+
+        // a second queue shares the limit
+        final NoticeQueue otherQueue = new NoticeQueue();
+        final DefaultQueueHandler otherHandler = new DefaultQueueHandler();
+        otherHandler.setQueueID("other");
+        otherHandler.setNoticeQueue(otherQueue);
+        otherHandler.setInterval("1h");
+        otherHandler.setStrategyLimiter(limiter);
+
+        final CountDownLatch pagerBlocked = new CountDownLatch(1);
+        final AtomicInteger paging = new AtomicInteger();
+        final AtomicInteger maxPaging = new AtomicInteger();
+        final CountDownLatch paged = new CountDownLatch(4);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < 4; i++) {
+            final RecordingTask page = new RecordingTask(now) {
+                @Override
+                Set<String> getStrategies() {
+                    return Collections.singleton("/usr/bin/qpage");
+                }
+
+                @Override
+                public void run() {
+                    final int current = paging.incrementAndGet();
+                    synchronized (maxPaging) {
+                        maxPaging.set(Math.max(maxPaging.get(), current));
+                    }
+                    try {
+                        pagerBlocked.await(5, TimeUnit.SECONDS);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    paging.decrementAndGet();
+                    paged.countDown();
+                }
+            };
+            (i % 2 == 0 ? m_noticeQueue : otherQueue).putItem(now, page);
+        }
+        final RecordingTask mail = new RecordingTask(now) {
+            @Override
+            Set<String> getStrategies() {
+                return Collections.singleton("org.opennms.netmgt.notifd.JavaMailNotificationStrategy");
+            }
+        };
+        m_noticeQueue.putItem(now + 1, mail);
+
+        m_handler.start();
+        otherHandler.start();
+        try {
+            // the mail goes out while the pager is stuck
+            mail.awaitRun();
+            Thread.sleep(100);
+            assertEquals(1, paging.get());
+            assertEquals(3, m_handler.getBacklog() + otherHandler.getBacklog());
+
+            pagerBlocked.countDown();
+            assertTrue(paged.await(5, TimeUnit.SECONDS));
+            assertEquals(1, maxPaging.get());
+            assertEquals(1, limiter.getAvailable("/usr/bin/qpage"));
+        } finally {
+            otherHandler.stop();
+        }
+    }
+}
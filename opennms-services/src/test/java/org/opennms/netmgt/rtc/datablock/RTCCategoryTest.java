@@ -0,0 +1,273 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.rtc.datablock;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+import org.opennms.netmgt.config.categories.Category;
+
+public class RTCCategoryTest {
+    private static final String CATEGORY = "Web Servers";
+    private static final long WINDOW = 24L * 60L * 60L * 1000L;
+    private static final long NOW = 100L * WINDOW;
+
+    private RTCCategory m_category;
+
+    @Before
+    public void setUp() {
+        final Category cat = new Category();
+        cat.setLabel(CATEGORY);
+        cat.setRule("IPADDR != '0.0.0.0'");
+        cat.setNormal(99.99);
+        cat.setWarning(97);
+        m_category = new RTCCategory(cat, "IPADDR != '0.0.0.0'");
+    }
+
+    private List<RTCNode> createServices(final RTCHashMap map, final int count) {
+        final List<RTCNode> nodes = new ArrayList<RTCNode>(count);
+        for (int i = 0; i < count; i++) {
+            final InetAddress addr = InetAddressUtils.addr("10." + ((i >> 16) & 0xff) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff));
+            final RTCNode node = new RTCNode(i + 1, addr, "HTTP");
+            node.addCategory(CATEGORY);
+            m_category.addService(node);
+            if (map != null) {
+                map.add(node);
+            }
+            nodes.add(node);
+        }
+        return nodes;
+    }
+
+    private void lostService(final RTCNode node, final long lost, final long regained) {
+        node.nodeLostService(lost);
+        if (regained > 0) {
+            node.nodeRegainedService(regained);
+        }
+        m_category.outageRecorded(node);
+    }
+
+    @Test
+    public void testNoServices() {
+        assertEquals(100.0, m_category.getValue(NOW, WINDOW), 0.0);
+    }
+
+    @Test
+    public void testValue() {
+        final List<RTCNode> nodes = createServices(null, 4);
+        assertEquals(100.0, m_category.getValue(NOW, WINDOW), 0.0);
+
+        // one service down for a quarter of the window, one still down for half of it
+        lostService(nodes.get(0), NOW - WINDOW / 2, NOW - WINDOW / 4);
+        lostService(nodes.get(1), NOW - WINDOW / 2, -1);
+
+        assertEquals(2, m_category.getRTCNodesWithOutagesCount());
+        assertEquals(100.0 * (1 - 0.75 / 4), m_category.getValue(NOW, WINDOW), 0.0001);
+
+        m_category.removeService(nodes.get(1));
+        assertEquals(3, m_category.getRTCNodeCount());
+        assertEquals(1, m_category.getRTCNodesWithOutagesCount());
+        assertEquals(100.0 * (1 - 0.25 / 3), m_category.getValue(NOW, WINDOW), 0.0001);
+    }
+
+    @Test
+    public void testExpiredOutagesAreDropped() {
+        final List<RTCNode> nodes = createServices(null, 2);
+        lostService(nodes.get(0), NOW - WINDOW / 2, NOW - WINDOW / 4);
+        assertEquals(1, m_category.getRTCNodesWithOutagesCount());
+
+        // a window later the outage has expired
+        assertEquals(100.0, m_category.getValue(NOW + WINDOW, WINDOW), 0.0);
+        assertEquals(0, m_category.getRTCNodesWithOutagesCount());
+    }
+
+    @Test
+    public void testOutageForUnknownServiceIsIgnored() {
+        createServices(null, 1);
+        final RTCNode other = new RTCNode(999, InetAddressUtils.addr("192.168.0.1"), "HTTP");
+        lostService(other, NOW - WINDOW / 2, -1);
+
+        assertEquals(0, m_category.getRTCNodesWithOutagesCount());
+        assertEquals(100.0, m_category.getValue(NOW, WINDOW), 0.0);
+    }
+
+    @Test
+    public void testConcurrentOutages() throws Exception {
+        final int services = 2000;
+        final int threads = 4;
+        final List<RTCNode> nodes = createServices(null, services);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = offset; i < services; i += threads) {
+                            lostService(nodes.get(i), NOW - WINDOW / 2, NOW - WINDOW / 4);
+                            // calculate while outages are still coming in
+                            m_category.getValue(NOW, WINDOW);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await(30, TimeUnit.SECONDS);
+
+        assertEquals(services, m_category.getRTCNodesWithOutagesCount());
+        assertEquals(100.0 * (1 - 0.25), m_category.getValue(NOW, WINDOW), 0.0001);
+    }
+
+    @Test
+    public void testValueSpeed() {
+        final int services = 20000;
+        final RTCHashMap map = new RTCHashMap(services * 3);
+        final List<RTCNode> nodes = createServices(map, services);
+        // one percent of the services had an outage
+        for (int i = 0; i < services; i += 100) {
+            lostService(nodes.get(i), NOW - WINDOW / 2, NOW - WINDOW / 4);
+        }
+
+        final int iterations = 20;
+        double expected = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            expected = map.getValue(CATEGORY, NOW, WINDOW);
+        }
+        final long mapTime = System.nanoTime() - start;
+
+        double actual = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            actual = m_category.getValue(NOW, WINDOW);
+        }
+        final long categoryTime = System.nanoTime() - start;
+
+        assertEquals(expected, actual, 0.0001);
+        System.err.printf("%d services, %d iterations: RTCHashMap %.2fms, RTCCategory %.2fms%n", services, iterations, mapTime / 1e6, categoryTime / 1e6);
+    }
+
+    /**
+     * Replays a burst of outage events from several threads while the
+     * category is published continuously, once the way DataManager used to
+     * do it, holding one lock for events and publishing alike, and once
+     * with the per-category outage sets.
+     */
+    @Test
+    public void testOutageBurstSpeed() throws Exception {
+        final int services = 20000;
+        final int events = 20000;
+
+        final RTCHashMap map = new RTCHashMap(services * 3);
+        final AtomicInteger legacyPublishes = new AtomicInteger();
+        final long legacyTime = replayBurst(createServices(map, services), events, map, legacyPublishes);
+        // later than any publish during the burst
+        final long end = NOW + WINDOW / 4;
+        final double expected = map.getValue(CATEGORY, end, WINDOW);
+
+        setUp();
+        final AtomicInteger publishes = new AtomicInteger();
+        final long time = replayBurst(createServices(null, services), events, null, publishes);
+
+        assertEquals(expected, m_category.getValue(end, WINDOW), 0.0001);
+        System.err.printf("%d outage events on %d services: single lock %dms (%d publishes), per category %dms (%d publishes)%n", events, services, legacyTime, legacyPublishes.get(), time, publishes.get());
+    }
+
+    /**
+     * @param map the map to publish from under a lock shared with the
+     *            events, or null to publish from the category
+     * @return how long it took to process the events in milliseconds
+     */
+    private long replayBurst(final List<RTCNode> nodes, final int events, final RTCHashMap map, final AtomicInteger publishes) throws InterruptedException {
+        final int threads = 4;
+        final Object lock = new Object();
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        final Thread publisher = new Thread() {
+            @Override
+            public void run() {
+                while (done.getCount() > 0) {
+                    // each publish is for a later time, like the real ones
+                    final long now = NOW + publishes.incrementAndGet();
+                    if (map == null) {
+                        m_category.getValue(now, WINDOW);
+                    } else {
+                        synchronized (lock) {
+                            map.getValue(CATEGORY, now, WINDOW);
+                        }
+                    }
+                }
+            }
+        };
+        publisher.start();
+
+        final long start = System.currentTimeMillis();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = offset; i < events; i += threads) {
+                            final RTCNode node = nodes.get((i * 7) % nodes.size());
+                            final long lost = NOW - WINDOW / 2 + i;
+                            if (map == null) {
+                                lostService(node, lost, lost + 60000L);
+                            } else {
+                                synchronized (lock) {
+                                    node.nodeLostService(lost);
+                                    node.nodeRegainedService(lost + 60000L);
+                                }
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        final long elapsed = System.currentTimeMillis() - start;
+        publisher.join();
+        return elapsed;
+    }
+}
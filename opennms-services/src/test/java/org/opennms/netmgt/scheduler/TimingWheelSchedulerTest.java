@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.MockLogAppender;
+
+public class TimingWheelSchedulerTest {
+
+    private static final long TICK = 10L;
+
+    private TimingWheelScheduler m_scheduler;
+
+    private static class CountingRunnable implements ReadyRunnable {
+        private final AtomicInteger m_runs = new AtomicInteger();
+        private volatile boolean m_ready = true;
+
+        @Override
+        public boolean isReady() {
+            return m_ready;
+        }
+
+        @Override
+        public void run() {
+            m_runs.incrementAndGet();
+        }
+
+        public void setReady(final boolean ready) {
+            m_ready = ready;
+        }
+
+        public int getRuns() {
+            return m_runs.get();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        MockLogAppender.setupLogging(true, "INFO");
+        m_scheduler = new TimingWheelScheduler("Test", 1, TICK);
+    }
+
+    @After
+    public void tearDown() {
+        m_scheduler.getRunner().shutdownNow();
+    }
+
+    /**
+     * Advances the wheel to the given number of milliseconds after now and
+     * waits for the runnables it handed to the single pool thread.
+     */
+    private void advanceTo(final long base, final long millis) throws Exception {
+        m_scheduler.advance(base + TimeUnit.MILLISECONDS.toNanos(millis));
+        m_scheduler.getRunner().submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        }).get();
+    }
+
+    @Test
+    public void testRunsWhenDue() throws Exception {
+        final CountingRunnable soon = new CountingRunnable();
+        final CountingRunnable later = new CountingRunnable();
+        final CountingRunnable muchLater = new CountingRunnable();
+
+        m_scheduler.schedule(100L, soon);
+        m_scheduler.schedule(1000L, later);
+        // past the first wheel, so it has to be cascaded down
+        m_scheduler.schedule(30000L, muchLater);
+        final long base = System.nanoTime();
+        assertEquals(3, m_scheduler.getScheduled());
+
+        advanceTo(base, 50L);
+        assertEquals(0, soon.getRuns());
+
+        advanceTo(base, 150L);
+        assertEquals(1, soon.getRuns());
+        assertEquals(0, later.getRuns());
+
+        advanceTo(base, 1100L);
+        assertEquals(1, later.getRuns());
+        assertEquals(0, muchLater.getRuns());
+
+        advanceTo(base, 29900L);
+        assertEquals(0, muchLater.getRuns());
+
+        advanceTo(base, 30100L);
+        assertEquals(1, soon.getRuns());
+        assertEquals(1, later.getRuns());
+        assertEquals(1, muchLater.getRuns());
+        assertEquals(0, m_scheduler.getScheduled());
+        assertEquals(3, m_scheduler.getNumTasksExecuted());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        final CountingRunnable cancelled = new CountingRunnable();
+        final CountingRunnable kept = new CountingRunnable();
+
+        final TimingWheelScheduler.ScheduledTask task = m_scheduler.scheduleTask(100L, cancelled);
+        m_scheduler.schedule(100L, kept);
+        final long base = System.nanoTime();
+
+        assertTrue(task.cancel());
+        assertFalse(task.cancel());
+        assertTrue(task.isCancelled());
+
+        advanceTo(base, 200L);
+        assertEquals(0, cancelled.getRuns());
+        assertEquals(1, kept.getRuns());
+        assertEquals(-1L, task.getLateness());
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    @Test
+    public void testNotReadyIsRetried() throws Exception {
+        final CountingRunnable runnable = new CountingRunnable();
+        runnable.setReady(false);
+
+        final TimingWheelScheduler.ScheduledTask task = m_scheduler.scheduleTask(100L, runnable);
+        final long base = System.nanoTime();
+
+        advanceTo(base, 150L);
+        assertEquals(0, runnable.getRuns());
+        assertEquals(1, m_scheduler.getScheduled());
+
+        runnable.setReady(true);
+        advanceTo(base, 200L);
+        assertEquals(0, runnable.getRuns());
+
+        advanceTo(base, 300L);
+        assertEquals(1, runnable.getRuns());
+        assertTrue(task.getLateness() >= 0L);
+        assertEquals(0, m_scheduler.getScheduled());
+    }
+
+    @Test
+    public void testLateness() throws Exception {
+        final CountingRunnable runnable = new CountingRunnable();
+
+        final TimingWheelScheduler.ScheduledTask task = m_scheduler.scheduleTask(0L, runnable);
+        Thread.sleep(200L);
+        advanceTo(System.nanoTime(), 0L);
+
+        assertEquals(1, runnable.getRuns());
+        assertTrue(task.getLateness() >= 200L);
+        assertEquals(1L, m_scheduler.getLateTasks());
+        assertEquals(task.getLateness(), m_scheduler.getMaxLateness());
+    }
+
+    @Test
+    public void testStartSpreadBeforeStart() throws Exception {
+        m_scheduler.setStartSpread(60000L);
+        final List<TimingWheelScheduler.ScheduledTask> tasks = new ArrayList<TimingWheelScheduler.ScheduledTask>();
+        for (int i = 0; i < 100; i++) {
+            tasks.add(m_scheduler.scheduleTask(0L, new CountingRunnable()));
+        }
+        final TimingWheelScheduler.ScheduledTask fixed = m_scheduler.scheduleTask(5000L, new CountingRunnable());
+
+        Thread.sleep(100L);
+        final long started = System.nanoTime();
+        m_scheduler.start();
+        try {
+            int spread = 0;
+            for (final TimingWheelScheduler.ScheduledTask task : tasks) {
+                final long delay = TimeUnit.NANOSECONDS.toMillis(task.getDeadline() - started);
+                assertTrue(delay >= 0L && delay <= 60000L);
+                if (delay > 1000L) {
+                    spread++;
+                }
+            }
+            assertTrue("only " + spread + " of 100 runnables were spread", spread > 50);
+
+            // a delay that was asked for is left alone
+            final long delay = TimeUnit.NANOSECONDS.toMillis(fixed.getDeadline() - started);
+            assertTrue(delay >= 4800L && delay < 5000L);
+            assertEquals(101, m_scheduler.getScheduled());
+        } finally {
+            m_scheduler.stop();
+        }
+    }
+
+    @Test
+    public void testStartSpread() throws Exception {
+        m_scheduler.setStartSpread(60000L);
+        m_scheduler.start();
+        try {
+            final long now = System.nanoTime();
+            final List<TimingWheelScheduler.ScheduledTask> tasks = new ArrayList<TimingWheelScheduler.ScheduledTask>();
+            for (int i = 0; i < 100; i++) {
+                tasks.add(m_scheduler.scheduleTask(0L, new CountingRunnable()));
+            }
+
+            int spread = 0;
+            for (final TimingWheelScheduler.ScheduledTask task : tasks) {
+                final long delay = TimeUnit.NANOSECONDS.toMillis(task.getDeadline() - now);
+                assertTrue(delay <= 60000L);
+                if (delay > 1000L) {
+                    spread++;
+                }
+            }
+            assertTrue("only " + spread + " of 100 runnables were spread", spread > 50);
+
+            // a delay that was asked for is left alone
+            final TimingWheelScheduler.ScheduledTask task = m_scheduler.scheduleTask(5000L, new CountingRunnable());
+            final long delay = TimeUnit.NANOSECONDS.toMillis(task.getDeadline() - now);
+            assertTrue(delay >= 5000L && delay < 6000L);
+        } finally {
+            m_scheduler.stop();
+        }
+    }
+}
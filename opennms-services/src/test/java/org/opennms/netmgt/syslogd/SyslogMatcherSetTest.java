@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.opennms.core.test.ConfigurationTestUtils;
+import org.opennms.core.test.MockLogAppender;
+import org.opennms.netmgt.config.SyslogdConfigFactory;
+import org.opennms.netmgt.config.syslogd.HideMatch;
+import org.opennms.netmgt.config.syslogd.HideMessage;
+import org.opennms.netmgt.config.syslogd.Match;
+import org.opennms.netmgt.config.syslogd.ParameterAssignment;
+import org.opennms.netmgt.config.syslogd.UeiList;
+import org.opennms.netmgt.config.syslogd.UeiMatch;
+import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.xml.event.Parm;
+
+/**
+ * Checks the compiled syslogd matchers against a straightforward
+ * rule-by-rule evaluation of the same configuration, and replays a set of
+ * recorded syslog lines through both to compare throughput.
+ */
+public class SyslogMatcherSetTest {
+    private static final String DISCARD_UEI = "DISCARD-MATCHING-MESSAGES";
+
+    private UeiList m_ueiList;
+    private HideMessage m_hideMessage;
+
+    @Before
+    public void setUp() throws Exception {
+        MockLogAppender.setupLogging(true, "WARN");
+        InputStream stream = null;
+        try {
+            stream = ConfigurationTestUtils.getInputStreamForResource(this, "/etc/syslogd-configuration.xml");
+            final SyslogdConfigFactory factory = new SyslogdConfigFactory(stream);
+            SyslogdConfigFactory.setInstance(factory);
+            m_ueiList = factory.getUeiList();
+            m_hideMessage = factory.getHideMessages();
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    @Test
+    public void testMultiSubstringMatcher() {
+        final MultiSubstringMatcher matcher = new MultiSubstringMatcher(Arrays.asList("he", "she", "his", "hers", null, "", "\u00e9t\u00e9"));
+        assertEquals(7, matcher.getPatternCount());
+
+        boolean[] found = matcher.findAll("ushers");
+        assertTrue(found[0]);
+        assertTrue(found[1]);
+        assertFalse(found[2]);
+        assertTrue(found[3]);
+        assertFalse(found[4]);
+        assertFalse(found[5]);
+        assertFalse(found[6]);
+
+        found = matcher.findAll("un \u00e9t\u00e9 ahis");
+        assertFalse(found[0]);
+        assertTrue(found[2]);
+        assertTrue(found[6]);
+
+        assertFalse(matcher.findAll(null)[0]);
+    }
+
+    @Test
+    public void testRequiredLiterals() {
+        assertEquals(Arrays.asList("foo: ", " out of ", " tests failed for "), SyslogMatcherSet.requiredLiterals("foo: (\\d+) out of (\\d+) tests failed for (\\S+)$"));
+        assertEquals(Arrays.asList("ritical"), SyslogMatcherSet.requiredLiterals("[Cc]ritical"));
+        assertEquals(Arrays.asList("foo12: ", "load test ", " on "), SyslogMatcherSet.requiredLiterals(".*foo12: .*load test (\\S+) on ((pts\\/\\d+)|(tty\\d+)).*"));
+        assertEquals(Arrays.asList("colo", "r is "), SyslogMatcherSet.requiredLiterals("colou?r is \\w+"));
+        assertEquals(Arrays.asList("a.b", "cd"), SyslogMatcherSet.requiredLiterals("a\\.b\\scd+?"));
+        assertEquals(Arrays.asList("x*y"), SyslogMatcherSet.requiredLiterals("\\Qx*y\\E"));
+        assertEquals(Collections.emptyList(), SyslogMatcherSet.requiredLiterals("foo|bar"));
+        assertEquals(Collections.emptyList(), SyslogMatcherSet.requiredLiterals("(?i)critical"));
+        assertEquals(Collections.emptyList(), SyslogMatcherSet.requiredLiterals(".*"));
+        assertEquals(Arrays.asList("ab", "de"), SyslogMatcherSet.requiredLiterals("abc{2,3}(?:x|y)de"));
+    }
+
+    @Test
+    public void testConfiguredRulesMatchReference() throws Exception {
+        final SyslogMatcherSet matchers = SyslogMatcherSet.compile(m_ueiList, m_hideMessage);
+        assertTrue(matchers.isCompiledFrom(m_ueiList, m_hideMessage));
+
+        for (final String line : loadReplayLines()) {
+            assertSameResult(line, matchers, m_ueiList, m_hideMessage);
+        }
+    }
+
+    @Test
+    public void testManyRulesMatchReference() throws Exception {
+        final UeiList ueiList = createLoadTestUeiList(1000);
+        final HideMessage hideMessage = m_hideMessage;
+        final SyslogMatcherSet matchers = SyslogMatcherSet.compile(ueiList, hideMessage);
+
+        final List<String> lines = new ArrayList<String>(loadReplayLines());
+        for (int i = 0; i < 1000; i += 37) {
+            lines.add(String.format("<34>main: 2010-08-19 localhost foo%d: load test %d on tty1", i, i));
+            lines.add(String.format("<34>main: 2010-08-19 localhost foo%d: load test %d on pts/%d", i, i, i));
+            lines.add(String.format("<34>main: 2010-08-19 localhost foo%d: no load test here", i));
+        }
+        for (final String line : lines) {
+            assertSameResult(line, matchers, ueiList, hideMessage);
+        }
+        assertFalse(matchers.isCompiledFrom(m_ueiList, hideMessage));
+    }
+
+    /**
+     * Replay the recorded syslog lines through the compiled matchers and the
+     * rule-by-rule evaluation and print the throughput of each.
+     */
+    @Test
+    public void testReplayThroughput() throws Exception {
+        final UeiList ueiList = createLoadTestUeiList(500);
+        final SyslogMatcherSet matchers = SyslogMatcherSet.compile(ueiList, m_hideMessage);
+
+        final List<SyslogMessage> messages = new ArrayList<SyslogMessage>();
+        for (final String line : loadReplayLines()) {
+            final SyslogMessage message = parse(line);
+            if (message != null) messages.add(message);
+        }
+        for (int i = 0; i < 500; i += 7) {
+            messages.add(parse(String.format("<34>main: 2010-08-19 localhost foo%d: load test %d on tty1", i, i)));
+        }
+
+        final int iterations = 20;
+
+        long start = System.nanoTime();
+        int referenceMatches = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (final SyslogMessage message : messages) {
+                if (referenceApply(message, new EventBuilder("uei.opennms.org/test", "test"), ueiList) != null) referenceMatches++;
+                referenceShouldHide(message.getFullText(), m_hideMessage);
+            }
+        }
+        final long referenceTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int compiledMatches = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (final SyslogMessage message : messages) {
+                try {
+                    if (matchers.applyUeiMatch(message, new EventBuilder("uei.opennms.org/test", "test"), DISCARD_UEI)) compiledMatches++;
+                } catch (final MessageDiscardedException e) {
+                    compiledMatches++;
+                }
+                matchers.shouldHide(message.getFullText());
+            }
+        }
+        final long compiledTime = System.nanoTime() - start;
+
+        assertEquals(referenceMatches, compiledMatches);
+
+        final int count = iterations * messages.size();
+        System.err.printf("replayed %d messages against %d rules: rule-by-rule %d ms (%.0f msg/s), compiled %d ms (%.0f msg/s)%n",
+                          count, ueiList.getUeiMatchCount(),
+                          referenceTime / 1000000, count * 1e9 / referenceTime,
+                          compiledTime / 1000000, count * 1e9 / compiledTime);
+    }
+
+    private static UeiList createLoadTestUeiList(final int count) {
+        final UeiList ueiList = new UeiList();
+        for (int i = 0; i < count; i++) {
+            final UeiMatch ueiMatch = new UeiMatch();
+            final Match match = new Match();
+            if (i % 10 == 9) {
+                match.setType("substr");
+                match.setExpression(String.format("bar%d: ", i));
+            } else {
+                match.setType("regex");
+                match.setExpression(String.format(".*foo%d: .*load test (\\S+) on ((pts\\/\\d+)|(tty\\d+)).*", i));
+            }
+            ueiMatch.setMatch(match);
+            ueiMatch.setUei(String.format("uei.example.org/syslog/loadTest/foo%d", i));
+            ueiList.addUeiMatch(ueiMatch);
+        }
+        return ueiList;
+    }
+
+    private List<String> loadReplayLines() throws Exception {
+        InputStream stream = null;
+        try {
+            stream = ConfigurationTestUtils.getInputStreamForResource(this, "/syslogd-replay.txt");
+            final List<String> lines = new ArrayList<String>();
+            for (final String line : IOUtils.readLines(stream, "US-ASCII")) {
+                if (line.trim().length() > 0) lines.add(line);
+            }
+            return lines;
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    private static SyslogMessage parse(final String line) throws Exception {
+        final SyslogParser parser = CustomSyslogParser.getParser(line);
+        if (!parser.find()) return null;
+        return parser.parse();
+    }
+
+    private static void assertSameResult(final String line, final SyslogMatcherSet matchers, final UeiList ueiList, final HideMessage hideMessage) throws Exception {
+        final SyslogMessage message = parse(line);
+        if (message == null) return;
+
+        final EventBuilder expected = new EventBuilder("uei.opennms.org/test", "test");
+        final String expectedResult = referenceApply(message, expected, ueiList);
+
+        final EventBuilder actual = new EventBuilder("uei.opennms.org/test", "test");
+        String actualResult;
+        try {
+            actualResult = matchers.applyUeiMatch(message, actual, DISCARD_UEI) ? "matched" : null;
+        } catch (final MessageDiscardedException e) {
+            actualResult = "discarded";
+        }
+
+        assertEquals(line, expectedResult, actualResult);
+        assertEquals(line, expected.getEvent().getUei(), actual.getEvent().getUei());
+        assertEquals(line, describe(expected.getEvent().getParmCollection()), describe(actual.getEvent().getParmCollection()));
+        assertEquals(line, referenceShouldHide(message.getFullText(), hideMessage), matchers.shouldHide(message.getFullText()));
+    }
+
+    private static String describe(final List<Parm> parms) {
+        final StringBuilder sb = new StringBuilder();
+        for (final Parm parm : parms) {
+            sb.append(parm.getParmName()).append('=').append(parm.getValue().getContent()).append(';');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The rule-by-rule evaluation the compiled matchers replace.
+     *
+     * @return "matched", "discarded", or null if no rule matched
+     */
+    private static String referenceApply(final SyslogMessage message, final EventBuilder bldr, final UeiList ueiList) {
+        final String matchedText = message.getMatchedMessage();
+        for (final UeiMatch uei : ueiList.getUeiMatchCollection()) {
+            if (!matchList(uei.getFacilityCollection(), message.getFacility().toString())) continue;
+            if (!matchList(uei.getSeverityCollection(), message.getSeverity().toString())) continue;
+            if (uei.getProcessMatch() != null && !find(uei.getProcessMatch().getExpression(), message.getProcessName())) continue;
+            if (uei.getHostnameMatch() != null && !find(uei.getHostnameMatch().getExpression(), message.getHostName())) continue;
+            if (uei.getHostaddrMatch() != null && !find(uei.getHostaddrMatch().getExpression(), message.getHostAddress())) continue;
+
+            if (uei.getMatch().getType().equals("substr")) {
+                if (matchedText != null && matchedText.contains(uei.getMatch().getExpression())) {
+                    if (DISCARD_UEI.equals(uei.getUei())) return "discarded";
+                    bldr.setUei(uei.getUei());
+                    return "matched";
+                }
+            } else if (uei.getMatch().getType().startsWith("regex")) {
+                final Matcher msgMat = Pattern.compile(uei.getMatch().getExpression(), Pattern.MULTILINE).matcher(matchedText != null ? matchedText : message.getFullText());
+                if (msgMat.find()) {
+                    if (DISCARD_UEI.equals(uei.getUei())) return "discarded";
+                    bldr.setUei(uei.getUei());
+                    if (msgMat.groupCount() > 0 && uei.getMatch().isDefaultParameterMapping()) {
+                        for (int groupNum = 1; groupNum <= msgMat.groupCount(); groupNum++) {
+                            bldr.addParam("group" + groupNum, msgMat.group(groupNum));
+                        }
+                    }
+                    if (msgMat.groupCount() > 0 && uei.getParameterAssignmentCount() > 0) {
+                        for (final ParameterAssignment assignment : uei.getParameterAssignmentCollection()) {
+                            final String parmValue = msgMat.group(assignment.getMatchingGroup());
+                            bldr.addParam(assignment.getParameterName(), parmValue == null ? "" : parmValue);
+                        }
+                    }
+                    return "matched";
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean referenceShouldHide(final String fullText, final HideMessage hideMessage) {
+        for (final HideMatch hide : hideMessage.getHideMatchCollection()) {
+            if (hide.getMatch().getType().equals("substr")) {
+                if (fullText.contains(hide.getMatch().getExpression())) return true;
+            } else if (hide.getMatch().getType().equals("regex")) {
+                if (Pattern.compile(hide.getMatch().getExpression(), Pattern.MULTILINE).matcher(fullText).find()) return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matchList(final List<String> values, final String text) {
+        if (values.size() == 0) return true;
+        for (final String value : values) {
+            if (value.equalsIgnoreCase(text)) return true;
+        }
+        return false;
+    }
+
+    private static boolean find(final String expression, final String input) {
+        return input != null && Pattern.compile(expression, Pattern.MULTILINE).matcher(input).find();
+    }
+}
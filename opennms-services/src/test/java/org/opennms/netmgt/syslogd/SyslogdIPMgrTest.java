@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.syslogd;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opennms.core.spring.BeanUtils;
+import org.opennms.core.test.OpenNMSJUnit4ClassRunner;
+import org.opennms.core.test.db.annotations.JUnitTemporaryDatabase;
+import org.opennms.netmgt.dao.DatabasePopulator;
+import org.opennms.netmgt.trapd.TrapdIpMgr;
+import org.opennms.test.JUnitConfigurationEnvironment;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+
+/**
+ * Checks that syslogd and trapd look up nodes in the same index.
+ */
+@RunWith(OpenNMSJUnit4ClassRunner.class)
+@ContextConfiguration(locations={
+        "classpath:/META-INF/opennms/applicationContext-soa.xml",
+        "classpath:/META-INF/opennms/applicationContext-dao.xml",
+        "classpath:/META-INF/opennms/applicationContext-databasePopulator.xml",
+        "classpath:/META-INF/opennms/trapdIpMgr-test.xml",
+        "classpath:/META-INF/opennms/applicationContext-minimal-conf.xml"
+})
+@JUnitConfigurationEnvironment
+@JUnitTemporaryDatabase
+public class SyslogdIPMgrTest implements InitializingBean {
+
+    @Autowired
+    TrapdIpMgr m_trapdIpMgr;
+
+    @Autowired
+    DatabasePopulator m_databasePopulator;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        BeanUtils.assertAutowiring(this);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        m_databasePopulator.populateDatabase();
+        SyslogdIPMgr.dataSourceSync();
+        m_trapdIpMgr.dataSourceSync();
+    }
+
+    @After
+    public void tearDown() {
+        SyslogdIPMgr.release();
+        m_trapdIpMgr.clearKnownIpsMap();
+    }
+
+    @Test
+    public void testSharedIndex() throws Exception {
+        final String ipAddr = m_databasePopulator.getNode2().getPrimaryInterface().getIpAddress().getHostAddress();
+        final long nodeId = Long.parseLong(m_databasePopulator.getNode2().getNodeId());
+        Assert.assertEquals(nodeId, SyslogdIPMgr.getNodeId(ipAddr));
+        Assert.assertEquals(nodeId, m_trapdIpMgr.getNodeId(ipAddr));
+
+        // an update through one daemon is seen by the other
+        Assert.assertEquals(-1, SyslogdIPMgr.setNodeId("10.99.99.99", nodeId));
+        Assert.assertEquals(nodeId, m_trapdIpMgr.getNodeId("10.99.99.99"));
+
+        // syslogd stopping leaves trapd's nodes in place
+        SyslogdIPMgr.release();
+        Assert.assertEquals(nodeId, m_trapdIpMgr.getNodeId(ipAddr));
+
+        // and nodes are only dropped once trapd is done with them too
+        m_trapdIpMgr.clearKnownIpsMap();
+        Assert.assertEquals(-1, SyslogdIPMgr.getNodeId(ipAddr));
+    }
+}
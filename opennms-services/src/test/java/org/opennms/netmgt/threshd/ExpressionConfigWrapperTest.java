@@ -28,9 +28,17 @@
 
 package org.opennms.netmgt.threshd;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.commons.jexl2.JexlEngine;
+import org.apache.commons.jexl2.MapContext;
 import org.junit.Assert;
 
 import org.junit.After;
@@ -171,4 +179,105 @@ public class ExpressionConfigWrapperTest {
         values.put("ifSpeed", 10.0);
         Assert.assertEquals(160.0, wrapper.evaluate(values), 0.0);
     }
+
+    @Test
+    public void testAssignmentDoesNotChangeValues() throws Exception {
+        Expression exp = new Expression();
+        exp.setExpression("data = data * 2");
+        ExpressionConfigWrapper wrapper = new ExpressionConfigWrapper(exp);
+        Map<String, Double> values = new HashMap<String,Double>();
+        values.put("data", 10.0);
+        Assert.assertEquals(20.0, wrapper.evaluate(values), 0.0);
+        Assert.assertEquals(10.0, values.get("data"), 0.0);
+    }
+
+    @Test
+    public void testDatasourcesDoesNotChangeValues() throws Exception {
+        Expression exp = new Expression();
+        exp.setExpression("datasources['data'] = datasources['data'] * 2");
+        ExpressionConfigWrapper wrapper = new ExpressionConfigWrapper(exp);
+        Map<String, Double> values = new HashMap<String,Double>();
+        values.put("data", 10.0);
+        Assert.assertEquals(20.0, wrapper.evaluate(values), 0.0);
+        Assert.assertEquals(10.0, values.get("data"), 0.0);
+    }
+
+    @Test
+    public void testConcurrentEvaluation() throws Exception {
+        final int threads = 8;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < threads; t++) {
+                final double octets = 100000.0 * (t + 1);
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        final Map<String, Double> values = new HashMap<String,Double>();
+                        values.put("ifInOctets", octets);
+                        values.put("ifSpeed", 10000000.0);
+                        final double expected = octets * 8 / 10000000.0 * 100;
+                        int mismatches = 0;
+                        for (int i = 0; i < 10000; i++) {
+                            if (wrapper.evaluate(values) != expected) {
+                                mismatches++;
+                            }
+                        }
+                        return mismatches;
+                    }
+                }));
+            }
+            for (final Future<Integer> future : futures) {
+                Assert.assertEquals(Integer.valueOf(0), future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Compares the throughput of the shared, pre-parsed expression with the
+     * way expressions used to be evaluated: a new engine, a new parse and a
+     * copy of the values for every evaluation.
+     */
+    @Test
+    public void testEvaluationThroughput() throws Exception {
+        final Map<String, Double> values = new HashMap<String,Double>();
+        values.put("ifHCInOctets", 20000000.0);
+        values.put("ifSpeed", 100000000.0);
+        values.put("ifHighSpeed", 1000.0);
+        final int iterations = 20000;
+
+        // warm up both paths
+        for (int i = 0; i < 2000; i++) {
+            Assert.assertEquals(16.0, evaluateWithNewEngine(FORMULA, values), 0.0);
+            Assert.assertEquals(16.0, wrapper.evaluate(values), 0.0);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            evaluateWithNewEngine(FORMULA, values);
+        }
+        final long uncachedNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            wrapper.evaluate(values);
+        }
+        final long cachedNanos = System.nanoTime() - start;
+
+        System.err.printf("ExpressionConfigWrapper: %d evaluations: parse per evaluation %d ms (%.0f/s), pre-parsed %d ms (%.0f/s)%n",
+                          iterations,
+                          uncachedNanos / 1000000, iterations * 1e9 / uncachedNanos,
+                          cachedNanos / 1000000, iterations * 1e9 / cachedNanos);
+    }
+
+    private static double evaluateWithNewEngine(final String expression, final Map<String, Double> values) {
+        final Map<String,Object> context = new HashMap<String,Object>();
+        context.putAll(values);
+        context.put("datasources", new HashMap<String, Double>(values));
+        context.put("math", new ExpressionConfigWrapper.MathBinding());
+        final Object resultObject = new JexlEngine().createExpression(expression).evaluate(new MapContext(context));
+        return Double.parseDouble(resultObject.toString());
+    }
 }
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.trapd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrapBackpressureTest {
+    private TrapdStatistics m_statistics;
+    private TrapBackpressure m_backpressure;
+
+    @Before
+    public void setUp() {
+        m_statistics = new TrapdStatistics();
+        m_backpressure = new TrapBackpressure();
+        m_backpressure.setStatistics(m_statistics);
+        m_backpressure.setPolicy(BackpressurePolicy.NONE);
+        m_backpressure.setMaxQueueDepth(0);
+        m_backpressure.setSampleRate(10);
+        m_backpressure.setDropUeis(Collections.<String>emptySet());
+    }
+
+    private void queue(final int traps) {
+        for (int i = 0; i < traps; i++) {
+            m_statistics.trapQueued();
+        }
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        m_backpressure.setPolicy(BackpressurePolicy.SAMPLE);
+        queue(1000);
+        assertFalse(m_backpressure.isOverloaded());
+        assertFalse(m_backpressure.shouldDrop("uei.opennms.org/default/trap"));
+    }
+
+    @Test
+    public void testDropByUei() {
+        m_backpressure.setPolicy(BackpressurePolicy.DROP_BY_UEI);
+        m_backpressure.setMaxQueueDepth(10);
+        m_backpressure.setDropUeis(Collections.singleton("uei.opennms.org/default/trap"));
+
+        queue(9);
+        assertFalse(m_backpressure.shouldDrop("uei.opennms.org/default/trap"));
+
+        queue(1);
+        assertTrue(m_backpressure.shouldDrop("uei.opennms.org/default/trap"));
+        assertFalse(m_backpressure.shouldDrop("uei.opennms.org/generic/traps/SNMP_Link_Down"));
+    }
+
+    @Test
+    public void testSample() {
+        m_backpressure.setPolicy(BackpressurePolicy.SAMPLE);
+        m_backpressure.setMaxQueueDepth(10);
+        queue(10);
+
+        int forwarded = 0;
+        for (int i = 0; i < 100; i++) {
+            if (!m_backpressure.shouldDrop("uei.opennms.org/default/trap")) {
+                forwarded++;
+            }
+        }
+        assertEquals(10, forwarded);
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        m_backpressure.setPolicy(BackpressurePolicy.DROP_OLDEST);
+        m_backpressure.setMaxQueueDepth(3);
+
+        final ExecutorService backlogQ = Executors.newFixedThreadPool(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final StringBuffer processed = new StringBuffer();
+        try {
+            // keep the only thread busy so that everything else waits in the queue
+            m_statistics.trapQueued();
+            backlogQ.submit(new Runnable() {
+                @Override
+                public void run() {
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    m_statistics.trapDequeued();
+                }
+            });
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+            for (int i = 0; i < 5; i++) {
+                final int trap = i;
+                m_backpressure.beforeQueued(backlogQ);
+                m_statistics.trapQueued();
+                backlogQ.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        processed.append(trap);
+                        m_statistics.trapDequeued();
+                    }
+                });
+            }
+            assertEquals(3, m_statistics.getQueueDepth());
+            assertEquals(3, m_statistics.getTrapsDropped());
+
+            release.countDown();
+        } finally {
+            backlogQ.shutdown();
+            assertTrue(backlogQ.awaitTermination(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals("34", processed.toString());
+        assertEquals(0, m_statistics.getQueueDepth());
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0.0, histogram.getPercentile(99), 0.0);
+
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(0.599, histogram.getMean(), 0.001);
+        assertEquals(50.0, histogram.getMax(), 0.0);
+        // 100us falls in the bucket below 128us
+        assertEquals(0.128, histogram.getPercentile(50), 0.0);
+        assertEquals(0.128, histogram.getPercentile(99), 0.0);
+        assertEquals(50.0, histogram.getPercentile(100), 0.0);
+    }
+}
@@ -0,0 +1,234 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.netmgt.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.opennms.core.utils.InetAddressUtils;
+
+public class IpNodeIndexTest {
+    private static final int INTERFACES = 200000;
+
+    private static String ipv4(final int i) {
+        return "10." + ((i >> 16) & 0xff) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff);
+    }
+
+    @Test
+    public void testParseIpv4() {
+        assertEquals(0x0a000001L, IpNodeIndex.parseIpv4("10.0.0.1"));
+        assertEquals(0xffffffffL, IpNodeIndex.parseIpv4("255.255.255.255"));
+        assertEquals(-1, IpNodeIndex.parseIpv4("256.0.0.1"));
+        assertEquals(-1, IpNodeIndex.parseIpv4("10.0.0"));
+        assertEquals(-1, IpNodeIndex.parseIpv4("10.0.0.1."));
+        assertEquals(-1, IpNodeIndex.parseIpv4("10..0.1"));
+        assertEquals(-1, IpNodeIndex.parseIpv4("fe80::1"));
+    }
+
+    @Test
+    public void testSetAndRemove() {
+        final IpNodeIndex index = new IpNodeIndex();
+        assertEquals(-1, index.getNodeId("192.168.1.1"));
+
+        assertEquals(-1, index.setNodeId(InetAddressUtils.addr("192.168.1.1"), 1));
+        assertEquals(-1, index.setNodeId(InetAddressUtils.addr("fe80::1"), 2));
+        assertEquals(1, index.getNodeId("192.168.1.1"));
+        assertEquals(1, index.getNodeId(InetAddressUtils.addr("192.168.1.1")));
+        assertEquals(2, index.getNodeId("fe80:0:0:0:0:0:0:1"));
+        assertEquals(2, index.size());
+
+        assertEquals(1, index.setNodeId(InetAddressUtils.addr("192.168.1.1"), 3));
+        assertEquals(3, index.getNodeId("192.168.1.1"));
+        assertEquals(2, index.size());
+
+        assertEquals(3, index.removeNodeId(InetAddressUtils.addr("192.168.1.1")));
+        assertEquals(-1, index.removeNodeId(InetAddressUtils.addr("192.168.1.1")));
+        assertEquals(-1, index.getNodeId("192.168.1.1"));
+        assertEquals(1, index.size());
+
+        assertEquals(-1, index.getNodeId("not an address"));
+        assertEquals(-1, index.getNodeId((String) null));
+    }
+
+    @Test
+    public void testPrimaryInterfaceWins() {
+        final Map<InetAddress, Integer> nodeIds = new HashMap<InetAddress, Integer>();
+        IpNodeIndex.addInterface(nodeIds, InetAddressUtils.addr("10.0.0.1"), 1, false);
+        IpNodeIndex.addInterface(nodeIds, InetAddressUtils.addr("10.0.0.1"), 2, true);
+        IpNodeIndex.addInterface(nodeIds, InetAddressUtils.addr("10.0.0.1"), 3, false);
+        IpNodeIndex.addInterface(nodeIds, InetAddressUtils.addr("10.0.0.2"), 4, false);
+        IpNodeIndex.addInterface(nodeIds, InetAddressUtils.addr("10.0.0.2"), 5, false);
+
+        final IpNodeIndex index = new IpNodeIndex();
+        index.load(nodeIds);
+        assertEquals(2, index.getNodeId("10.0.0.1"));
+        assertEquals(4, index.getNodeId("10.0.0.2"));
+    }
+
+    @Test
+    public void testClearedWhenLastOwnerReleases() {
+        final Map<InetAddress, Integer> nodeIds = new HashMap<InetAddress, Integer>();
+        nodeIds.put(InetAddressUtils.addr("10.0.0.1"), 1);
+        final Object trapd = new Object();
+        final Object syslogd = new Object();
+
+        final IpNodeIndex index = new IpNodeIndex();
+        index.load(trapd, nodeIds);
+        index.load(syslogd, nodeIds);
+        index.setNodeId(InetAddressUtils.addr("10.0.0.2"), 2);
+
+        // syslogd stopping leaves trapd's nodes alone
+        index.release(syslogd);
+        assertEquals(1, index.getNodeId("10.0.0.1"));
+        assertEquals(2, index.getNodeId("10.0.0.2"));
+
+        // a reload by either owner is seen by both
+        nodeIds.put(InetAddressUtils.addr("10.0.0.3"), 3);
+        index.load(syslogd, nodeIds);
+        index.release(syslogd);
+        assertEquals(3, index.getNodeId("10.0.0.3"));
+
+        index.release(trapd);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testIncrementalUpdatesAfterLoad() {
+        final IpNodeIndex index = new IpNodeIndex();
+        final Map<InetAddress, Integer> nodeIds = new HashMap<InetAddress, Integer>();
+        for (int i = 0; i < 10000; i++) {
+            nodeIds.put(InetAddressUtils.addr(ipv4(i)), i + 1);
+        }
+        index.load(nodeIds);
+        assertEquals(10000, index.size());
+
+        // enough updates to merge the overlay into the base a few times
+        for (int i = 0; i < 10000; i += 2) {
+            index.removeNodeId(InetAddressUtils.addr(ipv4(i)));
+        }
+        for (int i = 10000; i < 15000; i++) {
+            index.setNodeId(InetAddressUtils.addr(ipv4(i)), i + 1);
+        }
+
+        assertEquals(10000, index.size());
+        for (int i = 0; i < 15000; i++) {
+            assertEquals(ipv4(i), i < 10000 && i % 2 == 0 ? -1 : i + 1, index.getNodeId(ipv4(i)));
+        }
+
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(-1, index.getNodeId(ipv4(1)));
+    }
+
+    @Test
+    public void testLookupSpeed() throws Exception {
+        final Map<InetAddress, Integer> nodeIds = new HashMap<InetAddress, Integer>();
+        final Map<String, Long> baseline = new HashMap<String, Long>();
+        final List<String> addresses = new ArrayList<String>(INTERFACES);
+        for (int i = 0; i < INTERFACES; i++) {
+            final String addr = ipv4(i);
+            nodeIds.put(InetAddressUtils.addr(addr), i / 4 + 1);
+            baseline.put(addr, (long) (i / 4 + 1));
+            addresses.add(addr);
+        }
+        Collections.shuffle(addresses);
+
+        final IpNodeIndex index = new IpNodeIndex();
+        index.load(nodeIds);
+        assertEquals(INTERFACES, index.size());
+
+        final Lookup synchronizedMap = new Lookup() {
+            @Override
+            public long getNodeId(final String addr) {
+                synchronized (baseline) {
+                    final Long nodeId = baseline.get(addr);
+                    return nodeId == null ? -1 : nodeId;
+                }
+            }
+        };
+        final Lookup indexLookup = new Lookup() {
+            @Override
+            public long getNodeId(final String addr) {
+                return index.getNodeId(addr);
+            }
+        };
+
+        // warm up
+        lookups(1, addresses, synchronizedMap);
+        lookups(1, addresses, indexLookup);
+
+        final int threads = 4;
+        final long synchronizedTime = lookups(threads, addresses, synchronizedMap);
+        final long indexTime = lookups(threads, addresses, indexLookup);
+
+        System.err.printf("%d interfaces, %d threads: synchronized map %.1fms, index %.1fms%n", INTERFACES, threads, synchronizedTime / 1e6, indexTime / 1e6);
+    }
+
+    private interface Lookup {
+        long getNodeId(String addr);
+    }
+
+    private static long lookups(final int threads, final List<String> addresses, final Lookup lookup) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicLong misses = new AtomicLong();
+        final long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int pass = 0; pass < 5; pass++) {
+                            for (final String addr : addresses) {
+                                if (lookup.getNodeId(addr) == -1) {
+                                    misses.incrementAndGet();
+                                }
+                            }
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        done.await(5, TimeUnit.MINUTES);
+        final long elapsed = System.nanoTime() - start;
+        assertEquals(0, misses.get());
+        return elapsed;
+    }
+}
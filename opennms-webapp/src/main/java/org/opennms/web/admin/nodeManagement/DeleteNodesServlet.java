@@ -49,6 +49,7 @@ import org.opennms.core.utils.WebSecurityUtils;
 import org.opennms.netmgt.EventConstants;
 import org.opennms.netmgt.model.ResourceTypeUtils;
 import org.opennms.netmgt.model.events.EventBuilder;
+import org.opennms.netmgt.rrd.RrdFileIndex;
 import org.opennms.netmgt.xml.event.Event;
 import org.opennms.web.api.Util;
 import org.opennms.web.svclayer.ResourceService;
@@ -102,6 +103,7 @@ public class DeleteNodesServlet extends HttpServlet {
             if (nodeDir.exists() && nodeDir.isDirectory()) {
                 LOG.debug("Attempting to delete node data directory: {}", nodeDir.getAbsolutePath());
                 if (deleteDir(nodeDir)) {
+                    RrdFileIndex.directoryDeleted(nodeDir);
                     LOG.info("Node SNMP data directory deleted successfully: {}", nodeDir.getAbsolutePath());
                 } else {
                     LOG.warn("Node SNMP data directory *not* deleted successfully: {}", nodeDir.getAbsolutePath());
@@ -115,6 +117,7 @@ public class DeleteNodesServlet extends HttpServlet {
                 if (intfDir.exists() && intfDir.isDirectory()) {
                     LOG.debug("Attempting to delete node response time data directory: {}", intfDir.getAbsolutePath());
                     if (deleteDir(intfDir)) {
+                        RrdFileIndex.directoryDeleted(intfDir);
                         LOG.info("Node response time data directory deleted successfully: {}", intfDir.getAbsolutePath());
                     } else {
                         LOG.warn("Node response time data directory *not* deleted successfully: {}", intfDir.getAbsolutePath());
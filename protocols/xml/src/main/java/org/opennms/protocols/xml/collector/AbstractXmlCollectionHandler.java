@@ -52,6 +52,7 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
@@ -216,15 +217,22 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
             LOG.debug("fillCollectionSet: getting resources for XML group {} using XPATH {}", group.getName(), group.getResourceXpath());
             Date timestamp = getTimeStamp(doc, xpath, group);
             NodeList resourceList = (NodeList) xpath.evaluate(group.getResourceXpath(), doc, XPathConstants.NODESET);
+            // Compile the expressions once per group, rather than once per resource.
+            List<XPathExpression> keyExpressions = compileKeyXpaths(xpath, group);
+            List<XmlObject> objects = group.getXmlObjects();
+            XPathExpression[] objectExpressions = new XPathExpression[objects.size()];
+            for (int i = 0; i < objectExpressions.length; i++) {
+                objectExpressions[i] = xpath.compile(objects.get(i).getXpath());
+            }
+            AttributeGroupType attribGroupType = new AttributeGroupType(group.getName(), group.getIfType());
             for (int j = 0; j < resourceList.getLength(); j++) {
                 Node resource = resourceList.item(j);
-                String resourceName = getResourceName(xpath, group, resource);
+                String resourceName = getResourceName(keyExpressions, resource);
                 LOG.debug("fillCollectionSet: processing XML resource {}", resourceName);
                 XmlCollectionResource collectionResource = getCollectionResource(agent, resourceName, group.getResourceType(), timestamp);
-                AttributeGroupType attribGroupType = new AttributeGroupType(group.getName(), group.getIfType());
-                for (XmlObject object : group.getXmlObjects()) {
-                    String value = (String) xpath.evaluate(object.getXpath(), resource, XPathConstants.STRING);
-                    XmlCollectionAttributeType attribType = new XmlCollectionAttributeType(object, attribGroupType);
+                for (int i = 0; i < objectExpressions.length; i++) {
+                    String value = (String) objectExpressions[i].evaluate(resource, XPathConstants.STRING);
+                    XmlCollectionAttributeType attribType = new XmlCollectionAttributeType(objects.get(i), attribGroupType);
                     collectionResource.setAttributeValue(attribType, value);
                 }
                 processXmlResource(collectionResource, attribGroupType);
@@ -234,33 +242,158 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
     }
 
     /**
-     * Gets the resource name.
+     * Fill collection set from a stream.
+     * <p>The resources are taken straight from the XML stream through an {@link XmlStreamProcessor},
+     * without building a DOM. Sources with XPath expressions the stream processor does not support
+     * are parsed into a DOM as usual.</p>
+     *
+     * @param agent the agent
+     * @param collectionSet the collection set
+     * @param source the source
+     * @param is the input stream
+     * @param request the request
+     */
+    protected void fillCollectionSet(final CollectionAgent agent, final XmlCollectionSet collectionSet, final XmlSource source, InputStream is, Request request) {
+        final XmlStreamProcessor processor = XmlStreamProcessor.compile(source);
+        if (processor == null) {
+            LOG.info("fillCollectionSet: source url '{}' cannot be streamed, parsing the whole document", source.getUrl());
+            try {
+                fillCollectionSet(agent, collectionSet, source, getXmlDocument(is, request));
+            } catch (XmlCollectorException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new XmlCollectorException(e.getMessage(), e);
+            }
+            return;
+        }
+
+        // Resources of groups with a timestamp get it once the whole document has been read.
+        final Map<XmlGroup, List<XmlCollectionResource>> timestamped = new HashMap<XmlGroup, List<XmlCollectionResource>>();
+        try {
+            is = preProcessHtml(request, is);
+            is = applyXsltTransformation(request, is);
+            processor.process(is, new XmlStreamProcessor.Handler() {
+                @Override
+                public void processResource(XmlGroup group, String resourceName, String[] values) {
+                    XmlCollectionResource collectionResource = getCollectionResource(agent, resourceName, group.getResourceType(), null);
+                    AttributeGroupType attribGroupType = new AttributeGroupType(group.getName(), group.getIfType());
+                    List<XmlObject> objects = group.getXmlObjects();
+                    for (int i = 0; i < values.length; i++) {
+                        XmlCollectionAttributeType attribType = new XmlCollectionAttributeType(objects.get(i), attribGroupType);
+                        collectionResource.setAttributeValue(attribType, values[i]);
+                    }
+                    processXmlResource(collectionResource, attribGroupType);
+                    collectionSet.getCollectionResources().add(collectionResource);
+                    if (group.getTimestampXpath() != null) {
+                        List<XmlCollectionResource> resources = timestamped.get(group);
+                        if (resources == null) {
+                            resources = new ArrayList<XmlCollectionResource>();
+                            timestamped.put(group, resources);
+                        }
+                        resources.add(collectionResource);
+                    }
+                }
+
+                @Override
+                public void processTimestamp(XmlGroup group, String value) {
+                    Date timestamp = parseTimeStamp(group, value);
+                    List<XmlCollectionResource> resources = timestamped.get(group);
+                    if (timestamp == null || resources == null) {
+                        return;
+                    }
+                    LOG.debug("fillCollectionSet: the date that will be used when updating the RRDs of group {} is {}", group.getName(), timestamp);
+                    for (XmlCollectionResource resource : resources) {
+                        resource.setTimeKeeper(new ConstantTimeKeeper(timestamp));
+                    }
+                }
+            });
+        } catch (Exception e) {
+            throw new XmlCollectorException(e.getMessage(), e);
+        } finally {
+            IOUtils.closeQuietly(is);
+        }
+    }
+
+    /**
+     * Fill collection set streaming the document from a URL.
+     *
+     * @param agent the agent
+     * @param collectionSet the collection set
+     * @param source the source
+     * @param urlString the URL string
+     * @param request the request
+     */
+    protected void fillCollectionSet(CollectionAgent agent, XmlCollectionSet collectionSet, XmlSource source, String urlString, Request request) {
+        InputStream is = null;
+        URLConnection c = null;
+        try {
+            URL url = UrlFactory.getUrl(urlString, request);
+            c = url.openConnection();
+            is = c.getInputStream();
+            fillCollectionSet(agent, collectionSet, source, is, request);
+        } catch (XmlCollectorException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new XmlCollectorException(e.getMessage(), e);
+        } finally {
+            IOUtils.closeQuietly(is);
+            UrlFactory.disconnect(c);
+        }
+    }
+
+    /**
+     * Checks if the documents of a request should be streamed rather than parsed into a DOM.
+     * <p>This is enabled through the <b>stream-xml</b> request parameter.</p>
+     *
+     * @param request the request
+     * @return true, if streaming
+     */
+    protected boolean isStreaming(Request request) {
+        return request != null && Boolean.parseBoolean(request.getParameter("stream-xml"));
+    }
+
+    /**
+     * Compiles the key expressions of a group.
      *
      * @param xpath the Xpath
      * @param group the group
-     * @param resource the resource
-     * @return the resource name
+     * @return the compiled key expressions, empty if a node resource will be assumed
      * @throws XPathExpressionException the x path expression exception
      */
-    private String getResourceName(XPath xpath, XmlGroup group, Node resource) throws XPathExpressionException {
-        // Processing multiple-key resource name.
+    private List<XPathExpression> compileKeyXpaths(XPath xpath, XmlGroup group) throws XPathExpressionException {
+        List<XPathExpression> keys = new ArrayList<XPathExpression>();
         if (group.hasMultipleResourceKey()) {
-            List<String> keys = new ArrayList<String>();
             for (String key : group.getXmlResourceKey().getKeyXpathList()) {
                 LOG.debug("getResourceName: getting key for resource's name using {}", key);
-                Node keyNode = (Node) xpath.evaluate(key, resource, XPathConstants.NODE);
-                keys.add(keyNode.getNodeValue() == null ? keyNode.getTextContent() : keyNode.getNodeValue());
+                keys.add(xpath.compile(key));
             }
-            return StringUtils.join(keys, "_");
+        } else if (group.getKeyXpath() != null) {
+            LOG.debug("getResourceName: getting key for resource's name using {}", group.getKeyXpath());
+            keys.add(xpath.compile(group.getKeyXpath()));
         }
+        return keys;
+    }
+
+    /**
+     * Gets the resource name.
+     *
+     * @param keys the compiled key expressions
+     * @param resource the resource
+     * @return the resource name
+     * @throws XPathExpressionException the x path expression exception
+     */
+    private String getResourceName(List<XPathExpression> keys, Node resource) throws XPathExpressionException {
         // If key-xpath doesn't exist or not found, a node resource will be assumed.
-        if (group.getKeyXpath() == null) {
+        if (keys.isEmpty()) {
             return "node";
         }
-        // Processing single-key resource name.
-        LOG.debug("getResourceName: getting key for resource's name using {}", group.getKeyXpath());
-        Node keyNode = (Node) xpath.evaluate(group.getKeyXpath(), resource, XPathConstants.NODE);
-        return keyNode.getNodeValue() == null ? keyNode.getTextContent() : keyNode.getNodeValue();
+        // Processing single or multiple-key resource name.
+        List<String> values = new ArrayList<String>(keys.size());
+        for (XPathExpression key : keys) {
+            Node keyNode = (Node) key.evaluate(resource, XPathConstants.NODE);
+            values.add(keyNode.getNodeValue() == null ? keyNode.getTextContent() : keyNode.getNodeValue());
+        }
+        return StringUtils.join(values, "_");
     }
 
     /**
@@ -327,8 +460,24 @@ public abstract class AbstractXmlCollectionHandler implements XmlCollectionHandl
             LOG.warn("getTimeStamp: can't find the custom timestamp using XPATH {}",  group.getTimestampXpath());
             return null;
         }
-        Date date = null;
         String value = tsNode.getNodeValue() == null ? tsNode.getTextContent() : tsNode.getNodeValue();
+        return parseTimeStamp(group, value);
+    }
+
+    /**
+     * Parses the time stamp.
+     *
+     * @param group the group
+     * @param value the time stamp value
+     * @return the time stamp
+     */
+    protected Date parseTimeStamp(XmlGroup group, String value) {
+        if (value == null) {
+            LOG.warn("getTimeStamp: can't find the custom timestamp using XPATH {}",  group.getTimestampXpath());
+            return null;
+        }
+        String pattern = group.getTimestampFormat() == null ? "yyyy-MM-dd HH:mm:ss" : group.getTimestampFormat();
+        Date date = null;
         LOG.debug("getTimeStamp: time stamp value is {}", value);
         try {
             DateTimeFormatter dtf = DateTimeFormat.forPattern(pattern);
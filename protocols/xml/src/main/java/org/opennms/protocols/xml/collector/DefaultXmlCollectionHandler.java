@@ -57,6 +57,11 @@ public class DefaultXmlCollectionHandler extends AbstractXmlCollectionHandler {
      */
     @Override
     protected void fillCollectionSet(String urlString, Request request, CollectionAgent agent, XmlCollectionSet collectionSet, XmlSource source) throws Exception {
+        if (isStreaming(request)) {
+            LOG.debug("collect: streaming document for source url '{}' collection", source.getUrl());
+            fillCollectionSet(agent, collectionSet, source, urlString, request);
+            return;
+        }
         final Document doc = getXmlDocument(urlString, request);
         LOG.debug("collect: parsed document for source url '{}' collection", source.getUrl());
         fillCollectionSet(agent, collectionSet, source, doc);
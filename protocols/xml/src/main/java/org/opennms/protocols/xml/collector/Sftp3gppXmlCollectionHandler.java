@@ -91,8 +91,12 @@ public class Sftp3gppXmlCollectionHandler extends AbstractXmlCollectionHandler {
                 if (lastFile == null) {
                     lastFile = connection.get3gppFileName();
                     LOG.debug("collect(single): retrieving file from {}{}{} from {}", url.getPath(), File.separatorChar, lastFile, agent.getHostAddress());
-                    Document doc = getXmlDocument(urlStr, request);
-                    fillCollectionSet(agent, collectionSet, source, doc);
+                    if (isStreaming(request)) {
+                        fillCollectionSet(agent, collectionSet, source, urlStr, request);
+                    } else {
+                        Document doc = getXmlDocument(urlStr, request);
+                        fillCollectionSet(agent, collectionSet, source, doc);
+                    }
                     Sftp3gppUtils.setLastFilename(getServiceName(), resourceDir, url.getPath(), lastFile);
                     Sftp3gppUtils.deleteFile(connection, lastFile);
                 } else {
@@ -105,9 +109,13 @@ public class Sftp3gppXmlCollectionHandler extends AbstractXmlCollectionHandler {
                             LOG.debug("collect(multiple): retrieving file {} from {}", fileName, agent.getHostAddress());
                             InputStream is = connection.getFile(fileName);
                             try {
-                                Document doc = getXmlDocument(is, request);
-                                IOUtils.closeQuietly(is);
-                                fillCollectionSet(agent, collectionSet, source, doc);
+                                if (isStreaming(request)) {
+                                    fillCollectionSet(agent, collectionSet, source, is, request);
+                                } else {
+                                    Document doc = getXmlDocument(is, request);
+                                    IOUtils.closeQuietly(is);
+                                    fillCollectionSet(agent, collectionSet, source, doc);
+                                }
                             } finally {
                                 IOUtils.closeQuietly(is);
                             }
@@ -0,0 +1,625 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.protocols.xml.collector;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.opennms.protocols.xml.config.XmlGroup;
+import org.opennms.protocols.xml.config.XmlObject;
+import org.opennms.protocols.xml.config.XmlSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The Class XML Stream Processor.
+ * <p>Collects the groups of an XML source from a StAX stream, without building a DOM for the whole
+ * document. The XPath expressions of the source are compiled once into matchers that follow the
+ * element stack, and every resource is handed over as soon as its element has been read.</p>
+ * <p>Only a subset of XPath is supported: paths made of element names (or *), each with an optional
+ * <code>[@attribute='value']</code> or <code>[@attribute=number]</code> predicate, optionally ending
+ * with <code>@attribute</code>. Resource and timestamp paths must be absolute, object and key paths
+ * relative to the resource. {@link #compile(XmlSource)} returns null for sources that need more than
+ * that, so they can be handled through the DOM.</p>
+ */
+public class XmlStreamProcessor {
+
+    /** The Constant LOG. */
+    private static final Logger LOG = LoggerFactory.getLogger(XmlStreamProcessor.class);
+
+    /** The step pattern: name or *, with an optional attribute predicate. */
+    private static final Pattern STEP_PATTERN = Pattern.compile("^([\\w.:-]+|\\*)(?:\\[\\s*@([\\w.:-]+)\\s*=\\s*(?:'([^']*)'|\"([^\"]*)\"|(-?\\d+(?:\\.\\d+)?))\\s*\\])?$");
+
+    /** The attribute pattern. */
+    private static final Pattern ATTRIBUTE_PATTERN = Pattern.compile("^@([\\w.:-]+)$");
+
+    /** The StAX factory. */
+    private static final XMLInputFactory s_factory = XMLInputFactory.newInstance();
+    static {
+        s_factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+
+    /**
+     * The Interface Handler.
+     * <p>Receives the resources found while processing a document.</p>
+     */
+    public interface Handler {
+
+        /**
+         * Process a resource.
+         *
+         * @param group the XML group
+         * @param resourceName the resource name
+         * @param values the values of the group's XML objects, in order (empty when not found)
+         */
+        void processResource(XmlGroup group, String resourceName, String[] values);
+
+        /**
+         * Process the timestamp of a group, called once the whole document has been read.
+         *
+         * @param group the XML group
+         * @param value the timestamp value, or null if it was not found
+         */
+        void processTimestamp(XmlGroup group, String value);
+    }
+
+    /**
+     * A compiled location step.
+     */
+    private static final class Step {
+        private final String m_name;
+        private final String m_attribute;
+        private final String m_value;
+        private final Double m_number;
+
+        private Step(final String name, final String attribute, final String value, final Double number) {
+            m_name = "*".equals(name) ? null : name;
+            m_attribute = attribute;
+            m_value = value;
+            m_number = number;
+        }
+
+        private boolean matches(final XMLStreamReader reader) {
+            if (m_name != null && !m_name.equals(getName(reader.getPrefix(), reader.getLocalName()))) {
+                return false;
+            }
+            if (m_attribute == null) {
+                return true;
+            }
+            final String value = getAttribute(reader, m_attribute);
+            if (value == null) {
+                return false;
+            }
+            if (m_number == null) {
+                return m_value.equals(value);
+            }
+            try {
+                return m_number.doubleValue() == Double.parseDouble(value.trim());
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A compiled path: steps from the context element, and optionally an attribute of the last one.
+     */
+    private static final class Path {
+        private final Step[] m_steps;
+        private final String m_attribute;
+
+        private Path(final Step[] steps, final String attribute) {
+            m_steps = steps;
+            m_attribute = attribute;
+        }
+    }
+
+    /**
+     * A compiled XML group.
+     */
+    private static final class GroupPlan {
+        private final XmlGroup m_group;
+        private final Path m_resource;
+        private final Path[] m_keys;
+        private final Path[] m_objects;
+        private final Path m_timestamp;
+
+        private GroupPlan(final XmlGroup group, final Path resource, final Path[] keys, final Path[] objects, final Path timestamp) {
+            m_group = group;
+            m_resource = resource;
+            m_keys = keys;
+            m_objects = objects;
+            m_timestamp = timestamp;
+        }
+    }
+
+    /**
+     * Follows a path through the element stack while a document is read, capturing the value of
+     * the first node it selects.
+     */
+    private static final class Tracker {
+        private final Path m_path;
+        private final int m_base;
+        private int m_matched;
+        private int m_textDepth = -1;
+        private StringBuilder m_text;
+        private String m_value;
+        private boolean m_done;
+
+        private Tracker(final Path path, final int base) {
+            m_path = path;
+            m_base = base;
+        }
+
+        /** Called for the context element itself, for paths without steps. */
+        private void context(final XMLStreamReader reader, final int depth) {
+            if (m_path.m_steps.length == 0) {
+                select(reader, depth);
+            }
+        }
+
+        private void start(final XMLStreamReader reader, final int depth) {
+            if (m_done || m_matched == m_path.m_steps.length || depth - m_base != m_matched + 1) {
+                return;
+            }
+            if (m_path.m_steps[m_matched].matches(reader)) {
+                m_matched++;
+                if (m_matched == m_path.m_steps.length) {
+                    select(reader, depth);
+                }
+            }
+        }
+
+        private void select(final XMLStreamReader reader, final int depth) {
+            if (m_path.m_attribute == null) {
+                m_textDepth = depth;
+                m_text = new StringBuilder();
+            } else {
+                // an element without the attribute selects nothing, a later one may still match
+                final String value = getAttribute(reader, m_path.m_attribute);
+                if (value != null) {
+                    m_value = value;
+                    m_done = true;
+                }
+            }
+        }
+
+        private void text(final XMLStreamReader reader) {
+            if (m_textDepth >= 0) {
+                m_text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+            }
+        }
+
+        private void end(final int depth) {
+            if (m_textDepth == depth) {
+                m_value = m_text.toString();
+                m_text = null;
+                m_textDepth = -1;
+                m_done = true;
+            }
+            if (!m_done && m_matched > 0 && depth - m_base == m_matched) {
+                m_matched--;
+            }
+        }
+    }
+
+    /**
+     * A resource element being read.
+     */
+    private static final class ResourceMatch {
+        private final GroupPlan m_plan;
+        private final int m_depth;
+        private final Tracker[] m_keys;
+        private final Tracker[] m_objects;
+
+        private ResourceMatch(final GroupPlan plan, final int depth, final XMLStreamReader reader) {
+            m_plan = plan;
+            m_depth = depth;
+            m_keys = createTrackers(plan.m_keys, depth, reader);
+            m_objects = createTrackers(plan.m_objects, depth, reader);
+        }
+
+        private static Tracker[] createTrackers(final Path[] paths, final int depth, final XMLStreamReader reader) {
+            if (paths == null) {
+                return null;
+            }
+            final Tracker[] trackers = new Tracker[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                trackers[i] = new Tracker(paths[i], depth);
+                trackers[i].context(reader, depth);
+            }
+            return trackers;
+        }
+
+        private void start(final XMLStreamReader reader, final int depth) {
+            if (m_keys != null) {
+                for (final Tracker tracker : m_keys) {
+                    tracker.start(reader, depth);
+                }
+            }
+            for (final Tracker tracker : m_objects) {
+                tracker.start(reader, depth);
+            }
+        }
+
+        private void text(final XMLStreamReader reader) {
+            if (m_keys != null) {
+                for (final Tracker tracker : m_keys) {
+                    tracker.text(reader);
+                }
+            }
+            for (final Tracker tracker : m_objects) {
+                tracker.text(reader);
+            }
+        }
+
+        private void end(final int depth) {
+            if (m_keys != null) {
+                for (final Tracker tracker : m_keys) {
+                    tracker.end(depth);
+                }
+            }
+            for (final Tracker tracker : m_objects) {
+                tracker.end(depth);
+            }
+        }
+
+        private String getResourceName() {
+            // If key-xpath doesn't exist, a node resource will be assumed.
+            if (m_keys == null) {
+                return "node";
+            }
+            final StringBuilder name = new StringBuilder();
+            for (final Tracker key : m_keys) {
+                if (key.m_value == null) {
+                    return null;
+                }
+                if (name.length() > 0) {
+                    name.append('_');
+                }
+                name.append(key.m_value);
+            }
+            return name.toString();
+        }
+
+        private String[] getValues() {
+            final String[] values = new String[m_objects.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = m_objects[i].m_value == null ? "" : m_objects[i].m_value;
+            }
+            return values;
+        }
+    }
+
+    /** The compiled groups. */
+    private final GroupPlan[] m_plans;
+
+    /**
+     * Instantiates a new XML stream processor.
+     *
+     * @param plans the compiled groups
+     */
+    private XmlStreamProcessor(final GroupPlan[] plans) {
+        m_plans = plans;
+    }
+
+    /**
+     * Compiles the XPath expressions of an XML source.
+     *
+     * @param source the XML source
+     * @return the XML stream processor, or null if the source uses XPath expressions that cannot be streamed
+     */
+    public static XmlStreamProcessor compile(final XmlSource source) {
+        final List<GroupPlan> plans = new ArrayList<GroupPlan>();
+        for (final XmlGroup group : source.getXmlGroups()) {
+            final Path resource = compile(group.getResourceXpath(), true);
+            if (resource == null || resource.m_attribute != null) {
+                return unsupported(group.getResourceXpath());
+            }
+
+            Path[] keys = null;
+            if (group.hasMultipleResourceKey()) {
+                final List<String> keyXpaths = group.getXmlResourceKey().getKeyXpathList();
+                keys = new Path[keyXpaths.size()];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = compile(keyXpaths.get(i), false);
+                    if (keys[i] == null) {
+                        return unsupported(keyXpaths.get(i));
+                    }
+                }
+            } else if (group.getKeyXpath() != null) {
+                final Path key = compile(group.getKeyXpath(), false);
+                if (key == null) {
+                    return unsupported(group.getKeyXpath());
+                }
+                keys = new Path[] { key };
+            }
+
+            final List<XmlObject> objects = group.getXmlObjects();
+            final Path[] objectPaths = new Path[objects.size()];
+            for (int i = 0; i < objectPaths.length; i++) {
+                objectPaths[i] = compile(objects.get(i).getXpath(), false);
+                if (objectPaths[i] == null) {
+                    return unsupported(objects.get(i).getXpath());
+                }
+            }
+
+            Path timestamp = null;
+            if (group.getTimestampXpath() != null) {
+                timestamp = compile(group.getTimestampXpath(), true);
+                if (timestamp == null) {
+                    return unsupported(group.getTimestampXpath());
+                }
+            }
+
+            plans.add(new GroupPlan(group, resource, keys, objectPaths, timestamp));
+        }
+        return new XmlStreamProcessor(plans.toArray(new GroupPlan[plans.size()]));
+    }
+
+    /**
+     * Logs an expression that cannot be streamed.
+     *
+     * @param xpath the XPath expression
+     * @return null
+     */
+    private static XmlStreamProcessor unsupported(final String xpath) {
+        LOG.debug("compile: the XPath expression {} cannot be evaluated on a stream", xpath);
+        return null;
+    }
+
+    /**
+     * Compiles a path.
+     *
+     * @param xpath the XPath expression
+     * @param absolute whether the path must be absolute or relative
+     * @return the path, or null if it is not supported
+     */
+    private static Path compile(final String xpath, final boolean absolute) {
+        if (xpath == null) {
+            return null;
+        }
+        String expression = xpath.trim();
+        if (absolute) {
+            if (!expression.startsWith("/") || expression.startsWith("//")) {
+                return null;
+            }
+            expression = expression.substring(1);
+        } else if (expression.startsWith("/")) {
+            return null;
+        } else if (expression.equals(".")) {
+            return new Path(new Step[0], null);
+        }
+
+        final List<String> parts = split(expression);
+        if (parts == null || parts.isEmpty()) {
+            return null;
+        }
+        String attribute = null;
+        final Matcher attributeMatcher = ATTRIBUTE_PATTERN.matcher(parts.get(parts.size() - 1));
+        if (attributeMatcher.matches()) {
+            attribute = attributeMatcher.group(1);
+            parts.remove(parts.size() - 1);
+            if (absolute && parts.isEmpty()) {
+                return null;
+            }
+        }
+
+        final Step[] steps = new Step[parts.size()];
+        for (int i = 0; i < steps.length; i++) {
+            final Matcher m = STEP_PATTERN.matcher(parts.get(i));
+            if (!m.matches() || m.group(1).equals(".") || m.group(1).equals("..")) {
+                return null;
+            }
+            if (m.group(2) == null) {
+                steps[i] = new Step(m.group(1), null, null, null);
+            } else if (m.group(5) != null) {
+                steps[i] = new Step(m.group(1), m.group(2), null, Double.valueOf(m.group(5)));
+            } else {
+                steps[i] = new Step(m.group(1), m.group(2), m.group(3) != null ? m.group(3) : m.group(4), null);
+            }
+        }
+        return new Path(steps, attribute);
+    }
+
+    /**
+     * Splits a path on the slashes outside of predicates.
+     *
+     * @param expression the expression
+     * @return the steps, or null if the expression has an empty step
+     */
+    private static List<String> split(final String expression) {
+        final List<String> parts = new ArrayList<String>();
+        int start = 0;
+        int brackets = 0;
+        char quote = 0;
+        for (int i = 0; i <= expression.length(); i++) {
+            final char c = i < expression.length() ? expression.charAt(i) : '/';
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '[') {
+                brackets++;
+            } else if (c == ']') {
+                brackets--;
+            } else if (c == '/' && brackets == 0) {
+                final String part = expression.substring(start, i).trim();
+                if (part.length() == 0) {
+                    return null;
+                }
+                parts.add(part);
+                start = i + 1;
+            }
+        }
+        return quote == 0 && brackets == 0 ? parts : null;
+    }
+
+    /**
+     * Process an XML document.
+     *
+     * @param is the input stream
+     * @param handler the handler
+     * @throws XMLStreamException the XML stream exception
+     */
+    public void process(final InputStream is, final Handler handler) throws XMLStreamException {
+        final XMLStreamReader reader = s_factory.createXMLStreamReader(is);
+        try {
+            final int[] matched = new int[m_plans.length];
+            final Tracker[] timestamps = new Tracker[m_plans.length];
+            for (int i = 0; i < m_plans.length; i++) {
+                if (m_plans[i].m_timestamp != null) {
+                    timestamps[i] = new Tracker(m_plans[i].m_timestamp, 0);
+                }
+            }
+            final List<ResourceMatch> open = new ArrayList<ResourceMatch>();
+            int depth = 0;
+
+            while (reader.hasNext()) {
+                switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    for (int i = 0; i < open.size(); i++) {
+                        open.get(i).start(reader, depth);
+                    }
+                    for (int i = 0; i < m_plans.length; i++) {
+                        if (timestamps[i] != null) {
+                            timestamps[i].start(reader, depth);
+                        }
+                        final Step[] steps = m_plans[i].m_resource.m_steps;
+                        if (matched[i] == depth - 1 && depth <= steps.length && steps[depth - 1].matches(reader)) {
+                            matched[i] = depth;
+                            if (depth == steps.length) {
+                                open.add(new ResourceMatch(m_plans[i], depth, reader));
+                            }
+                        }
+                    }
+                    break;
+
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    for (int i = 0; i < open.size(); i++) {
+                        open.get(i).text(reader);
+                    }
+                    for (final Tracker timestamp : timestamps) {
+                        if (timestamp != null) {
+                            timestamp.text(reader);
+                        }
+                    }
+                    break;
+
+                case XMLStreamConstants.END_ELEMENT:
+                    for (int i = open.size() - 1; i >= 0; i--) {
+                        final ResourceMatch resource = open.get(i);
+                        resource.end(depth);
+                        if (resource.m_depth == depth) {
+                            open.remove(i);
+                            emit(resource, handler);
+                        }
+                    }
+                    for (int i = 0; i < m_plans.length; i++) {
+                        if (timestamps[i] != null) {
+                            timestamps[i].end(depth);
+                        }
+                        if (matched[i] == depth) {
+                            matched[i]--;
+                        }
+                    }
+                    depth--;
+                    break;
+
+                default:
+                    break;
+                }
+            }
+
+            for (int i = 0; i < m_plans.length; i++) {
+                if (timestamps[i] != null) {
+                    handler.processTimestamp(m_plans[i].m_group, timestamps[i].m_value);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Hands a resource over to the handler.
+     *
+     * @param resource the resource
+     * @param handler the handler
+     */
+    private static void emit(final ResourceMatch resource, final Handler handler) {
+        final String resourceName = resource.getResourceName();
+        if (resourceName == null) {
+            LOG.warn("process: skipping XML resource of group {} without a key", resource.m_plan.m_group.getName());
+            return;
+        }
+        LOG.debug("process: processing XML resource {}", resourceName);
+        handler.processResource(resource.m_plan.m_group, resourceName, resource.getValues());
+    }
+
+    /**
+     * Gets the qualified name of an element or attribute, as a non namespace aware DOM would see it.
+     *
+     * @param prefix the prefix
+     * @param localName the local name
+     * @return the name
+     */
+    private static String getName(final String prefix, final String localName) {
+        return prefix == null || prefix.length() == 0 ? localName : prefix + ':' + localName;
+    }
+
+    /**
+     * Gets the value of an attribute of the current element.
+     *
+     * @param reader the reader
+     * @param name the attribute name
+     * @return the attribute value, or null if the element does not have it
+     */
+    private static String getAttribute(final XMLStreamReader reader, final String name) {
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (name.equals(getName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2014 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2014 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.protocols.xml.collector;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathFactory;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.opennms.core.xml.JaxbUtils;
+import org.opennms.protocols.xml.config.XmlDataCollectionConfig;
+import org.opennms.protocols.xml.config.XmlGroup;
+import org.opennms.protocols.xml.config.XmlObject;
+import org.opennms.protocols.xml.config.XmlResourceKey;
+import org.opennms.protocols.xml.config.XmlSource;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * The Test class for the XML Stream Processor.
+ * <p>The streamed resources must be the same the DOM based collection would get.</p>
+ */
+public class XmlStreamProcessorTest {
+
+    /**
+     * A handler that writes down what it gets.
+     */
+    private static class CollectingHandler implements XmlStreamProcessor.Handler {
+        private final Map<String, String> m_timestamps = new LinkedHashMap<String, String>();
+        private final List<String> m_resources = new ArrayList<String>();
+
+        @Override
+        public void processResource(XmlGroup group, String resourceName, String[] values) {
+            m_resources.add(group.getName() + "/" + resourceName + "=" + StringUtils.join(values, ","));
+        }
+
+        @Override
+        public void processTimestamp(XmlGroup group, String value) {
+            m_timestamps.put(group.getName(), value);
+        }
+    }
+
+    /**
+     * Test the 3GPP sample.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void test3gppSample() throws Exception {
+        XmlSource source = get3gppSource();
+        File file = new File("src/test/resources/A20111025.0030-0500-0045-0500_MME00001.xml");
+
+        CollectingHandler streamed = stream(source, file);
+        CollectingHandler parsed = parse(source, file);
+        Assert.assertFalse(streamed.m_resources.isEmpty());
+        Assert.assertEquals(parsed.m_resources, streamed.m_resources);
+        Assert.assertEquals(parsed.m_timestamps, streamed.m_timestamps);
+        Assert.assertEquals("2011-10-25T00:45:00-05:00", streamed.m_timestamps.get("platform-system-resource"));
+    }
+
+    /**
+     * Test the supported expressions.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testExpressions() throws Exception {
+        String xml = "<?xml version=\"1.0\"?>\n"
+                + "<root><header time=\"2013-01-01 00:00:00\"/>"
+                + "<zone name=\"global\" id=\"0\"><parameter key=\"cpu\" value=\"5\"/><parameter key=\"mem\">7<unit>%</unit></parameter><name>global</name></zone>"
+                + "<zone name=\"other\"><parameter key=\"mem\" value=\"9\"/><name><![CDATA[oth]]>er</name></zone>"
+                + "<stats><value>42</value></stats>"
+                + "</root>";
+
+        XmlSource source = new XmlSource();
+        XmlGroup zones = createGroup("zones", "/root/zone", "@name");
+        zones.setTimestampXpath("/root/header/@time");
+        zones.addXmlObject(createObject("cpu", "parameter[@key='cpu']/@value"));
+        zones.addXmlObject(createObject("mem", "parameter[@key=\"mem\"]"));
+        zones.addXmlObject(createObject("name", "name"));
+        zones.addXmlObject(createObject("id", "@id"));
+        source.addXmlGroup(zones);
+        XmlGroup multiKey = createGroup("multi", "/root/*", null);
+        XmlResourceKey key = new XmlResourceKey();
+        key.addKeyXpath("@name");
+        key.addKeyXpath("name");
+        multiKey.setXmlResourceKey(key);
+        multiKey.addXmlObject(createObject("all", "."));
+        source.addXmlGroup(multiKey);
+        XmlGroup node = createGroup("node", "/root/stats", null);
+        node.setResourceType("node");
+        node.addXmlObject(createObject("value", "value"));
+        source.addXmlGroup(node);
+
+        File file = File.createTempFile("xml-stream", ".xml");
+        try {
+            FileUtils.writeStringToFile(file, xml, "UTF-8");
+            CollectingHandler streamed = stream(source, file);
+            CollectingHandler parsed = parse(source, file);
+            Assert.assertEquals(parsed.m_resources, streamed.m_resources);
+            Assert.assertTrue(streamed.m_resources.contains("zones/global=5,7%,global,0"));
+            Assert.assertTrue(streamed.m_resources.contains("zones/other=,,other,"));
+            Assert.assertTrue(streamed.m_resources.contains("node/node=42"));
+            Assert.assertTrue(streamed.m_resources.contains("multi/other_other=other"));
+            Assert.assertEquals("2013-01-01 00:00:00", streamed.m_timestamps.get("zones"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test expressions that cannot be streamed.
+     */
+    @Test
+    public void testUnsupportedExpressions() {
+        Assert.assertNotNull(XmlStreamProcessor.compile(createSource("/a/b", "@k", "c[@p=1]")));
+        Assert.assertNull(XmlStreamProcessor.compile(createSource("//b", "@k", "c")));
+        Assert.assertNull(XmlStreamProcessor.compile(createSource("a/b", "@k", "c")));
+        Assert.assertNull(XmlStreamProcessor.compile(createSource("/a/b[1]", "@k", "c")));
+        Assert.assertNull(XmlStreamProcessor.compile(createSource("/a/b", "../@k", "c")));
+        Assert.assertNull(XmlStreamProcessor.compile(createSource("/a/b", "@k", "p[contains(.,'Document Count:')]")));
+        Assert.assertNull(XmlStreamProcessor.compile(createSource("/a/b", "@k", "count(c)")));
+    }
+
+    /**
+     * Compare streaming and DOM parsing on a large synthetic 3GPP file.
+     *
+     * @throws Exception the exception
+     */
+    @Test
+    public void testLarge3gppFile() throws Exception {
+        XmlSource source = get3gppSource();
+        File file = File.createTempFile("A20111025.0030-0500-0045-0500_MME", ".xml");
+        try {
+            int measValues = createLarge3gppFile(source, file, 100);
+
+            long start = System.currentTimeMillis();
+            CollectingHandler parsed = parse(source, file);
+            long domTime = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+            CollectingHandler streamed = stream(source, file);
+            long streamTime = System.currentTimeMillis() - start;
+
+            System.err.println(String.format("%d resources from %d bytes: DOM %d ms, stream %d ms", measValues, file.length(), domTime, streamTime));
+            Assert.assertEquals(measValues, streamed.m_resources.size());
+            Assert.assertEquals(parsed.m_resources, streamed.m_resources);
+            Assert.assertEquals(parsed.m_timestamps, streamed.m_timestamps);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static XmlSource get3gppSource() {
+        XmlDataCollectionConfig config = JaxbUtils.unmarshal(XmlDataCollectionConfig.class, new File("src/test/resources/3gpp-xml-datacollection-config.xml"));
+        return config.getDataCollectionByName("3GPP").getXmlSources().get(0);
+    }
+
+    private static XmlSource createSource(String resourceXpath, String keyXpath, String objectXpath) {
+        XmlSource source = new XmlSource();
+        XmlGroup group = createGroup("test", resourceXpath, keyXpath);
+        group.addXmlObject(createObject("test", objectXpath));
+        source.addXmlGroup(group);
+        return source;
+    }
+
+    private static XmlGroup createGroup(String name, String resourceXpath, String keyXpath) {
+        XmlGroup group = new XmlGroup();
+        group.setName(name);
+        group.setResourceType(name);
+        group.setResourceXpath(resourceXpath);
+        group.setKeyXpath(keyXpath);
+        return group;
+    }
+
+    private static XmlObject createObject(String name, String xpath) {
+        XmlObject object = new XmlObject(name, "string");
+        object.setXpath(xpath);
+        return object;
+    }
+
+    private static CollectingHandler stream(XmlSource source, File file) throws Exception {
+        XmlStreamProcessor processor = XmlStreamProcessor.compile(source);
+        Assert.assertNotNull(processor);
+        CollectingHandler handler = new CollectingHandler();
+        InputStream is = new FileInputStream(file);
+        try {
+            processor.process(is, handler);
+        } finally {
+            is.close();
+        }
+        Collections.sort(handler.m_resources);
+        return handler;
+    }
+
+    /**
+     * Collects the same way AbstractXmlCollectionHandler does with a DOM.
+     */
+    private static CollectingHandler parse(XmlSource source, File file) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setIgnoringComments(true);
+        Document doc = factory.newDocumentBuilder().parse(file);
+        XPath xpath = XPathFactory.newInstance().newXPath();
+        CollectingHandler handler = new CollectingHandler();
+        for (XmlGroup group : source.getXmlGroups()) {
+            if (group.getTimestampXpath() != null) {
+                Node tsNode = (Node) xpath.evaluate(group.getTimestampXpath(), doc, XPathConstants.NODE);
+                handler.processTimestamp(group, tsNode == null ? null : tsNode.getNodeValue() == null ? tsNode.getTextContent() : tsNode.getNodeValue());
+            }
+            List<String> keyXpaths = new ArrayList<String>();
+            if (group.hasMultipleResourceKey()) {
+                keyXpaths.addAll(group.getXmlResourceKey().getKeyXpathList());
+            } else if (group.getKeyXpath() != null) {
+                keyXpaths.add(group.getKeyXpath());
+            }
+            List<XPathExpression> objects = new ArrayList<XPathExpression>();
+            for (XmlObject object : group.getXmlObjects()) {
+                objects.add(xpath.compile(object.getXpath()));
+            }
+            NodeList resources = (NodeList) xpath.evaluate(group.getResourceXpath(), doc, XPathConstants.NODESET);
+            resources: for (int i = 0; i < resources.getLength(); i++) {
+                Node resource = resources.item(i);
+                List<String> keys = new ArrayList<String>();
+                for (String keyXpath : keyXpaths) {
+                    Node keyNode = (Node) xpath.evaluate(keyXpath, resource, XPathConstants.NODE);
+                    if (keyNode == null) {
+                        continue resources;
+                    }
+                    keys.add(keyNode.getNodeValue() == null ? keyNode.getTextContent() : keyNode.getNodeValue());
+                }
+                String[] values = new String[objects.size()];
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = (String) objects.get(j).evaluate(resource, XPathConstants.STRING);
+                }
+                handler.processResource(group, keys.isEmpty() ? "node" : StringUtils.join(keys, "_"), values);
+            }
+        }
+        // the DOM goes group by group, the stream in document order
+        Collections.sort(handler.m_resources);
+        return handler;
+    }
+
+    /**
+     * Writes a 3GPP file with the given number of measValue elements for each group of the source.
+     */
+    private static int createLarge3gppFile(XmlSource source, File file, int measValuesPerGroup) throws Exception {
+        Writer out = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file)), "UTF-8");
+        int count = 0;
+        try {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+            out.write("<measCollecFile xmlns=\"http://www.3gpp.org/ftp/specs/archive/32_series/32.435#measCollec\">\n");
+            out.write("  <fileHeader fileFormatVersion=\"32.435 V9.0\" vendorName=\"OpenNMS\"><measCollec beginTime=\"2011-10-25T00:30:00-05:00\"/></fileHeader>\n");
+            out.write("  <measData>\n    <managedElement userLabel=\"SYNTHETIC\"/>\n");
+            for (XmlGroup group : source.getXmlGroups()) {
+                String xpath = group.getResourceXpath();
+                String measInfoId = xpath.substring(xpath.indexOf("='") + 2, xpath.indexOf("']"));
+                out.write("    <measInfo measInfoId=\"" + measInfoId + "\">\n      <granPeriod duration=\"PT900S\" endTime=\"2011-10-25T05:45:00Z\"/>\n");
+                int types = group.getXmlObjects().size() - 1;
+                for (int p = 1; p <= types; p++) {
+                    out.write("      <measType p=\"" + p + "\">" + group.getXmlObjects().get(p).getName() + "</measType>\n");
+                }
+                for (int i = 0; i < measValuesPerGroup; i++) {
+                    out.write("      <measValue measObjLdn=\"" + group.getName() + "|/=/v=1/instance=" + i + "|\">\n");
+                    for (int p = 1; p <= types; p++) {
+                        out.write("        <r p=\"" + p + "\">" + (i * p) + "</r>\n");
+                    }
+                    out.write("        <suspect>false</suspect>\n      </measValue>\n");
+                    count++;
+                }
+                out.write("    </measInfo>\n");
+            }
+            out.write("  </measData>\n");
+            out.write("  <fileFooter><measCollec endTime=\"2011-10-25T00:45:00-05:00\"/></fileFooter>\n</measCollecFile>\n");
+        } finally {
+            out.close();
+        }
+        return count;
+    }
+}